@@ -106,14 +106,22 @@ public class AllocationBenchmark {
         "       10|     10|        2|    50",
         "      100|      1|        2|    50",
         "      100|      3|        2|    50",
-        "      100|     10|        2|    50"
+        "      100|     10|        2|    50",
+
+        "     1000|     10|        0|    50",
+        "     1000|      5|        1|   100",
+        "     2000|      5|        1|   200"
     })
     public String indicesShardsReplicasNodes = "10|1|0|1";
 
+    @Param({"false", "true"})
+    public boolean incrementalBalance = false;
+
     public int numTags = 2;
 
     private AllocationService strategy;
     private ClusterState initialClusterState;
+    private ClusterState allocatedClusterState;
 
     @Setup
     public void setUp() throws Exception {
@@ -126,6 +134,7 @@ public class AllocationBenchmark {
 
         strategy = Allocators.createAllocationService(Settings.builder()
                 .put("cluster.routing.allocation.awareness.attributes", "tag")
+                .put("cluster.routing.allocation.balance.incremental", incrementalBalance)
                 .build());
 
         MetaData.Builder mb = MetaData.builder();
@@ -149,6 +158,13 @@ public class AllocationBenchmark {
         initialClusterState = ClusterState.builder(ClusterName.CLUSTER_NAME_SETTING.getDefault(Settings.EMPTY))
             .metaData(metaData).routingTable(routingTable).nodes
                 (nb).build();
+        ClusterState clusterState = measureAllocation();
+        while (clusterState.getRoutingNodes().shardsWithState(ShardRoutingState.INITIALIZING).isEmpty() == false) {
+            clusterState = strategy.applyStartedShards(clusterState, clusterState.getRoutingNodes()
+                    .shardsWithState(ShardRoutingState.INITIALIZING));
+            clusterState = strategy.reroute(clusterState, "reroute");
+        }
+        allocatedClusterState = clusterState;
     }
 
     private int toInt(String v) {
@@ -165,4 +181,10 @@ public class AllocationBenchmark {
         }
         return clusterState;
     }
+
+    @Benchmark
+    public ClusterState measureReroute() {
+        // nothing is left to allocate or move, so this measures how long it takes to find that the cluster is balanced
+        return strategy.reroute(allocatedClusterState, "reroute");
+    }
 }
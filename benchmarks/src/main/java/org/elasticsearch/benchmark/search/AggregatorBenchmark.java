@@ -0,0 +1,103 @@
+/*
+ * Licensed to Elasticsearch under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Elasticsearch licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.elasticsearch.benchmark.search;
+
+import org.elasticsearch.common.settings.Settings;
+import org.elasticsearch.search.SearchPhaseResult;
+import org.elasticsearch.search.SearchServiceAccess;
+import org.elasticsearch.search.aggregations.AggregationBuilder;
+import org.elasticsearch.search.aggregations.AggregationBuilders;
+import org.elasticsearch.search.builder.SearchSourceBuilder;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the collection and the shard level reduction of an aggregation over all documents of a shard. The
+ * <code>cardinality</code> parameter is the number of distinct terms for the <code>terms</code> and <code>cardinality</code>
+ * aggregations and the number of buckets for the <code>date_histogram</code> aggregation.
+ */
+@Fork(3)
+@Warmup(iterations = 10)
+@Measurement(iterations = 10)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@State(Scope.Benchmark)
+@SuppressWarnings("unused") //invoked by benchmarking framework
+public class AggregatorBenchmark {
+    // Do NOT make any field final (even if it is not annotated with @Param)! See also
+    // http://hg.openjdk.java.net/code-tools/jmh/file/tip/jmh-samples/src/main/java/org/openjdk/jmh/samples/JMHSample_10_ConstantFold.java
+
+    @Param({ "100000" })
+    public int numDocs = 100000;
+
+    @Param({ "terms", "date_histogram", "cardinality" })
+    public String aggregation = "terms";
+
+    @Param({ "10", "1000", "100000" })
+    public int cardinality = 10;
+
+    private SearchBenchmarkNode node;
+    private SearchSourceBuilder source;
+
+    @Setup
+    public void setUp() throws IOException {
+        node = SearchBenchmarkNode.create(Settings.EMPTY, numDocs);
+        source = new SearchSourceBuilder().size(0).aggregation(aggregation(aggregation, cardinality));
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        node.close();
+    }
+
+    static AggregationBuilder aggregation(String name, int cardinality) {
+        switch (name) {
+            case "terms":
+                return AggregationBuilders.terms("agg").field(SearchBenchmarkNode.keywordField(cardinality));
+            case "date_histogram":
+                return AggregationBuilders.dateHistogram("agg").field("ts")
+                    .interval(Math.max(1, SearchBenchmarkNode.TIMESTAMP_RANGE_MILLIS / cardinality));
+            case "cardinality":
+                return AggregationBuilders.cardinality("agg").field(SearchBenchmarkNode.keywordField(cardinality));
+            default:
+                throw new IllegalArgumentException("unknown aggregation [" + name + "]");
+        }
+    }
+
+    @Benchmark
+    public SearchPhaseResult aggregate() throws IOException {
+        final SearchPhaseResult result = SearchServiceAccess.executeQueryPhase(node.searchService(), node.request(source, 2),
+            node.newTask());
+        node.searchService().freeContext(result.getRequestId());
+        return result;
+    }
+}
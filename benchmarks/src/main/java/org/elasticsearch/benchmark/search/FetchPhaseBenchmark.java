@@ -0,0 +1,130 @@
+/*
+ * Licensed to Elasticsearch under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Elasticsearch licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.elasticsearch.benchmark.search;
+
+import com.carrotsearch.hppc.IntArrayList;
+import org.apache.lucene.search.ScoreDoc;
+import org.elasticsearch.common.settings.Settings;
+import org.elasticsearch.index.query.QueryBuilders;
+import org.elasticsearch.search.SearchServiceAccess;
+import org.elasticsearch.search.builder.SearchSourceBuilder;
+import org.elasticsearch.search.fetch.FetchSearchResult;
+import org.elasticsearch.search.fetch.ShardFetchRequest;
+import org.elasticsearch.search.fetch.subphase.highlight.HighlightBuilder;
+import org.elasticsearch.search.query.QuerySearchResult;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the fetch phase of a shard for the top hits of a match query, with the given fetch options.
+ */
+@Fork(3)
+@Warmup(iterations = 10)
+@Measurement(iterations = 10)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@State(Scope.Benchmark)
+@SuppressWarnings("unused") //invoked by benchmarking framework
+public class FetchPhaseBenchmark {
+    // Do NOT make any field final (even if it is not annotated with @Param)! See also
+    // http://hg.openjdk.java.net/code-tools/jmh/file/tip/jmh-samples/src/main/java/org/openjdk/jmh/samples/JMHSample_10_ConstantFold.java
+
+    @Param({ "100000" })
+    public int numDocs = 100000;
+
+    @Param({ "source", "source_filtering", "no_source", "stored_fields", "docvalue_fields", "highlight" })
+    public String fetch = "source";
+
+    @Param({ "10", "100" })
+    public int size = 10;
+
+    private SearchBenchmarkNode node;
+    private SearchSourceBuilder source;
+    private ShardFetchRequest fetchRequest;
+
+    @Setup
+    public void setUp() throws IOException {
+        node = SearchBenchmarkNode.create(Settings.EMPTY, numDocs);
+        source = new SearchSourceBuilder().query(QueryBuilders.matchQuery("body", SearchBenchmarkNode.word(1))).size(size);
+        switch (fetch) {
+            case "source":
+                break;
+            case "source_filtering":
+                source.fetchSource(new String[] { "title", "k*" }, null);
+                break;
+            case "no_source":
+                source.fetchSource(false);
+                break;
+            case "stored_fields":
+                source.storedField("title");
+                break;
+            case "docvalue_fields":
+                source.fetchSource(false);
+                source.docValueField("num");
+                source.docValueField("ts");
+                source.docValueField(SearchBenchmarkNode.keywordField(1000));
+                break;
+            case "highlight":
+                source.highlighter(new HighlightBuilder().field("body"));
+                break;
+            default:
+                throw new IllegalArgumentException("unknown fetch option [" + fetch + "]");
+        }
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        node.close();
+    }
+
+    /**
+     * The fetch phase needs the search context of a query phase, which is freed by the fetch phase. Fetching documents
+     * takes long enough for the overhead of a per invocation setup to be negligible.
+     */
+    @Setup(Level.Invocation)
+    public void queryPhase() throws IOException {
+        // targeting two shards keeps the search context open for the fetch phase
+        final QuerySearchResult result = SearchServiceAccess.executeQueryPhase(node.searchService(), node.request(source, 2),
+            node.newTask()).queryResult();
+        final IntArrayList docIds = new IntArrayList();
+        for (ScoreDoc scoreDoc : result.topDocs().scoreDocs) {
+            docIds.add(scoreDoc.doc);
+        }
+        fetchRequest = new ShardFetchRequest(result.getRequestId(), docIds, null);
+    }
+
+    @Benchmark
+    public FetchSearchResult fetchPhase() {
+        return node.searchService().executeFetchPhase(fetchRequest, node.newTask());
+    }
+}
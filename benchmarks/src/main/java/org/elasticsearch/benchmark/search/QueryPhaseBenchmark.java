@@ -0,0 +1,114 @@
+/*
+ * Licensed to Elasticsearch under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Elasticsearch licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.elasticsearch.benchmark.search;
+
+import org.elasticsearch.common.settings.Settings;
+import org.elasticsearch.index.query.QueryBuilder;
+import org.elasticsearch.index.query.QueryBuilders;
+import org.elasticsearch.search.SearchPhaseResult;
+import org.elasticsearch.search.SearchServiceAccess;
+import org.elasticsearch.search.builder.SearchSourceBuilder;
+import org.elasticsearch.search.sort.SortOrder;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the query phase of a shard, from the creation of the search context to the collection of the top hits.
+ */
+@Fork(3)
+@Warmup(iterations = 10)
+@Measurement(iterations = 10)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@State(Scope.Benchmark)
+@SuppressWarnings("unused") //invoked by benchmarking framework
+public class QueryPhaseBenchmark {
+    // Do NOT make any field final (even if it is not annotated with @Param)! See also
+    // http://hg.openjdk.java.net/code-tools/jmh/file/tip/jmh-samples/src/main/java/org/openjdk/jmh/samples/JMHSample_10_ConstantFold.java
+
+    @Param({ "100000" })
+    public int numDocs = 100000;
+
+    @Param({ "match_all", "term", "range", "match", "bool", "sort" })
+    public String query = "match_all";
+
+    @Param({ "10", "100" })
+    public int size = 10;
+
+    private SearchBenchmarkNode node;
+    private SearchSourceBuilder source;
+
+    @Setup
+    public void setUp() throws IOException {
+        node = SearchBenchmarkNode.create(Settings.EMPTY, numDocs);
+        source = new SearchSourceBuilder().query(query(query)).size(size);
+        if ("sort".equals(query)) {
+            source.sort("num", SortOrder.DESC);
+        }
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        node.close();
+    }
+
+    static QueryBuilder query(String name) {
+        switch (name) {
+            case "match_all":
+            case "sort":
+                return QueryBuilders.matchAllQuery();
+            case "term":
+                return QueryBuilders.termQuery(SearchBenchmarkNode.keywordField(10), "value_3");
+            case "range":
+                return QueryBuilders.rangeQuery("num").gte(250000).lt(500000);
+            case "match":
+                return QueryBuilders.matchQuery("body", SearchBenchmarkNode.word(1) + " " + SearchBenchmarkNode.word(2));
+            case "bool":
+                return QueryBuilders.boolQuery()
+                    .must(QueryBuilders.matchQuery("body", SearchBenchmarkNode.word(3)))
+                    .filter(QueryBuilders.rangeQuery("ts").gte(SearchBenchmarkNode.TIMESTAMP_START_MILLIS)
+                        .lt(SearchBenchmarkNode.TIMESTAMP_START_MILLIS + SearchBenchmarkNode.TIMESTAMP_RANGE_MILLIS / 2))
+                    .mustNot(QueryBuilders.termQuery(SearchBenchmarkNode.keywordField(10), "value_0"));
+            default:
+                throw new IllegalArgumentException("unknown query [" + name + "]");
+        }
+    }
+
+    @Benchmark
+    public SearchPhaseResult queryPhase() throws IOException {
+        // targeting two shards prevents the fetch phase from being executed with the query phase
+        final SearchPhaseResult result = SearchServiceAccess.executeQueryPhase(node.searchService(), node.request(source, 2),
+            node.newTask());
+        node.searchService().freeContext(result.getRequestId());
+        return result;
+    }
+}
@@ -0,0 +1,125 @@
+/*
+ * Licensed to Elasticsearch under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Elasticsearch licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.elasticsearch.benchmark.search;
+
+import org.elasticsearch.action.search.SearchPhaseController;
+import org.elasticsearch.common.bytes.BytesReference;
+import org.elasticsearch.common.io.stream.BytesStreamOutput;
+import org.elasticsearch.common.io.stream.NamedWriteableAwareStreamInput;
+import org.elasticsearch.common.io.stream.StreamInput;
+import org.elasticsearch.common.settings.Settings;
+import org.elasticsearch.index.query.QueryBuilders;
+import org.elasticsearch.search.SearchServiceAccess;
+import org.elasticsearch.search.aggregations.InternalAggregation;
+import org.elasticsearch.search.builder.SearchSourceBuilder;
+import org.elasticsearch.search.query.QuerySearchResult;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the reduction of the query phase results of many shards on the coordinating node. All shards return a copy of
+ * the result of the same query on the benchmark shard.
+ */
+@Fork(3)
+@Warmup(iterations = 10)
+@Measurement(iterations = 10)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@State(Scope.Benchmark)
+@SuppressWarnings("unused") //invoked by benchmarking framework
+public class ReducedQueryPhaseBenchmark {
+    // Do NOT make any field final (even if it is not annotated with @Param)! See also
+    // http://hg.openjdk.java.net/code-tools/jmh/file/tip/jmh-samples/src/main/java/org/openjdk/jmh/samples/JMHSample_10_ConstantFold.java
+
+    @Param({ "10000" })
+    public int numDocs = 10000;
+
+    @Param({ "5", "50", "500" })
+    public int numShards = 5;
+
+    @Param({ "none", "terms", "date_histogram", "cardinality" })
+    public String aggregation = "none";
+
+    @Param({ "1000" })
+    public int cardinality = 1000;
+
+    private SearchPhaseController controller;
+    private BytesReference shardResult;
+    private List<QuerySearchResult> shardResults;
+    private SearchBenchmarkNode node;
+
+    @Setup
+    public void setUp() throws IOException {
+        node = SearchBenchmarkNode.create(Settings.EMPTY, numDocs);
+        controller = new SearchPhaseController(Settings.EMPTY,
+            finalReduce -> new InternalAggregation.ReduceContext(node.bigArrays(), node.scriptService(), finalReduce));
+        final SearchSourceBuilder source = new SearchSourceBuilder().query(QueryBuilders.matchQuery("body", SearchBenchmarkNode.word(1)));
+        if ("none".equals(aggregation) == false) {
+            source.aggregation(AggregatorBenchmark.aggregation(aggregation, cardinality));
+        }
+        final QuerySearchResult result = SearchServiceAccess.executeQueryPhase(node.searchService(), node.request(source, numShards),
+            node.newTask()).queryResult();
+        node.searchService().freeContext(result.getRequestId());
+        try (BytesStreamOutput out = new BytesStreamOutput()) {
+            result.writeTo(out);
+            shardResult = out.bytes();
+        }
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        node.close();
+    }
+
+    /**
+     * Aggregations are consumed by the reduction so each invocation needs fresh shard results.
+     */
+    @Setup(Level.Invocation)
+    public void readShardResults() throws IOException {
+        shardResults = new ArrayList<>(numShards);
+        for (int i = 0; i < numShards; i++) {
+            try (StreamInput in = new NamedWriteableAwareStreamInput(shardResult.streamInput(), node.namedWriteableRegistry())) {
+                final QuerySearchResult result = QuerySearchResult.readQuerySearchResult(in);
+                result.setShardIndex(i);
+                shardResults.add(result);
+            }
+        }
+    }
+
+    @Benchmark
+    public SearchPhaseController.ReducedQueryPhase reducedQueryPhase() {
+        return controller.reducedQueryPhase(shardResults, false);
+    }
+}
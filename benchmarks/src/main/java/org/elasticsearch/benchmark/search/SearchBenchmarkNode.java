@@ -0,0 +1,361 @@
+/*
+ * Licensed to Elasticsearch under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Elasticsearch licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.elasticsearch.benchmark.search;
+
+import org.apache.lucene.store.Directory;
+import org.apache.lucene.store.RAMDirectory;
+import org.apache.lucene.util.IOUtils;
+import org.elasticsearch.Version;
+import org.elasticsearch.action.admin.indices.forcemerge.ForceMergeRequest;
+import org.elasticsearch.action.index.IndexRequest;
+import org.elasticsearch.action.search.SearchTask;
+import org.elasticsearch.action.search.SearchType;
+import org.elasticsearch.cluster.ClusterName;
+import org.elasticsearch.cluster.ClusterState;
+import org.elasticsearch.cluster.metadata.IndexMetaData;
+import org.elasticsearch.cluster.metadata.IndexNameExpressionResolver;
+import org.elasticsearch.cluster.node.DiscoveryNode;
+import org.elasticsearch.cluster.node.DiscoveryNodes;
+import org.elasticsearch.cluster.routing.IndexShardRoutingTable;
+import org.elasticsearch.cluster.routing.RecoverySource;
+import org.elasticsearch.cluster.routing.ShardRouting;
+import org.elasticsearch.cluster.routing.UnassignedInfo;
+import org.elasticsearch.cluster.service.ClusterService;
+import org.elasticsearch.common.UUIDs;
+import org.elasticsearch.common.compress.CompressedXContent;
+import org.elasticsearch.common.io.stream.NamedWriteableRegistry;
+import org.elasticsearch.common.lucene.uid.Versions;
+import org.elasticsearch.common.settings.Settings;
+import org.elasticsearch.common.settings.SettingsModule;
+import org.elasticsearch.common.transport.TransportAddress;
+import org.elasticsearch.common.util.BigArrays;
+import org.elasticsearch.common.util.PageCacheRecycler;
+import org.elasticsearch.common.xcontent.NamedXContentRegistry;
+import org.elasticsearch.common.xcontent.XContentBuilder;
+import org.elasticsearch.common.xcontent.XContentType;
+import org.elasticsearch.env.Environment;
+import org.elasticsearch.env.NodeEnvironment;
+import org.elasticsearch.gateway.MetaStateService;
+import org.elasticsearch.index.IndexModule;
+import org.elasticsearch.index.IndexService;
+import org.elasticsearch.index.IndexSettings;
+import org.elasticsearch.index.VersionType;
+import org.elasticsearch.index.engine.Engine;
+import org.elasticsearch.index.mapper.MapperService;
+import org.elasticsearch.index.mapper.SourceToParse;
+import org.elasticsearch.index.shard.IndexShard;
+import org.elasticsearch.index.shard.ShardId;
+import org.elasticsearch.index.shard.ShardPath;
+import org.elasticsearch.index.store.DirectoryService;
+import org.elasticsearch.index.store.IndexStore;
+import org.elasticsearch.indices.IndicesModule;
+import org.elasticsearch.indices.IndicesRequestCache;
+import org.elasticsearch.indices.IndicesService;
+import org.elasticsearch.indices.analysis.AnalysisModule;
+import org.elasticsearch.indices.breaker.CircuitBreakerService;
+import org.elasticsearch.indices.breaker.NoneCircuitBreakerService;
+import org.elasticsearch.indices.cluster.IndicesClusterStateService.AllocatedIndices.IndexRemovalReason;
+import org.elasticsearch.indices.recovery.RecoveryState;
+import org.elasticsearch.node.Node;
+import org.elasticsearch.node.ResponseCollectorService;
+import org.elasticsearch.plugins.Plugin;
+import org.elasticsearch.plugins.PluginsService;
+import org.elasticsearch.script.ScriptModule;
+import org.elasticsearch.script.ScriptService;
+import org.elasticsearch.search.SearchModule;
+import org.elasticsearch.search.SearchService;
+import org.elasticsearch.search.builder.SearchSourceBuilder;
+import org.elasticsearch.search.internal.AliasFilter;
+import org.elasticsearch.search.internal.ShardSearchLocalRequest;
+import org.elasticsearch.threadpool.ThreadPool;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static org.elasticsearch.common.xcontent.XContentFactory.jsonBuilder;
+
+/**
+ * A single node, single shard search environment for benchmarks. The shard is created, recovered and populated through the
+ * real {@link IndicesService}, {@link IndexShard} and {@link Engine} code but its Lucene index lives in memory so that results
+ * do not depend on the file system. Searches are executed with a real {@link SearchService}.
+ * <p>
+ * The shard contains generated documents with the following fields:
+ * <ul>
+ *     <li><code>body</code>: a text field of 20 to 50 words picked from a vocabulary of {@value #VOCABULARY_SIZE} words</li>
+ *     <li><code>title</code>: a stored text field of 2 to 5 words</li>
+ *     <li><code>k10</code>, <code>k1000</code>, <code>k100000</code>: keyword fields with the given number of distinct values</li>
+ *     <li><code>num</code>: a long field, uniformly distributed in [0, 1000000)</li>
+ *     <li><code>ts</code>: a date field, uniformly distributed over {@link #TIMESTAMP_RANGE_MILLIS}</li>
+ * </ul>
+ * Documents are generated from a fixed seed so that all runs of a benchmark search the same shard.
+ */
+public final class SearchBenchmarkNode implements Closeable {
+    static final String INDEX = "benchmark";
+    static final String TYPE = "doc";
+    static final int VOCABULARY_SIZE = 1000;
+    static final int[] KEYWORD_CARDINALITIES = new int[] { 10, 1000, 100000 };
+    static final long TIMESTAMP_START_MILLIS = 1514764800000L; // 2018-01-01T00:00:00Z
+    static final long TIMESTAMP_RANGE_MILLIS = TimeUnit.DAYS.toMillis(365);
+    private static final long SEED = 42L;
+
+    private final Path home;
+    private final ThreadPool threadPool;
+    private final NodeEnvironment nodeEnvironment;
+    private final ClusterService clusterService;
+    private final IndicesService indicesService;
+    private final SearchService searchService;
+    private final ScriptService scriptService;
+    private final BigArrays bigArrays;
+    private final NamedWriteableRegistry namedWriteableRegistry;
+    private final IndexShard shard;
+
+    private SearchBenchmarkNode(Settings indexSettings, int numDocs) throws IOException {
+        home = Files.createTempDirectory("search-benchmark");
+        final Settings settings = Settings.builder()
+            .put(Environment.PATH_HOME_SETTING.getKey(), home.toString())
+            .put(Node.NODE_NAME_SETTING.getKey(), "benchmark")
+            .build();
+        final Environment environment = new Environment(settings, null);
+        threadPool = new ThreadPool(settings);
+        nodeEnvironment = new NodeEnvironment(settings, environment);
+        final PluginsService pluginsService = new PluginsService(settings, null, null, null,
+            Collections.singletonList(InMemoryStorePlugin.class));
+        final SettingsModule settingsModule = new SettingsModule(settings);
+        final ScriptModule scriptModule = new ScriptModule(settings, Collections.emptyList());
+        scriptService = scriptModule.getScriptService();
+        final AnalysisModule analysisModule = new AnalysisModule(environment, Collections.emptyList());
+        final IndicesModule indicesModule = new IndicesModule(Collections.emptyList());
+        final SearchModule searchModule = new SearchModule(settings, false, Collections.emptyList());
+        namedWriteableRegistry = new NamedWriteableRegistry(Stream.concat(indicesModule.getNamedWriteables().stream(),
+            searchModule.getNamedWriteables().stream()).collect(Collectors.toList()));
+        final NamedXContentRegistry xContentRegistry = new NamedXContentRegistry(searchModule.getNamedXContents());
+        final CircuitBreakerService circuitBreakerService = new NoneCircuitBreakerService();
+        bigArrays = new BigArrays(new PageCacheRecycler(settings), circuitBreakerService);
+
+        final DiscoveryNode localNode = new DiscoveryNode("benchmark", new TransportAddress(InetAddress.getLoopbackAddress(), 9300),
+            Version.CURRENT);
+        clusterService = new ClusterService(settings, settingsModule.getClusterSettings(), threadPool, Collections.emptyMap());
+        clusterService.getClusterApplierService().setInitialState(ClusterState.builder(ClusterName.DEFAULT)
+            .nodes(DiscoveryNodes.builder().add(localNode).localNodeId(localNode.getId()).masterNodeId(localNode.getId()))
+            .build());
+        indicesService = new IndicesService(settings, pluginsService, nodeEnvironment, xContentRegistry,
+            analysisModule.getAnalysisRegistry(), new IndexNameExpressionResolver(settings), indicesModule.getMapperRegistry(),
+            namedWriteableRegistry, threadPool, settingsModule.getIndexScopedSettings(), circuitBreakerService, bigArrays,
+            scriptService, null, new MetaStateService(settings, nodeEnvironment, xContentRegistry));
+        indicesService.start();
+        searchService = new SearchService(clusterService, indicesService, threadPool, scriptService, bigArrays,
+            searchModule.getFetchPhase(), new ResponseCollectorService(settings, clusterService));
+
+        shard = createShard(localNode, indexSettings);
+        indexDocuments(shard, numDocs);
+    }
+
+    /**
+     * Creates a node with a single shard that contains <code>numDocs</code> documents merged into a single segment.
+     * The shard request cache is disabled so that each request is executed.
+     *
+     * @param indexSettings additional settings for the index of the shard
+     */
+    public static SearchBenchmarkNode create(Settings indexSettings, int numDocs) throws IOException {
+        return new SearchBenchmarkNode(Settings.builder()
+            .put(IndicesRequestCache.INDEX_CACHE_REQUEST_ENABLED_SETTING.getKey(), false)
+            .put(indexSettings)
+            .build(), numDocs);
+    }
+
+    private IndexShard createShard(DiscoveryNode localNode, Settings indexSettings) throws IOException {
+        final IndexMetaData metaData = IndexMetaData.builder(INDEX)
+            .settings(Settings.builder()
+                .put(IndexMetaData.SETTING_VERSION_CREATED, Version.CURRENT)
+                .put(IndexMetaData.SETTING_INDEX_UUID, UUIDs.randomBase64UUID())
+                .put(IndexMetaData.SETTING_NUMBER_OF_SHARDS, 1)
+                .put(IndexMetaData.SETTING_NUMBER_OF_REPLICAS, 0)
+                .put(IndexModule.INDEX_STORE_TYPE_SETTING.getKey(), InMemoryStorePlugin.STORE_TYPE)
+                .put(indexSettings))
+            .build();
+        final IndexService indexService = indicesService.createIndex(metaData, Collections.emptyList());
+        indexService.mapperService().merge(TYPE, new CompressedXContent(mapping().string()),
+            MapperService.MergeReason.MAPPING_UPDATE, false);
+
+        final ShardId shardId = new ShardId(indexService.index(), 0);
+        final ShardRouting initializing = ShardRouting.newUnassigned(shardId, true,
+            RecoverySource.StoreRecoverySource.EMPTY_STORE_INSTANCE, new UnassignedInfo(UnassignedInfo.Reason.INDEX_CREATED, null))
+            .initialize(localNode.getId(), null, -1);
+        final IndexShard indexShard = indexService.createShard(initializing, id -> {});
+        indexShard.markAsRecovering("store", new RecoveryState(initializing, localNode, null));
+        indexShard.recoverFromStore();
+        final ShardRouting started = initializing.moveToStarted();
+        indexShard.updateShardState(started, indexShard.getPrimaryTerm(), null, 1L,
+            Collections.singleton(started.allocationId().getId()), new IndexShardRoutingTable.Builder(shardId).addShard(started).build(),
+            Collections.emptySet());
+        return indexShard;
+    }
+
+    private static XContentBuilder mapping() throws IOException {
+        final XContentBuilder mapping = jsonBuilder().startObject().startObject(TYPE)
+            .field("dynamic", "strict")
+            .startObject("properties")
+                .startObject("body").field("type", "text").endObject()
+                .startObject("title").field("type", "text").field("store", true).endObject()
+                .startObject("num").field("type", "long").endObject()
+                .startObject("ts").field("type", "date").endObject();
+        for (int cardinality : KEYWORD_CARDINALITIES) {
+            mapping.startObject(keywordField(cardinality)).field("type", "keyword").endObject();
+        }
+        return mapping.endObject().endObject().endObject();
+    }
+
+    private static void indexDocuments(IndexShard shard, int numDocs) throws IOException {
+        final Random random = new Random(SEED);
+        for (int i = 0; i < numDocs; i++) {
+            final XContentBuilder source = jsonBuilder().startObject()
+                .field("body", words(random, 20 + random.nextInt(31)))
+                .field("title", words(random, 2 + random.nextInt(4)))
+                .field("num", random.nextInt(1000000))
+                .field("ts", TIMESTAMP_START_MILLIS + (long) (random.nextDouble() * TIMESTAMP_RANGE_MILLIS));
+            for (int cardinality : KEYWORD_CARDINALITIES) {
+                source.field(keywordField(cardinality), "value_" + random.nextInt(cardinality));
+            }
+            source.endObject();
+            final Engine.IndexResult result = shard.applyIndexOperationOnPrimary(
+                Versions.MATCH_ANY, VersionType.INTERNAL,
+                SourceToParse.source(INDEX, TYPE, Integer.toString(i), source.bytes(), XContentType.JSON),
+                IndexRequest.UNSET_AUTO_GENERATED_TIMESTAMP, false, update -> {
+                    throw new IllegalStateException("unexpected mapping update " + update);
+                });
+            if (result.hasFailure()) {
+                throw new IllegalStateException("failed to index document [" + i + "]", result.getFailure());
+            }
+        }
+        // a single segment makes runs comparable regardless of the merges that happened while indexing
+        shard.forceMerge(new ForceMergeRequest().maxNumSegments(1).flush(true));
+        shard.refresh("benchmark");
+    }
+
+    private static String words(Random random, int numWords) {
+        final StringBuilder builder = new StringBuilder();
+        for (int i = 0; i < numWords; i++) {
+            if (i > 0) {
+                builder.append(' ');
+            }
+            builder.append(word(random.nextInt(VOCABULARY_SIZE)));
+        }
+        return builder.toString();
+    }
+
+    /**
+     * Returns the word of the vocabulary with the given rank.
+     */
+    static String word(int rank) {
+        return "word" + rank;
+    }
+
+    /**
+     * Returns the name of the keyword field with the given number of distinct values.
+     */
+    static String keywordField(int cardinality) {
+        return "k" + cardinality;
+    }
+
+    /**
+     * Creates the request that searches the shard of this node with the provided source.
+     *
+     * @param numberOfShards the number of shards the request targets. With a single shard, the fetch phase is executed
+     *                       directly after the query phase.
+     */
+    ShardSearchLocalRequest request(SearchSourceBuilder source, int numberOfShards) {
+        return new ShardSearchLocalRequest(shard.shardId(), numberOfShards, SearchType.QUERY_THEN_FETCH, source, new String[] { TYPE },
+            false, AliasFilter.EMPTY, 1.0f);
+    }
+
+    SearchTask newTask() {
+        return new SearchTask(1L, "transport", "indices:data/read/search", "benchmark", null, Collections.emptyMap());
+    }
+
+    SearchService searchService() {
+        return searchService;
+    }
+
+    ScriptService scriptService() {
+        return scriptService;
+    }
+
+    BigArrays bigArrays() {
+        return bigArrays;
+    }
+
+    NamedWriteableRegistry namedWriteableRegistry() {
+        return namedWriteableRegistry;
+    }
+
+    @Override
+    public void close() throws IOException {
+        final List<Closeable> toClose = new ArrayList<>();
+        toClose.add(searchService);
+        toClose.add(() -> indicesService.removeIndex(shard.shardId().getIndex(),
+            IndexRemovalReason.NO_LONGER_ASSIGNED, "benchmark done"));
+        toClose.add(indicesService);
+        toClose.add(clusterService);
+        toClose.add(nodeEnvironment);
+        toClose.add(() -> ThreadPool.terminate(threadPool, 10, TimeUnit.SECONDS));
+        try {
+            IOUtils.close(toClose);
+        } finally {
+            IOUtils.rm(home);
+        }
+    }
+
+    /**
+     * Registers the <code>benchmark_memory</code> store type that keeps the Lucene index of shards in memory.
+     */
+    public static final class InMemoryStorePlugin extends Plugin {
+        static final String STORE_TYPE = "benchmark_memory";
+
+        @Override
+        public void onIndexModule(IndexModule indexModule) {
+            indexModule.addIndexStore(STORE_TYPE, InMemoryIndexStore::new);
+        }
+    }
+
+    private static final class InMemoryIndexStore extends IndexStore {
+        InMemoryIndexStore(IndexSettings indexSettings) {
+            super(indexSettings);
+        }
+
+        @Override
+        public DirectoryService newDirectoryService(ShardPath path) {
+            return new DirectoryService(path.getShardId(), indexSettings) {
+                @Override
+                public Directory newDirectory() {
+                    return new RAMDirectory();
+                }
+            };
+        }
+    }
+}
@@ -0,0 +1,42 @@
+/*
+ * Licensed to Elasticsearch under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Elasticsearch licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.elasticsearch.search;
+
+import org.elasticsearch.action.search.SearchTask;
+import org.elasticsearch.search.internal.ShardSearchRequest;
+
+import java.io.IOException;
+
+/**
+ * Exposes the synchronous entry points of the {@link SearchService} to benchmarks. The public methods of the service fork the
+ * execution to the search thread pool, which would add the latency of the thread pool to the measurements.
+ */
+public final class SearchServiceAccess {
+
+    private SearchServiceAccess() {}
+
+    /**
+     * Executes the query phase of the provided <code>request</code> on the calling thread. Requests that target a single shard
+     * also execute the fetch phase.
+     */
+    public static SearchPhaseResult executeQueryPhase(SearchService searchService, ShardSearchRequest request,
+                                                      SearchTask task) throws IOException {
+        return searchService.executeQueryPhase(request, task);
+    }
+}
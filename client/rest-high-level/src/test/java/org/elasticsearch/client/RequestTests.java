@@ -788,6 +788,10 @@ public class RequestTests extends ESTestCase {
             searchRequest.requestCache(randomBoolean());
             expectedParams.put("request_cache", Boolean.toString(searchRequest.requestCache()));
         }
+        if (randomBoolean()) {
+            searchRequest.concurrentSegmentSearch(randomBoolean());
+            expectedParams.put("concurrent_segment_search", Boolean.toString(searchRequest.concurrentSegmentSearch()));
+        }
         if (randomBoolean()) {
             searchRequest.setBatchedReduceSize(randomIntBetween(2, Integer.MAX_VALUE));
         }
@@ -49,6 +49,12 @@ public class ChildrenAggregatorFactory
         this.parentFilter = parentFilter;
     }
 
+    @Override
+    public boolean supportsConcurrentSegmentSearch() {
+        // children are collected in a second pass over all the segments of the shard
+        return false;
+    }
+
     @Override
     protected Aggregator createUnmapped(Aggregator parent, List<PipelineAggregator> pipelineAggregators, Map<String, Object> metaData)
             throws IOException {
@@ -0,0 +1,358 @@
+/*
+ * Licensed to Elasticsearch under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Elasticsearch licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.elasticsearch.rollup;
+
+import org.apache.logging.log4j.Logger;
+import org.apache.lucene.util.BytesRef;
+import org.elasticsearch.ElasticsearchException;
+import org.elasticsearch.ExceptionsHelper;
+import org.elasticsearch.ResourceAlreadyExistsException;
+import org.elasticsearch.action.ActionListener;
+import org.elasticsearch.action.admin.indices.create.CreateIndexRequest;
+import org.elasticsearch.action.admin.indices.mapping.get.GetFieldMappingsRequest;
+import org.elasticsearch.action.admin.indices.mapping.get.GetFieldMappingsResponse;
+import org.elasticsearch.action.admin.indices.mapping.get.GetFieldMappingsResponse.FieldMappingMetaData;
+import org.elasticsearch.action.bulk.BulkRequest;
+import org.elasticsearch.action.index.IndexRequest;
+import org.elasticsearch.action.search.SearchRequest;
+import org.elasticsearch.action.search.SearchResponse;
+import org.elasticsearch.client.Client;
+import org.elasticsearch.cluster.ClusterState;
+import org.elasticsearch.cluster.ClusterStateUpdateTask;
+import org.elasticsearch.cluster.metadata.MetaData;
+import org.elasticsearch.cluster.service.ClusterService;
+import org.elasticsearch.common.hash.MurmurHash3;
+import org.elasticsearch.common.io.stream.BytesStreamOutput;
+import org.elasticsearch.common.xcontent.XContentBuilder;
+import org.elasticsearch.common.xcontent.XContentFactory;
+import org.elasticsearch.index.mapper.MapperService;
+import org.elasticsearch.index.query.BoolQueryBuilder;
+import org.elasticsearch.index.query.QueryBuilders;
+import org.elasticsearch.index.query.RangeQueryBuilder;
+import org.elasticsearch.rollup.RollupJobConfig.Metric;
+import org.elasticsearch.rollup.RollupJobConfig.MetricConfig;
+import org.elasticsearch.search.aggregations.AggregationBuilder;
+import org.elasticsearch.search.aggregations.AggregationBuilders;
+import org.elasticsearch.search.aggregations.Aggregations;
+import org.elasticsearch.search.aggregations.bucket.composite.CompositeAggregation;
+import org.elasticsearch.search.aggregations.bucket.composite.CompositeAggregationBuilder;
+import org.elasticsearch.search.aggregations.bucket.composite.CompositeValuesSourceBuilder;
+import org.elasticsearch.search.aggregations.bucket.composite.DateHistogramValuesSourceBuilder;
+import org.elasticsearch.search.aggregations.bucket.composite.TermsValuesSourceBuilder;
+import org.elasticsearch.search.aggregations.metrics.NumericMetricsAggregation;
+import org.elasticsearch.search.builder.SearchSourceBuilder;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Runs one pass of a rollup job: it pages through a composite aggregation over the source documents that are not rolled up
+ * yet, writes one document per composite bucket into the rollup index and finally moves the checkpoint of the job forward.
+ * <p>
+ * Only complete buckets are rolled up, that is buckets that end before {@code now - delay}. Documents get deterministic ids
+ * derived from their composite key so that a pass that failed half way through can simply be started again.
+ */
+public class RollupIndexer {
+
+    static final String COMPOSITE_NAME = "_rollup";
+    static final String ROLLUP_OBJECT = "_rollup";
+    static final String ID_FIELD = "id";
+    static final String DOC_COUNT_FIELD = "doc_count";
+
+    /**
+     * The rollup index field that identifies the job that produced a rollup document.
+     */
+    public static final String JOB_ID_FIELD = ROLLUP_OBJECT + "." + ID_FIELD;
+
+    /**
+     * The rollup index field that holds the number of source documents that a rollup document summarizes.
+     */
+    public static final String ROLLUP_DOC_COUNT_FIELD = ROLLUP_OBJECT + "." + DOC_COUNT_FIELD;
+
+    private final Logger logger;
+    private final Client client;
+    private final ClusterService clusterService;
+    private final RollupJob job;
+    private final RollupJobConfig config;
+    private final long now;
+
+    public RollupIndexer(Logger logger, Client client, ClusterService clusterService, RollupJob job, long now) {
+        this.logger = logger;
+        this.client = client;
+        this.clusterService = clusterService;
+        this.job = job;
+        this.config = job.getConfig();
+        this.now = now;
+    }
+
+    /**
+     * Rolls up all complete buckets since the last checkpoint and notifies the listener with the new checkpoint.
+     */
+    public void run(ActionListener<Long> listener) {
+        final long upperBound = config.getTimestamp().round(now - config.getTimestamp().getDelay().millis());
+        if (job.hasCheckpoint() && upperBound <= job.getCheckpoint()) {
+            listener.onResponse(job.getCheckpoint());
+            return;
+        }
+        ensureRollupIndex(ActionListener.wrap(ready -> {
+            if (ready) {
+                searchPage(upperBound, null, listener);
+            } else {
+                logger.debug("source indices [{}] of rollup job [{}] have no mapping for [{}] yet, skipping",
+                        config.getIndexPattern(), config.getId(), config.getTimestamp().getField());
+                listener.onResponse(job.getCheckpoint());
+            }
+        }, listener::onFailure));
+    }
+
+    private void ensureRollupIndex(ActionListener<Boolean> listener) {
+        if (clusterService.state().metaData().hasIndex(config.getRollupIndex())) {
+            listener.onResponse(true);
+            return;
+        }
+        GetFieldMappingsRequest request = new GetFieldMappingsRequest().indices(config.getIndexPattern())
+                .fields(config.getTimestamp().getField()).includeDefaults(true);
+        client.admin().indices().getFieldMappings(request, ActionListener.wrap(response -> {
+            String format = timestampFormat(response, config.getTimestamp().getField());
+            if (format == null) {
+                listener.onResponse(false);
+                return;
+            }
+            CreateIndexRequest createIndex = new CreateIndexRequest(config.getRollupIndex())
+                    .mapping(MapperService.SINGLE_MAPPING_NAME, rollupMapping(config, format));
+            client.admin().indices().create(createIndex, ActionListener.wrap(r -> listener.onResponse(true), e -> {
+                if (ExceptionsHelper.unwrapCause(e) instanceof ResourceAlreadyExistsException) {
+                    listener.onResponse(true);
+                } else {
+                    listener.onFailure(e);
+                }
+            }));
+        }, listener::onFailure));
+    }
+
+    private void searchPage(long upperBound, Map<String, Object> afterKey, ActionListener<Long> listener) {
+        client.search(buildSearchRequest(job, upperBound, afterKey), ActionListener.wrap(response -> {
+            CompositeAggregation composite = response.getAggregations().get(COMPOSITE_NAME);
+            if (composite.getBuckets().isEmpty()) {
+                finish(upperBound, listener);
+                return;
+            }
+            BulkRequest bulkRequest = new BulkRequest();
+            for (CompositeAggregation.Bucket bucket : composite.getBuckets()) {
+                bulkRequest.add(new IndexRequest(config.getRollupIndex(), MapperService.SINGLE_MAPPING_NAME,
+                        documentId(config.getId(), bucket.getKey()))
+                        .source(toDocument(config, bucket.getKey(), bucket.getDocCount(), bucket.getAggregations())));
+            }
+            client.bulk(bulkRequest, ActionListener.wrap(bulkResponse -> {
+                if (bulkResponse.hasFailures()) {
+                    listener.onFailure(new ElasticsearchException("failed to index rollup documents of job [{}]: {}",
+                            config.getId(), bulkResponse.buildFailureMessage()));
+                } else if (composite.getBuckets().size() < config.getPageSize()) {
+                    finish(upperBound, listener);
+                } else {
+                    searchPage(upperBound, composite.afterKey(), listener);
+                }
+            }, listener::onFailure));
+        }, listener::onFailure));
+    }
+
+    private void finish(long upperBound, ActionListener<Long> listener) {
+        // the rollup documents must be searchable before the checkpoint tells searches to stop reading the source documents
+        client.admin().indices().prepareRefresh(config.getRollupIndex()).execute(ActionListener.wrap(refreshResponse ->
+            clusterService.submitStateUpdateTask("rollup-checkpoint [" + config.getId() + "]", new ClusterStateUpdateTask() {
+                @Override
+                public ClusterState execute(ClusterState currentState) {
+                    RollupMetadata current = RollupMetadata.get(currentState);
+                    RollupMetadata updated = current.advanceCheckpoint(config, upperBound);
+                    if (updated == current) {
+                        return currentState;
+                    }
+                    return ClusterState.builder(currentState)
+                            .metaData(MetaData.builder(currentState.metaData()).putCustom(RollupMetadata.TYPE, updated))
+                            .build();
+                }
+
+                @Override
+                public void onFailure(String source, Exception e) {
+                    listener.onFailure(e);
+                }
+
+                @Override
+                public void clusterStateProcessed(String source, ClusterState oldState, ClusterState newState) {
+                    listener.onResponse(upperBound);
+                }
+            }), listener::onFailure));
+    }
+
+    /**
+     * Builds the search request that fetches the page of composite buckets following {@code afterKey}.
+     */
+    static SearchRequest buildSearchRequest(RollupJob job, long upperBound, Map<String, Object> afterKey) {
+        RollupJobConfig config = job.getConfig();
+        String timestampField = config.getTimestamp().getField();
+        List<CompositeValuesSourceBuilder<?>> sources = new ArrayList<>();
+        sources.add(new DateHistogramValuesSourceBuilder(timestampField).field(timestampField)
+                .interval(config.getTimestamp().getInterval().millis()));
+        for (String term : config.getTerms()) {
+            sources.add(new TermsValuesSourceBuilder(term).field(term));
+        }
+        CompositeAggregationBuilder composite = new CompositeAggregationBuilder(COMPOSITE_NAME, sources).size(config.getPageSize());
+        if (afterKey != null) {
+            composite.aggregateAfter(afterKey);
+        }
+        for (MetricConfig metricConfig : config.getMetrics()) {
+            for (Metric metric : metricConfig.getMetrics()) {
+                composite.subAggregation(metricAggregation(metricConfig.getField(), metric));
+            }
+        }
+
+        RangeQueryBuilder range = QueryBuilders.rangeQuery(timestampField).lt(upperBound).format("epoch_millis");
+        if (job.hasCheckpoint()) {
+            range.gte(job.getCheckpoint());
+        }
+        BoolQueryBuilder query = QueryBuilders.boolQuery().filter(range);
+        SearchSourceBuilder source = new SearchSourceBuilder().size(0).query(query).aggregation(composite);
+        return new SearchRequest(config.getIndexPattern()).source(source);
+    }
+
+    private static AggregationBuilder metricAggregation(String field, Metric metric) {
+        String name = metric.rollupField(field);
+        switch (metric) {
+            case MIN:
+                return AggregationBuilders.min(name).field(field);
+            case MAX:
+                return AggregationBuilders.max(name).field(field);
+            case SUM:
+                return AggregationBuilders.sum(name).field(field);
+            case VALUE_COUNT:
+                return AggregationBuilders.count(name).field(field);
+            default:
+                throw new IllegalArgumentException("unknown metric [" + metric + "]");
+        }
+    }
+
+    /**
+     * Builds the rollup document that summarizes a composite bucket.
+     */
+    static Map<String, Object> toDocument(RollupJobConfig config, Map<String, Object> key, long docCount, Aggregations aggregations) {
+        Map<String, Object> rollup = new HashMap<>();
+        rollup.put(ID_FIELD, config.getId());
+        rollup.put(DOC_COUNT_FIELD, docCount);
+        Map<String, Object> document = new HashMap<>();
+        document.put(ROLLUP_OBJECT, rollup);
+        document.put(config.getTimestamp().getField(), key.get(config.getTimestamp().getField()));
+        for (String term : config.getTerms()) {
+            document.put(term, keyValue(key.get(term)));
+        }
+        for (MetricConfig metricConfig : config.getMetrics()) {
+            for (Metric metric : metricConfig.getMetrics()) {
+                String name = metric.rollupField(metricConfig.getField());
+                NumericMetricsAggregation.SingleValue value = aggregations.get(name);
+                if (metric == Metric.VALUE_COUNT) {
+                    document.put(name, (long) value.value());
+                } else if (Double.isFinite(value.value())) {
+                    // min and max are infinite when no document of the bucket has a value for the field
+                    document.put(name, value.value());
+                }
+            }
+        }
+        return document;
+    }
+
+    /**
+     * Returns the id of the rollup document for the provided composite key. The id only depends on the job and the key so
+     * that rolling up the same bucket twice overwrites the previous document.
+     */
+    static String documentId(String jobId, Map<String, Object> key) throws IOException {
+        try (BytesStreamOutput out = new BytesStreamOutput()) {
+            for (Map.Entry<String, Object> entry : key.entrySet()) {
+                out.writeString(entry.getKey());
+                out.writeGenericValue(keyValue(entry.getValue()));
+            }
+            BytesRef bytes = out.bytes().toBytesRef();
+            MurmurHash3.Hash128 hash = MurmurHash3.hash128(bytes.bytes, bytes.offset, bytes.length, 0, new MurmurHash3.Hash128());
+            byte[] id = new byte[16];
+            for (int i = 0; i < 8; i++) {
+                id[i] = (byte) (hash.h1 >>> (i * 8));
+                id[i + 8] = (byte) (hash.h2 >>> (i * 8));
+            }
+            return jobId + "$" + Base64.getUrlEncoder().withoutPadding().encodeToString(id);
+        }
+    }
+
+    private static Object keyValue(Object value) {
+        return value instanceof BytesRef ? ((BytesRef) value).utf8ToString() : value;
+    }
+
+    /**
+     * Extracts the date format of the timestamp field from the mappings of the source indices, or {@code null} if none of
+     * them maps the field yet.
+     */
+    static String timestampFormat(GetFieldMappingsResponse response, String field) {
+        for (Map<String, Map<String, FieldMappingMetaData>> typeMappings : response.mappings().values()) {
+            for (Map<String, FieldMappingMetaData> fieldMappings : typeMappings.values()) {
+                FieldMappingMetaData mapping = fieldMappings.get(field);
+                if (mapping != null && mapping.isNull() == false) {
+                    Object definition = mapping.sourceAsMap().values().iterator().next();
+                    if (definition instanceof Map && ((Map<?, ?>) definition).get("format") != null) {
+                        return ((Map<?, ?>) definition).get("format").toString();
+                    }
+                }
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Builds the mapping of the rollup index. The timestamp keeps the date format of the source indices so that the buckets
+     * read from the rollup index format their keys the same way as the buckets read from the source indices, strings are
+     * indexed as keywords and floating point values keep their precision.
+     */
+    static XContentBuilder rollupMapping(RollupJobConfig config, String timestampFormat) throws IOException {
+        XContentBuilder mapping = XContentFactory.jsonBuilder().startObject();
+        mapping.startObject(MapperService.SINGLE_MAPPING_NAME);
+        mapping.startArray("dynamic_templates");
+        mapping.startObject().startObject("strings")
+                .field("match_mapping_type", "string")
+                .startObject("mapping").field("type", "keyword").endObject()
+                .endObject().endObject();
+        mapping.startObject().startObject("doubles")
+                .field("match_mapping_type", "double")
+                .startObject("mapping").field("type", "double").endObject()
+                .endObject().endObject();
+        mapping.endArray();
+        mapping.startObject("properties");
+        mapping.startObject(ROLLUP_OBJECT).startObject("properties");
+        mapping.startObject(ID_FIELD).field("type", "keyword").endObject();
+        mapping.startObject(DOC_COUNT_FIELD).field("type", "long").endObject();
+        mapping.endObject().endObject();
+        mapping.startObject(config.getTimestamp().getField())
+                .field("type", "date")
+                .field("format", timestampFormat + "||epoch_millis")
+                .endObject();
+        mapping.endObject();
+        mapping.endObject();
+        return mapping.endObject();
+    }
+}
@@ -0,0 +1,137 @@
+/*
+ * Licensed to Elasticsearch under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Elasticsearch licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.elasticsearch.rollup;
+
+import org.elasticsearch.cluster.AbstractDiffable;
+import org.elasticsearch.cluster.Diff;
+import org.elasticsearch.common.ParseField;
+import org.elasticsearch.common.Strings;
+import org.elasticsearch.common.io.stream.StreamInput;
+import org.elasticsearch.common.io.stream.StreamOutput;
+import org.elasticsearch.common.xcontent.ConstructingObjectParser;
+import org.elasticsearch.common.xcontent.ToXContentObject;
+import org.elasticsearch.common.xcontent.XContentBuilder;
+import org.elasticsearch.common.xcontent.XContentParser;
+
+import java.io.IOException;
+import java.util.Objects;
+
+import static org.elasticsearch.common.xcontent.ConstructingObjectParser.constructorArg;
+import static org.elasticsearch.common.xcontent.ConstructingObjectParser.optionalConstructorArg;
+
+/**
+ * A rollup job as it is stored in the cluster state: its configuration and the checkpoint up to which the source
+ * indices have been rolled up. Every document with a timestamp strictly before the checkpoint is summarized in the
+ * rollup index, more recent documents are only available in the source indices.
+ */
+public class RollupJob extends AbstractDiffable<RollupJob> implements ToXContentObject {
+
+    /**
+     * Checkpoint of a job that has not rolled up anything yet.
+     */
+    public static final long NO_CHECKPOINT = Long.MIN_VALUE;
+
+    static final ParseField CONFIG_FIELD = new ParseField("config");
+    static final ParseField CHECKPOINT_FIELD = new ParseField("checkpoint");
+
+    private static final ConstructingObjectParser<RollupJob, Void> PARSER = new ConstructingObjectParser<>("rollup_job_state",
+            a -> new RollupJob((RollupJobConfig) a[0], a[1] == null ? NO_CHECKPOINT : (Long) a[1]));
+
+    static {
+        PARSER.declareObject(constructorArg(), (p, c) -> RollupJobConfig.fromXContent(p, null), CONFIG_FIELD);
+        PARSER.declareLong(optionalConstructorArg(), CHECKPOINT_FIELD);
+    }
+
+    private final RollupJobConfig config;
+    private final long checkpoint;
+
+    public RollupJob(RollupJobConfig config, long checkpoint) {
+        this.config = Objects.requireNonNull(config);
+        this.checkpoint = checkpoint;
+    }
+
+    public RollupJob(StreamInput in) throws IOException {
+        config = new RollupJobConfig(in);
+        checkpoint = in.readLong();
+    }
+
+    @Override
+    public void writeTo(StreamOutput out) throws IOException {
+        config.writeTo(out);
+        out.writeLong(checkpoint);
+    }
+
+    public static Diff<RollupJob> readDiffFrom(StreamInput in) throws IOException {
+        return readDiffFrom(RollupJob::new, in);
+    }
+
+    public static RollupJob fromXContent(XContentParser parser) {
+        return PARSER.apply(parser, null);
+    }
+
+    public String getId() {
+        return config.getId();
+    }
+
+    public RollupJobConfig getConfig() {
+        return config;
+    }
+
+    public long getCheckpoint() {
+        return checkpoint;
+    }
+
+    public boolean hasCheckpoint() {
+        return checkpoint != NO_CHECKPOINT;
+    }
+
+    @Override
+    public XContentBuilder toXContent(XContentBuilder builder, Params params) throws IOException {
+        builder.startObject();
+        builder.field(CONFIG_FIELD.getPreferredName(), config);
+        if (hasCheckpoint()) {
+            builder.field(CHECKPOINT_FIELD.getPreferredName(), checkpoint);
+        }
+        builder.endObject();
+        return builder;
+    }
+
+    @Override
+    public String toString() {
+        return Strings.toString(this);
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        if (this == obj) {
+            return true;
+        }
+        if (obj == null || getClass() != obj.getClass()) {
+            return false;
+        }
+        RollupJob other = (RollupJob) obj;
+        return checkpoint == other.checkpoint && Objects.equals(config, other.config);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(config, checkpoint);
+    }
+}
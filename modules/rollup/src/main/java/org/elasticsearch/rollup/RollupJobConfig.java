@@ -0,0 +1,474 @@
+/*
+ * Licensed to Elasticsearch under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Elasticsearch licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.elasticsearch.rollup;
+
+import org.elasticsearch.common.ParseField;
+import org.elasticsearch.common.Strings;
+import org.elasticsearch.common.io.stream.StreamInput;
+import org.elasticsearch.common.io.stream.StreamOutput;
+import org.elasticsearch.common.io.stream.Writeable;
+import org.elasticsearch.common.unit.TimeValue;
+import org.elasticsearch.common.xcontent.ConstructingObjectParser;
+import org.elasticsearch.common.xcontent.ObjectParser.ValueType;
+import org.elasticsearch.common.xcontent.ToXContentObject;
+import org.elasticsearch.common.xcontent.XContentBuilder;
+import org.elasticsearch.common.xcontent.XContentParser;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Objects;
+import java.util.Set;
+
+import static org.elasticsearch.common.xcontent.ConstructingObjectParser.constructorArg;
+import static org.elasticsearch.common.xcontent.ConstructingObjectParser.optionalConstructorArg;
+
+/**
+ * The definition of a rollup job: which indices to summarize, how to group their documents and which metrics to keep
+ * for every group.
+ * <p>
+ * The json structure of a job definition:
+ * <pre>
+ * {
+ *   "index_pattern": "logs-*",
+ *   "rollup_index": "logs-rollup",
+ *   "timestamp": { "field": "@timestamp", "interval": "1h", "delay": "10m" },
+ *   "terms": [ "host" ],
+ *   "metrics": [ { "field": "bytes", "metrics": [ "min", "max", "sum", "value_count" ] } ],
+ *   "page_size": 1000
+ * }
+ * </pre>
+ */
+public class RollupJobConfig implements Writeable, ToXContentObject {
+
+    public static final int DEFAULT_PAGE_SIZE = 1000;
+
+    static final ParseField ID_FIELD = new ParseField("id");
+    static final ParseField INDEX_PATTERN_FIELD = new ParseField("index_pattern");
+    static final ParseField ROLLUP_INDEX_FIELD = new ParseField("rollup_index");
+    static final ParseField TIMESTAMP_FIELD = new ParseField("timestamp");
+    static final ParseField TERMS_FIELD = new ParseField("terms");
+    static final ParseField METRICS_FIELD = new ParseField("metrics");
+    static final ParseField PAGE_SIZE_FIELD = new ParseField("page_size");
+
+    @SuppressWarnings("unchecked")
+    private static final ConstructingObjectParser<RollupJobConfig, String> PARSER = new ConstructingObjectParser<>("rollup_job", false,
+            (a, id) -> {
+                String parsedId = (String) a[0];
+                if (parsedId != null && id != null && parsedId.equals(id) == false) {
+                    throw new IllegalArgumentException("rollup job id [" + parsedId + "] in the body does not match [" + id + "]");
+                }
+                return new RollupJobConfig(parsedId == null ? id : parsedId, (String) a[1], (String) a[2], (TimestampConfig) a[3],
+                        (List<String>) a[4], (List<MetricConfig>) a[5], a[6] == null ? DEFAULT_PAGE_SIZE : (Integer) a[6]);
+            });
+
+    static {
+        PARSER.declareString(optionalConstructorArg(), ID_FIELD);
+        PARSER.declareString(constructorArg(), INDEX_PATTERN_FIELD);
+        PARSER.declareString(constructorArg(), ROLLUP_INDEX_FIELD);
+        PARSER.declareObject(constructorArg(), (p, c) -> TimestampConfig.fromXContent(p), TIMESTAMP_FIELD);
+        PARSER.declareStringArray(optionalConstructorArg(), TERMS_FIELD);
+        PARSER.declareObjectArray(optionalConstructorArg(), (p, c) -> MetricConfig.fromXContent(p), METRICS_FIELD);
+        PARSER.declareInt(optionalConstructorArg(), PAGE_SIZE_FIELD);
+    }
+
+    private final String id;
+    private final String indexPattern;
+    private final String rollupIndex;
+    private final TimestampConfig timestamp;
+    private final List<String> terms;
+    private final List<MetricConfig> metrics;
+    private final int pageSize;
+
+    public RollupJobConfig(String id, String indexPattern, String rollupIndex, TimestampConfig timestamp, List<String> terms,
+                           List<MetricConfig> metrics, int pageSize) {
+        if (Strings.isNullOrEmpty(id)) {
+            throw new IllegalArgumentException("rollup job id must be set");
+        }
+        if (Strings.isNullOrEmpty(indexPattern)) {
+            throw new IllegalArgumentException("[" + INDEX_PATTERN_FIELD.getPreferredName() + "] must be set");
+        }
+        if (Strings.isNullOrEmpty(rollupIndex)) {
+            throw new IllegalArgumentException("[" + ROLLUP_INDEX_FIELD.getPreferredName() + "] must be set");
+        }
+        if (pageSize <= 0) {
+            throw new IllegalArgumentException("[" + PAGE_SIZE_FIELD.getPreferredName() + "] must be greater than 0, got ["
+                    + pageSize + "]");
+        }
+        this.id = id;
+        this.indexPattern = indexPattern;
+        this.rollupIndex = rollupIndex;
+        this.timestamp = Objects.requireNonNull(timestamp);
+        this.terms = terms == null ? Collections.emptyList() : Collections.unmodifiableList(new ArrayList<>(terms));
+        this.metrics = metrics == null ? Collections.emptyList() : Collections.unmodifiableList(new ArrayList<>(metrics));
+        this.pageSize = pageSize;
+
+        Set<String> fields = new HashSet<>();
+        fields.add(timestamp.getField());
+        for (String term : this.terms) {
+            if (fields.add(term) == false) {
+                throw new IllegalArgumentException("field [" + term + "] is used more than once in rollup job [" + id + "]");
+            }
+        }
+        for (MetricConfig metric : this.metrics) {
+            if (fields.add(metric.getField()) == false) {
+                throw new IllegalArgumentException("field [" + metric.getField() + "] is used more than once in rollup job [" + id + "]");
+            }
+        }
+    }
+
+    public RollupJobConfig(StreamInput in) throws IOException {
+        id = in.readString();
+        indexPattern = in.readString();
+        rollupIndex = in.readString();
+        timestamp = new TimestampConfig(in);
+        terms = Collections.unmodifiableList(in.readList(StreamInput::readString));
+        metrics = Collections.unmodifiableList(in.readList(MetricConfig::new));
+        pageSize = in.readVInt();
+    }
+
+    @Override
+    public void writeTo(StreamOutput out) throws IOException {
+        out.writeString(id);
+        out.writeString(indexPattern);
+        out.writeString(rollupIndex);
+        timestamp.writeTo(out);
+        out.writeStringList(terms);
+        out.writeList(metrics);
+        out.writeVInt(pageSize);
+    }
+
+    public static RollupJobConfig fromXContent(XContentParser parser, String id) {
+        return PARSER.apply(parser, id);
+    }
+
+    public String getId() {
+        return id;
+    }
+
+    public String getIndexPattern() {
+        return indexPattern;
+    }
+
+    public String getRollupIndex() {
+        return rollupIndex;
+    }
+
+    public TimestampConfig getTimestamp() {
+        return timestamp;
+    }
+
+    public List<String> getTerms() {
+        return terms;
+    }
+
+    public List<MetricConfig> getMetrics() {
+        return metrics;
+    }
+
+    /**
+     * Returns the metric configuration of the provided field or {@code null} if the job doesn't roll up this field.
+     */
+    public MetricConfig getMetric(String field) {
+        for (MetricConfig metric : metrics) {
+            if (metric.getField().equals(field)) {
+                return metric;
+            }
+        }
+        return null;
+    }
+
+    public int getPageSize() {
+        return pageSize;
+    }
+
+    @Override
+    public XContentBuilder toXContent(XContentBuilder builder, Params params) throws IOException {
+        builder.startObject();
+        builder.field(ID_FIELD.getPreferredName(), id);
+        builder.field(INDEX_PATTERN_FIELD.getPreferredName(), indexPattern);
+        builder.field(ROLLUP_INDEX_FIELD.getPreferredName(), rollupIndex);
+        builder.field(TIMESTAMP_FIELD.getPreferredName(), timestamp);
+        builder.field(TERMS_FIELD.getPreferredName(), terms);
+        builder.startArray(METRICS_FIELD.getPreferredName());
+        for (MetricConfig metric : metrics) {
+            metric.toXContent(builder, params);
+        }
+        builder.endArray();
+        builder.field(PAGE_SIZE_FIELD.getPreferredName(), pageSize);
+        builder.endObject();
+        return builder;
+    }
+
+    @Override
+    public String toString() {
+        return Strings.toString(this);
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        if (this == obj) {
+            return true;
+        }
+        if (obj == null || getClass() != obj.getClass()) {
+            return false;
+        }
+        RollupJobConfig other = (RollupJobConfig) obj;
+        return Objects.equals(id, other.id)
+                && Objects.equals(indexPattern, other.indexPattern)
+                && Objects.equals(rollupIndex, other.rollupIndex)
+                && Objects.equals(timestamp, other.timestamp)
+                && Objects.equals(terms, other.terms)
+                && Objects.equals(metrics, other.metrics)
+                && pageSize == other.pageSize;
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(id, indexPattern, rollupIndex, timestamp, terms, metrics, pageSize);
+    }
+
+    /**
+     * The date field that the job buckets on, the fixed interval of the buckets and how long to wait before a bucket is
+     * considered complete and gets rolled up.
+     */
+    public static class TimestampConfig implements Writeable, ToXContentObject {
+
+        static final ParseField FIELD_FIELD = new ParseField("field");
+        static final ParseField INTERVAL_FIELD = new ParseField("interval");
+        static final ParseField DELAY_FIELD = new ParseField("delay");
+
+        private static final ConstructingObjectParser<TimestampConfig, Void> PARSER = new ConstructingObjectParser<>("rollup_timestamp",
+                a -> new TimestampConfig((String) a[0], (TimeValue) a[1], a[2] == null ? TimeValue.ZERO : (TimeValue) a[2]));
+
+        static {
+            PARSER.declareString(constructorArg(), FIELD_FIELD);
+            PARSER.declareField(constructorArg(), p -> TimeValue.parseTimeValue(p.text(), INTERVAL_FIELD.getPreferredName()),
+                    INTERVAL_FIELD, ValueType.STRING);
+            PARSER.declareField(optionalConstructorArg(), p -> TimeValue.parseTimeValue(p.text(), DELAY_FIELD.getPreferredName()),
+                    DELAY_FIELD, ValueType.STRING);
+        }
+
+        private final String field;
+        private final TimeValue interval;
+        private final TimeValue delay;
+
+        public TimestampConfig(String field, TimeValue interval, TimeValue delay) {
+            if (Strings.isNullOrEmpty(field)) {
+                throw new IllegalArgumentException("[" + FIELD_FIELD.getPreferredName() + "] of the timestamp must be set");
+            }
+            if (interval == null || interval.millis() <= 0) {
+                throw new IllegalArgumentException("[" + INTERVAL_FIELD.getPreferredName() + "] of the timestamp must be positive");
+            }
+            if (delay == null || delay.millis() < 0) {
+                throw new IllegalArgumentException("[" + DELAY_FIELD.getPreferredName() + "] of the timestamp must not be negative");
+            }
+            this.field = field;
+            this.interval = interval;
+            this.delay = delay;
+        }
+
+        TimestampConfig(StreamInput in) throws IOException {
+            field = in.readString();
+            interval = new TimeValue(in);
+            delay = new TimeValue(in);
+        }
+
+        @Override
+        public void writeTo(StreamOutput out) throws IOException {
+            out.writeString(field);
+            interval.writeTo(out);
+            delay.writeTo(out);
+        }
+
+        static TimestampConfig fromXContent(XContentParser parser) {
+            return PARSER.apply(parser, null);
+        }
+
+        public String getField() {
+            return field;
+        }
+
+        public TimeValue getInterval() {
+            return interval;
+        }
+
+        public TimeValue getDelay() {
+            return delay;
+        }
+
+        /**
+         * Rounds the provided timestamp down to the start of the rollup bucket that contains it.
+         */
+        public long round(long timestamp) {
+            return Math.floorDiv(timestamp, interval.millis()) * interval.millis();
+        }
+
+        @Override
+        public XContentBuilder toXContent(XContentBuilder builder, Params params) throws IOException {
+            builder.startObject();
+            builder.field(FIELD_FIELD.getPreferredName(), field);
+            builder.field(INTERVAL_FIELD.getPreferredName(), interval.getStringRep());
+            builder.field(DELAY_FIELD.getPreferredName(), delay.getStringRep());
+            builder.endObject();
+            return builder;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (this == obj) {
+                return true;
+            }
+            if (obj == null || getClass() != obj.getClass()) {
+                return false;
+            }
+            TimestampConfig other = (TimestampConfig) obj;
+            return Objects.equals(field, other.field) && Objects.equals(interval, other.interval) && Objects.equals(delay, other.delay);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(field, interval, delay);
+        }
+    }
+
+    /**
+     * The metrics that the job keeps for a numeric field.
+     */
+    public enum Metric {
+        MIN, MAX, SUM, VALUE_COUNT;
+
+        public static Metric fromString(String name) {
+            return valueOf(name.toUpperCase(Locale.ROOT));
+        }
+
+        /**
+         * The name of the rollup index field that holds this metric for the provided source field.
+         */
+        public String rollupField(String field) {
+            return field + "." + toString();
+        }
+
+        @Override
+        public String toString() {
+            return name().toLowerCase(Locale.ROOT);
+        }
+    }
+
+    /**
+     * A numeric field and the metrics to keep for it.
+     */
+    public static class MetricConfig implements Writeable, ToXContentObject {
+
+        static final ParseField FIELD_FIELD = new ParseField("field");
+
+        @SuppressWarnings("unchecked")
+        private static final ConstructingObjectParser<MetricConfig, Void> PARSER = new ConstructingObjectParser<>("rollup_metric",
+                a -> {
+                    List<Metric> metrics = new ArrayList<>();
+                    for (String metric : (List<String>) a[1]) {
+                        metrics.add(Metric.fromString(metric));
+                    }
+                    return new MetricConfig((String) a[0], metrics);
+                });
+
+        static {
+            PARSER.declareString(constructorArg(), FIELD_FIELD);
+            PARSER.declareStringArray(constructorArg(), METRICS_FIELD);
+        }
+
+        private final String field;
+        private final List<Metric> metrics;
+
+        public MetricConfig(String field, List<Metric> metrics) {
+            if (Strings.isNullOrEmpty(field)) {
+                throw new IllegalArgumentException("[" + FIELD_FIELD.getPreferredName() + "] of the metric must be set");
+            }
+            if (metrics == null || metrics.isEmpty()) {
+                throw new IllegalArgumentException("at least one metric must be configured for field [" + field + "]");
+            }
+            this.field = field;
+            this.metrics = Collections.unmodifiableList(new ArrayList<>(metrics));
+        }
+
+        MetricConfig(StreamInput in) throws IOException {
+            field = in.readString();
+            metrics = Collections.unmodifiableList(in.readList(i -> i.readEnum(Metric.class)));
+        }
+
+        @Override
+        public void writeTo(StreamOutput out) throws IOException {
+            out.writeString(field);
+            out.writeVInt(metrics.size());
+            for (Metric metric : metrics) {
+                out.writeEnum(metric);
+            }
+        }
+
+        static MetricConfig fromXContent(XContentParser parser) {
+            return PARSER.apply(parser, null);
+        }
+
+        public String getField() {
+            return field;
+        }
+
+        public List<Metric> getMetrics() {
+            return metrics;
+        }
+
+        public boolean hasMetric(Metric metric) {
+            return metrics.contains(metric);
+        }
+
+        @Override
+        public XContentBuilder toXContent(XContentBuilder builder, Params params) throws IOException {
+            builder.startObject();
+            builder.field(FIELD_FIELD.getPreferredName(), field);
+            builder.startArray(METRICS_FIELD.getPreferredName());
+            for (Metric metric : metrics) {
+                builder.value(metric.toString());
+            }
+            builder.endArray();
+            builder.endObject();
+            return builder;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (this == obj) {
+                return true;
+            }
+            if (obj == null || getClass() != obj.getClass()) {
+                return false;
+            }
+            MetricConfig other = (MetricConfig) obj;
+            return Objects.equals(field, other.field) && Objects.equals(metrics, other.metrics);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(field, metrics);
+        }
+    }
+}
@@ -0,0 +1,104 @@
+/*
+ * Licensed to Elasticsearch under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Elasticsearch licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.elasticsearch.rollup;
+
+import org.apache.logging.log4j.message.ParameterizedMessage;
+import org.apache.logging.log4j.util.Supplier;
+import org.elasticsearch.action.ActionListener;
+import org.elasticsearch.client.Client;
+import org.elasticsearch.cluster.LocalNodeMasterListener;
+import org.elasticsearch.cluster.service.ClusterService;
+import org.elasticsearch.common.component.AbstractComponent;
+import org.elasticsearch.common.settings.Setting;
+import org.elasticsearch.common.settings.Settings;
+import org.elasticsearch.common.unit.TimeValue;
+import org.elasticsearch.threadpool.ThreadPool;
+
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Periodically runs the rollup jobs of the cluster. Jobs only run on the elected master node, which also owns their
+ * checkpoints, and a job never runs concurrently with itself.
+ */
+public class RollupJobRunner extends AbstractComponent implements LocalNodeMasterListener {
+
+    public static final Setting<TimeValue> POLL_INTERVAL_SETTING = Setting.timeSetting("rollup.poll_interval",
+            TimeValue.timeValueSeconds(30), TimeValue.timeValueSeconds(1), Setting.Property.NodeScope);
+
+    private final Client client;
+    private final ClusterService clusterService;
+    private final ThreadPool threadPool;
+    private final TimeValue pollInterval;
+    private final Set<String> runningJobs = ConcurrentHashMap.newKeySet();
+    private volatile ThreadPool.Cancellable scheduled;
+
+    public RollupJobRunner(Settings settings, Client client, ClusterService clusterService, ThreadPool threadPool) {
+        super(settings);
+        this.client = client;
+        this.clusterService = clusterService;
+        this.threadPool = threadPool;
+        this.pollInterval = POLL_INTERVAL_SETTING.get(settings);
+        clusterService.addLocalNodeMasterListener(this);
+    }
+
+    @Override
+    public void onMaster() {
+        scheduled = threadPool.scheduleWithFixedDelay(this::triggerJobs, pollInterval, ThreadPool.Names.GENERIC);
+    }
+
+    @Override
+    public void offMaster() {
+        ThreadPool.Cancellable scheduled = this.scheduled;
+        if (scheduled != null) {
+            scheduled.cancel();
+            this.scheduled = null;
+        }
+    }
+
+    @Override
+    public String executorName() {
+        return ThreadPool.Names.SAME;
+    }
+
+    /**
+     * Starts a pass of every job that is not running yet.
+     */
+    void triggerJobs() {
+        long now = threadPool.absoluteTimeInMillis();
+        for (RollupJob job : RollupMetadata.get(clusterService.state()).getJobs().values()) {
+            if (runningJobs.add(job.getId()) == false) {
+                continue;
+            }
+            try {
+                new RollupIndexer(logger, client, clusterService, job, now).run(ActionListener.wrap(checkpoint -> {
+                    runningJobs.remove(job.getId());
+                    logger.trace("rollup job [{}] is at checkpoint [{}]", job.getId(), checkpoint);
+                }, e -> {
+                    runningJobs.remove(job.getId());
+                    logger.warn((Supplier<?>) () -> new ParameterizedMessage("rollup job [{}] failed", job.getId()), e);
+                }));
+            } catch (Exception e) {
+                runningJobs.remove(job.getId());
+                logger.warn((Supplier<?>) () -> new ParameterizedMessage("rollup job [{}] failed to start", job.getId()), e);
+            }
+        }
+    }
+}
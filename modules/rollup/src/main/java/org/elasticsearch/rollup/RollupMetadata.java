@@ -0,0 +1,224 @@
+/*
+ * Licensed to Elasticsearch under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Elasticsearch licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.elasticsearch.rollup;
+
+import org.elasticsearch.ResourceAlreadyExistsException;
+import org.elasticsearch.ResourceNotFoundException;
+import org.elasticsearch.cluster.ClusterState;
+import org.elasticsearch.cluster.Diff;
+import org.elasticsearch.cluster.DiffableUtils;
+import org.elasticsearch.cluster.NamedDiff;
+import org.elasticsearch.cluster.metadata.MetaData;
+import org.elasticsearch.common.ParseField;
+import org.elasticsearch.common.io.stream.StreamInput;
+import org.elasticsearch.common.io.stream.StreamOutput;
+import org.elasticsearch.common.xcontent.ObjectParser;
+import org.elasticsearch.common.xcontent.XContentBuilder;
+import org.elasticsearch.common.xcontent.XContentParser;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Holds the rollup jobs of the cluster together with their checkpoints.
+ */
+public final class RollupMetadata implements MetaData.Custom {
+
+    public static final String TYPE = "rollup";
+    public static final RollupMetadata EMPTY = new RollupMetadata(Collections.emptyMap());
+
+    private static final ParseField JOBS_FIELD = new ParseField("jobs");
+    private static final ObjectParser<List<RollupJob>, Void> PARSER = new ObjectParser<>("rollup_metadata", ArrayList::new);
+
+    static {
+        PARSER.declareObjectArray(List::addAll, (p, c) -> RollupJob.fromXContent(p), JOBS_FIELD);
+    }
+
+    private final Map<String, RollupJob> jobs;
+
+    public RollupMetadata(Map<String, RollupJob> jobs) {
+        this.jobs = Collections.unmodifiableMap(jobs);
+    }
+
+    public RollupMetadata(StreamInput in) throws IOException {
+        int size = in.readVInt();
+        Map<String, RollupJob> jobs = new HashMap<>(size);
+        for (int i = 0; i < size; i++) {
+            RollupJob job = new RollupJob(in);
+            jobs.put(job.getId(), job);
+        }
+        this.jobs = Collections.unmodifiableMap(jobs);
+    }
+
+    @Override
+    public void writeTo(StreamOutput out) throws IOException {
+        out.writeVInt(jobs.size());
+        for (RollupJob job : jobs.values()) {
+            job.writeTo(out);
+        }
+    }
+
+    public static RollupMetadata fromXContent(XContentParser parser) throws IOException {
+        Map<String, RollupJob> jobs = new HashMap<>();
+        for (RollupJob job : PARSER.parse(parser, null)) {
+            jobs.put(job.getId(), job);
+        }
+        return new RollupMetadata(jobs);
+    }
+
+    /**
+     * Returns the rollup metadata of the provided cluster state, never {@code null}.
+     */
+    public static RollupMetadata get(ClusterState state) {
+        RollupMetadata metadata = state.metaData().custom(TYPE);
+        return metadata == null ? EMPTY : metadata;
+    }
+
+    @Override
+    public String getWriteableName() {
+        return TYPE;
+    }
+
+    public Map<String, RollupJob> getJobs() {
+        return jobs;
+    }
+
+    public RollupJob getJob(String id) {
+        return jobs.get(id);
+    }
+
+    /**
+     * Returns a copy of this metadata with the provided job added.
+     */
+    public RollupMetadata putJob(RollupJobConfig config) {
+        if (jobs.containsKey(config.getId())) {
+            throw new ResourceAlreadyExistsException("rollup job [{}] already exists", config.getId());
+        }
+        for (RollupJob job : jobs.values()) {
+            if (job.getConfig().getRollupIndex().equals(config.getRollupIndex())) {
+                throw new IllegalArgumentException("rollup index [" + config.getRollupIndex() + "] is already used by rollup job ["
+                        + job.getId() + "]");
+            }
+        }
+        Map<String, RollupJob> newJobs = new HashMap<>(jobs);
+        newJobs.put(config.getId(), new RollupJob(config, RollupJob.NO_CHECKPOINT));
+        return new RollupMetadata(newJobs);
+    }
+
+    /**
+     * Returns a copy of this metadata without the provided job.
+     */
+    public RollupMetadata removeJob(String id) {
+        if (jobs.containsKey(id) == false) {
+            throw new ResourceNotFoundException("rollup job [{}] does not exist", id);
+        }
+        Map<String, RollupJob> newJobs = new HashMap<>(jobs);
+        newJobs.remove(id);
+        return new RollupMetadata(newJobs);
+    }
+
+    /**
+     * Returns a copy of this metadata where the checkpoint of the provided job moved forward, or this metadata if the job
+     * was removed or redefined in the meantime or if its checkpoint is already further.
+     */
+    public RollupMetadata advanceCheckpoint(RollupJobConfig config, long checkpoint) {
+        RollupJob job = jobs.get(config.getId());
+        if (job == null || job.getConfig().equals(config) == false || job.getCheckpoint() >= checkpoint) {
+            return this;
+        }
+        Map<String, RollupJob> newJobs = new HashMap<>(jobs);
+        newJobs.put(config.getId(), new RollupJob(config, checkpoint));
+        return new RollupMetadata(newJobs);
+    }
+
+    @Override
+    public XContentBuilder toXContent(XContentBuilder builder, Params params) throws IOException {
+        builder.startArray(JOBS_FIELD.getPreferredName());
+        for (RollupJob job : jobs.values()) {
+            job.toXContent(builder, params);
+        }
+        builder.endArray();
+        return builder;
+    }
+
+    @Override
+    public EnumSet<MetaData.XContentContext> context() {
+        // the checkpoints describe the content of the rollup indices, which a snapshot doesn't necessarily restore together
+        return MetaData.API_AND_GATEWAY;
+    }
+
+    @Override
+    public Diff<MetaData.Custom> diff(MetaData.Custom before) {
+        return new RollupMetadataDiff((RollupMetadata) before, this);
+    }
+
+    public static NamedDiff<MetaData.Custom> readDiffFrom(StreamInput in) throws IOException {
+        return new RollupMetadataDiff(in);
+    }
+
+    static class RollupMetadataDiff implements NamedDiff<MetaData.Custom> {
+
+        final Diff<Map<String, RollupJob>> jobs;
+
+        RollupMetadataDiff(RollupMetadata before, RollupMetadata after) {
+            this.jobs = DiffableUtils.diff(before.jobs, after.jobs, DiffableUtils.getStringKeySerializer());
+        }
+
+        RollupMetadataDiff(StreamInput in) throws IOException {
+            jobs = DiffableUtils.readJdkMapDiff(in, DiffableUtils.getStringKeySerializer(), RollupJob::new, RollupJob::readDiffFrom);
+        }
+
+        @Override
+        public MetaData.Custom apply(MetaData.Custom part) {
+            return new RollupMetadata(jobs.apply(((RollupMetadata) part).jobs));
+        }
+
+        @Override
+        public void writeTo(StreamOutput out) throws IOException {
+            jobs.writeTo(out);
+        }
+
+        @Override
+        public String getWriteableName() {
+            return TYPE;
+        }
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (o == null || getClass() != o.getClass()) {
+            return false;
+        }
+        return jobs.equals(((RollupMetadata) o).jobs);
+    }
+
+    @Override
+    public int hashCode() {
+        return jobs.hashCode();
+    }
+}
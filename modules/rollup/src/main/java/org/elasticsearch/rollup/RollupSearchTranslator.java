@@ -0,0 +1,451 @@
+/*
+ * Licensed to Elasticsearch under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Elasticsearch licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.elasticsearch.rollup;
+
+import org.apache.lucene.util.BytesRef;
+import org.elasticsearch.common.Strings;
+import org.elasticsearch.common.rounding.DateTimeUnit;
+import org.elasticsearch.common.unit.TimeValue;
+import org.elasticsearch.index.query.BoolQueryBuilder;
+import org.elasticsearch.index.query.MatchAllQueryBuilder;
+import org.elasticsearch.index.query.QueryBuilder;
+import org.elasticsearch.index.query.QueryBuilders;
+import org.elasticsearch.rollup.RollupJobConfig.Metric;
+import org.elasticsearch.rollup.RollupJobConfig.MetricConfig;
+import org.elasticsearch.search.DocValueFormat;
+import org.elasticsearch.search.aggregations.AggregationBuilder;
+import org.elasticsearch.search.aggregations.AggregationBuilders;
+import org.elasticsearch.search.aggregations.BucketOrder;
+import org.elasticsearch.search.aggregations.InternalAggregation;
+import org.elasticsearch.search.aggregations.InternalAggregations;
+import org.elasticsearch.search.aggregations.InternalOrder;
+import org.elasticsearch.search.aggregations.bucket.histogram.DateHistogramAggregationBuilder;
+import org.elasticsearch.search.aggregations.bucket.histogram.DateHistogramInterval;
+import org.elasticsearch.search.aggregations.bucket.histogram.InternalDateHistogram;
+import org.elasticsearch.search.aggregations.bucket.terms.LongTerms;
+import org.elasticsearch.search.aggregations.bucket.terms.StringTerms;
+import org.elasticsearch.search.aggregations.bucket.terms.TermsAggregationBuilder;
+import org.elasticsearch.search.aggregations.bucket.terms.UnmappedTerms;
+import org.elasticsearch.search.aggregations.metrics.avg.AvgAggregationBuilder;
+import org.elasticsearch.search.aggregations.metrics.avg.InternalAvg;
+import org.elasticsearch.search.aggregations.metrics.max.MaxAggregationBuilder;
+import org.elasticsearch.search.aggregations.metrics.min.MinAggregationBuilder;
+import org.elasticsearch.search.aggregations.metrics.sum.InternalSum;
+import org.elasticsearch.search.aggregations.metrics.sum.SumAggregationBuilder;
+import org.elasticsearch.search.aggregations.metrics.valuecount.InternalValueCount;
+import org.elasticsearch.search.aggregations.metrics.valuecount.ValueCountAggregationBuilder;
+import org.elasticsearch.search.aggregations.support.ValuesSourceAggregationBuilder;
+import org.elasticsearch.search.builder.SearchSourceBuilder;
+import org.joda.time.DateTimeZone;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Answers aggregation requests on the source indices of a rollup job from its rollup index.
+ * <p>
+ * An eligible request is split in two: the documents before the checkpoint of the job are aggregated from the rollup
+ * index, the more recent ones from the source indices. The aggregations of the rollup request read the pre-computed
+ * metrics instead of the source fields and count documents by summing the number of source documents that each rollup
+ * document stands for. Their response is then translated back into the shape of the original request so that both
+ * responses can be reduced together.
+ * <p>
+ * A request is eligible when it only asks for aggregations and only uses what the job keeps: {@code date_histogram} on
+ * the timestamp with an interval that is a multiple of the job interval in UTC, {@code terms} on the grouped fields,
+ * and {@code min}, {@code max}, {@code sum}, {@code value_count} and {@code avg} on the rolled up metrics.
+ */
+public final class RollupSearchTranslator {
+
+    /**
+     * Name of the hidden aggregation that counts the source documents of a bucket in the rollup index.
+     */
+    static final String DOC_COUNT_AGG = "_rollup_doc_count";
+    static final String AVG_SUM_PREFIX = "_rollup_sum_";
+    static final String AVG_COUNT_PREFIX = "_rollup_count_";
+
+    private static final long MILLIS_PER_DAY = TimeValue.timeValueHours(24).millis();
+
+    private RollupSearchTranslator() {}
+
+    /**
+     * Returns the job that rolls up exactly the provided indices or {@code null} if there is none.
+     */
+    public static RollupJob findJob(RollupMetadata metadata, String[] indices) {
+        String indexPattern = Strings.arrayToCommaDelimitedString(indices);
+        for (RollupJob job : metadata.getJobs().values()) {
+            if (job.getConfig().getIndexPattern().equals(indexPattern)) {
+                return job;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Returns why the provided search can't be answered from the rollup index of the job, or {@code null} if it can.
+     */
+    public static String checkEligible(RollupJob job, SearchSourceBuilder source) {
+        if (job.hasCheckpoint() == false) {
+            return "rollup job [" + job.getId() + "] has not rolled up any data yet";
+        }
+        if (source == null || source.aggregations() == null || source.aggregations().getAggregatorFactories().isEmpty()) {
+            return "the request has no aggregations";
+        }
+        if (source.size() != 0) {
+            return "the request asks for search hits";
+        }
+        if (source.query() != null && source.query() instanceof MatchAllQueryBuilder == false) {
+            return "the request has a query";
+        }
+        if (source.postFilter() != null || source.suggest() != null) {
+            return "the request has a post filter or suggestions";
+        }
+        if (source.aggregations().getPipelineAggregatorFactories().isEmpty() == false) {
+            return "the request has pipeline aggregations";
+        }
+        return checkEligible(job.getConfig(), source.aggregations().getAggregatorFactories());
+    }
+
+    private static String checkEligible(RollupJobConfig config, Collection<AggregationBuilder> aggregations) {
+        for (AggregationBuilder aggregation : aggregations) {
+            String reason = checkEligible(config, aggregation);
+            if (reason != null) {
+                return reason;
+            }
+        }
+        return null;
+    }
+
+    private static String checkEligible(RollupJobConfig config, AggregationBuilder aggregation) {
+        if (aggregation.getPipelineAggregations().isEmpty() == false) {
+            return "aggregation [" + aggregation.getName() + "] has pipeline aggregations";
+        }
+        if (aggregation instanceof ValuesSourceAggregationBuilder == false) {
+            return "aggregation [" + aggregation.getName() + "] of type [" + aggregation.getType() + "] is not supported";
+        }
+        ValuesSourceAggregationBuilder<?, ?> valuesSource = (ValuesSourceAggregationBuilder<?, ?>) aggregation;
+        if (valuesSource.field() == null || valuesSource.script() != null || valuesSource.missing() != null) {
+            return "aggregation [" + aggregation.getName() + "] must target a field without script or missing value";
+        }
+        if (aggregation instanceof DateHistogramAggregationBuilder) {
+            DateHistogramAggregationBuilder histogram = (DateHistogramAggregationBuilder) aggregation;
+            if (histogram.field().equals(config.getTimestamp().getField()) == false) {
+                return "date_histogram [" + histogram.getName() + "] is not on the timestamp of the rollup job";
+            }
+            if ((histogram.timeZone() != null && histogram.timeZone().equals(DateTimeZone.UTC) == false) || histogram.offset() != 0) {
+                return "date_histogram [" + histogram.getName() + "] uses a time zone or an offset";
+            }
+            if (InternalOrder.isKeyOrder(histogram.order()) == false) {
+                return "date_histogram [" + histogram.getName() + "] is not sorted by key";
+            }
+            long bucketAlignment = bucketAlignment(histogram);
+            if (bucketAlignment % config.getTimestamp().getInterval().millis() != 0) {
+                return "the interval of date_histogram [" + histogram.getName() + "] is not a multiple of the rollup interval";
+            }
+            return checkEligible(config, histogram.getSubAggregations());
+        }
+        if (valuesSource.format() != null) {
+            return "aggregation [" + aggregation.getName() + "] has a format";
+        }
+        if (aggregation instanceof TermsAggregationBuilder) {
+            TermsAggregationBuilder terms = (TermsAggregationBuilder) aggregation;
+            if (config.getTerms().contains(terms.field()) == false) {
+                return "terms [" + terms.getName() + "] is not on a field grouped by the rollup job";
+            }
+            if (terms.includeExclude() != null) {
+                return "terms [" + terms.getName() + "] filters its terms";
+            }
+            if (rollupOrder(terms.order()) == null) {
+                return "terms [" + terms.getName() + "] is not sorted by count or key";
+            }
+            return checkEligible(config, terms.getSubAggregations());
+        }
+        if (aggregation.getSubAggregations().isEmpty() == false) {
+            return "metric [" + aggregation.getName() + "] has sub-aggregations";
+        }
+        MetricConfig metric = config.getMetric(valuesSource.field());
+        if (metric == null) {
+            return "field [" + valuesSource.field() + "] is not rolled up by the rollup job";
+        }
+        boolean supported;
+        if (aggregation instanceof MinAggregationBuilder) {
+            supported = metric.hasMetric(Metric.MIN);
+        } else if (aggregation instanceof MaxAggregationBuilder) {
+            supported = metric.hasMetric(Metric.MAX);
+        } else if (aggregation instanceof SumAggregationBuilder) {
+            supported = metric.hasMetric(Metric.SUM);
+        } else if (aggregation instanceof ValueCountAggregationBuilder) {
+            supported = metric.hasMetric(Metric.VALUE_COUNT);
+        } else if (aggregation instanceof AvgAggregationBuilder) {
+            supported = metric.hasMetric(Metric.SUM) && metric.hasMetric(Metric.VALUE_COUNT);
+        } else {
+            return "aggregation [" + aggregation.getName() + "] of type [" + aggregation.getType() + "] is not supported";
+        }
+        if (supported == false) {
+            return "the rollup job doesn't keep the metrics that [" + aggregation.getName() + "] needs on [" + metric.getField() + "]";
+        }
+        return null;
+    }
+
+    /**
+     * Returns the smallest duration that all bucket boundaries of the histogram are multiples of, in UTC and from the epoch.
+     */
+    private static long bucketAlignment(DateHistogramAggregationBuilder histogram) {
+        DateHistogramInterval interval = histogram.dateHistogramInterval();
+        if (interval == null) {
+            return histogram.interval();
+        }
+        DateTimeUnit unit = DateHistogramAggregationBuilder.DATE_FIELD_UNITS.get(interval.toString());
+        if (unit == null) {
+            return TimeValue.parseTimeValue(interval.toString(), "interval").millis();
+        }
+        switch (unit) {
+            case SECOND_OF_MINUTE:
+                return TimeValue.timeValueSeconds(1).millis();
+            case MINUTES_OF_HOUR:
+                return TimeValue.timeValueMinutes(1).millis();
+            case HOUR_OF_DAY:
+                return TimeValue.timeValueHours(1).millis();
+            default:
+                // weeks, months, quarters and years all start at midnight
+                return MILLIS_PER_DAY;
+        }
+    }
+
+    /**
+     * Returns the order to use in the rollup index for the provided terms order, or {@code null} if it isn't supported.
+     * Counts must be read from the hidden sum of the source document counts rather than from the number of rollup documents.
+     */
+    private static BucketOrder rollupOrder(BucketOrder order) {
+        if (order.equals(BucketOrder.key(true)) || order.equals(BucketOrder.key(false))) {
+            return order;
+        }
+        for (boolean asc : new boolean[] { true, false }) {
+            if (order.equals(BucketOrder.count(asc)) || order.equals(BucketOrder.compound(BucketOrder.count(asc)))) {
+                return BucketOrder.compound(BucketOrder.aggregation(DOC_COUNT_AGG, asc), BucketOrder.key(true));
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Builds the search on the rollup index that covers the documents before the checkpoint of the job.
+     */
+    public static SearchSourceBuilder rollupSource(RollupJob job, SearchSourceBuilder source) {
+        RollupJobConfig config = job.getConfig();
+        BoolQueryBuilder query = QueryBuilders.boolQuery()
+                .filter(QueryBuilders.termQuery(RollupIndexer.JOB_ID_FIELD, config.getId()))
+                .filter(QueryBuilders.rangeQuery(config.getTimestamp().getField()).lt(job.getCheckpoint()).format("epoch_millis"));
+        SearchSourceBuilder rollupSource = new SearchSourceBuilder().size(0).query(query);
+        for (AggregationBuilder aggregation : rewrite(config, source.aggregations().getAggregatorFactories())) {
+            rollupSource.aggregation(aggregation);
+        }
+        return rollupSource.aggregation(AggregationBuilders.sum(DOC_COUNT_AGG).field(RollupIndexer.ROLLUP_DOC_COUNT_FIELD));
+    }
+
+    /**
+     * Builds the search on the source indices that covers the documents after the checkpoint of the job.
+     */
+    public static SearchSourceBuilder liveSource(RollupJob job, SearchSourceBuilder source) {
+        BoolQueryBuilder query = QueryBuilders.boolQuery().filter(QueryBuilders.rangeQuery(job.getConfig().getTimestamp().getField())
+                .gte(job.getCheckpoint()).format("epoch_millis"));
+        QueryBuilder original = source.query();
+        if (original != null) {
+            query.must(original);
+        }
+        SearchSourceBuilder liveSource = new SearchSourceBuilder().size(0).query(query);
+        for (AggregationBuilder aggregation : source.aggregations().getAggregatorFactories()) {
+            liveSource.aggregation(aggregation);
+        }
+        return liveSource;
+    }
+
+    /**
+     * Returns the metadata of the requested aggregation, or {@code null} if it has none like the aggregations of a search.
+     */
+    private static Map<String, Object> metaData(AggregationBuilder aggregation) {
+        return aggregation.getMetaData().isEmpty() ? null : aggregation.getMetaData();
+    }
+
+    private static List<AggregationBuilder> rewrite(RollupJobConfig config, Collection<AggregationBuilder> aggregations) {
+        List<AggregationBuilder> rewritten = new ArrayList<>();
+        for (AggregationBuilder aggregation : aggregations) {
+            List<AggregationBuilder> rollupAggregations = rewrite(config, aggregation);
+            if (aggregation instanceof AvgAggregationBuilder == false && metaData(aggregation) != null) {
+                rollupAggregations.get(0).setMetaData(metaData(aggregation));
+            }
+            rewritten.addAll(rollupAggregations);
+        }
+        return rewritten;
+    }
+
+    private static List<AggregationBuilder> rewrite(RollupJobConfig config, AggregationBuilder aggregation) {
+        String name = aggregation.getName();
+        String field = ((ValuesSourceAggregationBuilder<?, ?>) aggregation).field();
+        if (aggregation instanceof DateHistogramAggregationBuilder) {
+            DateHistogramAggregationBuilder histogram = (DateHistogramAggregationBuilder) aggregation;
+            DateHistogramAggregationBuilder rewritten = new DateHistogramAggregationBuilder(name).field(field)
+                    .order(histogram.order())
+                    .keyed(histogram.keyed())
+                    // buckets are filtered on their count of source documents once both responses are reduced
+                    .minDocCount(Math.min(histogram.minDocCount(), 1));
+            if (histogram.dateHistogramInterval() != null) {
+                rewritten.dateHistogramInterval(histogram.dateHistogramInterval());
+            } else {
+                rewritten.interval(histogram.interval());
+            }
+            if (histogram.extendedBounds() != null) {
+                rewritten.extendedBounds(histogram.extendedBounds());
+            }
+            if (histogram.format() != null) {
+                rewritten.format(histogram.format());
+            }
+            return Collections.singletonList(withBucketAggregations(config, histogram, rewritten));
+        } else if (aggregation instanceof TermsAggregationBuilder) {
+            TermsAggregationBuilder terms = (TermsAggregationBuilder) aggregation;
+            TermsAggregationBuilder rewritten = AggregationBuilders.terms(name).field(field)
+                    .size(terms.size())
+                    .order(rollupOrder(terms.order()))
+                    .minDocCount(Math.min(terms.minDocCount(), 1))
+                    .showTermDocCountError(terms.showTermDocCountError());
+            if (terms.shardSize() > 0) {
+                rewritten.shardSize(terms.shardSize());
+            }
+            return Collections.singletonList(withBucketAggregations(config, terms, rewritten));
+        } else if (aggregation instanceof MinAggregationBuilder) {
+            return Collections.singletonList(AggregationBuilders.min(name).field(Metric.MIN.rollupField(field)));
+        } else if (aggregation instanceof MaxAggregationBuilder) {
+            return Collections.singletonList(AggregationBuilders.max(name).field(Metric.MAX.rollupField(field)));
+        } else if (aggregation instanceof SumAggregationBuilder) {
+            return Collections.singletonList(AggregationBuilders.sum(name).field(Metric.SUM.rollupField(field)));
+        } else if (aggregation instanceof ValueCountAggregationBuilder) {
+            return Collections.singletonList(AggregationBuilders.sum(name).field(Metric.VALUE_COUNT.rollupField(field)));
+        } else if (aggregation instanceof AvgAggregationBuilder) {
+            List<AggregationBuilder> rewritten = new ArrayList<>(2);
+            rewritten.add(AggregationBuilders.sum(AVG_SUM_PREFIX + name).field(Metric.SUM.rollupField(field)));
+            rewritten.add(AggregationBuilders.sum(AVG_COUNT_PREFIX + name).field(Metric.VALUE_COUNT.rollupField(field)));
+            return rewritten;
+        }
+        throw new IllegalArgumentException("aggregation [" + name + "] of type [" + aggregation.getType() + "] is not supported");
+    }
+
+    private static AggregationBuilder withBucketAggregations(RollupJobConfig config, AggregationBuilder original,
+                                                             AggregationBuilder rewritten) {
+        for (AggregationBuilder subAggregation : rewrite(config, original.getSubAggregations())) {
+            rewritten.subAggregation(subAggregation);
+        }
+        rewritten.subAggregation(AggregationBuilders.sum(DOC_COUNT_AGG).field(RollupIndexer.ROLLUP_DOC_COUNT_FIELD));
+        return rewritten;
+    }
+
+    /**
+     * Returns the number of source documents that the provided rollup aggregations summarize.
+     */
+    public static long docCount(InternalAggregations rollupAggregations) {
+        InternalSum docCount = rollupAggregations.get(DOC_COUNT_AGG);
+        return (long) docCount.getValue();
+    }
+
+    /**
+     * Translates the aggregations of the rollup search back into the aggregations that the original request asked for.
+     */
+    public static InternalAggregations translate(SearchSourceBuilder source, InternalAggregations rollupAggregations) {
+        return translate(source.aggregations().getAggregatorFactories(), rollupAggregations, docCount(rollupAggregations));
+    }
+
+    private static InternalAggregations translate(Collection<AggregationBuilder> requested, InternalAggregations rollupAggregations,
+                                                  long parentDocCount) {
+        List<InternalAggregation> translated = new ArrayList<>(requested.size());
+        for (AggregationBuilder aggregation : requested) {
+            translated.add(translate(aggregation, rollupAggregations, parentDocCount));
+        }
+        return new InternalAggregations(translated);
+    }
+
+    private static InternalAggregation translate(AggregationBuilder requested, InternalAggregations rollupAggregations,
+                                                 long parentDocCount) {
+        String name = requested.getName();
+        if (requested instanceof DateHistogramAggregationBuilder) {
+            InternalDateHistogram histogram = rollupAggregations.get(name);
+            List<InternalDateHistogram.Bucket> buckets = new ArrayList<>(histogram.getBuckets().size());
+            for (InternalDateHistogram.Bucket bucket : histogram.getBuckets()) {
+                InternalAggregations bucketAggregations = (InternalAggregations) bucket.getAggregations();
+                long docCount = docCount(bucketAggregations);
+                buckets.add(new InternalDateHistogram.Bucket(histogram.getKey(bucket).longValue(), docCount, bucket.getKeyed(),
+                        bucket.getFormatter(), translate(requested.getSubAggregations(), bucketAggregations, docCount)));
+            }
+            return histogram.create(buckets);
+        } else if (requested instanceof TermsAggregationBuilder) {
+            return translateTerms((TermsAggregationBuilder) requested, rollupAggregations.get(name), parentDocCount);
+        } else if (requested instanceof ValueCountAggregationBuilder) {
+            InternalSum count = rollupAggregations.get(name);
+            return new InternalValueCount(name, (long) count.getValue(), Collections.emptyList(), metaData(requested));
+        } else if (requested instanceof AvgAggregationBuilder) {
+            InternalSum sum = rollupAggregations.get(AVG_SUM_PREFIX + name);
+            InternalSum count = rollupAggregations.get(AVG_COUNT_PREFIX + name);
+            return new InternalAvg(name, sum.getValue(), (long) count.getValue(), DocValueFormat.RAW, Collections.emptyList(),
+                    metaData(requested));
+        }
+        // min, max and sum read the pre-computed values under the requested name and need no translation
+        return rollupAggregations.get(name);
+    }
+
+    private static InternalAggregation translateTerms(TermsAggregationBuilder requested, InternalAggregation rollupTerms,
+                                                      long parentDocCount) {
+        String name = requested.getName();
+        int shardSize = Math.max(requested.size(), requested.shardSize());
+        if (rollupTerms instanceof StringTerms) {
+            StringTerms terms = (StringTerms) rollupTerms;
+            List<StringTerms.Bucket> buckets = new ArrayList<>(terms.getBuckets().size());
+            long otherDocCount = parentDocCount;
+            for (StringTerms.Bucket bucket : terms.getBuckets()) {
+                InternalAggregations bucketAggregations = (InternalAggregations) bucket.getAggregations();
+                long docCount = docCount(bucketAggregations);
+                otherDocCount -= docCount;
+                buckets.add(new StringTerms.Bucket(new BytesRef(bucket.getKeyAsString()), docCount,
+                        translate(requested.getSubAggregations(), bucketAggregations, docCount), requested.showTermDocCountError(),
+                        requested.showTermDocCountError() ? bucket.getDocCountError() : 0, DocValueFormat.RAW));
+            }
+            return new StringTerms(name, requested.order(), requested.size(), requested.minDocCount(), Collections.emptyList(),
+                    metaData(requested), DocValueFormat.RAW, shardSize, requested.showTermDocCountError(),
+                    Math.max(0, otherDocCount), buckets, terms.getDocCountError());
+        } else if (rollupTerms instanceof LongTerms) {
+            LongTerms terms = (LongTerms) rollupTerms;
+            List<LongTerms.Bucket> buckets = new ArrayList<>(terms.getBuckets().size());
+            long otherDocCount = parentDocCount;
+            for (LongTerms.Bucket bucket : terms.getBuckets()) {
+                InternalAggregations bucketAggregations = (InternalAggregations) bucket.getAggregations();
+                long docCount = docCount(bucketAggregations);
+                otherDocCount -= docCount;
+                buckets.add(new LongTerms.Bucket(bucket.getKeyAsNumber().longValue(), docCount,
+                        translate(requested.getSubAggregations(), bucketAggregations, docCount), requested.showTermDocCountError(),
+                        requested.showTermDocCountError() ? bucket.getDocCountError() : 0, DocValueFormat.RAW));
+            }
+            return new LongTerms(name, requested.order(), requested.size(), requested.minDocCount(), Collections.emptyList(),
+                    metaData(requested), DocValueFormat.RAW, shardSize, requested.showTermDocCountError(),
+                    Math.max(0, otherDocCount), buckets, terms.getDocCountError());
+        } else if (rollupTerms instanceof UnmappedTerms) {
+            return rollupTerms;
+        }
+        throw new IllegalArgumentException("terms [" + name + "] on [" + requested.field() + "] can't be read from a rollup index");
+    }
+}
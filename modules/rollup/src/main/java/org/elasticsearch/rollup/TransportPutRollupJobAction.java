@@ -0,0 +1,88 @@
+/*
+ * Licensed to Elasticsearch under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Elasticsearch licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.elasticsearch.rollup;
+
+import org.elasticsearch.action.ActionListener;
+import org.elasticsearch.action.support.ActionFilters;
+import org.elasticsearch.action.support.master.TransportMasterNodeAction;
+import org.elasticsearch.cluster.AckedClusterStateUpdateTask;
+import org.elasticsearch.cluster.ClusterState;
+import org.elasticsearch.cluster.block.ClusterBlockException;
+import org.elasticsearch.cluster.block.ClusterBlockLevel;
+import org.elasticsearch.cluster.metadata.IndexNameExpressionResolver;
+import org.elasticsearch.cluster.metadata.MetaData;
+import org.elasticsearch.cluster.service.ClusterService;
+import org.elasticsearch.common.Strings;
+import org.elasticsearch.common.inject.Inject;
+import org.elasticsearch.common.regex.Regex;
+import org.elasticsearch.common.settings.Settings;
+import org.elasticsearch.threadpool.ThreadPool;
+import org.elasticsearch.transport.TransportService;
+
+public class TransportPutRollupJobAction extends TransportMasterNodeAction<PutRollupJobRequest, RollupJobResponse> {
+
+    @Inject
+    public TransportPutRollupJobAction(Settings settings, ThreadPool threadPool, ClusterService clusterService,
+                                       TransportService transportService, ActionFilters actionFilters,
+                                       IndexNameExpressionResolver indexNameExpressionResolver) {
+        super(settings, PutRollupJobAction.NAME, transportService, clusterService, threadPool, actionFilters,
+                indexNameExpressionResolver, PutRollupJobRequest::new);
+    }
+
+    @Override
+    protected String executor() {
+        return ThreadPool.Names.SAME;
+    }
+
+    @Override
+    protected RollupJobResponse newResponse() {
+        return new RollupJobResponse();
+    }
+
+    @Override
+    protected void masterOperation(PutRollupJobRequest request, ClusterState state, ActionListener<RollupJobResponse> listener) {
+        RollupJobConfig config = request.getConfig();
+        if (Regex.simpleMatch(Strings.splitStringByCommaToArray(config.getIndexPattern()), config.getRollupIndex())) {
+            throw new IllegalArgumentException("rollup index [" + config.getRollupIndex() + "] must not match the index pattern ["
+                    + config.getIndexPattern() + "] of rollup job [" + config.getId() + "]");
+        }
+        clusterService.submitStateUpdateTask("put-rollup-job [" + config.getId() + "]",
+                new AckedClusterStateUpdateTask<RollupJobResponse>(request, listener) {
+
+            @Override
+            protected RollupJobResponse newResponse(boolean acknowledged) {
+                return new RollupJobResponse(acknowledged);
+            }
+
+            @Override
+            public ClusterState execute(ClusterState currentState) {
+                RollupMetadata metadata = RollupMetadata.get(currentState).putJob(config);
+                return ClusterState.builder(currentState)
+                        .metaData(MetaData.builder(currentState.metaData()).putCustom(RollupMetadata.TYPE, metadata))
+                        .build();
+            }
+        });
+    }
+
+    @Override
+    protected ClusterBlockException checkBlock(PutRollupJobRequest request, ClusterState state) {
+        return state.blocks().globalBlockedException(ClusterBlockLevel.METADATA_WRITE);
+    }
+}
@@ -0,0 +1,126 @@
+/*
+ * Licensed to Elasticsearch under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Elasticsearch licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.elasticsearch.rollup;
+
+import org.elasticsearch.action.ActionListener;
+import org.elasticsearch.action.search.MultiSearchRequest;
+import org.elasticsearch.action.search.MultiSearchResponse;
+import org.elasticsearch.action.search.SearchPhaseController;
+import org.elasticsearch.action.search.SearchRequest;
+import org.elasticsearch.action.search.SearchResponse;
+import org.elasticsearch.action.search.ShardSearchFailure;
+import org.elasticsearch.action.support.ActionFilters;
+import org.elasticsearch.action.support.HandledTransportAction;
+import org.elasticsearch.client.Client;
+import org.elasticsearch.cluster.metadata.IndexNameExpressionResolver;
+import org.elasticsearch.cluster.service.ClusterService;
+import org.elasticsearch.common.inject.Inject;
+import org.elasticsearch.common.settings.Settings;
+import org.elasticsearch.search.SearchHit;
+import org.elasticsearch.search.SearchHits;
+import org.elasticsearch.search.aggregations.InternalAggregations;
+import org.elasticsearch.search.builder.SearchSourceBuilder;
+import org.elasticsearch.search.internal.InternalSearchResponse;
+import org.elasticsearch.threadpool.ThreadPool;
+import org.elasticsearch.transport.TransportService;
+
+import java.util.Arrays;
+
+/**
+ * Runs searches on the source indices of rollup jobs. Eligible requests are split between the rollup index, for the data
+ * before the checkpoint of the job, and the source indices, for the data after it, and both responses are reduced into
+ * the response that the source indices alone would have given. Other requests are executed as regular searches.
+ * <p>
+ * Source documents that are indexed once the checkpoint has moved past their timestamp are neither in the rollup index nor
+ * read from the source indices, they are missing from the response until the job is recreated. The delay of the job
+ * bounds how late documents may arrive.
+ */
+public class TransportRollupSearchAction extends HandledTransportAction<RollupSearchRequest, SearchResponse> {
+
+    private final Client client;
+    private final ClusterService clusterService;
+    private final SearchPhaseController searchPhaseController;
+
+    @Inject
+    public TransportRollupSearchAction(Settings settings, ThreadPool threadPool, TransportService transportService,
+                                       ActionFilters actionFilters, IndexNameExpressionResolver indexNameExpressionResolver,
+                                       Client client, ClusterService clusterService, SearchPhaseController searchPhaseController) {
+        super(settings, RollupSearchAction.NAME, threadPool, transportService, actionFilters, indexNameExpressionResolver,
+                RollupSearchRequest::new);
+        this.client = client;
+        this.clusterService = clusterService;
+        this.searchPhaseController = searchPhaseController;
+    }
+
+    @Override
+    protected void doExecute(RollupSearchRequest request, ActionListener<SearchResponse> listener) {
+        SearchRequest searchRequest = request.getSearchRequest();
+        SearchSourceBuilder source = searchRequest.source();
+        RollupJob job = RollupSearchTranslator.findJob(RollupMetadata.get(clusterService.state()), searchRequest.indices());
+        String reason = job == null ? "no rollup job covers the requested indices" : RollupSearchTranslator.checkEligible(job, source);
+        if (reason != null) {
+            logger.debug("running search on {} without rollup: {}", Arrays.toString(searchRequest.indices()), reason);
+            client.search(searchRequest, listener);
+            return;
+        }
+
+        final long startTime = threadPool.relativeTimeInMillis();
+        MultiSearchRequest multiSearchRequest = new MultiSearchRequest();
+        multiSearchRequest.add(new SearchRequest(job.getConfig().getRollupIndex())
+                .source(RollupSearchTranslator.rollupSource(job, source)));
+        multiSearchRequest.add(new SearchRequest(searchRequest.indices())
+                .indicesOptions(searchRequest.indicesOptions())
+                .source(RollupSearchTranslator.liveSource(job, source)));
+        client.multiSearch(multiSearchRequest, ActionListener.wrap(response -> {
+            MultiSearchResponse.Item[] items = response.getResponses();
+            for (MultiSearchResponse.Item item : items) {
+                if (item.isFailure()) {
+                    listener.onFailure(item.getFailure());
+                    return;
+                }
+            }
+            listener.onResponse(merge(source, items[0].getResponse(), items[1].getResponse(),
+                    threadPool.relativeTimeInMillis() - startTime));
+        }, listener::onFailure));
+    }
+
+    private SearchResponse merge(SearchSourceBuilder source, SearchResponse rollupResponse, SearchResponse liveResponse, long took) {
+        InternalAggregations rollupAggregations = (InternalAggregations) rollupResponse.getAggregations();
+        InternalAggregations translated = RollupSearchTranslator.translate(source, rollupAggregations);
+        // the live aggregations go first so that the reduced aggregations keep the formats of the source fields
+        InternalAggregations aggregations = InternalAggregations.reduce(
+                Arrays.asList((InternalAggregations) liveResponse.getAggregations(), translated),
+                searchPhaseController.createReduceContext(true));
+        long totalHits = liveResponse.getHits().getTotalHits() + RollupSearchTranslator.docCount(rollupAggregations);
+        SearchHits hits = new SearchHits(new SearchHit[0], totalHits, Float.NaN);
+        InternalSearchResponse internalResponse = new InternalSearchResponse(hits, aggregations, null, null,
+                rollupResponse.isTimedOut() || liveResponse.isTimedOut(), null, 1);
+        ShardSearchFailure[] shardFailures = new ShardSearchFailure[rollupResponse.getShardFailures().length
+                + liveResponse.getShardFailures().length];
+        System.arraycopy(rollupResponse.getShardFailures(), 0, shardFailures, 0, rollupResponse.getShardFailures().length);
+        System.arraycopy(liveResponse.getShardFailures(), 0, shardFailures, rollupResponse.getShardFailures().length,
+                liveResponse.getShardFailures().length);
+        return new SearchResponse(internalResponse, null,
+                rollupResponse.getTotalShards() + liveResponse.getTotalShards(),
+                rollupResponse.getSuccessfulShards() + liveResponse.getSuccessfulShards(),
+                rollupResponse.getSkippedShards() + liveResponse.getSkippedShards(),
+                took, shardFailures, SearchResponse.Clusters.EMPTY);
+    }
+}
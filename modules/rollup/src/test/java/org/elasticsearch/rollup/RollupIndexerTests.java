@@ -0,0 +1,141 @@
+/*
+ * Licensed to Elasticsearch under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Elasticsearch licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.elasticsearch.rollup;
+
+import org.apache.lucene.util.BytesRef;
+import org.elasticsearch.action.search.SearchRequest;
+import org.elasticsearch.common.Strings;
+import org.elasticsearch.common.unit.TimeValue;
+import org.elasticsearch.common.xcontent.XContentHelper;
+import org.elasticsearch.common.xcontent.XContentType;
+import org.elasticsearch.rollup.RollupJobConfig.Metric;
+import org.elasticsearch.rollup.RollupJobConfig.MetricConfig;
+import org.elasticsearch.rollup.RollupJobConfig.TimestampConfig;
+import org.elasticsearch.search.DocValueFormat;
+import org.elasticsearch.search.aggregations.InternalAggregation;
+import org.elasticsearch.search.aggregations.InternalAggregations;
+import org.elasticsearch.search.aggregations.bucket.composite.CompositeAggregationBuilder;
+import org.elasticsearch.search.aggregations.metrics.max.InternalMax;
+import org.elasticsearch.search.aggregations.metrics.min.InternalMin;
+import org.elasticsearch.search.aggregations.metrics.sum.InternalSum;
+import org.elasticsearch.search.aggregations.metrics.valuecount.InternalValueCount;
+import org.elasticsearch.test.ESTestCase;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.hamcrest.Matchers.containsString;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.not;
+import static org.hamcrest.Matchers.startsWith;
+
+public class RollupIndexerTests extends ESTestCase {
+
+    private static RollupJobConfig config() {
+        return new RollupJobConfig("job", "logs-*", "logs-rollup", new TimestampConfig("ts", TimeValue.timeValueHours(1),
+                TimeValue.timeValueMinutes(5)), Collections.singletonList("host"),
+                Collections.singletonList(new MetricConfig("bytes", Arrays.asList(Metric.values()))), 100);
+    }
+
+    public void testToDocument() {
+        Map<String, Object> key = new LinkedHashMap<>();
+        key.put("ts", 3600000L);
+        key.put("host", new BytesRef("web-1"));
+        List<InternalAggregation> metrics = Arrays.asList(
+                new InternalMin("bytes.min", 12, DocValueFormat.RAW, Collections.emptyList(), null),
+                new InternalMax("bytes.max", 40, DocValueFormat.RAW, Collections.emptyList(), null),
+                new InternalSum("bytes.sum", 52, DocValueFormat.RAW, Collections.emptyList(), null),
+                new InternalValueCount("bytes.value_count", 2, Collections.emptyList(), null));
+        Map<String, Object> document = RollupIndexer.toDocument(config(), key, 3, new InternalAggregations(metrics));
+        Map<String, Object> rollup = new LinkedHashMap<>();
+        rollup.put("id", "job");
+        rollup.put("doc_count", 3L);
+        assertEquals(rollup, document.get("_rollup"));
+        assertEquals(3600000L, document.get("ts"));
+        assertEquals("web-1", document.get("host"));
+        assertEquals(12.0, document.get("bytes.min"));
+        assertEquals(40.0, document.get("bytes.max"));
+        assertEquals(52.0, document.get("bytes.sum"));
+        assertEquals(2L, document.get("bytes.value_count"));
+
+        // documents of the bucket don't have a value for the field
+        metrics = Arrays.asList(
+                new InternalMin("bytes.min", Double.POSITIVE_INFINITY, DocValueFormat.RAW, Collections.emptyList(), null),
+                new InternalMax("bytes.max", Double.NEGATIVE_INFINITY, DocValueFormat.RAW, Collections.emptyList(), null),
+                new InternalSum("bytes.sum", 0, DocValueFormat.RAW, Collections.emptyList(), null),
+                new InternalValueCount("bytes.value_count", 0, Collections.emptyList(), null));
+        document = RollupIndexer.toDocument(config(), key, 3, new InternalAggregations(metrics));
+        assertFalse(document.containsKey("bytes.min"));
+        assertFalse(document.containsKey("bytes.max"));
+        assertEquals(0.0, document.get("bytes.sum"));
+        assertEquals(0L, document.get("bytes.value_count"));
+    }
+
+    public void testDocumentId() throws IOException {
+        Map<String, Object> key = new LinkedHashMap<>();
+        key.put("ts", 3600000L);
+        key.put("host", new BytesRef("web-1"));
+        Map<String, Object> sameKey = new LinkedHashMap<>();
+        sameKey.put("ts", 3600000L);
+        sameKey.put("host", "web-1");
+        Map<String, Object> otherKey = new LinkedHashMap<>();
+        otherKey.put("ts", 7200000L);
+        otherKey.put("host", "web-1");
+        String id = RollupIndexer.documentId("job", key);
+        assertThat(id, startsWith("job$"));
+        assertEquals(id, RollupIndexer.documentId("job", sameKey));
+        assertThat(RollupIndexer.documentId("job", otherKey), not(equalTo(id)));
+        assertThat(RollupIndexer.documentId("other_job", key), not(equalTo(id)));
+    }
+
+    public void testBuildSearchRequest() {
+        RollupJob job = new RollupJob(config(), RollupJob.NO_CHECKPOINT);
+        SearchRequest request = RollupIndexer.buildSearchRequest(job, 7200000L, null);
+        assertArrayEquals(new String[] { "logs-*" }, request.indices());
+        assertEquals(0, request.source().size());
+        CompositeAggregationBuilder composite = (CompositeAggregationBuilder) request.source().aggregations()
+                .getAggregatorFactories().get(0);
+        assertEquals(2, composite.sources().size());
+        assertEquals("ts", composite.sources().get(0).name());
+        assertEquals("host", composite.sources().get(1).name());
+        assertEquals(4, composite.getSubAggregations().size());
+        String query = Strings.toString(request.source().query());
+        assertThat(query, containsString("\"to\":7200000"));
+        assertThat(query, containsString("\"from\":null"));
+
+        job = new RollupJob(config(), 3600000L);
+        Map<String, Object> afterKey = Collections.singletonMap("ts", 3600000L);
+        request = RollupIndexer.buildSearchRequest(job, 7200000L, afterKey);
+        query = Strings.toString(request.source().query());
+        assertThat(query, containsString("\"from\":3600000"));
+        assertThat(Strings.toString(request.source().aggregations()), containsString("\"after\""));
+    }
+
+    public void testRollupMapping() throws IOException {
+        Map<String, Object> mapping = XContentHelper.convertToMap(
+                RollupIndexer.rollupMapping(config(), "yyyy-MM-dd").bytes(), true, XContentType.JSON).v2();
+        assertThat(mapping.toString(), containsString("ts={type=date, format=yyyy-MM-dd||epoch_millis}"));
+        assertThat(mapping.toString(), containsString("_rollup={properties={id={type=keyword}, doc_count={type=long}}}"));
+    }
+}
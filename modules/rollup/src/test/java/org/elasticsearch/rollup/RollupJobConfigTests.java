@@ -0,0 +1,119 @@
+/*
+ * Licensed to Elasticsearch under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Elasticsearch licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.elasticsearch.rollup;
+
+import org.elasticsearch.common.ParsingException;
+import org.elasticsearch.common.bytes.BytesArray;
+import org.elasticsearch.common.io.stream.Writeable;
+import org.elasticsearch.common.unit.TimeValue;
+import org.elasticsearch.common.xcontent.XContentParser;
+import org.elasticsearch.common.xcontent.json.JsonXContent;
+import org.elasticsearch.rollup.RollupJobConfig.Metric;
+import org.elasticsearch.rollup.RollupJobConfig.MetricConfig;
+import org.elasticsearch.rollup.RollupJobConfig.TimestampConfig;
+import org.elasticsearch.test.AbstractSerializingTestCase;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.hamcrest.Matchers.containsString;
+
+public class RollupJobConfigTests extends AbstractSerializingTestCase<RollupJobConfig> {
+
+    static RollupJobConfig randomConfig(String id) {
+        TimestampConfig timestamp = new TimestampConfig(randomAlphaOfLengthBetween(3, 10) + "_ts",
+                TimeValue.timeValueMinutes(randomIntBetween(1, 120)), TimeValue.timeValueSeconds(randomIntBetween(0, 600)));
+        List<String> terms = new ArrayList<>();
+        int numTerms = randomIntBetween(0, 3);
+        for (int i = 0; i < numTerms; i++) {
+            terms.add("term_" + i);
+        }
+        List<MetricConfig> metrics = new ArrayList<>();
+        int numMetrics = randomIntBetween(0, 3);
+        for (int i = 0; i < numMetrics; i++) {
+            metrics.add(new MetricConfig("metric_" + i, randomSubsetOf(randomIntBetween(1, 4), Metric.values())));
+        }
+        return new RollupJobConfig(id, randomAlphaOfLengthBetween(3, 10) + "-*", randomAlphaOfLengthBetween(3, 10) + "-rollup",
+                timestamp, terms, metrics, randomIntBetween(1, 10000));
+    }
+
+    @Override
+    protected RollupJobConfig createTestInstance() {
+        return randomConfig(randomAlphaOfLengthBetween(1, 10));
+    }
+
+    @Override
+    protected Writeable.Reader<RollupJobConfig> instanceReader() {
+        return RollupJobConfig::new;
+    }
+
+    @Override
+    protected RollupJobConfig doParseInstance(XContentParser parser) throws IOException {
+        return RollupJobConfig.fromXContent(parser, null);
+    }
+
+    public void testParseWithIdFromUrl() throws IOException {
+        String json = "{\"index_pattern\": \"logs-*\", \"rollup_index\": \"logs-rollup\", "
+                + "\"timestamp\": {\"field\": \"@timestamp\", \"interval\": \"1h\"}, "
+                + "\"terms\": [\"host\"], \"metrics\": [{\"field\": \"bytes\", \"metrics\": [\"min\", \"value_count\"]}]}";
+        try (XContentParser parser = createParser(JsonXContent.jsonXContent, new BytesArray(json))) {
+            RollupJobConfig config = RollupJobConfig.fromXContent(parser, "my_job");
+            assertEquals("my_job", config.getId());
+            assertEquals(TimeValue.timeValueHours(1), config.getTimestamp().getInterval());
+            assertEquals(TimeValue.ZERO, config.getTimestamp().getDelay());
+            assertEquals(Collections.singletonList("host"), config.getTerms());
+            assertEquals(Arrays.asList(Metric.MIN, Metric.VALUE_COUNT), config.getMetric("bytes").getMetrics());
+            assertEquals(RollupJobConfig.DEFAULT_PAGE_SIZE, config.getPageSize());
+        }
+
+        String mismatch = "{\"id\": \"other\", \"index_pattern\": \"logs-*\", \"rollup_index\": \"logs-rollup\", "
+                + "\"timestamp\": {\"field\": \"@timestamp\", \"interval\": \"1h\"}}";
+        try (XContentParser parser = createParser(JsonXContent.jsonXContent, new BytesArray(mismatch))) {
+            Exception e = expectThrows(ParsingException.class, () -> RollupJobConfig.fromXContent(parser, "my_job"));
+            assertThat(e.getCause().getMessage(), containsString("does not match"));
+        }
+    }
+
+    public void testValidation() {
+        TimestampConfig timestamp = new TimestampConfig("ts", TimeValue.timeValueHours(1), TimeValue.ZERO);
+        Exception e = expectThrows(IllegalArgumentException.class, () -> new RollupJobConfig("job", "logs-*", "rollup", timestamp,
+                Collections.singletonList("ts"), Collections.emptyList(), 10));
+        assertThat(e.getMessage(), containsString("[ts] is used more than once"));
+        e = expectThrows(IllegalArgumentException.class, () -> new RollupJobConfig("job", "logs-*", "rollup", timestamp,
+                Collections.emptyList(), Collections.emptyList(), 0));
+        assertThat(e.getMessage(), containsString("[page_size] must be greater than 0"));
+        e = expectThrows(IllegalArgumentException.class, () -> new TimestampConfig("ts", TimeValue.ZERO, TimeValue.ZERO));
+        assertThat(e.getMessage(), containsString("must be positive"));
+        e = expectThrows(IllegalArgumentException.class, () -> new MetricConfig("bytes", Collections.emptyList()));
+        assertThat(e.getMessage(), containsString("at least one metric"));
+    }
+
+    public void testRound() {
+        TimestampConfig timestamp = new TimestampConfig("ts", TimeValue.timeValueHours(1), TimeValue.ZERO);
+        long hour = TimeValue.timeValueHours(1).millis();
+        assertEquals(0, timestamp.round(0));
+        assertEquals(0, timestamp.round(hour - 1));
+        assertEquals(hour, timestamp.round(hour));
+        assertEquals(-hour, timestamp.round(-1));
+    }
+}
@@ -0,0 +1,110 @@
+/*
+ * Licensed to Elasticsearch under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Elasticsearch licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.elasticsearch.rollup;
+
+import org.elasticsearch.ResourceAlreadyExistsException;
+import org.elasticsearch.ResourceNotFoundException;
+import org.elasticsearch.cluster.Diff;
+import org.elasticsearch.cluster.metadata.MetaData.Custom;
+import org.elasticsearch.common.io.stream.Writeable;
+import org.elasticsearch.common.xcontent.XContentParser;
+import org.elasticsearch.test.AbstractDiffableSerializationTestCase;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.hamcrest.Matchers.containsString;
+import static org.hamcrest.Matchers.sameInstance;
+
+public class RollupMetadataTests extends AbstractDiffableSerializationTestCase<Custom> {
+
+    private static RollupJob randomJob(String id) {
+        return new RollupJob(RollupJobConfigTests.randomConfig(id), randomBoolean() ? RollupJob.NO_CHECKPOINT : randomNonNegativeLong());
+    }
+
+    @Override
+    protected Custom createTestInstance() {
+        Map<String, RollupJob> jobs = new HashMap<>();
+        int numJobs = randomIntBetween(0, 5);
+        for (int i = 0; i < numJobs; i++) {
+            RollupJob job = randomJob("job_" + i);
+            jobs.put(job.getId(), job);
+        }
+        return new RollupMetadata(jobs);
+    }
+
+    @Override
+    protected Writeable.Reader<Custom> instanceReader() {
+        return RollupMetadata::new;
+    }
+
+    @Override
+    protected Custom makeTestChanges(Custom testInstance) {
+        Map<String, RollupJob> jobs = new HashMap<>(((RollupMetadata) testInstance).getJobs());
+        if (jobs.isEmpty() == false && randomBoolean()) {
+            jobs.remove(randomFrom(jobs.keySet()));
+        }
+        if (jobs.isEmpty() == false && randomBoolean()) {
+            RollupJob job = jobs.get(randomFrom(jobs.keySet()));
+            jobs.put(job.getId(), new RollupJob(job.getConfig(), randomNonNegativeLong()));
+        }
+        if (randomBoolean()) {
+            RollupJob job = randomJob("new_job_" + randomAlphaOfLength(5));
+            jobs.put(job.getId(), job);
+        }
+        return new RollupMetadata(jobs);
+    }
+
+    @Override
+    protected Writeable.Reader<Diff<Custom>> diffReader() {
+        return RollupMetadata::readDiffFrom;
+    }
+
+    @Override
+    protected Custom doParseInstance(XContentParser parser) throws IOException {
+        assertEquals(XContentParser.Token.START_OBJECT, parser.nextToken());
+        RollupMetadata metadata = RollupMetadata.fromXContent(parser);
+        assertEquals(XContentParser.Token.END_OBJECT, parser.currentToken());
+        return metadata;
+    }
+
+    public void testJobLifecycle() {
+        RollupJobConfig config = RollupJobConfigTests.randomConfig("job");
+        RollupMetadata metadata = RollupMetadata.EMPTY.putJob(config);
+        assertFalse(metadata.getJob("job").hasCheckpoint());
+        expectThrows(ResourceAlreadyExistsException.class, () -> RollupMetadata.EMPTY.putJob(config).putJob(config));
+
+        RollupJobConfig sameRollupIndex = new RollupJobConfig("other", config.getIndexPattern(), config.getRollupIndex(),
+                config.getTimestamp(), config.getTerms(), config.getMetrics(), config.getPageSize());
+        Exception e = expectThrows(IllegalArgumentException.class, () -> metadata.putJob(sameRollupIndex));
+        assertThat(e.getMessage(), containsString("is already used by rollup job [job]"));
+
+        RollupMetadata advanced = metadata.advanceCheckpoint(config, 1000);
+        assertEquals(1000, advanced.getJob("job").getCheckpoint());
+        assertThat(advanced.advanceCheckpoint(config, 500), sameInstance(advanced));
+        RollupJobConfig redefined = new RollupJobConfig("job", config.getIndexPattern() + "-other", config.getRollupIndex(),
+                config.getTimestamp(), config.getTerms(), config.getMetrics(), config.getPageSize());
+        assertThat(advanced.advanceCheckpoint(redefined, 2000), sameInstance(advanced));
+
+        assertTrue(advanced.removeJob("job").getJobs().isEmpty());
+        expectThrows(ResourceNotFoundException.class, () -> RollupMetadata.EMPTY.removeJob("job"));
+    }
+}
@@ -0,0 +1,143 @@
+/*
+ * Licensed to Elasticsearch under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Elasticsearch licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.elasticsearch.rollup;
+
+import org.elasticsearch.action.bulk.BulkRequestBuilder;
+import org.elasticsearch.action.search.SearchResponse;
+import org.elasticsearch.common.settings.Settings;
+import org.elasticsearch.common.unit.TimeValue;
+import org.elasticsearch.common.xcontent.ToXContent;
+import org.elasticsearch.common.xcontent.XContentBuilder;
+import org.elasticsearch.common.xcontent.XContentFactory;
+import org.elasticsearch.plugins.Plugin;
+import org.elasticsearch.rollup.RollupJobConfig.Metric;
+import org.elasticsearch.rollup.RollupJobConfig.MetricConfig;
+import org.elasticsearch.rollup.RollupJobConfig.TimestampConfig;
+import org.elasticsearch.search.aggregations.AggregationBuilders;
+import org.elasticsearch.search.aggregations.MultiBucketConsumerService;
+import org.elasticsearch.search.aggregations.bucket.histogram.DateHistogramInterval;
+import org.elasticsearch.search.aggregations.bucket.terms.Terms;
+import org.elasticsearch.search.builder.SearchSourceBuilder;
+import org.elasticsearch.test.ESIntegTestCase;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+
+import static org.elasticsearch.test.hamcrest.ElasticsearchAssertions.assertAcked;
+import static org.hamcrest.Matchers.containsString;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.greaterThan;
+import static org.hamcrest.Matchers.not;
+
+@ESIntegTestCase.ClusterScope(scope = ESIntegTestCase.Scope.TEST)
+public class RollupSearchIT extends ESIntegTestCase {
+
+    private static final long START = 1514764800000L; // 2018-01-01T00:00:00Z
+    private static final long HOUR = TimeValue.timeValueHours(1).millis();
+
+    @Override
+    protected Collection<Class<? extends Plugin>> nodePlugins() {
+        return Collections.singletonList(RollupPlugin.class);
+    }
+
+    @Override
+    protected Collection<Class<? extends Plugin>> transportClientPlugins() {
+        return nodePlugins();
+    }
+
+    @Override
+    protected Settings nodeSettings(int nodeOrdinal) {
+        return Settings.builder().put(super.nodeSettings(nodeOrdinal))
+            .put(RollupJobRunner.POLL_INTERVAL_SETTING.getKey(), "1s")
+            .build();
+    }
+
+    public void testRollupSearchMatchesSearch() throws Exception {
+        assertAcked(prepareCreate("logs-1").addMapping("doc", "ts", "type=date", "host", "type=keyword", "bytes", "type=long"));
+        BulkRequestBuilder bulk = client().prepareBulk();
+        final int numDocs = randomIntBetween(20, 100);
+        for (int i = 0; i < numDocs; i++) {
+            long timestamp = START + randomIntBetween(0, 48) * HOUR / 2 + randomIntBetween(0, 1000);
+            bulk.add(client().prepareIndex("logs-1", "doc")
+                .setSource("ts", timestamp, "host", "host-" + randomIntBetween(0, 3), "bytes", randomIntBetween(0, 1000)));
+        }
+        bulk.setRefreshPolicy("true").get();
+
+        RollupJobConfig config = new RollupJobConfig("logs", "logs-*", "rollup-logs",
+            new TimestampConfig("ts", TimeValue.timeValueHours(1), TimeValue.ZERO), Collections.singletonList("host"),
+            Collections.singletonList(new MetricConfig("bytes", Arrays.asList(Metric.values()))), 10);
+        assertAcked(new PutRollupJobRequestBuilder(client(), PutRollupJobAction.INSTANCE).setConfig(config).get());
+        assertBusy(() -> {
+            RollupJob job = RollupMetadata.get(client().admin().cluster().prepareState().get().getState()).getJob("logs");
+            assertTrue(job.hasCheckpoint());
+            assertThat(job.getCheckpoint(), greaterThan(START + 25 * HOUR));
+        });
+        refresh("rollup-logs");
+
+        SearchSourceBuilder source = new SearchSourceBuilder().size(0).aggregation(
+            AggregationBuilders.dateHistogram("per_day").field("ts").dateHistogramInterval(DateHistogramInterval.DAY)
+                .subAggregation(AggregationBuilders.terms("hosts").field("host")
+                    .subAggregation(AggregationBuilders.avg("avg_bytes").field("bytes"))
+                    .subAggregation(AggregationBuilders.max("max_bytes").field("bytes"))));
+        SearchResponse expected = client().prepareSearch("logs-*").setSource(source).get();
+        SearchResponse rollup = rollupSearch(source);
+        assertThat(rollup.getHits().getTotalHits(), equalTo((long) numDocs));
+        assertThat(toString(rollup), equalTo(toString(expected)));
+
+        // a document that arrives after its bucket was rolled up is missing from the rollup search
+        client().prepareIndex("logs-1", "doc").setSource("ts", START + HOUR, "host", "host-0", "bytes", 1)
+            .setRefreshPolicy("true").get();
+        assertThat(client().prepareSearch("logs-*").setSource(source).get().getHits().getTotalHits(), equalTo(numDocs + 1L));
+        SearchResponse late = rollupSearch(source);
+        assertThat(late.getHits().getTotalHits(), equalTo((long) numDocs));
+        assertThat(toString(late), equalTo(toString(expected)));
+        assertThat(toString(late), not(equalTo(toString(client().prepareSearch("logs-*").setSource(source).get()))));
+
+        // the reduce of the rollup and live responses counts the buckets of the merged response
+        SearchSourceBuilder hosts = new SearchSourceBuilder().size(0).aggregation(AggregationBuilders.terms("hosts").field("host"));
+        int numHosts = ((Terms) rollupSearch(hosts).getAggregations().get("hosts")).getBuckets().size();
+        assertAcked(client().admin().cluster().prepareUpdateSettings().setTransientSettings(Settings.builder()
+            .put(MultiBucketConsumerService.MAX_BUCKET_SETTING.getKey(), numHosts)));
+        try {
+            assertThat(((Terms) rollupSearch(hosts).getAggregations().get("hosts")).getBuckets().size(), equalTo(numHosts));
+            // a document after the checkpoint adds a bucket that only the merged response has
+            client().prepareIndex("logs-1", "doc")
+                .setSource("ts", System.currentTimeMillis() + 24 * HOUR, "host", "host-live", "bytes", 1)
+                .setRefreshPolicy("true").get();
+            Exception e = expectThrows(Exception.class, () -> rollupSearch(hosts));
+            assertThat(e.toString(), containsString("max_buckets"));
+        } finally {
+            assertAcked(client().admin().cluster().prepareUpdateSettings().setTransientSettings(Settings.builder()
+                .putNull(MultiBucketConsumerService.MAX_BUCKET_SETTING.getKey())));
+        }
+    }
+
+    private static SearchResponse rollupSearch(SearchSourceBuilder source) {
+        return new RollupSearchRequestBuilder(client(), RollupSearchAction.INSTANCE).setIndices("logs-*").setSource(source).get();
+    }
+
+    private static String toString(SearchResponse response) throws IOException {
+        XContentBuilder builder = XContentFactory.jsonBuilder().startObject();
+        response.getAggregations().toXContent(builder, ToXContent.EMPTY_PARAMS);
+        return builder.endObject().string();
+    }
+}
@@ -0,0 +1,306 @@
+/*
+ * Licensed to Elasticsearch under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Elasticsearch licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.elasticsearch.rollup;
+
+import org.apache.lucene.document.Document;
+import org.apache.lucene.document.LongPoint;
+import org.apache.lucene.document.SortedNumericDocValuesField;
+import org.apache.lucene.document.SortedSetDocValuesField;
+import org.apache.lucene.index.DirectoryReader;
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.index.RandomIndexWriter;
+import org.apache.lucene.search.IndexSearcher;
+import org.apache.lucene.search.MatchAllDocsQuery;
+import org.apache.lucene.store.Directory;
+import org.apache.lucene.util.BytesRef;
+import org.apache.lucene.util.NumericUtils;
+import org.elasticsearch.common.unit.TimeValue;
+import org.elasticsearch.common.util.BigArrays;
+import org.elasticsearch.index.mapper.DateFieldMapper;
+import org.elasticsearch.index.mapper.KeywordFieldMapper;
+import org.elasticsearch.index.mapper.MappedFieldType;
+import org.elasticsearch.index.mapper.NumberFieldMapper;
+import org.elasticsearch.index.query.QueryBuilders;
+import org.elasticsearch.rollup.RollupJobConfig.Metric;
+import org.elasticsearch.rollup.RollupJobConfig.MetricConfig;
+import org.elasticsearch.rollup.RollupJobConfig.TimestampConfig;
+import org.elasticsearch.search.aggregations.AggregationBuilder;
+import org.elasticsearch.search.aggregations.AggregationBuilders;
+import org.elasticsearch.search.aggregations.AggregatorTestCase;
+import org.elasticsearch.search.aggregations.BucketOrder;
+import org.elasticsearch.search.aggregations.InternalAggregation;
+import org.elasticsearch.search.aggregations.InternalAggregation.ReduceContext;
+import org.elasticsearch.search.aggregations.InternalAggregations;
+import org.elasticsearch.search.aggregations.bucket.composite.CompositeAggregation;
+import org.elasticsearch.search.aggregations.bucket.composite.InternalComposite;
+import org.elasticsearch.search.aggregations.bucket.histogram.DateHistogramInterval;
+import org.elasticsearch.search.aggregations.bucket.histogram.Histogram;
+import org.elasticsearch.search.aggregations.bucket.terms.Terms;
+import org.elasticsearch.search.aggregations.metrics.avg.Avg;
+import org.elasticsearch.search.aggregations.metrics.max.Max;
+import org.elasticsearch.search.aggregations.metrics.min.Min;
+import org.elasticsearch.search.aggregations.metrics.sum.Sum;
+import org.elasticsearch.search.aggregations.metrics.valuecount.ValueCount;
+import org.elasticsearch.search.aggregations.pipeline.PipelineAggregatorBuilders;
+import org.elasticsearch.search.builder.SearchSourceBuilder;
+import org.joda.time.DateTimeZone;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import static org.hamcrest.Matchers.containsString;
+
+public class RollupSearchTranslatorTests extends AggregatorTestCase {
+
+    private static final long HOUR = TimeValue.timeValueHours(1).millis();
+
+    private static RollupJob job(long checkpoint) {
+        RollupJobConfig config = new RollupJobConfig("job", "logs", "logs-rollup", new TimestampConfig("ts", TimeValue.timeValueHours(1),
+                TimeValue.ZERO), Collections.singletonList("host"),
+                Collections.singletonList(new MetricConfig("bytes", Arrays.asList(Metric.values()))), 10000);
+        return new RollupJob(config, checkpoint);
+    }
+
+    private static SearchSourceBuilder source(AggregationBuilder... aggregations) {
+        SearchSourceBuilder source = new SearchSourceBuilder().size(0);
+        for (AggregationBuilder aggregation : aggregations) {
+            source.aggregation(aggregation);
+        }
+        return source;
+    }
+
+    public void testEligibility() {
+        RollupJob job = job(HOUR);
+        AggregationBuilder histogram = AggregationBuilders.dateHistogram("histo").field("ts")
+                .dateHistogramInterval(DateHistogramInterval.DAY)
+                .subAggregation(AggregationBuilders.terms("hosts").field("host")
+                        .subAggregation(AggregationBuilders.avg("avg").field("bytes")));
+        assertNull(RollupSearchTranslator.checkEligible(job, source(histogram)));
+        assertNull(RollupSearchTranslator.checkEligible(job, source(histogram).query(QueryBuilders.matchAllQuery())));
+
+        assertThat(RollupSearchTranslator.checkEligible(job(RollupJob.NO_CHECKPOINT), source(histogram)),
+                containsString("has not rolled up any data yet"));
+        assertThat(RollupSearchTranslator.checkEligible(job, source(histogram).size(10)), containsString("search hits"));
+        assertThat(RollupSearchTranslator.checkEligible(job, source(histogram).query(QueryBuilders.termQuery("host", "a"))),
+                containsString("has a query"));
+        assertThat(RollupSearchTranslator.checkEligible(job, source()), containsString("no aggregations"));
+        assertThat(RollupSearchTranslator.checkEligible(job, source(AggregationBuilders.dateHistogram("histo").field("ts")
+                .dateHistogramInterval(DateHistogramInterval.minutes(30)))), containsString("not a multiple of the rollup interval"));
+        assertNull(RollupSearchTranslator.checkEligible(job, source(AggregationBuilders.dateHistogram("histo").field("ts")
+                .dateHistogramInterval(DateHistogramInterval.MONTH))));
+        assertNull(RollupSearchTranslator.checkEligible(job, source(AggregationBuilders.dateHistogram("histo").field("ts")
+                .interval(3 * HOUR))));
+        assertThat(RollupSearchTranslator.checkEligible(job, source(AggregationBuilders.dateHistogram("histo").field("ts")
+                .dateHistogramInterval(DateHistogramInterval.DAY).timeZone(DateTimeZone.forOffsetHours(2)))),
+                containsString("time zone"));
+        assertThat(RollupSearchTranslator.checkEligible(job, source(AggregationBuilders.terms("t").field("other"))),
+                containsString("not on a field grouped by the rollup job"));
+        assertThat(RollupSearchTranslator.checkEligible(job, source(AggregationBuilders.terms("t").field("host")
+                .order(BucketOrder.aggregation("max", false)).subAggregation(AggregationBuilders.max("max").field("bytes")))),
+                containsString("not sorted by count or key"));
+        assertNull(RollupSearchTranslator.checkEligible(job, source(AggregationBuilders.terms("t").field("host")
+                .order(BucketOrder.key(true)))));
+        assertThat(RollupSearchTranslator.checkEligible(job, source(AggregationBuilders.cardinality("c").field("bytes"))),
+                containsString("of type [cardinality] is not supported"));
+        assertThat(RollupSearchTranslator.checkEligible(job, source(AggregationBuilders.max("m").field("other"))),
+                containsString("field [other] is not rolled up"));
+        assertThat(RollupSearchTranslator.checkEligible(job, source(histogram).aggregation(
+                PipelineAggregatorBuilders.maxBucket("max_bucket", "histo>_count"))), containsString("pipeline aggregations"));
+    }
+
+    public void testMatchesRawAggregations() throws IOException {
+        long end = 5 * 24 * HOUR;
+        long checkpoint = randomLongBetween(24, 4 * 24) * HOUR;
+        String[] hosts = new String[] { "a", "b", "c", "d", "e" };
+        try (Directory all = newDirectory(); Directory old = newDirectory(); Directory recent = newDirectory();
+             Directory rollup = newDirectory()) {
+            try (RandomIndexWriter allWriter = new RandomIndexWriter(random(), all);
+                 RandomIndexWriter oldWriter = new RandomIndexWriter(random(), old);
+                 RandomIndexWriter recentWriter = new RandomIndexWriter(random(), recent)) {
+                int numDocs = randomIntBetween(200, 500);
+                for (int i = 0; i < numDocs; i++) {
+                    long timestamp = i == 0 ? checkpoint - 1 : i == 1 ? checkpoint : randomLongBetween(0, end - 1);
+                    Document document = new Document();
+                    document.add(new SortedNumericDocValuesField("ts", timestamp));
+                    // the timestamp is indexed like a date field so that the composite aggregation can visit its points
+                    document.add(new LongPoint("ts", timestamp));
+                    document.add(new SortedSetDocValuesField("host", new BytesRef(randomFrom(hosts))));
+                    if (randomInt(9) > 0) {
+                        document.add(new SortedNumericDocValuesField("bytes", randomIntBetween(0, 10000)));
+                    }
+                    allWriter.addDocument(document);
+                    (timestamp < checkpoint ? oldWriter : recentWriter).addDocument(document);
+                }
+            }
+
+            RollupJob job = job(checkpoint);
+            final int numOldDocs;
+            try (IndexReader oldReader = DirectoryReader.open(old);
+                 RandomIndexWriter rollupWriter = new RandomIndexWriter(random(), rollup)) {
+                AggregationBuilder compositeBuilder = RollupIndexer.buildSearchRequest(job(RollupJob.NO_CHECKPOINT), checkpoint, null)
+                        .source().aggregations().getAggregatorFactories().get(0);
+                InternalComposite composite = searchAndReduce(newSearcher(oldReader, true, true), new MatchAllDocsQuery(),
+                        compositeBuilder, rawFieldTypes());
+                numOldDocs = oldReader.numDocs();
+                for (CompositeAggregation.Bucket bucket : composite.getBuckets()) {
+                    Map<String, Object> source = RollupIndexer.toDocument(job.getConfig(), bucket.getKey(), bucket.getDocCount(),
+                            bucket.getAggregations());
+                    rollupWriter.addDocument(rollupDocument(source));
+                }
+            }
+
+            AggregationBuilder histogram = AggregationBuilders.dateHistogram("histo").field("ts")
+                    .dateHistogramInterval(
+                            randomFrom(DateHistogramInterval.HOUR, DateHistogramInterval.DAY, DateHistogramInterval.hours(6)))
+                    .subAggregation(AggregationBuilders.terms("hosts").field("host")
+                            .subAggregation(AggregationBuilders.min("min").field("bytes"))
+                            .subAggregation(AggregationBuilders.max("max").field("bytes"))
+                            .subAggregation(AggregationBuilders.sum("sum").field("bytes"))
+                            .subAggregation(AggregationBuilders.count("count").field("bytes"))
+                            .subAggregation(AggregationBuilders.avg("avg").field("bytes")));
+            AggregationBuilder terms = AggregationBuilders.terms("top_hosts").field("host").size(hosts.length);
+            AggregationBuilder avg = AggregationBuilders.avg("avg_bytes").field("bytes");
+            SearchSourceBuilder source = source(histogram, terms, avg);
+            assertNull(RollupSearchTranslator.checkEligible(job, source));
+
+            try (IndexReader allReader = DirectoryReader.open(all); IndexReader recentReader = DirectoryReader.open(recent);
+                 IndexReader rollupReader = DirectoryReader.open(rollup)) {
+                InternalAggregations expected = aggregate(newSearcher(allReader, true, true), source, rawFieldTypes());
+                InternalAggregations live = aggregate(newSearcher(recentReader, true, true), source, rawFieldTypes());
+                InternalAggregations rollupAggregations = aggregate(newSearcher(rollupReader, true, true),
+                        RollupSearchTranslator.rollupSource(job, source), rollupFieldTypes());
+                assertEquals(numOldDocs, RollupSearchTranslator.docCount(rollupAggregations));
+
+                InternalAggregations translated = RollupSearchTranslator.translate(source, rollupAggregations);
+                InternalAggregations merged = InternalAggregations.reduce(Arrays.asList(live, translated),
+                        new ReduceContext(BigArrays.NON_RECYCLING_INSTANCE, null, true));
+                assertSameAggregations(expected, merged);
+            }
+        }
+    }
+
+    private InternalAggregations aggregate(IndexSearcher searcher, SearchSourceBuilder source,
+                                           MappedFieldType... fieldTypes) throws IOException {
+        List<InternalAggregation> aggregations = new ArrayList<>();
+        for (AggregationBuilder aggregation : source.aggregations().getAggregatorFactories()) {
+            aggregations.add(searchAndReduce(searcher, new MatchAllDocsQuery(), aggregation, fieldTypes));
+        }
+        return new InternalAggregations(aggregations);
+    }
+
+    private static void assertSameAggregations(InternalAggregations expected, InternalAggregations actual) {
+        Histogram expectedHistogram = expected.get("histo");
+        Histogram actualHistogram = actual.get("histo");
+        assertEquals(expectedHistogram.getBuckets().size(), actualHistogram.getBuckets().size());
+        for (int i = 0; i < expectedHistogram.getBuckets().size(); i++) {
+            Histogram.Bucket expectedBucket = expectedHistogram.getBuckets().get(i);
+            Histogram.Bucket actualBucket = actualHistogram.getBuckets().get(i);
+            assertEquals(expectedBucket.getKeyAsString(), actualBucket.getKeyAsString());
+            assertEquals(expectedBucket.getDocCount(), actualBucket.getDocCount());
+            Terms expectedTerms = expectedBucket.getAggregations().get("hosts");
+            Terms actualTerms = actualBucket.getAggregations().get("hosts");
+            assertEquals(expectedTerms.getBuckets().size(), actualTerms.getBuckets().size());
+            for (Terms.Bucket expectedTerm : expectedTerms.getBuckets()) {
+                Terms.Bucket actualTerm = actualTerms.getBucketByKey(expectedTerm.getKeyAsString());
+                assertNotNull(actualTerm);
+                assertEquals(expectedTerm.getDocCount(), actualTerm.getDocCount());
+                assertEquals(((Min) expectedTerm.getAggregations().get("min")).getValue(),
+                        ((Min) actualTerm.getAggregations().get("min")).getValue(), 0d);
+                assertEquals(((Max) expectedTerm.getAggregations().get("max")).getValue(),
+                        ((Max) actualTerm.getAggregations().get("max")).getValue(), 0d);
+                assertEquals(((Sum) expectedTerm.getAggregations().get("sum")).getValue(),
+                        ((Sum) actualTerm.getAggregations().get("sum")).getValue(), 0d);
+                assertEquals(((ValueCount) expectedTerm.getAggregations().get("count")).getValue(),
+                        ((ValueCount) actualTerm.getAggregations().get("count")).getValue());
+                assertEquals(((Avg) expectedTerm.getAggregations().get("avg")).getValue(),
+                        ((Avg) actualTerm.getAggregations().get("avg")).getValue(), 1e-9);
+            }
+        }
+
+        Terms expectedTopHosts = expected.get("top_hosts");
+        Terms actualTopHosts = actual.get("top_hosts");
+        assertEquals(expectedTopHosts.getBuckets().size(), actualTopHosts.getBuckets().size());
+        for (int i = 0; i < expectedTopHosts.getBuckets().size(); i++) {
+            assertEquals(expectedTopHosts.getBuckets().get(i).getKeyAsString(), actualTopHosts.getBuckets().get(i).getKeyAsString());
+            assertEquals(expectedTopHosts.getBuckets().get(i).getDocCount(), actualTopHosts.getBuckets().get(i).getDocCount());
+        }
+        assertEquals(expectedTopHosts.getSumOfOtherDocCounts(), actualTopHosts.getSumOfOtherDocCounts());
+
+        assertEquals(((Avg) expected.get("avg_bytes")).getValue(), ((Avg) actual.get("avg_bytes")).getValue(), 1e-9);
+    }
+
+    private static Document rollupDocument(Map<String, Object> source) {
+        Document document = new Document();
+        @SuppressWarnings("unchecked")
+        Map<String, Object> rollup = (Map<String, Object>) source.get("_rollup");
+        document.add(new SortedSetDocValuesField("_rollup.id", new BytesRef((String) rollup.get("id"))));
+        document.add(new SortedNumericDocValuesField("_rollup.doc_count", (Long) rollup.get("doc_count")));
+        document.add(new SortedNumericDocValuesField("ts", (Long) source.get("ts")));
+        document.add(new LongPoint("ts", (Long) source.get("ts")));
+        document.add(new SortedSetDocValuesField("host", new BytesRef((String) source.get("host"))));
+        for (Metric metric : new Metric[] { Metric.MIN, Metric.MAX, Metric.SUM }) {
+            Double value = (Double) source.get(metric.rollupField("bytes"));
+            if (value != null) {
+                document.add(new SortedNumericDocValuesField(metric.rollupField("bytes"), NumericUtils.doubleToSortableLong(value)));
+            }
+        }
+        document.add(new SortedNumericDocValuesField("bytes.value_count", (Long) source.get("bytes.value_count")));
+        return document;
+    }
+
+    private static MappedFieldType[] rawFieldTypes() {
+        return new MappedFieldType[] { dateFieldType("ts"), keywordFieldType("host"),
+                numberFieldType("bytes", NumberFieldMapper.NumberType.LONG) };
+    }
+
+    private static MappedFieldType[] rollupFieldTypes() {
+        return new MappedFieldType[] { dateFieldType("ts"), keywordFieldType("host"), keywordFieldType("_rollup.id"),
+                numberFieldType("_rollup.doc_count", NumberFieldMapper.NumberType.LONG),
+                numberFieldType("bytes.min", NumberFieldMapper.NumberType.DOUBLE),
+                numberFieldType("bytes.max", NumberFieldMapper.NumberType.DOUBLE),
+                numberFieldType("bytes.sum", NumberFieldMapper.NumberType.DOUBLE),
+                numberFieldType("bytes.value_count", NumberFieldMapper.NumberType.LONG) };
+    }
+
+    private static MappedFieldType dateFieldType(String name) {
+        DateFieldMapper.DateFieldType fieldType = new DateFieldMapper.Builder(name).fieldType();
+        fieldType.setHasDocValues(true);
+        fieldType.setName(name);
+        return fieldType;
+    }
+
+    private static MappedFieldType keywordFieldType(String name) {
+        KeywordFieldMapper.KeywordFieldType fieldType = new KeywordFieldMapper.KeywordFieldType();
+        fieldType.setHasDocValues(true);
+        fieldType.setName(name);
+        return fieldType;
+    }
+
+    private static MappedFieldType numberFieldType(String name, NumberFieldMapper.NumberType type) {
+        NumberFieldMapper.NumberFieldType fieldType = new NumberFieldMapper.NumberFieldType(type);
+        fieldType.setHasDocValues(true);
+        fieldType.setName(name);
+        return fieldType;
+    }
+}
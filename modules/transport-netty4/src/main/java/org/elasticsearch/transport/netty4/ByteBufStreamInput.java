@@ -23,9 +23,12 @@ import io.netty.buffer.ByteBuf;
 import org.apache.lucene.util.BytesRef;
 import org.elasticsearch.common.bytes.BytesReference;
 import org.elasticsearch.common.io.stream.StreamInput;
+import org.elasticsearch.common.lease.Releasable;
 
 import java.io.EOFException;
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
 
 /**
  * A Netty {@link io.netty.buffer.ByteBuf} based {@link org.elasticsearch.common.io.stream.StreamInput}.
@@ -34,6 +37,7 @@ class ByteBufStreamInput extends StreamInput {
 
     private final ByteBuf buffer;
     private final int endIndex;
+    private List<ByteBuf> retainedBuffers;
 
     ByteBufStreamInput(ByteBuf buffer, int length) {
         if (length > buffer.readableBytes()) {
@@ -50,10 +54,39 @@ class ByteBufStreamInput extends StreamInput {
         // NOTE: It is unsafe to share a reference of the internal structure, so we
         // use the default implementation which will copy the bytes. It is unsafe because
         // a netty ByteBuf might be pooled which requires a manual release to prevent
-        // memory leaks.
+        // memory leaks. Use #readRetainedBytesReference to share slices whose lifecycle is
+        // bound to #retainBuffers.
         return super.readBytesReference(length);
     }
 
+    @Override
+    protected BytesReference readRetainedBytesReference(int length) throws IOException {
+        if (retainedBuffers == null || length == 0) {
+            return super.readRetainedBytesReference(length);
+        }
+        ensureCanReadBytes(length);
+        // the slice increments the reference count of the pooled buffer so that netty does not reuse
+        // it until the slice is released again
+        final ByteBuf slice = buffer.retainedSlice(buffer.readerIndex(), length);
+        retainedBuffers.add(slice);
+        buffer.skipBytes(length);
+        return Netty4Utils.toBytesReference(slice);
+    }
+
+    @Override
+    public Releasable retainBuffers() {
+        if (retainedBuffers == null) {
+            retainedBuffers = new ArrayList<>();
+        }
+        final List<ByteBuf> buffers = retainedBuffers;
+        return () -> {
+            for (ByteBuf retained : buffers) {
+                retained.release();
+            }
+            buffers.clear();
+        };
+    }
+
     @Override
     public BytesRef readBytesRef(int length) throws IOException {
         // NOTE: It is unsafe to share a reference of the internal structure, so we
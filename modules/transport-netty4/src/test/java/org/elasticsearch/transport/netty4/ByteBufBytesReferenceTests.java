@@ -22,8 +22,12 @@ import io.netty.buffer.ByteBuf;
 import io.netty.buffer.Unpooled;
 import org.apache.lucene.util.BytesRef;
 import org.elasticsearch.common.bytes.AbstractBytesReferenceTestCase;
+import org.elasticsearch.common.bytes.BytesArray;
 import org.elasticsearch.common.bytes.BytesReference;
+import org.elasticsearch.common.io.stream.BytesStreamOutput;
 import org.elasticsearch.common.io.stream.ReleasableBytesStreamOutput;
+import org.elasticsearch.common.io.stream.StreamInput;
+import org.elasticsearch.common.lease.Releasable;
 
 import javax.net.ssl.SSLEngine;
 import java.io.IOException;
@@ -83,4 +87,26 @@ public class ByteBufBytesReferenceTests extends AbstractBytesReferenceTestCase {
         channelBuffer.readInt(); // this advances the index of the channel buffer
         assertEquals(utf8ToString, byteBufBytesReference.utf8ToString());
     }
+
+    public void testReadRetainedBytesReference() throws IOException {
+        final byte[] payload = new byte[randomIntBetween(1, 3 * PAGE_SIZE)];
+        random().nextBytes(payload);
+        final BytesStreamOutput out = new BytesStreamOutput();
+        out.writeBytesReference(new BytesArray(payload));
+        out.writeBytesReference(new BytesArray(payload));
+        final BytesRef bytesRef = out.bytes().toBytesRef();
+        final ByteBuf buffer = Unpooled.wrappedBuffer(bytesRef.bytes, bytesRef.offset, bytesRef.length);
+        final StreamInput in = Netty4Utils.toBytesReference(buffer).streamInput();
+        // copies unless the buffers are retained
+        assertEquals(new BytesArray(payload), in.readRetainedBytesReference());
+        assertEquals(1, buffer.refCnt());
+        final Releasable releasable = in.retainBuffers();
+        final BytesReference retained = in.readRetainedBytesReference();
+        assertEquals(new BytesArray(payload), retained);
+        assertEquals(2, buffer.refCnt());
+        assertEquals(0, in.available());
+        releasable.close();
+        assertEquals(1, buffer.refCnt());
+        buffer.release();
+    }
 }
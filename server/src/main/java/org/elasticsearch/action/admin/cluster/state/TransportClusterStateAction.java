@@ -39,7 +39,7 @@ import org.elasticsearch.transport.TransportService;
 
 import java.io.IOException;
 
-import static org.elasticsearch.discovery.zen.PublishClusterStateAction.serializeFullClusterState;
+import static org.elasticsearch.discovery.zen.PublishClusterStateAction.compressedClusterStateSize;
 
 public class TransportClusterStateAction extends TransportMasterNodeReadAction<ClusterStateRequest, ClusterStateResponse> {
 
@@ -133,7 +133,7 @@ public class TransportClusterStateAction extends TransportMasterNodeReadAction<C
             }
         }
         listener.onResponse(new ClusterStateResponse(currentState.getClusterName(), builder.build(),
-                                                        serializeFullClusterState(currentState, Version.CURRENT).length()));
+                                                        compressedClusterStateSize(currentState, Version.CURRENT)));
     }
 
 
@@ -0,0 +1,175 @@
+/*
+ * Licensed to Elasticsearch under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Elasticsearch licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.elasticsearch.action.bulk;
+
+import org.apache.logging.log4j.Logger;
+import org.apache.logging.log4j.message.ParameterizedMessage;
+import org.apache.logging.log4j.util.Supplier;
+import org.elasticsearch.action.DocWriteRequest;
+import org.elasticsearch.action.index.IndexRequest;
+import org.elasticsearch.common.Nullable;
+import org.elasticsearch.common.util.concurrent.EsRejectedExecutionException;
+import org.elasticsearch.index.mapper.SourceToParse;
+import org.elasticsearch.index.shard.IndexShard;
+import org.elasticsearch.index.shard.PreParsedDocument;
+
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.FutureTask;
+import java.util.function.Function;
+
+/**
+ * Parses the documents of the index items of a shard level bulk request on an executor ahead of their execution on the
+ * primary, so that the thread that executes the items only has to index the documents. At most <code>window</code> items
+ * are parsed ahead of the item that is executed in order to bound the memory held by parsed documents.
+ * <p>
+ * The thread that executes the items never waits for a parse task that did not start yet: it parses the document itself
+ * instead. A document that could not be parsed ahead is parsed again on the executing thread, so that failures are reported
+ * exactly like without pipelining.
+ * <p>
+ * Documents are parsed from the source bytes of the request, which may be slices of pooled network buffers that are released
+ * once the request completed. {@link #cancel()} therefore waits for the parse tasks that are still running.
+ */
+final class PipelinedBulkParser {
+
+    private final BulkShardRequest request;
+    private final Function<SourceToParse, PreParsedDocument> parser;
+    private final Executor executor;
+    private final int window;
+    private final Logger logger;
+    private final FutureTask<PreParsedDocument>[] tasks;
+    // the index of the next item to submit for parsing
+    private int nextItem;
+    // set once the request completed, parse tasks that did not start yet skip parsing then
+    private volatile boolean cancelled;
+
+    PipelinedBulkParser(BulkShardRequest request, IndexShard primary, Executor executor, int window, Logger logger) {
+        this(request, primary::preParseIndexOperationOnPrimary, executor, window, logger);
+    }
+
+    @SuppressWarnings("unchecked")
+    PipelinedBulkParser(BulkShardRequest request, Function<SourceToParse, PreParsedDocument> parser, Executor executor, int window,
+                        Logger logger) {
+        if (window < 1) {
+            throw new IllegalArgumentException("window must be at least 1 but was [" + window + "]");
+        }
+        this.request = request;
+        this.parser = parser;
+        this.executor = executor;
+        this.window = window;
+        this.logger = logger;
+        this.tasks = new FutureTask[request.items().length];
+    }
+
+    /**
+     * Submits the parse tasks of the first items of the request.
+     */
+    void start() {
+        submitUpTo(window);
+    }
+
+    /**
+     * Returns the document of the item at the provided index, or <code>null</code> if the item is not an index request or
+     * if its document could not be parsed ahead. Items must be taken in order.
+     */
+    @Nullable
+    PreParsedDocument take(int requestIndex) {
+        submitUpTo(requestIndex + 1 + window);
+        final FutureTask<PreParsedDocument> task = tasks[requestIndex];
+        if (task == null) {
+            return null;
+        }
+        tasks[requestIndex] = null;
+        // runs the task on this thread unless the executor already started it
+        task.run();
+        try {
+            return getUninterruptibly(task);
+        } catch (ExecutionException e) {
+            logger.trace((Supplier<?>) () -> new ParameterizedMessage("{} failed to parse bulk item [{}] ahead of its execution",
+                request.shardId(), requestIndex), e.getCause());
+            return null;
+        }
+    }
+
+    /**
+     * Cancels the parse tasks that have not run yet, for instance because the execution of the request failed, and waits for
+     * the ones that are running. Once this method returns no parse task reads the source bytes of the request anymore.
+     */
+    void cancel() {
+        cancelled = true;
+        for (int i = 0; i < tasks.length; i++) {
+            final FutureTask<PreParsedDocument> task = tasks[i];
+            if (task != null) {
+                tasks[i] = null;
+                // completes the task on this thread without parsing unless the executor already started it
+                task.run();
+                try {
+                    getUninterruptibly(task);
+                } catch (ExecutionException e) {
+                    // the document is not needed anymore
+                }
+            }
+        }
+    }
+
+    /**
+     * Waits for the provided task to complete even if the thread is interrupted, since a running task still reads the source
+     * bytes of the request.
+     */
+    private static PreParsedDocument getUninterruptibly(FutureTask<PreParsedDocument> task) throws ExecutionException {
+        boolean interrupted = false;
+        try {
+            while (true) {
+                try {
+                    return task.get();
+                } catch (InterruptedException e) {
+                    interrupted = true;
+                }
+            }
+        } finally {
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    private void submitUpTo(int limit) {
+        final BulkItemRequest[] items = request.items();
+        final int end = Math.min(limit, items.length);
+        for (; nextItem < end; nextItem++) {
+            final BulkItemRequest item = items[nextItem];
+            if (TransportShardBulkAction.isAborted(item.getPrimaryResponse())) {
+                continue;
+            }
+            final DocWriteRequest docWriteRequest = item.request();
+            if (docWriteRequest.opType() != DocWriteRequest.OpType.INDEX && docWriteRequest.opType() != DocWriteRequest.OpType.CREATE) {
+                continue;
+            }
+            final SourceToParse sourceToParse = TransportShardBulkAction.sourceToParse((IndexRequest) docWriteRequest);
+            final FutureTask<PreParsedDocument> task = new FutureTask<>(() -> cancelled ? null : parser.apply(sourceToParse));
+            try {
+                executor.execute(task);
+            } catch (EsRejectedExecutionException e) {
+                // the executing thread parses the document itself
+            }
+            tasks[nextItem] = task;
+        }
+    }
+}
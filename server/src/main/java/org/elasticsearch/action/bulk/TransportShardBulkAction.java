@@ -44,6 +44,7 @@ import org.elasticsearch.cluster.metadata.IndexMetaData;
 import org.elasticsearch.cluster.metadata.IndexNameExpressionResolver;
 import org.elasticsearch.cluster.metadata.MappingMetaData;
 import org.elasticsearch.cluster.service.ClusterService;
+import org.elasticsearch.common.Nullable;
 import org.elasticsearch.common.bytes.BytesReference;
 import org.elasticsearch.common.collect.Tuple;
 import org.elasticsearch.common.inject.Inject;
@@ -58,6 +59,7 @@ import org.elasticsearch.index.mapper.Mapping;
 import org.elasticsearch.index.mapper.SourceToParse;
 import org.elasticsearch.index.seqno.SequenceNumbers;
 import org.elasticsearch.index.shard.IndexShard;
+import org.elasticsearch.index.shard.PreParsedDocument;
 import org.elasticsearch.index.shard.ShardId;
 import org.elasticsearch.index.translog.Translog;
 import org.elasticsearch.indices.IndicesService;
@@ -107,7 +109,16 @@ public class TransportShardBulkAction extends TransportWriteAction<BulkShardRequ
     @Override
     public WritePrimaryResult<BulkShardRequest, BulkShardResponse> shardOperationOnPrimary(
             BulkShardRequest request, IndexShard primary) throws Exception {
-        return performOnPrimary(request, primary, updateHelper, threadPool::absoluteTimeInMillis, new ConcreteMappingUpdatePerformer());
+        final PipelinedBulkParser parser;
+        if (primary.indexSettings().isBulkPipelinedParsingEnabled() && request.items().length > 1) {
+            // parse as many documents ahead as there are threads that can parse them
+            parser = new PipelinedBulkParser(request, primary, threadPool.executor(ThreadPool.Names.BULK_PARSE),
+                threadPool.info(ThreadPool.Names.BULK_PARSE).getMax(), logger);
+        } else {
+            parser = null;
+        }
+        return performOnPrimary(request, primary, updateHelper, threadPool::absoluteTimeInMillis, new ConcreteMappingUpdatePerformer(),
+            parser);
     }
 
     public static WritePrimaryResult<BulkShardRequest, BulkShardResponse> performOnPrimary(
@@ -116,13 +127,39 @@ public class TransportShardBulkAction extends TransportWriteAction<BulkShardRequ
             UpdateHelper updateHelper,
             LongSupplier nowInMillisSupplier,
             MappingUpdatePerformer mappingUpdater) throws Exception {
+        return performOnPrimary(request, primary, updateHelper, nowInMillisSupplier, mappingUpdater, null);
+    }
+
+    /**
+     * Executes the items of the request on the primary.
+     *
+     * @param parser parses the documents of index items ahead of their execution, or <code>null</code> to parse each document
+     *               when its item is executed
+     */
+    static WritePrimaryResult<BulkShardRequest, BulkShardResponse> performOnPrimary(
+            BulkShardRequest request,
+            IndexShard primary,
+            UpdateHelper updateHelper,
+            LongSupplier nowInMillisSupplier,
+            MappingUpdatePerformer mappingUpdater,
+            @Nullable PipelinedBulkParser parser) throws Exception {
         final IndexMetaData metaData = primary.indexSettings().getIndexMetaData();
         Translog.Location location = null;
-        for (int requestIndex = 0; requestIndex < request.items().length; requestIndex++) {
-            if (isAborted(request.items()[requestIndex].getPrimaryResponse()) == false) {
-                //yiming-doc:bulk
-                location = executeBulkItemRequest(metaData, primary, request, location, requestIndex,
-                    updateHelper, nowInMillisSupplier, mappingUpdater);
+        if (parser != null) {
+            parser.start();
+        }
+        try {
+            for (int requestIndex = 0; requestIndex < request.items().length; requestIndex++) {
+                if (isAborted(request.items()[requestIndex].getPrimaryResponse()) == false) {
+                    //yiming-doc:bulk
+                    final PreParsedDocument preParsedDoc = parser == null ? null : parser.take(requestIndex);
+                    location = executeBulkItemRequest(metaData, primary, request, location, requestIndex,
+                        updateHelper, nowInMillisSupplier, mappingUpdater, preParsedDoc);
+                }
+            }
+        } finally {
+            if (parser != null) {
+                parser.cancel();
             }
         }
         BulkItemResponse[] responses = new BulkItemResponse[request.items().length];
@@ -137,8 +174,9 @@ public class TransportShardBulkAction extends TransportWriteAction<BulkShardRequ
     private static BulkItemResultHolder executeIndexRequest(final IndexRequest indexRequest,
                                                             final BulkItemRequest bulkItemRequest,
                                                             final IndexShard primary,
+                                                            @Nullable final PreParsedDocument preParsedDoc,
                                                             final MappingUpdatePerformer mappingUpdater) throws Exception {
-        Engine.IndexResult indexResult = executeIndexRequestOnPrimary(indexRequest, primary, mappingUpdater);
+        Engine.IndexResult indexResult = executeIndexRequestOnPrimary(indexRequest, primary, preParsedDoc, mappingUpdater);
         if (indexResult.hasFailure()) {
             return new BulkItemResultHolder(null, indexResult, bulkItemRequest);
         } else {
@@ -228,6 +266,16 @@ public class TransportShardBulkAction extends TransportWriteAction<BulkShardRequ
                                                     int requestIndex, UpdateHelper updateHelper,
                                                     LongSupplier nowInMillisSupplier,
                                                     final MappingUpdatePerformer mappingUpdater) throws Exception {
+        return executeBulkItemRequest(metaData, primary, request, location, requestIndex, updateHelper, nowInMillisSupplier,
+            mappingUpdater, null);
+    }
+
+    static Translog.Location executeBulkItemRequest(IndexMetaData metaData, IndexShard primary,
+                                                    BulkShardRequest request, Translog.Location location,
+                                                    int requestIndex, UpdateHelper updateHelper,
+                                                    LongSupplier nowInMillisSupplier,
+                                                    final MappingUpdatePerformer mappingUpdater,
+                                                    @Nullable final PreParsedDocument preParsedDoc) throws Exception {
         final DocWriteRequest itemRequest = request.items()[requestIndex].request();
         final DocWriteRequest.OpType opType = itemRequest.opType();
         final BulkItemResultHolder responseHolder;
@@ -235,7 +283,7 @@ public class TransportShardBulkAction extends TransportWriteAction<BulkShardRequ
             case CREATE:
             case INDEX:
                 responseHolder = executeIndexRequest((IndexRequest) itemRequest,
-                        request.items()[requestIndex], primary, mappingUpdater);
+                        request.items()[requestIndex], primary, preParsedDoc, mappingUpdater);
                 break;
             case UPDATE:
                 responseHolder = executeUpdateRequest((UpdateRequest) itemRequest, primary, metaData, request,
@@ -262,7 +310,7 @@ public class TransportShardBulkAction extends TransportWriteAction<BulkShardRequ
         return calculateTranslogLocation(location, responseHolder);
     }
 
-    private static boolean isAborted(BulkItemResponse response) {
+    static boolean isAborted(BulkItemResponse response) {
         return response != null && response.isFailed() && response.getFailure().isAborted();
     }
 
@@ -539,9 +587,23 @@ public class TransportShardBulkAction extends TransportWriteAction<BulkShardRequ
     /** Executes index operation on primary shard after updates mapping if dynamic mappings are found */
     static Engine.IndexResult executeIndexRequestOnPrimary(IndexRequest request, IndexShard primary,
                                                            MappingUpdatePerformer mappingUpdater) throws Exception {
-        final SourceToParse sourceToParse =
-            SourceToParse.source(request.index(), request.type(), request.id(), request.source(), request.getContentType())
-                .routing(request.routing()).parent(request.parent());
+        return executeIndexRequestOnPrimary(request, primary, null, mappingUpdater);
+    }
+
+    static SourceToParse sourceToParse(IndexRequest request) {
+        return SourceToParse.source(request.index(), request.type(), request.id(), request.source(), request.getContentType())
+            .routing(request.routing()).parent(request.parent());
+    }
+
+    /**
+     * Executes index operation on primary shard after updates mapping if dynamic mappings are found
+     *
+     * @param preParsedDoc the document of the request if it was parsed ahead, it is only used for the first attempt
+     */
+    static Engine.IndexResult executeIndexRequestOnPrimary(IndexRequest request, IndexShard primary,
+                                                           @Nullable PreParsedDocument preParsedDoc,
+                                                           MappingUpdatePerformer mappingUpdater) throws Exception {
+        final SourceToParse sourceToParse = sourceToParse(request);
         try {
             // if a mapping update is required to index this request, issue a mapping update on the master, and abort the
             // current indexing operation so that it can be retried with the updated mapping from the master
@@ -549,14 +611,15 @@ public class TransportShardBulkAction extends TransportWriteAction<BulkShardRequ
             //yiming-doc:bulk 如果当前写入数据需要添加新字段。触发一次mapping更新操作，并且中断当前的写入，直接抛出异常
             // 这样做的目的在于：抛出异常后，会自动重试，而且是使用更新过后的mapping（已添加新字段）
             // 这里抛出了RetryOnPrimaryException异常，其他异常也可正常执行
-            return primary.applyIndexOperationOnPrimary(request.version(), request.versionType(), sourceToParse,
+            return primary.applyIndexOperationOnPrimary(request.version(), request.versionType(), sourceToParse, preParsedDoc,
                 request.getAutoGeneratedTimestamp(), request.isRetry(), update -> {
                     // 更新mapping后直接抛出异常，触发重试机制，下次就能正常写入了
                     mappingUpdater.updateMappings(update, primary.shardId(), sourceToParse.type());
                     throw new ReplicationOperation.RetryOnPrimaryException(primary.shardId(), "Mapping updated");
                 });
         } catch (ReplicationOperation.RetryOnPrimaryException e) {
-            return primary.applyIndexOperationOnPrimary(request.version(), request.versionType(), sourceToParse,
+            // the mapping changed so the document has to be parsed again
+            return primary.applyIndexOperationOnPrimary(request.version(), request.versionType(), sourceToParse, null,
                 request.getAutoGeneratedTimestamp(), request.isRetry(), update -> mappingUpdater.verifyMappings(update, primary.shardId()));
         }
     }
@@ -26,6 +26,7 @@ import org.elasticsearch.action.support.TransportActions;
 import org.elasticsearch.cluster.routing.GroupShardsIterator;
 import org.elasticsearch.cluster.routing.ShardRouting;
 import org.elasticsearch.common.Nullable;
+import org.elasticsearch.common.unit.TimeValue;
 import org.elasticsearch.common.util.concurrent.AbstractRunnable;
 import org.elasticsearch.common.util.concurrent.AtomicArray;
 import org.elasticsearch.search.SearchPhaseResult;
@@ -35,6 +36,7 @@ import java.io.IOException;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.concurrent.Executor;
+import java.util.concurrent.ScheduledFuture;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.stream.Stream;
 
@@ -84,13 +86,18 @@ abstract class InitialSearchPhase<FirstResult extends SearchPhaseResult> extends
 
     private void onShardFailure(final int shardIndex, @Nullable ShardRouting shard, @Nullable String nodeId,
                                 final SearchShardIterator shardIt, Exception e) {
+        onShardFailure(shardIndex, shard, nodeId, shardIt, 0, e);
+    }
+
+    private void onShardFailure(final int shardIndex, @Nullable ShardRouting shard, @Nullable String nodeId,
+                                final SearchShardIterator shardIt, int discardedOps, Exception e) {
         // we always add the shard failure for a specific shard instance
         // we do make sure to clean it on a successful response from a shard
         SearchShardTarget shardTarget = new SearchShardTarget(nodeId, shardIt.shardId(), shardIt.getClusterAlias(),
                 shardIt.getOriginalIndices());
         onShardFailure(shardIndex, shardTarget, e);
 
-        if (totalOps.incrementAndGet() == expectedTotalOps) {
+        if (totalOps.addAndGet(1 + discardedOps) == expectedTotalOps) {
             if (logger.isDebugEnabled()) {
                 if (e != null && !TransportActions.isShardNotAvailableException(e)) {
                     logger.debug(
@@ -201,8 +208,11 @@ abstract class InitialSearchPhase<FirstResult extends SearchPhaseResult> extends
          * we can continue (cf. InitialSearchPhase#maybeFork).
          */
         final Thread thread = Thread.currentThread();
+        final ShardRequestHedger<FirstResult> hedger = getHedger();
         if (shard == null) {
             fork(() -> onShardFailure(shardIndex, null, null, shardIt, new NoShardAvailableActionException(shardIt.shardId())));
+        } else if (hedger != null) {
+            performHedgeablePhaseOnShard(hedger, shardIndex, shardIt, shard);
         } else {
             try {
                 executePhaseOnShard(shardIt, shard, new SearchActionListener<FirstResult>(new SearchShardTarget(shard.currentNodeId(),
@@ -227,6 +237,180 @@ abstract class InitialSearchPhase<FirstResult extends SearchPhaseResult> extends
         }
     }
 
+    /**
+     * Sends the request to the provided shard copy and schedules a hedged duplicate of the request to the next copy of the
+     * shard in case the copy does not answer in time. The first answer is used, the other one is discarded. Both copies are
+     * sent as the child of their own task so that the copy that loses can be cancelled.
+     */
+    private void performHedgeablePhaseOnShard(final ShardRequestHedger<FirstResult> hedger, final int shardIndex,
+                                              final SearchShardIterator shardIt, final ShardRouting shard) {
+        final SearchHedgingService hedgingService = hedger.getHedgingService();
+        final HedgedShard<FirstResult> hedgedShard = new HedgedShard<>(hedger, shardIndex, shardIt);
+        hedgingService.onShardRequest();
+        final TimeValue delay = hedgingService.getHedgeDelay(shard.currentNodeId());
+        if (delay == null || shardIt.remaining() == 0) {
+            // the request is never hedged so it doesn't need a task of its own
+            sendHedgeableRequest(hedgedShard, shard, false, null);
+            return;
+        }
+        final SearchTask originalTask;
+        try {
+            originalTask = hedger.registerHedgeTask();
+        } catch (Exception e) {
+            // the search was cancelled in the meantime
+            fork(() -> onHedgeableFailure(hedgedShard, shard, false, e));
+            return;
+        }
+        synchronized (hedgedShard) {
+            hedgedShard.originalTask = originalTask;
+        }
+        sendHedgeableRequest(hedgedShard, shard, false, originalTask);
+        hedgedShard.scheduleHedge(hedgingService.schedule(delay, () -> fork(() -> maybeHedge(hedgedShard))));
+    }
+
+    private void maybeHedge(final HedgedShard<FirstResult> hedgedShard) {
+        final SearchHedgingService hedgingService = hedgedShard.hedger.getHedgingService();
+        final ShardRouting shard;
+        synchronized (hedgedShard) {
+            if (hedgedShard.done || hedgedShard.hedged || hedgedShard.shardIt.remaining() == 0
+                    || hedgingService.tryAcquireHedge() == false) {
+                return;
+            }
+            shard = hedgedShard.shardIt.nextOrNull();
+            hedgedShard.hedged = true;
+            hedgedShard.inFlight++;
+        }
+        logger.trace("{}: hedging shard request to [{}]", hedgedShard.shardIt.shardId(), shard.currentNodeId());
+        hedgingService.onHedge(shard.currentNodeId());
+        final SearchTask hedgeTask;
+        try {
+            hedgeTask = hedgedShard.hedger.registerHedgeTask();
+        } catch (Exception e) {
+            // the search was cancelled in the meantime
+            onHedgeableFailure(hedgedShard, shard, true, e);
+            return;
+        }
+        final boolean abandoned;
+        synchronized (hedgedShard) {
+            abandoned = hedgedShard.done;
+            if (abandoned == false) {
+                hedgedShard.hedgeTask = hedgeTask;
+            }
+        }
+        if (abandoned) {
+            // the original request answered in the meantime and accounted for the hedged request
+            hedgingService.unregisterHedgeTask(hedgeTask);
+        } else {
+            sendHedgeableRequest(hedgedShard, shard, true, hedgeTask);
+        }
+    }
+
+    private void sendHedgeableRequest(final HedgedShard<FirstResult> hedgedShard, final ShardRouting shard, final boolean hedge,
+                                      @Nullable final SearchTask task) {
+        final Thread thread = Thread.currentThread();
+        final SearchActionListener<FirstResult> listener = new SearchActionListener<FirstResult>(new SearchShardTarget(
+            shard.currentNodeId(), hedgedShard.shardIt.shardId(), hedgedShard.shardIt.getClusterAlias(),
+            hedgedShard.shardIt.getOriginalIndices()), hedgedShard.shardIndex) {
+            @Override
+            public void innerOnResponse(FirstResult result) {
+                maybeFork(thread, () -> onHedgeableResult(hedgedShard, shard, hedge, result));
+            }
+
+            @Override
+            public void onFailure(Exception t) {
+                maybeFork(thread, () -> onHedgeableFailure(hedgedShard, shard, hedge, t));
+            }
+        };
+        try {
+            if (task != null) {
+                hedgedShard.hedger.executeHedgedPhaseOnShard(hedgedShard.shardIt, shard, task, listener);
+            } else {
+                executePhaseOnShard(hedgedShard.shardIt, shard, listener);
+            }
+        } catch (final Exception e) {
+            fork(() -> onHedgeableFailure(hedgedShard, shard, hedge, e));
+        }
+    }
+
+    private void onHedgeableResult(final HedgedShard<FirstResult> hedgedShard, final ShardRouting shard, final boolean hedge,
+                                   final FirstResult result) {
+        final SearchHedgingService hedgingService = hedgedShard.hedger.getHedgingService();
+        final int running;
+        final int losers;
+        final SearchTask task;
+        final SearchTask otherTask;
+        synchronized (hedgedShard) {
+            task = hedge ? hedgedShard.hedgeTask : hedgedShard.originalTask;
+            otherTask = hedge ? hedgedShard.originalTask : hedgedShard.hedgeTask;
+            if (hedgedShard.done) {
+                running = -1;
+                losers = -1;
+            } else {
+                hedgedShard.done = true;
+                running = hedgedShard.inFlight - 1;
+                losers = running + hedgedShard.failedCopies;
+                hedgedShard.cancelScheduledHedge();
+            }
+        }
+        if (task != null) {
+            hedgingService.unregisterHedgeTask(task);
+        }
+        if (losers == -1) {
+            // the other copy answered first
+            logger.trace("{}: discarding result of [{}] since another copy answered first", hedgedShard.shardIt.shardId(),
+                shard.currentNodeId());
+            onDiscardedShardResult(result);
+            return;
+        }
+        if (hedge) {
+            hedgingService.onHedgeWon(shard.currentNodeId());
+        }
+        if (running > 0 && otherTask != null) {
+            // the other copy would keep using the resources of its node although its result is discarded
+            hedgingService.cancelHedgeTask(otherTask);
+        }
+        assert result.getShardIndex() != -1 : "shard index is not set";
+        assert result.getSearchShardTarget() != null : "search shard target must not be null";
+        onShardSuccess(result);
+        // the copies of the requests that failed or are still running are accounted for here since their results are discarded
+        successfulShardExecution(hedgedShard.shardIt, losers);
+    }
+
+    private void onHedgeableFailure(final HedgedShard<FirstResult> hedgedShard, final ShardRouting shard, final boolean hedge,
+                                    final Exception e) {
+        final boolean discarded;
+        final boolean last;
+        final int failedCopies;
+        final SearchTask task;
+        synchronized (hedgedShard) {
+            task = hedge ? hedgedShard.hedgeTask : hedgedShard.originalTask;
+            discarded = hedgedShard.done;
+            last = discarded == false && --hedgedShard.inFlight == 0;
+            if (last) {
+                hedgedShard.done = true;
+                hedgedShard.cancelScheduledHedge();
+            } else if (discarded == false) {
+                // accounted for by the copy that answers last
+                hedgedShard.failedCopies++;
+            }
+            failedCopies = hedgedShard.failedCopies;
+        }
+        if (task != null) {
+            hedgedShard.hedger.getHedgingService().unregisterHedgeTask(task);
+        }
+        if (discarded) {
+            // the other copy answered first
+            return;
+        } else if (last) {
+            // moves on to the next copy of the shard if there is one
+            onShardFailure(hedgedShard.shardIndex, shard, shard.currentNodeId(), hedgedShard.shardIt, failedCopies, e);
+        } else {
+            // the other copy is still running, the failure is only recorded if that copy fails too
+            logger.trace((Supplier<?>) () -> new ParameterizedMessage("{}: Failed to execute [{}] while another copy is still running",
+                shard.shortSummary(), request), e);
+        }
+    }
+
     private void onShardResult(FirstResult result, SearchShardIterator shardIt) {
         assert result.getShardIndex() != -1 : "shard index is not set";
         assert result.getSearchShardTarget() != null : "search shard target must not be null";
@@ -240,11 +424,15 @@ abstract class InitialSearchPhase<FirstResult extends SearchPhaseResult> extends
     }
 
     private void successfulShardExecution(SearchShardIterator shardsIt) {
+        successfulShardExecution(shardsIt, 0);
+    }
+
+    private void successfulShardExecution(SearchShardIterator shardsIt, int discardedOps) {
         final int remainingOpsOnIterator;
         if (shardsIt.skip()) {
             remainingOpsOnIterator = shardsIt.remaining();
         } else {
-            remainingOpsOnIterator = shardsIt.remaining() + 1;
+            remainingOpsOnIterator = shardsIt.remaining() + 1 + discardedOps;
         }
         final int xTotalOps = totalOps.addAndGet(remainingOpsOnIterator);
         if (xTotalOps == expectedTotalOps) {
@@ -291,6 +479,96 @@ abstract class InitialSearchPhase<FirstResult extends SearchPhaseResult> extends
     protected abstract void executePhaseOnShard(SearchShardIterator shardIt, ShardRouting shard,
                                                 SearchActionListener<FirstResult> listener);
 
+    /**
+     * Returns the hedger that duplicates the shard requests of this phase to another copy of the shard, or <code>null</code>
+     * if the shard requests of this phase are never hedged.
+     */
+    @Nullable
+    ShardRequestHedger<FirstResult> getHedger() {
+        return null;
+    }
+
+    /**
+     * Executed for the result of a shard request that answered after another copy of the same shard. The result is not
+     * used so implementations should release the resources that are associated with it.
+     */
+    void onDiscardedShardResult(FirstResult result) {
+    }
+
+    /**
+     * The state of the requests that are sent to the copies of a shard when hedging is enabled. At most one hedged request
+     * is sent per shard. The first copy that answers wins and the answers of the other copies are discarded.
+     */
+    private static final class HedgedShard<Result extends SearchPhaseResult> {
+        private final ShardRequestHedger<Result> hedger;
+        private final int shardIndex;
+        private final SearchShardIterator shardIt;
+        // guarded by this
+        private int inFlight = 1;
+        private int failedCopies;
+        private boolean done;
+        private boolean hedged;
+        private SearchTask originalTask;
+        private SearchTask hedgeTask;
+        private ScheduledFuture<?> scheduledHedge;
+
+        HedgedShard(ShardRequestHedger<Result> hedger, int shardIndex, SearchShardIterator shardIt) {
+            this.hedger = hedger;
+            this.shardIndex = shardIndex;
+            this.shardIt = shardIt;
+        }
+
+        synchronized void scheduleHedge(ScheduledFuture<?> scheduledHedge) {
+            if (done) {
+                scheduledHedge.cancel(false);
+            } else {
+                this.scheduledHedge = scheduledHedge;
+            }
+        }
+
+        void cancelScheduledHedge() {
+            assert Thread.holdsLock(this);
+            if (scheduledHedge != null) {
+                scheduledHedge.cancel(false);
+            }
+        }
+    }
+
+    /**
+     * Sends hedged duplicates of the shard requests of a phase to other copies of the shard. Only phases that can send a
+     * shard request as the child of its own task supply one, see {@link #getHedger()}.
+     */
+    abstract static class ShardRequestHedger<Result extends SearchPhaseResult> {
+        private final SearchHedgingService hedgingService;
+
+        ShardRequestHedger(SearchHedgingService hedgingService) {
+            this.hedgingService = hedgingService;
+        }
+
+        /**
+         * Returns the service that decides when the shard requests are duplicated.
+         */
+        final SearchHedgingService getHedgingService() {
+            return hedgingService;
+        }
+
+        /**
+         * Registers the task that a copy of a hedgeable shard request is sent as a child of, either the original request or
+         * its hedged duplicate.
+         */
+        abstract SearchTask registerHedgeTask();
+
+        /**
+         * Sends a copy of a hedgeable shard request, the original request or its hedged duplicate to another copy of the shard.
+         * @param shardIt the shards iterator
+         * @param shard the shard routing to send the request for
+         * @param hedgeTask the task to send the request as a child of
+         * @param listener the listener to notify on response
+         */
+        abstract void executeHedgedPhaseOnShard(SearchShardIterator shardIt, ShardRouting shard, SearchTask hedgeTask,
+                                                SearchActionListener<Result> listener);
+    }
+
     /**
      * This class acts as a basic result collection that can be extended to do on-the-fly reduction or result processing
      */
@@ -0,0 +1,58 @@
+/*
+ * Licensed to Elasticsearch under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Elasticsearch licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.elasticsearch.action.search;
+
+import org.elasticsearch.action.ActionRequestBuilder;
+import org.elasticsearch.action.support.IndicesOptions;
+import org.elasticsearch.client.ElasticsearchClient;
+import org.elasticsearch.common.unit.TimeValue;
+
+public class OpenPointInTimeRequestBuilder
+    extends ActionRequestBuilder<OpenPointInTimeRequest, OpenPointInTimeResponse, OpenPointInTimeRequestBuilder> {
+
+    public OpenPointInTimeRequestBuilder(ElasticsearchClient client, OpenPointInTimeAction action) {
+        super(client, action, new OpenPointInTimeRequest());
+    }
+
+    public OpenPointInTimeRequestBuilder setIndices(String... indices) {
+        request.indices(indices);
+        return this;
+    }
+
+    public OpenPointInTimeRequestBuilder setIndicesOptions(IndicesOptions indicesOptions) {
+        request.indicesOptions(indicesOptions);
+        return this;
+    }
+
+    public OpenPointInTimeRequestBuilder setKeepAlive(TimeValue keepAlive) {
+        request.keepAlive(keepAlive);
+        return this;
+    }
+
+    public OpenPointInTimeRequestBuilder setRouting(String routing) {
+        request.routing(routing);
+        return this;
+    }
+
+    public OpenPointInTimeRequestBuilder setPreference(String preference) {
+        request.preference(preference);
+        return this;
+    }
+}
@@ -0,0 +1,119 @@
+/*
+ * Licensed to Elasticsearch under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Elasticsearch licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.elasticsearch.action.search;
+
+import org.elasticsearch.Version;
+import org.elasticsearch.common.bytes.BytesReference;
+import org.elasticsearch.common.io.stream.BytesStreamOutput;
+import org.elasticsearch.common.io.stream.StreamInput;
+import org.elasticsearch.index.shard.ShardId;
+
+import java.io.IOException;
+import java.util.Base64;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * The decoded id of a point in time. It records the index expressions the point in time was opened on, and for every shard the
+ * node that holds the reader context of the shard and the id of the reader context on that node.
+ */
+public final class PointInTimeId {
+
+    private final String[] indices;
+    private final Map<ShardId, ReaderId> shards;
+
+    PointInTimeId(String[] indices, Map<ShardId, ReaderId> shards) {
+        this.indices = indices;
+        this.shards = Collections.unmodifiableMap(shards);
+    }
+
+    /**
+     * The index expressions the point in time was opened on.
+     */
+    public String[] getIndices() {
+        return indices;
+    }
+
+    public Map<ShardId, ReaderId> getShards() {
+        return shards;
+    }
+
+    static String encode(String[] indices, Map<ShardId, ReaderId> shards) {
+        try (BytesStreamOutput out = new BytesStreamOutput()) {
+            Version.writeVersion(Version.CURRENT, out);
+            out.writeStringArray(indices);
+            out.writeVInt(shards.size());
+            for (Map.Entry<ShardId, ReaderId> entry : shards.entrySet()) {
+                entry.getKey().writeTo(out);
+                out.writeString(entry.getValue().getNodeId());
+                out.writeLong(entry.getValue().getId());
+            }
+            return Base64.getUrlEncoder().encodeToString(BytesReference.toBytes(out.bytes()));
+        } catch (IOException e) {
+            throw new AssertionError("writing to a byte stream must not fail", e);
+        }
+    }
+
+    public static PointInTimeId decode(String id) {
+        try (StreamInput in = StreamInput.wrap(Base64.getUrlDecoder().decode(id))) {
+            in.setVersion(Version.readVersion(in));
+            final String[] indices = in.readStringArray();
+            final int numShards = in.readVInt();
+            final Map<ShardId, ReaderId> shards = new LinkedHashMap<>(numShards);
+            for (int i = 0; i < numShards; i++) {
+                shards.put(ShardId.readShardId(in), new ReaderId(in.readString(), in.readLong()));
+            }
+            if (in.available() > 0) {
+                throw new IllegalArgumentException("Not all bytes were read");
+            }
+            return new PointInTimeId(indices, shards);
+        } catch (Exception e) {
+            throw new IllegalArgumentException("Cannot parse point in time id", e);
+        }
+    }
+
+    /**
+     * Identifies the reader context of a shard of a point in time.
+     */
+    public static final class ReaderId {
+        private final String nodeId;
+        private final long id;
+
+        ReaderId(String nodeId, long id) {
+            this.nodeId = nodeId;
+            this.id = id;
+        }
+
+        /**
+         * The node that holds the reader context.
+         */
+        public String getNodeId() {
+            return nodeId;
+        }
+
+        /**
+         * The id of the reader context on its node.
+         */
+        public long getId() {
+            return id;
+        }
+    }
+}
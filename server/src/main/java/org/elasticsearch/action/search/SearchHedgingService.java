@@ -0,0 +1,268 @@
+/*
+ * Licensed to Elasticsearch under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Elasticsearch licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.elasticsearch.action.search;
+
+import org.apache.logging.log4j.message.ParameterizedMessage;
+import org.apache.logging.log4j.util.Supplier;
+import org.elasticsearch.action.ActionListener;
+import org.elasticsearch.action.ActionListenerResponseHandler;
+import org.elasticsearch.action.admin.cluster.node.tasks.cancel.CancelTasksAction;
+import org.elasticsearch.action.admin.cluster.node.tasks.cancel.CancelTasksRequest;
+import org.elasticsearch.action.admin.cluster.node.tasks.cancel.CancelTasksResponse;
+import org.elasticsearch.common.component.AbstractComponent;
+import org.elasticsearch.common.settings.ClusterSettings;
+import org.elasticsearch.common.settings.Setting;
+import org.elasticsearch.common.settings.Setting.Property;
+import org.elasticsearch.common.settings.Settings;
+import org.elasticsearch.common.unit.TimeValue;
+import org.elasticsearch.node.ResponseCollectorService;
+import org.elasticsearch.tasks.Task;
+import org.elasticsearch.tasks.TaskAwareRequest;
+import org.elasticsearch.tasks.TaskId;
+import org.elasticsearch.threadpool.ThreadPool;
+import org.elasticsearch.transport.TransportService;
+
+import java.util.Map;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Decides when a shard request of a search that has not been answered yet is duplicated to another copy of the shard in
+ * order to cut the tail latency caused by slow copies, for instance a node that is stuck in a long garbage collection.
+ * A shard request is hedged once it has been running for longer than a percentile of the recent response times of the
+ * node it was sent to. The first answer wins and the duplicate is cancelled through the task framework if it loses.
+ * The number of hedged requests is capped to a ratio of the shard requests to bound the extra load on the cluster.
+ */
+public class SearchHedgingService extends AbstractComponent {
+
+    public static final Setting<Boolean> HEDGING_ENABLED_SETTING =
+        Setting.boolSetting("search.hedging.enabled", false, Property.Dynamic, Property.NodeScope);
+    public static final Setting<Double> HEDGING_RESPONSE_TIME_PERCENTILE_SETTING =
+        new Setting<>("search.hedging.response_time_percentile", "95", SearchHedgingService::parsePercentile,
+            Property.Dynamic, Property.NodeScope);
+    public static final Setting<TimeValue> HEDGING_MIN_DELAY_SETTING =
+        Setting.timeSetting("search.hedging.min_delay", TimeValue.timeValueMillis(10), TimeValue.ZERO,
+            Property.Dynamic, Property.NodeScope);
+    public static final Setting<Double> HEDGING_BUDGET_SETTING =
+        new Setting<>("search.hedging.budget", "0.05", SearchHedgingService::parseBudget, Property.Dynamic, Property.NodeScope);
+
+    /**
+     * The name of the tasks that hedged shard requests are sent as children of.
+     */
+    public static final String HEDGE_TASK_ACTION_NAME = SearchTransportService.QUERY_ACTION_NAME + "[hedge]";
+
+    /**
+     * The maximum number of hedged requests that can be sent in a burst after a quiet period, in units of the budget.
+     */
+    private static final long MAX_BUDGET = 10 * 1000;
+
+    private final ThreadPool threadPool;
+    private final TransportService transportService;
+    private final ResponseCollectorService responseCollectorService;
+    // the budget of hedged requests in thousandths of a request, each shard request adds its share and each hedge takes one
+    private final AtomicLong budget = new AtomicLong();
+
+    private volatile boolean enabled;
+    private volatile double responseTimePercentile;
+    private volatile TimeValue minDelay;
+    private volatile long budgetPerRequest;
+
+    public SearchHedgingService(Settings settings, ClusterSettings clusterSettings, ThreadPool threadPool,
+                                TransportService transportService, ResponseCollectorService responseCollectorService) {
+        super(settings);
+        this.threadPool = threadPool;
+        this.transportService = transportService;
+        this.responseCollectorService = responseCollectorService;
+        setEnabled(HEDGING_ENABLED_SETTING.get(settings));
+        setResponseTimePercentile(HEDGING_RESPONSE_TIME_PERCENTILE_SETTING.get(settings));
+        setMinDelay(HEDGING_MIN_DELAY_SETTING.get(settings));
+        setBudget(HEDGING_BUDGET_SETTING.get(settings));
+        clusterSettings.addSettingsUpdateConsumer(HEDGING_ENABLED_SETTING, this::setEnabled);
+        clusterSettings.addSettingsUpdateConsumer(HEDGING_RESPONSE_TIME_PERCENTILE_SETTING, this::setResponseTimePercentile);
+        clusterSettings.addSettingsUpdateConsumer(HEDGING_MIN_DELAY_SETTING, this::setMinDelay);
+        clusterSettings.addSettingsUpdateConsumer(HEDGING_BUDGET_SETTING, this::setBudget);
+    }
+
+    private static double parsePercentile(String value) {
+        final double percentile = Double.parseDouble(value);
+        if (percentile < 0 || percentile > 100) {
+            throw new IllegalArgumentException("[search.hedging.response_time_percentile] must be in [0, 100] but was [" + value + "]");
+        }
+        return percentile;
+    }
+
+    private static double parseBudget(String value) {
+        final double budget = Double.parseDouble(value);
+        if (budget < 0 || budget > 1) {
+            throw new IllegalArgumentException("[search.hedging.budget] must be in [0, 1] but was [" + value + "]");
+        }
+        return budget;
+    }
+
+    private void setEnabled(boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    private void setResponseTimePercentile(double responseTimePercentile) {
+        this.responseTimePercentile = responseTimePercentile;
+    }
+
+    private void setMinDelay(TimeValue minDelay) {
+        this.minDelay = minDelay;
+    }
+
+    private void setBudget(double budget) {
+        this.budgetPerRequest = Math.round(budget * 1000);
+    }
+
+    /**
+     * Returns <code>true</code> if the shard requests of the provided search request may be hedged. Requests that use a
+     * preference or a scroll are never hedged since they expect to hit the same copies of the shards.
+     */
+    public boolean canHedge(SearchRequest request) {
+        return enabled && request.preference() == null && request.scroll() == null;
+    }
+
+    /**
+     * Returns the time after which a shard request that was sent to the provided node is hedged, or <code>null</code> if
+     * not enough responses of the node have been collected yet to decide.
+     */
+    TimeValue getHedgeDelay(String nodeId) {
+        final long percentileNanos = responseCollectorService.getResponseTimePercentile(nodeId, responseTimePercentile);
+        if (percentileNanos < 0) {
+            return null;
+        }
+        return TimeValue.timeValueNanos(Math.max(percentileNanos, minDelay.nanos()));
+    }
+
+    /**
+     * Adds the share of a shard request to the budget of hedged requests.
+     */
+    void onShardRequest() {
+        final long share = budgetPerRequest;
+        if (share > 0) {
+            budget.accumulateAndGet(share, (current, increment) -> Math.min(MAX_BUDGET, current + increment));
+        }
+    }
+
+    /**
+     * Takes a hedged request from the budget.
+     *
+     * @return <code>false</code> if the budget of hedged requests is exhausted
+     */
+    boolean tryAcquireHedge() {
+        long current;
+        do {
+            current = budget.get();
+            if (current < 1000) {
+                return false;
+            }
+        } while (budget.compareAndSet(current, current - 1000) == false);
+        return true;
+    }
+
+    /**
+     * Records that a hedged request was sent to the provided node.
+     */
+    void onHedge(String nodeId) {
+        responseCollectorService.addHedgedRequest(nodeId);
+    }
+
+    /**
+     * Records that the hedged request that was sent to the provided node answered first.
+     */
+    void onHedgeWon(String nodeId) {
+        responseCollectorService.addHedgedRequestWon(nodeId);
+    }
+
+    /**
+     * Schedules the provided command to run after the provided delay on the thread of the scheduler. The command should
+     * fork any work that is not trivial.
+     */
+    ScheduledFuture<?> schedule(TimeValue delay, Runnable command) {
+        return threadPool.schedule(delay, ThreadPool.Names.SAME, command);
+    }
+
+    /**
+     * Registers the task that a hedgeable shard request or its hedged duplicate is sent as a child of. Each copy gets its
+     * own parent so that the copy that loses can be cancelled without cancelling the other shard requests of the search.
+     *
+     * @param parentTask the task of the search
+     */
+    SearchTask registerHedgeTask(Task parentTask) {
+        final TaskId parentTaskId = new TaskId(transportService.getLocalNode().getId(), parentTask.getId());
+        return (SearchTask) transportService.getTaskManager().register("transport", HEDGE_TASK_ACTION_NAME,
+            new HedgeTaskRequest(parentTaskId));
+    }
+
+    void unregisterHedgeTask(SearchTask hedgeTask) {
+        transportService.getTaskManager().unregister(hedgeTask);
+    }
+
+    /**
+     * Cancels the shard request that was sent as a child of the provided task since another copy of the shard answered first.
+     */
+    void cancelHedgeTask(SearchTask hedgeTask) {
+        final CancelTasksRequest request = new CancelTasksRequest();
+        request.setTaskId(new TaskId(transportService.getLocalNode().getId(), hedgeTask.getId()));
+        request.setReason("hedged shard request lost against another copy of the shard");
+        transportService.sendRequest(transportService.getLocalNode(), CancelTasksAction.NAME, request,
+            new ActionListenerResponseHandler<>(new ActionListener<CancelTasksResponse>() {
+                @Override
+                public void onResponse(CancelTasksResponse response) {
+                }
+
+                @Override
+                public void onFailure(Exception e) {
+                    // the request has most likely completed in the meantime
+                    logger.trace((Supplier<?>) () -> new ParameterizedMessage(
+                        "failed to cancel hedged shard request [{}]", hedgeTask.getId()), e);
+                }
+            }, CancelTasksResponse::new));
+    }
+
+    private static class HedgeTaskRequest implements TaskAwareRequest {
+        private TaskId parentTaskId;
+
+        HedgeTaskRequest(TaskId parentTaskId) {
+            this.parentTaskId = parentTaskId;
+        }
+
+        @Override
+        public void setParentTask(TaskId taskId) {
+            this.parentTaskId = taskId;
+        }
+
+        @Override
+        public TaskId getParentTask() {
+            return parentTaskId;
+        }
+
+        @Override
+        public Task createTask(long id, String type, String action, TaskId parentTaskId, Map<String, String> headers) {
+            return new SearchTask(id, type, action, getDescription(), parentTaskId, headers);
+        }
+
+        @Override
+        public String getDescription() {
+            return "hedged shard request";
+        }
+    }
+}
@@ -41,6 +41,7 @@ import org.elasticsearch.search.DocValueFormat;
 import org.elasticsearch.search.SearchHit;
 import org.elasticsearch.search.SearchHits;
 import org.elasticsearch.search.SearchPhaseResult;
+import org.elasticsearch.search.aggregations.AggregationsAccumulator;
 import org.elasticsearch.search.aggregations.InternalAggregation;
 import org.elasticsearch.search.aggregations.InternalAggregation.ReduceContext;
 import org.elasticsearch.search.aggregations.InternalAggregations;
@@ -86,6 +87,14 @@ public final class SearchPhaseController extends AbstractComponent {
         this.reduceContextFunction = reduceContextFunction;
     }
 
+    /**
+     * Returns a context for the reduce of aggregations that counts the buckets of the reduced aggregations against the
+     * maximum number of buckets allowed in a response, like the reduce of the shard results of a search request.
+     */
+    public ReduceContext createReduceContext(boolean finalReduce) {
+        return reduceContextFunction.apply(finalReduce);
+    }
+
     public AggregatedDfs aggregateDfs(Collection<DfsSearchResult> results) {
         ObjectObjectHashMap<Term, TermStatistics> termStatistics = HppcMaps.newNoNullKeysMap();
         ObjectObjectHashMap<String, CollectionStatistics> fieldStatistics = HppcMaps.newNoNullKeysMap();
@@ -512,16 +521,6 @@ public final class SearchPhaseController extends AbstractComponent {
     }
 
 
-    /**
-     * Performs an intermediate reduce phase on the aggregations. For instance with this reduce phase never prune information
-     * that relevant for the final reduce step. For final reduce see {@link #reduceAggs(List, List, ReduceContext)}
-     */
-    private InternalAggregations reduceAggsIncrementally(List<InternalAggregations> aggregationsList) {
-        ReduceContext reduceContext = reduceContextFunction.apply(false);
-        return aggregationsList.isEmpty() ? null : reduceAggs(aggregationsList,
-            null, reduceContext);
-    }
-
     private InternalAggregations reduceAggs(List<InternalAggregations> aggregationsList,
                                             List<SiblingPipelineAggregator> pipelineAggregators, ReduceContext reduceContext) {
         InternalAggregations aggregations = InternalAggregations.reduce(aggregationsList, reduceContext);
@@ -617,7 +616,7 @@ public final class SearchPhaseController extends AbstractComponent {
      * iff the buffer is exhausted.
      */
     static final class QueryPhaseResultConsumer extends InitialSearchPhase.ArraySearchPhaseResults<SearchPhaseResult> {
-        private final InternalAggregations[] aggsBuffer;
+        private final AggregationsAccumulator aggsAccumulator;
         private final TopDocs[] topDocsBuffer;
         private final boolean hasAggs;
         private final boolean hasTopDocs;
@@ -625,34 +624,41 @@ public final class SearchPhaseController extends AbstractComponent {
         private int index;
         private final SearchPhaseController controller;
         private int numReducePhases = 0;
-        private final TopDocsStats topDocsStats = new TopDocsStats();
+        private final TopDocsStats topDocsStats;
 
         /**
          * Creates a new {@link QueryPhaseResultConsumer}
          * @param controller a controller instance to reduce the query response objects
          * @param expectedResultSize the expected number of query results. Corresponds to the number of shards queried
          * @param bufferSize the size of the reduce buffer. if the buffer size is smaller than the number of expected results
-         *                   the buffer is used to incrementally reduce aggregation results before all shards responded.
+         *                   the buffer is used to incrementally reduce top docs and aggregation results before all shards responded.
+         *                   Aggregations that support it are folded into an {@link AggregationsAccumulator} as soon as a
+         *                   shard responds whatever the number of expected results, the others are buffered and reduced every
+         *                   <code>bufferSize</code> results.
+         * @param trackTotalHits whether the total number of hits should be tracked
          */
         private QueryPhaseResultConsumer(SearchPhaseController controller, int expectedResultSize, int bufferSize,
-                                         boolean hasTopDocs, boolean hasAggs) {
+                                         boolean hasTopDocs, boolean hasAggs, boolean trackTotalHits) {
             super(expectedResultSize);
             if (expectedResultSize != 1 && bufferSize < 2) {
                 throw new IllegalArgumentException("buffer size must be >= 2 if there is more than one expected result");
             }
-            if (expectedResultSize <= bufferSize) {
+            if (hasAggs == false && expectedResultSize <= bufferSize) {
+                // only aggs are reduced incrementally if there are less expected results than the buffer size
                 throw new IllegalArgumentException("buffer size must be less than the expected result size");
             }
             if (hasAggs == false && hasTopDocs == false) {
                 throw new IllegalArgumentException("either aggs or top docs must be present");
             }
             this.controller = controller;
-            // no need to buffer anything if we have less expected results. in this case we don't consume any results ahead of time.
-            this.aggsBuffer = new InternalAggregations[hasAggs ? bufferSize : 0];
-            this.topDocsBuffer = new TopDocs[hasTopDocs ? bufferSize : 0];
+            this.aggsAccumulator = hasAggs ? new AggregationsAccumulator(() -> controller.reduceContextFunction.apply(false),
+                bufferSize) : null;
+            // the top docs are never reduced ahead of time if there are less expected results than the buffer size
+            this.topDocsBuffer = new TopDocs[hasTopDocs ? Math.min(bufferSize, expectedResultSize) : 0];
             this.hasTopDocs = hasTopDocs;
             this.hasAggs = hasAggs;
             this.bufferSize = bufferSize;
+            this.topDocsStats = new TopDocsStats(trackTotalHits);
 
         }
 
@@ -665,11 +671,6 @@ public final class SearchPhaseController extends AbstractComponent {
 
         private synchronized void consumeInternal(QuerySearchResult querySearchResult) {
             if (index == bufferSize) {
-                if (hasAggs) {
-                    InternalAggregations reducedAggs = controller.reduceAggsIncrementally(Arrays.asList(aggsBuffer));
-                    Arrays.fill(aggsBuffer, null);
-                    aggsBuffer[0] = reducedAggs;
-                }
                 if (hasTopDocs) {
                     TopDocs reducedTopDocs = controller.mergeTopDocs(Arrays.asList(topDocsBuffer),
                         querySearchResult.from() + querySearchResult.size() // we have to merge here in the same way we collect on a shard
@@ -682,7 +683,8 @@ public final class SearchPhaseController extends AbstractComponent {
             }
             final int i = index++;
             if (hasAggs) {
-                aggsBuffer[i] = (InternalAggregations) querySearchResult.consumeAggs();
+                // the aggregations of the shard are released once they are accumulated
+                aggsAccumulator.accumulate((InternalAggregations) querySearchResult.consumeAggs());
             }
             if (hasTopDocs) {
                 final TopDocs topDocs = querySearchResult.consumeTopDocs(); // can't be null
@@ -693,7 +695,10 @@ public final class SearchPhaseController extends AbstractComponent {
         }
 
         private synchronized List<InternalAggregations> getRemainingAggs() {
-            return hasAggs ? Arrays.asList(aggsBuffer).subList(0, index) : null;
+            if (hasAggs == false) {
+                return null;
+            }
+            return aggsAccumulator.getNumAccumulated() == 0 ? Collections.emptyList() : Collections.singletonList(aggsAccumulator.build());
         }
 
         private synchronized List<TopDocs> getRemainingTopDocs() {
@@ -729,9 +734,11 @@ public final class SearchPhaseController extends AbstractComponent {
 
         if (isScrollRequest == false && (hasAggs || hasTopDocs)) {
             // no incremental reduce if scroll is used - we only hit a single shard or sometimes more...
-            if (request.getBatchedReduceSize() < numShards) {
-                // only use this if there are aggs and if there are more shards than we should reduce at once
-                return new QueryPhaseResultConsumer(this, numShards, request.getBatchedReduceSize(), hasTopDocs, hasAggs);
+            if (hasAggs || request.getBatchedReduceSize() < numShards) {
+                // aggs are accumulated as soon as a shard responds whatever the number of shards, so that the aggs of every shard
+                // are not held until the final reduce. top docs are only reduced if there are more shards than we should reduce at once
+                return new QueryPhaseResultConsumer(this, numShards, request.getBatchedReduceSize(), hasTopDocs, hasAggs,
+                    trackTotalHits);
             }
         }
         return new InitialSearchPhase.ArraySearchPhaseResults(numShards) {
@@ -34,17 +34,35 @@ import java.util.function.BiFunction;
 final class SearchQueryThenFetchAsyncAction extends AbstractSearchAsyncAction<SearchPhaseResult> {
 
     private final SearchPhaseController searchPhaseController;
+    private final ShardRequestHedger<SearchPhaseResult> hedger;
 
     SearchQueryThenFetchAsyncAction(final Logger logger, final SearchTransportService searchTransportService,
             final BiFunction<String, String, Transport.Connection> nodeIdToConnection, final Map<String, AliasFilter> aliasFilter,
             final Map<String, Float> concreteIndexBoosts, final SearchPhaseController searchPhaseController, final Executor executor,
             final SearchRequest request, final ActionListener<SearchResponse> listener,
             final GroupShardsIterator<SearchShardIterator> shardsIts, final TransportSearchAction.SearchTimeProvider timeProvider,
-            long clusterStateVersion, SearchTask task, SearchResponse.Clusters clusters) {
+            long clusterStateVersion, SearchTask task, SearchResponse.Clusters clusters, final SearchHedgingService hedgingService) {
         super("query", logger, searchTransportService, nodeIdToConnection, aliasFilter, concreteIndexBoosts, executor, request, listener,
             shardsIts, timeProvider, clusterStateVersion, task, searchPhaseController.newSearchPhaseResults(request, shardsIts.size()),
                 request.getMaxConcurrentShardRequests(), clusters);
         this.searchPhaseController = searchPhaseController;
+        if (hedgingService != null && hedgingService.canHedge(request)) {
+            this.hedger = new ShardRequestHedger<SearchPhaseResult>(hedgingService) {
+                @Override
+                SearchTask registerHedgeTask() {
+                    return hedgingService.registerHedgeTask(getTask());
+                }
+
+                @Override
+                void executeHedgedPhaseOnShard(final SearchShardIterator shardIt, final ShardRouting shard, final SearchTask hedgeTask,
+                                               final SearchActionListener<SearchPhaseResult> listener) {
+                    getSearchTransport().sendExecuteQuery(getConnection(shardIt.getClusterAlias(), shard.currentNodeId()),
+                        buildShardSearchRequest(shardIt), hedgeTask, listener);
+                }
+            };
+        } else {
+            this.hedger = null;
+        }
     }
 
     protected void executePhaseOnShard(final SearchShardIterator shardIt, final ShardRouting shard,
@@ -53,6 +71,11 @@ final class SearchQueryThenFetchAsyncAction extends AbstractSearchAsyncAction<Se
             buildShardSearchRequest(shardIt), getTask(), listener);
     }
 
+    @Override
+    ShardRequestHedger<SearchPhaseResult> getHedger() {
+        return hedger;
+    }
+
     @Override
     protected SearchPhase getNextPhase(final SearchPhaseResults<SearchPhaseResult> results, final SearchPhaseContext context) {
         return new FetchSearchPhase(results, searchPhaseController, context);
@@ -77,6 +77,8 @@ public final class SearchRequest extends ActionRequest implements IndicesRequest
 
     private Boolean requestCache;
 
+    private Boolean concurrentSegmentSearch;
+
     private Scroll scroll;
 
     private int batchedReduceSize = 512;
@@ -132,6 +134,15 @@ public final class SearchRequest extends ActionRequest implements IndicesRequest
         if (source != null && source.size() == 0 && scroll != null) {
             validationException = addValidationError("[size] cannot be [0] in a scroll context", validationException);
         }
+        if (source != null && source.pointInTimeBuilder() != null) {
+            if (scroll != null) {
+                validationException = addValidationError("using [point in time] is not allowed in a scroll context", validationException);
+            }
+            if (indices.length > 0) {
+                validationException = addValidationError("[indices] cannot be used with point in time, the indices of the point " +
+                    "in time are searched", validationException);
+            }
+        }
         return validationException;
     }
 
@@ -306,6 +317,19 @@ public final class SearchRequest extends ActionRequest implements IndicesRequest
         return this.requestCache;
     }
 
+    /**
+     * Sets if the segments of each shard should be searched concurrently. By default (not set, or null,
+     * will default to the index level setting if concurrent segment search is enabled or not).
+     */
+    public SearchRequest concurrentSegmentSearch(Boolean concurrentSegmentSearch) {
+        this.concurrentSegmentSearch = concurrentSegmentSearch;
+        return this;
+    }
+
+    public Boolean concurrentSegmentSearch() {
+        return this.concurrentSegmentSearch;
+    }
+
     /**
      * Sets the number of shard results that should be reduced at once on the coordinating node. This value should be used as a protection
      * mechanism to reduce the memory overhead per search request if the potential number of shards in the request can be large.
@@ -427,6 +451,9 @@ public final class SearchRequest extends ActionRequest implements IndicesRequest
             maxConcurrentShardRequests = in.readVInt();
             preFilterShardSize = in.readVInt();
         }
+        if (in.getVersion().onOrAfter(Version.V_6_2_3)) {
+            concurrentSegmentSearch = in.readOptionalBoolean();
+        }
     }
 
     @Override
@@ -449,6 +476,9 @@ public final class SearchRequest extends ActionRequest implements IndicesRequest
             out.writeVInt(maxConcurrentShardRequests);
             out.writeVInt(preFilterShardSize);
         }
+        if (out.getVersion().onOrAfter(Version.V_6_2_3)) {
+            out.writeOptionalBoolean(concurrentSegmentSearch);
+        }
     }
 
     @Override
@@ -466,6 +496,7 @@ public final class SearchRequest extends ActionRequest implements IndicesRequest
                 Objects.equals(preference, that.preference) &&
                 Objects.equals(source, that.source) &&
                 Objects.equals(requestCache, that.requestCache)  &&
+                Objects.equals(concurrentSegmentSearch, that.concurrentSegmentSearch) &&
                 Objects.equals(scroll, that.scroll) &&
                 Arrays.equals(types, that.types) &&
                 Objects.equals(batchedReduceSize, that.batchedReduceSize) &&
@@ -477,7 +508,7 @@ public final class SearchRequest extends ActionRequest implements IndicesRequest
     @Override
     public int hashCode() {
         return Objects.hash(searchType, Arrays.hashCode(indices), routing, preference, source, requestCache,
-                scroll, Arrays.hashCode(types), indicesOptions, batchedReduceSize, maxConcurrentShardRequests, preFilterShardSize);
+                concurrentSegmentSearch, scroll, Arrays.hashCode(types), indicesOptions, batchedReduceSize, maxConcurrentShardRequests, preFilterShardSize);
     }
 
     @Override
@@ -490,6 +521,7 @@ public final class SearchRequest extends ActionRequest implements IndicesRequest
                 ", routing='" + routing + '\'' +
                 ", preference='" + preference + '\'' +
                 ", requestCache=" + requestCache +
+                ", concurrentSegmentSearch=" + concurrentSegmentSearch +
                 ", scroll=" + scroll +
                 ", maxConcurrentShardRequests=" + maxConcurrentShardRequests +
                 ", batchedReduceSize=" + batchedReduceSize +
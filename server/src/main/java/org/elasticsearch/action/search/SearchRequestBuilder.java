@@ -489,6 +489,15 @@ public class SearchRequestBuilder extends ActionRequestBuilder<SearchRequest, Se
         return this;
     }
 
+    /**
+     * Sets if the segments of each shard should be searched concurrently. By default (not set, or null,
+     * will default to the index level setting if concurrent segment search is enabled or not).
+     */
+    public SearchRequestBuilder setConcurrentSegmentSearch(Boolean concurrentSegmentSearch) {
+        request.concurrentSegmentSearch(concurrentSegmentSearch);
+        return this;
+    }
+
     /**
      * Should the query be profiled. Defaults to <code>false</code>
      */
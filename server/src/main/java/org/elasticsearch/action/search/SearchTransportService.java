@@ -30,7 +30,9 @@ import org.elasticsearch.common.component.AbstractComponent;
 import org.elasticsearch.common.io.stream.StreamInput;
 import org.elasticsearch.common.io.stream.StreamOutput;
 import org.elasticsearch.common.settings.Settings;
+import org.elasticsearch.common.unit.TimeValue;
 import org.elasticsearch.common.util.concurrent.ConcurrentCollections;
+import org.elasticsearch.index.shard.ShardId;
 import org.elasticsearch.search.SearchPhaseResult;
 import org.elasticsearch.search.SearchService;
 import org.elasticsearch.search.dfs.DfsSearchResult;
@@ -83,6 +85,7 @@ public class SearchTransportService extends AbstractComponent {
     public static final String FETCH_ID_SCROLL_ACTION_NAME = "indices:data/read/search[phase/fetch/id/scroll]";
     public static final String FETCH_ID_ACTION_NAME = "indices:data/read/search[phase/fetch/id]";
     public static final String QUERY_CAN_MATCH_NAME = "indices:data/read/search[can_match]";
+    public static final String OPEN_READER_CONTEXT_ACTION_NAME = "indices:data/read/search[open_reader_context]";
 
     private final TransportService transportService;
     private final BiFunction<Transport.Connection, SearchActionListener, ActionListener> responseWrapper;
@@ -130,6 +133,12 @@ public class SearchTransportService extends AbstractComponent {
         }
     }
 
+    public void sendOpenReaderContext(Transport.Connection connection, final ShardOpenReaderRequest request, Task task,
+                                      final ActionListener<ShardOpenReaderResponse> listener) {
+        transportService.sendChildRequest(connection, OPEN_READER_CONTEXT_ACTION_NAME, request, task,
+            TransportRequestOptions.EMPTY, new ActionListenerResponseHandler<>(listener, ShardOpenReaderResponse::new));
+    }
+
     public void sendClearAllScrollContexts(Transport.Connection connection, final ActionListener<TransportResponse> listener) {
         transportService.sendRequest(connection, CLEAR_SCROLL_CONTEXTS_ACTION_NAME, TransportRequest.Empty.INSTANCE,
             TransportRequestOptions.EMPTY, new ActionListenerResponseHandler<>(listener, () -> TransportResponse.Empty.INSTANCE));
@@ -305,6 +314,82 @@ public class SearchTransportService extends AbstractComponent {
         }
     }
 
+    static class ShardOpenReaderRequest extends TransportRequest implements IndicesRequest {
+        private ShardId shardId;
+        private OriginalIndices originalIndices;
+        private TimeValue keepAlive;
+
+        ShardOpenReaderRequest() {
+        }
+
+        ShardOpenReaderRequest(ShardId shardId, OriginalIndices originalIndices, TimeValue keepAlive) {
+            this.shardId = shardId;
+            this.originalIndices = originalIndices;
+            this.keepAlive = keepAlive;
+        }
+
+        public ShardId shardId() {
+            return shardId;
+        }
+
+        public TimeValue keepAlive() {
+            return keepAlive;
+        }
+
+        @Override
+        public String[] indices() {
+            return originalIndices.indices();
+        }
+
+        @Override
+        public IndicesOptions indicesOptions() {
+            return originalIndices.indicesOptions();
+        }
+
+        @Override
+        public void readFrom(StreamInput in) throws IOException {
+            super.readFrom(in);
+            shardId = ShardId.readShardId(in);
+            originalIndices = OriginalIndices.readOriginalIndices(in);
+            keepAlive = new TimeValue(in);
+        }
+
+        @Override
+        public void writeTo(StreamOutput out) throws IOException {
+            super.writeTo(out);
+            shardId.writeTo(out);
+            OriginalIndices.writeOriginalIndices(originalIndices, out);
+            keepAlive.writeTo(out);
+        }
+    }
+
+    static class ShardOpenReaderResponse extends TransportResponse {
+        private long readerId;
+
+        ShardOpenReaderResponse() {
+        }
+
+        ShardOpenReaderResponse(long readerId) {
+            this.readerId = readerId;
+        }
+
+        public long getReaderId() {
+            return readerId;
+        }
+
+        @Override
+        public void readFrom(StreamInput in) throws IOException {
+            super.readFrom(in);
+            readerId = in.readLong();
+        }
+
+        @Override
+        public void writeTo(StreamOutput out) throws IOException {
+            super.writeTo(out);
+            out.writeLong(readerId);
+        }
+    }
+
     public static void registerRequestHandler(TransportService transportService, SearchService searchService) {
         transportService.registerRequestHandler(FREE_CONTEXT_SCROLL_ACTION_NAME, ScrollFreeContextRequest::new, ThreadPool.Names.SAME,
             new TaskAwareTransportRequestHandler<ScrollFreeContextRequest>() {
@@ -454,6 +539,18 @@ public class SearchTransportService extends AbstractComponent {
             });
         TransportActionProxy.registerProxyAction(transportService, QUERY_CAN_MATCH_NAME,
                 (Supplier<TransportResponse>) CanMatchResponse::new);
+
+        // acquiring a searcher is cheap, so we can execute it on a networking thread as well
+        transportService.registerRequestHandler(OPEN_READER_CONTEXT_ACTION_NAME, ShardOpenReaderRequest::new, ThreadPool.Names.SAME,
+            new TaskAwareTransportRequestHandler<ShardOpenReaderRequest>() {
+                @Override
+                public void messageReceived(ShardOpenReaderRequest request, TransportChannel channel, Task task) throws Exception {
+                    long readerId = searchService.openReaderContext(request.shardId(), request.keepAlive()).id();
+                    channel.sendResponse(new ShardOpenReaderResponse(readerId));
+                }
+            });
+        TransportActionProxy.registerProxyAction(transportService, OPEN_READER_CONTEXT_ACTION_NAME,
+                (Supplier<TransportResponse>) ShardOpenReaderResponse::new);
     }
 
     public static final class CanMatchResponse extends SearchPhaseResult {
@@ -0,0 +1,107 @@
+/*
+ * Licensed to Elasticsearch under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Elasticsearch licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.elasticsearch.action.search;
+
+import org.apache.logging.log4j.message.ParameterizedMessage;
+import org.apache.logging.log4j.util.Supplier;
+import org.elasticsearch.action.ActionListener;
+import org.elasticsearch.action.support.ActionFilters;
+import org.elasticsearch.action.support.HandledTransportAction;
+import org.elasticsearch.cluster.metadata.IndexNameExpressionResolver;
+import org.elasticsearch.cluster.node.DiscoveryNode;
+import org.elasticsearch.cluster.node.DiscoveryNodes;
+import org.elasticsearch.cluster.service.ClusterService;
+import org.elasticsearch.common.inject.Inject;
+import org.elasticsearch.common.settings.Settings;
+import org.elasticsearch.common.util.concurrent.CountDown;
+import org.elasticsearch.threadpool.ThreadPool;
+import org.elasticsearch.transport.TransportService;
+
+import java.util.Collection;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Closes a point in time by freeing the reader contexts that it holds on the shards.
+ */
+public class TransportClosePointInTimeAction extends HandledTransportAction<ClosePointInTimeRequest, ClearScrollResponse> {
+
+    private final ClusterService clusterService;
+    private final SearchTransportService searchTransportService;
+
+    @Inject
+    public TransportClosePointInTimeAction(Settings settings, ThreadPool threadPool, TransportService transportService,
+                                           ClusterService clusterService, ActionFilters actionFilters,
+                                           IndexNameExpressionResolver indexNameExpressionResolver,
+                                           SearchTransportService searchTransportService) {
+        super(settings, ClosePointInTimeAction.NAME, threadPool, transportService, actionFilters, indexNameExpressionResolver,
+            ClosePointInTimeRequest::new);
+        this.clusterService = clusterService;
+        this.searchTransportService = searchTransportService;
+    }
+
+    @Override
+    protected void doExecute(ClosePointInTimeRequest request, ActionListener<ClearScrollResponse> listener) {
+        final Collection<PointInTimeId.ReaderId> readerIds = PointInTimeId.decode(request.getId()).getShards().values();
+        if (readerIds.isEmpty()) {
+            listener.onResponse(new ClearScrollResponse(true, 0));
+            return;
+        }
+        final DiscoveryNodes nodes = clusterService.state().nodes();
+        final CountDown countDown = new CountDown(readerIds.size());
+        final AtomicInteger numFreed = new AtomicInteger();
+        final AtomicBoolean hasFailed = new AtomicBoolean();
+        final Runnable onShardDone = () -> {
+            if (countDown.countDown()) {
+                listener.onResponse(new ClearScrollResponse(hasFailed.get() == false, numFreed.get()));
+            }
+        };
+        for (PointInTimeId.ReaderId readerId : readerIds) {
+            final DiscoveryNode node = nodes.get(readerId.getNodeId());
+            if (node == null) {
+                // the node left the cluster, its reader contexts are gone
+                onShardDone.run();
+                continue;
+            }
+            try {
+                searchTransportService.sendFreeContext(searchTransportService.getConnection(null, node), readerId.getId(),
+                    ActionListener.wrap(response -> {
+                        if (response.isFreed()) {
+                            numFreed.incrementAndGet();
+                        }
+                        onShardDone.run();
+                    }, e -> {
+                        onFreeFailure(readerId, e);
+                        hasFailed.set(true);
+                        onShardDone.run();
+                    }));
+            } catch (Exception e) {
+                onFreeFailure(readerId, e);
+                hasFailed.set(true);
+                onShardDone.run();
+            }
+        }
+    }
+
+    private void onFreeFailure(PointInTimeId.ReaderId readerId, Exception e) {
+        logger.warn((Supplier<?>) () -> new ParameterizedMessage("failed to free reader context [{}] on node [{}]",
+            readerId.getId(), readerId.getNodeId()), e);
+    }
+}
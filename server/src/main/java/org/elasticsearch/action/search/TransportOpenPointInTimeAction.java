@@ -0,0 +1,198 @@
+/*
+ * Licensed to Elasticsearch under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Elasticsearch licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.elasticsearch.action.search;
+
+import org.apache.logging.log4j.message.ParameterizedMessage;
+import org.apache.logging.log4j.util.Supplier;
+import org.elasticsearch.action.ActionListener;
+import org.elasticsearch.action.NoShardAvailableActionException;
+import org.elasticsearch.action.OriginalIndices;
+import org.elasticsearch.action.support.ActionFilters;
+import org.elasticsearch.action.support.HandledTransportAction;
+import org.elasticsearch.cluster.ClusterState;
+import org.elasticsearch.cluster.block.ClusterBlockLevel;
+import org.elasticsearch.cluster.metadata.IndexNameExpressionResolver;
+import org.elasticsearch.cluster.node.DiscoveryNode;
+import org.elasticsearch.cluster.node.DiscoveryNodes;
+import org.elasticsearch.cluster.routing.GroupShardsIterator;
+import org.elasticsearch.cluster.routing.ShardIterator;
+import org.elasticsearch.cluster.routing.ShardRouting;
+import org.elasticsearch.cluster.service.ClusterService;
+import org.elasticsearch.common.inject.Inject;
+import org.elasticsearch.common.settings.Settings;
+import org.elasticsearch.common.util.concurrent.AtomicArray;
+import org.elasticsearch.common.util.concurrent.CountDown;
+import org.elasticsearch.index.Index;
+import org.elasticsearch.index.shard.ShardId;
+import org.elasticsearch.tasks.Task;
+import org.elasticsearch.threadpool.ThreadPool;
+import org.elasticsearch.transport.Transport;
+import org.elasticsearch.transport.TransportService;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Opens a point in time by opening a reader context on one copy of every shard of the requested indices. If a copy fails
+ * to open its reader context the next copy of the shard is tried, the whole request fails if no copy of a shard succeeds.
+ */
+public class TransportOpenPointInTimeAction extends HandledTransportAction<OpenPointInTimeRequest, OpenPointInTimeResponse> {
+
+    private final ClusterService clusterService;
+    private final SearchTransportService searchTransportService;
+
+    @Inject
+    public TransportOpenPointInTimeAction(Settings settings, ThreadPool threadPool, TransportService transportService,
+                                          ClusterService clusterService, ActionFilters actionFilters,
+                                          IndexNameExpressionResolver indexNameExpressionResolver,
+                                          SearchTransportService searchTransportService) {
+        super(settings, OpenPointInTimeAction.NAME, threadPool, transportService, actionFilters, indexNameExpressionResolver,
+            OpenPointInTimeRequest::new);
+        this.clusterService = clusterService;
+        this.searchTransportService = searchTransportService;
+    }
+
+    @Override
+    protected final void doExecute(OpenPointInTimeRequest request, ActionListener<OpenPointInTimeResponse> listener) {
+        throw new UnsupportedOperationException("the task parameter is required");
+    }
+
+    @Override
+    protected void doExecute(Task task, OpenPointInTimeRequest request, ActionListener<OpenPointInTimeResponse> listener) {
+        final ClusterState clusterState = clusterService.state();
+        clusterState.blocks().globalBlockedRaiseException(ClusterBlockLevel.READ);
+        final Index[] indices = indexNameExpressionResolver.concreteIndices(clusterState, request);
+        final String[] concreteIndices = new String[indices.length];
+        for (int i = 0; i < indices.length; i++) {
+            clusterState.blocks().indexBlockedRaiseException(ClusterBlockLevel.READ, indices[i].getName());
+            concreteIndices[i] = indices[i].getName();
+        }
+        final Map<String, Set<String>> routingMap = indexNameExpressionResolver.resolveSearchRouting(clusterState, request.routing(),
+            request.indices());
+        final GroupShardsIterator<ShardIterator> shardIterators = clusterService.operationRouting().searchShards(clusterState,
+            concreteIndices, routingMap, request.preference());
+        new AsyncOpenPointInTime(task, request, clusterState.nodes(), shardIterators, listener).start();
+    }
+
+    private class AsyncOpenPointInTime {
+        private final Task task;
+        private final OpenPointInTimeRequest request;
+        private final OriginalIndices originalIndices;
+        private final DiscoveryNodes nodes;
+        private final List<ShardIterator> shardIterators = new ArrayList<>();
+        private final AtomicArray<PointInTimeId.ReaderId> readerIds;
+        private final AtomicReference<Exception> failure = new AtomicReference<>();
+        private final CountDown countDown;
+        private final ActionListener<OpenPointInTimeResponse> listener;
+
+        AsyncOpenPointInTime(Task task, OpenPointInTimeRequest request, DiscoveryNodes nodes,
+                             GroupShardsIterator<ShardIterator> shardIterators, ActionListener<OpenPointInTimeResponse> listener) {
+            this.task = task;
+            this.request = request;
+            this.originalIndices = new OriginalIndices(request.indices(), request.indicesOptions());
+            this.nodes = nodes;
+            for (ShardIterator shardIterator : shardIterators) {
+                this.shardIterators.add(shardIterator);
+            }
+            this.readerIds = new AtomicArray<>(this.shardIterators.size());
+            this.countDown = new CountDown(this.shardIterators.size());
+            this.listener = listener;
+        }
+
+        void start() {
+            if (shardIterators.isEmpty()) {
+                listener.onResponse(new OpenPointInTimeResponse(PointInTimeId.encode(request.indices(), new LinkedHashMap<>())));
+                return;
+            }
+            for (int i = 0; i < shardIterators.size(); i++) {
+                openOnShard(i, null);
+            }
+        }
+
+        private void openOnShard(int shardIndex, Exception lastFailure) {
+            final ShardIterator shardIterator = shardIterators.get(shardIndex);
+            final ShardRouting shard = shardIterator.nextOrNull();
+            if (shard == null) {
+                onShardDone(shardIndex, null, lastFailure == null ? new NoShardAvailableActionException(shardIterator.shardId())
+                    : lastFailure);
+                return;
+            }
+            final DiscoveryNode node = nodes.get(shard.currentNodeId());
+            try {
+                if (node == null) {
+                    throw new NoShardAvailableActionException(shard.shardId(), "node [" + shard.currentNodeId() + "] is not available");
+                }
+                final Transport.Connection connection = searchTransportService.getConnection(null, node);
+                final SearchTransportService.ShardOpenReaderRequest shardRequest =
+                    new SearchTransportService.ShardOpenReaderRequest(shard.shardId(), originalIndices, request.keepAlive());
+                searchTransportService.sendOpenReaderContext(connection, shardRequest, task, ActionListener.wrap(
+                    response -> onShardDone(shardIndex, new PointInTimeId.ReaderId(node.getId(), response.getReaderId()), null),
+                    e -> onShardFailure(shardIndex, shard, e)));
+            } catch (Exception e) {
+                onShardFailure(shardIndex, shard, e);
+            }
+        }
+
+        private void onShardFailure(int shardIndex, ShardRouting shard, Exception e) {
+            logger.trace((Supplier<?>) () -> new ParameterizedMessage("failed to open reader context on {}", shard), e);
+            openOnShard(shardIndex, e);
+        }
+
+        private void onShardDone(int shardIndex, PointInTimeId.ReaderId readerId, Exception e) {
+            if (readerId != null) {
+                readerIds.set(shardIndex, readerId);
+            } else {
+                failure.compareAndSet(null, e);
+            }
+            if (countDown.countDown()) {
+                if (failure.get() != null) {
+                    freeReaderContexts();
+                    listener.onFailure(failure.get());
+                } else {
+                    final Map<ShardId, PointInTimeId.ReaderId> shards = new LinkedHashMap<>();
+                    for (int i = 0; i < shardIterators.size(); i++) {
+                        shards.put(shardIterators.get(i).shardId(), readerIds.get(i));
+                    }
+                    listener.onResponse(new OpenPointInTimeResponse(PointInTimeId.encode(request.indices(), shards)));
+                }
+            }
+        }
+
+        private void freeReaderContexts() {
+            for (int i = 0; i < shardIterators.size(); i++) {
+                final PointInTimeId.ReaderId readerId = readerIds.get(i);
+                if (readerId != null) {
+                    final DiscoveryNode node = nodes.get(readerId.getNodeId());
+                    try {
+                        searchTransportService.sendFreeContext(searchTransportService.getConnection(null, node), readerId.getId(),
+                            originalIndices);
+                    } catch (Exception e) {
+                        logger.trace((Supplier<?>) () -> new ParameterizedMessage("failed to free reader context [{}] on node [{}]",
+                            readerId.getId(), readerId.getNodeId()), e);
+                    }
+                }
+            }
+        }
+    }
+}
@@ -32,8 +32,11 @@ import org.elasticsearch.cluster.metadata.IndexNameExpressionResolver;
 import org.elasticsearch.cluster.node.DiscoveryNode;
 import org.elasticsearch.cluster.node.DiscoveryNodes;
 import org.elasticsearch.cluster.routing.GroupShardsIterator;
+import org.elasticsearch.cluster.routing.IndexShardRoutingTable;
 import org.elasticsearch.cluster.routing.ShardIterator;
+import org.elasticsearch.cluster.routing.ShardRouting;
 import org.elasticsearch.cluster.service.ClusterService;
+import org.elasticsearch.common.Nullable;
 import org.elasticsearch.common.inject.Inject;
 import org.elasticsearch.common.settings.Setting;
 import org.elasticsearch.common.settings.Setting.Property;
@@ -76,12 +79,13 @@ public class TransportSearchAction extends HandledTransportAction<SearchRequest,
     private final RemoteClusterService remoteClusterService;
     private final SearchPhaseController searchPhaseController;
     private final SearchService searchService;
+    private final SearchHedgingService hedgingService;
 
     @Inject
     public TransportSearchAction(Settings settings, ThreadPool threadPool, TransportService transportService, SearchService searchService,
                                  SearchTransportService searchTransportService, SearchPhaseController searchPhaseController,
                                  ClusterService clusterService, ActionFilters actionFilters,
-                                 IndexNameExpressionResolver indexNameExpressionResolver) {
+                                 IndexNameExpressionResolver indexNameExpressionResolver, SearchHedgingService hedgingService) {
         super(settings, SearchAction.NAME, threadPool, transportService, actionFilters, indexNameExpressionResolver, SearchRequest::new);
         this.searchPhaseController = searchPhaseController;
         this.searchTransportService = searchTransportService;
@@ -89,14 +93,15 @@ public class TransportSearchAction extends HandledTransportAction<SearchRequest,
         SearchTransportService.registerRequestHandler(transportService, searchService);
         this.clusterService = clusterService;
         this.searchService = searchService;
+        this.hedgingService = hedgingService;
     }
 
-    private Map<String, AliasFilter> buildPerIndexAliasFilter(SearchRequest request, ClusterState clusterState,
+    private Map<String, AliasFilter> buildPerIndexAliasFilter(String[] indexExpressions, ClusterState clusterState,
                                                               Index[] concreteIndices, Map<String, AliasFilter> remoteAliasMap) {
         final Map<String, AliasFilter> aliasFilterMap = new HashMap<>();
         for (Index index : concreteIndices) {
             clusterState.blocks().indexBlockedRaiseException(ClusterBlockLevel.READ, index.getName());
-            AliasFilter aliasFilter = searchService.buildAliasFilter(clusterState, index.getName(), request.indices());
+            AliasFilter aliasFilter = searchService.buildAliasFilter(clusterState, index.getName(), indexExpressions);
             assert aliasFilter != null;
             aliasFilterMap.put(index.getUUID(), aliasFilter);
         }
@@ -186,13 +191,22 @@ public class TransportSearchAction extends HandledTransportAction<SearchRequest,
                 searchRequest.source(source);
             }
             final ClusterState clusterState = clusterService.state();
+            if (source != null && source.pointInTimeBuilder() != null) {
+                // the indices and the shards of a point in time are fixed when it is opened
+                final PointInTimeId pointInTimeId = PointInTimeId.decode(source.pointInTimeBuilder().getId());
+                final OriginalIndices localIndices = new OriginalIndices(pointInTimeId.getIndices(), searchRequest.indicesOptions());
+                executeSearch((SearchTask) task, timeProvider, searchRequest, localIndices, pointInTimeId, Collections.emptyMap(),
+                    Collections.emptyList(), (clusterName, nodeId) -> null, clusterState, Collections.emptyMap(), listener,
+                    clusterState.getNodes().getDataNodes().size(), SearchResponse.Clusters.EMPTY);
+                return;
+            }
             final Map<String, OriginalIndices> remoteClusterIndices = remoteClusterService.groupIndices(searchRequest.indicesOptions(),
                 searchRequest.indices(), idx -> indexNameExpressionResolver.hasIndexOrAlias(idx, clusterState));
             OriginalIndices localIndices = remoteClusterIndices.remove(RemoteClusterAware.LOCAL_CLUSTER_GROUP_KEY);
             if (remoteClusterIndices.isEmpty()) {
-                executeSearch((SearchTask)task, timeProvider, searchRequest, localIndices, remoteClusterIndices, Collections.emptyList(),
-                    (clusterName, nodeId) -> null, clusterState, Collections.emptyMap(), listener, clusterState.getNodes()
-                        .getDataNodes().size(), SearchResponse.Clusters.EMPTY);
+                executeSearch((SearchTask)task, timeProvider, searchRequest, localIndices, null, remoteClusterIndices,
+                    Collections.emptyList(), (clusterName, nodeId) -> null, clusterState, Collections.emptyMap(), listener,
+                    clusterState.getNodes().getDataNodes().size(), SearchResponse.Clusters.EMPTY);
             } else {
                 remoteClusterService.collectSearchShards(searchRequest.indicesOptions(), searchRequest.preference(),
                     searchRequest.routing(), remoteClusterIndices, ActionListener.wrap((searchShardsResponses) -> {
@@ -203,7 +217,7 @@ public class TransportSearchAction extends HandledTransportAction<SearchRequest,
                         int numNodesInvolved = searchShardsResponses.values().stream().mapToInt(r -> r.getNodes().length).sum()
                             + clusterState.getNodes().getDataNodes().size();
                         SearchResponse.Clusters clusters = buildClusters(localIndices, remoteClusterIndices, searchShardsResponses);
-                        executeSearch((SearchTask) task, timeProvider, searchRequest, localIndices, remoteClusterIndices,
+                        executeSearch((SearchTask) task, timeProvider, searchRequest, localIndices, null, remoteClusterIndices,
                             remoteShardIterators, clusterNodeLookup, clusterState, remoteAliasFilters, listener, numNodesInvolved,
                             clusters);
                     }, listener::onFailure));
@@ -278,7 +292,8 @@ public class TransportSearchAction extends HandledTransportAction<SearchRequest,
     }
 
     private void executeSearch(SearchTask task, SearchTimeProvider timeProvider, SearchRequest searchRequest, OriginalIndices localIndices,
-                               Map<String, OriginalIndices> remoteClusterIndices, List<SearchShardIterator> remoteShardIterators,
+                               @Nullable PointInTimeId pointInTimeId, Map<String, OriginalIndices> remoteClusterIndices,
+                               List<SearchShardIterator> remoteShardIterators,
                                BiFunction<String, String, DiscoveryNode> remoteConnections, ClusterState clusterState,
                                Map<String, AliasFilter> remoteAliasMap, ActionListener<SearchResponse> listener, int nodeCount,
                                SearchResponse.Clusters clusters) {
@@ -288,24 +303,33 @@ public class TransportSearchAction extends HandledTransportAction<SearchRequest,
         // date math expressions and $now in scripts. This way all apis will deal with now in the same way instead
         // of just for the _search api
         final Index[] indices;
-        if (localIndices.indices().length == 0 && remoteClusterIndices.isEmpty() == false) {
+        if (pointInTimeId != null) {
+            // indices that were deleted since the point in time was opened fail on their shards
+            indices = pointInTimeId.getShards().keySet().stream().map(ShardId::getIndex).distinct()
+                .filter(index -> clusterState.metaData().index(index) != null).toArray(Index[]::new);
+        } else if (localIndices.indices().length == 0 && remoteClusterIndices.isEmpty() == false) {
             indices = Index.EMPTY_ARRAY; // don't search on _all if only remote indices were specified
         } else {
             indices = indexNameExpressionResolver.concreteIndices(clusterState, searchRequest.indicesOptions(),
                 timeProvider.getAbsoluteStartMillis(), localIndices.indices());
         }
-        Map<String, AliasFilter> aliasFilter = buildPerIndexAliasFilter(searchRequest, clusterState, indices, remoteAliasMap);
-        Map<String, Set<String>> routingMap = indexNameExpressionResolver.resolveSearchRouting(clusterState, searchRequest.routing(),
-            searchRequest.indices());
-        String[] concreteIndices = new String[indices.length];
-        for (int i = 0; i < indices.length; i++) {
-            concreteIndices[i] = indices[i].getName();
-        }
-        Map<String, Long> nodeSearchCounts = searchTransportService.getPendingSearchRequests();
-        GroupShardsIterator<ShardIterator> localShardsIterator = clusterService.operationRouting().searchShards(clusterState,
+        final String[] indexExpressions = pointInTimeId != null ? pointInTimeId.getIndices() : searchRequest.indices();
+        Map<String, AliasFilter> aliasFilter = buildPerIndexAliasFilter(indexExpressions, clusterState, indices, remoteAliasMap);
+        final GroupShardsIterator<SearchShardIterator> shardIterators;
+        if (pointInTimeId != null) {
+            shardIterators = buildPointInTimeShardIterators(clusterState, pointInTimeId, localIndices);
+        } else {
+            Map<String, Set<String>> routingMap = indexNameExpressionResolver.resolveSearchRouting(clusterState, searchRequest.routing(),
+                searchRequest.indices());
+            String[] concreteIndices = new String[indices.length];
+            for (int i = 0; i < indices.length; i++) {
+                concreteIndices[i] = indices[i].getName();
+            }
+            Map<String, Long> nodeSearchCounts = searchTransportService.getPendingSearchRequests();
+            GroupShardsIterator<ShardIterator> localShardsIterator = clusterService.operationRouting().searchShards(clusterState,
                 concreteIndices, routingMap, searchRequest.preference(), searchService.getResponseCollectorService(), nodeSearchCounts);
-        GroupShardsIterator<SearchShardIterator> shardIterators = mergeShardsIterators(localShardsIterator, localIndices,
-            remoteShardIterators);
+            shardIterators = mergeShardsIterators(localShardsIterator, localIndices, remoteShardIterators);
+        }
 
         failIfOverShardCountLimit(clusterService, shardIterators.size());
 
@@ -356,6 +380,30 @@ public class TransportSearchAction extends HandledTransportAction<SearchRequest,
                 searchRequest.getPreFilterShardSize() < shardIterators.size();
     }
 
+    /**
+     * Builds the shard iterators of a search over a point in time. Every shard is searched on the copy that holds its reader
+     * context, the shard fails if that copy is no longer allocated to the node.
+     */
+    static GroupShardsIterator<SearchShardIterator> buildPointInTimeShardIterators(ClusterState clusterState, PointInTimeId pointInTimeId,
+                                                                                  OriginalIndices originalIndices) {
+        List<SearchShardIterator> shards = new ArrayList<>(pointInTimeId.getShards().size());
+        for (Map.Entry<ShardId, PointInTimeId.ReaderId> entry : pointInTimeId.getShards().entrySet()) {
+            final List<ShardRouting> shardRoutings = new ArrayList<>(1);
+            final IndexShardRoutingTable shardRoutingTable = clusterState.metaData().index(entry.getKey().getIndex()) == null ? null
+                : clusterState.routingTable().shardRoutingTableOrNull(entry.getKey());
+            if (shardRoutingTable != null) {
+                for (ShardRouting shardRouting : shardRoutingTable.activeShards()) {
+                    if (shardRouting.currentNodeId().equals(entry.getValue().getNodeId())) {
+                        shardRoutings.add(shardRouting);
+                        break;
+                    }
+                }
+            }
+            shards.add(new SearchShardIterator(null, entry.getKey(), shardRoutings, originalIndices));
+        }
+        return new GroupShardsIterator<>(shards);
+    }
+
     static GroupShardsIterator<SearchShardIterator> mergeShardsIterators(GroupShardsIterator<ShardIterator> localShardsIterator,
                                                              OriginalIndices localIndices,
                                                              List<SearchShardIterator> remoteShardIterators) {
@@ -406,7 +454,7 @@ public class TransportSearchAction extends HandledTransportAction<SearchRequest,
                 case QUERY_THEN_FETCH:
                     searchAsyncAction = new SearchQueryThenFetchAsyncAction(logger, searchTransportService, connectionLookup,
                         aliasFilter, concreteIndexBoosts, searchPhaseController, executor, searchRequest, listener, shardIterators,
-                        timeProvider, clusterStateVersion, task, clusters);
+                        timeProvider, clusterStateVersion, task, clusters, hedgingService);
                     break;
                 default:
                     throw new IllegalStateException("Unknown search type: [" + searchRequest.searchType() + "]");
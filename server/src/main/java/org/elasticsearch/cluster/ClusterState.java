@@ -49,6 +49,7 @@ import org.elasticsearch.common.io.stream.NamedWriteableAwareStreamInput;
 import org.elasticsearch.common.io.stream.NamedWriteableRegistry;
 import org.elasticsearch.common.io.stream.StreamInput;
 import org.elasticsearch.common.io.stream.StreamOutput;
+import org.elasticsearch.common.io.stream.Writeable;
 import org.elasticsearch.common.settings.Settings;
 import org.elasticsearch.common.xcontent.ToXContentFragment;
 import org.elasticsearch.common.xcontent.XContentBuilder;
@@ -679,11 +680,20 @@ public class ClusterState implements ToXContentFragment, Diffable<ClusterState>
 
     @Override
     public void writeTo(StreamOutput out) throws IOException {
+        writeTo(out, (o, indexMetaData) -> indexMetaData.writeTo(o), (o, indexRoutingTable) -> indexRoutingTable.writeTo(o));
+    }
+
+    /**
+     * Writes this cluster state like {@link #writeTo(StreamOutput)}, but uses the given writers for the metadata and the routing
+     * table of each index so that callers can reuse the serialized form of indices that did not change.
+     */
+    public void writeTo(StreamOutput out, Writeable.Writer<IndexMetaData> indexMetaDataWriter,
+                        Writeable.Writer<IndexRoutingTable> indexRoutingTableWriter) throws IOException {
         clusterName.writeTo(out);
         out.writeLong(version);
         out.writeString(stateUUID);
-        metaData.writeTo(out);
-        routingTable.writeTo(out);
+        metaData.writeTo(out, indexMetaDataWriter);
+        routingTable.writeTo(out, indexRoutingTableWriter);
         nodes.writeTo(out);
         blocks.writeTo(out);
         // filter out custom states not supported by the other node
@@ -38,6 +38,7 @@ import org.elasticsearch.common.collect.HppcMaps;
 import org.elasticsearch.common.collect.ImmutableOpenMap;
 import org.elasticsearch.common.io.stream.StreamInput;
 import org.elasticsearch.common.io.stream.StreamOutput;
+import org.elasticsearch.common.io.stream.Writeable;
 import org.elasticsearch.common.logging.Loggers;
 import org.elasticsearch.common.regex.Regex;
 import org.elasticsearch.common.settings.Setting;
@@ -781,13 +782,20 @@ public class MetaData implements Iterable<IndexMetaData>, Diffable<MetaData>, To
 
     @Override
     public void writeTo(StreamOutput out) throws IOException {
+        writeTo(out, (o, indexMetaData) -> indexMetaData.writeTo(o));
+    }
+
+    /**
+     * Writes this metadata like {@link #writeTo(StreamOutput)}, but uses the given writer for the metadata of each index.
+     */
+    public void writeTo(StreamOutput out, Writeable.Writer<IndexMetaData> indexMetaDataWriter) throws IOException {
         out.writeLong(version);
         out.writeString(clusterUUID);
         writeSettingsToStream(transientSettings, out);
         writeSettingsToStream(persistentSettings, out);
         out.writeVInt(indices.size());
         for (IndexMetaData indexMetaData : this) {
-            indexMetaData.writeTo(out);
+            indexMetaDataWriter.write(out, indexMetaData);
         }
         out.writeVInt(templates.size());
         for (ObjectCursor<IndexTemplateMetaData> cursor : templates.values()) {
@@ -32,6 +32,7 @@ import org.elasticsearch.common.Nullable;
 import org.elasticsearch.common.collect.ImmutableOpenMap;
 import org.elasticsearch.common.io.stream.StreamInput;
 import org.elasticsearch.common.io.stream.StreamOutput;
+import org.elasticsearch.common.io.stream.Writeable;
 import org.elasticsearch.common.util.iterable.Iterables;
 import org.elasticsearch.index.Index;
 import org.elasticsearch.index.IndexNotFoundException;
@@ -354,10 +355,17 @@ public class RoutingTable implements Iterable<IndexRoutingTable>, Diffable<Routi
 
     @Override
     public void writeTo(StreamOutput out) throws IOException {
+        writeTo(out, (o, indexRoutingTable) -> indexRoutingTable.writeTo(o));
+    }
+
+    /**
+     * Writes this routing table like {@link #writeTo(StreamOutput)}, but uses the given writer for the routing table of each index.
+     */
+    public void writeTo(StreamOutput out, Writeable.Writer<IndexRoutingTable> indexRoutingTableWriter) throws IOException {
         out.writeLong(version);
         out.writeVInt(indicesRouting.size());
         for (ObjectCursor<IndexRoutingTable> index : indicesRouting.values()) {
-            index.value.writeTo(out);
+            indexRoutingTableWriter.write(out, index.value);
         }
     }
 
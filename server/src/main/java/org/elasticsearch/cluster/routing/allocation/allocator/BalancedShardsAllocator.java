@@ -40,6 +40,7 @@ import org.elasticsearch.cluster.routing.allocation.decider.AllocationDeciders;
 import org.elasticsearch.cluster.routing.allocation.decider.Decision;
 import org.elasticsearch.cluster.routing.allocation.decider.Decision.Type;
 import org.elasticsearch.cluster.routing.allocation.decider.DiskThresholdDecider;
+import org.elasticsearch.common.Nullable;
 import org.elasticsearch.common.collect.Tuple;
 import org.elasticsearch.common.component.AbstractComponent;
 import org.elasticsearch.common.inject.Inject;
@@ -47,10 +48,12 @@ import org.elasticsearch.common.settings.ClusterSettings;
 import org.elasticsearch.common.settings.Setting;
 import org.elasticsearch.common.settings.Setting.Property;
 import org.elasticsearch.common.settings.Settings;
+import org.elasticsearch.common.unit.TimeValue;
 import org.elasticsearch.common.util.set.Sets;
 import org.elasticsearch.gateway.PriorityComparator;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.Comparator;
 import java.util.HashMap;
@@ -73,6 +76,8 @@ import static org.elasticsearch.cluster.routing.ShardRoutingState.RELOCATING;
  * of {@link org.elasticsearch.cluster.routing.ShardRouting}s per index allocated on a specific node</li>
  * <li><code>cluster.routing.allocation.balance.threshold</code> - A <b>threshold</b> to set the minimal optimization
  * value of operations that should be performed</li>
+ * <li><code>cluster.routing.allocation.balance.incremental</code> - Whether to skip balancing indices that a previous
+ * allocation found balanced and whose shards, metadata, nodes and cluster settings did not change since</li>
  * </ul>
  * <p>
  * These parameters are combined in a {@link WeightFunction} that allows calculation of node weights which
@@ -87,9 +92,13 @@ public class BalancedShardsAllocator extends AbstractComponent implements Shards
     public static final Setting<Float> THRESHOLD_SETTING =
         Setting.floatSetting("cluster.routing.allocation.balance.threshold", 1.0f, 0.0f,
             Property.Dynamic, Property.NodeScope);
+    public static final Setting<Boolean> INCREMENTAL_BALANCE_SETTING =
+        Setting.boolSetting("cluster.routing.allocation.balance.incremental", false, Property.Dynamic, Property.NodeScope);
 
     private volatile WeightFunction weightFunction;
     private volatile float threshold;
+    private volatile boolean incrementalBalance;
+    private final BalancedIndices balancedIndices = new BalancedIndices();
 
     public BalancedShardsAllocator(Settings settings) {
         this(settings, new ClusterSettings(settings, ClusterSettings.BUILT_IN_CLUSTER_SETTINGS));
@@ -100,8 +109,10 @@ public class BalancedShardsAllocator extends AbstractComponent implements Shards
         super(settings);
         setWeightFunction(INDEX_BALANCE_FACTOR_SETTING.get(settings), SHARD_BALANCE_FACTOR_SETTING.get(settings));
         setThreshold(THRESHOLD_SETTING.get(settings));
+        setIncrementalBalance(INCREMENTAL_BALANCE_SETTING.get(settings));
         clusterSettings.addSettingsUpdateConsumer(INDEX_BALANCE_FACTOR_SETTING, SHARD_BALANCE_FACTOR_SETTING, this::setWeightFunction);
         clusterSettings.addSettingsUpdateConsumer(THRESHOLD_SETTING, this::setThreshold);
+        clusterSettings.addSettingsUpdateConsumer(INCREMENTAL_BALANCE_SETTING, this::setIncrementalBalance);
     }
 
     private void setWeightFunction(float indexBalance, float shardBalanceFactor) {
@@ -112,16 +123,40 @@ public class BalancedShardsAllocator extends AbstractComponent implements Shards
         this.threshold = threshold;
     }
 
+    private void setIncrementalBalance(boolean incrementalBalance) {
+        this.incrementalBalance = incrementalBalance;
+    }
+
     @Override
     public void allocate(RoutingAllocation allocation) {
         if (allocation.routingNodes().size() == 0) {
             /* with no nodes this is pointless */
             return;
         }
-        final Balancer balancer = new Balancer(logger, allocation, weightFunction, threshold);
+        final BalancedIndices balancedIndices;
+        if (incrementalBalance) {
+            balancedIndices = this.balancedIndices;
+        } else {
+            this.balancedIndices.clear();
+            balancedIndices = null;
+        }
+        final long startTimeInNanos = System.nanoTime();
+        final Balancer balancer = new Balancer(logger, allocation, weightFunction, threshold, balancedIndices);
+        final long modelBuiltInNanos = System.nanoTime();
         balancer.allocateUnassigned();
+        final long unassignedAllocatedInNanos = System.nanoTime();
         balancer.moveShards();
+        final long shardsMovedInNanos = System.nanoTime();
         balancer.balance();
+        if (logger.isDebugEnabled()) {
+            final long endTimeInNanos = System.nanoTime();
+            logger.debug("allocation took [{}]: building the model [{}], allocating unassigned shards [{}], moving shards [{}], " +
+                    "balancing [{}]", TimeValue.timeValueNanos(endTimeInNanos - startTimeInNanos),
+                TimeValue.timeValueNanos(modelBuiltInNanos - startTimeInNanos),
+                TimeValue.timeValueNanos(unassignedAllocatedInNanos - modelBuiltInNanos),
+                TimeValue.timeValueNanos(shardsMovedInNanos - unassignedAllocatedInNanos),
+                TimeValue.timeValueNanos(endTimeInNanos - shardsMovedInNanos));
+        }
     }
 
     @Override
@@ -162,6 +197,13 @@ public class BalancedShardsAllocator extends AbstractComponent implements Shards
         return weightFunction.shardBalance;
     }
 
+    /**
+     * Returns whether indices that were found balanced before are skipped while they don't change.
+     */
+    public boolean isIncrementalBalance() {
+        return incrementalBalance;
+    }
+
 
     /**
      * This class is the primary weight function used to create balanced over nodes and shards in the cluster.
@@ -238,9 +280,16 @@ public class BalancedShardsAllocator extends AbstractComponent implements Shards
         private final MetaData metaData;
         private final float avgShardsPerNode;
         private final NodeSorter sorter;
+        private final BalancedIndices balancedIndices;
 
         public Balancer(Logger logger, RoutingAllocation allocation, WeightFunction weight, float threshold) {
+            this(logger, allocation, weight, threshold, null);
+        }
+
+        Balancer(Logger logger, RoutingAllocation allocation, WeightFunction weight, float threshold,
+                 @Nullable BalancedIndices balancedIndices) {
             this.logger = logger;
+            this.balancedIndices = balancedIndices;
             this.allocation = allocation;
             this.weight = weight;
             this.threshold = threshold;
@@ -451,7 +500,7 @@ public class BalancedShardsAllocator extends AbstractComponent implements Shards
             final ModelNode[] modelNodes = sorter.modelNodes;
             final float[] weights = sorter.weights;
 
-            buildWeightOrderedIndices();
+            buildWeightOrderedIndices(null);
             Map<DiscoveryNode, Float> nodes = new HashMap<>(modelNodes.length);
             float currentNodeWeight = 0.0f;
             for (int i = 0; i < modelNodes.length; i++) {
@@ -484,7 +533,9 @@ public class BalancedShardsAllocator extends AbstractComponent implements Shards
             final AllocationDeciders deciders = allocation.deciders();
             final ModelNode[] modelNodes = sorter.modelNodes;
             final float[] weights = sorter.weights;
-            for (String index : buildWeightOrderedIndices()) {
+            final BalancedIndices.Round round = balancedIndices == null ? null : balancedIndices.newRound(this);
+            boolean relocated = false;
+            for (String index : buildWeightOrderedIndices(round)) {
                 IndexMetaData indexMetaData = metaData.index(index);
 
                 // find nodes that have a shard of this index or where shards of this index are allowed to be allocated to,
@@ -502,10 +553,17 @@ public class BalancedShardsAllocator extends AbstractComponent implements Shards
                 }
 
                 if (relevantNodes < 2) {
+                    if (round != null) {
+                        round.balanced(index);
+                    }
                     continue;
                 }
 
                 sorter.reset(index, 0, relevantNodes);
+                if (round != null && lessThan(absDelta(weights[0], weights[relevantNodes - 1]), threshold)) {
+                    // no relocation can bring the nodes closer to the balance, so neither can the next rounds unless something changes
+                    round.balanced(index);
+                }
                 int lowIdx = 0;
                 int highIdx = relevantNodes - 1;
                 while (true) {
@@ -543,6 +601,7 @@ public class BalancedShardsAllocator extends AbstractComponent implements Shards
                         /* pass the delta to the replication function to prevent relocations that only swap the weights of the two nodes.
                          * a relocation must bring us closer to the balance if we only achieve the same delta the relocation is useless */
                         if (tryRelocateShard(minNode, maxNode, index, delta)) {
+                            relocated = true;
                             /*
                              * TODO we could be a bit smarter here, we don't need to fully sort necessarily
                              * we could just find the place to insert linearly but the win might be minor
@@ -574,6 +633,9 @@ public class BalancedShardsAllocator extends AbstractComponent implements Shards
                     }
                 }
             }
+            if (round != null) {
+                round.finish(relocated);
+            }
         }
 
         /**
@@ -589,8 +651,10 @@ public class BalancedShardsAllocator extends AbstractComponent implements Shards
          * average. To re-balance we need to move shards back eventually likely
          * to the nodes we relocated them from.
          */
-        private String[] buildWeightOrderedIndices() {
-            final String[] indices = allocation.routingTable().indicesRouting().keys().toArray(String.class);
+        private String[] buildWeightOrderedIndices(@Nullable BalancedIndices.Round round) {
+            final String[] allIndices = allocation.routingTable().indicesRouting().keys().toArray(String.class);
+            final String[] indices = round == null ? allIndices
+                : Arrays.stream(allIndices).filter(index -> round.isBalanced(index) == false).toArray(String[]::new);
             final float[] deltas = new float[indices.length];
             for (int i = 0; i < deltas.length; i++) {
                 sorter.reset(indices[i]);
@@ -1177,6 +1241,115 @@ public class BalancedShardsAllocator extends AbstractComponent implements Shards
         }
     }
 
+    /**
+     * Remembers the indices that previous rounds of balancing found balanced. The weights of an index only depend on the number of
+     * shards of each node overall and for that index, so an index stays balanced as long as these numbers, its metadata, the nodes
+     * and the cluster settings that the allocation deciders read are unchanged. A round that relocates shards forgets about all
+     * indices since the relocations change the number of shards of the nodes.
+     */
+    static final class BalancedIndices {
+        private DiscoveryNode[] nodes = new DiscoveryNode[0];
+        private int[] nodeShards = new int[0];
+        private Settings persistentSettings = Settings.EMPTY;
+        private Settings transientSettings = Settings.EMPTY;
+        private WeightFunction weightFunction;
+        private float threshold;
+        private Map<String, BalancedIndex> indices = Collections.emptyMap();
+
+        synchronized void clear() {
+            indices = Collections.emptyMap();
+        }
+
+        synchronized Round newRound(Balancer balancer) {
+            final ModelNode[] modelNodes = balancer.nodesArray();
+            Arrays.sort(modelNodes, Comparator.comparing(ModelNode::getNodeId));
+            final DiscoveryNode[] nodes = new DiscoveryNode[modelNodes.length];
+            final int[] nodeShards = new int[modelNodes.length];
+            for (int i = 0; i < modelNodes.length; i++) {
+                nodes[i] = modelNodes[i].getRoutingNode().node();
+                nodeShards[i] = modelNodes[i].numShards();
+            }
+            final MetaData metaData = balancer.metaData;
+            final boolean unchanged = Arrays.equals(this.nodes, nodes) && Arrays.equals(this.nodeShards, nodeShards)
+                && weightFunction == balancer.weight && threshold == balancer.threshold
+                && persistentSettings.equals(metaData.persistentSettings()) && transientSettings.equals(metaData.transientSettings());
+            this.nodes = nodes;
+            this.nodeShards = nodeShards;
+            this.weightFunction = balancer.weight;
+            this.threshold = balancer.threshold;
+            this.persistentSettings = metaData.persistentSettings();
+            this.transientSettings = metaData.transientSettings();
+            return new Round(balancer, modelNodes, unchanged ? indices : Collections.emptyMap());
+        }
+
+        private synchronized void update(Map<String, BalancedIndex> indices) {
+            this.indices = indices;
+        }
+
+        /**
+         * Tracks the balanced indices of a single round of balancing.
+         */
+        final class Round {
+            private final Balancer balancer;
+            private final ModelNode[] modelNodes;
+            private final Map<String, BalancedIndex> previousIndices;
+            private final Map<String, BalancedIndex> balancedIndices = new HashMap<>();
+            private int skipped;
+
+            private Round(Balancer balancer, ModelNode[] modelNodes, Map<String, BalancedIndex> previousIndices) {
+                this.balancer = balancer;
+                this.modelNodes = modelNodes;
+                this.previousIndices = previousIndices;
+            }
+
+            /**
+             * Returns {@code true} if the given index was found balanced by a previous round and did not change since.
+             */
+            boolean isBalanced(String index) {
+                final BalancedIndex previous = previousIndices.get(index);
+                if (previous != null && previous.metaData == balancer.metaData.index(index)
+                    && Arrays.equals(previous.nodeShards, nodeShards(index))) {
+                    balancedIndices.put(index, previous);
+                    skipped++;
+                    return true;
+                }
+                return false;
+            }
+
+            /**
+             * Records that no relocation can bring the nodes closer to the balance for the given index.
+             */
+            void balanced(String index) {
+                balancedIndices.put(index, new BalancedIndex(balancer.metaData.index(index), nodeShards(index)));
+            }
+
+            void finish(boolean relocated) {
+                if (balancer.logger.isDebugEnabled()) {
+                    balancer.logger.debug("skipped balancing [{}] unchanged balanced indices, relocated shards [{}]", skipped, relocated);
+                }
+                update(relocated ? Collections.emptyMap() : balancedIndices);
+            }
+
+            private int[] nodeShards(String index) {
+                final int[] nodeShards = new int[modelNodes.length];
+                for (int i = 0; i < modelNodes.length; i++) {
+                    nodeShards[i] = modelNodes[i].numShards(index);
+                }
+                return nodeShards;
+            }
+        }
+
+        private static final class BalancedIndex {
+            private final IndexMetaData metaData;
+            private final int[] nodeShards;
+
+            private BalancedIndex(IndexMetaData metaData, int[] nodeShards) {
+                this.metaData = metaData;
+                this.nodeShards = nodeShards;
+            }
+        }
+    }
+
     static final class NodeSorter extends IntroSorter {
 
         final ModelNode[] modelNodes;
@@ -29,6 +29,8 @@ import java.util.Map;
 import java.util.Objects;
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
 import java.util.concurrent.atomic.LongAdder;
 import java.util.concurrent.locks.ReadWriteLock;
 import java.util.concurrent.locks.ReentrantLock;
@@ -61,6 +63,12 @@ import java.util.function.ToLongBiFunction;
  * <li>Locks on the list could be taken per node being modified instead of globally.</li>
  * </ol>
  * <p>
+ * The first two are implemented by buffered access recording, see {@link CacheBuilder#setBufferedAccessRecording(boolean)}.
+ * With buffered access recording a cache hit does not take the LRU lock. The entry that was read is appended to a lock-free
+ * ring buffer, the buffers being striped by thread, and the buffered entries are promoted in batches: either by the reader
+ * that fills a buffer if nobody else holds the LRU lock, or by the next mutation of the cache. Reads are dropped when a
+ * buffer is full or contended, so the LRU order is only approximate.
+ * <p>
  * Evictions only occur after a mutation to the cache (meaning an entry promotion, a cache insertion, or a manual
  * invalidation) or an explicit call to {@link #refresh()}.
  *
@@ -96,6 +104,16 @@ public class Cache<K, V> {
     private RemovalListener<K, V> removalListener = notification -> {
     };
 
+    // the buffers of the entries that were read but not promoted yet, null if reads promote entries immediately
+    private ReadBuffer<K, V>[] readBuffers;
+
+    // promotes an entry that was read, unless it was removed or not linked yet
+    private final Consumer<Entry<K, V>> promoteRead = entry -> {
+        if (entry.state == State.EXISTING) {
+            relinkAtHead(entry);
+        }
+    };
+
     // use CacheBuilder to construct
     Cache() {
     }
@@ -143,6 +161,29 @@ public class Cache<K, V> {
         this.removalListener = removalListener;
     }
 
+    @SuppressWarnings("unchecked")
+    void setBufferedAccessRecording(boolean bufferedAccessRecording) {
+        if (bufferedAccessRecording) {
+            final int processors = Runtime.getRuntime().availableProcessors();
+            int numberOfBuffers = 1;
+            while (numberOfBuffers < 4 * processors && numberOfBuffers < MAX_NUMBER_OF_READ_BUFFERS) {
+                numberOfBuffers <<= 1;
+            }
+            final ReadBuffer<K, V>[] buffers = new ReadBuffer[numberOfBuffers];
+            for (int i = 0; i < buffers.length; i++) {
+                buffers[i] = new ReadBuffer<>();
+            }
+            this.readBuffers = buffers;
+        } else {
+            this.readBuffers = null;
+        }
+    }
+
+    // pkg-private for testing
+    boolean isBufferedAccessRecording() {
+        return readBuffers != null;
+    }
+
     /**
      * The relative time used to track time-based evictions.
      *
@@ -314,6 +355,69 @@ public class Cache<K, V> {
         }
     }
 
+    /**
+     * A lossy ring buffer of the entries that were read from the cache. Readers append to the buffer without locking and
+     * the thread that holds the LRU lock drains it. An entry is dropped if the buffer is full or if another reader
+     * appends to the buffer at the same time, which only costs some accuracy of the LRU order.
+     *
+     * @param <K> the type of the keys
+     * @param <V> the type of the values
+     */
+    static final class ReadBuffer<K, V> {
+        static final int SIZE = 16;
+        private static final int MASK = SIZE - 1;
+
+        private final AtomicReferenceArray<Entry<K, V>> entries = new AtomicReferenceArray<>(SIZE);
+        // the number of entries that were appended to the buffer
+        private final AtomicLong writes = new AtomicLong();
+        // the number of entries that were drained from the buffer, only written while holding the LRU lock
+        private volatile long reads;
+
+        /**
+         * Appends an entry to the buffer.
+         *
+         * @param entry the entry that was read
+         * @return true if the buffer is full and should be drained
+         */
+        boolean offer(Entry<K, V> entry) {
+            final long head = reads;
+            final long tail = writes.get();
+            final long size = tail - head;
+            if (size >= SIZE) {
+                return true;
+            }
+            if (writes.compareAndSet(tail, tail + 1)) {
+                entries.lazySet((int) (tail & MASK), entry);
+                return size + 1 >= SIZE;
+            }
+            return false;
+        }
+
+        /**
+         * Removes the entries from the buffer in the order they were appended.
+         *
+         * @param consumer the consumer of the entries
+         */
+        void drain(Consumer<Entry<K, V>> consumer) {
+            long head = reads;
+            final long tail = writes.get();
+            for (; head < tail; head++) {
+                final int index = (int) (head & MASK);
+                final Entry<K, V> entry = entries.get(index);
+                if (entry == null) {
+                    // the reader that reserved this slot did not publish its entry yet, it is drained next time
+                    break;
+                }
+                entries.lazySet(index, null);
+                consumer.accept(entry);
+            }
+            reads = head;
+        }
+    }
+
+    // the upper bound of the number of read buffers, the cache uses four per processor
+    static final int MAX_NUMBER_OF_READ_BUFFERS = 64;
+
     public static final int NUMBER_OF_SEGMENTS = 256;
     @SuppressWarnings("unchecked") private final CacheSegment<K, V>[] segments = new CacheSegment[NUMBER_OF_SEGMENTS];
 
@@ -345,11 +449,40 @@ public class Cache<K, V> {
         if (entry == null) {
             return null;
         } else {
-            promote(entry, now);
+            final ReadBuffer<K, V>[] buffers = readBuffers;
+            if (buffers == null) {
+                promote(entry, now);
+            } else {
+                recordRead(buffers, entry, now);
+            }
             return entry.value;
         }
     }
 
+    private void recordRead(ReadBuffer<K, V>[] buffers, Entry<K, V> entry, long now) {
+        final ReadBuffer<K, V> buffer = buffers[(int) Thread.currentThread().getId() & (buffers.length - 1)];
+        if (buffer.offer(entry)) {
+            // the buffer is full, promote the buffered entries unless another thread is busy with the LRU list
+            try (ReleasableLock locked = lruLock.tryAcquire()) {
+                if (locked != null) {
+                    drainReadBuffers();
+                    evict(now);
+                }
+            }
+        }
+    }
+
+    private void drainReadBuffers() {
+        assert lruLock.isHeldByCurrentThread();
+
+        final ReadBuffer<K, V>[] buffers = readBuffers;
+        if (buffers != null) {
+            for (ReadBuffer<K, V> buffer : buffers) {
+                buffer.drain(promoteRead);
+            }
+        }
+    }
+
     /**
      * If the specified key is not already associated with a value (or is mapped to null), attempts to compute its
      * value using the given mapping function and enters it into this map unless null. The load method for a given key
@@ -498,6 +631,8 @@ public class Cache<K, V> {
                 haveSegmentLock[i] = true;
             }
             try (ReleasableLock ignored = lruLock.acquire()) {
+                // release the buffered reads so that they do not hold on to the invalidated entries
+                drainReadBuffers();
                 h = head;
                 Arrays.stream(segments).forEach(segment -> segment.map = new HashMap<>());
                 Entry<K, V> current = head;
@@ -528,6 +663,7 @@ public class Cache<K, V> {
     public void refresh() {
         long now = now();
         try (ReleasableLock ignored = lruLock.acquire()) {
+            drainReadBuffers();
             evict(now);
         }
     }
@@ -553,7 +689,8 @@ public class Cache<K, V> {
     /**
      * An LRU sequencing of the keys in the cache that supports removal. This sequence is not protected from mutations
      * to the cache (except for {@link Iterator#remove()}. The result of iteration under any other mutation is
-     * undefined.
+     * undefined. With buffered access recording the order only reflects the reads that were promoted so far, call
+     * {@link #refresh()} to promote all buffered reads.
      *
      * @return an LRU-ordered {@link Iterable} over the keys in the cache
      */
@@ -680,6 +817,7 @@ public class Cache<K, V> {
     private boolean promote(Entry<K, V> entry, long now) {
         boolean promoted = true;
         try (ReleasableLock ignored = lruLock.acquire()) {
+            drainReadBuffers();
             switch (entry.state) {
                 case DELETED:
                     promoted = false;
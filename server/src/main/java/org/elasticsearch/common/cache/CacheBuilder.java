@@ -30,6 +30,7 @@ public class CacheBuilder<K, V> {
     private long expireAfterWriteNanos = -1;
     private ToLongBiFunction<K, V> weigher;
     private RemovalListener<K, V> removalListener;
+    private boolean bufferedAccessRecording;
 
     public static <K, V> CacheBuilder<K, V> builder() {
         return new CacheBuilder<>();
@@ -90,6 +91,18 @@ public class CacheBuilder<K, V> {
         return this;
     }
 
+    /**
+     * Sets whether cache hits record the access of the entry in lock-free buffers that are drained in batches, rather than
+     * promoting the entry in the LRU list under a lock that all readers contend on. Caches with a high rate of hits from
+     * many threads should enable it, at the cost of an approximate LRU order.
+     *
+     * @param bufferedAccessRecording whether the accesses of entries are buffered
+     */
+    public CacheBuilder<K, V> setBufferedAccessRecording(boolean bufferedAccessRecording) {
+        this.bufferedAccessRecording = bufferedAccessRecording;
+        return this;
+    }
+
     public Cache<K, V> build() {
         Cache<K, V> cache = new Cache<>();
         if (maximumWeight != -1) {
@@ -107,6 +120,9 @@ public class CacheBuilder<K, V> {
         if (removalListener != null) {
             cache.setRemovalListener(removalListener);
         }
+        if (bufferedAccessRecording) {
+            cache.setBufferedAccessRecording(true);
+        }
         return cache;
     }
 }
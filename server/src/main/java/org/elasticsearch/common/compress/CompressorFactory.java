@@ -34,6 +34,9 @@ public class CompressorFactory {
 
     public static final Compressor COMPRESSOR = new DeflateCompressor();
 
+    /** A faster compressor than {@link #COMPRESSOR} with a lower compression ratio, used by the transport layer. */
+    public static final Compressor LZ4_COMPRESSOR = new LZ4Compressor();
+
     public static boolean isCompressed(BytesReference bytes) {
         return compressor(bytes) != null;
     }
@@ -47,6 +50,10 @@ public class CompressorFactory {
                 assert XContentFactory.xContentType(bytes) == null;
                 return COMPRESSOR;
             }
+            if (LZ4_COMPRESSOR.isCompressed(bytes)) {
+                assert XContentFactory.xContentType(bytes) == null;
+                return LZ4_COMPRESSOR;
+            }
 
         XContentType contentType = XContentFactory.xContentType(bytes);
         if (contentType == null) {
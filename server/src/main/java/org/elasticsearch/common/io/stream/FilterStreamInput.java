@@ -20,6 +20,8 @@
 package org.elasticsearch.common.io.stream;
 
 import org.elasticsearch.Version;
+import org.elasticsearch.common.bytes.BytesReference;
+import org.elasticsearch.common.lease.Releasable;
 
 import java.io.EOFException;
 import java.io.IOException;
@@ -45,6 +47,16 @@ public abstract class FilterStreamInput extends StreamInput {
         delegate.readBytes(b, offset, len);
     }
 
+    @Override
+    protected BytesReference readRetainedBytesReference(int length) throws IOException {
+        return delegate.readRetainedBytesReference(length);
+    }
+
+    @Override
+    public Releasable retainBuffers() {
+        return delegate.retainBuffers();
+    }
+
     @Override
     public void reset() throws IOException {
         delegate.reset();
@@ -35,6 +35,7 @@ import org.elasticsearch.common.Strings;
 import org.elasticsearch.common.bytes.BytesArray;
 import org.elasticsearch.common.bytes.BytesReference;
 import org.elasticsearch.common.geo.GeoPoint;
+import org.elasticsearch.common.lease.Releasable;
 import org.elasticsearch.common.text.Text;
 import org.joda.time.DateTime;
 import org.joda.time.DateTimeZone;
@@ -147,6 +148,32 @@ public abstract class StreamInput extends InputStream {
         return new BytesArray(bytes, 0, length);
     }
 
+    /**
+     * Reads a bytes reference like {@link #readBytesReference()}. Once {@link #retainBuffers()} has been called, streams that
+     * read from a pooled network buffer return a slice of that buffer instead of a copy. The slice is only valid until the
+     * releasable returned by {@link #retainBuffers()} is released, so this must only be used for payloads that are not
+     * referenced anymore once the request that carries them has been handled.
+     */
+    public BytesReference readRetainedBytesReference() throws IOException {
+        int length = readArraySize();
+        return readRetainedBytesReference(length);
+    }
+
+    /**
+     * Reads a bytes reference of the given length, see {@link #readRetainedBytesReference()}.
+     */
+    protected BytesReference readRetainedBytesReference(int length) throws IOException {
+        return readBytesReference(length);
+    }
+
+    /**
+     * Allows {@link #readRetainedBytesReference()} to return slices of the buffer that this stream reads from rather than copies.
+     * The returned releasable releases these slices and must be called once the bytes that were read are not needed anymore.
+     */
+    public Releasable retainBuffers() {
+        return () -> {};
+    }
+
     public BytesRef readBytesRef() throws IOException {
         int length = readArraySize();
         return readBytesRef(length);
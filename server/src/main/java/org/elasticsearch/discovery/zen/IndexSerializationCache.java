@@ -0,0 +1,133 @@
+/*
+ * Licensed to Elasticsearch under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Elasticsearch licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.elasticsearch.discovery.zen;
+
+import org.elasticsearch.Version;
+import org.elasticsearch.cluster.ClusterState;
+import org.elasticsearch.cluster.metadata.IndexMetaData;
+import org.elasticsearch.cluster.node.DiscoveryNode;
+import org.elasticsearch.cluster.routing.IndexRoutingTable;
+import org.elasticsearch.common.bytes.BytesReference;
+import org.elasticsearch.common.io.stream.BytesStreamOutput;
+import org.elasticsearch.common.io.stream.StreamOutput;
+import org.elasticsearch.common.io.stream.Writeable;
+import org.elasticsearch.common.util.concurrent.ConcurrentCollections;
+
+import java.io.IOException;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Caches the serialized {@link IndexMetaData} and {@link IndexRoutingTable} of each index per wire version, so that serializing a
+ * full cluster state only serializes the indices that changed since the previous publication. Entries are keyed by index UUID and
+ * are only reused for the very same instance, which cluster state updates keep for the indices they don't touch.
+ * <p>
+ * The cached bytes are uncompressed. Each publication writes them into its own compressed stream, so unchanged indices skip
+ * serialization but are still compressed with every full cluster state, because a compressed stream cannot be spliced into
+ * another one without changing the wire format.
+ */
+final class IndexSerializationCache {
+
+    private final ConcurrentMap<Version, ConcurrentMap<String, Entry>> indexMetaData = ConcurrentCollections.newConcurrentMap();
+    private final ConcurrentMap<Version, ConcurrentMap<String, Entry>> indexRoutingTables = ConcurrentCollections.newConcurrentMap();
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+
+    void writeIndexMetaData(StreamOutput out, IndexMetaData metaData) throws IOException {
+        write(indexMetaData, out, metaData.getIndexUUID(), metaData);
+    }
+
+    void writeIndexRoutingTable(StreamOutput out, IndexRoutingTable routingTable) throws IOException {
+        write(indexRoutingTables, out, routingTable.getIndex().getUUID(), routingTable);
+    }
+
+    private <T extends Writeable> void write(ConcurrentMap<Version, ConcurrentMap<String, Entry>> cache, StreamOutput out,
+                                             String indexUUID, T value) throws IOException {
+        final ConcurrentMap<String, Entry> entries =
+            cache.computeIfAbsent(out.getVersion(), version -> ConcurrentCollections.newConcurrentMap());
+        Entry entry = entries.get(indexUUID);
+        if (entry != null && entry.value == value) {
+            hits.incrementAndGet();
+        } else {
+            misses.incrementAndGet();
+            final BytesStreamOutput bytes = new BytesStreamOutput();
+            bytes.setVersion(out.getVersion());
+            value.writeTo(bytes);
+            entry = new Entry(value, bytes.bytes());
+            entries.put(indexUUID, entry);
+        }
+        entry.bytes.writeTo(out);
+    }
+
+    /**
+     * Drops the entries of indices that are not part of the given cluster state anymore, as well as the entries of wire versions
+     * that none of its nodes uses.
+     */
+    void prune(ClusterState clusterState) {
+        final Set<Version> versions = new HashSet<>();
+        for (DiscoveryNode node : clusterState.nodes()) {
+            versions.add(node.getVersion());
+        }
+        prune(indexMetaData, versions, clusterState);
+        prune(indexRoutingTables, versions, clusterState);
+    }
+
+    private static void prune(ConcurrentMap<Version, ConcurrentMap<String, Entry>> cache, Set<Version> versions,
+                              ClusterState clusterState) {
+        cache.keySet().retainAll(versions);
+        for (ConcurrentMap<String, Entry> entries : cache.values()) {
+            entries.values().removeIf(entry -> isCurrent(entry.value, clusterState) == false);
+        }
+    }
+
+    private static boolean isCurrent(Writeable value, ClusterState clusterState) {
+        if (value instanceof IndexMetaData) {
+            return clusterState.metaData().index(((IndexMetaData) value).getIndex()) == value;
+        } else {
+            return clusterState.routingTable().index(((IndexRoutingTable) value).getIndex()) == value;
+        }
+    }
+
+    /**
+     * The number of indices whose serialized form was reused
+     */
+    long hits() {
+        return hits.get();
+    }
+
+    /**
+     * The number of indices that had to be serialized
+     */
+    long misses() {
+        return misses.get();
+    }
+
+    private static final class Entry {
+        private final Writeable value;
+        private final BytesReference bytes;
+
+        private Entry(Writeable value, BytesReference bytes) {
+            this.value = value;
+            this.bytes = bytes;
+        }
+    }
+}
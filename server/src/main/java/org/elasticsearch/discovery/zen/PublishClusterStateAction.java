@@ -95,6 +95,13 @@ public class PublishClusterStateAction extends AbstractComponent {
     private final AtomicLong incompatibleClusterStateDiffReceivedCount = new AtomicLong();
     private final AtomicLong compatibleClusterStateDiffReceivedCount = new AtomicLong();
 
+    private final IndexSerializationCache indexSerializationCache = new IndexSerializationCache();
+    private final AtomicLong publishedClusterStateCount = new AtomicLong();
+    private final AtomicLong diffTimeInNanos = new AtomicLong();
+    private final AtomicLong serializationTimeInNanos = new AtomicLong();
+    private final AtomicLong commitTimeInNanos = new AtomicLong();
+    private final AtomicLong completionTimeInNanos = new AtomicLong();
+
     public PublishClusterStateAction(
             Settings settings,
             TransportService transportService,
@@ -128,6 +135,7 @@ public class PublishClusterStateAction extends AbstractComponent {
         final Map<Version, BytesReference> serializedStates;
         final Map<Version, BytesReference> serializedDiffs;
         final boolean sendFullVersion;
+        publishedClusterStateCount.incrementAndGet();
         try {
             nodes = clusterChangedEvent.state().nodes();
             nodesToPublishTo = new HashSet<>(nodes.getSize());
@@ -141,6 +149,8 @@ public class PublishClusterStateAction extends AbstractComponent {
             sendFullVersion = !discoverySettings.getPublishDiff() || clusterChangedEvent.previousState() == null;
             serializedStates = new HashMap<>();
             serializedDiffs = new HashMap<>();
+            // forget about indices that were deleted or changed since the previous publication
+            indexSerializationCache.prune(clusterChangedEvent.state());
 
             // we build these early as a best effort not to commit in the case of error.
             // sadly this is not water tight as it may that a failed diff based publishing to a node
@@ -193,12 +203,17 @@ public class PublishClusterStateAction extends AbstractComponent {
             }
         }
 
+        // sending may have serialized the full state for a node, which is accounted for in the serialization time
+        final long commitStartInNanos = System.nanoTime();
         sendingController.waitForCommit(discoverySettings.getCommitTimeout());
+        final long committedInNanos = System.nanoTime();
+        commitTimeInNanos.addAndGet(committedInNanos - commitStartInNanos);
 
         try {
             long timeLeftInNanos = Math.max(0, publishTimeout.nanos() - (System.nanoTime() - publishingStartInNanos));
             final BlockingClusterStatePublishResponseHandler publishResponseHandler = sendingController.getPublishResponseHandler();
             sendingController.setPublishingTimedOut(!publishResponseHandler.awaitAllNodes(TimeValue.timeValueNanos(timeLeftInNanos)));
+            completionTimeInNanos.addAndGet(System.nanoTime() - committedInNanos);
             if (sendingController.getPublishingTimedOut()) {
                 DiscoveryNode[] pendingNodes = publishResponseHandler.pendingNodes();
                 // everyone may have just responded
@@ -222,15 +237,19 @@ public class PublishClusterStateAction extends AbstractComponent {
                 if (sendFullVersion || !previousState.nodes().nodeExists(node)) {
                     // will send a full reference
                     if (serializedStates.containsKey(node.getVersion()) == false) {
-                        serializedStates.put(node.getVersion(), serializeFullClusterState(clusterState, node.getVersion()));
+                        serializedStates.put(node.getVersion(), serializeFullClusterStateCached(clusterState, node.getVersion()));
                     }
                 } else {
                     // will send a diff
                     if (diff == null) {
+                        final long startTimeInNanos = System.nanoTime();
                         diff = clusterState.diff(previousState);
+                        diffTimeInNanos.addAndGet(System.nanoTime() - startTimeInNanos);
                     }
                     if (serializedDiffs.containsKey(node.getVersion()) == false) {
+                        final long startTimeInNanos = System.nanoTime();
                         serializedDiffs.put(node.getVersion(), serializeDiffClusterState(diff, node.getVersion()));
+                        serializationTimeInNanos.addAndGet(System.nanoTime() - startTimeInNanos);
                     }
                 }
             } catch (IOException e) {
@@ -244,7 +263,7 @@ public class PublishClusterStateAction extends AbstractComponent {
         BytesReference bytes = serializedStates.get(node.getVersion());
         if (bytes == null) {
             try {
-                bytes = serializeFullClusterState(clusterState, node.getVersion());
+                bytes = serializeFullClusterStateCached(clusterState, node.getVersion());
                 serializedStates.put(node.getVersion(), bytes);
             } catch (Exception e) {
                 logger.warn(
@@ -358,6 +377,37 @@ public class PublishClusterStateAction extends AbstractComponent {
         return bStream.bytes();
     }
 
+    /**
+     * Serializes the full cluster state like {@link #serializeFullClusterState(ClusterState, Version)}, but reuses the serialized
+     * metadata and routing table of the indices that did not change since the previous publication. The reused bytes are
+     * uncompressed and are compressed again with the rest of the state, so only their serialization is saved.
+     */
+    BytesReference serializeFullClusterStateCached(ClusterState clusterState, Version nodeVersion) throws IOException {
+        final long startTimeInNanos = System.nanoTime();
+        BytesStreamOutput bStream = new BytesStreamOutput();
+        try (StreamOutput stream = CompressorFactory.COMPRESSOR.streamOutput(bStream)) {
+            stream.setVersion(nodeVersion);
+            stream.writeBoolean(true);
+            clusterState.writeTo(stream, indexSerializationCache::writeIndexMetaData, indexSerializationCache::writeIndexRoutingTable);
+        }
+        serializationTimeInNanos.addAndGet(System.nanoTime() - startTimeInNanos);
+        return bStream.bytes();
+    }
+
+    /**
+     * Returns the size of the full cluster state once serialized and compressed for publishing. The compressed bytes are only
+     * counted rather than buffered.
+     */
+    public static long compressedClusterStateSize(ClusterState clusterState, Version nodeVersion) throws IOException {
+        final CountingStreamOutput counter = new CountingStreamOutput();
+        try (StreamOutput stream = CompressorFactory.COMPRESSOR.streamOutput(counter)) {
+            stream.setVersion(nodeVersion);
+            stream.writeBoolean(true);
+            clusterState.writeTo(stream);
+        }
+        return counter.size;
+    }
+
     public static BytesReference serializeDiffClusterState(Diff diff, Version nodeVersion) throws IOException {
         BytesStreamOutput bStream = new BytesStreamOutput();
         try (StreamOutput stream = CompressorFactory.COMPRESSOR.streamOutput(bStream)) {
@@ -651,6 +701,40 @@ public class PublishClusterStateAction extends AbstractComponent {
         return new PublishClusterStateStats(
             fullClusterStateReceivedCount.get(),
             incompatibleClusterStateDiffReceivedCount.get(),
-            compatibleClusterStateDiffReceivedCount.get());
+            compatibleClusterStateDiffReceivedCount.get(),
+            publishedClusterStateCount.get(),
+            TimeUnit.NANOSECONDS.toMillis(diffTimeInNanos.get()),
+            TimeUnit.NANOSECONDS.toMillis(serializationTimeInNanos.get()),
+            TimeUnit.NANOSECONDS.toMillis(commitTimeInNanos.get()),
+            TimeUnit.NANOSECONDS.toMillis(completionTimeInNanos.get()),
+            indexSerializationCache.misses(),
+            indexSerializationCache.hits());
+    }
+
+    private static final class CountingStreamOutput extends StreamOutput {
+        private long size;
+
+        @Override
+        public void writeByte(byte b) {
+            size++;
+        }
+
+        @Override
+        public void writeBytes(byte[] b, int offset, int length) {
+            size += length;
+        }
+
+        @Override
+        public void flush() {
+        }
+
+        @Override
+        public void close() {
+        }
+
+        @Override
+        public void reset() {
+            size = 0;
+        }
     }
 }
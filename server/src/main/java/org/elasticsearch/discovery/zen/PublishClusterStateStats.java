@@ -19,6 +19,7 @@
 
 package org.elasticsearch.discovery.zen;
 
+import org.elasticsearch.Version;
 import org.elasticsearch.common.io.stream.StreamInput;
 import org.elasticsearch.common.io.stream.StreamOutput;
 import org.elasticsearch.common.io.stream.Writeable;
@@ -26,6 +27,7 @@ import org.elasticsearch.common.xcontent.ToXContentObject;
 import org.elasticsearch.common.xcontent.XContentBuilder;
 
 import java.io.IOException;
+import java.util.concurrent.TimeUnit;
 
 /**
  * Class encapsulating stats about the PublishClusterStateAction
@@ -35,24 +37,70 @@ public class PublishClusterStateStats implements Writeable, ToXContentObject {
     private final long fullClusterStateReceivedCount;
     private final long incompatibleClusterStateDiffReceivedCount;
     private final long compatibleClusterStateDiffReceivedCount;
+    private final long publishedClusterStateCount;
+    private final long diffTimeInMillis;
+    private final long serializationTimeInMillis;
+    private final long commitTimeInMillis;
+    private final long completionTimeInMillis;
+    private final long serializedIndicesCount;
+    private final long reusedIndicesCount;
 
     /**
      * @param fullClusterStateReceivedCount the number of times this node has received a full copy of the cluster state from the master.
      * @param incompatibleClusterStateDiffReceivedCount the number of times this node has received a cluster-state diff from the master.
      * @param compatibleClusterStateDiffReceivedCount the number of times that received cluster-state diffs were compatible with
+     * @param publishedClusterStateCount the number of cluster states this node has published as the master.
+     * @param diffTimeInMillis the time spent computing the diffs of published cluster states.
+     * @param serializationTimeInMillis the time spent serializing and compressing published cluster states and diffs.
+     * @param commitTimeInMillis the time spent waiting for published cluster states to be committed once they were sent,
+     *                           excluding their diffing and serialization.
+     * @param completionTimeInMillis the time spent between the commit of published cluster states and all nodes applying them.
+     * @param serializedIndicesCount the number of index metadata and routing tables serialized for full cluster states.
+     * @param reusedIndicesCount the number of index metadata and routing tables whose serialized form was reused for full cluster states.
      */
     public PublishClusterStateStats(long fullClusterStateReceivedCount,
                                     long incompatibleClusterStateDiffReceivedCount,
-                                    long compatibleClusterStateDiffReceivedCount) {
+                                    long compatibleClusterStateDiffReceivedCount,
+                                    long publishedClusterStateCount,
+                                    long diffTimeInMillis,
+                                    long serializationTimeInMillis,
+                                    long commitTimeInMillis,
+                                    long completionTimeInMillis,
+                                    long serializedIndicesCount,
+                                    long reusedIndicesCount) {
         this.fullClusterStateReceivedCount = fullClusterStateReceivedCount;
         this.incompatibleClusterStateDiffReceivedCount = incompatibleClusterStateDiffReceivedCount;
         this.compatibleClusterStateDiffReceivedCount = compatibleClusterStateDiffReceivedCount;
+        this.publishedClusterStateCount = publishedClusterStateCount;
+        this.diffTimeInMillis = diffTimeInMillis;
+        this.serializationTimeInMillis = serializationTimeInMillis;
+        this.commitTimeInMillis = commitTimeInMillis;
+        this.completionTimeInMillis = completionTimeInMillis;
+        this.serializedIndicesCount = serializedIndicesCount;
+        this.reusedIndicesCount = reusedIndicesCount;
     }
 
     public PublishClusterStateStats(StreamInput in) throws IOException {
         fullClusterStateReceivedCount = in.readVLong();
         incompatibleClusterStateDiffReceivedCount = in.readVLong();
         compatibleClusterStateDiffReceivedCount = in.readVLong();
+        if (in.getVersion().onOrAfter(Version.V_6_2_3)) {
+            publishedClusterStateCount = in.readVLong();
+            diffTimeInMillis = in.readVLong();
+            serializationTimeInMillis = in.readVLong();
+            commitTimeInMillis = in.readVLong();
+            completionTimeInMillis = in.readVLong();
+            serializedIndicesCount = in.readVLong();
+            reusedIndicesCount = in.readVLong();
+        } else {
+            publishedClusterStateCount = 0;
+            diffTimeInMillis = 0;
+            serializationTimeInMillis = 0;
+            commitTimeInMillis = 0;
+            completionTimeInMillis = 0;
+            serializedIndicesCount = 0;
+            reusedIndicesCount = 0;
+        }
     }
 
     @Override
@@ -60,6 +108,15 @@ public class PublishClusterStateStats implements Writeable, ToXContentObject {
         out.writeVLong(fullClusterStateReceivedCount);
         out.writeVLong(incompatibleClusterStateDiffReceivedCount);
         out.writeVLong(compatibleClusterStateDiffReceivedCount);
+        if (out.getVersion().onOrAfter(Version.V_6_2_3)) {
+            out.writeVLong(publishedClusterStateCount);
+            out.writeVLong(diffTimeInMillis);
+            out.writeVLong(serializationTimeInMillis);
+            out.writeVLong(commitTimeInMillis);
+            out.writeVLong(completionTimeInMillis);
+            out.writeVLong(serializedIndicesCount);
+            out.writeVLong(reusedIndicesCount);
+        }
     }
 
     @Override
@@ -71,6 +128,18 @@ public class PublishClusterStateStats implements Writeable, ToXContentObject {
             builder.field("compatible_diffs", compatibleClusterStateDiffReceivedCount);
         }
         builder.endObject();
+        builder.startObject("cluster_state_publication");
+        {
+            builder.field("published", publishedClusterStateCount);
+            builder.timeValueField("diff_time_in_millis", "diff_time", diffTimeInMillis, TimeUnit.MILLISECONDS);
+            builder.timeValueField("serialization_time_in_millis", "serialization_time", serializationTimeInMillis,
+                TimeUnit.MILLISECONDS);
+            builder.timeValueField("commit_time_in_millis", "commit_time", commitTimeInMillis, TimeUnit.MILLISECONDS);
+            builder.timeValueField("completion_time_in_millis", "completion_time", completionTimeInMillis, TimeUnit.MILLISECONDS);
+            builder.field("serialized_indices", serializedIndicesCount);
+            builder.field("reused_indices", reusedIndicesCount);
+        }
+        builder.endObject();
         return builder;
     }
 
@@ -80,11 +149,28 @@ public class PublishClusterStateStats implements Writeable, ToXContentObject {
 
     long getCompatibleClusterStateDiffReceivedCount() { return compatibleClusterStateDiffReceivedCount; }
 
+    public long getPublishedClusterStateCount() { return publishedClusterStateCount; }
+
+    public long getDiffTimeInMillis() { return diffTimeInMillis; }
+
+    public long getSerializationTimeInMillis() { return serializationTimeInMillis; }
+
+    public long getCommitTimeInMillis() { return commitTimeInMillis; }
+
+    public long getCompletionTimeInMillis() { return completionTimeInMillis; }
+
+    public long getSerializedIndicesCount() { return serializedIndicesCount; }
+
+    public long getReusedIndicesCount() { return reusedIndicesCount; }
+
     @Override
     public String toString() {
         return "PublishClusterStateStats(full=" + fullClusterStateReceivedCount
             + ", incompatible=" + incompatibleClusterStateDiffReceivedCount
             + ", compatible=" + compatibleClusterStateDiffReceivedCount
+            + ", published=" + publishedClusterStateCount
+            + ", serialized_indices=" + serializedIndicesCount
+            + ", reused_indices=" + reusedIndicesCount
             + ")";
     }
 }
@@ -78,6 +78,18 @@ public final class IndexSettings {
     public static final Setting<Translog.Durability> INDEX_TRANSLOG_DURABILITY_SETTING =
         new Setting<>("index.translog.durability", Translog.Durability.REQUEST.name(),
             (value) -> Translog.Durability.valueOf(value.toUpperCase(Locale.ROOT)), Property.Dynamic, Property.IndexScope);
+    /**
+     * How long a translog sync request of a write operation waits for the sync requests of concurrent write operations so that they
+     * can all be satisfied by a single fsync. <tt>0</tt> disables group commits.
+     */
+    public static final Setting<TimeValue> INDEX_TRANSLOG_GROUP_COMMIT_WINDOW_SETTING =
+        Setting.timeSetting("index.translog.group_commit.window", TimeValue.ZERO, TimeValue.ZERO, Property.Dynamic, Property.IndexScope);
+    /**
+     * The number of bytes of translog operations that trigger a group commit before its window has elapsed.
+     */
+    public static final Setting<ByteSizeValue> INDEX_TRANSLOG_GROUP_COMMIT_MAX_BYTES_SETTING =
+        Setting.byteSizeSetting("index.translog.group_commit.max_bytes", new ByteSizeValue(1, ByteSizeUnit.MB), Property.Dynamic,
+            Property.IndexScope);
     public static final Setting<Boolean> INDEX_WARMER_ENABLED_SETTING =
         Setting.boolSetting("index.warmer.enabled", true, Property.Dynamic, Property.IndexScope);
     public static final Setting<Boolean> INDEX_TTL_DISABLE_PURGE_SETTING =
@@ -246,6 +258,40 @@ public final class IndexSettings {
     public static final Setting<Integer> MAX_SLICES_PER_SCROLL = Setting.intSetting("index.max_slices_per_scroll",
         1024, 1, Property.Dynamic, Property.IndexScope);
 
+    /**
+     * Index setting to enable / disable concurrent search of the segments of a shard. When enabled the
+     * segments of a shard are split into slices that are searched in parallel. Can be overridden per request.
+     */
+    public static final Setting<Boolean> INDEX_CONCURRENT_SEGMENT_SEARCH_SETTING =
+        Setting.boolSetting("index.search.concurrent_segment_search.enabled", false, Property.Dynamic, Property.IndexScope);
+
+    /**
+     * The maximum number of slices that the segments of a shard are split into when they are searched concurrently.
+     */
+    public static final Setting<Integer> INDEX_CONCURRENT_SEGMENT_SEARCH_MAX_SLICES_SETTING =
+        Setting.intSetting("index.search.concurrent_segment_search.max_slices", 4, 1, Property.Dynamic, Property.IndexScope);
+
+    /**
+     * Index setting to apply the source includes and excludes of search requests while streaming the stored source
+     * instead of parsing it into a map and serializing the filtered map again.
+     */
+    public static final Setting<Boolean> INDEX_STREAMING_SOURCE_FILTERING_SETTING =
+        Setting.boolSetting("index.search.streaming_source_filtering", false, Property.Dynamic, Property.IndexScope);
+
+    /**
+     * Index setting to parse the documents of the index items of shard level bulk requests on the bulk_parse thread pool
+     * ahead of their execution on the primary, so that parsing overlaps with indexing.
+     */
+    public static final Setting<Boolean> INDEX_BULK_PIPELINED_PARSING_SETTING =
+        Setting.boolSetting("index.bulk.pipelined_parsing", false, Property.Dynamic, Property.IndexScope);
+
+    /**
+     * Index setting to rebuild global ordinals incrementally after a refresh: the ordinal map of the segments that did not
+     * change is reused and only merged with the terms of the new segments.
+     */
+    public static final Setting<Boolean> INDEX_INCREMENTAL_GLOBAL_ORDINALS_SETTING =
+        Setting.boolSetting("index.fielddata.incremental_global_ordinals", false, Property.Dynamic, Property.IndexScope);
+
     public static final String INDEX_MAPPING_SINGLE_TYPE_SETTING_KEY = "index.mapping.single_type";
     private static final Setting<Boolean> INDEX_MAPPING_SINGLE_TYPE_SETTING; // private - should not be registered
     static {
@@ -276,6 +322,8 @@ public final class IndexSettings {
     private final boolean defaultAllowUnmappedFields;
     private volatile Translog.Durability durability;
     private final TimeValue syncInterval;
+    private volatile TimeValue groupCommitWindow;
+    private volatile ByteSizeValue groupCommitMaxBytes;
     private volatile TimeValue refreshInterval;
     private volatile ByteSizeValue flushThresholdSize;
     private volatile TimeValue translogRetentionAge;
@@ -307,6 +355,26 @@ public final class IndexSettings {
      * The maximum number of slices allowed in a scroll request.
      */
     private volatile int maxSlicesPerScroll;
+    /**
+     * Whether the segments of a shard are searched concurrently by default.
+     */
+    private volatile boolean concurrentSegmentSearchEnabled;
+    /**
+     * The maximum number of slices that the segments of a shard are split into when searched concurrently.
+     */
+    private volatile int concurrentSegmentSearchMaxSlices;
+    /**
+     * Whether the source of hits is filtered while it is streamed.
+     */
+    private volatile boolean streamingSourceFilteringEnabled;
+    /**
+     * Whether the documents of bulk requests are parsed ahead of their execution on the primary.
+     */
+    private volatile boolean bulkPipelinedParsingEnabled;
+    /**
+     * Whether global ordinals are rebuilt incrementally after a refresh.
+     */
+    private volatile boolean incrementalGlobalOrdinalsEnabled;
     /**
      * Whether the index is required to have at most one type.
      */
@@ -387,6 +455,8 @@ public final class IndexSettings {
         this.durability = scopedSettings.get(INDEX_TRANSLOG_DURABILITY_SETTING);
         defaultFields = scopedSettings.get(DEFAULT_FIELD_SETTING);
         syncInterval = INDEX_TRANSLOG_SYNC_INTERVAL_SETTING.get(settings);
+        groupCommitWindow = scopedSettings.get(INDEX_TRANSLOG_GROUP_COMMIT_WINDOW_SETTING);
+        groupCommitMaxBytes = scopedSettings.get(INDEX_TRANSLOG_GROUP_COMMIT_MAX_BYTES_SETTING);
         refreshInterval = scopedSettings.get(INDEX_REFRESH_INTERVAL_SETTING);
         flushThresholdSize = scopedSettings.get(INDEX_TRANSLOG_FLUSH_THRESHOLD_SIZE_SETTING);
         translogRetentionAge = scopedSettings.get(INDEX_TRANSLOG_RETENTION_AGE_SETTING);
@@ -406,6 +476,11 @@ public final class IndexSettings {
         TTLPurgeDisabled = scopedSettings.get(INDEX_TTL_DISABLE_PURGE_SETTING);
         maxRefreshListeners = scopedSettings.get(MAX_REFRESH_LISTENERS_PER_SHARD);
         maxSlicesPerScroll = scopedSettings.get(MAX_SLICES_PER_SCROLL);
+        concurrentSegmentSearchEnabled = scopedSettings.get(INDEX_CONCURRENT_SEGMENT_SEARCH_SETTING);
+        concurrentSegmentSearchMaxSlices = scopedSettings.get(INDEX_CONCURRENT_SEGMENT_SEARCH_MAX_SLICES_SETTING);
+        streamingSourceFilteringEnabled = scopedSettings.get(INDEX_STREAMING_SOURCE_FILTERING_SETTING);
+        bulkPipelinedParsingEnabled = scopedSettings.get(INDEX_BULK_PIPELINED_PARSING_SETTING);
+        incrementalGlobalOrdinalsEnabled = scopedSettings.get(INDEX_INCREMENTAL_GLOBAL_ORDINALS_SETTING);
         maxAnalyzedOffset = scopedSettings.get(MAX_ANALYZED_OFFSET_SETTING);
         maxTermsCount = scopedSettings.get(MAX_TERMS_COUNT_SETTING);
         this.mergePolicyConfig = new MergePolicyConfig(logger, this);
@@ -429,6 +504,8 @@ public final class IndexSettings {
             mergeSchedulerConfig::setMaxThreadAndMergeCount);
         scopedSettings.addSettingsUpdateConsumer(MergeSchedulerConfig.AUTO_THROTTLE_SETTING, mergeSchedulerConfig::setAutoThrottle);
         scopedSettings.addSettingsUpdateConsumer(INDEX_TRANSLOG_DURABILITY_SETTING, this::setTranslogDurability);
+        scopedSettings.addSettingsUpdateConsumer(INDEX_TRANSLOG_GROUP_COMMIT_WINDOW_SETTING, this::setTranslogGroupCommitWindow);
+        scopedSettings.addSettingsUpdateConsumer(INDEX_TRANSLOG_GROUP_COMMIT_MAX_BYTES_SETTING, this::setTranslogGroupCommitMaxBytes);
         scopedSettings.addSettingsUpdateConsumer(INDEX_TTL_DISABLE_PURGE_SETTING, this::setTTLPurgeDisabled);
         scopedSettings.addSettingsUpdateConsumer(MAX_RESULT_WINDOW_SETTING, this::setMaxResultWindow);
         scopedSettings.addSettingsUpdateConsumer(MAX_INNER_RESULT_WINDOW_SETTING, this::setMaxInnerResultWindow);
@@ -451,6 +528,12 @@ public final class IndexSettings {
         scopedSettings.addSettingsUpdateConsumer(MAX_ANALYZED_OFFSET_SETTING, this::setHighlightMaxAnalyzedOffset);
         scopedSettings.addSettingsUpdateConsumer(MAX_TERMS_COUNT_SETTING, this::setMaxTermsCount);
         scopedSettings.addSettingsUpdateConsumer(MAX_SLICES_PER_SCROLL, this::setMaxSlicesPerScroll);
+        scopedSettings.addSettingsUpdateConsumer(INDEX_CONCURRENT_SEGMENT_SEARCH_SETTING, this::setConcurrentSegmentSearchEnabled);
+        scopedSettings.addSettingsUpdateConsumer(INDEX_CONCURRENT_SEGMENT_SEARCH_MAX_SLICES_SETTING,
+            this::setConcurrentSegmentSearchMaxSlices);
+        scopedSettings.addSettingsUpdateConsumer(INDEX_STREAMING_SOURCE_FILTERING_SETTING, this::setStreamingSourceFilteringEnabled);
+        scopedSettings.addSettingsUpdateConsumer(INDEX_BULK_PIPELINED_PARSING_SETTING, this::setBulkPipelinedParsingEnabled);
+        scopedSettings.addSettingsUpdateConsumer(INDEX_INCREMENTAL_GLOBAL_ORDINALS_SETTING, this::setIncrementalGlobalOrdinalsEnabled);
         scopedSettings.addSettingsUpdateConsumer(DEFAULT_FIELD_SETTING, this::setDefaultFields);
     }
 
@@ -594,6 +677,29 @@ public final class IndexSettings {
         this.durability = durability;
     }
 
+    /**
+     * Returns how long a translog sync request waits for concurrent sync requests to share a single fsync with.
+     * <tt>0</tt> means group commits are disabled.
+     */
+    public TimeValue getTranslogGroupCommitWindow() {
+        return groupCommitWindow;
+    }
+
+    private void setTranslogGroupCommitWindow(TimeValue groupCommitWindow) {
+        this.groupCommitWindow = groupCommitWindow;
+    }
+
+    /**
+     * Returns the number of bytes of translog operations that trigger a group commit before its window has elapsed.
+     */
+    public ByteSizeValue getTranslogGroupCommitMaxBytes() {
+        return groupCommitMaxBytes;
+    }
+
+    private void setTranslogGroupCommitMaxBytes(ByteSizeValue groupCommitMaxBytes) {
+        this.groupCommitMaxBytes = groupCommitMaxBytes;
+    }
+
     /**
      * Returns true if index warmers are enabled, otherwise <code>false</code>
      */
@@ -805,6 +911,62 @@ public final class IndexSettings {
         this.maxSlicesPerScroll = value;
     }
 
+    /**
+     * Returns <code>true</code> if the segments of a shard should be searched concurrently unless the request says otherwise.
+     */
+    public boolean isConcurrentSegmentSearchEnabled() {
+        return concurrentSegmentSearchEnabled;
+    }
+
+    private void setConcurrentSegmentSearchEnabled(boolean value) {
+        this.concurrentSegmentSearchEnabled = value;
+    }
+
+    /**
+     * The maximum number of slices that the segments of a shard are split into when searched concurrently.
+     */
+    public int getConcurrentSegmentSearchMaxSlices() {
+        return concurrentSegmentSearchMaxSlices;
+    }
+
+    private void setConcurrentSegmentSearchMaxSlices(int value) {
+        this.concurrentSegmentSearchMaxSlices = value;
+    }
+
+    /**
+     * Returns <code>true</code> if the source of hits should be filtered while it is streamed rather than through a map.
+     */
+    public boolean isStreamingSourceFilteringEnabled() {
+        return streamingSourceFilteringEnabled;
+    }
+
+    private void setStreamingSourceFilteringEnabled(boolean value) {
+        this.streamingSourceFilteringEnabled = value;
+    }
+
+    /**
+     * Returns <code>true</code> if the documents of bulk requests should be parsed ahead of their execution on the primary.
+     */
+    public boolean isBulkPipelinedParsingEnabled() {
+        return bulkPipelinedParsingEnabled;
+    }
+
+    private void setBulkPipelinedParsingEnabled(boolean value) {
+        this.bulkPipelinedParsingEnabled = value;
+    }
+
+    /**
+     * Returns <code>true</code> if global ordinals should reuse the ordinal map of the segments that did not change since
+     * their previous build.
+     */
+    public boolean isIncrementalGlobalOrdinalsEnabled() {
+        return incrementalGlobalOrdinalsEnabled;
+    }
+
+    private void setIncrementalGlobalOrdinalsEnabled(boolean value) {
+        this.incrementalGlobalOrdinalsEnabled = value;
+    }
+
     /**
      * Returns the index sort config that should be used for this index.
      */
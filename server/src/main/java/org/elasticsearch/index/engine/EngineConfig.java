@@ -112,6 +112,15 @@ public final class EngineConfig {
     public static final Setting<Boolean> INDEX_OPTIMIZE_AUTO_GENERATED_IDS = Setting.boolSetting("index.optimize_auto_generated_id", true,
         Property.IndexScope, Property.Dynamic);
 
+    /**
+     * Configures an index to keep the live version map, which maps recently changed document ids to their versions until the next
+     * refresh, in paged arrays obtained from the engine's {@link org.elasticsearch.common.util.BigArrays} instead of in one object per
+     * entry. This reduces the GC pressure of update heavy workloads. This setting is <b>not</b> realtime updateable.
+     * The default is <code>false</code>
+     */
+    public static final Setting<Boolean> INDEX_PACKED_VERSION_MAP_SETTING = Setting.boolSetting("index.packed_version_map", false,
+        Property.IndexScope);
+
     private final TranslogConfig translogConfig;
     private final OpenMode openMode;
 
@@ -377,6 +386,13 @@ public final class EngineConfig {
         return indexSettings.getValue(INDEX_OPTIMIZE_AUTO_GENERATED_IDS);
     }
 
+    /**
+     * returns true if the engine should keep its live version map in paged arrays rather than on-heap maps
+     */
+    public boolean isPackedVersionMapEnabled() {
+        return indexSettings.getValue(INDEX_PACKED_VERSION_MAP_SETTING);
+    }
+
     /**
      * Return the sort order of this index, or null if the index has no sort.
      */
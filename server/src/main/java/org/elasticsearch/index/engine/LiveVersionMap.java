@@ -21,15 +21,19 @@ package org.elasticsearch.index.engine;
 
 import org.apache.lucene.search.ReferenceManager;
 import org.apache.lucene.util.Accountable;
+import org.apache.lucene.util.Accountables;
 import org.apache.lucene.util.BytesRef;
 import org.apache.lucene.util.RamUsageEstimator;
 import org.elasticsearch.common.lease.Releasable;
+import org.elasticsearch.common.util.BigArrays;
 import org.elasticsearch.common.util.concurrent.ConcurrentCollections;
 import org.elasticsearch.common.util.concurrent.KeyedLock;
 
 import java.io.IOException;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.Map;
 import java.util.concurrent.atomic.AtomicLong;
 
@@ -38,10 +42,7 @@ final class LiveVersionMap implements ReferenceManager.RefreshListener, Accounta
 
     private final KeyedLock<BytesRef> keyedLock = new KeyedLock<>();
 
-    private static final class VersionLookup {
-
-        private static final VersionLookup EMPTY = new VersionLookup(Collections.emptyMap());
-        private final Map<BytesRef, VersionValue> map;
+    private abstract static class VersionLookup implements Releasable {
 
         // each version map has a notion of safe / unsafe which allows us to apply certain optimization in the auto-generated ID usecase
         // where we know that documents can't have any duplicates so we can skip the version map entirely. This reduces
@@ -55,33 +56,126 @@ final class LiveVersionMap implements ReferenceManager.RefreshListener, Accounta
         // map reference itself.
         private boolean unsafe;
 
-        private VersionLookup(Map<BytesRef, VersionValue> map) {
+        abstract VersionValue get(BytesRef key);
+
+        /**
+         * Associates the value with the key and returns the previous value if this lookup tracks it, <code>null</code> otherwise.
+         */
+        abstract VersionValue put(BytesRef key, VersionValue value);
+
+        abstract boolean isEmpty();
+
+        abstract int size();
+
+        /**
+         * Returns the bytes held by this lookup itself or <code>0</code> if the caller accounts for every entry it puts.
+         */
+        abstract long ramBytesUsed();
+
+        /**
+         * Returns the entries of this lookup as a map.
+         */
+        abstract Map<BytesRef, VersionValue> asMap();
+
+        boolean isUnsafe() {
+            return unsafe;
+        }
+
+        void markAsUnsafe() {
+            unsafe = true;
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+
+    /** Keeps the entries in an on-heap map, the caller accounts for the RAM used by each entry. */
+    private static final class MapVersionLookup extends VersionLookup {
+
+        private static final MapVersionLookup EMPTY = new MapVersionLookup(Collections.emptyMap());
+        private final Map<BytesRef, VersionValue> map;
+
+        private MapVersionLookup(Map<BytesRef, VersionValue> map) {
             this.map = map;
         }
 
+        @Override
         VersionValue get(BytesRef key) {
             return map.get(key);
         }
 
+        @Override
         VersionValue put(BytesRef key, VersionValue value) {
             return map.put(key, value);
         }
 
+        @Override
         boolean isEmpty() {
             return map.isEmpty();
         }
 
-
+        @Override
         int size() {
             return map.size();
         }
 
-        boolean isUnsafe() {
-            return unsafe;
+        @Override
+        long ramBytesUsed() {
+            return 0;
         }
 
-        void markAsUnsafe() {
-            unsafe = true;
+        @Override
+        Map<BytesRef, VersionValue> asMap() {
+            return map;
+        }
+    }
+
+    /** Keeps the entries in a {@link PackedVersionTable} which accounts for its own RAM and must be released once dropped. */
+    private static final class PackedVersionLookup extends VersionLookup {
+
+        private final PackedVersionTable table;
+
+        private PackedVersionLookup(PackedVersionTable table) {
+            this.table = table;
+        }
+
+        @Override
+        VersionValue get(BytesRef key) {
+            return table.get(key);
+        }
+
+        @Override
+        VersionValue put(BytesRef key, VersionValue value) {
+            table.put(key, value);
+            return null;
+        }
+
+        @Override
+        boolean isEmpty() {
+            return table.size() == 0;
+        }
+
+        @Override
+        int size() {
+            return Math.toIntExact(table.size());
+        }
+
+        @Override
+        long ramBytesUsed() {
+            return table.ramBytesUsed();
+        }
+
+        @Override
+        Map<BytesRef, VersionValue> asMap() {
+            final Map<BytesRef, VersionValue> map = new HashMap<>();
+            table.forEach(map::put);
+            return Collections.unmodifiableMap(map);
+        }
+
+        @Override
+        public void close() {
+            table.close();
         }
     }
 
@@ -104,8 +198,8 @@ final class LiveVersionMap implements ReferenceManager.RefreshListener, Accounta
             this.previousMapsNeededSafeAccess = previousMapsNeededSafeAccess;
         }
 
-        Maps() {
-            this(new VersionLookup(ConcurrentCollections.newConcurrentMapWithAggressiveConcurrency()), VersionLookup.EMPTY, false);
+        Maps(VersionLookup current) {
+            this(current, MapVersionLookup.EMPTY, false);
         }
 
         boolean isSafeAccessMode() {
@@ -122,26 +216,28 @@ final class LiveVersionMap implements ReferenceManager.RefreshListener, Accounta
         /**
          * Builds a new map for the refresh transition this should be called in beforeRefresh()
          */
-        Maps buildTransitionMap() {
-            return new Maps(new VersionLookup(ConcurrentCollections.newConcurrentMapWithAggressiveConcurrency(current.size())),
-                current, shouldInheritSafeAccess());
+        Maps buildTransitionMap(VersionLookup newCurrent) {
+            return new Maps(newCurrent, current, shouldInheritSafeAccess());
         }
 
         /**
          * builds a new map that invalidates the old map but maintains the current. This should be called in afterRefresh()
          */
         Maps invalidateOldMap() {
-            return new Maps(current, VersionLookup.EMPTY, previousMapsNeededSafeAccess);
+            return new Maps(current, MapVersionLookup.EMPTY, previousMapsNeededSafeAccess);
         }
     }
 
     // All deletes also go here, and delete "tombstones" are retained after refresh:
     private final Map<BytesRef, DeleteVersionValue> tombstones = ConcurrentCollections.newConcurrentMapWithAggressiveConcurrency();
 
-    private volatile Maps maps = new Maps();
+    // if set, current and old are kept in BigArrays backed tables instead of on-heap maps
+    private final BigArrays bigArrays;
+
+    private volatile Maps maps;
     // we maintain a second map that only receives the updates that we skip on the actual map (unsafe ops)
     // this map is only maintained if assertions are enabled
-    private volatile Maps unsafeKeysMap = new Maps();
+    private volatile Maps unsafeKeysMap = new Maps(newMapLookup(0));
 
     /**
      * Bytes consumed for each BytesRef UID:
@@ -189,14 +285,39 @@ final class LiveVersionMap implements ReferenceManager.RefreshListener, Accounta
      */
     final AtomicLong ramBytesUsedTombstones = new AtomicLong();
 
+    LiveVersionMap() {
+        this(null);
+    }
+
+    /**
+     * @param bigArrays if not <code>null</code> the live versions are kept in {@link PackedVersionTable}s allocated from these
+     *                  big arrays rather than in on-heap maps. Tombstones are always kept on-heap.
+     */
+    LiveVersionMap(BigArrays bigArrays) {
+        this.bigArrays = bigArrays;
+        this.maps = new Maps(newLookup(0));
+    }
+
+    private VersionLookup newLookup(int expectedSize) {
+        if (bigArrays == null) {
+            return newMapLookup(expectedSize);
+        }
+        // unlike a map, a packed table accounts for its capacity up-front so we let it grow from scratch rather than presizing it
+        return new PackedVersionLookup(new PackedVersionTable(bigArrays, 0));
+    }
+
+    private static VersionLookup newMapLookup(int expectedSize) {
+        return new MapVersionLookup(ConcurrentCollections.newConcurrentMapWithAggressiveConcurrency(expectedSize));
+    }
+
     @Override
     public void beforeRefresh() throws IOException {
         // Start sending all updates after this point to the new
         // map.  While reopen is running, any lookup will first
         // try this new map, then fallback to old, then to the
         // current searcher:
-        maps = maps.buildTransitionMap();
-        assert (unsafeKeysMap = unsafeKeysMap.buildTransitionMap()) != null;
+        maps = maps.buildTransitionMap(newLookup(maps.current.size()));
+        assert (unsafeKeysMap = unsafeKeysMap.buildTransitionMap(newMapLookup(unsafeKeysMap.current.size()))) != null;
         // This is not 100% correct, since concurrent indexing ops can change these counters in between our execution of the previous
         // line and this one, but that should be minor, and the error won't accumulate over time:
         ramBytesUsedCurrent.set(0);
@@ -211,8 +332,11 @@ final class LiveVersionMap implements ReferenceManager.RefreshListener, Accounta
         // reopen, and so any concurrent indexing requests can still sneak in a few additions to that current map that are in fact reflected
         // in the previous reader.   We don't touch tombstones here: they expire on their own index.gc_deletes timeframe:
 
-        maps = maps.invalidateOldMap();
+        final Maps previous = maps;
+        maps = previous.invalidateOldMap();
         assert (unsafeKeysMap = unsafeKeysMap.invalidateOldMap()) != null;
+        // lookups that still see the previous maps treat a released old map as empty and fall back to the new reader
+        previous.old.close();
 
     }
 
@@ -294,6 +418,8 @@ final class LiveVersionMap implements ReferenceManager.RefreshListener, Accounta
         assert uid.bytes.length == uid.length : "Oversized _uid! UID length: " + uid.length + ", bytes length: " + uid.bytes.length;
         long uidRAMBytesUsed = BASE_BYTES_PER_BYTESREF + uid.bytes.length;
         final VersionValue prev = maps.current.put(uid, version);
+        // packed lookups account for their own RAM and don't report the previous value
+        final boolean accountCurrent = maps.current instanceof MapVersionLookup;
         if (prev != null) {
             // Deduct RAM for the version we just replaced:
             long prevBytes = BASE_BYTES_PER_CHM_ENTRY;
@@ -303,12 +429,14 @@ final class LiveVersionMap implements ReferenceManager.RefreshListener, Accounta
             ramBytesUsedCurrent.addAndGet(-prevBytes);
         }
 
-        // Add RAM for the new version:
-        long newBytes = BASE_BYTES_PER_CHM_ENTRY;
-        if (version.isDelete() == false) {
-            newBytes += version.ramBytesUsed() + uidRAMBytesUsed;
+        if (accountCurrent) {
+            // Add RAM for the new version:
+            long newBytes = BASE_BYTES_PER_CHM_ENTRY;
+            if (version.isDelete() == false) {
+                newBytes += version.ramBytesUsed() + uidRAMBytesUsed;
+            }
+            ramBytesUsedCurrent.addAndGet(newBytes);
         }
-        ramBytesUsedCurrent.addAndGet(newBytes);
 
         final VersionValue prevTombstone;
         if (version.isDelete()) {
@@ -350,7 +478,8 @@ final class LiveVersionMap implements ReferenceManager.RefreshListener, Accounta
             long v = ramBytesUsedTombstones.addAndGet(-(BASE_BYTES_PER_CHM_ENTRY + prev.ramBytesUsed() + uidRAMBytesUsed));
             assert v >= 0 : "bytes=" + v;
         }
-        final VersionValue curVersion = maps.current.get(uid);
+        final VersionLookup current = maps.current;
+        final VersionValue curVersion = current instanceof MapVersionLookup ? current.get(uid) : null;
         if (curVersion != null && curVersion.isDelete()) {
             // We now shift accounting of the BytesRef from tombstones to current, because a refresh would clear this RAM.  This should be
             // uncommon, because with the default refresh=1s and gc_deletes=60s, deletes should be cleared from current long before we drop
@@ -385,7 +514,11 @@ final class LiveVersionMap implements ReferenceManager.RefreshListener, Accounta
      * Called when this index is closed.
      */
     synchronized void clear() {
-        maps = new Maps();
+        final Maps previous = maps;
+        // the engine is closed, there is no point in allocating big arrays for the remaining operations
+        maps = new Maps(newMapLookup(0));
+        previous.current.close();
+        previous.old.close();
         tombstones.clear();
         ramBytesUsedCurrent.set(0);
 
@@ -397,7 +530,7 @@ final class LiveVersionMap implements ReferenceManager.RefreshListener, Accounta
 
     @Override
     public long ramBytesUsed() {
-        return ramBytesUsedCurrent.get() + ramBytesUsedTombstones.get();
+        return ramBytesUsedForRefresh() + maps.old.ramBytesUsed() + ramBytesUsedTombstones.get();
     }
 
     /**
@@ -405,20 +538,30 @@ final class LiveVersionMap implements ReferenceManager.RefreshListener, Accounta
      * don't clear on refresh.
      */
     long ramBytesUsedForRefresh() {
-        return ramBytesUsedCurrent.get();
+        return ramBytesUsedCurrent.get() + maps.current.ramBytesUsed();
     }
 
     @Override
     public Collection<Accountable> getChildResources() {
-        // TODO: useful to break down RAM usage here?
-        return Collections.emptyList();
+        final Maps maps = this.maps;
+        return Collections.unmodifiableList(Arrays.asList(
+            Accountables.namedAccountable("current", ramBytesUsedCurrent.get() + maps.current.ramBytesUsed()),
+            Accountables.namedAccountable("old", maps.old.ramBytesUsed()),
+            Accountables.namedAccountable("tombstones", ramBytesUsedTombstones.get())));
     }
 
     /**
      * Returns the current internal versions as a point in time snapshot
      */
     Map<BytesRef, VersionValue> getAllCurrent() {
-        return maps.current.map;
+        return maps.current.asMap();
+    }
+
+    /**
+     * Returns the number of internal versions held by the current map
+     */
+    int getCurrentSize() {
+        return maps.current.size();
     }
 
     /**
@@ -0,0 +1,214 @@
+/*
+ * Licensed to Elasticsearch under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Elasticsearch licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.elasticsearch.index.engine;
+
+import org.apache.lucene.util.Accountable;
+import org.apache.lucene.util.BytesRef;
+import org.elasticsearch.common.lease.Releasable;
+import org.elasticsearch.common.lease.Releasables;
+import org.elasticsearch.common.util.BigArrays;
+import org.elasticsearch.common.util.BytesRefHash;
+import org.elasticsearch.common.util.LongArray;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.function.BiConsumer;
+
+/**
+ * Maps _uid value to its version information like a {@link java.util.Map} would, but keeps the uids and the
+ * (version, seqNo, term, time) tuples in {@link BigArrays} backed tables rather than in one object graph per entry.
+ * Values are decoded into short lived {@link VersionValue} instances on read. The table is split into segments that
+ * each have their own monitor so that indexing threads working on different uids rarely contend. Entries can't be
+ * removed individually: the table is meant to be filled between two refreshes and then released as a whole.
+ * Once closed, lookups return <code>null</code> and puts are ignored.
+ */
+final class PackedVersionTable implements Releasable, Accountable {
+
+    private static final int SEGMENT_BITS = 4;
+    private static final int NUM_SEGMENTS = 1 << SEGMENT_BITS;
+
+    // longs per entry: version, seqNo, term, delete time and a delete marker
+    private static final int STRIDE = 5;
+    private static final int VERSION = 0;
+    private static final int SEQ_NO = 1;
+    private static final int TERM = 2;
+    private static final int TIME = 3;
+    private static final int DELETE = 4;
+
+    private final Segment[] segments;
+
+    PackedVersionTable(BigArrays bigArrays, long expectedSize) {
+        final long segmentCapacity = Math.max(16, expectedSize / NUM_SEGMENTS);
+        segments = new Segment[NUM_SEGMENTS];
+        for (int i = 0; i < segments.length; i++) {
+            segments[i] = new Segment(bigArrays, segmentCapacity);
+        }
+    }
+
+    private Segment segment(int code) {
+        return segments[code >>> (Integer.SIZE - SEGMENT_BITS)];
+    }
+
+    /**
+     * Returns the version value associated with the given uid or <code>null</code> if there is none.
+     */
+    VersionValue get(BytesRef uid) {
+        final int code = uid.hashCode();
+        return segment(code).get(uid, code);
+    }
+
+    /**
+     * Associates the given version value with the uid, replacing any previous value.
+     */
+    void put(BytesRef uid, VersionValue value) {
+        final int code = uid.hashCode();
+        segment(code).put(uid, code, value);
+    }
+
+    /**
+     * Returns the number of uids in this table.
+     */
+    long size() {
+        long size = 0;
+        for (Segment segment : segments) {
+            size += segment.size();
+        }
+        return size;
+    }
+
+    /**
+     * Calls the given consumer with a copy of every uid and its version value. Concurrent puts may or may not be visible.
+     */
+    void forEach(BiConsumer<BytesRef, VersionValue> consumer) {
+        for (Segment segment : segments) {
+            segment.forEach(consumer);
+        }
+    }
+
+    @Override
+    public long ramBytesUsed() {
+        long bytes = 0;
+        for (Segment segment : segments) {
+            bytes += segment.ramBytesUsed();
+        }
+        return bytes;
+    }
+
+    @Override
+    public Collection<Accountable> getChildResources() {
+        return Collections.emptyList();
+    }
+
+    @Override
+    public void close() {
+        Releasables.close(segments);
+    }
+
+    private static final class Segment implements Releasable {
+
+        private final BigArrays bigArrays;
+        private final BytesRefHash uids;
+        private LongArray values;
+        private boolean closed;
+
+        Segment(BigArrays bigArrays, long capacity) {
+            this.bigArrays = bigArrays;
+            boolean success = false;
+            try {
+                this.uids = new BytesRefHash(capacity, bigArrays);
+                this.values = bigArrays.newLongArray(capacity * STRIDE, false);
+                success = true;
+            } finally {
+                if (success == false) {
+                    close();
+                }
+            }
+        }
+
+        synchronized VersionValue get(BytesRef uid, int code) {
+            if (closed) {
+                return null;
+            }
+            final long id = uids.find(uid, code);
+            return id < 0 ? null : decode(id);
+        }
+
+        synchronized void put(BytesRef uid, int code, VersionValue value) {
+            if (closed) {
+                // the table was dropped by a concurrent refresh which already made this operation visible
+                return;
+            }
+            long id = uids.add(uid, code);
+            if (id < 0) {
+                id = -1 - id;
+            } else {
+                values = bigArrays.grow(values, (id + 1) * STRIDE);
+            }
+            final long offset = id * STRIDE;
+            values.set(offset + VERSION, value.version);
+            values.set(offset + SEQ_NO, value.seqNo);
+            values.set(offset + TERM, value.term);
+            if (value.isDelete()) {
+                values.set(offset + TIME, ((DeleteVersionValue) value).time);
+                values.set(offset + DELETE, 1);
+            } else {
+                values.set(offset + TIME, 0);
+                values.set(offset + DELETE, 0);
+            }
+        }
+
+        private VersionValue decode(long id) {
+            final long offset = id * STRIDE;
+            final long version = values.get(offset + VERSION);
+            final long seqNo = values.get(offset + SEQ_NO);
+            final long term = values.get(offset + TERM);
+            if (values.get(offset + DELETE) != 0) {
+                return new DeleteVersionValue(version, seqNo, term, values.get(offset + TIME));
+            }
+            return new VersionValue(version, seqNo, term);
+        }
+
+        synchronized long size() {
+            return closed ? 0 : uids.size();
+        }
+
+        synchronized void forEach(BiConsumer<BytesRef, VersionValue> consumer) {
+            if (closed) {
+                return;
+            }
+            final BytesRef spare = new BytesRef();
+            for (long id = 0; id < uids.size(); id++) {
+                consumer.accept(BytesRef.deepCopyOf(uids.get(id, spare)), decode(id));
+            }
+        }
+
+        synchronized long ramBytesUsed() {
+            return closed ? 0 : uids.ramBytesUsed() + values.ramBytesUsed();
+        }
+
+        @Override
+        public synchronized void close() {
+            if (closed == false) {
+                closed = true;
+                Releasables.close(uids, values);
+            }
+        }
+    }
+}
@@ -0,0 +1,108 @@
+/*
+ * Licensed to Elasticsearch under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Elasticsearch licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.elasticsearch.index.fielddata;
+
+import org.apache.lucene.util.ArrayUtil;
+
+import java.io.IOException;
+
+/**
+ * Reads the values of blocks of documents into a primitive array. Consumers can then process the values of many documents in
+ * a tight loop that the JIT can unroll, instead of going through virtual calls for every document and every value.
+ */
+public abstract class DoubleValuesBlockReader {
+
+    protected double[] values = new double[0];
+
+    /**
+     * Reads the values of the first <code>count</code> documents of <code>docs</code>, which must be in increasing order and
+     * greater than the documents of the previous block, and returns the number of values that were read into {@link #values()}.
+     */
+    public abstract int read(int[] docs, int count) throws IOException;
+
+    /**
+     * The values of the last block that was read. Only the first values, up to the count returned by {@link #read}, are valid.
+     */
+    public final double[] values() {
+        return values;
+    }
+
+    /**
+     * Returns a block reader over the provided values, specialized for single-valued fields.
+     */
+    public static DoubleValuesBlockReader of(SortedNumericDoubleValues values) {
+        final NumericDoubleValues singleton = FieldData.unwrapSingleton(values);
+        if (singleton != null) {
+            return new SingleValued(singleton);
+        }
+        return new MultiValued(values);
+    }
+
+    private static final class SingleValued extends DoubleValuesBlockReader {
+        private final NumericDoubleValues in;
+
+        SingleValued(NumericDoubleValues in) {
+            this.in = in;
+        }
+
+        @Override
+        public int read(int[] docs, int count) throws IOException {
+            if (values.length < count) {
+                values = new double[ArrayUtil.oversize(count, Double.BYTES)];
+            }
+            final double[] values = this.values;
+            int numValues = 0;
+            for (int i = 0; i < count; i++) {
+                if (in.advanceExact(docs[i])) {
+                    values[numValues++] = in.doubleValue();
+                }
+            }
+            return numValues;
+        }
+    }
+
+    private static final class MultiValued extends DoubleValuesBlockReader {
+        private final SortedNumericDoubleValues in;
+
+        MultiValued(SortedNumericDoubleValues in) {
+            this.in = in;
+        }
+
+        @Override
+        public int read(int[] docs, int count) throws IOException {
+            if (values.length < count) {
+                values = new double[ArrayUtil.oversize(count, Double.BYTES)];
+            }
+            int numValues = 0;
+            for (int i = 0; i < count; i++) {
+                if (in.advanceExact(docs[i])) {
+                    final int docValueCount = in.docValueCount();
+                    if (numValues + docValueCount > values.length) {
+                        values = ArrayUtil.grow(values, numValues + docValueCount);
+                    }
+                    for (int j = 0; j < docValueCount; j++) {
+                        values[numValues++] = in.nextValue();
+                    }
+                }
+            }
+            return numValues;
+        }
+    }
+}
@@ -19,12 +19,14 @@
 
 package org.elasticsearch.index.fielddata;
 
+import org.elasticsearch.Version;
 import org.elasticsearch.common.FieldMemoryStats;
 import org.elasticsearch.common.Nullable;
 import org.elasticsearch.common.io.stream.StreamInput;
 import org.elasticsearch.common.io.stream.StreamOutput;
 import org.elasticsearch.common.io.stream.Streamable;
 import org.elasticsearch.common.unit.ByteSizeValue;
+import org.elasticsearch.common.unit.TimeValue;
 import org.elasticsearch.common.xcontent.ToXContentFragment;
 import org.elasticsearch.common.xcontent.XContentBuilder;
 
@@ -38,24 +40,46 @@ public class FieldDataStats implements Streamable, ToXContentFragment {
     private static final String MEMORY_SIZE_IN_BYTES = "memory_size_in_bytes";
     private static final String EVICTIONS = "evictions";
     private static final String FIELDS = "fields";
+    private static final String GLOBAL_ORDINALS = "global_ordinals";
+    private static final String BUILDS = "builds";
+    private static final String INCREMENTAL_BUILDS = "incremental_builds";
+    private static final String BUILD_TIME = "build_time";
+    private static final String BUILD_TIME_IN_MILLIS = "build_time_in_millis";
     long memorySize;
     long evictions;
     @Nullable
     FieldMemoryStats fields;
+    long globalOrdinalsMemorySize;
+    long globalOrdinalsBuilds;
+    long globalOrdinalsIncrementalBuilds;
+    long globalOrdinalsBuildTimeInMillis;
 
     public FieldDataStats() {
 
     }
 
     public FieldDataStats(long memorySize, long evictions, @Nullable FieldMemoryStats fields) {
+        this(memorySize, evictions, fields, 0, 0, 0, 0);
+    }
+
+    public FieldDataStats(long memorySize, long evictions, @Nullable FieldMemoryStats fields, long globalOrdinalsMemorySize,
+                          long globalOrdinalsBuilds, long globalOrdinalsIncrementalBuilds, long globalOrdinalsBuildTimeInMillis) {
         this.memorySize = memorySize;
         this.evictions = evictions;
         this.fields = fields;
+        this.globalOrdinalsMemorySize = globalOrdinalsMemorySize;
+        this.globalOrdinalsBuilds = globalOrdinalsBuilds;
+        this.globalOrdinalsIncrementalBuilds = globalOrdinalsIncrementalBuilds;
+        this.globalOrdinalsBuildTimeInMillis = globalOrdinalsBuildTimeInMillis;
     }
 
     public void add(FieldDataStats stats) {
         this.memorySize += stats.memorySize;
         this.evictions += stats.evictions;
+        this.globalOrdinalsMemorySize += stats.globalOrdinalsMemorySize;
+        this.globalOrdinalsBuilds += stats.globalOrdinalsBuilds;
+        this.globalOrdinalsIncrementalBuilds += stats.globalOrdinalsIncrementalBuilds;
+        this.globalOrdinalsBuildTimeInMillis += stats.globalOrdinalsBuildTimeInMillis;
         if (stats.fields != null) {
             if (fields == null) {
                 fields = stats.fields.copy();
@@ -82,11 +106,53 @@ public class FieldDataStats implements Streamable, ToXContentFragment {
         return fields;
     }
 
+    /**
+     * The memory used by the global ordinals that are currently cached, which is included in {@link #getMemorySize()}.
+     */
+    public long getGlobalOrdinalsMemorySizeInBytes() {
+        return globalOrdinalsMemorySize;
+    }
+
+    public ByteSizeValue getGlobalOrdinalsMemorySize() {
+        return new ByteSizeValue(globalOrdinalsMemorySize);
+    }
+
+    /**
+     * The total number of times global ordinals were built.
+     */
+    public long getGlobalOrdinalsBuilds() {
+        return globalOrdinalsBuilds;
+    }
+
+    /**
+     * The number of global ordinals builds that reused the ordinal map of a previous build.
+     */
+    public long getGlobalOrdinalsIncrementalBuilds() {
+        return globalOrdinalsIncrementalBuilds;
+    }
+
+    /**
+     * The total time spent building global ordinals.
+     */
+    public TimeValue getGlobalOrdinalsBuildTime() {
+        return new TimeValue(globalOrdinalsBuildTimeInMillis);
+    }
+
+    public long getGlobalOrdinalsBuildTimeInMillis() {
+        return globalOrdinalsBuildTimeInMillis;
+    }
+
     @Override
     public void readFrom(StreamInput in) throws IOException {
         memorySize = in.readVLong();
         evictions = in.readVLong();
         fields = in.readOptionalWriteable(FieldMemoryStats::new);
+        if (in.getVersion().onOrAfter(Version.V_6_2_3)) {
+            globalOrdinalsMemorySize = in.readVLong();
+            globalOrdinalsBuilds = in.readVLong();
+            globalOrdinalsIncrementalBuilds = in.readVLong();
+            globalOrdinalsBuildTimeInMillis = in.readVLong();
+        }
     }
 
     @Override
@@ -94,6 +160,12 @@ public class FieldDataStats implements Streamable, ToXContentFragment {
         out.writeVLong(memorySize);
         out.writeVLong(evictions);
         out.writeOptionalWriteable(fields);
+        if (out.getVersion().onOrAfter(Version.V_6_2_3)) {
+            out.writeVLong(globalOrdinalsMemorySize);
+            out.writeVLong(globalOrdinalsBuilds);
+            out.writeVLong(globalOrdinalsIncrementalBuilds);
+            out.writeVLong(globalOrdinalsBuildTimeInMillis);
+        }
     }
 
     @Override
@@ -101,6 +173,12 @@ public class FieldDataStats implements Streamable, ToXContentFragment {
         builder.startObject(FIELDDATA);
         builder.byteSizeField(MEMORY_SIZE_IN_BYTES, MEMORY_SIZE, memorySize);
         builder.field(EVICTIONS, getEvictions());
+        builder.startObject(GLOBAL_ORDINALS);
+        builder.byteSizeField(MEMORY_SIZE_IN_BYTES, MEMORY_SIZE, globalOrdinalsMemorySize);
+        builder.field(BUILDS, globalOrdinalsBuilds);
+        builder.field(INCREMENTAL_BUILDS, globalOrdinalsIncrementalBuilds);
+        builder.timeValueField(BUILD_TIME_IN_MILLIS, BUILD_TIME, globalOrdinalsBuildTimeInMillis);
+        builder.endObject();
         if (fields != null) {
             fields.toXContent(builder, FIELDS, MEMORY_SIZE_IN_BYTES, MEMORY_SIZE);
         }
@@ -115,11 +193,16 @@ public class FieldDataStats implements Streamable, ToXContentFragment {
         FieldDataStats that = (FieldDataStats) o;
         return memorySize == that.memorySize &&
             evictions == that.evictions &&
-            Objects.equals(fields, that.fields);
+            Objects.equals(fields, that.fields) &&
+            globalOrdinalsMemorySize == that.globalOrdinalsMemorySize &&
+            globalOrdinalsBuilds == that.globalOrdinalsBuilds &&
+            globalOrdinalsIncrementalBuilds == that.globalOrdinalsIncrementalBuilds &&
+            globalOrdinalsBuildTimeInMillis == that.globalOrdinalsBuildTimeInMillis;
     }
 
     @Override
     public int hashCode() {
-        return Objects.hash(memorySize, evictions, fields);
+        return Objects.hash(memorySize, evictions, fields, globalOrdinalsMemorySize, globalOrdinalsBuilds,
+            globalOrdinalsIncrementalBuilds, globalOrdinalsBuildTimeInMillis);
     }
 }
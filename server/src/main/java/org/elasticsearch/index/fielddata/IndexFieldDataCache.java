@@ -54,6 +54,13 @@ public interface IndexFieldDataCache {
          * Called after the fielddata is unloaded
          */
         default void onRemoval(ShardId shardId, String fieldName, boolean wasEvicted, long sizeInBytes){}
+
+        /**
+         * Called after the fielddata is unloaded, with the fielddata that was unloaded
+         */
+        default void onRemoval(ShardId shardId, String fieldName, boolean wasEvicted, long sizeInBytes, Accountable ramUsage) {
+            onRemoval(shardId, fieldName, wasEvicted, sizeInBytes);
+        }
     }
 
     class None implements IndexFieldDataCache {
@@ -25,16 +25,22 @@ import org.elasticsearch.common.FieldMemoryStats;
 import org.elasticsearch.common.metrics.CounterMetric;
 import org.elasticsearch.common.regex.Regex;
 import org.elasticsearch.common.util.concurrent.ConcurrentCollections;
+import org.elasticsearch.index.fielddata.ordinals.GlobalOrdinalsIndexFieldData;
 import org.elasticsearch.index.shard.ShardId;
 
 import java.util.Map;
 import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
 
 public class ShardFieldData implements IndexFieldDataCache.Listener {
 
     private final CounterMetric evictionsMetric = new CounterMetric();
     private final CounterMetric totalMetric = new CounterMetric();
     private final ConcurrentMap<String, CounterMetric> perFieldTotals = ConcurrentCollections.newConcurrentMap();
+    private final CounterMetric globalOrdinalsMemoryMetric = new CounterMetric();
+    private final CounterMetric globalOrdinalsBuildsMetric = new CounterMetric();
+    private final CounterMetric globalOrdinalsIncrementalBuildsMetric = new CounterMetric();
+    private final CounterMetric globalOrdinalsBuildTimeMetric = new CounterMetric();
 
     public FieldDataStats stats(String... fields) {
         ObjectLongHashMap<String> fieldTotals = null;
@@ -47,11 +53,21 @@ public class ShardFieldData implements IndexFieldDataCache.Listener {
             }
         }
         return new FieldDataStats(totalMetric.count(), evictionsMetric.count(), fieldTotals == null ? null :
-            new FieldMemoryStats(fieldTotals));
+            new FieldMemoryStats(fieldTotals), globalOrdinalsMemoryMetric.count(), globalOrdinalsBuildsMetric.count(),
+            globalOrdinalsIncrementalBuildsMetric.count(), TimeUnit.NANOSECONDS.toMillis(globalOrdinalsBuildTimeMetric.count()));
     }
 
     @Override
     public void onCache(ShardId shardId, String fieldName, Accountable ramUsage) {
+        if (ramUsage instanceof GlobalOrdinalsIndexFieldData) {
+            final GlobalOrdinalsIndexFieldData globalOrdinals = (GlobalOrdinalsIndexFieldData) ramUsage;
+            globalOrdinalsMemoryMetric.inc(globalOrdinals.ramBytesUsed());
+            globalOrdinalsBuildsMetric.inc();
+            if (globalOrdinals.isIncremental()) {
+                globalOrdinalsIncrementalBuildsMetric.inc();
+            }
+            globalOrdinalsBuildTimeMetric.inc(globalOrdinals.getBuildTimeInNanos());
+        }
         totalMetric.inc(ramUsage.ramBytesUsed());
         CounterMetric total = perFieldTotals.get(fieldName);
         if (total != null) {
@@ -66,6 +82,14 @@ public class ShardFieldData implements IndexFieldDataCache.Listener {
         }
     }
 
+    @Override
+    public void onRemoval(ShardId shardId, String fieldName, boolean wasEvicted, long sizeInBytes, Accountable ramUsage) {
+        if (ramUsage instanceof GlobalOrdinalsIndexFieldData && sizeInBytes != -1) {
+            globalOrdinalsMemoryMetric.dec(sizeInBytes);
+        }
+        onRemoval(shardId, fieldName, wasEvicted, sizeInBytes);
+    }
+
     @Override
     public void onRemoval(ShardId shardId, String fieldName, boolean wasEvicted, long sizeInBytes) {
         if (wasEvicted) {
@@ -24,7 +24,10 @@ import org.apache.lucene.index.OrdinalMap;
 import org.apache.lucene.index.SortedSetDocValues;
 import org.apache.lucene.search.SortField;
 import org.apache.lucene.util.Accountable;
+import org.apache.lucene.util.LongValues;
+import org.apache.lucene.util.packed.PackedInts;
 import org.elasticsearch.common.Nullable;
+import org.elasticsearch.common.breaker.CircuitBreaker;
 import org.elasticsearch.index.AbstractIndexComponent;
 import org.elasticsearch.index.IndexSettings;
 import org.elasticsearch.index.fielddata.AtomicOrdinalsFieldData;
@@ -35,6 +38,8 @@ import org.elasticsearch.index.fielddata.ScriptDocValues;
 import org.elasticsearch.index.fielddata.plain.AbstractAtomicOrdinalsFieldData;
 import org.elasticsearch.search.MultiValueMode;
 
+import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.function.Function;
@@ -46,24 +51,33 @@ public class GlobalOrdinalsIndexFieldData extends AbstractIndexComponent impleme
 
     private final String fieldName;
     private final long memorySizeInBytes;
+    private final long buildTimeInNanos;
 
-    private final OrdinalMap ordinalMap;
+    private final IncrementalOrdinalMap ordinalMap;
     private final Atomic[] atomicReaders;
     private final Function<SortedSetDocValues, ScriptDocValues<?>> scriptFunction;
-
-
-    protected GlobalOrdinalsIndexFieldData(IndexSettings indexSettings, String fieldName, AtomicOrdinalsFieldData[] segmentAfd,
-                                           OrdinalMap ordinalMap, long memorySizeInBytes, Function<SortedSetDocValues,
-                                           ScriptDocValues<?>> scriptFunction) {
+    private final CircuitBreaker breaker;
+    // a single ordinal map over all segments, only built on demand if the global ordinals were built incrementally
+    private volatile OrdinalMap flatOrdinalMap;
+    // the memory of the ordinal map built on demand that is accounted in the breaker, guarded by this
+    private long onDemandMemoryInBytes;
+    private boolean released;
+
+    GlobalOrdinalsIndexFieldData(IndexSettings indexSettings, String fieldName, AtomicOrdinalsFieldData[] segmentAfd,
+                                 IncrementalOrdinalMap ordinalMap, long memorySizeInBytes, long buildTimeInNanos,
+                                 Function<SortedSetDocValues, ScriptDocValues<?>> scriptFunction, CircuitBreaker breaker) {
         super(indexSettings);
         this.fieldName = fieldName;
         this.memorySizeInBytes = memorySizeInBytes;
+        this.buildTimeInNanos = buildTimeInNanos;
         this.ordinalMap = ordinalMap;
+        this.flatOrdinalMap = ordinalMap.getFlatOrdinalMap();
         this.atomicReaders = new Atomic[segmentAfd.length];
         for (int i = 0; i < segmentAfd.length; i++) {
             atomicReaders[i] = new Atomic(segmentAfd[i], ordinalMap, i);
         }
         this.scriptFunction = scriptFunction;
+        this.breaker = breaker;
     }
 
     @Override
@@ -112,18 +126,78 @@ public class GlobalOrdinalsIndexFieldData extends AbstractIndexComponent impleme
         return atomicReaders[context.ord];
     }
 
+    /**
+     * Returns a single {@link OrdinalMap} over all segments. Global ordinals that were built incrementally build this map on
+     * the first call and account its memory in the fielddata circuit breaker until {@link #releaseOnDemandMemory()} is called.
+     * Use {@link #getGlobalOrds(int)} to map segment ordinals to global ordinals.
+     */
     @Override
     public OrdinalMap getOrdinalMap() {
-        return ordinalMap;
+        OrdinalMap map = flatOrdinalMap;
+        if (map == null) {
+            synchronized (this) {
+                map = flatOrdinalMap;
+                if (map == null) {
+                    final SortedSetDocValues[] subs = new SortedSetDocValues[atomicReaders.length];
+                    for (int i = 0; i < subs.length; i++) {
+                        subs[i] = atomicReaders[i].afd.getOrdinalsValues();
+                    }
+                    try {
+                        map = OrdinalMap.build(null, subs, PackedInts.DEFAULT);
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                    if (released == false) {
+                        breaker.addEstimateBytesAndMaybeBreak(map.ramBytesUsed(), fieldName);
+                        onDemandMemoryInBytes = map.ramBytesUsed();
+                    }
+                    flatOrdinalMap = map;
+                }
+            }
+        }
+        return map;
+    }
+
+    /**
+     * Returns the memory of the ordinal map built by {@link #getOrdinalMap()} that was accounted in the fielddata circuit
+     * breaker so that the caller can release it. This is called once these global ordinals are removed from the cache, an
+     * ordinal map that is built later on is only referenced by the request that built it and is not accounted.
+     */
+    public synchronized long releaseOnDemandMemory() {
+        released = true;
+        final long memoryInBytes = onDemandMemoryInBytes;
+        onDemandMemoryInBytes = 0;
+        return memoryInBytes;
+    }
+
+    /**
+     * Returns the mapping from the ordinals of the segment at the provided index to global ordinals.
+     */
+    public LongValues getGlobalOrds(int segmentIndex) {
+        return ordinalMap.getGlobalOrds(segmentIndex);
+    }
+
+    /**
+     * Returns the time it took to build these global ordinals in nanoseconds.
+     */
+    public long getBuildTimeInNanos() {
+        return buildTimeInNanos;
+    }
+
+    /**
+     * Returns <code>true</code> if these global ordinals reused the ordinal map of a previous build.
+     */
+    public boolean isIncremental() {
+        return ordinalMap.isIncremental();
     }
 
     private final class Atomic extends AbstractAtomicOrdinalsFieldData {
 
         private final AtomicOrdinalsFieldData afd;
-        private final OrdinalMap ordinalMap;
+        private final IncrementalOrdinalMap ordinalMap;
         private final int segmentIndex;
 
-        private Atomic(AtomicOrdinalsFieldData afd, OrdinalMap ordinalMap, int segmentIndex) {
+        private Atomic(AtomicOrdinalsFieldData afd, IncrementalOrdinalMap ordinalMap, int segmentIndex) {
             super(scriptFunction);
             this.afd = afd;
             this.ordinalMap = ordinalMap;
@@ -0,0 +1,49 @@
+/*
+ * Licensed to Elasticsearch under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Elasticsearch licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.elasticsearch.index.fielddata.ordinals;
+
+import org.elasticsearch.common.util.concurrent.ConcurrentCollections;
+import org.elasticsearch.index.IndexSettings;
+import org.elasticsearch.index.shard.ShardId;
+
+import java.lang.ref.WeakReference;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Remembers the ordinal map of the last global ordinals that were built for a field on each shard, so that the global
+ * ordinals of the next reader of the shard can reuse the mapping of the segments that did not change, see
+ * {@link IndexSettings#INDEX_INCREMENTAL_GLOBAL_ORDINALS_SETTING}. Ordinal maps are weakly referenced: they are only
+ * retained as long as the global ordinals that use them are cached.
+ */
+public final class IncrementalGlobalOrdinals {
+
+    private final ConcurrentMap<ShardId, WeakReference<IncrementalOrdinalMap.Base>> bases = ConcurrentCollections.newConcurrentMap();
+
+    IncrementalOrdinalMap.Base get(ShardId shardId) {
+        final WeakReference<IncrementalOrdinalMap.Base> ref = bases.get(shardId);
+        return ref == null ? null : ref.get();
+    }
+
+    void put(ShardId shardId, IncrementalOrdinalMap.Base base) {
+        bases.put(shardId, new WeakReference<>(base));
+        // drop the entries of shards whose global ordinals are not cached anymore
+        bases.values().removeIf(ref -> ref.get() == null);
+    }
+}
@@ -0,0 +1,392 @@
+/*
+ * Licensed to Elasticsearch under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Elasticsearch licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.elasticsearch.index.fielddata.ordinals;
+
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.index.LeafReaderContext;
+import org.apache.lucene.index.OrdinalMap;
+import org.apache.lucene.index.SortedSetDocValues;
+import org.apache.lucene.index.TermsEnum;
+import org.apache.lucene.util.Accountable;
+import org.apache.lucene.util.BytesRef;
+import org.apache.lucene.util.LongValues;
+import org.apache.lucene.util.packed.PackedInts;
+import org.apache.lucene.util.packed.PackedLongValues;
+import org.elasticsearch.common.Nullable;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Maps the ordinals of the segments of a reader to global ordinals. The mapping is either a single {@link OrdinalMap} over
+ * all segments, or the {@link OrdinalMap} of a previous build over the segments that did not change (the base) combined
+ * with an {@link OrdinalMap} over the new segments only (the delta). Each term of the delta is looked up in the terms
+ * dictionaries of the base segments in order to find the global ordinal it shares with the base, or the position at which
+ * it is inserted between the terms of the base. The cost of the build therefore depends on the number of terms of the
+ * new segments and not on the number of terms of the base, and only the terms that are missing from the base add to the
+ * memory used by the mapping.
+ */
+final class IncrementalOrdinalMap implements Accountable {
+
+    private final Base base;
+    // the index of each segment of the reader in the base, or -1 if the segment is not part of the base
+    private final int[] readerToBase;
+    // the index of each segment of the base in the reader
+    private final int[] baseToReader;
+    @Nullable
+    private final Delta delta;
+    private final boolean incremental;
+
+    private IncrementalOrdinalMap(Base base, int[] readerToBase, @Nullable Delta delta, boolean incremental) {
+        this.base = base;
+        this.incremental = incremental;
+        this.readerToBase = readerToBase;
+        this.baseToReader = new int[base.coreKeys.length];
+        for (int i = 0; i < readerToBase.length; i++) {
+            if (readerToBase[i] >= 0) {
+                baseToReader[readerToBase[i]] = i;
+            }
+        }
+        this.delta = delta;
+    }
+
+    /**
+     * Builds the global ordinals of the provided segments, reusing the base of the previous build if all of its segments are
+     * still part of the reader and hold at least as many documents as the new segments. Otherwise all segments are merged
+     * and become the base of the next build.
+     *
+     * @param leaves the segments of the reader
+     * @param subs   the ordinals of each segment of the reader
+     */
+    static IncrementalOrdinalMap build(@Nullable Base previous, List<LeafReaderContext> leaves,
+                                       SortedSetDocValues[] subs) throws IOException {
+        assert leaves.size() == subs.length;
+        if (previous != null) {
+            final int[] readerToBase = previous.match(leaves, subs);
+            if (readerToBase != null) {
+                return buildIncremental(previous, readerToBase, subs);
+            }
+        }
+        final IndexReader.CacheKey[] coreKeys = new IndexReader.CacheKey[leaves.size()];
+        final long[] valueCounts = new long[subs.length];
+        for (int i = 0; i < leaves.size(); i++) {
+            final IndexReader.CacheHelper cacheHelper = leaves.get(i).reader().getCoreCacheHelper();
+            coreKeys[i] = cacheHelper == null ? null : cacheHelper.getKey();
+            valueCounts[i] = subs[i].getValueCount();
+        }
+        final int[] identity = new int[subs.length];
+        for (int i = 0; i < identity.length; i++) {
+            identity[i] = i;
+        }
+        final Base base = new Base(OrdinalMap.build(null, subs, PackedInts.DEFAULT), coreKeys, valueCounts);
+        return new IncrementalOrdinalMap(base, identity, null, false);
+    }
+
+    private static IncrementalOrdinalMap buildIncremental(Base base, int[] readerToBase, SortedSetDocValues[] subs) throws IOException {
+        final int numBaseSegments = base.coreKeys.length;
+        if (numBaseSegments == subs.length) {
+            // only deletions changed, the base covers all segments
+            return new IncrementalOrdinalMap(base, readerToBase, null, true);
+        }
+        final TermsEnum[] baseTerms = new TermsEnum[numBaseSegments];
+        final SortedSetDocValues[] deltaSubs = new SortedSetDocValues[subs.length - numBaseSegments];
+        final int[] readerToDelta = new int[subs.length];
+        final int[] deltaToReader = new int[deltaSubs.length];
+        int deltaIndex = 0;
+        for (int i = 0; i < subs.length; i++) {
+            if (readerToBase[i] >= 0) {
+                baseTerms[readerToBase[i]] = subs[i].termsEnum();
+                readerToDelta[i] = -1;
+            } else {
+                deltaSubs[deltaIndex] = subs[i];
+                deltaToReader[deltaIndex] = i;
+                readerToDelta[i] = deltaIndex++;
+            }
+        }
+        final OrdinalMap deltaMap = OrdinalMap.build(null, deltaSubs, PackedInts.DEFAULT);
+        final LongValues[] baseGlobalOrds = new LongValues[numBaseSegments];
+        for (int i = 0; i < numBaseSegments; i++) {
+            baseGlobalOrds[i] = base.map.getGlobalOrds(i);
+        }
+
+        final PackedLongValues.Builder deltaToGlobal = PackedLongValues.monotonicBuilder(PackedInts.COMPACT);
+        final PackedLongValues.Builder insertionPoints = PackedLongValues.monotonicBuilder(PackedInts.COMPACT);
+        final PackedLongValues.Builder newTermDeltaOrds = PackedLongValues.monotonicBuilder(PackedInts.COMPACT);
+        final boolean[] exhausted = new boolean[numBaseSegments];
+        long numNewTerms = 0;
+        for (long deltaOrd = 0; deltaOrd < deltaMap.getValueCount(); deltaOrd++) {
+            final BytesRef term = deltaSubs[deltaMap.getFirstSegmentNumber(deltaOrd)].lookupOrd(deltaMap.getFirstSegmentOrd(deltaOrd));
+            // the global ordinal of the smallest term of the base that is greater than or equal to the term
+            long ceilOrd = base.map.getValueCount();
+            boolean found = false;
+            for (int i = 0; i < numBaseSegments; i++) {
+                if (exhausted[i]) {
+                    continue;
+                }
+                // the terms of the delta are visited in order so the terms enums of the base only move forward
+                final TermsEnum.SeekStatus status = baseTerms[i].seekCeil(term);
+                if (status == TermsEnum.SeekStatus.END) {
+                    exhausted[i] = true;
+                    continue;
+                }
+                found |= status == TermsEnum.SeekStatus.FOUND;
+                ceilOrd = Math.min(ceilOrd, baseGlobalOrds[i].get(baseTerms[i].ord()));
+            }
+            // all new terms that were added so far sort before the term
+            deltaToGlobal.add(ceilOrd + numNewTerms);
+            if (found == false) {
+                insertionPoints.add(ceilOrd);
+                newTermDeltaOrds.add(deltaOrd);
+                numNewTerms++;
+            }
+        }
+        final Delta delta = new Delta(deltaMap, readerToDelta, deltaToReader, deltaToGlobal.build(), insertionPoints.build(),
+            newTermDeltaOrds.build());
+        return new IncrementalOrdinalMap(base, readerToBase, delta, true);
+    }
+
+    /**
+     * Returns the base of this map, which can be reused by the next build.
+     */
+    Base base() {
+        return base;
+    }
+
+    /**
+     * Returns <code>true</code> if this map reused the base of a previous build.
+     */
+    boolean isIncremental() {
+        return incremental;
+    }
+
+    /**
+     * Returns the underlying {@link OrdinalMap} if it maps all segments of the reader on its own, <code>null</code> otherwise.
+     */
+    @Nullable
+    OrdinalMap getFlatOrdinalMap() {
+        return delta == null && isIdentity(readerToBase) ? base.map : null;
+    }
+
+    long getValueCount() {
+        return base.map.getValueCount() + (delta == null ? 0 : delta.insertionPoints.size());
+    }
+
+    /**
+     * Returns the mapping from the ordinals of the segment at the provided index of the reader to global ordinals.
+     */
+    LongValues getGlobalOrds(int segmentIndex) {
+        if (delta == null || readerToBase[segmentIndex] >= 0) {
+            final LongValues segmentToBase = base.map.getGlobalOrds(readerToBase[segmentIndex]);
+            if (delta == null || delta.insertionPoints.size() == 0) {
+                return segmentToBase;
+            }
+            return new LongValues() {
+                @Override
+                public long get(long index) {
+                    final long baseOrd = segmentToBase.get(index);
+                    return baseOrd + delta.countNewTermsBefore(baseOrd);
+                }
+            };
+        }
+        final LongValues segmentToDelta = delta.map.getGlobalOrds(delta.readerToDelta[segmentIndex]);
+        return new LongValues() {
+            @Override
+            public long get(long index) {
+                return delta.deltaToGlobal.get(segmentToDelta.get(index));
+            }
+        };
+    }
+
+    /**
+     * Returns the index in the reader of the first segment that contains the term of the provided global ordinal.
+     */
+    int getFirstSegmentNumber(long globalOrd) {
+        if (delta == null) {
+            return baseToReader[base.map.getFirstSegmentNumber(globalOrd)];
+        }
+        final long newTermsBefore = delta.countNewTermsBeforeGlobal(globalOrd);
+        if (delta.isNewTerm(newTermsBefore, globalOrd)) {
+            final long deltaOrd = delta.newTermDeltaOrds.get(newTermsBefore);
+            return delta.deltaToReader[delta.map.getFirstSegmentNumber(deltaOrd)];
+        }
+        return baseToReader[base.map.getFirstSegmentNumber(globalOrd - newTermsBefore)];
+    }
+
+    /**
+     * Returns the ordinal of the term of the provided global ordinal in the segment returned by
+     * {@link #getFirstSegmentNumber(long)}.
+     */
+    long getFirstSegmentOrd(long globalOrd) {
+        if (delta == null) {
+            return base.map.getFirstSegmentOrd(globalOrd);
+        }
+        final long newTermsBefore = delta.countNewTermsBeforeGlobal(globalOrd);
+        if (delta.isNewTerm(newTermsBefore, globalOrd)) {
+            return delta.map.getFirstSegmentOrd(delta.newTermDeltaOrds.get(newTermsBefore));
+        }
+        return base.map.getFirstSegmentOrd(globalOrd - newTermsBefore);
+    }
+
+    @Override
+    public long ramBytesUsed() {
+        return base.map.ramBytesUsed() + (delta == null ? 0 : delta.ramBytesUsed());
+    }
+
+    @Override
+    public String toString() {
+        return "IncrementalOrdinalMap(base_segments=" + base.coreKeys.length + ",segments=" + readerToBase.length + ")";
+    }
+
+    private static boolean isIdentity(int[] mapping) {
+        for (int i = 0; i < mapping.length; i++) {
+            if (mapping[i] != i) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * The {@link OrdinalMap} of a set of segments, identified by their core cache keys, that can be reused as long as these
+     * segments are part of the reader.
+     */
+    static final class Base {
+        private final OrdinalMap map;
+        private final IndexReader.CacheKey[] coreKeys;
+        private final long[] valueCounts;
+
+        private Base(OrdinalMap map, IndexReader.CacheKey[] coreKeys, long[] valueCounts) {
+            this.map = map;
+            this.coreKeys = coreKeys;
+            this.valueCounts = valueCounts;
+        }
+
+        /**
+         * Returns the index of each segment of the provided reader in this base, or <code>null</code> if this base cannot be
+         * reused for the reader.
+         */
+        @Nullable
+        int[] match(List<LeafReaderContext> leaves, SortedSetDocValues[] subs) {
+            final int[] readerToBase = new int[leaves.size()];
+            Arrays.fill(readerToBase, -1);
+            int matched = 0;
+            long baseDocs = 0;
+            long otherDocs = 0;
+            for (int i = 0; i < leaves.size(); i++) {
+                final IndexReader.CacheHelper cacheHelper = leaves.get(i).reader().getCoreCacheHelper();
+                final int baseIndex = cacheHelper == null ? -1 : Arrays.asList(coreKeys).indexOf(cacheHelper.getKey());
+                if (baseIndex >= 0) {
+                    if (valueCounts[baseIndex] != subs[i].getValueCount()) {
+                        // the segment is wrapped in a way that changes its terms
+                        return null;
+                    }
+                    readerToBase[i] = baseIndex;
+                    matched++;
+                    baseDocs += leaves.get(i).reader().maxDoc();
+                } else {
+                    otherDocs += leaves.get(i).reader().maxDoc();
+                }
+            }
+            if (matched != coreKeys.length || otherDocs > baseDocs) {
+                // a segment of the base was merged away, or the new segments have grown too big to be merged on every build
+                return null;
+            }
+            return readerToBase;
+        }
+    }
+
+    /**
+     * The {@link OrdinalMap} of the segments that are not part of the base, and the position of its terms among the global
+     * terms of the base. A term of the delta that is missing from the base (a new term) with insertion point <code>p</code>
+     * sorts right before the term of the base with global ordinal <code>p</code> in the base, so the <code>k</code>-th new
+     * term gets the global ordinal <code>p + k</code> and a term of the base with ordinal <code>b</code> in the base is
+     * shifted by the number of new terms whose insertion point is less than or equal to <code>b</code>.
+     */
+    private static final class Delta implements Accountable {
+        private final OrdinalMap map;
+        // the index of each segment of the reader in the delta, or -1 if the segment is part of the base
+        private final int[] readerToDelta;
+        // the index of each segment of the delta in the reader
+        private final int[] deltaToReader;
+        private final PackedLongValues deltaToGlobal;
+        // the insertion point of each new term in the global ordinals of the base, in ascending order
+        private final PackedLongValues insertionPoints;
+        // the ordinal of each new term in the delta
+        private final PackedLongValues newTermDeltaOrds;
+
+        private Delta(OrdinalMap map, int[] readerToDelta, int[] deltaToReader, PackedLongValues deltaToGlobal,
+                      PackedLongValues insertionPoints, PackedLongValues newTermDeltaOrds) {
+            this.map = map;
+            this.readerToDelta = readerToDelta;
+            this.deltaToReader = deltaToReader;
+            this.deltaToGlobal = deltaToGlobal;
+            this.insertionPoints = insertionPoints;
+            this.newTermDeltaOrds = newTermDeltaOrds;
+        }
+
+        /**
+         * Returns the number of new terms that sort before the term of the provided ordinal of the base.
+         */
+        long countNewTermsBefore(long baseOrd) {
+            long low = 0;
+            long high = insertionPoints.size();
+            while (low < high) {
+                final long mid = (low + high) >>> 1;
+                if (insertionPoints.get(mid) <= baseOrd) {
+                    low = mid + 1;
+                } else {
+                    high = mid;
+                }
+            }
+            return low;
+        }
+
+        /**
+         * Returns the number of new terms whose global ordinal is less than the provided global ordinal.
+         */
+        long countNewTermsBeforeGlobal(long globalOrd) {
+            long low = 0;
+            long high = insertionPoints.size();
+            while (low < high) {
+                final long mid = (low + high) >>> 1;
+                if (insertionPoints.get(mid) + mid < globalOrd) {
+                    low = mid + 1;
+                } else {
+                    high = mid;
+                }
+            }
+            return low;
+        }
+
+        /**
+         * Returns <code>true</code> if the provided global ordinal is the one of the new term at the provided index.
+         */
+        boolean isNewTerm(long newTermIndex, long globalOrd) {
+            return newTermIndex < insertionPoints.size() && insertionPoints.get(newTermIndex) + newTermIndex == globalOrd;
+        }
+
+        @Override
+        public long ramBytesUsed() {
+            return map.ramBytesUsed() + deltaToGlobal.ramBytesUsed() + insertionPoints.ramBytesUsed()
+                + newTermDeltaOrds.ramBytesUsed();
+        }
+    }
+}
@@ -32,6 +32,7 @@ import org.elasticsearch.index.fielddata.AtomicOrdinalsFieldData;
 import org.elasticsearch.index.fielddata.IndexFieldDataCache;
 import org.elasticsearch.index.fielddata.IndexOrdinalsFieldData;
 import org.elasticsearch.index.fielddata.ordinals.GlobalOrdinalsBuilder;
+import org.elasticsearch.index.fielddata.ordinals.IncrementalGlobalOrdinals;
 import org.elasticsearch.indices.breaker.CircuitBreakerService;
 
 import java.io.IOException;
@@ -41,6 +42,7 @@ public abstract class AbstractIndexOrdinalsFieldData extends AbstractIndexFieldD
     private final double minFrequency, maxFrequency;
     private final int minSegmentSize;
     protected final CircuitBreakerService breakerService;
+    private final IncrementalGlobalOrdinals incrementalGlobalOrdinals = new IncrementalGlobalOrdinals();
 
     protected AbstractIndexOrdinalsFieldData(IndexSettings indexSettings, String fieldName,
             IndexFieldDataCache cache, CircuitBreakerService breakerService,
@@ -95,7 +97,7 @@ public abstract class AbstractIndexOrdinalsFieldData extends AbstractIndexFieldD
     @Override
     public IndexOrdinalsFieldData localGlobalDirect(DirectoryReader indexReader) throws Exception {
         return GlobalOrdinalsBuilder.build(indexReader, this, indexSettings, breakerService, logger,
-                AbstractAtomicOrdinalsFieldData.DEFAULT_SCRIPT_FUNCTION);
+                AbstractAtomicOrdinalsFieldData.DEFAULT_SCRIPT_FUNCTION, incrementalGlobalOrdinals);
     }
 
     @Override
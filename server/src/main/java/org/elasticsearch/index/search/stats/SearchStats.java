@@ -19,11 +19,13 @@
 
 package org.elasticsearch.index.search.stats;
 
+import org.elasticsearch.Version;
 import org.elasticsearch.common.Nullable;
 import org.elasticsearch.common.Strings;
 import org.elasticsearch.common.io.stream.StreamInput;
 import org.elasticsearch.common.io.stream.StreamOutput;
 import org.elasticsearch.common.io.stream.Streamable;
+import org.elasticsearch.common.unit.ByteSizeValue;
 import org.elasticsearch.common.unit.TimeValue;
 import org.elasticsearch.common.xcontent.ToXContent;
 import org.elasticsearch.common.xcontent.ToXContentFragment;
@@ -240,6 +242,8 @@ public class SearchStats implements Streamable, ToXContentFragment {
 
     Stats totalStats;
     long openContexts;
+    long openReaderContexts;
+    long pinnedSegmentsSizeInBytes;
 
     @Nullable
     Map<String, Stats> groupStats;
@@ -249,8 +253,15 @@ public class SearchStats implements Streamable, ToXContentFragment {
     }
 
     public SearchStats(Stats totalStats, long openContexts, @Nullable Map<String, Stats> groupStats) {
+        this(totalStats, openContexts, 0, 0, groupStats);
+    }
+
+    public SearchStats(Stats totalStats, long openContexts, long openReaderContexts, long pinnedSegmentsSizeInBytes,
+                       @Nullable Map<String, Stats> groupStats) {
         this.totalStats = totalStats;
         this.openContexts = openContexts;
+        this.openReaderContexts = openReaderContexts;
+        this.pinnedSegmentsSizeInBytes = pinnedSegmentsSizeInBytes;
         this.groupStats = groupStats;
     }
 
@@ -264,6 +275,8 @@ public class SearchStats implements Streamable, ToXContentFragment {
         }
         addTotals(searchStats);
         openContexts += searchStats.openContexts;
+        openReaderContexts += searchStats.openReaderContexts;
+        pinnedSegmentsSizeInBytes += searchStats.pinnedSegmentsSizeInBytes;
         if (includeTypes && searchStats.groupStats != null && !searchStats.groupStats.isEmpty()) {
             if (groupStats == null) {
                 groupStats = new HashMap<>(searchStats.groupStats.size());
@@ -294,6 +307,24 @@ public class SearchStats implements Streamable, ToXContentFragment {
         return this.openContexts;
     }
 
+    /**
+     * The number of reader contexts that are held open by points in time.
+     */
+    public long getOpenReaderContexts() {
+        return this.openReaderContexts;
+    }
+
+    /**
+     * The size of the segments that are kept from being deleted by the reader contexts of points in time.
+     */
+    public ByteSizeValue getPinnedSegmentsSize() {
+        return new ByteSizeValue(pinnedSegmentsSizeInBytes);
+    }
+
+    public long getPinnedSegmentsSizeInBytes() {
+        return this.pinnedSegmentsSizeInBytes;
+    }
+
     @Nullable
     public Map<String, Stats> getGroupStats() {
         return this.groupStats;
@@ -303,6 +334,8 @@ public class SearchStats implements Streamable, ToXContentFragment {
     public XContentBuilder toXContent(XContentBuilder builder, ToXContent.Params params) throws IOException {
         builder.startObject(Fields.SEARCH);
         builder.field(Fields.OPEN_CONTEXTS, openContexts);
+        builder.field(Fields.OPEN_READER_CONTEXTS, openReaderContexts);
+        builder.byteSizeField(Fields.PINNED_SEGMENTS_SIZE_IN_BYTES, Fields.PINNED_SEGMENTS_SIZE, pinnedSegmentsSizeInBytes);
         totalStats.toXContent(builder, params);
         if (groupStats != null && !groupStats.isEmpty()) {
             builder.startObject(Fields.GROUPS);
@@ -325,6 +358,9 @@ public class SearchStats implements Streamable, ToXContentFragment {
     static final class Fields {
         static final String SEARCH = "search";
         static final String OPEN_CONTEXTS = "open_contexts";
+        static final String OPEN_READER_CONTEXTS = "open_reader_contexts";
+        static final String PINNED_SEGMENTS_SIZE = "pinned_segments_size";
+        static final String PINNED_SEGMENTS_SIZE_IN_BYTES = "pinned_segments_size_in_bytes";
         static final String GROUPS = "groups";
         static final String QUERY_TOTAL = "query_total";
         static final String QUERY_TIME = "query_time";
@@ -348,6 +384,10 @@ public class SearchStats implements Streamable, ToXContentFragment {
     public void readFrom(StreamInput in) throws IOException {
         totalStats = Stats.readStats(in);
         openContexts = in.readVLong();
+        if (in.getVersion().onOrAfter(Version.V_6_2_3)) {
+            openReaderContexts = in.readVLong();
+            pinnedSegmentsSizeInBytes = in.readVLong();
+        }
         if (in.readBoolean()) {
             groupStats = in.readMap(StreamInput::readString, Stats::readStats);
         }
@@ -357,6 +397,10 @@ public class SearchStats implements Streamable, ToXContentFragment {
     public void writeTo(StreamOutput out) throws IOException {
         totalStats.writeTo(out);
         out.writeVLong(openContexts);
+        if (out.getVersion().onOrAfter(Version.V_6_2_3)) {
+            out.writeVLong(openReaderContexts);
+            out.writeVLong(pinnedSegmentsSizeInBytes);
+        }
         if (groupStats == null || groupStats.isEmpty()) {
             out.writeBoolean(false);
         } else {
@@ -24,6 +24,7 @@ import org.elasticsearch.common.metrics.CounterMetric;
 import org.elasticsearch.common.metrics.MeanMetric;
 import org.elasticsearch.common.regex.Regex;
 import org.elasticsearch.index.shard.SearchOperationListener;
+import org.elasticsearch.search.internal.ReaderContext;
 import org.elasticsearch.search.internal.SearchContext;
 
 import java.util.HashMap;
@@ -37,6 +38,8 @@ public final class ShardSearchStats implements SearchOperationListener {
 
     private final StatsHolder totalStats = new StatsHolder();
     private final CounterMetric openContexts = new CounterMetric();
+    private final CounterMetric openReaderContexts = new CounterMetric();
+    private final CounterMetric pinnedSegmentsSizeInBytes = new CounterMetric();
     private volatile Map<String, StatsHolder> groupsStats = emptyMap();
 
     /**
@@ -61,7 +64,7 @@ public final class ShardSearchStats implements SearchOperationListener {
                 }
             }
         }
-        return new SearchStats(total, openContexts.count(), groupsSt);
+        return new SearchStats(total, openContexts.count(), openReaderContexts.count(), pinnedSegmentsSizeInBytes.count(), groupsSt);
     }
 
     @Override
@@ -183,6 +186,19 @@ public final class ShardSearchStats implements SearchOperationListener {
         totalStats.scrollMetric.inc(TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - context.getOriginNanoTime()));
     }
 
+    @Override
+    public void onNewReaderContext(ReaderContext readerContext) {
+        openReaderContexts.inc();
+        pinnedSegmentsSizeInBytes.inc(readerContext.pinnedBytes());
+    }
+
+    @Override
+    public void onFreeReaderContext(ReaderContext readerContext) {
+        openReaderContexts.dec();
+        assert openReaderContexts.count() >= 0;
+        pinnedSegmentsSizeInBytes.dec(readerContext.pinnedBytes());
+    }
+
     static final class StatsHolder {
         public final MeanMetric queryMetric = new MeanMetric();
         public final MeanMetric fetchMetric = new MeanMetric();
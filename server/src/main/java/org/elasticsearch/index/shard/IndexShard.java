@@ -118,6 +118,7 @@ import org.elasticsearch.index.store.StoreFileMetaData;
 import org.elasticsearch.index.store.StoreStats;
 import org.elasticsearch.index.translog.Translog;
 import org.elasticsearch.index.translog.TranslogConfig;
+import org.elasticsearch.index.translog.TranslogGroupCommitter;
 import org.elasticsearch.index.translog.TranslogStats;
 import org.elasticsearch.index.warmer.ShardIndexWarmerService;
 import org.elasticsearch.index.warmer.WarmerStats;
@@ -159,6 +160,7 @@ import java.util.function.BiConsumer;
 import java.util.function.Consumer;
 import java.util.function.Supplier;
 import java.util.stream.Collectors;
+import java.util.stream.Stream;
 import java.util.stream.StreamSupport;
 
 import static org.elasticsearch.index.mapper.SourceToParse.source;
@@ -272,6 +274,8 @@ public class IndexShard extends AbstractIndexShardComponent implements IndicesCl
         this.indexSortSupplier = indexSortSupplier;
         this.indexEventListener = indexEventListener;
         this.threadPool = threadPool;
+        this.translogGroupCommitter = new TranslogGroupCommitter(logger, threadPool, indexSettings::getTranslogGroupCommitWindow,
+            indexSettings::getTranslogGroupCommitMaxBytes, location -> ensureTranslogSynced(Stream.of(location)));
         this.mapperService = mapperService;
         this.indexCache = indexCache;
         this.internalIndexingStats = new InternalIndexingStats();
@@ -670,28 +674,62 @@ public class IndexShard extends AbstractIndexShardComponent implements IndicesCl
     public Engine.IndexResult applyIndexOperationOnPrimary(long version, VersionType versionType, SourceToParse sourceToParse,
                                                            long autoGeneratedTimestamp, boolean isRetry,
                                                            Consumer<Mapping> onMappingUpdate) throws IOException {
+        return applyIndexOperationOnPrimary(version, versionType, sourceToParse, null, autoGeneratedTimestamp, isRetry,
+            onMappingUpdate);
+    }
+
+    /**
+     * Executes an index operation on the primary.
+     *
+     * @param preParsedDoc the document that was parsed from the provided source ahead of the execution with
+     *                     {@link #preParseIndexOperationOnPrimary(SourceToParse)}, the source is parsed again if the mapping
+     *                     changed since then
+     */
+    public Engine.IndexResult applyIndexOperationOnPrimary(long version, VersionType versionType, SourceToParse sourceToParse,
+                                                           @Nullable PreParsedDocument preParsedDoc, long autoGeneratedTimestamp,
+                                                           boolean isRetry, Consumer<Mapping> onMappingUpdate) throws IOException {
         return applyIndexOperation(SequenceNumbers.UNASSIGNED_SEQ_NO, primaryTerm, version, versionType, autoGeneratedTimestamp,
-            isRetry, Engine.Operation.Origin.PRIMARY, sourceToParse, onMappingUpdate);
+            isRetry, Engine.Operation.Origin.PRIMARY, sourceToParse, preParsedDoc, onMappingUpdate);
+    }
+
+    /**
+     * Parses the provided source with the current mapping of its type without executing the index operation, so that the
+     * document can be parsed on another thread than the one that executes the operation. This method does not require an
+     * operation permit.
+     */
+    public PreParsedDocument preParseIndexOperationOnPrimary(SourceToParse sourceToParse) {
+        final long startTime = System.nanoTime();
+        final DocumentMapperForType docMapper = docMapper(sourceToParse.type());
+        final ParsedDocument doc = docMapper.getDocumentMapper().parse(sourceToParse);
+        return new PreParsedDocument(docMapper, doc, System.nanoTime() - startTime);
     }
 
     public Engine.IndexResult applyIndexOperationOnReplica(long seqNo, long version, VersionType versionType,
                                                            long autoGeneratedTimeStamp, boolean isRetry, SourceToParse sourceToParse,
                                                            Consumer<Mapping> onMappingUpdate) throws IOException {
         return applyIndexOperation(seqNo, primaryTerm, version, versionType, autoGeneratedTimeStamp, isRetry,
-            Engine.Operation.Origin.REPLICA, sourceToParse, onMappingUpdate);
+            Engine.Operation.Origin.REPLICA, sourceToParse, null, onMappingUpdate);
     }
 
     private Engine.IndexResult applyIndexOperation(long seqNo, long opPrimaryTerm, long version, VersionType versionType,
                                                    long autoGeneratedTimeStamp, boolean isRetry, Engine.Operation.Origin origin,
-                                                   SourceToParse sourceToParse, Consumer<Mapping> onMappingUpdate) throws IOException {
+                                                   SourceToParse sourceToParse, @Nullable PreParsedDocument preParsedDoc,
+                                                   Consumer<Mapping> onMappingUpdate) throws IOException {
         assert opPrimaryTerm <= this.primaryTerm : "op term [ " + opPrimaryTerm + " ] > shard term [" + this.primaryTerm + "]";
         assert versionType.validateVersionForWrites(version);
         ensureWriteAllowed(origin);
         Engine.Index operation;
         try {
-            operation = prepareIndex(docMapper(sourceToParse.type()), indexSettings.getIndexVersionCreated(), sourceToParse, seqNo,
+            final DocumentMapperForType docMapper = docMapper(sourceToParse.type());
+            if (preParsedDoc != null && preParsedDoc.isParsedWith(docMapper)) {
+                operation = prepareIndex(docMapper, indexSettings.getIndexVersionCreated(), preParsedDoc.parsedDoc(),
+                    System.nanoTime() - preParsedDoc.parseTimeInNanos(), seqNo, opPrimaryTerm, version, versionType, origin,
+                    autoGeneratedTimeStamp, isRetry);
+            } else {
+                operation = prepareIndex(docMapper, indexSettings.getIndexVersionCreated(), sourceToParse, seqNo,
                     opPrimaryTerm, version, versionType, origin,
-                autoGeneratedTimeStamp, isRetry);
+                    autoGeneratedTimeStamp, isRetry);
+            }
             Mapping update = operation.parsedDoc().dynamicMappingsUpdate();
             if (update != null) {
                 // wrap this in the outer catch block, as the master might also throw a MapperParsingException when updating the mapping
@@ -713,6 +751,13 @@ public class IndexShard extends AbstractIndexShardComponent implements IndicesCl
             boolean isRetry) {
         long startTime = System.nanoTime();
         ParsedDocument doc = docMapper.getDocumentMapper().parse(source);
+        return prepareIndex(docMapper, indexCreatedVersion, doc, startTime, seqNo, primaryTerm, version, versionType, origin,
+            autoGeneratedIdTimestamp, isRetry);
+    }
+
+    private static Engine.Index prepareIndex(DocumentMapperForType docMapper, Version indexCreatedVersion, ParsedDocument doc,
+            long startTime, long seqNo, long primaryTerm, long version, VersionType versionType, Engine.Operation.Origin origin,
+            long autoGeneratedIdTimestamp, boolean isRetry) {
         if (docMapper.getMapping() != null) {
             doc.addDynamicMappingsUpdate(docMapper.getMapping());
         }
@@ -1197,7 +1242,7 @@ public class IndexShard extends AbstractIndexShardComponent implements IndicesCl
                 } finally {
                     // playing safe here and close the engine even if the above succeeds - close can be called multiple times
                     // Also closing refreshListeners to prevent us from accumulating any more listeners
-                    IOUtils.close(engine, refreshListeners);
+                    IOUtils.close(engine, refreshListeners, translogGroupCommitter);
                     indexShardOperationPermits.close();
                 }
             }
@@ -1247,7 +1292,7 @@ public class IndexShard extends AbstractIndexShardComponent implements IndicesCl
                 result = applyIndexOperation(index.seqNo(), index.primaryTerm(), index.version(),
                     index.versionType().versionTypeForReplicationAndRecovery(), index.getAutoGeneratedIdTimestamp(), true, origin,
                     source(shardId.getIndexName(), index.type(), index.id(), index.source(), XContentFactory.xContentType(index.source()))
-                        .routing(index.routing()).parent(index.parent()), onMappingUpdate);
+                        .routing(index.routing()).parent(index.parent()), null, onMappingUpdate);
                 break;
             case DELETE:
                 final Translog.Delete delete = (Translog.Delete) operation;
@@ -2334,31 +2379,43 @@ public class IndexShard extends AbstractIndexShardComponent implements IndicesCl
     private final AsyncIOProcessor<Translog.Location> translogSyncProcessor = new AsyncIOProcessor<Translog.Location>(logger, 1024) {
         @Override
         protected void write(List<Tuple<Translog.Location, Consumer<Exception>>> candidates) throws IOException {
-            try {
-                final Engine engine = getEngine();
-                engine.getTranslog().ensureSynced(candidates.stream().map(Tuple::v1));
-            } catch (AlreadyClosedException ex) {
-                // that's fine since we already synced everything on engine close - this also is conform with the methods
-                // documentation
-            } catch (IOException ex) { // if this fails we are in deep shit - fail the request
-                logger.debug("failed to sync translog", ex);
-                throw ex;
-            }
+            ensureTranslogSynced(candidates.stream().map(Tuple::v1));
         }
     };
 
+    private final TranslogGroupCommitter translogGroupCommitter;
+
+    private void ensureTranslogSynced(Stream<Translog.Location> locations) throws IOException {
+        try {
+            final Engine engine = getEngine();
+            engine.getTranslog().ensureSynced(locations);
+        } catch (AlreadyClosedException ex) {
+            // that's fine since we already synced everything on engine close - this also is conform with the methods
+            // documentation
+        } catch (IOException ex) { // if this fails we are in deep shit - fail the request
+            logger.debug("failed to sync translog", ex);
+            throw ex;
+        }
+    }
+
     /**
      * Syncs the given location with the underlying storage unless already synced. This method might return immediately without
      * actually fsyncing the location until the sync listener is called. Yet, unless there is already another thread fsyncing
      * the transaction log the caller thread will be hijacked to run the fsync for all pending fsync operations.
      * This method allows indexing threads to continue indexing without blocking on fsync calls. We ensure that there is only
-     * one thread blocking on the sync an all others can continue indexing.
+     * one thread blocking on the sync an all others can continue indexing. If group commits are enabled through
+     * {@link IndexSettings#INDEX_TRANSLOG_GROUP_COMMIT_WINDOW_SETTING} the caller thread is never hijacked, instead the location is
+     * synced together with the locations of concurrent callers on a background thread.
      * NOTE: if the syncListener throws an exception when it's processed the exception will only be logged. Users should make sure that the
      * listener handles all exception cases internally.
      */
     public final void sync(Translog.Location location, Consumer<Exception> syncListener) {
         verifyNotClosed();
-        translogSyncProcessor.put(location, syncListener);
+        if (indexSettings.getTranslogGroupCommitWindow().nanos() > 0) {
+            translogGroupCommitter.put(location, syncListener);
+        } else {
+            translogSyncProcessor.put(location, syncListener);
+        }
     }
 
     public final void sync() throws IOException {
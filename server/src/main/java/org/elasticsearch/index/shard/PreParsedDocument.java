@@ -0,0 +1,62 @@
+/*
+ * Licensed to Elasticsearch under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Elasticsearch licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.elasticsearch.index.shard;
+
+import org.elasticsearch.index.mapper.DocumentMapperForType;
+import org.elasticsearch.index.mapper.ParsedDocument;
+
+/**
+ * A document that was parsed for an index operation on the primary ahead of the execution of the operation, see
+ * {@link IndexShard#preParseIndexOperationOnPrimary(org.elasticsearch.index.mapper.SourceToParse)}. The parsed document
+ * is only used if the mapping of its type did not change until the operation is executed, otherwise the source is parsed
+ * again.
+ */
+public final class PreParsedDocument {
+
+    private final DocumentMapperForType docMapper;
+    private final ParsedDocument parsedDoc;
+    private final long parseTimeInNanos;
+
+    PreParsedDocument(DocumentMapperForType docMapper, ParsedDocument parsedDoc, long parseTimeInNanos) {
+        this.docMapper = docMapper;
+        this.parsedDoc = parsedDoc;
+        this.parseTimeInNanos = parseTimeInNanos;
+    }
+
+    /**
+     * Returns <code>true</code> if the document was parsed with the provided mapper. Documents of types whose mapping
+     * is created dynamically are never reused since the created mapping must be applied first.
+     */
+    boolean isParsedWith(DocumentMapperForType currentDocMapper) {
+        return docMapper.getMapping() == null && currentDocMapper.getMapping() == null
+            && docMapper.getDocumentMapper() == currentDocMapper.getDocumentMapper();
+    }
+
+    ParsedDocument parsedDoc() {
+        return parsedDoc;
+    }
+
+    /**
+     * The time it took to parse the document, which is accounted to the index operation.
+     */
+    long parseTimeInNanos() {
+        return parseTimeInNanos;
+    }
+}
@@ -22,6 +22,7 @@ import org.apache.logging.log4j.Logger;
 import org.apache.logging.log4j.message.ParameterizedMessage;
 import org.apache.logging.log4j.util.Supplier;
 import org.elasticsearch.ExceptionsHelper;
+import org.elasticsearch.search.internal.ReaderContext;
 import org.elasticsearch.search.internal.SearchContext;
 import org.elasticsearch.transport.TransportRequest;
 
@@ -106,6 +107,20 @@ public interface SearchOperationListener {
      */
     default void onFreeScrollContext(SearchContext context) {};
 
+    /**
+     * Executed when a {@link ReaderContext} was opened for a point in time
+     * @param readerContext the opened reader context
+     */
+    default void onNewReaderContext(ReaderContext readerContext) {};
+
+    /**
+     * Executed when the {@link ReaderContext} of a point in time is freed.
+     * This happens either when the point in time is closed or if it was
+     * idle for longer than its keep alive.
+     * @param readerContext the freed reader context
+     */
+    default void onFreeReaderContext(ReaderContext readerContext) {};
+
     /**
      * Executed prior to using a {@link SearchContext} that has been retrieved
      * from the active contexts. If the context is deemed invalid a runtime
@@ -237,6 +252,28 @@ public interface SearchOperationListener {
             }
         }
 
+        @Override
+        public void onNewReaderContext(ReaderContext readerContext) {
+            for (SearchOperationListener listener : listeners) {
+                try {
+                    listener.onNewReaderContext(readerContext);
+                } catch (Exception e) {
+                    logger.warn((Supplier<?>) () -> new ParameterizedMessage("onNewReaderContext listener [{}] failed", listener), e);
+                }
+            }
+        }
+
+        @Override
+        public void onFreeReaderContext(ReaderContext readerContext) {
+            for (SearchOperationListener listener : listeners) {
+                try {
+                    listener.onFreeReaderContext(readerContext);
+                } catch (Exception e) {
+                    logger.warn((Supplier<?>) () -> new ParameterizedMessage("onFreeReaderContext listener [{}] failed", listener), e);
+                }
+            }
+        }
+
         @Override
         public void validateSearchContext(SearchContext context, TransportRequest request) {
             Exception exception = null;
@@ -20,8 +20,10 @@
 package org.elasticsearch.index.translog;
 
 import org.apache.lucene.store.BufferedChecksum;
+import org.elasticsearch.common.bytes.BytesReference;
 import org.elasticsearch.common.io.stream.FilterStreamInput;
 import org.elasticsearch.common.io.stream.StreamInput;
+import org.elasticsearch.common.lease.Releasable;
 
 import java.io.EOFException;
 import java.io.IOException;
@@ -70,6 +72,17 @@ public final class BufferedChecksumStreamInput extends FilterStreamInput {
         digest.update(b, offset, len);
     }
 
+    @Override
+    protected BytesReference readRetainedBytesReference(int length) throws IOException {
+        // all bytes must go through the digest, so never hand out slices of the delegate
+        return readBytesReference(length);
+    }
+
+    @Override
+    public Releasable retainBuffers() {
+        return () -> {};
+    }
+
     @Override
     public void reset() throws IOException {
         delegate.reset();
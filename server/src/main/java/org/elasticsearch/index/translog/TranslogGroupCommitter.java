@@ -0,0 +1,209 @@
+/*
+ * Licensed to Elasticsearch under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Elasticsearch licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.elasticsearch.index.translog;
+
+import org.apache.logging.log4j.Logger;
+import org.elasticsearch.common.CheckedConsumer;
+import org.elasticsearch.common.collect.Tuple;
+import org.elasticsearch.common.unit.ByteSizeValue;
+import org.elasticsearch.common.unit.TimeValue;
+import org.elasticsearch.common.util.concurrent.AbstractRunnable;
+import org.elasticsearch.threadpool.ThreadPool;
+
+import java.io.Closeable;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+
+/**
+ * Collects translog sync requests of concurrent write operations into groups and fsyncs each group once. A group is committed
+ * once its window has elapsed since its first request or as soon as its requests cover more than the configured number of bytes,
+ * whichever comes first. Unlike {@link org.elasticsearch.common.util.concurrent.AsyncIOProcessor} the calling threads never run
+ * the fsync themselves: the fsync as well as the notification of the listeners happen on the {@link ThreadPool.Names#GENERIC}
+ * thread pool, so write threads can move on to the next request right away.
+ */
+public final class TranslogGroupCommitter implements Closeable {
+
+    private final Logger logger;
+    private final ThreadPool threadPool;
+    private final Supplier<TimeValue> window;
+    private final Supplier<ByteSizeValue> maxBytes;
+    private final CheckedConsumer<Translog.Location, Exception> syncer;
+
+    private Group current; // guarded by this
+    private boolean closed; // guarded by this
+
+    /**
+     * @param window   how long the first request of a group waits for other requests to join it
+     * @param maxBytes the number of bytes covered by the requests of a group that triggers its commit before the window has elapsed
+     * @param syncer   syncs the translog up to and including the given location
+     */
+    public TranslogGroupCommitter(Logger logger, ThreadPool threadPool, Supplier<TimeValue> window, Supplier<ByteSizeValue> maxBytes,
+                                  CheckedConsumer<Translog.Location, Exception> syncer) {
+        this.logger = logger;
+        this.threadPool = threadPool;
+        this.window = window;
+        this.maxBytes = maxBytes;
+        this.syncer = syncer;
+    }
+
+    /**
+     * Adds the given location to the current group. The listener is notified once the group has been synced, with <code>null</code>
+     * on success or the exception that prevented the sync.
+     */
+    public void put(Translog.Location location, Consumer<Exception> listener) {
+        Objects.requireNonNull(location, "location must not be null");
+        Objects.requireNonNull(listener, "listener must not be null");
+        final Group group;
+        final boolean first;
+        final boolean full;
+        final boolean inline;
+        synchronized (this) {
+            inline = closed;
+            if (closed) {
+                group = new Group();
+                group.add(location, listener);
+                first = false;
+                full = true;
+            } else {
+                if (current == null) {
+                    current = new Group();
+                    first = true;
+                } else {
+                    first = false;
+                }
+                group = current;
+                group.add(location, listener);
+                full = group.bytes >= maxBytes.get().getBytes();
+                if (full) {
+                    current = null;
+                }
+            }
+        }
+        if (full) {
+            if (inline) {
+                group.commit();
+            } else {
+                fork(group);
+            }
+        } else if (first) {
+            schedule(group);
+        }
+    }
+
+    private void schedule(Group group) {
+        try {
+            threadPool.schedule(window.get(), ThreadPool.Names.SAME, () -> {
+                detach(group);
+                fork(group);
+            });
+        } catch (RejectedExecutionException e) {
+            // the scheduler is shutting down, don't leave the listeners hanging
+            detach(group);
+            group.commit();
+        }
+    }
+
+    private void fork(Group group) {
+        // the flush pool may be busy with long running Lucene flushes, which is why syncs run on the generic pool
+        threadPool.executor(ThreadPool.Names.GENERIC).execute(new AbstractRunnable() {
+            @Override
+            public void onFailure(Exception e) {
+                group.fail(e);
+            }
+
+            @Override
+            protected void doRun() {
+                group.commit();
+            }
+        });
+    }
+
+    private synchronized void detach(Group group) {
+        if (current == group) {
+            current = null;
+        }
+    }
+
+    /**
+     * Syncs the pending group on the calling thread. Locations that are added after this call are synced on the calling thread too.
+     */
+    @Override
+    public void close() {
+        final Group group;
+        synchronized (this) {
+            closed = true;
+            group = current;
+            current = null;
+        }
+        if (group != null) {
+            group.commit();
+        }
+    }
+
+    private final class Group {
+
+        private final List<Tuple<Translog.Location, Consumer<Exception>>> candidates = new ArrayList<>();
+        private final AtomicBoolean committed = new AtomicBoolean();
+        private Translog.Location max;
+        private long bytes;
+
+        void add(Translog.Location location, Consumer<Exception> listener) {
+            candidates.add(new Tuple<>(location, listener));
+            bytes += location.size;
+            if (max == null || location.compareTo(max) > 0) {
+                max = location;
+            }
+        }
+
+        void commit() {
+            if (committed.compareAndSet(false, true)) {
+                Exception exception = null;
+                try {
+                    syncer.accept(max);
+                } catch (Exception e) {
+                    logger.debug("failed to sync translog", e);
+                    exception = e;
+                }
+                notifyListeners(exception);
+            }
+        }
+
+        void fail(Exception e) {
+            if (committed.compareAndSet(false, true)) {
+                notifyListeners(e);
+            }
+        }
+
+        private void notifyListeners(Exception exception) {
+            for (Tuple<Translog.Location, Consumer<Exception>> tuple : candidates) {
+                try {
+                    tuple.v2().accept(exception);
+                } catch (Exception e) {
+                    logger.warn("failed to notify callback", e);
+                }
+            }
+        }
+    }
+}
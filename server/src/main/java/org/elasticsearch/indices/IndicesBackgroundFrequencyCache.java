@@ -0,0 +1,374 @@
+/*
+ * Licensed to Elasticsearch under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Elasticsearch licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.elasticsearch.indices;
+
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.index.LeafReader;
+import org.apache.lucene.index.LeafReaderContext;
+import org.apache.lucene.index.PostingsEnum;
+import org.apache.lucene.index.Term;
+import org.apache.lucene.index.Terms;
+import org.apache.lucene.index.TermsEnum;
+import org.apache.lucene.search.DocIdSetIterator;
+import org.apache.lucene.search.IndexSearcher;
+import org.apache.lucene.search.Query;
+import org.apache.lucene.search.Scorer;
+import org.apache.lucene.search.Weight;
+import org.apache.lucene.util.Accountable;
+import org.apache.lucene.util.Bits;
+import org.apache.lucene.util.BytesRef;
+import org.apache.lucene.util.FixedBitSet;
+import org.apache.lucene.util.RamUsageEstimator;
+import org.elasticsearch.common.Nullable;
+import org.elasticsearch.common.cache.Cache;
+import org.elasticsearch.common.cache.CacheBuilder;
+import org.elasticsearch.common.cache.RemovalListener;
+import org.elasticsearch.common.cache.RemovalNotification;
+import org.elasticsearch.common.component.AbstractComponent;
+import org.elasticsearch.common.metrics.CounterMetric;
+import org.elasticsearch.common.settings.Setting;
+import org.elasticsearch.common.settings.Setting.Property;
+import org.elasticsearch.common.settings.Settings;
+import org.elasticsearch.common.unit.ByteSizeValue;
+import org.elasticsearch.common.util.concurrent.ConcurrentCollections;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Caches the background frequencies that the <code>significant_terms</code> aggregation looks up for its candidate terms, per
+ * segment, field and background filter. Without a background filter the frequency of a term in a segment is its doc freq, which
+ * counts deleted documents too, so entries are keyed on the core cache key of the segment and survive new deletes. With a background
+ * filter deleted documents are not counted, so entries are keyed on the cache key of the segment reader instead. Either way, after a
+ * refresh only the new segments need to be consulted, and entries are removed as soon as their segment is closed.
+ */
+public final class IndicesBackgroundFrequencyCache extends AbstractComponent implements RemovalListener<IndicesBackgroundFrequencyCache.Key,
+    Long>, Closeable {
+
+    public static final Setting<ByteSizeValue> INDICES_CACHE_BACKGROUND_FREQUENCIES_SIZE =
+        Setting.memorySizeSetting("indices.significant_terms.background_frequencies.cache.size", "1%", Property.NodeScope);
+
+    private static final long VALUE_RAM_BYTES_USED = RamUsageEstimator.shallowSizeOfInstance(Long.class);
+
+    /**
+     * The size that is assumed for filters that don't report their own, like {@link org.apache.lucene.search.LRUQueryCache} does.
+     */
+    static final long QUERY_DEFAULT_RAM_BYTES_USED = 1024;
+
+    /**
+     * Bytes used to hold an entry on top of its key and value: the entry of the cache with its future and its node in the hash
+     * table of its segment, and the node of its key in {@link #keysByReader}.
+     */
+    static final long ENTRY_OVERHEAD_RAM_BYTES_USED;
+
+    static {
+        final Map<Integer, Integer> hashMap = new HashMap<>();
+        hashMap.put(0, 0);
+        final Map<Integer, Boolean> concurrentMap = ConcurrentCollections.newConcurrentMap();
+        concurrentMap.put(0, Boolean.TRUE);
+        // the entry of the cache holds its key, its value, the previous and next entries in the LRU list and its state,
+        // as well as its write and access times
+        final long cacheEntryShallowSize = RamUsageEstimator.alignObjectSize(RamUsageEstimator.NUM_BYTES_OBJECT_HEADER
+            + 5 * RamUsageEstimator.NUM_BYTES_OBJECT_REF + 2 * Long.BYTES);
+        // assume a load factor of 50% for both hash tables, so each entry needs two object refs in each of them
+        ENTRY_OVERHEAD_RAM_BYTES_USED = cacheEntryShallowSize
+            + RamUsageEstimator.shallowSizeOfInstance(CompletableFuture.class)
+            + RamUsageEstimator.shallowSizeOf(hashMap.entrySet().iterator().next())
+            + RamUsageEstimator.shallowSizeOf(concurrentMap.entrySet().iterator().next())
+            + 4 * RamUsageEstimator.NUM_BYTES_OBJECT_REF;
+    }
+
+    private final ConcurrentMap<IndexReader.CacheKey, Set<Key>> keysByReader = ConcurrentCollections.newConcurrentMap();
+    private final Cache<Key, Long> cache;
+    private final CounterMetric hitCount = new CounterMetric();
+    private final CounterMetric missCount = new CounterMetric();
+
+    IndicesBackgroundFrequencyCache(Settings settings) {
+        super(settings);
+        final long sizeInBytes = INDICES_CACHE_BACKGROUND_FREQUENCIES_SIZE.get(settings).getBytes();
+        this.cache = CacheBuilder.<Key, Long>builder()
+            .setMaximumWeight(sizeInBytes).weigher((k, v) -> weigh(k)).removalListener(this).build();
+    }
+
+    /**
+     * Returns the number of bytes that an entry of the cache uses for the given key.
+     */
+    static long weigh(Key key) {
+        return key.ramBytesUsed() + VALUE_RAM_BYTES_USED + ENTRY_OVERHEAD_RAM_BYTES_USED;
+    }
+
+    /**
+     * Returns the background frequencies of the given reader, restricted to the documents that match <code>filter</code>
+     * if it is not <code>null</code>. The returned object must only be used by a single thread and only while the reader is open.
+     */
+    public BackgroundFrequencies backgroundFrequencies(IndexReader reader, @Nullable Query filter) {
+        return new BackgroundFrequencies(reader, filter);
+    }
+
+    /**
+     * Background frequencies of a point-in-time reader, loaded from the cache for the segments that have been seen before and
+     * computed on the others.
+     */
+    public final class BackgroundFrequencies {
+        private final IndexReader reader;
+        private final List<LeafReaderContext> leaves;
+        private final IndexReader.CacheHelper[] cacheHelpers;
+        @Nullable
+        private final Query filter;
+        private Weight filterWeight;
+        private final FixedBitSet[] filterBits;
+        private final boolean[] filterBitsLoaded;
+        private String termsField;
+        private final TermsEnum[] termsEnums;
+        private PostingsEnum postings;
+
+        BackgroundFrequencies(IndexReader reader, @Nullable Query filter) {
+            this.reader = reader;
+            this.leaves = reader.leaves();
+            this.filter = filter;
+            this.cacheHelpers = new IndexReader.CacheHelper[leaves.size()];
+            for (int i = 0; i < cacheHelpers.length; i++) {
+                final LeafReader leafReader = leaves.get(i).reader();
+                cacheHelpers[i] = filter == null ? leafReader.getCoreCacheHelper() : leafReader.getReaderCacheHelper();
+            }
+            this.filterBits = new FixedBitSet[leaves.size()];
+            this.filterBitsLoaded = new boolean[leaves.size()];
+            this.termsEnums = new TermsEnum[leaves.size()];
+        }
+
+        /**
+         * Returns the number of live documents that match the background filter. Must only be called if there is one.
+         */
+        public long numDocs() throws IOException {
+            assert filter != null;
+            long numDocs = 0;
+            for (int i = 0; i < leaves.size(); i++) {
+                numDocs += getOrCompute(i, null, null);
+            }
+            return numDocs;
+        }
+
+        /**
+         * Returns the number of documents of the background set that contain the given term.
+         */
+        public long docFreq(Term term) throws IOException {
+            if (term.field().equals(termsField) == false) {
+                termsField = term.field();
+                Arrays.fill(termsEnums, null);
+            }
+            long docFreq = 0;
+            for (int i = 0; i < leaves.size(); i++) {
+                docFreq += getOrCompute(i, termsField, term.bytes());
+            }
+            return docFreq;
+        }
+
+        private long getOrCompute(int leaf, @Nullable String field, @Nullable BytesRef term) throws IOException {
+            final IndexReader.CacheHelper cacheHelper = cacheHelpers[leaf];
+            if (cacheHelper == null) {
+                return compute(leaf, term);
+            }
+            final Key key = new Key(cacheHelper.getKey(), field, filter, term);
+            final Long cached = cache.get(key);
+            if (cached != null) {
+                hitCount.inc();
+                return cached;
+            }
+            missCount.inc();
+            final long value = compute(leaf, term);
+            put(cacheHelper, new Key(key.readerKey, field, filter, term == null ? null : BytesRef.deepCopyOf(term)), value);
+            return value;
+        }
+
+        private long compute(int leaf, @Nullable BytesRef term) throws IOException {
+            final LeafReaderContext context = leaves.get(leaf);
+            final FixedBitSet bits = filter == null ? null : filterBits(leaf);
+            if (term == null) {
+                // the number of documents that match the filter
+                return bits == null ? 0 : bits.cardinality();
+            }
+            if (filter != null && bits == null) {
+                return 0;
+            }
+            TermsEnum termsEnum = termsEnums[leaf];
+            if (termsEnum == null) {
+                final Terms terms = context.reader().terms(termsField);
+                if (terms == null) {
+                    return 0;
+                }
+                termsEnum = termsEnums[leaf] = terms.iterator();
+            }
+            if (termsEnum.seekExact(term) == false) {
+                return 0;
+            }
+            if (bits == null) {
+                // Important - the doc freq includes deleted docs, just like the size of the background set does
+                return termsEnum.docFreq();
+            }
+            long docFreq = 0;
+            postings = termsEnum.postings(postings, PostingsEnum.NONE);
+            for (int doc = postings.nextDoc(); doc != DocIdSetIterator.NO_MORE_DOCS; doc = postings.nextDoc()) {
+                if (bits.get(doc)) {
+                    docFreq++;
+                }
+            }
+            return docFreq;
+        }
+
+        /**
+         * Returns the live documents of the given segment that match the filter, or <code>null</code> if there are none.
+         */
+        private FixedBitSet filterBits(int leaf) throws IOException {
+            if (filterBitsLoaded[leaf] == false) {
+                if (filterWeight == null) {
+                    final IndexSearcher searcher = new IndexSearcher(reader);
+                    searcher.setQueryCache(null);
+                    filterWeight = searcher.createNormalizedWeight(filter, false);
+                }
+                final LeafReaderContext context = leaves.get(leaf);
+                final Scorer scorer = filterWeight.scorer(context);
+                if (scorer != null) {
+                    // we want to force apply deleted docs
+                    final Bits liveDocs = context.reader().getLiveDocs();
+                    final FixedBitSet bits = new FixedBitSet(context.reader().maxDoc());
+                    final DocIdSetIterator docs = scorer.iterator();
+                    for (int doc = docs.nextDoc(); doc != DocIdSetIterator.NO_MORE_DOCS; doc = docs.nextDoc()) {
+                        if (liveDocs == null || liveDocs.get(doc)) {
+                            bits.set(doc);
+                        }
+                    }
+                    filterBits[leaf] = bits;
+                }
+                filterBitsLoaded[leaf] = true;
+            }
+            return filterBits[leaf];
+        }
+    }
+
+    private void put(IndexReader.CacheHelper cacheHelper, Key key, long value) {
+        keysByReader.computeIfAbsent(key.readerKey, readerKey -> {
+            cacheHelper.addClosedListener(this::onReaderClosed);
+            return ConcurrentCollections.newConcurrentSet();
+        }).add(key);
+        cache.put(key, value);
+    }
+
+    private void onReaderClosed(IndexReader.CacheKey readerKey) {
+        final Set<Key> keys = keysByReader.remove(readerKey);
+        if (keys != null) {
+            for (Key key : keys) {
+                cache.invalidate(key);
+            }
+        }
+    }
+
+    @Override
+    public void onRemoval(RemovalNotification<Key, Long> notification) {
+        if (notification.getRemovalReason() != RemovalNotification.RemovalReason.REPLACED) {
+            final Set<Key> keys = keysByReader.get(notification.getKey().readerKey);
+            if (keys != null) {
+                keys.remove(notification.getKey());
+            }
+        }
+    }
+
+    @Override
+    public void close() {
+        cache.invalidateAll();
+    }
+
+    /**
+     * Returns the number of cached frequencies
+     */
+    int count() {
+        return cache.count();
+    }
+
+    long hitCount() {
+        return hitCount.count();
+    }
+
+    long missCount() {
+        return missCount.count();
+    }
+
+    static final class Key implements Accountable {
+        private static final long BASE_RAM_BYTES_USED = RamUsageEstimator.shallowSizeOfInstance(Key.class)
+            + RamUsageEstimator.shallowSizeOfInstance(BytesRef.class);
+
+        final IndexReader.CacheKey readerKey; // identity equality
+        @Nullable
+        final String field;
+        @Nullable
+        final Query filter;
+        @Nullable
+        final BytesRef term; // null for the number of documents that match the filter
+
+        Key(IndexReader.CacheKey readerKey, @Nullable String field, @Nullable Query filter, @Nullable BytesRef term) {
+            this.readerKey = readerKey;
+            this.field = field;
+            this.filter = filter;
+            this.term = term;
+        }
+
+        @Override
+        public long ramBytesUsed() {
+            long ramBytesUsed = BASE_RAM_BYTES_USED;
+            if (term != null) {
+                ramBytesUsed += RamUsageEstimator.sizeOf(term.bytes);
+            }
+            if (filter != null) {
+                // the filter is shared by the keys of a request but kept alive by any of them, so each of them accounts for it
+                ramBytesUsed += filter instanceof Accountable ? ((Accountable) filter).ramBytesUsed() : QUERY_DEFAULT_RAM_BYTES_USED;
+            }
+            // the field name is shared with the mappings
+            return ramBytesUsed;
+        }
+
+        @Override
+        public Collection<Accountable> getChildResources() {
+            return Collections.emptyList();
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (o == null || getClass() != o.getClass()) return false;
+            Key key = (Key) o;
+            return readerKey == key.readerKey && Objects.equals(field, key.field) && Objects.equals(filter, key.filter)
+                && Objects.equals(term, key.term);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(System.identityHashCode(readerKey), field, filter, term);
+        }
+    }
+}
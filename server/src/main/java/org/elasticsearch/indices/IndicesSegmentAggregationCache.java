@@ -0,0 +1,226 @@
+/*
+ * Licensed to Elasticsearch under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Elasticsearch licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.elasticsearch.indices;
+
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.index.LeafReader;
+import org.apache.lucene.util.Accountable;
+import org.apache.lucene.util.RamUsageEstimator;
+import org.elasticsearch.common.bytes.BytesReference;
+import org.elasticsearch.common.cache.Cache;
+import org.elasticsearch.common.cache.CacheBuilder;
+import org.elasticsearch.common.cache.RemovalListener;
+import org.elasticsearch.common.cache.RemovalNotification;
+import org.elasticsearch.common.component.AbstractComponent;
+import org.elasticsearch.common.io.stream.BytesStreamOutput;
+import org.elasticsearch.common.io.stream.NamedWriteableAwareStreamInput;
+import org.elasticsearch.common.io.stream.NamedWriteableRegistry;
+import org.elasticsearch.common.io.stream.StreamInput;
+import org.elasticsearch.common.metrics.CounterMetric;
+import org.elasticsearch.common.settings.Setting;
+import org.elasticsearch.common.settings.Setting.Property;
+import org.elasticsearch.common.settings.Settings;
+import org.elasticsearch.common.unit.ByteSizeValue;
+import org.elasticsearch.common.util.concurrent.ConcurrentCollections;
+import org.elasticsearch.search.aggregations.InternalAggregations;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Set;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Caches the partial aggregation results of size=0 requests per segment. Unlike the {@link IndicesRequestCache}, whose entries
+ * are keyed on the version of the top level reader and are therefore invalidated by every refresh, entries of this cache are keyed
+ * on the cache key of each segment reader: after a refresh, only the segments that were added or that got new deletes need to be
+ * aggregated again, their results being merged with the cached results of the other segments. Entries are removed as soon as their
+ * segment reader is closed.
+ */
+public final class IndicesSegmentAggregationCache extends AbstractComponent implements RemovalListener<IndicesSegmentAggregationCache.Key,
+    BytesReference>, Closeable {
+
+    /**
+     * A setting to enable or disable the caching of per segment aggregation results on an index level.
+     */
+    public static final Setting<Boolean> INDEX_CACHE_SEGMENT_AGGREGATIONS_ENABLED_SETTING =
+        Setting.boolSetting("index.requests.cache.segment_aggregations.enable", false, Property.Dynamic, Property.IndexScope);
+    public static final Setting<ByteSizeValue> INDICES_CACHE_SEGMENT_AGGREGATIONS_SIZE =
+        Setting.memorySizeSetting("indices.requests.cache.segment_aggregations.size", "1%", Property.NodeScope);
+
+    private final NamedWriteableRegistry namedWriteableRegistry;
+    private final ConcurrentMap<IndexReader.CacheKey, Set<Key>> keysByReader = ConcurrentCollections.newConcurrentMap();
+    private final Cache<Key, BytesReference> cache;
+    private final CounterMetric hitCount = new CounterMetric();
+    private final CounterMetric missCount = new CounterMetric();
+
+    IndicesSegmentAggregationCache(Settings settings, NamedWriteableRegistry namedWriteableRegistry) {
+        super(settings);
+        this.namedWriteableRegistry = namedWriteableRegistry;
+        final long sizeInBytes = INDICES_CACHE_SEGMENT_AGGREGATIONS_SIZE.get(settings).getBytes();
+        this.cache = CacheBuilder.<Key, BytesReference>builder()
+            .setMaximumWeight(sizeInBytes).weigher((k, v) -> k.ramBytesUsed() + v.length()).removalListener(this).build();
+    }
+
+    /**
+     * The partial result of a request on a single segment.
+     */
+    public static final class SegmentResult {
+        private final long totalHits;
+        private final InternalAggregations aggregations;
+
+        public SegmentResult(long totalHits, InternalAggregations aggregations) {
+            this.totalHits = totalHits;
+            this.aggregations = aggregations;
+        }
+
+        /**
+         * The number of documents of the segment that matched the request.
+         */
+        public long getTotalHits() {
+            return totalHits;
+        }
+
+        /**
+         * The aggregations of the segment, as built by the aggregators that collected it.
+         */
+        public InternalAggregations getAggregations() {
+            return aggregations;
+        }
+    }
+
+    /**
+     * Returns <code>true</code> if results of the given segment can be cached, that is if it exposes a reader cache key.
+     */
+    public static boolean canCache(LeafReader reader) {
+        return reader.getReaderCacheHelper() != null;
+    }
+
+    /**
+     * Returns the cached result of the request identified by <code>requestKey</code> on the given segment or <code>null</code>
+     * if there is none.
+     */
+    public SegmentResult get(LeafReader reader, BytesReference requestKey) throws IOException {
+        final BytesReference value = cache.get(new Key(reader.getReaderCacheHelper().getKey(), requestKey));
+        if (value == null) {
+            missCount.inc();
+            return null;
+        }
+        hitCount.inc();
+        try (StreamInput in = new NamedWriteableAwareStreamInput(value.streamInput(), namedWriteableRegistry)) {
+            return new SegmentResult(in.readVLong(), InternalAggregations.readAggregations(in));
+        }
+    }
+
+    /**
+     * Caches the result of the request identified by <code>requestKey</code> on the given segment until the segment reader is closed
+     * or the entry is evicted.
+     */
+    public void put(LeafReader reader, BytesReference requestKey, SegmentResult result) throws IOException {
+        final IndexReader.CacheHelper cacheHelper = reader.getReaderCacheHelper();
+        final BytesReference value;
+        try (BytesStreamOutput out = new BytesStreamOutput()) {
+            out.writeVLong(result.getTotalHits());
+            result.getAggregations().writeTo(out);
+            value = out.bytes();
+        }
+        final Key key = new Key(cacheHelper.getKey(), requestKey);
+        keysByReader.computeIfAbsent(cacheHelper.getKey(), readerKey -> {
+            cacheHelper.addClosedListener(this::onReaderClosed);
+            return ConcurrentCollections.newConcurrentSet();
+        }).add(key);
+        cache.put(key, value);
+    }
+
+    private void onReaderClosed(IndexReader.CacheKey readerKey) {
+        final Set<Key> keys = keysByReader.remove(readerKey);
+        if (keys != null) {
+            for (Key key : keys) {
+                cache.invalidate(key);
+            }
+        }
+    }
+
+    @Override
+    public void onRemoval(RemovalNotification<Key, BytesReference> notification) {
+        if (notification.getRemovalReason() != RemovalNotification.RemovalReason.REPLACED) {
+            final Set<Key> keys = keysByReader.get(notification.getKey().readerKey);
+            if (keys != null) {
+                keys.remove(notification.getKey());
+            }
+        }
+    }
+
+    @Override
+    public void close() {
+        cache.invalidateAll();
+    }
+
+    /**
+     * Returns the number of cached segment results
+     */
+    int count() {
+        return cache.count();
+    }
+
+    long hitCount() {
+        return hitCount.count();
+    }
+
+    long missCount() {
+        return missCount.count();
+    }
+
+    static final class Key implements Accountable {
+        private static final long BASE_RAM_BYTES_USED = RamUsageEstimator.shallowSizeOfInstance(Key.class);
+
+        final IndexReader.CacheKey readerKey; // identity equality
+        final BytesReference requestKey;
+
+        Key(IndexReader.CacheKey readerKey, BytesReference requestKey) {
+            this.readerKey = readerKey;
+            this.requestKey = requestKey;
+        }
+
+        @Override
+        public long ramBytesUsed() {
+            return BASE_RAM_BYTES_USED + requestKey.length();
+        }
+
+        @Override
+        public Collection<Accountable> getChildResources() {
+            return Collections.emptyList();
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (o == null || getClass() != o.getClass()) return false;
+            Key key = (Key) o;
+            return readerKey == key.readerKey && requestKey.equals(key.requestKey);
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * System.identityHashCode(readerKey) + requestKey.hashCode();
+        }
+    }
+}
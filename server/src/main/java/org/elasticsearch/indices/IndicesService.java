@@ -169,6 +169,8 @@ public class IndicesService extends AbstractLifecycleComponent
     private final IndexingMemoryController indexingMemoryController;
     private final TimeValue cleanInterval;
     private final IndicesRequestCache indicesRequestCache;
+    private final IndicesSegmentAggregationCache indicesSegmentAggregationCache;
+    private final IndicesBackgroundFrequencyCache indicesBackgroundFrequencyCache;
     private final IndicesQueryCache indicesQueryCache;
     private final MetaStateService metaStateService;
 
@@ -195,6 +197,8 @@ public class IndicesService extends AbstractLifecycleComponent
         this.indicesQueryCache = new IndicesQueryCache(settings);
         this.mapperRegistry = mapperRegistry;
         this.namedWriteableRegistry = namedWriteableRegistry;
+        this.indicesSegmentAggregationCache = new IndicesSegmentAggregationCache(settings, namedWriteableRegistry);
+        this.indicesBackgroundFrequencyCache = new IndicesBackgroundFrequencyCache(settings);
         indexingMemoryController = new IndexingMemoryController(settings, threadPool,
                                                                 // ensure we pull an iter with new shards - flatten makes a copy
                                                                 () -> Iterables.flatten(this).iterator());
@@ -244,7 +248,8 @@ public class IndicesService extends AbstractLifecycleComponent
 
     @Override
     protected void doClose() {
-        IOUtils.closeWhileHandlingException(analysisRegistry, indexingMemoryController, indicesFieldDataCache, cacheCleaner, indicesRequestCache, indicesQueryCache);
+        IOUtils.closeWhileHandlingException(analysisRegistry, indexingMemoryController, indicesFieldDataCache, cacheCleaner,
+            indicesRequestCache, indicesSegmentAggregationCache, indicesBackgroundFrequencyCache, indicesQueryCache);
     }
 
     /**
@@ -576,6 +581,14 @@ public class IndicesService extends AbstractLifecycleComponent
         return indicesQueryCache;
     }
 
+    public IndicesSegmentAggregationCache getIndicesSegmentAggregationCache() {
+        return indicesSegmentAggregationCache;
+    }
+
+    public IndicesBackgroundFrequencyCache getIndicesBackgroundFrequencyCache() {
+        return indicesBackgroundFrequencyCache;
+    }
+
     static class OldShardsStats implements IndexEventListener {
 
         final SearchStats searchStats = new SearchStats();
@@ -23,6 +23,7 @@ import org.apache.lucene.util.Accountable;
 import org.elasticsearch.common.breaker.CircuitBreaker;
 import org.elasticsearch.common.inject.Inject;
 import org.elasticsearch.index.fielddata.IndexFieldDataCache;
+import org.elasticsearch.index.fielddata.ordinals.GlobalOrdinalsIndexFieldData;
 import org.elasticsearch.index.shard.ShardId;
 import org.elasticsearch.indices.breaker.CircuitBreakerService;
 
@@ -51,5 +52,14 @@ public class IndicesFieldDataCacheListener implements IndexFieldDataCache.Listen
         circuitBreakerService.getBreaker(CircuitBreaker.FIELDDATA).addWithoutBreaking(-sizeInBytes);
     }
 
+    @Override
+    public void onRemoval(ShardId shardId, String fieldName, boolean wasEvicted, long sizeInBytes, Accountable ramUsage) {
+        if (ramUsage instanceof GlobalOrdinalsIndexFieldData) {
+            // global ordinals that were built incrementally account the ordinal map they build on demand on top of their size
+            sizeInBytes += ((GlobalOrdinalsIndexFieldData) ramUsage).releaseOnDemandMemory();
+        }
+        onRemoval(shardId, fieldName, wasEvicted, sizeInBytes);
+    }
+
 }
 
@@ -29,6 +29,7 @@ import org.apache.lucene.store.RateLimiter;
 import org.elasticsearch.ElasticsearchException;
 import org.elasticsearch.ElasticsearchTimeoutException;
 import org.elasticsearch.ExceptionsHelper;
+import org.elasticsearch.action.ActionListener;
 import org.elasticsearch.action.support.PlainActionFuture;
 import org.elasticsearch.cluster.ClusterState;
 import org.elasticsearch.cluster.ClusterStateObserver;
@@ -595,11 +596,30 @@ public class PeerRecoveryTargetService extends AbstractComponent implements Inde
                     }
                 }
 
+                // the response is sent once the chunk is written, chunks that arrive out of order wait for the previous chunks
                 recoveryTarget.writeFileChunk(request.metadata(), request.position(), request.content(),
-                        request.lastChunk(), request.totalTranslogOps()
+                        request.lastChunk(), request.totalTranslogOps(), new ActionListener<Void>() {
+                            @Override
+                            public void onResponse(Void aVoid) {
+                                try {
+                                    channel.sendResponse(TransportResponse.Empty.INSTANCE);
+                                } catch (IOException e) {
+                                    onFailure(e);
+                                }
+                            }
+
+                            @Override
+                            public void onFailure(Exception e) {
+                                try {
+                                    channel.sendResponse(e);
+                                } catch (IOException inner) {
+                                    inner.addSuppressed(e);
+                                    logger.warn("failed to send the response of a file chunk request", inner);
+                                }
+                            }
+                        }
                 );
             }
-            channel.sendResponse(TransportResponse.Empty.INSTANCE);
         }
     }
 
@@ -32,19 +32,20 @@ import org.apache.lucene.util.ArrayUtil;
 import org.apache.lucene.util.IOUtils;
 import org.elasticsearch.ExceptionsHelper;
 import org.elasticsearch.Version;
+import org.elasticsearch.action.ActionListener;
 import org.elasticsearch.action.support.PlainActionFuture;
 import org.elasticsearch.cluster.routing.IndexShardRoutingTable;
 import org.elasticsearch.cluster.routing.ShardRouting;
 import org.elasticsearch.common.Nullable;
 import org.elasticsearch.common.StopWatch;
+import org.elasticsearch.common.collect.Tuple;
 import org.elasticsearch.common.bytes.BytesArray;
-import org.elasticsearch.common.io.Streams;
 import org.elasticsearch.common.lease.Releasable;
 import org.elasticsearch.common.logging.ServerLoggers;
-import org.elasticsearch.common.lucene.store.InputStreamIndexInput;
 import org.elasticsearch.common.settings.Settings;
 import org.elasticsearch.common.unit.ByteSizeValue;
 import org.elasticsearch.common.util.CancellableThreads;
+import org.elasticsearch.common.util.concurrent.ConcurrentCollections;
 import org.elasticsearch.index.engine.Engine;
 import org.elasticsearch.index.engine.RecoveryEngineException;
 import org.elasticsearch.index.seqno.LocalCheckpointTracker;
@@ -59,16 +60,17 @@ import org.elasticsearch.index.translog.Translog;
 import org.elasticsearch.threadpool.ThreadPool;
 import org.elasticsearch.transport.RemoteTransportException;
 
-import java.io.BufferedOutputStream;
 import java.io.Closeable;
 import java.io.IOException;
-import java.io.OutputStream;
 import java.util.ArrayList;
 import java.util.Comparator;
 import java.util.List;
 import java.util.Locale;
+import java.util.Optional;
+import java.util.Queue;
+import java.util.concurrent.Semaphore;
 import java.util.concurrent.atomic.AtomicLong;
-import java.util.function.Function;
+import java.util.concurrent.atomic.AtomicReference;
 import java.util.function.Supplier;
 import java.util.stream.StreamSupport;
 
@@ -92,6 +94,7 @@ public class RecoverySourceHandler {
     // Request containing source and target node information
     private final StartRecoveryRequest request;
     private final int chunkSizeInBytes;
+    private final int maxConcurrentFileChunks;
     private final RecoveryTargetHandler recoveryTarget;
 
     protected final RecoveryResponse response;
@@ -115,6 +118,7 @@ public class RecoverySourceHandler {
     public RecoverySourceHandler(final IndexShard shard, RecoveryTargetHandler recoveryTarget,
                                  final StartRecoveryRequest request,
                                  final int fileChunkSizeInBytes,
+                                 final int maxConcurrentFileChunks,
                                  final Settings nodeSettings) {
         this.shard = shard;
         this.recoveryTarget = recoveryTarget;
@@ -122,6 +126,7 @@ public class RecoverySourceHandler {
         this.shardId = this.request.shardId().id();
         this.logger = ServerLoggers.getLogger(getClass(), nodeSettings, request.shardId(), "recover to " + request.targetNode().getName());
         this.chunkSizeInBytes = fileChunkSizeInBytes;
+        this.maxConcurrentFileChunks = maxConcurrentFileChunks;
         this.response = new RecoveryResponse();
     }
 
@@ -356,10 +361,7 @@ public class RecoverySourceHandler {
                 cancellableThreads.execute(() ->
                         recoveryTarget.receiveFileInfo(response.phase1FileNames, response.phase1FileSizes, response.phase1ExistingFileNames,
                                 response.phase1ExistingFileSizes, translogOps.get()));
-                // How many bytes we've copied since we last called RateLimiter.pause
-                final Function<StoreFileMetaData, OutputStream> outputStreamFactories =
-                        md -> new BufferedOutputStream(new RecoveryOutputStream(md, translogOps), chunkSizeInBytes);
-                sendFiles(store, phase1Files.toArray(new StoreFileMetaData[phase1Files.size()]), outputStreamFactories);
+                sendFiles(store, phase1Files.toArray(new StoreFileMetaData[phase1Files.size()]), translogOps);
                 // Send the CLEAN_FILES request, which takes all of the files that
                 // were transferred and renames them from their temporary file
                 // names to the actual file names. It also writes checksums for
@@ -618,79 +620,97 @@ public class RecoverySourceHandler {
     }
 
 
-    final class RecoveryOutputStream extends OutputStream {
-        private final StoreFileMetaData md;
-        private final Supplier<Integer> translogOps;
-        private long position = 0;
-
-        RecoveryOutputStream(StoreFileMetaData md, Supplier<Integer> translogOps) {
-            this.md = md;
-            this.translogOps = translogOps;
-        }
-
-        @Override
-        public void write(int b) throws IOException {
-            throw new UnsupportedOperationException("we can't send single bytes over the wire");
-        }
-
-        @Override
-        public void write(byte[] b, int offset, int length) throws IOException {
-            sendNextChunk(position, new BytesArray(b, offset, length), md.length() == position + length);
-            position += length;
-            assert md.length() >= position : "length: " + md.length() + " but positions was: " + position;
-        }
-
-        private void sendNextChunk(long position, BytesArray content, boolean lastChunk) throws IOException {
-            // Actually send the file chunk to the target node, waiting for it to complete
-            cancellableThreads.executeIO(() ->
-                    recoveryTarget.writeFileChunk(md, position, content, lastChunk, translogOps.get())
-            );
-            if (shard.state() == IndexShardState.CLOSED) { // check if the shard got closed on us
-                throw new IndexShardClosedException(request.shardId());
-            }
-        }
-    }
-
-    void sendFiles(Store store, StoreFileMetaData[] files, Function<StoreFileMetaData, OutputStream> outputStreamFactory) throws Exception {
+    /**
+     * Sends the content of the files to the target. The chunks of the files are read sequentially but up to
+     * <code>maxConcurrentFileChunks</code> chunk requests are in flight at any time, the target writes the chunks
+     * of each file in order even if they are received out of order.
+     */
+    void sendFiles(Store store, StoreFileMetaData[] files, Supplier<Integer> translogOps) throws Exception {
         store.incRef();
         try {
             ArrayUtil.timSort(files, Comparator.comparingLong(StoreFileMetaData::length)); // send smallest first
-            for (int i = 0; i < files.length; i++) {
-                final StoreFileMetaData md = files[i];
+            // each in-flight chunk holds a permit and a buffer, both are given back once the target acknowledged the chunk
+            final Semaphore permits = new Semaphore(maxConcurrentFileChunks);
+            final Queue<byte[]> buffers = ConcurrentCollections.newQueue();
+            final AtomicReference<Tuple<StoreFileMetaData, Exception>> error = new AtomicReference<>();
+            for (final StoreFileMetaData md : files) {
+                if (error.get() != null) {
+                    break;
+                }
                 try (IndexInput indexInput = store.directory().openInput(md.name(), IOContext.READONCE)) {
-                    // it's fine that we are only having the indexInput in the try/with block. The copy methods handles
-                    // exceptions during close correctly and doesn't hide the original exception.
-                    Streams.copy(new InputStreamIndexInput(indexInput, md.length()), outputStreamFactory.apply(md));
-                } catch (Exception e) {
-                    final IOException corruptIndexException;
-                    if ((corruptIndexException = ExceptionsHelper.unwrapCorruption(e)) != null) {
-                        if (store.checkIntegrityNoException(md) == false) { // we are corrupted on the primary -- fail!
-                            logger.warn("{} Corrupted file detected {} checksum mismatch", shardId, md);
-                            failEngine(corruptIndexException);
-                            throw corruptIndexException;
-                        } else { // corruption has happened on the way to replica
-                            RemoteTransportException exception = new RemoteTransportException("File corruption occurred on recovery but " +
-                                    "checksums are ok", null);
-                            exception.addSuppressed(e);
-                            logger.warn(
-                                (org.apache.logging.log4j.util.Supplier<?>) () -> new ParameterizedMessage(
-                                    "{} Remote file corruption on node {}, recovering {}. local checksum OK",
-                                    shardId,
-                                    request.targetNode(),
-                                    md),
-                                corruptIndexException);
-                            throw exception;
+                    long position = 0;
+                    while (position < md.length()) {
+                        cancellableThreads.execute(permits::acquire);
+                        if (error.get() != null) {
+                            permits.release();
+                            break;
                         }
-                    } else {
-                        throw e;
+                        if (shard.state() == IndexShardState.CLOSED) { // check if the shard got closed on us
+                            permits.release();
+                            throw new IndexShardClosedException(request.shardId());
+                        }
+                        final byte[] buffer = Optional.ofNullable(buffers.poll()).orElseGet(() -> new byte[chunkSizeInBytes]);
+                        final int length = (int) Math.min(chunkSizeInBytes, md.length() - position);
+                        indexInput.readBytes(buffer, 0, length);
+                        final long chunkPosition = position;
+                        final boolean lastChunk = chunkPosition + length == md.length();
+                        final ActionListener<Void> listener = ActionListener.wrap(
+                            r -> {
+                                buffers.add(buffer);
+                                permits.release();
+                            },
+                            e -> {
+                                error.compareAndSet(null, Tuple.tuple(md, e));
+                                buffers.add(buffer);
+                                permits.release();
+                            });
+                        cancellableThreads.execute(() -> recoveryTarget.writeFileChunk(md, chunkPosition,
+                            new BytesArray(buffer, 0, length), lastChunk, translogOps.get(), listener));
+                        position += length;
                     }
+                } catch (Exception e) {
+                    error.compareAndSet(null, Tuple.tuple(md, e));
                 }
             }
+            if (error.get() == null) {
+                // wait for the responses of the chunks that are still in flight
+                cancellableThreads.execute(() -> permits.acquire(maxConcurrentFileChunks));
+            }
+            // on failure we don't wait for the chunks in flight since the recovery is going to fail anyway
+            final Tuple<StoreFileMetaData, Exception> failure = error.get();
+            if (failure != null) {
+                handleErrorOnSendFiles(store, failure.v1(), failure.v2());
+            }
         } finally {
             store.decRef();
         }
     }
 
+    private void handleErrorOnSendFiles(Store store, StoreFileMetaData md, Exception e) throws Exception {
+        final IOException corruptIndexException;
+        if ((corruptIndexException = ExceptionsHelper.unwrapCorruption(e)) != null) {
+            if (store.checkIntegrityNoException(md) == false) { // we are corrupted on the primary -- fail!
+                logger.warn("{} Corrupted file detected {} checksum mismatch", shardId, md);
+                failEngine(corruptIndexException);
+                throw corruptIndexException;
+            } else { // corruption has happened on the way to replica
+                RemoteTransportException exception = new RemoteTransportException("File corruption occurred on recovery but " +
+                        "checksums are ok", null);
+                exception.addSuppressed(e);
+                logger.warn(
+                    (org.apache.logging.log4j.util.Supplier<?>) () -> new ParameterizedMessage(
+                        "{} Remote file corruption on node {}, recovering {}. local checksum OK",
+                        shardId,
+                        request.targetNode(),
+                        md),
+                    corruptIndexException);
+                throw exception;
+            }
+        } else {
+            throw e;
+        }
+    }
+
     protected void failEngine(IOException cause) {
         shard.failShard("recovery", cause);
     }
@@ -31,6 +31,7 @@ import org.apache.lucene.util.BytesRef;
 import org.apache.lucene.util.BytesRefIterator;
 import org.elasticsearch.ElasticsearchException;
 import org.elasticsearch.ExceptionsHelper;
+import org.elasticsearch.action.ActionListener;
 import org.elasticsearch.cluster.node.DiscoveryNode;
 import org.elasticsearch.common.UUIDs;
 import org.elasticsearch.common.bytes.BytesReference;
@@ -53,12 +54,15 @@ import org.elasticsearch.index.translog.Translog;
 
 import java.io.IOException;
 import java.nio.file.Path;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
+import java.util.Comparator;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
+import java.util.PriorityQueue;
 import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.atomic.AtomicBoolean;
@@ -89,6 +93,7 @@ public class RecoveryTarget extends AbstractRefCounted implements RecoveryTarget
     private final AtomicBoolean finished = new AtomicBoolean();
 
     private final ConcurrentMap<String, IndexOutput> openIndexOutputs = ConcurrentCollections.newConcurrentMap();
+    private final ConcurrentMap<String, FileChunkWriter> fileChunkWriters = ConcurrentCollections.newConcurrentMap();
     private final CancellableThreads cancellableThreads;
 
     // last time this status was accessed
@@ -321,6 +326,12 @@ public class RecoveryTarget extends AbstractRefCounted implements RecoveryTarget
     @Override
     protected void closeInternal() {
         try {
+            // fail the chunks that are still waiting for a previous chunk of their file
+            Iterator<FileChunkWriter> writers = fileChunkWriters.values().iterator();
+            while (writers.hasNext()) {
+                writers.next().fail(new IllegalStateException("recovery [" + recoveryId + "] is closed"));
+                writers.remove();
+            }
             // clean open index outputs
             Iterator<Entry<String, IndexOutput>> iterator = openIndexOutputs.entrySet().iterator();
             while (iterator.hasNext()) {
@@ -470,10 +481,20 @@ public class RecoveryTarget extends AbstractRefCounted implements RecoveryTarget
 
     @Override
     public void writeFileChunk(StoreFileMetaData fileMetaData, long position, BytesReference content,
-                               boolean lastChunk, int totalTranslogOps) throws IOException {
+                               boolean lastChunk, int totalTranslogOps, ActionListener<Void> listener) {
+        try {
+            state().getTranslog().totalOperations(totalTranslogOps);
+            final FileChunkWriter writer = fileChunkWriters.computeIfAbsent(fileMetaData.name(), name -> new FileChunkWriter());
+            writer.writeChunk(new FileChunk(fileMetaData, content, position, lastChunk, listener));
+        } catch (Exception e) {
+            listener.onFailure(e);
+        }
+    }
+
+    private void innerWriteFileChunk(StoreFileMetaData fileMetaData, long position,
+                                     BytesReference content, boolean lastChunk) throws IOException {
         final Store store = store();
         final String name = fileMetaData.name();
-        state().getTranslog().totalOperations(totalTranslogOps);
         final RecoveryState.Index indexState = state().getIndex();
         IndexOutput indexOutput;
         if (position == 0) {
@@ -503,6 +524,90 @@ public class RecoveryTarget extends AbstractRefCounted implements RecoveryTarget
         }
     }
 
+    private static final class FileChunk {
+        final StoreFileMetaData md;
+        final BytesReference content;
+        final long position;
+        final boolean lastChunk;
+        final ActionListener<Void> listener;
+
+        FileChunk(StoreFileMetaData md, BytesReference content, long position, boolean lastChunk, ActionListener<Void> listener) {
+            this.md = md;
+            this.content = content;
+            this.position = position;
+            this.lastChunk = lastChunk;
+            this.listener = listener;
+        }
+    }
+
+    /**
+     * Writes the chunks of a file in order. The source sends several chunks concurrently so a chunk can arrive before the
+     * previous chunks of its file. Such a chunk is kept in memory until the gap is filled, the number of pending chunks is
+     * bounded by the number of file chunk requests that the source keeps in flight.
+     */
+    private final class FileChunkWriter {
+        private final PriorityQueue<FileChunk> pendingChunks = new PriorityQueue<>(Comparator.comparingLong(chunk -> chunk.position));
+        private long lastPosition = 0;
+        private Exception failure;
+
+        void writeChunk(FileChunk newChunk) {
+            final Exception currentFailure;
+            synchronized (this) {
+                currentFailure = failure;
+                if (currentFailure == null) {
+                    pendingChunks.add(newChunk);
+                }
+            }
+            if (currentFailure != null) {
+                newChunk.listener.onFailure(currentFailure);
+                return;
+            }
+            while (true) {
+                final FileChunk chunk;
+                synchronized (this) {
+                    chunk = pendingChunks.peek();
+                    if (failure != null || chunk == null || chunk.position != lastPosition) {
+                        return;
+                    }
+                    pendingChunks.remove();
+                }
+                try {
+                    innerWriteFileChunk(chunk.md, chunk.position, chunk.content, chunk.lastChunk);
+                } catch (Exception e) {
+                    chunk.listener.onFailure(e);
+                    fail(e);
+                    return;
+                }
+                synchronized (this) {
+                    assert lastPosition == chunk.position : "last_position " + lastPosition + " != chunk_position " + chunk.position;
+                    lastPosition += chunk.content.length();
+                    if (chunk.lastChunk) {
+                        assert pendingChunks.isEmpty() : "still have pending chunks for [" + chunk.md.name() + "]";
+                        fileChunkWriters.remove(chunk.md.name(), this);
+                    }
+                }
+                chunk.listener.onResponse(null);
+            }
+        }
+
+        /**
+         * Fails the pending chunks and all the chunks of this file that are received later.
+         */
+        void fail(Exception e) {
+            final List<FileChunk> chunks;
+            synchronized (this) {
+                if (failure == null) {
+                    failure = e;
+                }
+                chunks = new ArrayList<>(pendingChunks);
+                pendingChunks.clear();
+            }
+            for (FileChunk chunk : chunks) {
+                chunk.listener.onFailure(e);
+            }
+        }
+    }
+
     Path translogLocation() {
         return indexShard().shardPath().resolveTranslog();
     }
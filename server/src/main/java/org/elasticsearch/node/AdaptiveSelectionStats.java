@@ -19,6 +19,7 @@
 
 package org.elasticsearch.node;
 
+import org.elasticsearch.Version;
 import org.elasticsearch.common.io.stream.StreamInput;
 import org.elasticsearch.common.io.stream.StreamOutput;
 import org.elasticsearch.common.io.stream.Writeable;
@@ -28,6 +29,7 @@ import org.elasticsearch.common.xcontent.ToXContentFragment;
 import org.elasticsearch.common.xcontent.XContentBuilder;
 
 import java.io.IOException;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.Locale;
 import java.util.Map;
@@ -38,34 +40,58 @@ import java.util.stream.Collectors;
 /**
  * Class representing statistics about adaptive replica selection. This includes
  * EWMA of queue size, service time, and response time, as well as outgoing
- * searches to each node and the "rank" based on the ARS formula.
+ * searches to each node and the "rank" based on the ARS formula. It also
+ * includes the number of hedged search requests that were sent to each node
+ * and how many of them answered before the request they duplicated.
  */
 public class AdaptiveSelectionStats implements Writeable, ToXContentFragment {
 
     private final Map<String, Long> clientOutgoingConnections;
     private final Map<String, ResponseCollectorService.ComputedNodeStats> nodeComputedStats;
+    private final Map<String, Long> hedgedSearches;
+    private final Map<String, Long> hedgedSearchesWon;
 
     public AdaptiveSelectionStats(Map<String, Long> clientConnections,
                                   Map<String, ResponseCollectorService.ComputedNodeStats> nodeComputedStats) {
+        this(clientConnections, nodeComputedStats, Collections.emptyMap(), Collections.emptyMap());
+    }
+
+    public AdaptiveSelectionStats(Map<String, Long> clientConnections,
+                                  Map<String, ResponseCollectorService.ComputedNodeStats> nodeComputedStats,
+                                  Map<String, Long> hedgedSearches, Map<String, Long> hedgedSearchesWon) {
         this.clientOutgoingConnections = clientConnections;
         this.nodeComputedStats = nodeComputedStats;
+        this.hedgedSearches = hedgedSearches;
+        this.hedgedSearchesWon = hedgedSearchesWon;
     }
 
     public AdaptiveSelectionStats(StreamInput in) throws IOException {
         this.clientOutgoingConnections = in.readMap(StreamInput::readString, StreamInput::readLong);
         this.nodeComputedStats = in.readMap(StreamInput::readString, ResponseCollectorService.ComputedNodeStats::new);
+        if (in.getVersion().onOrAfter(Version.V_6_2_3)) {
+            this.hedgedSearches = in.readMap(StreamInput::readString, StreamInput::readLong);
+            this.hedgedSearchesWon = in.readMap(StreamInput::readString, StreamInput::readLong);
+        } else {
+            this.hedgedSearches = Collections.emptyMap();
+            this.hedgedSearchesWon = Collections.emptyMap();
+        }
     }
 
     @Override
     public void writeTo(StreamOutput out) throws IOException {
         out.writeMap(this.clientOutgoingConnections, StreamOutput::writeString, StreamOutput::writeLong);
         out.writeMap(this.nodeComputedStats, StreamOutput::writeString, (stream, stats) -> stats.writeTo(stream));
+        if (out.getVersion().onOrAfter(Version.V_6_2_3)) {
+            out.writeMap(this.hedgedSearches, StreamOutput::writeString, StreamOutput::writeLong);
+            out.writeMap(this.hedgedSearchesWon, StreamOutput::writeString, StreamOutput::writeLong);
+        }
     }
 
     @Override
     public XContentBuilder toXContent(XContentBuilder builder, Params params) throws IOException {
         builder.startObject("adaptive_selection");
-        Set<String> allNodeIds = Sets.union(clientOutgoingConnections.keySet(), nodeComputedStats.keySet());
+        Set<String> allNodeIds = Sets.union(Sets.union(clientOutgoingConnections.keySet(), nodeComputedStats.keySet()),
+            hedgedSearches.keySet());
         for (String nodeId : allNodeIds) {
             builder.startObject(nodeId);
             ResponseCollectorService.ComputedNodeStats stats = nodeComputedStats.get(nodeId);
@@ -77,6 +103,10 @@ public class AdaptiveSelectionStats implements Writeable, ToXContentFragment {
                 builder.timeValueField("avg_response_time_ns", "avg_response_time", (long) stats.responseTime, TimeUnit.NANOSECONDS);
                 builder.field("rank", String.format(Locale.ROOT, "%.1f", stats.rank(outgoingSearches)));
             }
+            if (hedgedSearches.containsKey(nodeId)) {
+                builder.field("hedged_searches", hedgedSearches.get(nodeId));
+                builder.field("hedged_searches_won", hedgedSearchesWon.getOrDefault(nodeId, 0L));
+            }
             builder.endObject();
         }
         builder.endObject();
@@ -97,6 +127,21 @@ public class AdaptiveSelectionStats implements Writeable, ToXContentFragment {
         return nodeComputedStats;
     }
 
+    /**
+     * Returns a map of node id to the number of hedged search requests sent to that node
+     */
+    public Map<String, Long> getHedgedSearches() {
+        return hedgedSearches;
+    }
+
+    /**
+     * Returns a map of node id to the number of hedged search requests sent to that node that answered before the request
+     * they duplicated
+     */
+    public Map<String, Long> getHedgedSearchesWon() {
+        return hedgedSearchesWon;
+    }
+
     /**
      * Returns a map of node id to the ranking of the nodes based on the adaptive replica formula
      */
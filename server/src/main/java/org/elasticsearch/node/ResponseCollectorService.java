@@ -33,12 +33,14 @@ import org.elasticsearch.common.settings.Settings;
 import org.elasticsearch.common.util.concurrent.ConcurrentCollections;
 
 import java.io.IOException;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.Locale;
 import java.util.Map;
 import java.util.Optional;
 import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.LongAdder;
 import java.util.stream.Collectors;
 
 /**
@@ -50,7 +52,18 @@ public final class ResponseCollectorService extends AbstractComponent implements
 
     private static final double ALPHA = 0.3;
 
+    /**
+     * The number of recent response times that are kept for each node to compute response time percentiles.
+     */
+    static final int RESPONSE_TIME_SAMPLES = 100;
+
+    /**
+     * The minimum number of response times that must have been collected for a node before percentiles are computed.
+     */
+    static final int MIN_RESPONSE_TIME_SAMPLES = 10;
+
     private final ConcurrentMap<String, NodeStatistics> nodeIdToStats = ConcurrentCollections.newConcurrentMap();
+    private final ConcurrentMap<String, HedgeCounters> nodeIdToHedgeCounters = ConcurrentCollections.newConcurrentMap();
 
     public ResponseCollectorService(Settings settings, ClusterService clusterService) {
         super(settings);
@@ -68,6 +81,7 @@ public final class ResponseCollectorService extends AbstractComponent implements
 
     void removeNode(String nodeId) {
         nodeIdToStats.remove(nodeId);
+        nodeIdToHedgeCounters.remove(nodeId);
     }
 
     public void addNodeStatistics(String nodeId, int queueSize, long responseTimeNanos, long avgServiceTimeNanos) {
@@ -75,16 +89,45 @@ public final class ResponseCollectorService extends AbstractComponent implements
             if (ns == null) {
                 ExponentiallyWeightedMovingAverage queueEWMA = new ExponentiallyWeightedMovingAverage(ALPHA, queueSize);
                 ExponentiallyWeightedMovingAverage responseEWMA = new ExponentiallyWeightedMovingAverage(ALPHA, responseTimeNanos);
-                return new NodeStatistics(nodeId, queueEWMA, responseEWMA, avgServiceTimeNanos);
+                NodeStatistics stats = new NodeStatistics(nodeId, queueEWMA, responseEWMA, avgServiceTimeNanos);
+                stats.addResponseTimeSample(responseTimeNanos);
+                return stats;
             } else {
                 ns.queueSize.addValue((double) queueSize);
                 ns.responseTime.addValue((double) responseTimeNanos);
                 ns.serviceTime = avgServiceTimeNanos;
+                ns.addResponseTimeSample(responseTimeNanos);
                 return ns;
             }
         });
     }
 
+    /**
+     * Returns the given percentile of the recent response times of the node in nanoseconds, or <code>-1</code> if not enough
+     * responses of the node have been collected yet.
+     */
+    public long getResponseTimePercentile(String nodeId, double percentile) {
+        if (percentile < 0 || percentile > 100) {
+            throw new IllegalArgumentException("percentile must be in [0, 100] but was [" + percentile + "]");
+        }
+        final NodeStatistics stats = nodeIdToStats.get(nodeId);
+        return stats == null ? -1 : stats.responseTimePercentile(percentile);
+    }
+
+    /**
+     * Records that a hedged duplicate of a shard request was sent to the node.
+     */
+    public void addHedgedRequest(String nodeId) {
+        nodeIdToHedgeCounters.computeIfAbsent(nodeId, id -> new HedgeCounters()).sent.increment();
+    }
+
+    /**
+     * Records that a hedged duplicate of a shard request that was sent to the node answered before the original request.
+     */
+    public void addHedgedRequestWon(String nodeId) {
+        nodeIdToHedgeCounters.computeIfAbsent(nodeId, id -> new HedgeCounters()).won.increment();
+    }
+
     public Map<String, ComputedNodeStats> getAllNodeStatistics() {
         final int clientNum = nodeIdToStats.size();
         // Transform the mutable object internally used for accounting into the computed version
@@ -96,7 +139,13 @@ public final class ResponseCollectorService extends AbstractComponent implements
     }
 
     public AdaptiveSelectionStats getAdaptiveStats(Map<String, Long> clientSearchConnections) {
-        return new AdaptiveSelectionStats(clientSearchConnections, getAllNodeStatistics());
+        final Map<String, Long> hedgedRequests = new HashMap<>(nodeIdToHedgeCounters.size());
+        final Map<String, Long> hedgedRequestsWon = new HashMap<>(nodeIdToHedgeCounters.size());
+        nodeIdToHedgeCounters.forEach((nodeId, counters) -> {
+            hedgedRequests.put(nodeId, counters.sent.sum());
+            hedgedRequestsWon.put(nodeId, counters.won.sum());
+        });
+        return new AdaptiveSelectionStats(clientSearchConnections, getAllNodeStatistics(), hedgedRequests, hedgedRequestsWon);
     }
 
     /**
@@ -217,6 +266,10 @@ public final class ResponseCollectorService extends AbstractComponent implements
         final ExponentiallyWeightedMovingAverage queueSize;
         final ExponentiallyWeightedMovingAverage responseTime;
         double serviceTime;
+        // ring buffer of the most recent response times, used to compute percentiles
+        private final long[] responseTimeSamples = new long[RESPONSE_TIME_SAMPLES];
+        private int numResponseTimeSamples;
+        private int nextResponseTimeSample;
 
         NodeStatistics(String nodeId,
                        ExponentiallyWeightedMovingAverage queueSizeEWMA,
@@ -227,5 +280,32 @@ public final class ResponseCollectorService extends AbstractComponent implements
             this.responseTime = responseTimeEWMA;
             this.serviceTime = serviceTimeEWMA;
         }
+
+        synchronized void addResponseTimeSample(long responseTimeNanos) {
+            responseTimeSamples[nextResponseTimeSample] = responseTimeNanos;
+            nextResponseTimeSample = (nextResponseTimeSample + 1) % responseTimeSamples.length;
+            numResponseTimeSamples = Math.min(numResponseTimeSamples + 1, responseTimeSamples.length);
+        }
+
+        long responseTimePercentile(double percentile) {
+            final long[] samples;
+            synchronized (this) {
+                if (numResponseTimeSamples < MIN_RESPONSE_TIME_SAMPLES) {
+                    return -1;
+                }
+                samples = Arrays.copyOf(responseTimeSamples, numResponseTimeSamples);
+            }
+            Arrays.sort(samples);
+            final int rank = (int) Math.ceil(percentile / 100 * samples.length);
+            return samples[Math.max(0, rank - 1)];
+        }
+    }
+
+    /**
+     * The number of hedged requests that were sent to a node and the number of them that answered before the original request.
+     */
+    private static class HedgeCounters {
+        final LongAdder sent = new LongAdder();
+        final LongAdder won = new LongAdder();
     }
 }
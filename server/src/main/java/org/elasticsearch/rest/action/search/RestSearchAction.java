@@ -136,6 +136,7 @@ public class RestSearchAction extends BaseRestHandler {
         }
         parseSearchSource(searchRequest.source(), request, setSize);
         searchRequest.requestCache(request.paramAsBoolean("request_cache", null));
+        searchRequest.concurrentSegmentSearch(request.paramAsBoolean("concurrent_segment_search", null));
 
         String scroll = request.param("scroll");
         if (scroll != null) {
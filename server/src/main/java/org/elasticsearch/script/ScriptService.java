@@ -208,7 +208,7 @@ public class ScriptService extends AbstractComponent implements Closeable, Clust
 
         int cacheMaxSize = SCRIPT_CACHE_SIZE_SETTING.get(settings);
 
-        CacheBuilder<CacheKey, Object> cacheBuilder = CacheBuilder.builder();
+        CacheBuilder<CacheKey, Object> cacheBuilder = CacheBuilder.<CacheKey, Object>builder().setBufferedAccessRecording(true);
         if (cacheMaxSize >= 0) {
             cacheBuilder.setMaximumWeight(cacheMaxSize);
         }
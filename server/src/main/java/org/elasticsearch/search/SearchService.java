@@ -26,6 +26,7 @@ import org.elasticsearch.ElasticsearchException;
 import org.elasticsearch.ExceptionsHelper;
 import org.elasticsearch.action.ActionListener;
 import org.elasticsearch.action.OriginalIndices;
+import org.elasticsearch.action.search.PointInTimeId;
 import org.elasticsearch.action.search.SearchTask;
 import org.elasticsearch.action.search.SearchType;
 import org.elasticsearch.cluster.ClusterState;
@@ -53,6 +54,7 @@ import org.elasticsearch.index.query.Rewriteable;
 import org.elasticsearch.index.shard.IndexEventListener;
 import org.elasticsearch.index.shard.IndexShard;
 import org.elasticsearch.index.shard.SearchOperationListener;
+import org.elasticsearch.index.shard.ShardId;
 import org.elasticsearch.indices.IndicesService;
 import org.elasticsearch.indices.cluster.IndicesClusterStateService.AllocatedIndices.IndexRemovalReason;
 import org.elasticsearch.node.ResponseCollectorService;
@@ -63,6 +65,7 @@ import org.elasticsearch.search.aggregations.AggregatorFactories;
 import org.elasticsearch.search.aggregations.InternalAggregation;
 import org.elasticsearch.search.aggregations.MultiBucketConsumerService;
 import org.elasticsearch.search.aggregations.SearchContextAggregations;
+import org.elasticsearch.search.builder.PointInTimeBuilder;
 import org.elasticsearch.search.builder.SearchSourceBuilder;
 import org.elasticsearch.search.collapse.CollapseContext;
 import org.elasticsearch.search.dfs.DfsPhase;
@@ -77,6 +80,7 @@ import org.elasticsearch.search.fetch.subphase.ScriptFieldsContext.ScriptField;
 import org.elasticsearch.search.fetch.subphase.highlight.HighlightBuilder;
 import org.elasticsearch.search.internal.AliasFilter;
 import org.elasticsearch.search.internal.InternalScrollSearchRequest;
+import org.elasticsearch.search.internal.ReaderContext;
 import org.elasticsearch.search.internal.ScrollContext;
 import org.elasticsearch.search.internal.SearchContext;
 import org.elasticsearch.search.internal.SearchContext.Lifetime;
@@ -167,6 +171,8 @@ public class SearchService extends AbstractLifecycleComponent implements IndexEv
 
     private final ConcurrentMapLong<SearchContext> activeContexts = ConcurrentCollections.newConcurrentMapLongWithAggressiveConcurrency();
 
+    private final ConcurrentMapLong<ReaderContext> readerContexts = ConcurrentCollections.newConcurrentMapLongWithAggressiveConcurrency();
+
     private final MultiBucketConsumerService multiBucketConsumerService;
 
     public SearchService(ClusterService clusterService, IndicesService indicesService,
@@ -179,7 +185,7 @@ public class SearchService extends AbstractLifecycleComponent implements IndexEv
         this.scriptService = scriptService;
         this.responseCollectorService = responseCollectorService;
         this.bigArrays = bigArrays;
-        this.queryPhase = new QueryPhase(settings);
+        this.queryPhase = new QueryPhase(settings, indicesService.getIndicesSegmentAggregationCache());
         this.fetchPhase = fetchPhase;
         this.multiBucketConsumerService = new MultiBucketConsumerService(clusterService, settings);
 
@@ -251,6 +257,9 @@ public class SearchService extends AbstractLifecycleComponent implements IndexEv
         for (final SearchContext context : activeContexts.values()) {
             freeContext(context.id());
         }
+        for (final ReaderContext readerContext : readerContexts.values()) {
+            freeContext(readerContext.id());
+        }
     }
 
     @Override
@@ -596,11 +605,16 @@ public class SearchService extends AbstractLifecycleComponent implements IndexEv
         IndexShard indexShard = indexService.getShard(request.shardId().getId());
         SearchShardTarget shardTarget = new SearchShardTarget(clusterService.localNode().getId(),
                 indexShard.shardId(), request.getClusterAlias(), OriginalIndices.NONE);
-        Engine.Searcher engineSearcher = indexShard.acquireSearcher("search");
+        final Engine.Searcher engineSearcher;
+        if (request.source() != null && request.source().pointInTimeBuilder() != null) {
+            engineSearcher = acquirePointInTimeSearcher(request.shardId(), request.source().pointInTimeBuilder());
+        } else {
+            engineSearcher = indexShard.acquireSearcher("search");
+        }
 
         final DefaultSearchContext searchContext = new DefaultSearchContext(idGenerator.incrementAndGet(), request, shardTarget,
             engineSearcher, indexService, indexShard, bigArrays, threadPool.estimatedTimeInMillisCounter(), timeout, fetchPhase,
-            request.getClusterAlias());
+            request.getClusterAlias(), indicesService.getIndicesBackgroundFrequencyCache());
         boolean success = false;
         try {
             // we clone the query shard context here just for rewriting otherwise we
@@ -618,6 +632,68 @@ public class SearchService extends AbstractLifecycleComponent implements IndexEv
         return searchContext;
     }
 
+    /**
+     * Opens a reader context that pins the current searcher of the provided shard for a point in time.
+     *
+     * @param keepAlive the time the reader context is kept open after it was last used
+     */
+    public ReaderContext openReaderContext(ShardId shardId, TimeValue keepAlive) {
+        checkKeepAlive(keepAlive.millis());
+        final IndexService indexService = indicesService.indexServiceSafe(shardId.getIndex());
+        final IndexShard indexShard = indexService.getShard(shardId.id());
+        final Engine.Searcher engineSearcher = indexShard.acquireSearcher("point_in_time");
+        final ReaderContext readerContext;
+        try {
+            readerContext = new ReaderContext(idGenerator.incrementAndGet(), indexShard, engineSearcher, keepAlive.millis(),
+                threadPool::relativeTimeInMillis);
+        } catch (Exception e) {
+            engineSearcher.close();
+            throw e;
+        }
+        boolean success = false;
+        try {
+            final ReaderContext previous = readerContexts.put(readerContext.id(), readerContext);
+            assert previous == null;
+            indexShard.getSearchOperationListener().onNewReaderContext(readerContext);
+            success = true;
+            return readerContext;
+        } finally {
+            if (success == false) {
+                // removes the context again and closes the searcher once no search uses it anymore
+                freeContext(readerContext.id());
+            }
+        }
+    }
+
+    /**
+     * Returns a searcher over the reader that the provided point in time pinned for the provided shard. Closing the searcher
+     * releases the reader context but keeps it open until it is freed or its keep alive expires.
+     */
+    private Engine.Searcher acquirePointInTimeSearcher(ShardId shardId, PointInTimeBuilder pointInTime) {
+        final PointInTimeId.ReaderId readerId = PointInTimeId.decode(pointInTime.getId()).getShards().get(shardId);
+        if (readerId == null) {
+            throw new IllegalArgumentException("shard " + shardId + " is not part of the point in time");
+        }
+        final ReaderContext readerContext = readerContexts.get(readerId.getId());
+        if (readerContext == null || readerContext.shardId().equals(shardId) == false || readerContext.tryIncRef() == false) {
+            throw new SearchContextMissingException(readerId.getId());
+        }
+        boolean success = false;
+        try {
+            if (pointInTime.getKeepAlive() != null) {
+                checkKeepAlive(pointInTime.getKeepAlive().millis());
+                readerContext.keepAlive(pointInTime.getKeepAlive().millis());
+            }
+            final Engine.Searcher searcher = readerContext.acquireSearcher("search");
+            success = true;
+            return searcher;
+        } finally {
+            if (success == false) {
+                readerContext.decRef();
+            }
+        }
+    }
+
     private void freeAllContextForIndex(Index index) {
         assert index != null;
         for (SearchContext ctx : activeContexts.values()) {
@@ -625,10 +701,30 @@ public class SearchService extends AbstractLifecycleComponent implements IndexEv
                 freeContext(ctx.id());
             }
         }
+        for (ReaderContext readerContext : readerContexts.values()) {
+            if (index.equals(readerContext.shardId().getIndex())) {
+                freeContext(readerContext.id());
+            }
+        }
     }
 
 
+    /**
+     * Frees the search context or the reader context of a point in time with the provided id.
+     *
+     * @return <code>true</code> if a context was freed
+     */
     public boolean freeContext(long id) {
+        final ReaderContext readerContext = readerContexts.remove(id);
+        if (readerContext != null) {
+            try {
+                readerContext.indexShard().getSearchOperationListener().onFreeReaderContext(readerContext);
+            } finally {
+                // searches that still use the reader hold their own reference
+                readerContext.decRef();
+            }
+            return true;
+        }
         final SearchContext context = removeContext(id);
         if (context != null) {
             assert context.refCount() > 0 : " refCount must be > 0: " + context.refCount();
@@ -663,6 +759,15 @@ public class SearchService extends AbstractLifecycleComponent implements IndexEv
         context.keepAlive(keepAlive);
     }
 
+    private void checkKeepAlive(long keepAlive) {
+        if (keepAlive > maxKeepAlive) {
+            throw new IllegalArgumentException(
+                "Keep alive for point in time (" + TimeValue.timeValueMillis(keepAlive).format() + ") is too large. " +
+                    "It must be less than (" + TimeValue.timeValueMillis(maxKeepAlive).format() + "). " +
+                    "This limit can be set by changing the [" + MAX_KEEPALIVE_SETTING.getKey() + "] cluster level setting.");
+        }
+    }
+
     private void contextProcessing(SearchContext context) {
         // disable timeout while executing a search
         context.accessed(-1);
@@ -917,6 +1022,13 @@ public class SearchService extends AbstractLifecycleComponent implements IndexEv
         return this.activeContexts.size();
     }
 
+    /**
+     * Returns the number of reader contexts that are held open by points in time in this SearchService
+     */
+    public int getActiveReaderContexts() {
+        return this.readerContexts.size();
+    }
+
     public ResponseCollectorService getResponseCollectorService() {
         return this.responseCollectorService;
     }
@@ -938,6 +1050,17 @@ public class SearchService extends AbstractLifecycleComponent implements IndexEv
                     freeContext(context.id());
                 }
             }
+            for (ReaderContext readerContext : readerContexts.values()) {
+                if (readerContext.refCount() > 1) { // it's being searched
+                    continue;
+                }
+                final long lastAccessTime = readerContext.lastAccessTime();
+                if (time - lastAccessTime > readerContext.keepAlive()) {
+                    logger.debug("freeing reader context [{}], time [{}], lastAccessTime [{}], keepAlive [{}]", readerContext.id(), time,
+                        lastAccessTime, readerContext.keepAlive());
+                    freeContext(readerContext.id());
+                }
+            }
         }
     }
 
@@ -34,7 +34,10 @@ import org.elasticsearch.search.query.QueryPhaseExecutionException;
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
 
 /**
  * Aggregation phase of a search request, used to collect aggregations
@@ -48,25 +51,12 @@ public class AggregationPhase implements SearchPhase {
     @Override
     public void preProcess(SearchContext context) {
         if (context.aggregations() != null) {
-            List<Aggregator> collectors = new ArrayList<>();
-            Aggregator[] aggregators;
             try {
                 AggregatorFactories factories = context.aggregations().factories();
-                aggregators = factories.createTopLevelAggregators();
-                for (int i = 0; i < aggregators.length; i++) {
-                    if (aggregators[i] instanceof GlobalAggregator == false) {
-                        collectors.add(aggregators[i]);
-                    }
-                }
+                Aggregator[] aggregators = factories.createTopLevelAggregators();
                 context.aggregations().aggregators(aggregators);
-                if (!collectors.isEmpty()) {
-                    Collector collector = BucketCollector.wrap(collectors);
-                    ((BucketCollector)collector).preCollection();
-                    if (context.getProfilers() != null) {
-                        collector = new InternalProfileCollector(collector, CollectorResult.REASON_AGGREGATION,
-                                // TODO: report on child aggs as well
-                                Collections.emptyList());
-                    }
+                Collector collector = createCollector(context, aggregators);
+                if (collector != null) {
                     context.queryCollectors().put(AggregationPhase.class, collector);
                 }
             } catch (IOException e) {
@@ -75,6 +65,52 @@ public class AggregationPhase implements SearchPhase {
         }
     }
 
+    /**
+     * Creates a new set of top level aggregators that collect an additional slice of the segments of the shard when
+     * it is searched concurrently. The aggregators are registered on the context so that their results are merged
+     * with the ones of the main aggregators in {@link #execute(SearchContext)}.
+     *
+     * @return the collector of the slice or <code>null</code> if no aggregation needs to collect documents during the query
+     */
+    public static Collector createSliceCollector(SearchContext context) {
+        return createSliceCollector(context, null);
+    }
+
+    /**
+     * Same as {@link #createSliceCollector(SearchContext)} but the provided <code>listener</code> is notified with
+     * the aggregations of the slice before they are merged.
+     */
+    public static Collector createSliceCollector(SearchContext context, Consumer<InternalAggregations> listener) {
+        assert context.aggregations() != null;
+        try {
+            Aggregator[] aggregators = context.aggregations().factories().createTopLevelAggregators();
+            context.aggregations().addSliceAggregators(aggregators, listener);
+            return createCollector(context, aggregators);
+        } catch (IOException e) {
+            throw new AggregationInitializationException("Could not initialize aggregators", e);
+        }
+    }
+
+    private static Collector createCollector(SearchContext context, Aggregator[] aggregators) throws IOException {
+        List<Aggregator> collectors = new ArrayList<>();
+        for (int i = 0; i < aggregators.length; i++) {
+            if (aggregators[i] instanceof GlobalAggregator == false) {
+                collectors.add(aggregators[i]);
+            }
+        }
+        if (collectors.isEmpty()) {
+            return null;
+        }
+        Collector collector = BucketCollector.wrap(collectors);
+        ((BucketCollector)collector).preCollection();
+        if (context.getProfilers() != null) {
+            collector = new InternalProfileCollector(collector, CollectorResult.REASON_AGGREGATION,
+                    // TODO: report on child aggs as well
+                    Collections.emptyList());
+        }
+        return collector;
+    }
+
     @Override
     public void execute(SearchContext context) {
         if (context.aggregations() == null) {
@@ -132,7 +168,47 @@ public class AggregationPhase implements SearchPhase {
                 throw new AggregationExecutionException("Failed to build aggregation [" + aggregator.name() + "]", e);
             }
         }
-        context.queryResult().aggregations(new InternalAggregations(aggregations));
+        InternalAggregations internalAggregations = new InternalAggregations(aggregations);
+        List<Aggregator[]> sliceAggregators = context.aggregations().sliceAggregators();
+        List<InternalAggregations> cachedAggregations = context.aggregations().cachedAggregations();
+        if (sliceAggregators.isEmpty() == false || cachedAggregations.isEmpty() == false) {
+            // the shard was searched concurrently or per segment, merge the results of each slice like the coordinating node
+            // would merge the results of different shards
+            List<InternalAggregations> slices = new ArrayList<>(sliceAggregators.size() + cachedAggregations.size() + 1);
+            slices.add(internalAggregations);
+            for (int s = 0; s < sliceAggregators.size(); s++) {
+                Aggregator[] slice = sliceAggregators.get(s);
+                List<InternalAggregation> sliceAggregations = new ArrayList<>(slice.length);
+                context.aggregations().resetBucketMultiConsumer();
+                for (Aggregator aggregator : slice) {
+                    if (aggregator instanceof GlobalAggregator) {
+                        // global aggregators are only collected by the main aggregators
+                        continue;
+                    }
+                    try {
+                        aggregator.postCollection();
+                        sliceAggregations.add(aggregator.buildAggregation(0));
+                    } catch (IOException e) {
+                        throw new AggregationExecutionException("Failed to build aggregation [" + aggregator.name() + "]", e);
+                    }
+                }
+                InternalAggregations sliceResult = new InternalAggregations(sliceAggregations);
+                Consumer<InternalAggregations> listener = context.aggregations().sliceListeners().get(s);
+                if (listener != null) {
+                    listener.accept(sliceResult);
+                }
+                slices.add(sliceResult);
+            }
+            slices.addAll(cachedAggregations);
+            // a partial reduce never runs scripts so the script service is not needed
+            InternalAggregation.ReduceContext reduceContext = new InternalAggregation.ReduceContext(context.bigArrays(), null, false);
+            internalAggregations = InternalAggregations.reduce(slices, reduceContext);
+            if (sliceAggregators.isEmpty() == false) {
+                // the aggregators kept all their buckets in each slice, select the buckets of the shard from the merged slices
+                internalAggregations = selectShardBuckets(aggregators, internalAggregations);
+            }
+        }
+        context.queryResult().aggregations(internalAggregations);
         try {
             List<PipelineAggregator> pipelineAggregators = context.aggregations().factories().createPipelineAggregators();
             List<SiblingPipelineAggregator> siblingPipelineAggregators = new ArrayList<>(pipelineAggregators.size());
@@ -155,4 +231,16 @@ public class AggregationPhase implements SearchPhase {
         context.queryCollectors().remove(AggregationPhase.class);
     }
 
+    private static InternalAggregations selectShardBuckets(Aggregator[] aggregators, InternalAggregations merged) {
+        Map<String, Aggregator> aggregatorsByName = new HashMap<>(aggregators.length);
+        for (Aggregator aggregator : aggregators) {
+            aggregatorsByName.put(aggregator.name(), aggregator);
+        }
+        List<InternalAggregation> selected = new ArrayList<>(aggregators.length);
+        for (Aggregation aggregation : merged) {
+            selected.add(aggregatorsByName.get(aggregation.getName()).selectShardBuckets((InternalAggregation) aggregation));
+        }
+        return new InternalAggregations(selected);
+    }
+
 }
@@ -0,0 +1,156 @@
+/*
+ * Licensed to Elasticsearch under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Elasticsearch licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.elasticsearch.search.aggregations;
+
+import org.elasticsearch.search.aggregations.InternalAggregation.ReduceContext;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Supplier;
+
+/**
+ * Incrementally reduces {@link InternalAggregations} as they arrive. Each aggregation is folded into an
+ * {@link InternalAggregation.Accumulator} if it provides one, which means that the partial results don't need to be
+ * buffered and can be released right away. Other aggregations are buffered and partially reduced every
+ * <code>bufferSize</code> results.
+ */
+public final class AggregationsAccumulator {
+
+    private final Supplier<ReduceContext> reduceContextSupplier;
+    private final ReduceContext reduceContext;
+    private final int bufferSize;
+    private final Map<String, Slot> slots = new LinkedHashMap<>();
+    private int numAccumulated;
+
+    /**
+     * Creates a new {@link AggregationsAccumulator}
+     * @param reduceContextSupplier supplies the contexts of partial reduces
+     * @param bufferSize the number of results of aggregations that don't support accumulation to buffer before
+     *                   they are partially reduced
+     */
+    public AggregationsAccumulator(Supplier<ReduceContext> reduceContextSupplier, int bufferSize) {
+        this(reduceContextSupplier, reduceContextSupplier.get(), bufferSize);
+    }
+
+    private AggregationsAccumulator(Supplier<ReduceContext> reduceContextSupplier, ReduceContext reduceContext, int bufferSize) {
+        if (bufferSize < 2) {
+            throw new IllegalArgumentException("buffer size must be >= 2");
+        }
+        this.reduceContextSupplier = reduceContextSupplier;
+        this.reduceContext = reduceContext;
+        this.bufferSize = bufferSize;
+    }
+
+    /**
+     * Returns the context shared by all the accumulators of this tree of aggregations. It must be used to account for
+     * the buckets created by accumulators.
+     */
+    public ReduceContext reduceContext() {
+        return reduceContext;
+    }
+
+    /**
+     * Creates an accumulator for the sub-aggregations of a bucket.
+     */
+    public AggregationsAccumulator newSubAccumulator() {
+        return new AggregationsAccumulator(reduceContextSupplier, reduceContext, bufferSize);
+    }
+
+    /**
+     * Folds the provided partial results into this accumulator.
+     */
+    public void accumulate(InternalAggregations aggregations) {
+        for (Aggregation aggregation : aggregations) {
+            slots.computeIfAbsent(aggregation.getName(), name -> new Slot()).accumulate((InternalAggregation) aggregation);
+        }
+        numAccumulated++;
+    }
+
+    /**
+     * Returns the number of partial results that were accumulated so far.
+     */
+    public int getNumAccumulated() {
+        return numAccumulated;
+    }
+
+    /**
+     * Builds the aggregations that a partial reduce of all the accumulated results would have returned.
+     */
+    public InternalAggregations build() {
+        List<InternalAggregation> aggregations = new ArrayList<>(slots.size());
+        for (Slot slot : slots.values()) {
+            aggregations.add(slot.build());
+        }
+        return new InternalAggregations(aggregations);
+    }
+
+    /**
+     * The partial results of an aggregation, either accumulated or buffered.
+     */
+    private class Slot {
+        private final List<InternalAggregation> buffer = new ArrayList<>();
+        private InternalAggregation.Accumulator accumulator;
+        private boolean streaming = true;
+
+        void accumulate(InternalAggregation aggregation) {
+            if (streaming && accumulator == null) {
+                accumulator = aggregation.createAccumulator(AggregationsAccumulator.this);
+                if (accumulator != null && buffer.isEmpty() == false) {
+                    // results that were received before an accumulator could be created, e.g. unmapped ones
+                    List<InternalAggregation> buffered = new ArrayList<>(buffer);
+                    buffer.clear();
+                    for (InternalAggregation partial : buffered) {
+                        add(partial);
+                    }
+                }
+            }
+            add(aggregation);
+        }
+
+        private void add(InternalAggregation aggregation) {
+            if (accumulator != null) {
+                if (accumulator.accumulate(aggregation)) {
+                    return;
+                }
+                // the accumulator can't handle this result, from now on results are reduced in batches
+                buffer.add(accumulator.build());
+                accumulator = null;
+                streaming = false;
+            }
+            buffer.add(aggregation);
+            if (buffer.size() >= bufferSize) {
+                InternalAggregation reduced = buffer.get(0).reduce(buffer, reduceContextSupplier.get());
+                buffer.clear();
+                buffer.add(reduced);
+            }
+        }
+
+        InternalAggregation build() {
+            if (accumulator != null) {
+                return accumulator.build();
+            }
+            if (buffer.size() == 1) {
+                return buffer.get(0);
+            }
+            return buffer.get(0).reduce(new ArrayList<>(buffer), reduceContextSupplier.get());
+        }
+    }
+}
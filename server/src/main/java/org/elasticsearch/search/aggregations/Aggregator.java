@@ -100,6 +100,16 @@ public abstract class Aggregator extends BucketCollector implements Releasable {
      */
     public abstract InternalAggregation buildEmptyAggregation();
 
+    /**
+     * Selects the buckets that the shard result keeps from {@code merged}, the merged results of this aggregator in all slices
+     * of a shard that was searched concurrently. Aggregators that only keep the top buckets of the shard keep all their buckets
+     * when the shard has slices (see {@link SearchContextAggregations#hasSlices()}) and select the top ones here, so that the
+     * shard result is the same as if the shard was searched sequentially.
+     */
+    public InternalAggregation selectShardBuckets(InternalAggregation merged) {
+        return merged;
+    }
+
     /** Aggregation mode for sub aggregations. */
     public enum SubAggCollectionMode implements Writeable {
 
@@ -22,6 +22,7 @@ import org.apache.lucene.index.LeafReaderContext;
 import org.elasticsearch.common.breaker.CircuitBreaker;
 import org.elasticsearch.common.breaker.CircuitBreakingException;
 import org.elasticsearch.indices.breaker.CircuitBreakerService;
+import org.elasticsearch.search.aggregations.bucket.InternalSingleBucketAggregation;
 import org.elasticsearch.search.aggregations.pipeline.PipelineAggregator;
 import org.elasticsearch.search.internal.SearchContext;
 import org.elasticsearch.search.internal.SearchContext.Lifetime;
@@ -222,6 +223,56 @@ public abstract class AggregatorBase extends Aggregator {
         return subAggregatorbyName.get(aggName);
     }
 
+    /**
+     * Selects the shard buckets of the sub-aggregations in each bucket of {@code merged}.
+     */
+    @Override
+    public InternalAggregation selectShardBuckets(InternalAggregation merged) {
+        if (subAggregators.length == 0) {
+            return merged;
+        }
+        if (merged instanceof InternalMultiBucketAggregation) {
+            return selectBucketsShardBuckets((InternalMultiBucketAggregation<?, ?>) merged);
+        } else if (merged instanceof InternalSingleBucketAggregation) {
+            InternalSingleBucketAggregation single = (InternalSingleBucketAggregation) merged;
+            InternalAggregations subAggregations = (InternalAggregations) single.getAggregations();
+            InternalAggregations selected = selectSubAggregationsShardBuckets(subAggregations);
+            return selected == subAggregations ? merged : single.create(selected);
+        }
+        return merged;
+    }
+
+    @SuppressWarnings({ "unchecked", "rawtypes" })
+    private InternalAggregation selectBucketsShardBuckets(InternalMultiBucketAggregation merged) {
+        List<InternalMultiBucketAggregation.InternalBucket> buckets = new ArrayList<>(merged.getBuckets().size());
+        boolean changed = false;
+        for (Object object : merged.getBuckets()) {
+            InternalMultiBucketAggregation.InternalBucket bucket = (InternalMultiBucketAggregation.InternalBucket) object;
+            InternalAggregations subAggregations = (InternalAggregations) bucket.getAggregations();
+            InternalAggregations selected = selectSubAggregationsShardBuckets(subAggregations);
+            if (selected == subAggregations) {
+                buckets.add(bucket);
+            } else {
+                buckets.add(merged.createBucket(selected, bucket));
+                changed = true;
+            }
+        }
+        return changed ? merged.create(buckets) : merged;
+    }
+
+    private InternalAggregations selectSubAggregationsShardBuckets(InternalAggregations aggregations) {
+        List<InternalAggregation> selected = new ArrayList<>();
+        boolean changed = false;
+        for (Aggregation aggregation : aggregations) {
+            InternalAggregation internal = (InternalAggregation) aggregation;
+            Aggregator subAggregator = subAggregator(aggregation.getName());
+            InternalAggregation selectedAggregation = subAggregator == null ? internal : subAggregator.selectShardBuckets(internal);
+            changed |= selectedAggregation != internal;
+            selected.add(selectedAggregation);
+        }
+        return changed ? new InternalAggregations(selected) : aggregations;
+    }
+
     /**
      * @return  The current aggregation context.
      */
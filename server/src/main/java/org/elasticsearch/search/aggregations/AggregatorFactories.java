@@ -223,6 +223,32 @@ public class AggregatorFactories {
         return aggregators;
     }
 
+    /**
+     * Returns <code>true</code> if all the aggregators created by these factories can collect disjoint slices of
+     * the segments of a shard in parallel and have their partial results merged on the shard.
+     */
+    public boolean supportsConcurrentSegmentSearch() {
+        for (AggregatorFactory<?> factory : factories) {
+            if (factory.supportsConcurrentSegmentSearch() == false) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Returns <code>true</code> if the results that all the aggregators created by these factories build for each segment
+     * of a shard can be cached and merged into the result of the whole shard.
+     */
+    public boolean supportsSegmentCaching() {
+        for (AggregatorFactory<?> factory : factories) {
+            if (factory.supportsSegmentCaching() == false) {
+                return false;
+            }
+        }
+        return true;
+    }
+
     /**
      * @return the number of sub-aggregator factories not including pipeline
      *         aggregator factories
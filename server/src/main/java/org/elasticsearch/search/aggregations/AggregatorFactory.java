@@ -83,6 +83,12 @@ public abstract class AggregatorFactory<AF extends AggregatorFactory<AF>> {
             throw new UnsupportedOperationException();
         }
 
+        @Override
+        public InternalAggregation selectShardBuckets(InternalAggregation merged) {
+            // all wrapped aggregators share the same configuration
+            return first.selectShardBuckets(merged);
+        }
+
         @Override
         public void preCollection() throws IOException {
             for (long i = 0; i < aggregators.size(); ++i) {
@@ -220,6 +226,25 @@ public abstract class AggregatorFactory<AF extends AggregatorFactory<AF>> {
         return parent;
     }
 
+    /**
+     * Returns <code>true</code> if the aggregators created by this factory can collect disjoint slices of the segments
+     * of a shard in parallel, the partial results of each slice being merged with a non-final reduce on the shard.
+     * Factories whose aggregators rely on shard-wide statistics or that visit the whole shard on their own must
+     * return <code>false</code>.
+     */
+    public boolean supportsConcurrentSegmentSearch() {
+        return factories.supportsConcurrentSegmentSearch();
+    }
+
+    /**
+     * Returns <code>true</code> if the results that the aggregators created by this factory build for each segment of a
+     * shard can be cached and merged into the same result as the one they would build for the whole shard. Factories whose
+     * aggregators trim their buckets, for instance to the <code>shard_size</code>, must return <code>false</code>.
+     */
+    public boolean supportsSegmentCaching() {
+        return supportsConcurrentSegmentSearch() && factories.supportsSegmentCaching();
+    }
+
     /**
      * Utility method. Given an {@link AggregatorFactory} that creates
      * {@link Aggregator}s that only know how to collect bucket <tt>0</tt>, this
@@ -144,6 +144,38 @@ public abstract class InternalAggregation implements Aggregation, NamedWriteable
 
     public abstract InternalAggregation doReduce(List<InternalAggregation> aggregations, ReduceContext reduceContext);
 
+    /**
+     * Creates an {@link Accumulator} that folds the partial results of this aggregation into a single mutable state as
+     * they arrive, so that they don't need to be buffered until the next partial reduce. Returns <code>null</code>
+     * if this aggregation can only be reduced in batches with {@link #reduce(List, ReduceContext)}, which is the default.
+     *
+     * @param parent the accumulator of the aggregations this aggregation belongs to, used to create accumulators for
+     *               the sub-aggregations of buckets
+     */
+    public Accumulator createAccumulator(AggregationsAccumulator parent) {
+        return null;
+    }
+
+    /**
+     * Mutable state that accumulates the partial results of an aggregation, see
+     * {@link InternalAggregation#createAccumulator(AggregationsAccumulator)}. Implementations must not keep references to
+     * the buckets or sketches of the accumulated results so that they can be garbage collected right away.
+     */
+    public abstract static class Accumulator {
+
+        /**
+         * Folds the provided partial result into this accumulator. Returns <code>false</code> if the result cannot be
+         * accumulated, for instance because its type is not the one of the previous results, in which case the caller
+         * must fall back to {@link InternalAggregation#reduce(List, ReduceContext)}.
+         */
+        public abstract boolean accumulate(InternalAggregation aggregation);
+
+        /**
+         * Builds the aggregation that a partial reduce of all the accumulated results would have returned.
+         */
+        public abstract InternalAggregation build();
+    }
+
     /**
      * Get the value of specified path in the aggregation.
      *
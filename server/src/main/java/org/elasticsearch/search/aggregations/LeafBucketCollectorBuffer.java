@@ -0,0 +1,97 @@
+/*
+ * Licensed to Elasticsearch under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Elasticsearch licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.elasticsearch.search.aggregations;
+
+import org.apache.lucene.search.Scorer;
+
+import java.io.IOException;
+
+/**
+ * Buffers the docs that are collected in the same bucket in order to collect them in blocks with
+ * {@link LeafBucketCollector#collect(int[], int, long)}. Buffered docs are collected when the buffer is full, when a doc is
+ * collected in another bucket, when the collector of the next segment is wrapped and when {@link #flush()} is called, which
+ * aggregators must do in {@link AggregatorBase#doPostCollection()}.
+ * <p>
+ * Docs are collected after the scorer moved past them, so this must not be used by collectors that need scores.
+ */
+public final class LeafBucketCollectorBuffer {
+
+    public static final int DEFAULT_SIZE = 256;
+
+    private final int[] docs;
+    private int count;
+    private long bucket;
+    private LeafBucketCollector in;
+
+    public LeafBucketCollectorBuffer() {
+        this(DEFAULT_SIZE);
+    }
+
+    public LeafBucketCollectorBuffer(int size) {
+        if (size < 1) {
+            throw new IllegalArgumentException("size must be greater than 0, got " + size);
+        }
+        this.docs = new int[size];
+    }
+
+    /**
+     * Collects the docs of the previous segment and returns a collector that buffers the docs that are collected in
+     * <code>in</code>.
+     */
+    public LeafBucketCollector wrap(LeafBucketCollector in) throws IOException {
+        flush();
+        this.in = in;
+        return new LeafBucketCollector() {
+            @Override
+            public void setScorer(Scorer scorer) throws IOException {
+                in.setScorer(scorer);
+            }
+
+            @Override
+            public void collect(int doc, long bucket) throws IOException {
+                if (count == docs.length || (count > 0 && bucket != LeafBucketCollectorBuffer.this.bucket)) {
+                    flush();
+                }
+                LeafBucketCollectorBuffer.this.bucket = bucket;
+                docs[count++] = doc;
+            }
+
+            @Override
+            public void collect(int[] docs, int count, long bucket) throws IOException {
+                flush();
+                in.collect(docs, count, bucket);
+            }
+        };
+    }
+
+    /**
+     * Collects the buffered docs.
+     */
+    public void flush() throws IOException {
+        final int count = this.count;
+        this.count = 0;
+        if (count == 1) {
+            // not worth setting up a block
+            in.collect(docs[0], bucket);
+        } else if (count > 1) {
+            in.collect(docs, count, bucket);
+        }
+    }
+}
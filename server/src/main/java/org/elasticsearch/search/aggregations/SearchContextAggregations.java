@@ -18,6 +18,10 @@
  */
 package org.elasticsearch.search.aggregations;
 
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.function.Consumer;
 import java.util.function.IntConsumer;
 
 import static org.elasticsearch.search.aggregations.MultiBucketConsumerService.MultiBucketConsumer;
@@ -30,6 +34,9 @@ public class SearchContextAggregations {
     private final AggregatorFactories factories;
     private final MultiBucketConsumer multiBucketConsumer;
     private Aggregator[] aggregators;
+    private final List<Aggregator[]> sliceAggregators = new ArrayList<>();
+    private final List<Consumer<InternalAggregations>> sliceListeners = new ArrayList<>();
+    private final List<InternalAggregations> cachedAggregations = new ArrayList<>();
 
     /**
      * Creates a new aggregation context with the parsed aggregator factories
@@ -56,6 +63,64 @@ public class SearchContextAggregations {
         this.aggregators = aggregators;
     }
 
+    /**
+     * Registers the top level aggregators that were created to collect an additional slice of the segments
+     * when the shard is searched concurrently. Their results are merged with the ones of {@link #aggregators()}.
+     *
+     * @param aggregators The top level aggregators of the slice.
+     */
+    public void addSliceAggregators(Aggregator[] aggregators) {
+        addSliceAggregators(aggregators, null);
+    }
+
+    /**
+     * Registers the top level aggregators that were created to collect an additional slice of the segments.
+     *
+     * @param aggregators The top level aggregators of the slice.
+     * @param listener    If not <code>null</code>, notified with the aggregations of the slice once they are built
+     */
+    public void addSliceAggregators(Aggregator[] aggregators, Consumer<InternalAggregations> listener) {
+        this.sliceAggregators.add(aggregators);
+        this.sliceListeners.add(listener);
+    }
+
+    /**
+     * Returns the top level aggregators of the additional slices registered with {@link #addSliceAggregators(Aggregator[])}.
+     */
+    public List<Aggregator[]> sliceAggregators() {
+        return Collections.unmodifiableList(sliceAggregators);
+    }
+
+    /**
+     * Returns true if the shard is collected in several slices whose aggregations are merged on the shard.
+     */
+    public boolean hasSlices() {
+        return sliceAggregators.isEmpty() == false;
+    }
+
+    /**
+     * Returns the listeners of the slices, in the order of {@link #sliceAggregators()}. Slices without listener have a
+     * <code>null</code> entry.
+     */
+    public List<Consumer<InternalAggregations>> sliceListeners() {
+        return Collections.unmodifiableList(sliceListeners);
+    }
+
+    /**
+     * Registers the previously computed aggregations of a slice of the segments that was not collected by this request.
+     * They are merged with the results of {@link #aggregators()} and of the other slices.
+     */
+    public void addCachedAggregations(InternalAggregations aggregations) {
+        this.cachedAggregations.add(aggregations);
+    }
+
+    /**
+     * Returns the aggregations registered with {@link #addCachedAggregations(InternalAggregations)}.
+     */
+    public List<InternalAggregations> cachedAggregations() {
+        return Collections.unmodifiableList(cachedAggregations);
+    }
+
     /**
      * Returns a consumer for multi bucket aggregation that checks the total number of buckets
      * created in the response
@@ -101,6 +101,11 @@ public abstract class DeferringBucketCollector extends BucketCollector {
             return in.buildEmptyAggregation();
         }
 
+        @Override
+        public InternalAggregation selectShardBuckets(InternalAggregation merged) {
+            return in.selectShardBuckets(merged);
+        }
+
         @Override
         public LeafBucketCollector getLeafCollector(LeafReaderContext ctx) throws IOException {
             throw new IllegalStateException(
@@ -20,12 +20,17 @@
 package org.elasticsearch.search.aggregations.bucket.composite;
 
 import org.apache.lucene.index.LeafReaderContext;
+import org.apache.lucene.search.BoostQuery;
 import org.apache.lucene.search.CollectionTerminatedException;
+import org.apache.lucene.search.ConstantScoreQuery;
 import org.apache.lucene.search.DocIdSet;
 import org.apache.lucene.search.DocIdSetIterator;
+import org.apache.lucene.search.MatchAllDocsQuery;
 import org.apache.lucene.search.Query;
 import org.apache.lucene.search.Scorer;
 import org.apache.lucene.search.Weight;
+import org.apache.lucene.util.Bits;
+import org.apache.lucene.util.DocIdSetBuilder;
 import org.apache.lucene.util.RoaringDocIdSet;
 import org.elasticsearch.search.aggregations.Aggregator;
 import org.elasticsearch.search.aggregations.AggregatorFactories;
@@ -48,7 +53,9 @@ final class CompositeAggregator extends BucketsAggregator {
     private final int size;
     private final CompositeValuesSourceConfig[] sources;
     private final List<String> sourceNames;
-    private final boolean canEarlyTerminate;
+    private final int sortPrefixLength;
+    private final SortedDocsProducer sortedDocsProducer;
+    private final Comparable<?> leadAfterValue;
 
     private final TreeMap<Integer, Integer> keys;
     private final CompositeValuesComparator array;
@@ -56,6 +63,8 @@ final class CompositeAggregator extends BucketsAggregator {
     private final List<LeafContext> contexts = new ArrayList<>();
     private LeafContext leaf;
     private RoaringDocIdSet.Builder builder;
+    private DocIdSetBuilder sortedBuilder;
+    private boolean hasNonCompetitiveKey;
 
     CompositeAggregator(String name, AggregatorFactories factories, SearchContext context, Aggregator parent,
                             List<PipelineAggregator> pipelineAggregators, Map<String, Object> metaData,
@@ -71,12 +80,65 @@ final class CompositeAggregator extends BucketsAggregator {
             array.setTop(rawAfterKey.values());
         }
         this.keys = new TreeMap<>(array::compare);
-        this.canEarlyTerminate = Arrays.stream(sources)
-            .allMatch(CompositeValuesSourceConfig::canEarlyTerminate);
+        this.sortPrefixLength = computeSortPrefixLength(sources);
+        if (sortPrefixLength == 0 && sources[0].sortedDocsProducer() != null && visitsAllDocs(context)) {
+            this.sortedDocsProducer = sources[0].sortedDocsProducer();
+            this.leadAfterValue = rawAfterKey != null ? rawAfterKey.get(0) : null;
+        } else {
+            this.sortedDocsProducer = null;
+            this.leadAfterValue = null;
+        }
+    }
+
+    /**
+     * Returns the number of leading sources that follow the index sort. A source that rounds its values ends the prefix
+     * since the documents that share a key are not sorted by the values of the next sources.
+     */
+    private static int computeSortPrefixLength(CompositeValuesSourceConfig[] sources) {
+        int length = 0;
+        for (CompositeValuesSourceConfig source : sources) {
+            if (source.canEarlyTerminate() == false) {
+                break;
+            }
+            length++;
+            if (source.roundsValues()) {
+                break;
+            }
+        }
+        return length;
+    }
+
+    /**
+     * Returns true if the aggregation collects all live documents of the shard, in which case the documents can be
+     * visited in the order of the leading source rather than through the query.
+     */
+    private static boolean visitsAllDocs(SearchContext context) {
+        if (context.minimumScore() != null || context.terminateAfter() != SearchContext.DEFAULT_TERMINATE_AFTER) {
+            return false;
+        }
+        Query query = context.query();
+        while (true) {
+            if (query instanceof ConstantScoreQuery) {
+                query = ((ConstantScoreQuery) query).getQuery();
+            } else if (query instanceof BoostQuery) {
+                query = ((BoostQuery) query).getQuery();
+            } else {
+                break;
+            }
+        }
+        return query == null || query.getClass() == MatchAllDocsQuery.class;
     }
 
     boolean canEarlyTerminate() {
-        return canEarlyTerminate;
+        return sortPrefixLength > 0;
+    }
+
+    int sortPrefixLength() {
+        return sortPrefixLength;
+    }
+
+    boolean useSortedDocsProducer() {
+        return sortedDocsProducer != null;
     }
 
     private int[] getReverseMuls() {
@@ -88,7 +150,57 @@ final class CompositeAggregator extends BucketsAggregator {
         assert zeroBucket == 0L;
         consumeBucketsAndMaybeBreak(keys.size());
 
-        // Replay all documents that contain at least one top bucket (collected during the first pass).
+        int num = Math.min(size, keys.size());
+        final InternalComposite.InternalBucket[] buckets = new InternalComposite.InternalBucket[num];
+        final int[] reverseMuls = getReverseMuls();
+        int pos = 0;
+        for (int slot : keys.keySet()) {
+            CompositeKey key = array.toCompositeKey(slot);
+            InternalAggregations aggs = bucketAggregations(slot);
+            int docCount = bucketDocCount(slot);
+            buckets[pos++] = new InternalComposite.InternalBucket(sourceNames, key, reverseMuls, docCount, aggs);
+        }
+        return new InternalComposite(name, size, sourceNames, Arrays.asList(buckets), reverseMuls, pipelineAggregators(), metaData());
+    }
+
+    @Override
+    public InternalAggregation buildEmptyAggregation() {
+        final int[] reverseMuls = getReverseMuls();
+        return new InternalComposite(name, size, sourceNames, Collections.emptyList(), reverseMuls, pipelineAggregators(), metaData());
+    }
+
+    @Override
+    protected LeafBucketCollector getLeafCollector(LeafReaderContext ctx, LeafBucketCollector sub) throws IOException {
+        finishLeaf();
+        leaf = new LeafContext(ctx);
+        if (sortedDocsProducer != null) {
+            processLeafInSortedOrder(ctx);
+            // all the documents of this segment have been visited
+            return LeafBucketCollector.NO_OP_COLLECTOR;
+        }
+        builder = new RoaringDocIdSet.Builder(ctx.reader().maxDoc());
+        final CompositeValuesSource.Collector inner = array.getLeafCollector(ctx, getFirstPassCollector());
+        return new LeafBucketCollector() {
+            @Override
+            public void collect(int doc, long zeroBucket) throws IOException {
+                assert zeroBucket == 0L;
+                inner.collect(doc);
+            }
+        };
+    }
+
+    @Override
+    protected void doPostCollection() throws IOException {
+        finishLeaf();
+        // the sub-aggregations are post collected once the replay is done
+        replayTopBuckets();
+    }
+
+    /**
+     * Replays all documents that contain at least one top bucket (collected during the first pass) on the sub-aggregations,
+     * with fresh leaf collectors since those of the first pass were never positioned on these documents.
+     */
+    private void replayTopBuckets() throws IOException {
         grow(keys.size()+1);
         final boolean needsScores = needsScores();
         Weight weight = null;
@@ -101,8 +213,9 @@ final class CompositeAggregator extends BucketsAggregator {
             if (docIdSetIterator == null) {
                 continue;
             }
+            final LeafBucketCollector subCollector = collectableSubAggregators.getLeafCollector(context.ctx);
             final CompositeValuesSource.Collector collector =
-                array.getLeafCollector(context.ctx, getSecondPassCollector(context.subCollector));
+                array.getLeafCollector(context.ctx, getSecondPassCollector(subCollector));
             int docID;
             DocIdSetIterator scorerIt = null;
             if (needsScores) {
@@ -110,7 +223,7 @@ final class CompositeAggregator extends BucketsAggregator {
                 // We don't need to check if the scorer is null
                 // since we are sure that there are documents to replay (docIdSetIterator it not empty).
                 scorerIt = scorer.iterator();
-                context.subCollector.setScorer(scorer);
+                subCollector.setScorer(scorer);
             }
             while ((docID = docIdSetIterator.nextDoc()) != DocIdSetIterator.NO_MORE_DOCS) {
                 if (needsScores) {
@@ -122,55 +235,54 @@ final class CompositeAggregator extends BucketsAggregator {
                 collector.collect(docID);
             }
         }
-
-        int num = Math.min(size, keys.size());
-        final InternalComposite.InternalBucket[] buckets = new InternalComposite.InternalBucket[num];
-        final int[] reverseMuls = getReverseMuls();
-        int pos = 0;
-        for (int slot : keys.keySet()) {
-            CompositeKey key = array.toCompositeKey(slot);
-            InternalAggregations aggs = bucketAggregations(slot);
-            int docCount = bucketDocCount(slot);
-            buckets[pos++] = new InternalComposite.InternalBucket(sourceNames, key, reverseMuls, docCount, aggs);
-        }
-        return new InternalComposite(name, size, sourceNames, Arrays.asList(buckets), reverseMuls, pipelineAggregators(), metaData());
-    }
-
-    @Override
-    public InternalAggregation buildEmptyAggregation() {
-        final int[] reverseMuls = getReverseMuls();
-        return new InternalComposite(name, size, sourceNames, Collections.emptyList(), reverseMuls, pipelineAggregators(), metaData());
     }
 
-    @Override
-    protected LeafBucketCollector getLeafCollector(LeafReaderContext ctx, LeafBucketCollector sub) throws IOException {
+    private void finishLeaf() {
         if (leaf != null) {
-            leaf.docIdSet = builder.build();
+            if (sortedBuilder != null) {
+                leaf.docIdSet = sortedBuilder.build();
+                sortedBuilder = null;
+            } else {
+                leaf.docIdSet = builder.build();
+            }
             contexts.add(leaf);
+            leaf = null;
         }
-        leaf = new LeafContext(ctx, sub);
-        builder = new RoaringDocIdSet.Builder(ctx.reader().maxDoc());
-        final CompositeValuesSource.Collector inner = array.getLeafCollector(ctx, getFirstPassCollector());
-        return new LeafBucketCollector() {
-            @Override
-            public void collect(int doc, long zeroBucket) throws IOException {
-                assert zeroBucket == 0L;
-                inner.collect(doc);
+    }
+
+    /**
+     * Visits the documents of the segment in the order of the leading source and stops as soon as a group of documents
+     * that share a leading value produces a key that is greater than the last key of the full queue:
+     * the documents with greater leading values cannot produce a competitive key.
+     */
+    private void processLeafInSortedOrder(LeafReaderContext ctx) throws IOException {
+        sortedBuilder = new DocIdSetBuilder(ctx.reader().maxDoc());
+        final Bits liveDocs = ctx.reader().getLiveDocs();
+        final CompositeValuesSource.Collector firstPassCollector = getFirstPassCollector();
+        sortedDocsProducer.processLeaf(ctx, leadAfterValue, (value, docs) -> {
+            final CompositeValuesSource.Collector collector = array.getLeafCollector(value, ctx, firstPassCollector);
+            hasNonCompetitiveKey = false;
+            for (int doc = docs.nextDoc(); doc != DocIdSetIterator.NO_MORE_DOCS; doc = docs.nextDoc()) {
+                if (liveDocs == null || liveDocs.get(doc)) {
+                    collector.collect(doc);
+                }
             }
-        };
+            return hasNonCompetitiveKey == false;
+        });
     }
 
-    @Override
-    protected void doPostCollection() throws IOException {
-        if (leaf != null) {
-            leaf.docIdSet = builder.build();
-            contexts.add(leaf);
+    private void addDoc(int doc) {
+        if (sortedBuilder != null) {
+            sortedBuilder.grow(1).add(doc);
+        } else {
+            builder.add(doc);
         }
     }
 
     /**
      * The first pass selects the top N composite buckets from all matching documents.
-     * It also records all doc ids that contain a top N composite bucket in a {@link RoaringDocIdSet} in order to be
+     * It also records all doc ids that contain a top N composite bucket in a {@link RoaringDocIdSet}
+     * (or a {@link DocIdSetBuilder} if the documents are visited in sorted order) in order to be
      * able to replay the collection filtered on the best buckets only.
      */
     private CompositeValuesSource.Collector getFirstPassCollector() {
@@ -184,26 +296,25 @@ final class CompositeAggregator extends BucketsAggregator {
                 if (keys.containsKey(0)) {
                     // This key is already in the top N, skip it for now.
                     if (doc != lastDoc) {
-                        builder.add(doc);
+                        addDoc(doc);
                         lastDoc = doc;
                     }
                     return;
                 }
                 if (array.hasTop() && array.compareTop(0) <= 0) {
-                    // This key is greater than the top value collected in the previous round.
-                    if (canEarlyTerminate) {
-                        // The index sort matches the composite sort, we can early terminate this segment.
-                        throw new CollectionTerminatedException();
-                    }
-                    // just skip this key for now
+                    // This key is smaller than or equal to the top value collected in the previous round,
+                    // the next documents of a sorted segment can still produce competitive keys so we just skip it.
                     return;
                 }
                 if (keys.size() >= size) {
                     // The tree map is full, check if the candidate key should be kept.
-                    if (array.compare(0, keys.lastKey()) > 0) {
+                    final int lastKey = keys.lastKey();
+                    if (array.compare(0, lastKey) > 0) {
                         // The candidate key is not competitive
-                        if (canEarlyTerminate) {
-                            // The index sort matches the composite sort, we can early terminate this segment.
+                        hasNonCompetitiveKey = true;
+                        if (sortPrefixLength > 0 && array.comparePrefix(0, lastKey, sortPrefixLength) > 0) {
+                            // The index sort matches the prefix of the composite sort and the prefix of the candidate is
+                            // greater than the prefix of the last key, we can early terminate this segment.
                             throw new CollectionTerminatedException();
                         }
                         // just skip this key
@@ -225,7 +336,7 @@ final class CompositeAggregator extends BucketsAggregator {
                 array.move(0, newSlot);
                 keys.put(newSlot, newSlot);
                 if (doc != lastDoc) {
-                    builder.add(doc);
+                    addDoc(doc);
                     lastDoc = doc;
                 }
             }
@@ -250,12 +361,10 @@ final class CompositeAggregator extends BucketsAggregator {
 
     static class LeafContext {
         final LeafReaderContext ctx;
-        final LeafBucketCollector subCollector;
         DocIdSet docIdSet;
 
-        LeafContext(LeafReaderContext ctx, LeafBucketCollector subCollector) {
+        LeafContext(LeafReaderContext ctx) {
             this.ctx = ctx;
-            this.subCollector = subCollector;
         }
     }
 }
@@ -86,6 +86,21 @@ final class CompositeValuesComparator {
         return 0;
     }
 
+    /**
+     * Compares the values of the first <code>prefixLength</code> sources in <code>slot1</code> with <code>slot2</code>.
+     */
+    int comparePrefix(int slot1, int slot2, int prefixLength) {
+        assert slot1 < size && slot2 < size;
+        assert prefixLength <= arrays.length;
+        for (int i = 0; i < prefixLength; i++) {
+            int cmp = arrays[i].compare(slot1, slot2);
+            if (cmp != 0) {
+                return cmp;
+            }
+        }
+        return 0;
+    }
+
     /**
      * Returns true if a top value has been set for this comparator.
      */
@@ -141,4 +156,19 @@ final class CompositeValuesComparator {
         }
         return next;
     }
+
+    /**
+     * Gets the {@link LeafBucketCollector} that will record the composite buckets of the visited documents
+     * using <code>leadValue</code> as the value of the first source.
+     */
+    CompositeValuesSource.Collector getLeafCollector(Comparable<?> leadValue,
+                                                     LeafReaderContext context,
+                                                     CompositeValuesSource.Collector in) throws IOException {
+        int last = arrays.length - 1;
+        CompositeValuesSource.Collector next = in;
+        for (int i = last; i >= 1; i--) {
+            next = arrays[i].getLeafCollector(context, next);
+        }
+        return arrays[0].getLeafCollector(leadValue, context, next);
+    }
 }
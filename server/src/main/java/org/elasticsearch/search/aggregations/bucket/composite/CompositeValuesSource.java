@@ -93,6 +93,12 @@ abstract class CompositeValuesSource<VS extends ValuesSource, T extends Comparab
      */
     abstract Collector getLeafCollector(LeafReaderContext context, Collector next) throws IOException;
 
+    /**
+     * Gets the {@link LeafCollector} that records <code>value</code> for all visited documents instead of reading
+     * the values of the documents.
+     */
+    abstract Collector getLeafCollector(Comparable<?> value, LeafReaderContext context, Collector next) throws IOException;
+
     /**
      * Creates a {@link CompositeValuesSource} that generates long values.
      */
@@ -183,6 +189,33 @@ abstract class CompositeValuesSource<VS extends ValuesSource, T extends Comparab
         @Override
         Collector getLeafCollector(LeafReaderContext context, Collector next) throws IOException {
             final SortedSetDocValues dvs = vs.globalOrdinalsValues(context);
+            initLookup(dvs);
+            return doc -> {
+                if (dvs.advanceExact(doc)) {
+                    long ord;
+                    while ((ord = dvs.nextOrd()) != NO_MORE_ORDS) {
+                        values[0] = ord;
+                        next.collect(doc);
+                    }
+                }
+            };
+        }
+
+        @Override
+        Collector getLeafCollector(Comparable<?> value, LeafReaderContext context, Collector next) throws IOException {
+            initLookup(vs.globalOrdinalsValues(context));
+            final long ord = lookup.lookupTerm((BytesRef) value);
+            if (ord < 0) {
+                // the term is not in the doc values of this shard
+                return doc -> {};
+            }
+            return doc -> {
+                values[0] = ord;
+                next.collect(doc);
+            };
+        }
+
+        private void initLookup(SortedSetDocValues dvs) throws IOException {
             if (lookup == null) {
                 lookup = dvs;
                 if (topValue != null && topValueGlobalOrd == null) {
@@ -194,15 +227,6 @@ abstract class CompositeValuesSource<VS extends ValuesSource, T extends Comparab
                     }
                 }
             }
-            return doc -> {
-                if (dvs.advanceExact(doc)) {
-                    long ord;
-                    while ((ord = dvs.nextOrd()) != NO_MORE_ORDS) {
-                        values[0] = ord;
-                        next.collect(doc);
-                    }
-                }
-            };
         }
     }
 
@@ -266,6 +290,15 @@ abstract class CompositeValuesSource<VS extends ValuesSource, T extends Comparab
                 }
             };
         }
+
+        @Override
+        Collector getLeafCollector(Comparable<?> value, LeafReaderContext context, Collector next) {
+            final BytesRef term = (BytesRef) value;
+            return doc -> {
+                values[0] = term;
+                next.collect(doc);
+            };
+        }
     }
 
     /**
@@ -326,6 +359,15 @@ abstract class CompositeValuesSource<VS extends ValuesSource, T extends Comparab
                 }
             };
         }
+
+        @Override
+        Collector getLeafCollector(Comparable<?> value, LeafReaderContext context, Collector next) {
+            final long longValue = ((Number) value).longValue();
+            return doc -> {
+                values[0] = longValue;
+                next.collect(doc);
+            };
+        }
     }
 
     /**
@@ -386,5 +428,14 @@ abstract class CompositeValuesSource<VS extends ValuesSource, T extends Comparab
                 }
             };
         }
+
+        @Override
+        Collector getLeafCollector(Comparable<?> value, LeafReaderContext context, Collector next) {
+            final double doubleValue = ((Number) value).doubleValue();
+            return doc -> {
+                values[0] = doubleValue;
+                next.collect(doc);
+            };
+        }
     }
 }
@@ -20,18 +20,25 @@
 package org.elasticsearch.search.aggregations.bucket.composite;
 
 import org.apache.lucene.index.DocValues;
+import org.apache.lucene.index.IndexOptions;
 import org.apache.lucene.index.IndexReader;
 import org.apache.lucene.index.LeafReaderContext;
 import org.apache.lucene.index.SortedNumericDocValues;
 import org.apache.lucene.index.SortedSetDocValues;
 import org.apache.lucene.search.SortField;
+import org.elasticsearch.common.Nullable;
 import org.elasticsearch.common.io.stream.StreamInput;
 import org.elasticsearch.common.io.stream.StreamOutput;
 import org.elasticsearch.common.io.stream.Writeable;
 import org.elasticsearch.common.xcontent.ToXContentFragment;
 import org.elasticsearch.common.xcontent.XContentBuilder;
 import org.elasticsearch.index.IndexSortConfig;
+import org.elasticsearch.index.mapper.DateFieldMapper;
+import org.elasticsearch.index.mapper.KeywordFieldMapper;
+import org.elasticsearch.index.mapper.MappedFieldType;
+import org.elasticsearch.index.mapper.NumberFieldMapper;
 import org.elasticsearch.script.Script;
+import org.elasticsearch.search.aggregations.support.FieldContext;
 import org.elasticsearch.search.aggregations.support.ValueType;
 import org.elasticsearch.search.aggregations.support.ValuesSourceConfig;
 import org.elasticsearch.search.aggregations.support.ValuesSource;
@@ -40,6 +47,7 @@ import org.elasticsearch.search.sort.SortOrder;
 
 import java.io.IOException;
 import java.util.Objects;
+import java.util.function.LongUnaryOperator;
 
 /**
  * A {@link ValuesSource} builder for {@link CompositeAggregationBuilder}
@@ -284,6 +292,42 @@ public abstract class CompositeValuesSourceBuilder<AB extends CompositeValuesSou
             isSingleValued(reader, sortField);
     }
 
+    /**
+     * Returns a {@link SortedDocsProducer} that visits the documents in the order of the indexed values of the field,
+     * or null if the keys of this source cannot be read from the terms or the points of the field.
+     *
+     * @param config   The {@link ValuesSourceConfig} for this source.
+     * @param rounding The function that builds the keys from the values of a numeric field or null if the values are the keys.
+     */
+    protected SortedDocsProducer createSortedDocsProducerOrNull(ValuesSourceConfig<?> config, @Nullable LongUnaryOperator rounding) {
+        final FieldContext fieldContext = config.fieldContext();
+        if (fieldContext == null || config.script() != null || missing != null || order != SortOrder.ASC) {
+            return null;
+        }
+        final MappedFieldType fieldType = fieldContext.fieldType();
+        if (fieldType.indexOptions() == IndexOptions.NONE) {
+            return null;
+        }
+        if (fieldType instanceof KeywordFieldMapper.KeywordFieldType) {
+            return rounding == null ? new TermsSortedDocsProducer(fieldType.name()) : null;
+        }
+        if (fieldType instanceof DateFieldMapper.DateFieldType || isIntegral(fieldType)) {
+            return new PointsSortedDocsProducer(fieldType.name(), rounding);
+        }
+        return null;
+    }
+
+    private static boolean isIntegral(MappedFieldType fieldType) {
+        if (fieldType instanceof NumberFieldMapper.NumberFieldType == false) {
+            return false;
+        }
+        final String typeName = fieldType.typeName();
+        return NumberFieldMapper.NumberType.LONG.typeName().equals(typeName) ||
+            NumberFieldMapper.NumberType.INTEGER.typeName().equals(typeName) ||
+            NumberFieldMapper.NumberType.SHORT.typeName().equals(typeName) ||
+            NumberFieldMapper.NumberType.BYTE.typeName().equals(typeName);
+    }
+
     private static boolean isSingleValued(IndexReader reader, SortField field) throws IOException {
         SortField.Type type = IndexSortConfig.getSortFieldType(field);
         for (LeafReaderContext context : reader.leaves()) {
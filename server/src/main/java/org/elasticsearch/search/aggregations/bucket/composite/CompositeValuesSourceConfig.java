@@ -19,6 +19,7 @@
 
 package org.elasticsearch.search.aggregations.bucket.composite;
 
+import org.elasticsearch.common.Nullable;
 import org.elasticsearch.search.aggregations.support.ValuesSource;
 import org.elasticsearch.search.sort.SortOrder;
 
@@ -27,11 +28,25 @@ class CompositeValuesSourceConfig {
     private final ValuesSource vs;
     private final int reverseMul;
     private final boolean canEarlyTerminate;
+    private final boolean roundsValues;
+    private final SortedDocsProducer sortedDocsProducer;
 
     CompositeValuesSourceConfig(String name, ValuesSource vs, SortOrder order, boolean canEarlyTerminate) {
+        this(name, vs, order, canEarlyTerminate, false, null);
+    }
+
+    /**
+     * @param canEarlyTerminate Whether the index sort at the position of this source matches the order of this source.
+     * @param roundsValues Whether distinct values of the field can produce the same key.
+     * @param sortedDocsProducer The producer that visits the documents in the order of the values of this source or null.
+     */
+    CompositeValuesSourceConfig(String name, ValuesSource vs, SortOrder order, boolean canEarlyTerminate,
+                                boolean roundsValues, @Nullable SortedDocsProducer sortedDocsProducer) {
         this.name = name;
         this.vs = vs;
         this.canEarlyTerminate = canEarlyTerminate;
+        this.roundsValues = roundsValues;
+        this.sortedDocsProducer = sortedDocsProducer;
         this.reverseMul = order == SortOrder.ASC ? 1 : -1;
     }
 
@@ -54,4 +69,21 @@ class CompositeValuesSourceConfig {
     boolean canEarlyTerminate() {
         return canEarlyTerminate;
     }
+
+    /**
+     * Returns true if distinct values of the field can be rounded to the same key, in which case the sources that
+     * follow this one are not sorted within a key even if they match the index sort.
+     */
+    boolean roundsValues() {
+        return roundsValues;
+    }
+
+    /**
+     * Returns the {@link SortedDocsProducer} that can visit the documents in the order of the keys of this source
+     * or null if the values cannot be read from the index in sorted order.
+     */
+    @Nullable
+    SortedDocsProducer sortedDocsProducer() {
+        return sortedDocsProducer;
+    }
 }
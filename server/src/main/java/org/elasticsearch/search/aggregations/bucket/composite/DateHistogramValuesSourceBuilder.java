@@ -229,13 +229,12 @@ public class DateHistogramValuesSourceBuilder extends CompositeValuesSourceBuild
             RoundingValuesSource vs = new RoundingValuesSource(numeric, rounding);
             boolean canEarlyTerminate = false;
             final FieldContext fieldContext = config.fieldContext();
-            if (sortField != null &&
-                    pos == numPos-1 &&
-                    fieldContext != null)  {
+            if (sortField != null && fieldContext != null)  {
                 canEarlyTerminate = checkCanEarlyTerminate(context.searcher().getIndexReader(),
                     fieldContext.field(), order() == SortOrder.ASC ? false : true, sortField);
             }
-            return new CompositeValuesSourceConfig(name, vs, order(), canEarlyTerminate);
+            final SortedDocsProducer sortedDocsProducer = createSortedDocsProducerOrNull(config, rounding::round);
+            return new CompositeValuesSourceConfig(name, vs, order(), canEarlyTerminate, true, sortedDocsProducer);
         } else {
             throw new IllegalArgumentException("invalid source, expected numeric, got " + orig.getClass().getSimpleName());
         }
@@ -122,13 +122,11 @@ public class HistogramValuesSourceBuilder extends CompositeValuesSourceBuilder<H
             HistogramValuesSource vs = new HistogramValuesSource(numeric, interval);
             boolean canEarlyTerminate = false;
             final FieldContext fieldContext = config.fieldContext();
-            if (sortField != null &&
-                    pos == numPos-1 &&
-                    fieldContext != null)  {
+            if (sortField != null && fieldContext != null)  {
                 canEarlyTerminate = checkCanEarlyTerminate(context.searcher().getIndexReader(),
                     fieldContext.field(), order() == SortOrder.ASC ? false : true, sortField);
             }
-            return new CompositeValuesSourceConfig(name, vs, order(), canEarlyTerminate);
+            return new CompositeValuesSourceConfig(name, vs, order(), canEarlyTerminate, true, null);
         } else {
             throw new IllegalArgumentException("invalid source, expected numeric, got " + orig.getClass().getSimpleName());
         }
@@ -0,0 +1,139 @@
+/*
+ * Licensed to Elasticsearch under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Elasticsearch licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.elasticsearch.search.aggregations.bucket.composite;
+
+import org.apache.lucene.document.IntPoint;
+import org.apache.lucene.document.LongPoint;
+import org.apache.lucene.index.LeafReaderContext;
+import org.apache.lucene.index.PointValues;
+import org.apache.lucene.search.CollectionTerminatedException;
+import org.apache.lucene.util.DocIdSetBuilder;
+import org.elasticsearch.common.Nullable;
+
+import java.io.IOException;
+import java.util.function.LongUnaryOperator;
+
+/**
+ * A {@link SortedDocsProducer} that visits the one-dimensional points of an integral field.
+ * The points tree visits the values in ascending order so the documents can be grouped by (rounded) value
+ * while the tree is intersected.
+ */
+final class PointsSortedDocsProducer extends SortedDocsProducer {
+    private final LongUnaryOperator rounding;
+
+    /**
+     * @param rounding The function to apply on the values to build the keys or null to use the values as is.
+     */
+    PointsSortedDocsProducer(String field, @Nullable LongUnaryOperator rounding) {
+        super(field);
+        this.rounding = rounding == null ? LongUnaryOperator.identity() : rounding;
+    }
+
+    @Override
+    void processLeaf(LeafReaderContext context, Comparable<?> lowerValue, BucketConsumer consumer) throws IOException {
+        final PointValues values = context.reader().getPointValues(field);
+        if (values == null) {
+            // no documents for this field in this segment
+            return;
+        }
+        if (values.getNumDimensions() != 1 ||
+                (values.getBytesPerDimension() != Long.BYTES && values.getBytesPerDimension() != Integer.BYTES)) {
+            throw new IllegalStateException("cannot visit the points of [" + field + "] in sorted order");
+        }
+        final long lowerBound;
+        if (lowerValue == null) {
+            lowerBound = Long.MIN_VALUE;
+        } else if (lowerValue instanceof Number) {
+            lowerBound = ((Number) lowerValue).longValue();
+        } else {
+            lowerBound = Long.parseLong(lowerValue.toString());
+        }
+        final Visitor visitor = new Visitor(context.reader().maxDoc(), values.getBytesPerDimension(), lowerBound, consumer);
+        try {
+            values.intersect(visitor);
+            visitor.flush();
+        } catch (CollectionTerminatedException exc) {
+            // the consumer does not need the remaining values
+        }
+    }
+
+    private class Visitor implements PointValues.IntersectVisitor {
+        private final int maxDoc;
+        private final int bytesPerDim;
+        private final long lowerBound;
+        private final BucketConsumer consumer;
+
+        private DocIdSetBuilder bucketDocs;
+        private long bucket;
+
+        Visitor(int maxDoc, int bytesPerDim, long lowerBound, BucketConsumer consumer) {
+            this.maxDoc = maxDoc;
+            this.bytesPerDim = bytesPerDim;
+            this.lowerBound = lowerBound;
+            this.consumer = consumer;
+        }
+
+        private long decode(byte[] packedValue) {
+            return bytesPerDim == Long.BYTES ? LongPoint.decodeDimension(packedValue, 0) : IntPoint.decodeDimension(packedValue, 0);
+        }
+
+        @Override
+        public void visit(int docID) {
+            throw new IllegalStateException("should never be called");
+        }
+
+        @Override
+        public void visit(int docID, byte[] packedValue) throws IOException {
+            final long value = decode(packedValue);
+            if (value < lowerBound) {
+                return;
+            }
+            final long newBucket = rounding.applyAsLong(value);
+            if (bucketDocs != null && newBucket != bucket) {
+                flush();
+            }
+            if (bucketDocs == null) {
+                bucketDocs = new DocIdSetBuilder(maxDoc);
+                bucket = newBucket;
+            }
+            bucketDocs.grow(1).add(docID);
+        }
+
+        @Override
+        public PointValues.Relation compare(byte[] minPackedValue, byte[] maxPackedValue) {
+            if (decode(maxPackedValue) < lowerBound) {
+                return PointValues.Relation.CELL_OUTSIDE_QUERY;
+            }
+            // we need the value of each document so we never return CELL_INSIDE_QUERY
+            return PointValues.Relation.CELL_CROSSES_QUERY;
+        }
+
+        void flush() throws IOException {
+            if (bucketDocs == null) {
+                return;
+            }
+            final DocIdSetBuilder docs = bucketDocs;
+            bucketDocs = null;
+            if (consumer.accept(bucket, docs.build().iterator()) == false) {
+                throw new CollectionTerminatedException();
+            }
+        }
+    }
+}
@@ -0,0 +1,61 @@
+/*
+ * Licensed to Elasticsearch under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Elasticsearch licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.elasticsearch.search.aggregations.bucket.composite;
+
+import org.apache.lucene.index.LeafReaderContext;
+import org.apache.lucene.search.DocIdSetIterator;
+import org.elasticsearch.common.Nullable;
+
+import java.io.IOException;
+
+/**
+ * A producer that visits the documents of a segment in the order of the values of a field.
+ * The {@link CompositeAggregator} uses it on the leading source to fill the top composite buckets
+ * without visiting the documents that cannot produce a competitive key.
+ */
+abstract class SortedDocsProducer {
+    interface BucketConsumer {
+        /**
+         * Consumes the documents that produce <code>value</code> for the field.
+         * Returns false if the documents with greater values should not be visited.
+         */
+        boolean accept(Comparable<?> value, DocIdSetIterator docs) throws IOException;
+    }
+
+    protected final String field;
+
+    SortedDocsProducer(String field) {
+        this.field = field;
+    }
+
+    /**
+     * The field that is used to sort the documents.
+     */
+    String field() {
+        return field;
+    }
+
+    /**
+     * Visits the documents of <code>context</code> grouped by value in ascending order, starting at
+     * <code>lowerValue</code> (inclusive) if not null. Deleted documents are not filtered.
+     */
+    abstract void processLeaf(LeafReaderContext context, @Nullable Comparable<?> lowerValue,
+                              BucketConsumer consumer) throws IOException;
+}
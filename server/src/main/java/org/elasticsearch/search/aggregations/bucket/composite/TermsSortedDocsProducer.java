@@ -0,0 +1,65 @@
+/*
+ * Licensed to Elasticsearch under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Elasticsearch licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.elasticsearch.search.aggregations.bucket.composite;
+
+import org.apache.lucene.index.LeafReaderContext;
+import org.apache.lucene.index.PostingsEnum;
+import org.apache.lucene.index.Terms;
+import org.apache.lucene.index.TermsEnum;
+import org.apache.lucene.util.BytesRef;
+
+import java.io.IOException;
+
+/**
+ * A {@link SortedDocsProducer} that visits the postings of the terms of a field in lexicographic order.
+ */
+final class TermsSortedDocsProducer extends SortedDocsProducer {
+    TermsSortedDocsProducer(String field) {
+        super(field);
+    }
+
+    @Override
+    void processLeaf(LeafReaderContext context, Comparable<?> lowerValue, BucketConsumer consumer) throws IOException {
+        final Terms terms = context.reader().terms(field);
+        if (terms == null) {
+            // no documents for this field in this segment
+            return;
+        }
+        final TermsEnum te = terms.iterator();
+        BytesRef term;
+        if (lowerValue != null) {
+            BytesRef lowerTerm = lowerValue instanceof BytesRef ? (BytesRef) lowerValue : new BytesRef(lowerValue.toString());
+            if (te.seekCeil(lowerTerm) == TermsEnum.SeekStatus.END) {
+                return;
+            }
+            term = te.term();
+        } else {
+            term = te.next();
+        }
+        PostingsEnum postings = null;
+        while (term != null) {
+            postings = te.postings(postings, PostingsEnum.NONE);
+            if (consumer.accept(term, postings) == false) {
+                break;
+            }
+            term = te.next();
+        }
+    }
+}
@@ -95,6 +95,7 @@ public class TermsValuesSourceBuilder extends CompositeValuesSourceBuilder<Terms
             canEarlyTerminate = checkCanEarlyTerminate(context.searcher().getIndexReader(),
                 fieldContext.field(), order() == SortOrder.ASC ? false : true, sortField);
         }
-        return new CompositeValuesSourceConfig(name, vs, order(), canEarlyTerminate);
+        final SortedDocsProducer sortedDocsProducer = createSortedDocsProducerOrNull(config, null);
+        return new CompositeValuesSourceConfig(name, vs, order(), canEarlyTerminate, false, sortedDocsProducer);
     }
 }
@@ -77,4 +77,10 @@ public class GeoHashGridAggregatorFactory extends ValuesSourceAggregatorFactory<
 
     }
 
+    @Override
+    public boolean supportsConcurrentSegmentSearch() {
+        // the cells of each slice, and of each cached segment, would be trimmed to the shard_size before they are merged
+        return false;
+    }
+
 }
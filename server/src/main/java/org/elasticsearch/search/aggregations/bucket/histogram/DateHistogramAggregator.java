@@ -20,6 +20,7 @@ package org.elasticsearch.search.aggregations.bucket.histogram;
 
 import org.apache.lucene.index.LeafReaderContext;
 import org.apache.lucene.index.SortedNumericDocValues;
+import org.apache.lucene.search.Sort;
 import org.apache.lucene.util.CollectionUtil;
 import org.elasticsearch.common.inject.internal.Nullable;
 import org.elasticsearch.common.lease.Releasables;
@@ -47,6 +48,10 @@ import java.util.Map;
 /**
  * An aggregator for date values. Every date is rounded down using a configured
  * {@link Rounding}.
+ * <p>
+ * When a segment is sorted on the field of the histogram, consecutive documents mostly fall into the same bucket. The
+ * aggregator then remembers the range of values of the bucket of the last document so that the documents of a run only
+ * need two comparisons, rather than a rounding and a lookup of the bucket ordinal each.
  *
  * @see Rounding
  */
@@ -63,11 +68,13 @@ class DateHistogramAggregator extends BucketsAggregator {
 
     private final LongHash bucketOrds;
     private long offset;
+    // the name of the field of the values, null if the values are computed by a script
+    private final String field;
 
     DateHistogramAggregator(String name, AggregatorFactories factories, Rounding rounding, long offset, BucketOrder order,
             boolean keyed,
             long minDocCount, @Nullable ExtendedBounds extendedBounds, @Nullable ValuesSource.Numeric valuesSource,
-            DocValueFormat formatter, SearchContext aggregationContext,
+            @Nullable String field, DocValueFormat formatter, SearchContext aggregationContext,
             Aggregator parent, List<PipelineAggregator> pipelineAggregators, Map<String, Object> metaData) throws IOException {
 
         super(name, factories, aggregationContext, parent, pipelineAggregators, metaData);
@@ -78,6 +85,7 @@ class DateHistogramAggregator extends BucketsAggregator {
         this.minDocCount = minDocCount;
         this.extendedBounds = extendedBounds;
         this.valuesSource = valuesSource;
+        this.field = field;
         this.formatter = formatter;
 
         bucketOrds = new LongHash(1, aggregationContext.bigArrays());
@@ -95,7 +103,14 @@ class DateHistogramAggregator extends BucketsAggregator {
             return LeafBucketCollector.NO_OP_COLLECTOR;
         }
         final SortedNumericDocValues values = valuesSource.longValues(ctx);
+        final boolean sortedOnField = isSortedOnField(ctx);
         return new LeafBucketCollectorBase(sub, values) {
+            // the range of values that fall into the bucket of the current run of documents, empty if there is no run
+            long runMin = Long.MAX_VALUE;
+            long runMax = Long.MIN_VALUE;
+            long runRounded;
+            long runBucketOrd;
+
             @Override
             public void collect(int doc, long bucket) throws IOException {
                 assert bucket == 0;
@@ -105,6 +120,14 @@ class DateHistogramAggregator extends BucketsAggregator {
                     long previousRounded = Long.MIN_VALUE;
                     for (int i = 0; i < valuesCount; ++i) {
                         long value = values.nextValue();
+                        if (value >= runMin && value <= runMax) {
+                            assert runRounded >= previousRounded;
+                            if (runRounded != previousRounded) {
+                                collectExistingBucket(sub, doc, runBucketOrd);
+                                previousRounded = runRounded;
+                            }
+                            continue;
+                        }
                         long rounded = rounding.round(value - offset) + offset;
                         assert rounded >= previousRounded;
                         if (rounded == previousRounded) {
@@ -117,13 +140,44 @@ class DateHistogramAggregator extends BucketsAggregator {
                         } else {
                             collectBucket(sub, doc, bucketOrd);
                         }
+                        if (sortedOnField) {
+                            startRun(rounded, bucketOrd);
+                        }
                         previousRounded = rounded;
                     }
                 }
             }
+
+            private void startRun(long rounded, long bucketOrd) {
+                final long key = rounded - offset;
+                final long next = rounding.nextRoundingValue(key);
+                // rounding is monotonic so every value between the key and the last value before the next key rounds to the key,
+                // unless the rounding skips keys, for instance around daylight saving time transitions
+                if (next > key && rounding.round(key) == key && rounding.round(next - 1) == key) {
+                    runMin = rounded;
+                    runMax = next - 1 + offset;
+                } else {
+                    runMin = Long.MAX_VALUE;
+                    runMax = Long.MIN_VALUE;
+                }
+                runRounded = rounded;
+                runBucketOrd = bucketOrd;
+            }
         };
     }
 
+    /**
+     * Returns <code>true</code> if the documents of the segment are sorted on the field of the histogram, in which case
+     * consecutive documents mostly fall into the same bucket.
+     */
+    private boolean isSortedOnField(LeafReaderContext ctx) {
+        if (field == null) {
+            return false;
+        }
+        final Sort indexSort = ctx.reader().getMetaData().getSort();
+        return indexSort != null && field.equals(indexSort.getSort()[0].getField());
+    }
+
     @Override
     public InternalAggregation buildAggregation(long owningBucketOrdinal) throws IOException {
         assert owningBucketOrdinal == 0;
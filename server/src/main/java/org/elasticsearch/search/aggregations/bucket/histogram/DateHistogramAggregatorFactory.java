@@ -77,8 +77,10 @@ public final class DateHistogramAggregatorFactory
 
     private Aggregator createAggregator(ValuesSource.Numeric valuesSource, Aggregator parent, List<PipelineAggregator> pipelineAggregators,
             Map<String, Object> metaData) throws IOException {
+        // the values of a field follow the index sort on that field, unlike the values that a script computes from it
+        final String field = config.fieldContext() != null && config.script() == null ? config.fieldContext().field() : null;
         return new DateHistogramAggregator(name, factories, rounding, offset, order, keyed, minDocCount, extendedBounds, valuesSource,
-                config.format(), context, parent, pipelineAggregators, metaData);
+                field, config.format(), context, parent, pipelineAggregators, metaData);
     }
 
     @Override
@@ -26,6 +26,7 @@ import org.elasticsearch.common.rounding.Rounding;
 import org.elasticsearch.common.xcontent.XContentBuilder;
 import org.elasticsearch.search.DocValueFormat;
 import org.elasticsearch.search.aggregations.Aggregations;
+import org.elasticsearch.search.aggregations.AggregationsAccumulator;
 import org.elasticsearch.search.aggregations.BucketOrder;
 import org.elasticsearch.search.aggregations.InternalAggregation;
 import org.elasticsearch.search.aggregations.InternalAggregations;
@@ -40,6 +41,7 @@ import org.joda.time.DateTimeZone;
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.Iterator;
 import java.util.List;
 import java.util.ListIterator;
@@ -468,6 +470,69 @@ public final class InternalDateHistogram extends InternalMultiBucketAggregation<
                 format, keyed, pipelineAggregators(), getMetaData());
     }
 
+    @Override
+    public Accumulator createAccumulator(AggregationsAccumulator parent) {
+        return new HistogramAccumulator(parent, new InternalDateHistogram(name, Collections.emptyList(), order, minDocCount, offset,
+            emptyBucketInfo, format, keyed, pipelineAggregators(), getMetaData()));
+    }
+
+    /**
+     * Merges the buckets of partial results by key. It only keeps a reference to an empty copy of the aggregation that
+     * created it so that the buckets of the partial results can be released right away.
+     */
+    private static final class HistogramAccumulator extends Accumulator {
+        private final AggregationsAccumulator parent;
+        private final InternalDateHistogram prototype;
+        private final Map<Long, BucketAccumulator> buckets = new HashMap<>();
+
+        HistogramAccumulator(AggregationsAccumulator parent, InternalDateHistogram prototype) {
+            this.parent = parent;
+            this.prototype = prototype;
+        }
+
+        @Override
+        public boolean accumulate(InternalAggregation aggregation) {
+            if (aggregation.getClass() != InternalDateHistogram.class) {
+                return false;
+            }
+            for (Bucket bucket : ((InternalDateHistogram) aggregation).buckets) {
+                BucketAccumulator accumulator = buckets.get(bucket.key);
+                if (accumulator == null) {
+                    parent.reduceContext().consumeBucketsAndMaybeBreak(1);
+                    accumulator = new BucketAccumulator(parent.newSubAccumulator());
+                    buckets.put(bucket.key, accumulator);
+                }
+                accumulator.docCount += bucket.docCount;
+                accumulator.aggregations.accumulate(bucket.aggregations);
+            }
+            return true;
+        }
+
+        @Override
+        public InternalAggregation build() {
+            // a partial reduce returns the buckets sorted by key, empty buckets are added by the final reduce
+            List<Long> keys = new ArrayList<>(buckets.keySet());
+            keys.sort(Long::compare);
+            List<Bucket> reducedBuckets = new ArrayList<>(keys.size());
+            for (long key : keys) {
+                BucketAccumulator accumulator = buckets.get(key);
+                reducedBuckets.add(new Bucket(key, accumulator.docCount, prototype.keyed, prototype.format,
+                    accumulator.aggregations.build()));
+            }
+            return new InternalDateHistogram(prototype.name, reducedBuckets, prototype.order, prototype.minDocCount, prototype.offset,
+            prototype.emptyBucketInfo, prototype.format, prototype.keyed, prototype.pipelineAggregators(), prototype.getMetaData());
+        }
+    }
+
+    private static final class BucketAccumulator {
+        private final AggregationsAccumulator aggregations;
+        private long docCount;
+
+        BucketAccumulator(AggregationsAccumulator aggregations) {
+            this.aggregations = aggregations;
+        }
+    }
+
     @Override
     public XContentBuilder doXContentBody(XContentBuilder builder, Params params) throws IOException {
         if (keyed) {
@@ -39,6 +39,12 @@ public class SamplerAggregatorFactory extends AggregatorFactory<SamplerAggregato
         this.shardSize = shardSize;
     }
 
+    @Override
+    public boolean supportsConcurrentSegmentSearch() {
+        // the sample is bounded per shard, not per slice of segments
+        return false;
+    }
+
     @Override
     public Aggregator createInternal(Aggregator parent, boolean collectsFromSingleBucket, List<PipelineAggregator> pipelineAggregators,
             Map<String, Object> metaData) throws IOException {
@@ -36,6 +36,8 @@ import org.elasticsearch.common.lucene.index.FilterableTermsEnum;
 import org.elasticsearch.common.lucene.index.FreqTermsEnum;
 import org.elasticsearch.index.mapper.MappedFieldType;
 import org.elasticsearch.index.query.QueryBuilder;
+import org.elasticsearch.index.query.QueryShardContext;
+import org.elasticsearch.indices.IndicesBackgroundFrequencyCache;
 import org.elasticsearch.search.DocValueFormat;
 import org.elasticsearch.search.aggregations.AggregationExecutionException;
 import org.elasticsearch.search.aggregations.Aggregator;
@@ -67,6 +69,7 @@ public class SignificantTermsAggregatorFactory extends ValuesSourceAggregatorFac
     private String indexedFieldName;
     private MappedFieldType fieldType;
     private FilterableTermsEnum termsEnum;
+    private final IndicesBackgroundFrequencyCache.BackgroundFrequencies backgroundFrequencies;
     private int numberOfAggregatorsCreated;
     final Query filter;
     private final int supersetNumDocs;
@@ -91,17 +94,38 @@ public class SignificantTermsAggregatorFactory extends ValuesSourceAggregatorFac
                 ? null
                 : filterBuilder.toFilter(context.getQueryShardContext());
         IndexSearcher searcher = context.searcher();
-        this.supersetNumDocs = filter == null
-                // Important - need to use the doc count that includes deleted docs
-                // or we have this issue: https://github.com/elastic/elasticsearch/issues/7951
-                ? searcher.getIndexReader().maxDoc()
-                : searcher.count(filter);
+        IndicesBackgroundFrequencyCache backgroundFrequencyCache = context.backgroundFrequencyCache();
+        if (backgroundFrequencyCache != null
+                && (filterBuilder == null || isCachable(filterBuilder, context.getQueryShardContext()))) {
+            this.backgroundFrequencies = backgroundFrequencyCache.backgroundFrequencies(searcher.getIndexReader(), filter);
+        } else {
+            this.backgroundFrequencies = null;
+        }
+        if (filter == null) {
+            // Important - need to use the doc count that includes deleted docs
+            // or we have this issue: https://github.com/elastic/elasticsearch/issues/7951
+            this.supersetNumDocs = searcher.getIndexReader().maxDoc();
+        } else if (backgroundFrequencies != null) {
+            this.supersetNumDocs = Math.toIntExact(backgroundFrequencies.numDocs());
+        } else {
+            this.supersetNumDocs = searcher.count(filter);
+        }
         this.bucketCountThresholds = bucketCountThresholds;
         this.significanceHeuristic = significanceHeuristic;
         setFieldInfo(context);
 
     }
 
+    /**
+     * Background frequencies are only cached for filters that would not prevent the request from being cached, e.g. because
+     * they depend on the current time or on a script.
+     */
+    private static boolean isCachable(QueryBuilder filterBuilder, QueryShardContext context) throws IOException {
+        QueryShardContext probeContext = new QueryShardContext(context);
+        filterBuilder.toFilter(probeContext);
+        return probeContext.isCachable();
+    }
+
     private void setFieldInfo(SearchContext context) {
         if (!config.unmapped()) {
             this.indexedFieldName = config.fieldContext().field();
@@ -135,6 +159,10 @@ public class SignificantTermsAggregatorFactory extends ValuesSourceAggregatorFac
             // for types that use the inverted index, we prefer using a caching terms
             // enum that will do a better job at reusing index inputs
             Term term = ((TermQuery) query).getTerm();
+            if (backgroundFrequencies != null) {
+                // only the segments that are not in the cache yet need to be looked up
+                return backgroundFrequencies.docFreq(term);
+            }
             FilterableTermsEnum termsEnum = getTermsEnum(term.field());
             if (termsEnum.seekExact(term.bytes())) {
                 return termsEnum.docFreq();
@@ -162,6 +190,12 @@ public class SignificantTermsAggregatorFactory extends ValuesSourceAggregatorFac
         return getBackgroundFrequency(value);
     }
 
+    @Override
+    public boolean supportsConcurrentSegmentSearch() {
+        // superset frequencies are computed for the whole shard and cannot be summed across slices
+        return false;
+    }
+
     @Override
     protected Aggregator createUnmapped(Aggregator parent, List<PipelineAggregator> pipelineAggregators, Map<String, Object> metaData)
             throws IOException {
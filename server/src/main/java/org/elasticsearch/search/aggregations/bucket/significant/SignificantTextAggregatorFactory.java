@@ -140,6 +140,12 @@ public class SignificantTextAggregatorFactory extends AggregatorFactory<Signific
     }    
 
     
+    @Override
+    public boolean supportsConcurrentSegmentSearch() {
+        // superset frequencies are computed for the whole shard and cannot be summed across slices
+        return false;
+    }
+
     @Override
     public void close() {
         try {
@@ -181,9 +181,9 @@ public class GlobalOrdinalsStringTermsAggregator extends AbstractStringTermsAggr
         final int size;
         if (bucketCountThresholds.getMinDocCount() == 0) {
             // if minDocCount == 0 then we can end up with more buckets then maxBucketOrd() returns
-            size = (int) Math.min(valueCount, bucketCountThresholds.getShardSize());
+            size = (int) Math.min(valueCount, shardSize());
         } else {
-            size = (int) Math.min(maxBucketOrd(), bucketCountThresholds.getShardSize());
+            size = (int) Math.min(maxBucketOrd(), shardSize());
         }
         long otherDocCount = 0;
         BucketPriorityQueue<OrdBucket> ordered = new BucketPriorityQueue<>(size, order.comparator(this));
@@ -201,10 +201,13 @@ public class GlobalOrdinalsStringTermsAggregator extends AbstractStringTermsAggr
             spare.globalOrd = globalTermOrd;
             spare.bucketOrd = bucketOrd;
             spare.docCount = bucketDocCount;
-            if (bucketCountThresholds.getShardMinDocCount() <= spare.docCount) {
+            if (shardMinDocCount() <= spare.docCount) {
                 spare = ordered.insertWithOverflow(spare);
                 if (spare == null) {
-                    consumeBucketsAndMaybeBreak(1);
+                    // only the buckets that the shard can keep count against the max buckets
+                    if (ordered.size() <= bucketCountThresholds.getShardSize()) {
+                        consumeBucketsAndMaybeBreak(1);
+                    }
                     spare = new OrdBucket(-1, 0, null, showTermDocCountError, 0);
                 }
             }
@@ -237,6 +240,12 @@ public class GlobalOrdinalsStringTermsAggregator extends AbstractStringTermsAggr
                 otherDocCount, Arrays.asList(list), 0);
     }
 
+    @Override
+    protected boolean keepsEmptyBuckets(long numNonEmptyBuckets) {
+        // all terms of the shard are candidates when min_doc_count is 0, whatever the order
+        return bucketCountThresholds.getMinDocCount() == 0;
+    }
+
     /**
      * This is used internally only, just for compare using global ordinal instead of term bytes in the PQ
      */
@@ -25,6 +25,7 @@ import org.elasticsearch.common.xcontent.XContentBuilder;
 import org.elasticsearch.search.DocValueFormat;
 import org.elasticsearch.search.aggregations.AggregationExecutionException;
 import org.elasticsearch.search.aggregations.Aggregations;
+import org.elasticsearch.search.aggregations.AggregationsAccumulator;
 import org.elasticsearch.search.aggregations.BucketOrder;
 import org.elasticsearch.search.aggregations.InternalAggregation;
 import org.elasticsearch.search.aggregations.InternalAggregations;
@@ -36,6 +37,7 @@ import org.elasticsearch.search.aggregations.pipeline.PipelineAggregator;
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -308,12 +310,159 @@ public abstract class InternalTerms<A extends InternalTerms<A, B>, B extends Int
         long docCountError;
         if (sumDocCountError == -1) {
             docCountError = -1;
+        } else if (aggregations.size() == 1) {
+            // the error of a single shard response is 0, but a single partially reduced result keeps its error
+            docCountError = ((InternalTerms<?, ?>) aggregations.get(0)).getDocCountError();
         } else {
-            docCountError = aggregations.size() == 1 ? 0 : sumDocCountError;
+            docCountError = sumDocCountError;
         }
         return create(name, Arrays.asList(list), docCountError, otherDocCount);
     }
 
+    /**
+     * Selects the buckets of a shard that was searched concurrently from the merged, untrimmed, buckets of its slices: the
+     * top {@code shardSize} buckets with at least {@code shardMinDocCount} documents, like the aggregator of a shard that is
+     * searched sequentially. The doc counts of the merged buckets are exact so the selected buckets have no error.
+     */
+    public A selectShardBuckets(int shardSize, long shardMinDocCount, boolean keepEmptyBuckets) {
+        final List<B> buckets = getBuckets();
+        long otherDocCount = getSumOfOtherDocCounts();
+        final BucketPriorityQueue<B> ordered = new BucketPriorityQueue<>(Math.min(shardSize, buckets.size()), order.comparator(null));
+        for (B bucket : buckets) {
+            otherDocCount += bucket.docCount;
+            if (bucket.docCount >= shardMinDocCount && (bucket.docCount > 0 || keepEmptyBuckets)) {
+                ordered.insertWithOverflow(bucket);
+            }
+        }
+        B[] list = createBucketsArray(ordered.size());
+        for (int i = ordered.size() - 1; i >= 0; i--) {
+            final B bucket = ordered.pop();
+            list[i] = bucket.newBucket(bucket.docCount, bucket.aggregations, 0);
+            otherDocCount -= bucket.docCount;
+        }
+        return create(name, Arrays.asList(list), 0, otherDocCount);
+    }
+
+    @Override
+    public Accumulator createAccumulator(AggregationsAccumulator parent) {
+        return new TermsAccumulator<>(parent, create(name, Collections.emptyList(), 0, 0));
+    }
+
+    /**
+     * Accumulates the buckets and the doc count errors of partial results like {@link #doReduce(List, ReduceContext)}
+     * does. It only keeps a reference to an empty copy of the aggregation that created it so that the buckets of the
+     * partial results can be released right away.
+     */
+    private static final class TermsAccumulator<A extends InternalTerms<A, B>, B extends Bucket<B>> extends Accumulator {
+        private final AggregationsAccumulator parent;
+        private final A prototype;
+        private final Map<Object, BucketAccumulator<B>> buckets = new HashMap<>();
+        private long sumDocCountError = 0;
+        private long otherDocCount = 0;
+        private int numAccumulated = 0;
+        // the error of the result if only one result is accumulated, see doReduce
+        private long singleDocCountError = 0;
+
+        TermsAccumulator(AggregationsAccumulator parent, A prototype) {
+            this.parent = parent;
+            this.prototype = prototype;
+        }
+
+        @Override
+        public boolean accumulate(InternalAggregation aggregation) {
+            if (aggregation.getClass() == UnmappedTerms.class) {
+                // unmapped terms have no buckets and don't contribute to the error
+                numAccumulated++;
+                return true;
+            }
+            if (aggregation.getClass() != prototype.getClass()) {
+                return false;
+            }
+            @SuppressWarnings("unchecked")
+            A terms = (A) aggregation;
+            if (numAccumulated++ == 0) {
+                singleDocCountError = terms.getDocCountError();
+            }
+            otherDocCount += terms.getSumOfOtherDocCounts();
+            final long thisAggDocCountError;
+            if (terms.getBuckets().size() < prototype.getShardSize() || InternalOrder.isKeyOrder(prototype.order)) {
+                thisAggDocCountError = 0;
+            } else if (InternalOrder.isCountDesc(prototype.order)) {
+                if (terms.getDocCountError() > 0) {
+                    thisAggDocCountError = terms.getDocCountError();
+                } else {
+                    thisAggDocCountError = terms.getBuckets().get(terms.getBuckets().size() - 1).docCount;
+                }
+            } else {
+                thisAggDocCountError = -1;
+            }
+            if (sumDocCountError != -1) {
+                if (thisAggDocCountError == -1) {
+                    sumDocCountError = -1;
+                } else {
+                    sumDocCountError += thisAggDocCountError;
+                }
+            }
+            for (B bucket : terms.getBuckets()) {
+                BucketAccumulator<B> accumulator = buckets.get(bucket.getKey());
+                if (accumulator == null) {
+                    parent.reduceContext().consumeBucketsAndMaybeBreak(1);
+                    // copy the key of the bucket but not its sub-aggregations
+                    accumulator = new BucketAccumulator<>(bucket.newBucket(0, InternalAggregations.EMPTY, 0), parent.newSubAccumulator());
+                    buckets.put(bucket.getKey(), accumulator);
+                }
+                accumulator.docCount += bucket.docCount;
+                // see doReduce for why the error of the partial result is subtracted
+                final long bucketDocCountError = bucket.docCountError - thisAggDocCountError;
+                if (accumulator.docCountError != -1) {
+                    if (bucketDocCountError == -1) {
+                        accumulator.docCountError = -1;
+                    } else {
+                        accumulator.docCountError += bucketDocCountError;
+                    }
+                }
+                accumulator.aggregations.accumulate(bucket.aggregations);
+            }
+            return true;
+        }
+
+        @Override
+        public InternalAggregation build() {
+            List<B> reducedBuckets = new ArrayList<>(buckets.size());
+            for (BucketAccumulator<B> accumulator : buckets.values()) {
+                B bucket = accumulator.prototype.newBucket(accumulator.docCount, accumulator.aggregations.build(),
+                    accumulator.docCountError);
+                if (sumDocCountError == -1) {
+                    bucket.docCountError = -1;
+                } else {
+                    bucket.docCountError += sumDocCountError;
+                }
+                reducedBuckets.add(bucket);
+            }
+            // a partial reduce keeps all buckets
+            reducedBuckets.sort(prototype.order.comparator(null));
+            final long docCountError;
+            if (sumDocCountError == -1) {
+                docCountError = -1;
+            } else {
+                docCountError = numAccumulated == 1 ? singleDocCountError : sumDocCountError;
+            }
+            return prototype.create(prototype.name, reducedBuckets, docCountError, otherDocCount);
+        }
+    }
+
+    private static final class BucketAccumulator<B extends Bucket<B>> {
+        private final B prototype;
+        private final AggregationsAccumulator aggregations;
+        private long docCount;
+        private long docCountError;
+
+        BucketAccumulator(B prototype, AggregationsAccumulator aggregations) {
+            this.prototype = prototype;
+            this.aggregations = aggregations;
+        }
+    }
+
     protected abstract void setDocCountError(long docCountError);
 
     protected abstract int getShardSize();
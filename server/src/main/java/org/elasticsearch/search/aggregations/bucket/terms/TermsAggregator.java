@@ -31,6 +31,7 @@ import org.elasticsearch.search.DocValueFormat;
 import org.elasticsearch.search.aggregations.Aggregator;
 import org.elasticsearch.search.aggregations.AggregatorFactories;
 import org.elasticsearch.search.aggregations.BucketOrder;
+import org.elasticsearch.search.aggregations.InternalAggregation;
 import org.elasticsearch.search.aggregations.InternalOrder;
 import org.elasticsearch.search.aggregations.InternalOrder.Aggregation;
 import org.elasticsearch.search.aggregations.InternalOrder.CompoundOrder;
@@ -255,6 +256,49 @@ public abstract class TermsAggregator extends DeferableBucketAggregator {
         };
     }
 
+    /**
+     * Returns <code>true</code> if the shard is searched concurrently. Each slice then keeps all its buckets and the buckets of
+     * the shard are selected once the slices are merged, in {@link #selectShardBuckets(InternalAggregation)}.
+     */
+    protected final boolean isSliced() {
+        return context.aggregations() != null && context.aggregations().hasSlices();
+    }
+
+    /**
+     * The maximum number of buckets to build, the <code>shard_size</code> unless the shard is searched concurrently.
+     */
+    protected final int shardSize() {
+        return isSliced() ? Integer.MAX_VALUE : bucketCountThresholds.getShardSize();
+    }
+
+    /**
+     * The minimum doc count of the buckets to build, the <code>shard_min_doc_count</code> unless the shard is searched concurrently.
+     */
+    protected final long shardMinDocCount() {
+        return isSliced() ? 0 : bucketCountThresholds.getShardMinDocCount();
+    }
+
+    /**
+     * Returns <code>true</code> if the buckets of the shard include the terms without any matching document, given the number
+     * of terms that matched at least one document. Terms are only filled in to complete the <code>size</code> when they are
+     * sorted by descending count.
+     */
+    protected boolean keepsEmptyBuckets(long numNonEmptyBuckets) {
+        return bucketCountThresholds.getMinDocCount() == 0
+                && (InternalOrder.isCountDesc(order) == false || numNonEmptyBuckets < bucketCountThresholds.getRequiredSize());
+    }
+
+    @Override
+    public InternalAggregation selectShardBuckets(InternalAggregation merged) {
+        if (merged instanceof InternalTerms) {
+            InternalTerms<?, ?> terms = (InternalTerms<?, ?>) merged;
+            long numNonEmptyBuckets = terms.getBuckets().stream().filter(bucket -> bucket.getDocCount() > 0).count();
+            merged = terms.selectShardBuckets(bucketCountThresholds.getShardSize(), bucketCountThresholds.getShardMinDocCount(),
+                    keepsEmptyBuckets(numNonEmptyBuckets));
+        }
+        return super.selectShardBuckets(merged);
+    }
+
     @Override
     protected boolean shouldDefer(Aggregator aggregator) {
         return collectMode == SubAggCollectionMode.BREADTH_FIRST
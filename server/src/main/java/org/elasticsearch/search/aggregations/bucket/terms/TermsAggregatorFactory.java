@@ -19,10 +19,25 @@
 
 package org.elasticsearch.search.aggregations.bucket.terms;
 
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.index.LeafReaderContext;
+import org.apache.lucene.index.SortedNumericDocValues;
 import org.apache.lucene.search.IndexSearcher;
+import org.apache.lucene.search.Query;
+import org.apache.lucene.search.ScorerSupplier;
+import org.apache.lucene.search.Weight;
+import org.apache.lucene.util.BytesRef;
+import org.elasticsearch.common.CheckedFunction;
 import org.elasticsearch.common.ParseField;
+import org.elasticsearch.common.hash.MurmurHash3;
 import org.elasticsearch.common.logging.DeprecationLogger;
 import org.elasticsearch.common.logging.Loggers;
+import org.elasticsearch.common.util.BigArrays;
+import org.elasticsearch.common.util.IntArray;
+import org.elasticsearch.common.util.LongHash;
+import org.elasticsearch.index.fielddata.AbstractSortedNumericDocValues;
+import org.elasticsearch.index.fielddata.FieldData;
+import org.elasticsearch.index.fielddata.SortedBinaryDocValues;
 import org.elasticsearch.search.DocValueFormat;
 import org.elasticsearch.search.aggregations.AggregationExecutionException;
 import org.elasticsearch.search.aggregations.Aggregator;
@@ -40,7 +55,9 @@ import org.elasticsearch.search.aggregations.pipeline.PipelineAggregator;
 import org.elasticsearch.search.aggregations.support.ValuesSource;
 import org.elasticsearch.search.aggregations.support.ValuesSourceAggregatorFactory;
 import org.elasticsearch.search.aggregations.support.ValuesSourceConfig;
+import org.elasticsearch.search.internal.ContextIndexSearcher;
 import org.elasticsearch.search.internal.SearchContext;
+import org.elasticsearch.tasks.TaskCancelledException;
 
 import java.io.IOException;
 import java.util.List;
@@ -51,12 +68,36 @@ public class TermsAggregatorFactory extends ValuesSourceAggregatorFactory<Values
 
     static Boolean REMAP_GLOBAL_ORDS, COLLECT_SEGMENT_ORDS;
 
+    /**
+     * The number of documents that are sampled in order to estimate the cardinality of fields that don't
+     * expose global ordinals.
+     */
+    static final int CARDINALITY_SAMPLE_SIZE = 4096;
+
+    /**
+     * The minimum sampled cardinality of a field with ordinals for which the {@link ExecutionMode#MAP} execution mode is
+     * picked when no execution hint is provided. Global ordinals of fields with fewer values are cheap to build.
+     */
+    static final long MAP_MIN_CARDINALITY = 4096;
+
+    /**
+     * The {@link ExecutionMode#MAP} execution mode is picked when the query is expected to match fewer documents than the
+     * sampled cardinality of the field divided by this ratio. Most global ordinals would then never be looked up.
+     */
+    static final int MAP_CARDINALITY_RATIO = 10;
+
     private final BucketOrder order;
     private final IncludeExclude includeExclude;
     private final String executionHint;
     private final SubAggCollectionMode collectMode;
     private final TermsAggregator.BucketCountThresholds bucketCountThresholds;
     private final boolean showTermDocCountError;
+    // The factory is created for a single request on a single shard. The estimates below are computed lazily and shared
+    // by all the instances of this aggregator on the shard, including the aggregators that the slices of a concurrent
+    // search create for new parent buckets, so they are only read and written under the lock of the factory.
+    // -2 means not computed yet.
+    private long estimatedCardinality = -2;
+    private long estimatedMatchingDocs = -2;
 
     TermsAggregatorFactory(String name,
                                   ValuesSourceConfig<ValuesSource> config,
@@ -98,6 +139,13 @@ public class TermsAggregatorFactory extends ValuesSourceAggregatorFactory<Values
         };
     }
 
+    @Override
+    public boolean supportsSegmentCaching() {
+        // the buckets of each segment are trimmed to the shard_size and shard_min_doc_count, the terms that are cut from a
+        // segment would be missing from the merged result
+        return false;
+    }
+
     private static boolean isAggregationSort(BucketOrder order) {
         if (order instanceof InternalOrder.Aggregation) {
             return true;
@@ -134,15 +182,25 @@ public class TermsAggregatorFactory extends ValuesSourceAggregatorFactory<Values
             if (valuesSource instanceof ValuesSource.Bytes.WithOrdinals == false) {
                 execution = ExecutionMode.MAP;
             }
-            final long maxOrd = getMaxOrd(valuesSource, context.searcher());
             if (execution == null) {
-                execution = ExecutionMode.GLOBAL_ORDINALS;
+                if (Aggregator.descendsFromBucketAggregator(parent)) {
+                    // a map of terms per parent bucket would use more memory than the global ordinals
+                    execution = ExecutionMode.GLOBAL_ORDINALS;
+                } else {
+                    final long cardinality = estimateCardinality(valuesSource);
+                    // the scorers of the query are only created if the cardinality is high enough for the map to be picked
+                    execution = cardinality < MAP_MIN_CARDINALITY ? ExecutionMode.GLOBAL_ORDINALS
+                        : defaultExecutionMode(cardinality, estimateMatchingDocs());
+                }
             }
             SubAggCollectionMode cm = collectMode;
             if (cm == null) {
                 cm = SubAggCollectionMode.DEPTH_FIRST;
                 if (factories != AggregatorFactories.EMPTY) {
-                    cm = subAggCollectionMode(bucketCountThresholds.getShardSize(), maxOrd);
+                    // global ordinals give the exact cardinality, other values have to be sampled
+                    final long cardinality = execution == ExecutionMode.GLOBAL_ORDINALS ?
+                        getMaxOrd(valuesSource, context.searcher()) : estimateCardinality(valuesSource);
+                    cm = subAggCollectionMode(bucketCountThresholds.getShardSize(), cardinality);
                 }
             }
 
@@ -166,7 +224,8 @@ public class TermsAggregatorFactory extends ValuesSourceAggregatorFactory<Values
             SubAggCollectionMode cm = collectMode;
             if (cm == null) {
                 if (factories != AggregatorFactories.EMPTY) {
-                    cm = subAggCollectionMode(bucketCountThresholds.getShardSize(), -1);
+                    final long cardinality = estimateCardinality(valuesSource);
+                    cm = subAggCollectionMode(bucketCountThresholds.getShardSize(), cardinality);
                 } else {
                     cm = SubAggCollectionMode.DEPTH_FIRST;
                 }
@@ -205,6 +264,161 @@ public class TermsAggregatorFactory extends ValuesSourceAggregatorFactory<Values
         return SubAggCollectionMode.DEPTH_FIRST;
     }
 
+    /**
+     * Returns the execution mode of a terms aggregation on a field with ordinals when no execution hint is provided. Global
+     * ordinals are built for all the terms of the shard, this doesn't pay off when the query is expected to match much fewer
+     * documents than the field has distinct values. The terms of the matching documents are then collected in a map.
+     */
+    static ExecutionMode defaultExecutionMode(long estimatedCardinality, long estimatedMatchingDocs) {
+        if (estimatedCardinality >= MAP_MIN_CARDINALITY && estimatedMatchingDocs * MAP_CARDINALITY_RATIO < estimatedCardinality) {
+            return ExecutionMode.MAP;
+        }
+        return ExecutionMode.GLOBAL_ORDINALS;
+    }
+
+    /**
+     * Estimate the number of documents that match the query of the request on this shard from the cost of its scorers. The
+     * cost is an upper bound that is computed without iterating any document for most queries. The weight is created by the
+     * searcher of the context from the query that it already rewrote before the aggregators are created, so the query is
+     * neither rewritten twice nor hidden from the profiler.
+     */
+    private synchronized long estimateMatchingDocs() throws IOException {
+        if (estimatedMatchingDocs == -2) {
+            final ContextIndexSearcher searcher = context.searcher();
+            final Query query = context.query();
+            if (query == null) {
+                estimatedMatchingDocs = searcher.getIndexReader().numDocs();
+            } else {
+                final Weight weight = searcher.createNormalizedWeight(query, false);
+                long cost = 0;
+                for (LeafReaderContext ctx : searcher.getIndexReader().leaves()) {
+                    if (context.isCancelled()) {
+                        throw new TaskCancelledException("cancelled");
+                    }
+                    final ScorerSupplier scorerSupplier = weight.scorerSupplier(ctx);
+                    if (scorerSupplier != null) {
+                        cost += scorerSupplier.cost();
+                    }
+                }
+                estimatedMatchingDocs = cost;
+            }
+        }
+        return estimatedMatchingDocs;
+    }
+
+    /**
+     * Estimate the number of unique values of the provided numeric or bytes {@link ValuesSource} on this shard, or return -1
+     * if the values are computed by a script. The estimate is computed once and then reused by all instances of this
+     * aggregator, which matters when it is nested under another bucket aggregator.
+     */
+    private synchronized long estimateCardinality(ValuesSource valuesSource) throws IOException {
+        if (estimatedCardinality == -2) {
+            if (config.script() != null) {
+                // sampling would run the script outside of the collection phase
+                estimatedCardinality = -1;
+            } else if (valuesSource instanceof ValuesSource.Numeric) {
+                final ValuesSource.Numeric numericValuesSource = (ValuesSource.Numeric) valuesSource;
+                if (numericValuesSource.isFloatingPoint()) {
+                    estimatedCardinality = estimateCardinality(context.searcher().getIndexReader(),
+                            ctx -> FieldData.toSortableLongBits(numericValuesSource.doubleValues(ctx)), context.bigArrays());
+                } else {
+                    estimatedCardinality = estimateCardinality(context.searcher().getIndexReader(), numericValuesSource::longValues,
+                            context.bigArrays());
+                }
+            } else {
+                estimatedCardinality = estimateCardinality(context.searcher().getIndexReader(),
+                        ctx -> hashedValues(valuesSource.bytesValues(ctx)), context.bigArrays());
+            }
+        }
+        return estimatedCardinality;
+    }
+
+    /**
+     * Exposes the 64 bits hashes of the provided values so that they can be sampled like numeric values. Collisions are
+     * negligible at the size of the sample.
+     */
+    static SortedNumericDocValues hashedValues(SortedBinaryDocValues values) {
+        final MurmurHash3.Hash128 hash = new MurmurHash3.Hash128();
+        return new AbstractSortedNumericDocValues() {
+            @Override
+            public boolean advanceExact(int target) throws IOException {
+                return values.advanceExact(target);
+            }
+
+            @Override
+            public int docValueCount() {
+                return values.docValueCount();
+            }
+
+            @Override
+            public long nextValue() throws IOException {
+                final BytesRef value = values.nextValue();
+                return MurmurHash3.hash128(value.bytes, value.offset, value.length, 0, hash).h1;
+            }
+        };
+    }
+
+    /**
+     * Estimate the number of unique values in the provided reader. Up to {@link #CARDINALITY_SAMPLE_SIZE} documents are
+     * sampled at regular intervals across all segments, so that fields whose values are correlated with the index order
+     * are not underestimated. The number of unique values is then extrapolated from the number of values that have been
+     * seen exactly once or twice in the sample (Chao1 estimator), and bounded by a linear extrapolation of the sample.
+     */
+    static long estimateCardinality(IndexReader reader, CheckedFunction<LeafReaderContext, SortedNumericDocValues, IOException> values,
+                                    BigArrays bigArrays) throws IOException {
+        final int maxDoc = reader.maxDoc();
+        if (maxDoc == 0) {
+            return 0;
+        }
+        // round up so that the sample spans all documents
+        final int step = (int) (((long) maxDoc + CARDINALITY_SAMPLE_SIZE - 1) / CARDINALITY_SAMPLE_SIZE);
+        IntArray occurrences = bigArrays.newIntArray(CARDINALITY_SAMPLE_SIZE);
+        try (LongHash hash = new LongHash(CARDINALITY_SAMPLE_SIZE, bigArrays)) {
+            int sampledDocs = 0;
+            int doc = 0;
+            for (LeafReaderContext ctx : reader.leaves()) {
+                final int leafMaxDoc = ctx.docBase + ctx.reader().maxDoc();
+                if (doc >= leafMaxDoc) {
+                    continue;
+                }
+                final SortedNumericDocValues leafValues = values.apply(ctx);
+                for (; doc < leafMaxDoc; doc += step) {
+                    sampledDocs++;
+                    if (leafValues.advanceExact(doc - ctx.docBase)) {
+                        for (int i = 0, count = leafValues.docValueCount(); i < count; i++) {
+                            long ord = hash.add(leafValues.nextValue());
+                            if (ord < 0) {
+                                ord = -1 - ord;
+                            } else {
+                                occurrences = bigArrays.grow(occurrences, ord + 1);
+                            }
+                            occurrences.increment(ord, 1);
+                        }
+                    }
+                }
+            }
+            final long distinct = hash.size();
+            if (step == 1) {
+                // every document has been visited, the count is exact
+                return distinct;
+            }
+            long f1 = 0, f2 = 0;
+            for (long ord = 0; ord < distinct; ++ord) {
+                final int count = occurrences.get(ord);
+                if (count == 1) {
+                    f1++;
+                } else if (count == 2) {
+                    f2++;
+                }
+            }
+            final long chao1 = distinct + (f1 * (f1 - 1)) / (2 * (f2 + 1));
+            final long linear = (long) Math.ceil((double) distinct * maxDoc / Math.max(1, sampledDocs));
+            return Math.min(chao1, linear);
+        } finally {
+            occurrences.close();
+        }
+    }
+
     /**
      * Get the maximum global ordinal value for the provided {@link ValuesSource} or -1
      * if the values source is not an instance of {@link ValuesSource.Bytes.WithOrdinals}.
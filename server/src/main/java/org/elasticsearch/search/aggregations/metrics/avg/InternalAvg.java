@@ -22,6 +22,7 @@ import org.elasticsearch.common.io.stream.StreamInput;
 import org.elasticsearch.common.io.stream.StreamOutput;
 import org.elasticsearch.common.xcontent.XContentBuilder;
 import org.elasticsearch.search.DocValueFormat;
+import org.elasticsearch.search.aggregations.AggregationsAccumulator;
 import org.elasticsearch.search.aggregations.InternalAggregation;
 import org.elasticsearch.search.aggregations.metrics.InternalNumericMetricsAggregation;
 import org.elasticsearch.search.aggregations.pipeline.PipelineAggregator;
@@ -98,6 +99,29 @@ public class InternalAvg extends InternalNumericMetricsAggregation.SingleValue i
         return new InternalAvg(getName(), sum, count, format, pipelineAggregators(), getMetaData());
     }
 
+    @Override
+    public Accumulator createAccumulator(AggregationsAccumulator parent) {
+        return new Accumulator() {
+            private long count = 0;
+            private double sum = 0;
+
+            @Override
+            public boolean accumulate(InternalAggregation aggregation) {
+                if (aggregation.getClass() != InternalAvg.class) {
+                    return false;
+                }
+                count += ((InternalAvg) aggregation).count;
+                sum += ((InternalAvg) aggregation).sum;
+                return true;
+            }
+
+            @Override
+            public InternalAggregation build() {
+                return new InternalAvg(getName(), sum, count, format, pipelineAggregators(), getMetaData());
+            }
+        };
+    }
+
     @Override
     public XContentBuilder doXContentBody(XContentBuilder builder, Params params) throws IOException {
         builder.field(CommonFields.VALUE.getPreferredName(), count != 0 ? getValue() : null);
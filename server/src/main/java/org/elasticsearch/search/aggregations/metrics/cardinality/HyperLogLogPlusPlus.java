@@ -20,8 +20,8 @@
 package org.elasticsearch.search.aggregations.metrics.cardinality;
 
 import org.apache.lucene.util.BytesRef;
-import org.apache.lucene.util.LongBitSet;
 import org.apache.lucene.util.packed.PackedInts;
+import org.elasticsearch.Version;
 import org.elasticsearch.common.io.stream.StreamInput;
 import org.elasticsearch.common.io.stream.StreamOutput;
 import org.elasticsearch.common.lease.Releasable;
@@ -30,10 +30,10 @@ import org.elasticsearch.common.util.BigArrays;
 import org.elasticsearch.common.util.ByteArray;
 import org.elasticsearch.common.util.ByteUtils;
 import org.elasticsearch.common.util.IntArray;
+import org.elasticsearch.common.util.ObjectArray;
 
 import java.io.IOException;
-import java.nio.ByteBuffer;
-import java.nio.ByteOrder;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Map;
@@ -49,7 +49,10 @@ import java.util.Set;
  * This implementation is different from the original implementation in that it
  * uses a hash table instead of a sorted list for linear counting. Although this
  * requires more space and makes hyperloglog (which is less accurate) used sooner,
- * this is also considerably faster.
+ * this is also considerably faster. The hash table of a bucket grows with the number
+ * of distinct values it saw, and the registers of a bucket are only allocated when it
+ * switches to hyperloglog, so buckets with few distinct values use little memory.
+ * Registers are merged eight at a time and are packed on six bits on the wire.
  *
  * Trying to understand what this class does without having read the paper is
  * considered adventurous.
@@ -64,6 +67,9 @@ public final class HyperLogLogPlusPlus implements Releasable {
     private static final float MAX_LOAD_FACTOR = 0.75f;
     private static final int P2 = 25;
     private static final int BIAS_K = 6;
+    private static final int INITIAL_HASH_SET_CAPACITY = 16;
+    private static final int MERGE_CHUNK_SIZE = 4096;
+    private static final long HIGH_BITS = 0x8080808080808080L;
 
     /**
      * Compute the required precision so that <code>count</code> distinct entries
@@ -156,11 +162,18 @@ public final class HyperLogLogPlusPlus implements Releasable {
     };
 
     private final BigArrays bigArrays;
-    private final OpenBitSet algorithm;
+    // the registers of the buckets that use hyperloglog, m per bucket in the order the buckets were upgraded
     private ByteArray runLens;
+    // the slot of the registers of each bucket plus one, or 0 if the bucket uses linear counting
+    private IntArray slots;
+    private int numSlots;
     private final Hashset hashSet;
     private final int p, m;
     private final double alphaMM;
+    // spares to merge the registers of two buckets a chunk at a time
+    private final BytesRef thisSpare = new BytesRef();
+    private final BytesRef otherSpare = new BytesRef();
+    private byte[] mergeSpare;
 
     public HyperLogLogPlusPlus(int precision, BigArrays bigArrays, long initialBucketCount) {
         if (precision < 4) {
@@ -172,8 +185,8 @@ public final class HyperLogLogPlusPlus implements Releasable {
         p = precision;
         m = 1 << p;
         this.bigArrays = bigArrays;
-        algorithm = new OpenBitSet();
-        runLens = bigArrays.newByteArray(initialBucketCount << p);
+        runLens = bigArrays.newByteArray(0);
+        slots = bigArrays.newIntArray(initialBucketCount);
         hashSet = new Hashset(initialBucketCount);
         final double alpha;
         switch (p) {
@@ -195,24 +208,30 @@ public final class HyperLogLogPlusPlus implements Releasable {
     }
 
     public long maxBucket() {
-        return runLens.size() >>> p;
+        return Math.max(slots.size(), hashSet.maxBucket());
     }
 
-    private void ensureCapacity(long numBuckets) {
-        runLens = bigArrays.grow(runLens, numBuckets << p);
+    private boolean isHll(long bucket) {
+        return bucket < slots.size() && slots.get(bucket) != 0;
+    }
+
+    /**
+     * Return the index of the first register of a bucket that uses hyperloglog.
+     */
+    private long registers(long bucket) {
+        return (long) (slots.get(bucket) - 1) << p;
     }
 
     public void merge(long thisBucket, HyperLogLogPlusPlus other, long otherBucket) {
         if (p != other.p) {
             throw new IllegalArgumentException();
         }
-        ensureCapacity(thisBucket + 1);
-        if (other.algorithm.get(otherBucket) == LINEAR_COUNTING) {
+        if (other.isHll(otherBucket) == false) {
             final IntArray values = other.hashSet.values(otherBucket);
             try {
                 for (long i = 0; i < values.size(); ++i) {
                     final int encoded = values.get(i);
-                    if (algorithm.get(thisBucket) == LINEAR_COUNTING) {
+                    if (isHll(thisBucket) == false) {
                         collectLcEncoded(thisBucket, encoded);
                     } else {
                         collectHllEncoded(thisBucket, encoded);
@@ -222,20 +241,48 @@ public final class HyperLogLogPlusPlus implements Releasable {
                 Releasables.close(values);
             }
         } else {
-            if (algorithm.get(thisBucket) != HYPERLOGLOG) {
+            if (isHll(thisBucket) == false) {
                 upgradeToHll(thisBucket);
             }
-            final long thisStart = thisBucket << p;
-            final long otherStart = otherBucket << p;
-            for (int i = 0; i < m; ++i) {
-                runLens.set(thisStart + i, (byte) Math.max(runLens.get(thisStart + i), other.runLens.get(otherStart + i)));
+            mergeRegisters(registers(thisBucket), other.runLens, other.registers(otherBucket));
+        }
+    }
+
+    /**
+     * Merge registers into the registers that start at <code>thisStart</code>, eight registers at a time.
+     */
+    private void mergeRegisters(long thisStart, ByteArray otherRunLens, long otherStart) {
+        final int chunkSize = Math.min(m, MERGE_CHUNK_SIZE);
+        if (mergeSpare == null) {
+            mergeSpare = new byte[chunkSize];
+        }
+        for (int offset = 0; offset < m; offset += chunkSize) {
+            // chunks are aligned on their size so that they never cross a page and can be read without copying
+            runLens.get(thisStart + offset, chunkSize, thisSpare);
+            otherRunLens.get(otherStart + offset, chunkSize, otherSpare);
+            for (int i = 0; i < chunkSize; i += Long.BYTES) {
+                final long thisWord = ByteUtils.readLongLE(thisSpare.bytes, thisSpare.offset + i);
+                final long otherWord = ByteUtils.readLongLE(otherSpare.bytes, otherSpare.offset + i);
+                ByteUtils.writeLongLE(maxRunLens(thisWord, otherWord), mergeSpare, i);
             }
+            runLens.set(thisStart + offset, mergeSpare, 0, chunkSize);
         }
     }
 
+    /**
+     * Return the per-byte maximum of two words of eight registers. Registers are lower than <code>128</code> so the high bit
+     * of each byte can be used to compare them without borrowing from the next register.
+     */
+    static long maxRunLens(long a, long b) {
+        assert (a & HIGH_BITS) == 0 && (b & HIGH_BITS) == 0;
+        // the high bit of each byte is set if the register of a is greater than or equal to the register of b
+        final long greaterOrEqual = ((a | HIGH_BITS) - b) & HIGH_BITS;
+        final long mask = (greaterOrEqual >>> 7) * 0xFF;
+        return (a & mask) | (b & ~mask);
+    }
+
     public void collect(long bucket, long hash) {
-        ensureCapacity(bucket + 1);
-        if (algorithm.get(bucket) == LINEAR_COUNTING) {
+        if (isHll(bucket) == false) {
             collectLc(bucket, hash);
         } else {
             collectHll(bucket, hash);
@@ -267,12 +314,12 @@ public final class HyperLogLogPlusPlus implements Releasable {
     }
 
     private void collectHll(long bucket, long index, int runLen) {
-        final long bucketIndex = (bucket << p) + index;
+        final long bucketIndex = registers(bucket) + index;
         runLens.set(bucketIndex, (byte) Math.max(runLen, runLens.get(bucketIndex)));
     }
 
     public long cardinality(long bucket) {
-        if (algorithm.get(bucket) == LINEAR_COUNTING) {
+        if (isHll(bucket) == false) {
             return cardinalityLc(bucket);
         } else {
             return cardinalityHll(bucket);
@@ -288,7 +335,7 @@ public final class HyperLogLogPlusPlus implements Releasable {
     private long cardinalityHll(long bucket) {
         double inverseSum = 0;
         int zeros = 0;
-        for (long i = bucket << p, end = i + m; i < end; ++i) {
+        for (long i = registers(bucket), end = i + m; i < end; ++i) {
             final int runLen = runLens.get(i);
             inverseSum += 1. / (1L << runLen);
             if (runLen == 0) {
@@ -310,16 +357,24 @@ public final class HyperLogLogPlusPlus implements Releasable {
         }
     }
 
+    /**
+     * Switch a bucket to hyperloglog. The registers of the bucket are only allocated at this point so that buckets that
+     * never see more distinct values than the linear counting threshold only use memory for the values they saw.
+     */
     void upgradeToHll(long bucket) {
-        ensureCapacity(bucket + 1);
+        slots = bigArrays.grow(slots, bucket + 1);
+        assert slots.get(bucket) == 0;
+        final long start = (long) numSlots << p;
+        runLens = bigArrays.grow(runLens, start + m);
+        slots.set(bucket, ++numSlots);
         final IntArray values = hashSet.values(bucket);
         try {
-            runLens.fill(bucket << p, (bucket << p) + m, (byte) 0);
+            runLens.fill(start, start + m, (byte) 0);
             for (long i = 0; i < values.size(); ++i) {
                 final int encoded = values.get(i);
                 collectHllEncoded(bucket, encoded);
             }
-            algorithm.set(bucket);
+            hashSet.clear(bucket);
         } finally {
             Releasables.close(values);
         }
@@ -422,11 +477,11 @@ public final class HyperLogLogPlusPlus implements Releasable {
 
     @Override
     public void close() {
-        Releasables.close(runLens, hashSet.sizes);
+        Releasables.close(runLens, slots, hashSet);
     }
 
     private Object getComparableData(long bucket) {
-        if (algorithm.get(bucket) == LINEAR_COUNTING) {
+        if (isHll(bucket) == false) {
             Set<Integer> values = new HashSet<>();
             try (IntArray hashSetValues = hashSet.values(bucket)) {
                 for (long i = 0; i < hashSetValues.size(); i++) {
@@ -436,8 +491,9 @@ public final class HyperLogLogPlusPlus implements Releasable {
             return values;
         } else {
             Map<Byte, Integer> values = new HashMap<>();
-            for (long i = 0; i < runLens.size(); i++) {
-                byte runLength = runLens.get((bucket << p) + i);
+            final long start = registers(bucket);
+            for (long i = 0; i < m; i++) {
+                byte runLength = runLens.get(start + i);
                 Integer numOccurances = values.get(runLength);
                 if (numOccurances == null) {
                     values.put(runLength, 1);
@@ -450,56 +506,43 @@ public final class HyperLogLogPlusPlus implements Releasable {
     }
 
     public int hashCode(long bucket) {
-        return Objects.hash(p, algorithm.get(bucket), getComparableData(bucket));
+        return Objects.hash(p, isHll(bucket), getComparableData(bucket));
     }
 
     public boolean equals(long bucket, HyperLogLogPlusPlus other) {
         return Objects.equals(p, other.p) &&
-                Objects.equals(algorithm.get(bucket), other.algorithm.get(bucket)) &&
+                Objects.equals(isHll(bucket), other.isHll(bucket)) &&
                 Objects.equals(getComparableData(bucket), other.getComparableData(bucket));
     }
 
     /**
-     * We are actually using HyperLogLog's runLens array but interpreting it as a hash set
-     * for linear counting.
+     * The hash sets of encoded hashes of the buckets that use linear counting, which are the sparse representation of the
+     * paper. Each bucket has its own table that starts small and doubles as values are added, up to the size of the
+     * registers of a bucket at the linear counting threshold, so that sparse buckets only use memory for the values they saw.
      */
-    private class Hashset {
+    private class Hashset implements Releasable {
 
-        private final int capacity;
+        private final int maxCapacity;
         private final int threshold;
-        private final int mask;
+        private ObjectArray<IntArray> tables;
         private IntArray sizes;
-        private final BytesRef readSpare;
-        private final ByteBuffer writeSpare;
 
         Hashset(long initialBucketCount) {
-            capacity = m / 4; // because ints take 4 bytes
-            threshold = (int) (capacity * MAX_LOAD_FACTOR);
-            mask = capacity - 1;
+            maxCapacity = m / 4; // because ints take 4 bytes
+            threshold = (int) (maxCapacity * MAX_LOAD_FACTOR);
+            tables = bigArrays.newObjectArray(initialBucketCount);
             sizes = bigArrays.newIntArray(initialBucketCount);
-            readSpare = new BytesRef();
-            writeSpare = ByteBuffer.allocate(4).order(ByteOrder.LITTLE_ENDIAN);
         }
 
-        private long index (long bucket, int index) {
-            return (bucket << p) + (index << 2);
-        }
-
-        private int get(long bucket, int index) {
-            runLens.get(index(bucket, index), 4, readSpare);
-            return ByteUtils.readIntLE(readSpare.bytes, readSpare.offset);
-        }
-
-        private void set(long bucket, int index, int value) {
-            writeSpare.putInt(0, value);
-            runLens.set(index(bucket, index), writeSpare.array(), 0, 4);
+        long maxBucket() {
+            return sizes.size();
         }
 
         private int recomputedSize(long bucket) {
+            final IntArray table = bucket < tables.size() ? tables.get(bucket) : null;
             int size = 0;
-            for (int i = 0; i <= mask; ++i) {
-                final int v = get(bucket, i);
-                if (v != 0) {
+            for (long i = 0; table != null && i < table.size(); ++i) {
+                if (table.get(i) != 0) {
                     ++size;
                 }
             }
@@ -520,17 +563,43 @@ public final class HyperLogLogPlusPlus implements Releasable {
          * Return <tt>-1</tt> if the value was already in the set or the new set size if it was added.
          */
         public int add(long bucket, int k) {
-            sizes = bigArrays.grow(sizes, bucket + 1);
             assert k != 0;
+            sizes = bigArrays.grow(sizes, bucket + 1);
+            tables = bigArrays.grow(tables, bucket + 1);
+            IntArray table = tables.get(bucket);
+            if (table == null) {
+                table = bigArrays.newIntArray(Math.min(INITIAL_HASH_SET_CAPACITY, maxCapacity));
+                tables.set(bucket, table);
+            }
+            if (insert(table, k) == false) {
+                return -1;
+            }
+            final int size = sizes.increment(bucket, 1);
+            if (size > table.size() * MAX_LOAD_FACTOR && table.size() < maxCapacity) {
+                final IntArray newTable = bigArrays.newIntArray(table.size() * 2);
+                for (long i = 0; i < table.size(); ++i) {
+                    final int v = table.get(i);
+                    if (v != 0) {
+                        insert(newTable, v);
+                    }
+                }
+                tables.set(bucket, newTable);
+                table.close();
+            }
+            return size;
+        }
+
+        private boolean insert(IntArray table, int k) {
+            final int mask = (int) table.size() - 1;
             for (int i = (k & mask); ; i = (i + 1) & mask) {
-                final int v = get(bucket, i);
+                final int v = table.get(i);
                 if (v == 0) {
                     // means unused, take it!
-                    set(bucket, i, k);
-                    return sizes.increment(bucket, 1);
+                    table.set(i, k);
+                    return true;
                 } else if (v == k) {
                     // k is already in the set
-                    return -1;
+                    return false;
                 }
             }
         }
@@ -541,9 +610,10 @@ public final class HyperLogLogPlusPlus implements Releasable {
             if (size == 0) {
                 return values;
             }
+            final IntArray table = tables.get(bucket);
             int i = 0;
-            for (int j = 0; j < capacity; ++j) {
-                final int k = get(bucket, j);
+            for (long j = 0; j < table.size(); ++j) {
+                final int k = table.get(j);
                 if (k != 0) {
                     values.set(i++, k);
                 }
@@ -552,22 +622,69 @@ public final class HyperLogLogPlusPlus implements Releasable {
             return values;
         }
 
+        /**
+         * Release the hash set of a bucket that was upgraded to hyperloglog.
+         */
+        void clear(long bucket) {
+            if (bucket < tables.size()) {
+                Releasables.close(tables.set(bucket, null));
+            }
+            if (bucket < sizes.size()) {
+                sizes.set(bucket, 0);
+            }
+        }
+
+        @Override
+        public void close() {
+            for (long i = 0; i < tables.size(); ++i) {
+                Releasables.close(tables.get(i));
+            }
+            Releasables.close(tables, sizes);
+        }
     }
 
     public void writeTo(long bucket, StreamOutput out) throws IOException {
         out.writeVInt(p);
-        if (algorithm.get(bucket) == LINEAR_COUNTING) {
+        if (isHll(bucket) == false) {
             out.writeBoolean(LINEAR_COUNTING);
             try (IntArray hashes = hashSet.values(bucket)) {
                 out.writeVLong(hashes.size());
-                for (long i = 0; i < hashes.size(); ++i) {
-                    out.writeInt(hashes.get(i));
+                if (out.getVersion().onOrAfter(Version.V_6_2_3)) {
+                    // sorted unsigned hashes written as variable length deltas
+                    final long[] sorted = new long[Math.toIntExact(hashes.size())];
+                    for (int i = 0; i < sorted.length; ++i) {
+                        sorted[i] = Integer.toUnsignedLong(hashes.get(i));
+                    }
+                    Arrays.sort(sorted);
+                    long previous = 0;
+                    for (long hash : sorted) {
+                        out.writeVLong(hash - previous);
+                        previous = hash;
+                    }
+                } else {
+                    for (long i = 0; i < hashes.size(); ++i) {
+                        out.writeInt(hashes.get(i));
+                    }
                 }
             }
         } else {
             out.writeBoolean(HYPERLOGLOG);
-            for (long i = bucket << p, end = i + m; i < end; ++i) {
-                out.writeByte(runLens.get(i));
+            final long start = registers(bucket);
+            if (out.getVersion().onOrAfter(Version.V_6_2_3)) {
+                // registers are lower than 64 so four of them are packed into three bytes
+                final byte[] packed = new byte[m / 4 * 3];
+                for (int i = 0, j = 0; i < m; i += 4, j += 3) {
+                    final int word = runLens.get(start + i) | runLens.get(start + i + 1) << 6
+                        | runLens.get(start + i + 2) << 12 | runLens.get(start + i + 3) << 18;
+                    packed[j] = (byte) word;
+                    packed[j + 1] = (byte) (word >>> 8);
+                    packed[j + 2] = (byte) (word >>> 16);
+                }
+                out.writeBytes(packed);
+            } else {
+                for (long i = start, end = i + m; i < end; ++i) {
+                    out.writeByte(runLens.get(i));
+                }
             }
         }
     }
@@ -577,46 +694,37 @@ public final class HyperLogLogPlusPlus implements Releasable {
         HyperLogLogPlusPlus counts = new HyperLogLogPlusPlus(precision, bigArrays, 1);
         final boolean algorithm = in.readBoolean();
         if (algorithm == LINEAR_COUNTING) {
-            counts.algorithm.clear(0);
             final long size = in.readVLong();
-            for (long i = 0; i < size; ++i) {
-                final int encoded = in.readInt();
-                counts.hashSet.add(0, encoded);
+            if (in.getVersion().onOrAfter(Version.V_6_2_3)) {
+                long hash = 0;
+                for (long i = 0; i < size; ++i) {
+                    hash += in.readVLong();
+                    counts.hashSet.add(0, (int) hash);
+                }
+            } else {
+                for (long i = 0; i < size; ++i) {
+                    final int encoded = in.readInt();
+                    counts.hashSet.add(0, encoded);
+                }
             }
         } else {
-            counts.algorithm.set(0);
-            for (int i = 0; i < counts.m; ++i) {
-                counts.runLens.set(i, in.readByte());
-            }
-        }
-        return counts;
-    }
-    
-    /** looks and smells like the old openbitset. */
-    static class OpenBitSet {
-        LongBitSet impl = new LongBitSet(64);
-
-        boolean get(long bit) {
-            if (bit < impl.length()) {
-                return impl.get(bit);
+            counts.upgradeToHll(0);
+            if (in.getVersion().onOrAfter(Version.V_6_2_3)) {
+                final byte[] packed = new byte[counts.m / 4 * 3];
+                in.readBytes(packed, 0, packed.length);
+                for (int i = 0, j = 0; i < counts.m; i += 4, j += 3) {
+                    final int word = (packed[j] & 0xFF) | (packed[j + 1] & 0xFF) << 8 | (packed[j + 2] & 0xFF) << 16;
+                    counts.runLens.set(i, (byte) (word & 0x3F));
+                    counts.runLens.set(i + 1, (byte) ((word >>> 6) & 0x3F));
+                    counts.runLens.set(i + 2, (byte) ((word >>> 12) & 0x3F));
+                    counts.runLens.set(i + 3, (byte) (word >>> 18));
+                }
             } else {
-                return false;
+                for (int i = 0; i < counts.m; ++i) {
+                    counts.runLens.set(i, in.readByte());
+                }
             }
         }
-        
-        void ensureCapacity(long bit) {
-            impl = LongBitSet.ensureCapacity(impl, bit);
-        }
-        
-        void set(long bit) {
-            ensureCapacity(bit);
-            impl.set(bit);
-        }
-        
-        void clear(long bit) {
-            ensureCapacity(bit);
-            impl.clear(bit);
-        }
+        return counts;
     }
-
 }
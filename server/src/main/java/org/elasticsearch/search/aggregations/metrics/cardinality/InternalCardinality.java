@@ -24,6 +24,7 @@ import org.elasticsearch.common.io.stream.StreamOutput;
 import org.elasticsearch.common.util.BigArrays;
 import org.elasticsearch.common.xcontent.XContentBuilder;
 import org.elasticsearch.search.DocValueFormat;
+import org.elasticsearch.search.aggregations.AggregationsAccumulator;
 import org.elasticsearch.search.aggregations.InternalAggregation;
 import org.elasticsearch.search.aggregations.metrics.InternalNumericMetricsAggregation;
 import org.elasticsearch.search.aggregations.pipeline.PipelineAggregator;
@@ -101,6 +102,52 @@ public final class InternalCardinality extends InternalNumericMetricsAggregation
         }
     }
 
+    @Override
+    public Accumulator createAccumulator(AggregationsAccumulator parent) {
+        return new CardinalityAccumulator(name, pipelineAggregators(), getMetaData());
+    }
+
+    /**
+     * Merges the sketches of partial results into a single sketch. This is a static class so that it doesn't keep a
+     * reference to the sketch of the aggregation that created it.
+     */
+    private static final class CardinalityAccumulator extends Accumulator {
+        private final String name;
+        private final List<PipelineAggregator> pipelineAggregators;
+        private final Map<String, Object> metaData;
+        private InternalCardinality empty;
+        private InternalCardinality reduced;
+
+        CardinalityAccumulator(String name, List<PipelineAggregator> pipelineAggregators, Map<String, Object> metaData) {
+            this.name = name;
+            this.pipelineAggregators = pipelineAggregators;
+            this.metaData = metaData;
+        }
+
+        @Override
+        public boolean accumulate(InternalAggregation aggregation) {
+            if (aggregation.getClass() != InternalCardinality.class) {
+                return false;
+            }
+            final InternalCardinality cardinality = (InternalCardinality) aggregation;
+            if (cardinality.counts != null) {
+                if (reduced == null) {
+                    reduced = new InternalCardinality(name, new HyperLogLogPlusPlus(cardinality.counts.precision(),
+                            BigArrays.NON_RECYCLING_INSTANCE, 1), pipelineAggregators, metaData);
+                }
+                reduced.merge(cardinality);
+            } else if (empty == null) {
+                empty = cardinality;
+            }
+            return true;
+        }
+
+        @Override
+        public InternalAggregation build() {
+            return reduced == null ? empty : reduced;
+        }
+    }
+
     public void merge(InternalCardinality other) {
         assert counts != null && other != null;
         counts.merge(0, other.counts, 0);
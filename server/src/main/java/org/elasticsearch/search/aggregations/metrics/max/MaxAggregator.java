@@ -22,6 +22,7 @@ import org.apache.lucene.index.LeafReaderContext;
 import org.elasticsearch.common.lease.Releasables;
 import org.elasticsearch.common.util.BigArrays;
 import org.elasticsearch.common.util.DoubleArray;
+import org.elasticsearch.index.fielddata.DoubleValuesBlockReader;
 import org.elasticsearch.index.fielddata.NumericDoubleValues;
 import org.elasticsearch.index.fielddata.SortedNumericDoubleValues;
 import org.elasticsearch.search.DocValueFormat;
@@ -30,6 +31,7 @@ import org.elasticsearch.search.aggregations.Aggregator;
 import org.elasticsearch.search.aggregations.InternalAggregation;
 import org.elasticsearch.search.aggregations.LeafBucketCollector;
 import org.elasticsearch.search.aggregations.LeafBucketCollectorBase;
+import org.elasticsearch.search.aggregations.LeafBucketCollectorBuffer;
 import org.elasticsearch.search.aggregations.metrics.NumericMetricsAggregator;
 import org.elasticsearch.search.aggregations.pipeline.PipelineAggregator;
 import org.elasticsearch.search.aggregations.support.ValuesSource;
@@ -45,6 +47,7 @@ public class MaxAggregator extends NumericMetricsAggregator.SingleValue {
     final DocValueFormat formatter;
 
     DoubleArray maxes;
+    private final LeafBucketCollectorBuffer buffer = new LeafBucketCollectorBuffer();
 
     public MaxAggregator(String name, ValuesSource.Numeric valuesSource, DocValueFormat formatter,
             SearchContext context,
@@ -73,7 +76,8 @@ public class MaxAggregator extends NumericMetricsAggregator.SingleValue {
         final BigArrays bigArrays = context.bigArrays();
         final SortedNumericDoubleValues allValues = valuesSource.doubleValues(ctx);
         final NumericDoubleValues values = MultiValueMode.MAX.select(allValues, Double.NEGATIVE_INFINITY);
-        return new LeafBucketCollectorBase(sub, allValues) {
+        final DoubleValuesBlockReader blockReader = DoubleValuesBlockReader.of(allValues);
+        final LeafBucketCollector leaf = new LeafBucketCollectorBase(sub, allValues) {
 
             @Override
             public void collect(int doc, long bucket) throws IOException {
@@ -90,7 +94,29 @@ public class MaxAggregator extends NumericMetricsAggregator.SingleValue {
                 }
             }
 
+            @Override
+            public void collect(int[] docs, int count, long bucket) throws IOException {
+                if (bucket >= maxes.size()) {
+                    long from = maxes.size();
+                    maxes = bigArrays.grow(maxes, bucket + 1);
+                    maxes.fill(from, maxes.size(), Double.NEGATIVE_INFINITY);
+                }
+                final int numValues = blockReader.read(docs, count);
+                final double[] blockValues = blockReader.values();
+                double max = maxes.get(bucket);
+                for (int i = 0; i < numValues; i++) {
+                    max = Math.max(max, blockValues[i]);
+                }
+                maxes.set(bucket, max);
+            }
         };
+        // values that depend on the score must be read while the scorer is on the doc
+        return valuesSource.needsScores() ? leaf : buffer.wrap(leaf);
+    }
+
+    @Override
+    protected void doPostCollection() throws IOException {
+        buffer.flush();
     }
 
     @Override
@@ -22,6 +22,7 @@ import org.elasticsearch.common.io.stream.StreamInput;
 import org.elasticsearch.common.io.stream.StreamOutput;
 import org.elasticsearch.common.xcontent.XContentBuilder;
 import org.elasticsearch.search.DocValueFormat;
+import org.elasticsearch.search.aggregations.AggregationsAccumulator;
 import org.elasticsearch.search.aggregations.InternalAggregation;
 import org.elasticsearch.search.aggregations.metrics.InternalNumericMetricsAggregation;
 import org.elasticsearch.search.aggregations.pipeline.PipelineAggregator;
@@ -80,6 +81,27 @@ public class InternalMin extends InternalNumericMetricsAggregation.SingleValue i
         return new InternalMin(getName(), min, this.format, pipelineAggregators(), getMetaData());
     }
 
+    @Override
+    public Accumulator createAccumulator(AggregationsAccumulator parent) {
+        return new Accumulator() {
+            private double min = Double.POSITIVE_INFINITY;
+
+            @Override
+            public boolean accumulate(InternalAggregation aggregation) {
+                if (aggregation.getClass() != InternalMin.class) {
+                    return false;
+                }
+                min = Math.min(min, ((InternalMin) aggregation).min);
+                return true;
+            }
+
+            @Override
+            public InternalAggregation build() {
+                return new InternalMin(getName(), min, format, pipelineAggregators(), getMetaData());
+            }
+        };
+    }
+
     @Override
     public XContentBuilder doXContentBody(XContentBuilder builder, Params params) throws IOException {
         boolean hasValue = !Double.isInfinite(min);
@@ -22,6 +22,7 @@ import org.apache.lucene.index.LeafReaderContext;
 import org.elasticsearch.common.lease.Releasables;
 import org.elasticsearch.common.util.BigArrays;
 import org.elasticsearch.common.util.DoubleArray;
+import org.elasticsearch.index.fielddata.DoubleValuesBlockReader;
 import org.elasticsearch.index.fielddata.NumericDoubleValues;
 import org.elasticsearch.index.fielddata.SortedNumericDoubleValues;
 import org.elasticsearch.search.DocValueFormat;
@@ -30,6 +31,7 @@ import org.elasticsearch.search.aggregations.Aggregator;
 import org.elasticsearch.search.aggregations.InternalAggregation;
 import org.elasticsearch.search.aggregations.LeafBucketCollector;
 import org.elasticsearch.search.aggregations.LeafBucketCollectorBase;
+import org.elasticsearch.search.aggregations.LeafBucketCollectorBuffer;
 import org.elasticsearch.search.aggregations.metrics.NumericMetricsAggregator;
 import org.elasticsearch.search.aggregations.pipeline.PipelineAggregator;
 import org.elasticsearch.search.aggregations.support.ValuesSource;
@@ -45,6 +47,7 @@ public class MinAggregator extends NumericMetricsAggregator.SingleValue {
     final DocValueFormat format;
 
     DoubleArray mins;
+    private final LeafBucketCollectorBuffer buffer = new LeafBucketCollectorBuffer();
 
     public MinAggregator(String name, ValuesSource.Numeric valuesSource, DocValueFormat formatter,
             SearchContext context, Aggregator parent, List<PipelineAggregator> pipelineAggregators,
@@ -72,7 +75,8 @@ public class MinAggregator extends NumericMetricsAggregator.SingleValue {
         final BigArrays bigArrays = context.bigArrays();
         final SortedNumericDoubleValues allValues = valuesSource.doubleValues(ctx);
         final NumericDoubleValues values = MultiValueMode.MIN.select(allValues, Double.POSITIVE_INFINITY);
-        return new LeafBucketCollectorBase(sub, allValues) {
+        final DoubleValuesBlockReader blockReader = DoubleValuesBlockReader.of(allValues);
+        final LeafBucketCollector leaf = new LeafBucketCollectorBase(sub, allValues) {
 
             @Override
             public void collect(int doc, long bucket) throws IOException {
@@ -89,7 +93,29 @@ public class MinAggregator extends NumericMetricsAggregator.SingleValue {
                 }
             }
 
+            @Override
+            public void collect(int[] docs, int count, long bucket) throws IOException {
+                if (bucket >= mins.size()) {
+                    long from = mins.size();
+                    mins = bigArrays.grow(mins, bucket + 1);
+                    mins.fill(from, mins.size(), Double.POSITIVE_INFINITY);
+                }
+                final int numValues = blockReader.read(docs, count);
+                final double[] blockValues = blockReader.values();
+                double min = mins.get(bucket);
+                for (int i = 0; i < numValues; i++) {
+                    min = Math.min(min, blockValues[i]);
+                }
+                mins.set(bucket, min);
+            }
         };
+        // values that depend on the score must be read while the scorer is on the doc
+        return valuesSource.needsScores() ? leaf : buffer.wrap(leaf);
+    }
+
+    @Override
+    protected void doPostCollection() throws IOException {
+        buffer.flush();
     }
 
     @Override
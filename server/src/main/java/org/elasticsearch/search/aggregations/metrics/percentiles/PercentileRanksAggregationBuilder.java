@@ -19,6 +19,7 @@
 
 package org.elasticsearch.search.aggregations.metrics.percentiles;
 
+import org.elasticsearch.Version;
 import org.elasticsearch.common.ParseField;
 import org.elasticsearch.common.io.stream.StreamInput;
 import org.elasticsearch.common.io.stream.StreamOutput;
@@ -31,6 +32,8 @@ import org.elasticsearch.search.aggregations.AggregationBuilder;
 import org.elasticsearch.search.aggregations.AggregatorFactories.Builder;
 import org.elasticsearch.search.aggregations.AggregatorFactory;
 import org.elasticsearch.search.aggregations.metrics.percentiles.hdr.HDRPercentileRanksAggregatorFactory;
+import org.elasticsearch.search.aggregations.metrics.percentiles.sketch.RelativeErrorSketch;
+import org.elasticsearch.search.aggregations.metrics.percentiles.sketch.SketchPercentileRanksAggregatorFactory;
 import org.elasticsearch.search.aggregations.metrics.percentiles.tdigest.TDigestPercentileRanksAggregatorFactory;
 import org.elasticsearch.search.aggregations.support.ValueType;
 import org.elasticsearch.search.aggregations.support.ValuesSource;
@@ -65,6 +68,17 @@ public class PercentileRanksAggregationBuilder extends LeafOnly<ValuesSource.Num
         TDIGEST_OPTIONS_PARSER.declareDouble((opts, compression) -> opts.compression = compression, new ParseField("compression"));
     }
 
+    private static class SketchOptions {
+        Double relativeAccuracy;
+    }
+
+    private static final ObjectParser<SketchOptions, String> SKETCH_OPTIONS_PARSER =
+            new ObjectParser<>(PercentilesMethod.SKETCH.getParseField().getPreferredName(), SketchOptions::new);
+    static {
+        SKETCH_OPTIONS_PARSER.declareDouble((opts, relativeAccuracy) -> opts.relativeAccuracy = relativeAccuracy,
+                PercentilesAggregationBuilder.RELATIVE_ACCURACY_FIELD);
+    }
+
     private static class HDROptions {
         Integer numberOfSigDigits;
     }
@@ -100,6 +114,13 @@ public class PercentileRanksAggregationBuilder extends LeafOnly<ValuesSource.Num
                 b.numberOfSignificantValueDigits(v.numberOfSigDigits);
             }
         }, HDR_OPTIONS_PARSER::parse, PercentilesMethod.HDR.getParseField(), ObjectParser.ValueType.OBJECT);
+
+        PARSER.declareField((b, v) -> {
+            b.method(PercentilesMethod.SKETCH);
+            if (v.relativeAccuracy != null) {
+                b.relativeAccuracy(v.relativeAccuracy);
+            }
+        }, SKETCH_OPTIONS_PARSER::parse, PercentilesMethod.SKETCH.getParseField(), ObjectParser.ValueType.OBJECT);
     }
 
     public static AggregationBuilder parse(String aggregationName, XContentParser parser) throws IOException {
@@ -111,6 +132,7 @@ public class PercentileRanksAggregationBuilder extends LeafOnly<ValuesSource.Num
     private PercentilesMethod method = PercentilesMethod.TDIGEST;
     private int numberOfSignificantValueDigits = 3;
     private double compression = 100.0;
+    private double relativeAccuracy = RelativeErrorSketch.DEFAULT_RELATIVE_ACCURACY;
     private boolean keyed = true;
 
     private PercentileRanksAggregationBuilder(String name, List<Double> values) {
@@ -140,6 +162,9 @@ public class PercentileRanksAggregationBuilder extends LeafOnly<ValuesSource.Num
         numberOfSignificantValueDigits = in.readVInt();
         compression = in.readDouble();
         method = PercentilesMethod.readFromStream(in);
+        if (in.getVersion().onOrAfter(Version.V_6_2_3)) {
+            relativeAccuracy = in.readDouble();
+        }
     }
 
     @Override
@@ -149,6 +174,9 @@ public class PercentileRanksAggregationBuilder extends LeafOnly<ValuesSource.Num
         out.writeVInt(numberOfSignificantValueDigits);
         out.writeDouble(compression);
         method.writeTo(out);
+        if (out.getVersion().onOrAfter(Version.V_6_2_3)) {
+            out.writeDouble(relativeAccuracy);
+        }
     }
 
     /**
@@ -214,6 +242,27 @@ public class PercentileRanksAggregationBuilder extends LeafOnly<ValuesSource.Num
         return compression;
     }
 
+    /**
+     * Expert: set the relative accuracy of the returned percentiles. Lower values improve accuracy
+     * but also memory usage. Only relevant when using {@link PercentilesMethod#SKETCH}.
+     */
+    public PercentileRanksAggregationBuilder relativeAccuracy(double relativeAccuracy) {
+        if (relativeAccuracy <= 0.0 || relativeAccuracy >= 1.0) {
+            throw new IllegalArgumentException(
+                    "[relative_accuracy] must be greater than 0 and less than 1. Found [" + relativeAccuracy + "] in [" + name + "]");
+        }
+        this.relativeAccuracy = relativeAccuracy;
+        return this;
+    }
+
+    /**
+     * Expert: get the relative accuracy of the returned percentiles. Only relevant when using
+     * {@link PercentilesMethod#SKETCH}.
+     */
+    public double relativeAccuracy() {
+        return relativeAccuracy;
+    }
+
     public PercentileRanksAggregationBuilder method(PercentilesMethod method) {
         if (method == null) {
             throw new IllegalArgumentException("[method] must not be null: [" + name + "]");
@@ -236,6 +285,9 @@ public class PercentileRanksAggregationBuilder extends LeafOnly<ValuesSource.Num
         case HDR:
             return new HDRPercentileRanksAggregatorFactory(name, config, values, numberOfSignificantValueDigits, keyed, context,
                     parent, subFactoriesBuilder, metaData);
+        case SKETCH:
+            return new SketchPercentileRanksAggregatorFactory(name, config, values, relativeAccuracy, keyed, context, parent,
+                    subFactoriesBuilder, metaData);
         default:
             throw new IllegalStateException("Illegal method [" + method + "]");
         }
@@ -248,6 +300,8 @@ public class PercentileRanksAggregationBuilder extends LeafOnly<ValuesSource.Num
         builder.startObject(method.toString());
         if (method == PercentilesMethod.TDIGEST) {
             builder.field(PercentilesAggregationBuilder.COMPRESSION_FIELD.getPreferredName(), compression);
+        } else if (method == PercentilesMethod.SKETCH) {
+            builder.field(PercentilesAggregationBuilder.RELATIVE_ACCURACY_FIELD.getPreferredName(), relativeAccuracy);
         } else {
             builder.field(PercentilesAggregationBuilder.NUMBER_SIGNIFICANT_DIGITS_FIELD.getPreferredName(), numberOfSignificantValueDigits);
         }
@@ -269,6 +323,9 @@ public class PercentileRanksAggregationBuilder extends LeafOnly<ValuesSource.Num
         case TDIGEST:
             equalSettings = Objects.equals(compression, other.compression);
             break;
+        case SKETCH:
+            equalSettings = Objects.equals(relativeAccuracy, other.relativeAccuracy);
+            break;
         default:
             throw new IllegalStateException("Illegal method [" + method + "]");
         }
@@ -285,6 +342,8 @@ public class PercentileRanksAggregationBuilder extends LeafOnly<ValuesSource.Num
             return Objects.hash(Arrays.hashCode(values), keyed, numberOfSignificantValueDigits, method);
         case TDIGEST:
             return Objects.hash(Arrays.hashCode(values), keyed, compression, method);
+        case SKETCH:
+            return Objects.hash(Arrays.hashCode(values), keyed, relativeAccuracy, method);
         default:
             throw new IllegalStateException("Illegal method [" + method + "]");
         }
@@ -19,6 +19,7 @@
 
 package org.elasticsearch.search.aggregations.metrics.percentiles;
 
+import org.elasticsearch.Version;
 import org.elasticsearch.common.ParseField;
 import org.elasticsearch.common.io.stream.StreamInput;
 import org.elasticsearch.common.io.stream.StreamOutput;
@@ -29,6 +30,8 @@ import org.elasticsearch.search.aggregations.AggregationBuilder;
 import org.elasticsearch.search.aggregations.AggregatorFactories.Builder;
 import org.elasticsearch.search.aggregations.AggregatorFactory;
 import org.elasticsearch.search.aggregations.metrics.percentiles.hdr.HDRPercentilesAggregatorFactory;
+import org.elasticsearch.search.aggregations.metrics.percentiles.sketch.RelativeErrorSketch;
+import org.elasticsearch.search.aggregations.metrics.percentiles.sketch.SketchPercentilesAggregatorFactory;
 import org.elasticsearch.search.aggregations.metrics.percentiles.tdigest.TDigestPercentilesAggregatorFactory;
 import org.elasticsearch.search.aggregations.support.ValueType;
 import org.elasticsearch.search.aggregations.support.ValuesSource;
@@ -54,6 +57,7 @@ public class PercentilesAggregationBuilder extends LeafOnly<ValuesSource.Numeric
     public static final ParseField METHOD_FIELD = new ParseField("method");
     public static final ParseField COMPRESSION_FIELD = new ParseField("compression");
     public static final ParseField NUMBER_SIGNIFICANT_DIGITS_FIELD = new ParseField("number_of_significant_value_digits");
+    public static final ParseField RELATIVE_ACCURACY_FIELD = new ParseField("relative_accuracy");
 
     private static class TDigestOptions {
         Double compression;
@@ -65,6 +69,17 @@ public class PercentilesAggregationBuilder extends LeafOnly<ValuesSource.Numeric
         TDIGEST_OPTIONS_PARSER.declareDouble((opts, compression) -> opts.compression = compression, COMPRESSION_FIELD);
     }
 
+    private static class SketchOptions {
+        Double relativeAccuracy;
+    }
+
+    private static final ObjectParser<SketchOptions, Void> SKETCH_OPTIONS_PARSER =
+            new ObjectParser<>(PercentilesMethod.SKETCH.getParseField().getPreferredName(), SketchOptions::new);
+    static {
+        SKETCH_OPTIONS_PARSER.declareDouble((opts, relativeAccuracy) -> opts.relativeAccuracy = relativeAccuracy,
+                RELATIVE_ACCURACY_FIELD);
+    }
+
     private static class HDROptions {
         Integer numberOfSigDigits;
     }
@@ -101,6 +116,13 @@ public class PercentilesAggregationBuilder extends LeafOnly<ValuesSource.Numeric
                 b.numberOfSignificantValueDigits(v.numberOfSigDigits);
             }
         }, HDR_OPTIONS_PARSER::parse, PercentilesMethod.HDR.getParseField(), ObjectParser.ValueType.OBJECT);
+
+        PARSER.declareField((b, v) -> {
+            b.method(PercentilesMethod.SKETCH);
+            if (v.relativeAccuracy != null) {
+                b.relativeAccuracy(v.relativeAccuracy);
+            }
+        }, SKETCH_OPTIONS_PARSER::parse, PercentilesMethod.SKETCH.getParseField(), ObjectParser.ValueType.OBJECT);
     }
 
     public static AggregationBuilder parse(String aggregationName, XContentParser parser) throws IOException {
@@ -117,6 +139,7 @@ public class PercentilesAggregationBuilder extends LeafOnly<ValuesSource.Numeric
         returnedAgg.keyed(internal.keyed());
         returnedAgg.compression(internal.compression());
         returnedAgg.numberOfSignificantValueDigits(internal.numberOfSignificantValueDigits());
+        returnedAgg.relativeAccuracy(internal.relativeAccuracy());
         return returnedAgg;
     }
 
@@ -130,6 +153,7 @@ public class PercentilesAggregationBuilder extends LeafOnly<ValuesSource.Numeric
     private PercentilesMethod method = PercentilesMethod.TDIGEST;
     private int numberOfSignificantValueDigits = 3;
     private double compression = 100.0;
+    private double relativeAccuracy = RelativeErrorSketch.DEFAULT_RELATIVE_ACCURACY;
     private boolean keyed = true;
 
     public PercentilesAggregationBuilder(String name) {
@@ -146,6 +170,9 @@ public class PercentilesAggregationBuilder extends LeafOnly<ValuesSource.Numeric
         numberOfSignificantValueDigits = in.readVInt();
         compression = in.readDouble();
         method = PercentilesMethod.readFromStream(in);
+        if (in.getVersion().onOrAfter(Version.V_6_2_3)) {
+            relativeAccuracy = in.readDouble();
+        }
     }
 
     @Override
@@ -155,6 +182,9 @@ public class PercentilesAggregationBuilder extends LeafOnly<ValuesSource.Numeric
         out.writeVInt(numberOfSignificantValueDigits);
         out.writeDouble(compression);
         method.writeTo(out);
+        if (out.getVersion().onOrAfter(Version.V_6_2_3)) {
+            out.writeDouble(relativeAccuracy);
+        }
     }
 
     /**
@@ -236,6 +266,27 @@ public class PercentilesAggregationBuilder extends LeafOnly<ValuesSource.Numeric
         return compression;
     }
 
+    /**
+     * Expert: set the relative accuracy of the returned percentiles. Lower values improve accuracy
+     * but also memory usage. Only relevant when using {@link PercentilesMethod#SKETCH}.
+     */
+    public PercentilesAggregationBuilder relativeAccuracy(double relativeAccuracy) {
+        if (relativeAccuracy <= 0.0 || relativeAccuracy >= 1.0) {
+            throw new IllegalArgumentException(
+                    "[relative_accuracy] must be greater than 0 and less than 1. Found [" + relativeAccuracy + "] in [" + name + "]");
+        }
+        this.relativeAccuracy = relativeAccuracy;
+        return this;
+    }
+
+    /**
+     * Expert: get the relative accuracy of the returned percentiles. Only relevant when using
+     * {@link PercentilesMethod#SKETCH}.
+     */
+    public double relativeAccuracy() {
+        return relativeAccuracy;
+    }
+
     public PercentilesAggregationBuilder method(PercentilesMethod method) {
         if (method == null) {
             throw new IllegalArgumentException("[method] must not be null: [" + name + "]");
@@ -258,6 +309,9 @@ public class PercentilesAggregationBuilder extends LeafOnly<ValuesSource.Numeric
         case HDR:
             return new HDRPercentilesAggregatorFactory(name, config, percents, numberOfSignificantValueDigits, keyed, context, parent,
                     subFactoriesBuilder, metaData);
+        case SKETCH:
+            return new SketchPercentilesAggregatorFactory(name, config, percents, relativeAccuracy, keyed, context, parent,
+                    subFactoriesBuilder, metaData);
         default:
             throw new IllegalStateException("Illegal method [" + method + "]");
         }
@@ -270,6 +324,8 @@ public class PercentilesAggregationBuilder extends LeafOnly<ValuesSource.Numeric
         builder.startObject(method.toString());
         if (method == PercentilesMethod.TDIGEST) {
             builder.field(COMPRESSION_FIELD.getPreferredName(), compression);
+        } else if (method == PercentilesMethod.SKETCH) {
+            builder.field(RELATIVE_ACCURACY_FIELD.getPreferredName(), relativeAccuracy);
         } else {
             builder.field(NUMBER_SIGNIFICANT_DIGITS_FIELD.getPreferredName(), numberOfSignificantValueDigits);
         }
@@ -291,6 +347,9 @@ public class PercentilesAggregationBuilder extends LeafOnly<ValuesSource.Numeric
         case TDIGEST:
             equalSettings = Objects.equals(compression, other.compression);
             break;
+        case SKETCH:
+            equalSettings = Objects.equals(relativeAccuracy, other.relativeAccuracy);
+            break;
         default:
             throw new IllegalStateException("Illegal method [" + method.toString() + "]");
         }
@@ -307,6 +366,8 @@ public class PercentilesAggregationBuilder extends LeafOnly<ValuesSource.Numeric
             return Objects.hash(Arrays.hashCode(percents), keyed, numberOfSignificantValueDigits, method);
         case TDIGEST:
             return Objects.hash(Arrays.hashCode(percents), keyed, compression, method);
+        case SKETCH:
+            return Objects.hash(Arrays.hashCode(percents), keyed, relativeAccuracy, method);
         default:
             throw new IllegalStateException("Illegal method [" + method.toString() + "]");
         }
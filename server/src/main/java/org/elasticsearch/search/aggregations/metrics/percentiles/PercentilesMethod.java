@@ -19,6 +19,7 @@
 
 package org.elasticsearch.search.aggregations.metrics.percentiles;
 
+import org.elasticsearch.Version;
 import org.elasticsearch.common.ParseField;
 import org.elasticsearch.common.io.stream.StreamInput;
 import org.elasticsearch.common.io.stream.StreamOutput;
@@ -37,7 +38,11 @@ public enum PercentilesMethod implements Writeable {
     /**
      * The HDRHistogram method of calculating percentiles
      */
-    HDR("hdr", "HDR");
+    HDR("hdr", "HDR"),
+    /**
+     * A compact sketch with a bounded relative error on the returned percentiles
+     */
+    SKETCH("sketch");
 
     private final ParseField parseField;
 
@@ -58,6 +63,10 @@ public enum PercentilesMethod implements Writeable {
 
     @Override
     public void writeTo(StreamOutput out) throws IOException {
+        if (this == SKETCH && out.getVersion().before(Version.V_6_2_3)) {
+            throw new IllegalArgumentException("percentiles method [" + this + "] is not supported on nodes before version ["
+                    + Version.V_6_2_3 + "]");
+        }
         out.writeEnum(this);
     }
 
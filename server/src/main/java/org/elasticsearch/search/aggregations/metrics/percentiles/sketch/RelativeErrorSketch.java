@@ -0,0 +1,404 @@
+/*
+ * Licensed to Elasticsearch under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Elasticsearch licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.elasticsearch.search.aggregations.metrics.percentiles.sketch;
+
+import org.apache.lucene.util.RamUsageEstimator;
+import org.elasticsearch.common.io.stream.StreamInput;
+import org.elasticsearch.common.io.stream.StreamOutput;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Objects;
+
+/**
+ * A mergeable sketch of a distribution of doubles that returns quantiles with a bounded relative error.
+ * <p>
+ * Values are mapped to integer buckets whose boundaries grow geometrically by a factor of
+ * {@code gamma = (1 + relativeAccuracy) / (1 - relativeAccuracy)}, so that any value of a bucket is within
+ * {@code relativeAccuracy} of the bucket's representative value. Positive and negative values are counted in
+ * two dense arrays that only cover the range of buckets that has been seen, each of them capped at
+ * {@link #MAX_BUCKETS} buckets. When a wider range is needed, the buckets of the smallest magnitudes are folded
+ * into a single bucket, which only degrades the accuracy of the quantiles that fall in that range.
+ * <p>
+ * Merging two sketches with the same relative accuracy does not allocate as long as the buckets of the target
+ * already cover the range of the merged sketch. The serialized form only contains the range of buckets that is in
+ * use, with the counts encoded as variable-length longs.
+ */
+public final class RelativeErrorSketch {
+
+    public static final double DEFAULT_RELATIVE_ACCURACY = 0.01;
+
+    /**
+     * The maximum number of buckets that are kept for each sign. With the default relative accuracy, this covers
+     * values spanning more than 17 orders of magnitude before any bucket needs to be folded.
+     */
+    public static final int MAX_BUCKETS = 2048;
+
+    // bounds the keys so that ranges can be computed on ints, whatever the relative accuracy
+    private static final int MAX_KEY = 1 << 30;
+    private static final long SHALLOW_SIZE = RamUsageEstimator.shallowSizeOfInstance(RelativeErrorSketch.class)
+        + 2 * RamUsageEstimator.shallowSizeOfInstance(Store.class);
+
+    private final double relativeAccuracy;
+    private final double gamma;
+    private final double logGamma;
+    private final Store positive = new Store();
+    private final Store negative = new Store();
+    private long zeroCount;
+    private double min = Double.POSITIVE_INFINITY;
+    private double max = Double.NEGATIVE_INFINITY;
+
+    public RelativeErrorSketch(double relativeAccuracy) {
+        if (relativeAccuracy <= 0 || relativeAccuracy >= 1) {
+            throw new IllegalArgumentException("[relative_accuracy] must be greater than 0 and less than 1, got ["
+                    + relativeAccuracy + "]");
+        }
+        this.relativeAccuracy = relativeAccuracy;
+        this.gamma = (1 + relativeAccuracy) / (1 - relativeAccuracy);
+        this.logGamma = Math.log(gamma);
+    }
+
+    /**
+     * Create a copy of the provided sketch.
+     */
+    public RelativeErrorSketch(RelativeErrorSketch other) {
+        this(other.relativeAccuracy);
+        merge(other);
+    }
+
+    public double relativeAccuracy() {
+        return relativeAccuracy;
+    }
+
+    /**
+     * The number of values that have been added to this sketch.
+     */
+    public long count() {
+        return negative.total + zeroCount + positive.total;
+    }
+
+    public double min() {
+        return min;
+    }
+
+    public double max() {
+        return max;
+    }
+
+    /**
+     * Add a value to the sketch. {@code NaN} values are ignored.
+     */
+    public void add(double value) {
+        if (Double.isNaN(value)) {
+            return;
+        }
+        if (value >= Double.MIN_NORMAL) {
+            positive.add(key(value), 1);
+        } else if (value <= -Double.MIN_NORMAL) {
+            negative.add(key(-value), 1);
+        } else {
+            zeroCount++;
+        }
+        min = Math.min(min, value);
+        max = Math.max(max, value);
+    }
+
+    /**
+     * Add all the values of the provided sketch to this sketch.
+     */
+    public void merge(RelativeErrorSketch other) {
+        if (relativeAccuracy != other.relativeAccuracy) {
+            throw new IllegalArgumentException("Cannot merge sketches with different relative accuracies ["
+                    + relativeAccuracy + "] and [" + other.relativeAccuracy + "]");
+        }
+        positive.merge(other.positive);
+        negative.merge(other.negative);
+        zeroCount += other.zeroCount;
+        min = Math.min(min, other.min);
+        max = Math.max(max, other.max);
+    }
+
+    /**
+     * Return the value at the provided quantile, which must be between 0 and 1, or {@code NaN} if the sketch is empty.
+     * This is the value of the bucket that contains the smallest value that is greater than or equal to {@code q} of all
+     * values.
+     */
+    public double quantile(double q) {
+        final long count = count();
+        if (count == 0) {
+            return Double.NaN;
+        }
+        final long rank = Math.max(1, (long) Math.ceil(q * count));
+        long n = 0;
+        for (int key = negative.maxKey; key >= negative.minKey; --key) {
+            n += negative.get(key);
+            if (n >= rank) {
+                return clamp(-value(key));
+            }
+        }
+        n += zeroCount;
+        if (n >= rank) {
+            return clamp(0);
+        }
+        for (int key = positive.minKey; key <= positive.maxKey; ++key) {
+            n += positive.get(key);
+            if (n >= rank) {
+                return clamp(value(key));
+            }
+        }
+        return max;
+    }
+
+    /**
+     * Return the percentage of values that are less than or equal to the provided value, or {@code NaN} if the
+     * sketch is empty. All the values of the bucket that contains the provided value are counted.
+     */
+    public double percentileRank(double value) {
+        final long count = count();
+        if (count == 0) {
+            return Double.NaN;
+        }
+        if (value < min) {
+            return 0;
+        }
+        if (value >= max) {
+            return 100;
+        }
+        long n = 0;
+        if (value <= -Double.MIN_NORMAL) {
+            final int key = key(-value);
+            for (int k = Math.max(key, negative.minKey); k <= negative.maxKey; ++k) {
+                n += negative.get(k);
+            }
+        } else {
+            n += negative.total + zeroCount;
+            if (value >= Double.MIN_NORMAL) {
+                final int key = key(value);
+                for (int k = positive.minKey; k <= Math.min(key, positive.maxKey); ++k) {
+                    n += positive.get(k);
+                }
+            }
+        }
+        return Math.min(100, 100.0 * n / count);
+    }
+
+    /**
+     * An estimate of the number of bytes of heap that this sketch uses.
+     */
+    public long ramBytesUsed() {
+        return SHALLOW_SIZE + positive.ramBytesUsed() + negative.ramBytesUsed();
+    }
+
+    private int key(double magnitude) {
+        final double key = Math.ceil(Math.log(Math.min(magnitude, Double.MAX_VALUE)) / logGamma);
+        return (int) Math.max(-MAX_KEY, Math.min(MAX_KEY, key));
+    }
+
+    private double value(int key) {
+        return 2 * Math.pow(gamma, key) / (gamma + 1);
+    }
+
+    private double clamp(double value) {
+        return Math.max(min, Math.min(max, value));
+    }
+
+    public static RelativeErrorSketch readFrom(StreamInput in) throws IOException {
+        final RelativeErrorSketch sketch = new RelativeErrorSketch(in.readDouble());
+        sketch.min = in.readDouble();
+        sketch.max = in.readDouble();
+        sketch.zeroCount = in.readVLong();
+        sketch.positive.readFrom(in);
+        sketch.negative.readFrom(in);
+        return sketch;
+    }
+
+    public void writeTo(StreamOutput out) throws IOException {
+        out.writeDouble(relativeAccuracy);
+        out.writeDouble(min);
+        out.writeDouble(max);
+        out.writeVLong(zeroCount);
+        positive.writeTo(out);
+        negative.writeTo(out);
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        if (obj == null || getClass() != obj.getClass()) {
+            return false;
+        }
+        final RelativeErrorSketch other = (RelativeErrorSketch) obj;
+        return relativeAccuracy == other.relativeAccuracy
+                && zeroCount == other.zeroCount
+                && Double.compare(min, other.min) == 0
+                && Double.compare(max, other.max) == 0
+                && positive.equals(other.positive)
+                && negative.equals(other.negative);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(relativeAccuracy, zeroCount, min, max, positive, negative);
+    }
+
+    /**
+     * The counts of a contiguous range of keys, folding the lowest keys together when the range would exceed
+     * {@link #MAX_BUCKETS}.
+     */
+    private static final class Store {
+
+        private static final long[] EMPTY = new long[0];
+        private static final int MIN_CAPACITY = 16;
+
+        private long[] counts = EMPTY;
+        // the key of counts[0]
+        private int offset;
+        // the range of keys in use, empty when minKey > maxKey
+        private int minKey = Integer.MAX_VALUE;
+        private int maxKey = Integer.MIN_VALUE;
+        private long total;
+
+        long get(int key) {
+            return counts[key - offset];
+        }
+
+        void add(int key, long count) {
+            if (key < minKey || key > maxKey) {
+                extendRange(key, key);
+                key = Math.max(key, minKey);
+            }
+            counts[key - offset] += count;
+            total += count;
+        }
+
+        void merge(Store other) {
+            if (other.total == 0) {
+                return;
+            }
+            extendRange(other.minKey, other.maxKey);
+            for (int key = other.minKey; key <= other.maxKey; ++key) {
+                counts[Math.max(key, minKey) - offset] += other.get(key);
+            }
+            total += other.total;
+        }
+
+        /**
+         * Make sure that the range of keys covers {@code [lo, hi]}, folding the lowest keys if that range would
+         * be too wide. This only allocates if the current array is too small for the new range.
+         */
+        private void extendRange(int lo, int hi) {
+            final int newMaxKey = Math.max(hi, maxKey);
+            final int newMinKey = Math.max(Math.min(lo, minKey), newMaxKey - MAX_BUCKETS + 1);
+            if (newMinKey >= offset && newMaxKey < offset + counts.length && newMinKey <= minKey) {
+                minKey = newMinKey;
+                maxKey = newMaxKey;
+                return;
+            }
+            final int span = newMaxKey - newMinKey + 1;
+            final long[] target;
+            final int newOffset;
+            if (span <= counts.length) {
+                target = counts;
+                newOffset = hi > maxKey ? newMinKey : newMaxKey - counts.length + 1;
+            } else {
+                final int capacity = Math.min(MAX_BUCKETS, Math.max(span, Math.max(MIN_CAPACITY, counts.length + (counts.length >>> 1))));
+                target = new long[capacity];
+                newOffset = hi > maxKey ? newMinKey : newMaxKey - capacity + 1;
+            }
+            long folded = 0;
+            for (int key = minKey; key <= Math.min(maxKey, newMinKey - 1); ++key) {
+                folded += get(key);
+            }
+            final int keptMinKey = Math.max(minKey, newMinKey);
+            if (keptMinKey <= maxKey) {
+                System.arraycopy(counts, keptMinKey - offset, target, keptMinKey - newOffset, maxKey - keptMinKey + 1);
+                if (target == counts) {
+                    Arrays.fill(target, 0, keptMinKey - newOffset, 0L);
+                    Arrays.fill(target, maxKey - newOffset + 1, target.length, 0L);
+                }
+            } else if (target == counts) {
+                Arrays.fill(target, 0L);
+            }
+            target[newMinKey - newOffset] += folded;
+            counts = target;
+            offset = newOffset;
+            minKey = newMinKey;
+            maxKey = newMaxKey;
+        }
+
+        long ramBytesUsed() {
+            return RamUsageEstimator.sizeOf(counts);
+        }
+
+        void readFrom(StreamInput in) throws IOException {
+            final int length = in.readVInt();
+            if (length > 0) {
+                minKey = Math.toIntExact(in.readZLong());
+                maxKey = minKey + length - 1;
+                offset = minKey;
+                counts = new long[length];
+                for (int i = 0; i < length; ++i) {
+                    counts[i] = in.readVLong();
+                    total += counts[i];
+                }
+            }
+        }
+
+        void writeTo(StreamOutput out) throws IOException {
+            if (total == 0) {
+                out.writeVInt(0);
+            } else {
+                out.writeVInt(maxKey - minKey + 1);
+                out.writeZLong(minKey);
+                for (int key = minKey; key <= maxKey; ++key) {
+                    out.writeVLong(get(key));
+                }
+            }
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            final Store other = (Store) obj;
+            if (total != other.total) {
+                return false;
+            }
+            if (total == 0) {
+                return true;
+            }
+            if (minKey != other.minKey || maxKey != other.maxKey) {
+                return false;
+            }
+            for (int key = minKey; key <= maxKey; ++key) {
+                if (get(key) != other.get(key)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        @Override
+        public int hashCode() {
+            int hash = Long.hashCode(total);
+            for (int key = minKey; key <= maxKey; ++key) {
+                hash = 31 * hash + Long.hashCode(get(key));
+            }
+            return hash;
+        }
+    }
+}
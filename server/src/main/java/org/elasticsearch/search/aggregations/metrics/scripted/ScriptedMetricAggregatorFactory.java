@@ -59,6 +59,12 @@ public class ScriptedMetricAggregatorFactory extends AggregatorFactory<ScriptedM
         this.params = params;
     }
 
+    @Override
+    public boolean supportsConcurrentSegmentSearch() {
+        // the combine script must see the whole shard, a partial reduce would change the input of the reduce script
+        return false;
+    }
+
     @Override
     public Aggregator createInternal(Aggregator parent, boolean collectsFromSingleBucket, List<PipelineAggregator> pipelineAggregators,
             Map<String, Object> metaData) throws IOException {
@@ -22,6 +22,7 @@ import org.elasticsearch.common.io.stream.StreamInput;
 import org.elasticsearch.common.io.stream.StreamOutput;
 import org.elasticsearch.common.xcontent.XContentBuilder;
 import org.elasticsearch.search.DocValueFormat;
+import org.elasticsearch.search.aggregations.AggregationsAccumulator;
 import org.elasticsearch.search.aggregations.InternalAggregation;
 import org.elasticsearch.search.aggregations.metrics.InternalNumericMetricsAggregation;
 import org.elasticsearch.search.aggregations.pipeline.PipelineAggregator;
@@ -162,6 +163,38 @@ public class InternalStats extends InternalNumericMetricsAggregation.MultiValue
         return new InternalStats(name, count, sum, min, max, format, pipelineAggregators(), getMetaData());
     }
 
+    @Override
+    public Accumulator createAccumulator(AggregationsAccumulator parent) {
+        if (getClass() != InternalStats.class) {
+            // sub-classes have more state to reduce
+            return null;
+        }
+        return new Accumulator() {
+            private long count = 0;
+            private double min = Double.POSITIVE_INFINITY;
+            private double max = Double.NEGATIVE_INFINITY;
+            private double sum = 0;
+
+            @Override
+            public boolean accumulate(InternalAggregation aggregation) {
+                if (aggregation.getClass() != InternalStats.class) {
+                    return false;
+                }
+                InternalStats stats = (InternalStats) aggregation;
+                count += stats.getCount();
+                min = Math.min(min, stats.getMin());
+                max = Math.max(max, stats.getMax());
+                sum += stats.getSum();
+                return true;
+            }
+
+            @Override
+            public InternalAggregation build() {
+                return new InternalStats(name, count, sum, min, max, format, pipelineAggregators(), getMetaData());
+            }
+        };
+    }
+
     static class Fields {
         public static final String COUNT = "count";
         public static final String MIN = "min";
@@ -22,6 +22,7 @@ import org.elasticsearch.common.io.stream.StreamInput;
 import org.elasticsearch.common.io.stream.StreamOutput;
 import org.elasticsearch.common.xcontent.XContentBuilder;
 import org.elasticsearch.search.DocValueFormat;
+import org.elasticsearch.search.aggregations.AggregationsAccumulator;
 import org.elasticsearch.search.aggregations.InternalAggregation;
 import org.elasticsearch.search.aggregations.metrics.InternalNumericMetricsAggregation;
 import org.elasticsearch.search.aggregations.pipeline.PipelineAggregator;
@@ -80,6 +81,27 @@ public class InternalSum extends InternalNumericMetricsAggregation.SingleValue i
         return new InternalSum(name, sum, format, pipelineAggregators(), getMetaData());
     }
 
+    @Override
+    public Accumulator createAccumulator(AggregationsAccumulator parent) {
+        return new Accumulator() {
+            private double sum = 0;
+
+            @Override
+            public boolean accumulate(InternalAggregation aggregation) {
+                if (aggregation.getClass() != InternalSum.class) {
+                    return false;
+                }
+                sum += ((InternalSum) aggregation).sum;
+                return true;
+            }
+
+            @Override
+            public InternalAggregation build() {
+                return new InternalSum(name, sum, format, pipelineAggregators(), getMetaData());
+            }
+        };
+    }
+
     @Override
     public XContentBuilder doXContentBody(XContentBuilder builder, Params params) throws IOException {
         builder.field(CommonFields.VALUE.getPreferredName(), sum);
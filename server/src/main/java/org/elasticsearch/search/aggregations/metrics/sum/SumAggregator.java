@@ -22,12 +22,14 @@ import org.apache.lucene.index.LeafReaderContext;
 import org.elasticsearch.common.lease.Releasables;
 import org.elasticsearch.common.util.BigArrays;
 import org.elasticsearch.common.util.DoubleArray;
+import org.elasticsearch.index.fielddata.DoubleValuesBlockReader;
 import org.elasticsearch.index.fielddata.SortedNumericDoubleValues;
 import org.elasticsearch.search.DocValueFormat;
 import org.elasticsearch.search.aggregations.Aggregator;
 import org.elasticsearch.search.aggregations.InternalAggregation;
 import org.elasticsearch.search.aggregations.LeafBucketCollector;
 import org.elasticsearch.search.aggregations.LeafBucketCollectorBase;
+import org.elasticsearch.search.aggregations.LeafBucketCollectorBuffer;
 import org.elasticsearch.search.aggregations.metrics.NumericMetricsAggregator;
 import org.elasticsearch.search.aggregations.pipeline.PipelineAggregator;
 import org.elasticsearch.search.aggregations.support.ValuesSource;
@@ -43,6 +45,7 @@ public class SumAggregator extends NumericMetricsAggregator.SingleValue {
     private final DocValueFormat format;
 
     private DoubleArray sums;
+    private final LeafBucketCollectorBuffer buffer = new LeafBucketCollectorBuffer();
 
     SumAggregator(String name, ValuesSource.Numeric valuesSource, DocValueFormat formatter, SearchContext context,
             Aggregator parent, List<PipelineAggregator> pipelineAggregators, Map<String, Object> metaData) throws IOException {
@@ -67,7 +70,8 @@ public class SumAggregator extends NumericMetricsAggregator.SingleValue {
         }
         final BigArrays bigArrays = context.bigArrays();
         final SortedNumericDoubleValues values = valuesSource.doubleValues(ctx);
-        return new LeafBucketCollectorBase(sub, values) {
+        final DoubleValuesBlockReader blockReader = DoubleValuesBlockReader.of(values);
+        final LeafBucketCollector leaf = new LeafBucketCollectorBase(sub, values) {
             @Override
             public void collect(int doc, long bucket) throws IOException {
                 sums = bigArrays.grow(sums, bucket + 1);
@@ -80,7 +84,26 @@ public class SumAggregator extends NumericMetricsAggregator.SingleValue {
                     sums.increment(bucket, sum);
                 }
             }
+
+            @Override
+            public void collect(int[] docs, int count, long bucket) throws IOException {
+                sums = bigArrays.grow(sums, bucket + 1);
+                final int numValues = blockReader.read(docs, count);
+                final double[] blockValues = blockReader.values();
+                double sum = 0;
+                for (int i = 0; i < numValues; i++) {
+                    sum += blockValues[i];
+                }
+                sums.increment(bucket, sum);
+            }
         };
+        // values that depend on the score must be read while the scorer is on the doc
+        return valuesSource.needsScores() ? leaf : buffer.wrap(leaf);
+    }
+
+    @Override
+    protected void doPostCollection() throws IOException {
+        buffer.flush();
     }
 
     @Override
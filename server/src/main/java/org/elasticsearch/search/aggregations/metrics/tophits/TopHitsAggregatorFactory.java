@@ -19,6 +19,7 @@
 
 package org.elasticsearch.search.aggregations.metrics.tophits;
 
+import org.apache.lucene.search.SortField;
 import org.elasticsearch.search.aggregations.Aggregator;
 import org.elasticsearch.search.aggregations.AggregatorFactories;
 import org.elasticsearch.search.aggregations.AggregatorFactory;
@@ -102,4 +103,17 @@ public class TopHitsAggregatorFactory extends AggregatorFactory<TopHitsAggregato
                 pipelineAggregators, metaData);
     }
 
+    @Override
+    public boolean supportsConcurrentSegmentSearch() {
+        if (sort.isPresent()) {
+            for (SortField sortField : sort.get().sort.getSort()) {
+                if ("_script".equals(sortField.getField())) {
+                    // sort scripts share the SourceLookup of the search context with the other slices
+                    return false;
+                }
+            }
+        }
+        return super.supportsConcurrentSegmentSearch();
+    }
+
 }
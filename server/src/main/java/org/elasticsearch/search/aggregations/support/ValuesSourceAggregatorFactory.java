@@ -55,6 +55,12 @@ public abstract class ValuesSourceAggregatorFactory<VS extends ValuesSource, AF
         return doCreateInternal(vs, parent, collectsFromSingleBucket, pipelineAggregators, metaData);
     }
 
+    @Override
+    public boolean supportsConcurrentSegmentSearch() {
+        // scripts read the _source through the single SourceLookup of the search context, slices would overwrite each other's document
+        return config.script() == null && super.supportsConcurrentSegmentSearch();
+    }
+
     protected abstract Aggregator createUnmapped(Aggregator parent,
             List<PipelineAggregator> pipelineAggregators, Map<String, Object> metaData) throws IOException;
 
@@ -20,8 +20,17 @@
 package org.elasticsearch.search.fetch.subphase;
 
 import org.elasticsearch.ElasticsearchException;
+import org.elasticsearch.common.bytes.BytesReference;
+import org.elasticsearch.common.compress.CompressorFactory;
 import org.elasticsearch.common.io.stream.BytesStreamOutput;
+import org.elasticsearch.common.util.set.Sets;
+import org.elasticsearch.common.xcontent.NamedXContentRegistry;
 import org.elasticsearch.common.xcontent.XContentBuilder;
+import org.elasticsearch.common.xcontent.XContentFactory;
+import org.elasticsearch.common.xcontent.XContentHelper;
+import org.elasticsearch.common.xcontent.XContentParser;
+import org.elasticsearch.common.xcontent.XContentType;
+import org.elasticsearch.index.shard.IndexShard;
 import org.elasticsearch.search.SearchHit;
 import org.elasticsearch.search.fetch.FetchSubPhase;
 import org.elasticsearch.search.internal.SearchContext;
@@ -29,6 +38,7 @@ import org.elasticsearch.search.lookup.SourceLookup;
 
 import java.io.IOException;
 import java.util.Map;
+import java.util.Set;
 
 public final class FetchSourceSubPhase implements FetchSubPhase {
 
@@ -50,6 +60,15 @@ public final class FetchSourceSubPhase implements FetchSubPhase {
                 throw new IllegalArgumentException("unable to fetch fields from _source field: _source is disabled in the mappings " +
                         "for index [" + context.indexShard().shardId().getIndexName() + "]");
             }
+            final IndexShard indexShard = context.indexShard();
+            if (indexShard != null && indexShard.indexSettings().isStreamingSourceFilteringEnabled()) {
+                try {
+                    hitContext.hit().sourceRef(filter(source.internalSourceRef(), fetchSourceContext));
+                } catch (IOException e) {
+                    throw new ElasticsearchException("Error filtering source", e);
+                }
+                return;
+            }
         }
 
         Object value = source.filter(fetchSourceContext);
@@ -77,6 +96,33 @@ public final class FetchSourceSubPhase implements FetchSubPhase {
         }
     }
 
+    /**
+     * Applies the includes and excludes of the provided {@link FetchSourceContext} to the <code>source</code> while it is copied
+     * from a parser to a filtering generator, without building the intermediate map of the source.
+     */
+    static BytesReference filter(BytesReference source, FetchSourceContext fetchSourceContext) throws IOException {
+        final BytesReference uncompressed = CompressorFactory.uncompressIfNeeded(source);
+        final XContentType contentType = XContentFactory.xContentType(uncompressed);
+        if (contentType == null) {
+            throw new IllegalArgumentException("unable to detect the content type of the _source");
+        }
+        final Set<String> includes = Sets.newHashSet(fetchSourceContext.includes());
+        final Set<String> excludes = Sets.newHashSet(fetchSourceContext.excludes());
+        final BytesStreamOutput streamOutput = new BytesStreamOutput(Math.min(1024, uncompressed.length()));
+        try (XContentParser parser = XContentHelper.createParser(NamedXContentRegistry.EMPTY, uncompressed, contentType);
+             XContentBuilder builder = new XContentBuilder(contentType.xContent(), streamOutput, includes, excludes)) {
+            builder.copyCurrentStructure(parser);
+        }
+        if (streamOutput.size() == 0) {
+            // nothing matched, return an empty top level object like the map based filtering does
+            try (XContentBuilder builder = new XContentBuilder(contentType.xContent(), streamOutput)) {
+                builder.startObject();
+                builder.endObject();
+            }
+        }
+        return streamOutput.bytes();
+    }
+
     private Map<String, Object> getNestedSource(Map<String, Object> sourceAsMap, HitContext hitContext) {
         for (SearchHit.NestedIdentity o = hitContext.hit().getNestedIdentity(); o != null; o = o.getChild()) {
             sourceAsMap = (Map<String, Object>) sourceAsMap.get(o.getField().string());
@@ -149,8 +149,12 @@ public class ContextIndexSearcher extends IndexSearcher implements Releasable {
         }
     }
 
+    /**
+     * Searches the provided <code>leaves</code> only. This is public so that disjoint slices of the leaves
+     * can be searched concurrently with a shared {@link Weight}.
+     */
     @Override
-    protected void search(List<LeafReaderContext> leaves, Weight weight, Collector collector) throws IOException {
+    public void search(List<LeafReaderContext> leaves, Weight weight, Collector collector) throws IOException {
         final Weight cancellableWeight;
         if (checkCancelled != null) {
             cancellableWeight = new Weight(weight.getQuery()) {
@@ -0,0 +1,132 @@
+/*
+ * Licensed to Elasticsearch under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Elasticsearch licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.elasticsearch.search.internal;
+
+import org.apache.lucene.index.LeafReaderContext;
+import org.apache.lucene.index.SegmentReader;
+import org.elasticsearch.common.lucene.Lucene;
+import org.elasticsearch.common.util.concurrent.AbstractRefCounted;
+import org.elasticsearch.index.engine.Engine;
+import org.elasticsearch.index.shard.IndexShard;
+import org.elasticsearch.index.shard.ShardId;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.LongSupplier;
+
+/**
+ * Holds the searcher of a shard that a point in time was opened on. Unlike a scroll, which keeps a whole {@link SearchContext}
+ * including the results of the last request alive, a reader context only pins the segments of the shard. The requests that
+ * search the point in time create a new search context on top of the pinned searcher that is released once they completed.
+ */
+public final class ReaderContext extends AbstractRefCounted {
+
+    private final long id;
+    private final IndexShard indexShard;
+    private final Engine.Searcher engineSearcher;
+    private final long pinnedBytes;
+    private final LongSupplier relativeTimeInMillis;
+    private volatile long keepAlive;
+    private volatile long lastAccessTime;
+
+    public ReaderContext(long id, IndexShard indexShard, Engine.Searcher engineSearcher, long keepAlive,
+                         LongSupplier relativeTimeInMillis) {
+        super("reader_context");
+        this.id = id;
+        this.indexShard = indexShard;
+        this.engineSearcher = engineSearcher;
+        this.pinnedBytes = segmentsSizeInBytes(engineSearcher);
+        this.relativeTimeInMillis = relativeTimeInMillis;
+        this.keepAlive = keepAlive;
+        this.lastAccessTime = relativeTimeInMillis.getAsLong();
+    }
+
+    private static long segmentsSizeInBytes(Engine.Searcher searcher) {
+        long sizeInBytes = 0;
+        for (LeafReaderContext leaf : searcher.reader().leaves()) {
+            final SegmentReader segmentReader = Lucene.segmentReader(leaf.reader());
+            try {
+                sizeInBytes += segmentReader.getSegmentInfo().sizeInBytes();
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+        return sizeInBytes;
+    }
+
+    public long id() {
+        return id;
+    }
+
+    public IndexShard indexShard() {
+        return indexShard;
+    }
+
+    public ShardId shardId() {
+        return indexShard.shardId();
+    }
+
+    /**
+     * The size of the segments that are kept from being deleted by this reader context.
+     */
+    public long pinnedBytes() {
+        return pinnedBytes;
+    }
+
+    public long keepAlive() {
+        return keepAlive;
+    }
+
+    public void keepAlive(long keepAlive) {
+        this.keepAlive = keepAlive;
+    }
+
+    /**
+     * The time the reader context was last acquired or released by a search, the keep alive is counted from there.
+     */
+    public long lastAccessTime() {
+        return lastAccessTime;
+    }
+
+    /**
+     * Returns a searcher over the pinned segments of this reader context that must be closed once the request is done with it.
+     * The caller must have incremented the reference count of this reader context, closing the returned searcher decrements it.
+     */
+    public Engine.Searcher acquireSearcher(String source) {
+        assert refCount() > 1 : "the reader context must be referenced by the caller";
+        lastAccessTime = relativeTimeInMillis.getAsLong();
+        final AtomicBoolean closed = new AtomicBoolean();
+        return new Engine.Searcher(source, engineSearcher.searcher()) {
+            @Override
+            public void close() {
+                if (closed.compareAndSet(false, true)) {
+                    lastAccessTime = relativeTimeInMillis.getAsLong();
+                    decRef();
+                }
+            }
+        };
+    }
+
+    @Override
+    protected void closeInternal() {
+        engineSearcher.close();
+    }
+}
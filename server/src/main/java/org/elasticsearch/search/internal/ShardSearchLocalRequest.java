@@ -72,6 +72,7 @@ public class ShardSearchLocalRequest implements ShardSearchRequest {
     private float indexBoost;
     private SearchSourceBuilder source;
     private Boolean requestCache;
+    private Boolean concurrentSegmentSearch;
     private long nowInMillis;
 
     private boolean profile;
@@ -84,6 +85,7 @@ public class ShardSearchLocalRequest implements ShardSearchRequest {
         this(shardId, numberOfShards, searchRequest.searchType(),
                 searchRequest.source(), searchRequest.types(), searchRequest.requestCache(), aliasFilter, indexBoost);
         this.scroll = searchRequest.scroll();
+        this.concurrentSegmentSearch = searchRequest.concurrentSegmentSearch();
         this.nowInMillis = nowInMillis;
         this.clusterAlias = clusterAlias;
     }
@@ -164,6 +166,11 @@ public class ShardSearchLocalRequest implements ShardSearchRequest {
         return requestCache;
     }
 
+    @Override
+    public Boolean concurrentSegmentSearch() {
+        return concurrentSegmentSearch;
+    }
+
     @Override
     public Scroll scroll() {
         return scroll;
@@ -210,6 +217,9 @@ public class ShardSearchLocalRequest implements ShardSearchRequest {
         if (in.getVersion().onOrAfter(Version.V_5_6_0)) {
             clusterAlias = in.readOptionalString();
         }
+        if (in.getVersion().onOrAfter(Version.V_6_2_3)) {
+            concurrentSegmentSearch = in.readOptionalBoolean();
+        }
     }
 
     protected void innerWriteTo(StreamOutput out, boolean asKey) throws IOException {
@@ -232,6 +242,9 @@ public class ShardSearchLocalRequest implements ShardSearchRequest {
         if (out.getVersion().onOrAfter(Version.V_5_6_0)) {
             out.writeOptionalString(clusterAlias);
         }
+        if (out.getVersion().onOrAfter(Version.V_6_2_3)) {
+            out.writeOptionalBoolean(concurrentSegmentSearch);
+        }
     }
 
     @Override
@@ -69,6 +69,12 @@ public interface ShardSearchRequest {
 
     Boolean requestCache();
 
+    /**
+     * Returns whether the segments of the shard should be searched concurrently, or <code>null</code>
+     * if the index level setting should be used.
+     */
+    Boolean concurrentSegmentSearch();
+
     Scroll scroll();
 
     /**
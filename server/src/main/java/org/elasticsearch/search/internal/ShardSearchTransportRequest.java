@@ -138,6 +138,11 @@ public class ShardSearchTransportRequest extends TransportRequest implements Sha
         return shardSearchLocalRequest.requestCache();
     }
 
+    @Override
+    public Boolean concurrentSegmentSearch() {
+        return shardSearchLocalRequest.concurrentSegmentSearch();
+    }
+
     @Override
     public Scroll scroll() {
         return shardSearchLocalRequest.scroll();
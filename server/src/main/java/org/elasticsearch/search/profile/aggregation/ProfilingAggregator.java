@@ -87,6 +87,11 @@ public class ProfilingAggregator extends Aggregator {
         return delegate.buildEmptyAggregation();
     }
 
+    @Override
+    public InternalAggregation selectShardBuckets(InternalAggregation merged) {
+        return delegate.selectShardBuckets(merged);
+    }
+
     @Override
     public LeafBucketCollector getLeafCollector(LeafReaderContext ctx) throws IOException {
         return new ProfilingLeafBucketCollector(delegate.getLeafCollector(ctx), profileBreakdown);
@@ -50,6 +50,7 @@ public class CollectorResult implements ToXContentObject, Writeable {
     public static final String REASON_SEARCH_MULTI = "search_multi";
     public static final String REASON_SEARCH_TIMEOUT = "search_timeout";
     public static final String REASON_SEARCH_CANCELLED = "search_cancelled";
+    public static final String REASON_SEARCH_CONCURRENT = "search_concurrent";
     public static final String REASON_AGGREGATION = "aggregation";
     public static final String REASON_AGGREGATION_GLOBAL = "aggregation_global";
 
@@ -0,0 +1,353 @@
+/*
+ * Licensed to Elasticsearch under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Elasticsearch licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.elasticsearch.search.query;
+
+import org.apache.lucene.index.LeafReaderContext;
+import org.apache.lucene.search.Collector;
+import org.apache.lucene.search.FieldComparator;
+import org.apache.lucene.search.FieldDoc;
+import org.apache.lucene.search.IndexSearcher;
+import org.apache.lucene.search.MultiCollector;
+import org.apache.lucene.search.Query;
+import org.apache.lucene.search.ScoreDoc;
+import org.apache.lucene.search.SortField;
+import org.apache.lucene.search.TopDocs;
+import org.apache.lucene.search.TopFieldDocs;
+import org.apache.lucene.search.Weight;
+import org.elasticsearch.ExceptionsHelper;
+import org.elasticsearch.action.search.SearchTask;
+import org.elasticsearch.common.util.concurrent.EsRejectedExecutionException;
+import org.elasticsearch.index.IndexSettings;
+import org.elasticsearch.search.aggregations.AggregationPhase;
+import org.elasticsearch.search.internal.ContextIndexSearcher;
+import org.elasticsearch.search.internal.SearchContext;
+import org.elasticsearch.search.profile.query.InternalProfileCollector;
+import org.elasticsearch.threadpool.ThreadPool;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.BooleanSupplier;
+
+import static org.elasticsearch.search.profile.query.CollectorResult.REASON_SEARCH_CONCURRENT;
+
+/**
+ * Executes the query of a shard over disjoint slices of its segments in parallel on the
+ * {@link ThreadPool.Names#SEARCH_CONCURRENT} thread pool. Each slice gets its own chain of collectors, including its
+ * own aggregators, and the top docs of all slices are merged on the shard so that the coordinating node receives the
+ * same response as if the shard had been searched by a single thread. The aggregations of the slices are merged by
+ * the {@link AggregationPhase}.
+ */
+final class ConcurrentQueryPhase {
+
+    private ConcurrentQueryPhase() {}
+
+    /**
+     * Returns <code>true</code> if the query of the provided <code>searchContext</code> should be executed concurrently.
+     * This is the case if the request or the index settings ask for it and if the request does not use a feature that
+     * needs to visit the segments of the shard in a single pass.
+     */
+    static boolean canExecute(SearchContext searchContext, IndexSearcher searcher) {
+        if (searcher instanceof ContextIndexSearcher == false || searchContext.indexShard() == null) {
+            return false;
+        }
+        final IndexSettings indexSettings = searchContext.indexShard().indexSettings();
+        final Boolean concurrentSegmentSearch = searchContext.request() == null ? null : searchContext.request().concurrentSegmentSearch();
+        if (concurrentSegmentSearch == null ? indexSettings.isConcurrentSegmentSearchEnabled() == false : concurrentSegmentSearch == false) {
+            return false;
+        }
+        if (indexSettings.getConcurrentSegmentSearchMaxSlices() < 2 || searcher.getIndexReader().leaves().size() < 2) {
+            return false;
+        }
+        if (searchContext.scrollContext() != null
+                || searchContext.collapse() != null
+                || searchContext.terminateAfter() != SearchContext.DEFAULT_TERMINATE_AFTER) {
+            return false;
+        }
+        for (Class<?> collectorKey : searchContext.queryCollectors().keySet()) {
+            if (collectorKey != AggregationPhase.class) {
+                // we don't know how to create and merge this collector for each slice
+                return false;
+            }
+        }
+        if (searchContext.aggregations() != null
+                && searchContext.aggregations().factories().supportsConcurrentSegmentSearch() == false) {
+            return false;
+        }
+        // count only requests are cheaper on a single thread since the hit count can often be read from the index statistics
+        return searchContext.size() > 0 || searchContext.queryCollectors().isEmpty() == false;
+    }
+
+    /**
+     * Splits the provided <code>leaves</code> into at most <code>maxSlices</code> slices with a similar number of documents.
+     * The leaves of each slice are sorted by their order in the reader so that ties are broken by doc id like with a
+     * sequential search.
+     */
+    static List<List<LeafReaderContext>> slices(List<LeafReaderContext> leaves, int maxSlices) {
+        final int numSlices = Math.min(maxSlices, leaves.size());
+        final List<LeafReaderContext> sortedLeaves = new ArrayList<>(leaves);
+        sortedLeaves.sort(Comparator.comparingInt((LeafReaderContext ctx) -> ctx.reader().maxDoc()).reversed());
+        final List<List<LeafReaderContext>> slices = new ArrayList<>(numSlices);
+        final long[] sliceDocs = new long[numSlices];
+        for (int i = 0; i < numSlices; i++) {
+            slices.add(new ArrayList<>());
+        }
+        // assign the largest leaves first, each to the slice that has the fewest documents so far
+        for (LeafReaderContext leaf : sortedLeaves) {
+            int target = 0;
+            for (int i = 1; i < numSlices; i++) {
+                if (sliceDocs[i] < sliceDocs[target]) {
+                    target = i;
+                }
+            }
+            slices.get(target).add(leaf);
+            sliceDocs[target] += leaf.reader().maxDoc();
+        }
+        for (List<LeafReaderContext> slice : slices) {
+            slice.sort(Comparator.comparingInt(ctx -> ctx.ord));
+        }
+        return slices;
+    }
+
+    /**
+     * Executes the provided <code>query</code> concurrently and populates the query result of the <code>searchContext</code>.
+     *
+     * @return whether the rescoring phase should be executed
+     */
+    static boolean execute(SearchContext searchContext, ContextIndexSearcher searcher, Query query, boolean timeoutSet) throws IOException {
+        final int maxSlices = searchContext.indexShard().indexSettings().getConcurrentSegmentSearchMaxSlices();
+        final List<List<LeafReaderContext>> leafSlices = slices(searcher.getIndexReader().leaves(), maxSlices);
+        final AtomicReference<Exception> failure = new AtomicReference<>();
+        final SearchTask task = searchContext.getTask();
+        // slices stop as soon as one of them fails
+        final BooleanSupplier cancelled = () -> failure.get() != null || task.isCancelled();
+        final boolean doProfile = searchContext.getProfilers() != null;
+
+        final Slice[] slices = new Slice[leafSlices.size()];
+        for (int i = 0; i < slices.length; i++) {
+            final Collection<Collector> queryCollectors;
+            if (i == 0 || searchContext.queryCollectors().isEmpty()) {
+                // the first slice uses the collectors that were registered on the search context
+                queryCollectors = searchContext.queryCollectors().values();
+            } else {
+                final Collector aggsCollector = AggregationPhase.createSliceCollector(searchContext);
+                queryCollectors = aggsCollector == null ? Collections.emptyList() : Collections.singletonList(aggsCollector);
+            }
+            // each slice counts its hits, the total hit count of the reader cannot be split
+            final LinkedList<QueryCollectorContext> collectors =
+                QueryPhase.createCollectorContexts(searchContext, searcher, queryCollectors, cancelled, false);
+            slices[i] = new Slice(leafSlices.get(i), collectors, doProfile, failure);
+        }
+
+        final Weight weight = searcher.createNormalizedWeight(query, slices[0].collector.needsScores());
+        try {
+            if (doProfile) {
+                // profiling timers are not thread-safe so slices are searched one after the other
+                final List<InternalProfileCollector> profileCollectors = new ArrayList<>(slices.length);
+                for (Slice slice : slices) {
+                    slice.search(searcher, weight);
+                    profileCollectors.add((InternalProfileCollector) slice.collector);
+                }
+                searchContext.getProfilers().getCurrentQueryProfiler().setCollector(new ConcurrentProfileCollector(profileCollectors));
+            } else {
+                final ExecutorService executor = searchContext.indexShard().getThreadPool().executor(ThreadPool.Names.SEARCH_CONCURRENT);
+                searchConcurrently(executor, slices, searcher, weight);
+            }
+        } finally {
+            searchContext.clearReleasables(SearchContext.Lifetime.COLLECTION);
+        }
+        ExceptionsHelper.reThrowIfNotNull(failure.get());
+
+        final QuerySearchResult queryResult = searchContext.queryResult();
+        final TopDocs[] topDocs = new TopDocs[slices.length];
+        for (int i = 0; i < slices.length; i++) {
+            if (slices[i].timedOut) {
+                assert timeoutSet : "TimeExceededException thrown even though timeout wasn't set";
+                queryResult.searchTimedOut(true);
+            }
+            for (QueryCollectorContext ctx : slices[i].collectors) {
+                ctx.postProcess(slices[i].result);
+            }
+            topDocs[i] = slices[i].result.topDocs();
+        }
+        final TopDocsCollectorContext topDocsFactory = (TopDocsCollectorContext) slices[0].collectors.getFirst();
+        queryResult.topDocs(mergeTopDocs(topDocs, topDocsFactory.numHits()), slices[0].result.sortValueFormats());
+        return topDocsFactory.shouldRescore();
+    }
+
+    /**
+     * Searches the slices in parallel on the provided <code>executor</code>. The calling thread searches the slices
+     * that were not picked up by the executor, it returns once all slices are done.
+     */
+    private static void searchConcurrently(ExecutorService executor, Slice[] slices, ContextIndexSearcher searcher, Weight weight) {
+        final CountDownLatch latch = new CountDownLatch(slices.length);
+        final Runnable[] tasks = new Runnable[slices.length];
+        for (int i = 0; i < slices.length; i++) {
+            final Slice slice = slices[i];
+            tasks[i] = () -> {
+                if (slice.started.compareAndSet(false, true)) {
+                    try {
+                        slice.search(searcher, weight);
+                    } finally {
+                        latch.countDown();
+                    }
+                }
+            };
+        }
+        for (int i = 1; i < tasks.length; i++) {
+            try {
+                executor.execute(tasks[i]);
+            } catch (EsRejectedExecutionException e) {
+                // the slice is searched by the calling thread
+            }
+        }
+        for (Runnable task : tasks) {
+            task.run();
+        }
+        // the slices hold references to the reader and the aggregators, we must not return before all of them are done
+        boolean interrupted = false;
+        while (true) {
+            try {
+                latch.await();
+                break;
+            } catch (InterruptedException e) {
+                interrupted = true;
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Merges the top docs of the slices. Documents are sorted like a single collector would have sorted them,
+     * ties being broken by doc id.
+     */
+    static TopDocs mergeTopDocs(TopDocs[] topDocs, int numHits) {
+        long totalHits = 0;
+        float maxScore = Float.NaN;
+        final List<ScoreDoc> scoreDocs = new ArrayList<>();
+        for (TopDocs td : topDocs) {
+            totalHits += td.totalHits;
+            if (Float.isNaN(td.getMaxScore()) == false) {
+                maxScore = Float.isNaN(maxScore) ? td.getMaxScore() : Math.max(maxScore, td.getMaxScore());
+            }
+            Collections.addAll(scoreDocs, td.scoreDocs);
+        }
+        if (topDocs[0] instanceof TopFieldDocs) {
+            final SortField[] sortFields = ((TopFieldDocs) topDocs[0]).fields;
+            scoreDocs.sort(fieldDocComparator(sortFields));
+            final FieldDoc[] fieldDocs = scoreDocs.subList(0, Math.min(numHits, scoreDocs.size())).toArray(new FieldDoc[0]);
+            return new TopFieldDocs(totalHits, fieldDocs, sortFields, maxScore);
+        } else {
+            scoreDocs.sort((a, b) -> {
+                int cmp = Float.compare(b.score, a.score);
+                return cmp != 0 ? cmp : Integer.compare(a.doc, b.doc);
+            });
+            final ScoreDoc[] docs = scoreDocs.subList(0, Math.min(numHits, scoreDocs.size())).toArray(new ScoreDoc[0]);
+            return new TopDocs(totalHits, docs, maxScore);
+        }
+    }
+
+    private static Comparator<ScoreDoc> fieldDocComparator(SortField[] sortFields) {
+        final FieldComparator<?>[] comparators = new FieldComparator<?>[sortFields.length];
+        final int[] reverseMul = new int[sortFields.length];
+        for (int i = 0; i < sortFields.length; i++) {
+            comparators[i] = sortFields[i].getComparator(1, i);
+            reverseMul[i] = sortFields[i].getReverse() ? -1 : 1;
+        }
+        return (a, b) -> {
+            final FieldDoc first = (FieldDoc) a;
+            final FieldDoc second = (FieldDoc) b;
+            for (int i = 0; i < comparators.length; i++) {
+                @SuppressWarnings("unchecked")
+                final FieldComparator<Object> comparator = (FieldComparator<Object>) comparators[i];
+                final int cmp = reverseMul[i] * comparator.compareValues(first.fields[i], second.fields[i]);
+                if (cmp != 0) {
+                    return cmp;
+                }
+            }
+            return Integer.compare(a.doc, b.doc);
+        };
+    }
+
+    /**
+     * A slice of the segments of the shard with its own chain of collectors.
+     */
+    private static class Slice {
+        private final List<LeafReaderContext> leaves;
+        private final LinkedList<QueryCollectorContext> collectors;
+        private final Collector collector;
+        private final AtomicReference<Exception> failure;
+        private final AtomicBoolean started = new AtomicBoolean();
+        private final QuerySearchResult result = new QuerySearchResult();
+        private boolean timedOut;
+
+        Slice(List<LeafReaderContext> leaves, LinkedList<QueryCollectorContext> collectors,
+              boolean doProfile, AtomicReference<Exception> failure) throws IOException {
+            this.leaves = leaves;
+            this.collectors = collectors;
+            this.collector = doProfile ? QueryCollectorContext.createQueryCollectorWithProfiler(collectors)
+                : QueryCollectorContext.createQueryCollector(collectors);
+            this.failure = failure;
+        }
+
+        void search(ContextIndexSearcher searcher, Weight weight) {
+            try {
+                searcher.search(leaves, weight, collector);
+            } catch (QueryPhase.TimeExceededException e) {
+                timedOut = true;
+            } catch (Exception e) {
+                if (failure.compareAndSet(null, e) == false) {
+                    failure.get().addSuppressed(e);
+                }
+            }
+        }
+    }
+
+    /**
+     * Profiled collector that reports the collectors of each slice as its children.
+     */
+    private static class ConcurrentProfileCollector extends InternalProfileCollector {
+        private final List<InternalProfileCollector> slices;
+
+        ConcurrentProfileCollector(List<InternalProfileCollector> slices) {
+            super(MultiCollector.wrap(slices), REASON_SEARCH_CONCURRENT, slices);
+            this.slices = slices;
+        }
+
+        @Override
+        public long getTime() {
+            long time = 0;
+            for (InternalProfileCollector slice : slices) {
+                time += slice.getTime();
+            }
+            return time;
+        }
+    }
+}
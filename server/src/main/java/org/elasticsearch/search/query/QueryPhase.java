@@ -41,6 +41,7 @@ import org.elasticsearch.common.lucene.Lucene;
 import org.elasticsearch.common.settings.Settings;
 import org.elasticsearch.common.util.concurrent.EsThreadPoolExecutor;
 import org.elasticsearch.common.util.concurrent.QueueResizingEsThreadPoolExecutor;
+import org.elasticsearch.indices.IndicesSegmentAggregationCache;
 import org.elasticsearch.search.DocValueFormat;
 import org.elasticsearch.search.SearchPhase;
 import org.elasticsearch.search.SearchService;
@@ -57,7 +58,10 @@ import org.elasticsearch.search.suggest.SuggestPhase;
 import org.elasticsearch.tasks.TaskCancelledException;
 import org.elasticsearch.threadpool.ThreadPool;
 
+import java.io.IOException;
+import java.util.Collection;
 import java.util.LinkedList;
+import java.util.function.BooleanSupplier;
 import java.util.function.Consumer;
 
 import static org.elasticsearch.search.query.QueryCollectorContext.createCancellableCollectorContext;
@@ -77,8 +81,14 @@ public class QueryPhase implements SearchPhase {
     private final AggregationPhase aggregationPhase;
     private final SuggestPhase suggestPhase;
     private RescorePhase rescorePhase;
+    private final IndicesSegmentAggregationCache segmentAggregationCache;
 
     public QueryPhase(Settings settings) {
+        this(settings, null);
+    }
+
+    public QueryPhase(Settings settings, IndicesSegmentAggregationCache segmentAggregationCache) {
+        this.segmentAggregationCache = segmentAggregationCache;
         this.aggregationPhase = new AggregationPhase();
         this.suggestPhase = new SuggestPhase(settings);
         this.rescorePhase = new RescorePhase(settings);
@@ -104,7 +114,7 @@ public class QueryPhase implements SearchPhase {
         // here to make sure it happens during the QUERY phase
         aggregationPhase.preProcess(searchContext);
         final ContextIndexSearcher searcher = searchContext.searcher();
-        boolean rescore = execute(searchContext, searchContext.searcher(), searcher::setCheckCancelled);
+        boolean rescore = execute(searchContext, searchContext.searcher(), searcher::setCheckCancelled, segmentAggregationCache);
 
         if (rescore) { // only if we do a regular search
             rescorePhase.execute(searchContext);
@@ -127,6 +137,17 @@ public class QueryPhase implements SearchPhase {
     static boolean execute(SearchContext searchContext,
                            final IndexSearcher searcher,
                            Consumer<Runnable> checkCancellationSetter) throws QueryPhaseExecutionException {
+        return execute(searchContext, searcher, checkCancellationSetter, null);
+    }
+
+    /**
+     * Same as {@link #execute(SearchContext, IndexSearcher, Consumer)} but size=0 aggregation requests may use the
+     * provided <code>segmentAggregationCache</code> if it is not <code>null</code>.
+     */
+    static boolean execute(SearchContext searchContext,
+                           final IndexSearcher searcher,
+                           Consumer<Runnable> checkCancellationSetter,
+                           IndicesSegmentAggregationCache segmentAggregationCache) throws QueryPhaseExecutionException {
         final IndexReader reader = searcher.getIndexReader();
         QuerySearchResult queryResult = searchContext.queryResult();
         queryResult.searchTimedOut(false);
@@ -174,33 +195,6 @@ public class QueryPhase implements SearchPhase {
                 }
             }
 
-            final LinkedList<QueryCollectorContext> collectors = new LinkedList<>();
-            // whether the chain contains a collector that filters documents
-            boolean hasFilterCollector = false;
-            if (searchContext.parsedPostFilter() != null) {
-                // add post filters before aggregations
-                // it will only be applied to top hits
-                collectors.add(createFilteredCollectorContext(searcher, searchContext.parsedPostFilter().query()));
-                // this collector can filter documents during the collection
-                hasFilterCollector = true;
-            }
-            if (searchContext.queryCollectors().isEmpty() == false) {
-                // plug in additional collectors, like aggregations
-                collectors.add(createMultiCollectorContext(searchContext.queryCollectors().values()));
-            }
-            if (searchContext.minimumScore() != null) {
-                // apply the minimum score after multi collector so we filter aggs as well
-                collectors.add(createMinScoreCollectorContext(searchContext.minimumScore()));
-                // this collector can filter documents during the collection
-                hasFilterCollector = true;
-            }
-            if (searchContext.terminateAfter() != SearchContext.DEFAULT_TERMINATE_AFTER) {
-                // apply terminate after after all filters collectors
-                collectors.add(createEarlyTerminationCollectorContext(searchContext.terminateAfter()));
-                // this collector can filter documents during the collection
-                hasFilterCollector = true;
-            }
-
             boolean timeoutSet = scrollContext == null && searchContext.timeout() != null &&
                 searchContext.timeout().equals(SearchService.NO_TIMEOUT) == false;
 
@@ -241,39 +235,41 @@ public class QueryPhase implements SearchPhase {
 
             checkCancellationSetter.accept(checkCancelled);
 
-            // add cancellable
-            // this only performs segment-level cancellation, which is cheap and checked regardless of
-            // searchContext.lowLevelCancellation()
-            collectors.add(createCancellableCollectorContext(searchContext.getTask()::isCancelled));
+            final boolean shouldRescore;
+            if (SegmentAggregationQueryPhase.canExecute(searchContext, searcher, segmentAggregationCache)) {
+                shouldRescore = SegmentAggregationQueryPhase.execute(searchContext, (ContextIndexSearcher) searcher, query, timeoutSet,
+                    segmentAggregationCache);
+            } else if (ConcurrentQueryPhase.canExecute(searchContext, searcher)) {
+                shouldRescore = ConcurrentQueryPhase.execute(searchContext, (ContextIndexSearcher) searcher, query, timeoutSet);
+            } else {
+                final LinkedList<QueryCollectorContext> collectors = createCollectorContexts(searchContext, searcher,
+                    searchContext.queryCollectors().values(), searchContext.getTask()::isCancelled, true);
+                final TopDocsCollectorContext topDocsFactory = (TopDocsCollectorContext) collectors.getFirst();
 
-            final boolean doProfile = searchContext.getProfilers() != null;
-            // create the top docs collector last when the other collectors are known
-            final TopDocsCollectorContext topDocsFactory = createTopDocsCollectorContext(searchContext, reader, hasFilterCollector);
-            // add the top docs collector, the first collector context in the chain
-            collectors.addFirst(topDocsFactory);
+                final Collector queryCollector;
+                if (searchContext.getProfilers() != null) {
+                    InternalProfileCollector profileCollector = QueryCollectorContext.createQueryCollectorWithProfiler(collectors);
+                    searchContext.getProfilers().getCurrentQueryProfiler().setCollector(profileCollector);
+                    queryCollector = profileCollector;
+                } else {
+                   queryCollector = QueryCollectorContext.createQueryCollector(collectors);
+                }
 
-            final Collector queryCollector;
-            if (doProfile) {
-                InternalProfileCollector profileCollector = QueryCollectorContext.createQueryCollectorWithProfiler(collectors);
-                searchContext.getProfilers().getCurrentQueryProfiler().setCollector(profileCollector);
-                queryCollector = profileCollector;
-            } else {
-               queryCollector = QueryCollectorContext.createQueryCollector(collectors);
-            }
+                try {
+                    searcher.search(query, queryCollector);
+                } catch (TimeExceededException e) {
+                    assert timeoutSet : "TimeExceededException thrown even though timeout wasn't set";
+                    queryResult.searchTimedOut(true);
+                } finally {
+                    searchContext.clearReleasables(SearchContext.Lifetime.COLLECTION);
+                }
 
-            try {
-                searcher.search(query, queryCollector);
-            } catch (TimeExceededException e) {
-                assert timeoutSet : "TimeExceededException thrown even though timeout wasn't set";
-                queryResult.searchTimedOut(true);
-            } finally {
-                searchContext.clearReleasables(SearchContext.Lifetime.COLLECTION);
+                for (QueryCollectorContext ctx : collectors) {
+                    ctx.postProcess(queryResult);
+                }
+                shouldRescore = topDocsFactory.shouldRescore();
             }
-
             final QuerySearchResult result = searchContext.queryResult();
-            for (QueryCollectorContext ctx : collectors) {
-                ctx.postProcess(result);
-            }
             EsThreadPoolExecutor executor = (EsThreadPoolExecutor)
                     searchContext.indexShard().getThreadPool().executor(ThreadPool.Names.SEARCH);
             if (executor instanceof QueueResizingEsThreadPoolExecutor) {
@@ -285,12 +281,65 @@ public class QueryPhase implements SearchPhase {
                 ProfileShardResult shardResults = SearchProfileShardResults.buildShardResults(searchContext.getProfilers());
                 result.profileResults(shardResults);
             }
-            return topDocsFactory.shouldRescore();
+            return shouldRescore;
         } catch (Exception e) {
             throw new QueryPhaseExecutionException(searchContext, "Failed to execute main query", e);
         }
     }
 
+    /**
+     * Creates the chain of collector contexts that is used to execute the query, the top docs collector
+     * context being the first element of the returned list.
+     *
+     * @param queryCollectors The additional collectors to plug in the chain, like aggregations
+     * @param cancelled Supplier of the cancellation flag, checked for each segment
+     * @param shortcutTotalHits Whether the total hit count can be computed from the reader statistics
+     *                          instead of counting the collected documents
+     */
+    static LinkedList<QueryCollectorContext> createCollectorContexts(SearchContext searchContext,
+                                                                     IndexSearcher searcher,
+                                                                     Collection<Collector> queryCollectors,
+                                                                     BooleanSupplier cancelled,
+                                                                     boolean shortcutTotalHits) throws IOException {
+        final LinkedList<QueryCollectorContext> collectors = new LinkedList<>();
+        // whether the chain contains a collector that filters documents
+        boolean hasFilterCollector = false;
+        if (searchContext.parsedPostFilter() != null) {
+            // add post filters before aggregations
+            // it will only be applied to top hits
+            collectors.add(createFilteredCollectorContext(searcher, searchContext.parsedPostFilter().query()));
+            // this collector can filter documents during the collection
+            hasFilterCollector = true;
+        }
+        if (queryCollectors.isEmpty() == false) {
+            // plug in additional collectors, like aggregations
+            collectors.add(createMultiCollectorContext(queryCollectors));
+        }
+        if (searchContext.minimumScore() != null) {
+            // apply the minimum score after multi collector so we filter aggs as well
+            collectors.add(createMinScoreCollectorContext(searchContext.minimumScore()));
+            // this collector can filter documents during the collection
+            hasFilterCollector = true;
+        }
+        if (searchContext.terminateAfter() != SearchContext.DEFAULT_TERMINATE_AFTER) {
+            // apply terminate after after all filters collectors
+            collectors.add(createEarlyTerminationCollectorContext(searchContext.terminateAfter()));
+            // this collector can filter documents during the collection
+            hasFilterCollector = true;
+        }
+        // add cancellable
+        // this only performs segment-level cancellation, which is cheap and checked regardless of
+        // searchContext.lowLevelCancellation()
+        collectors.add(createCancellableCollectorContext(cancelled));
+
+        // create the top docs collector last when the other collectors are known
+        final TopDocsCollectorContext topDocsFactory = createTopDocsCollectorContext(searchContext, searcher.getIndexReader(),
+            hasFilterCollector || shortcutTotalHits == false);
+        // add the top docs collector, the first collector context in the chain
+        collectors.addFirst(topDocsFactory);
+        return collectors;
+    }
+
     /**
      * Returns true if the provided <code>query</code> returns docs in index order (internal doc ids).
      * @param query The query to execute
@@ -326,5 +375,5 @@ public class QueryPhase implements SearchPhase {
         return true;
     }
 
-    private static class TimeExceededException extends RuntimeException {}
+    static class TimeExceededException extends RuntimeException {}
 }
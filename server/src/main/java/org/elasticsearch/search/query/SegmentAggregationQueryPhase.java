@@ -0,0 +1,193 @@
+/*
+ * Licensed to Elasticsearch under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Elasticsearch licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.elasticsearch.search.query;
+
+import org.apache.lucene.index.LeafReaderContext;
+import org.apache.lucene.search.Collector;
+import org.apache.lucene.search.IndexSearcher;
+import org.apache.lucene.search.Query;
+import org.apache.lucene.search.TopDocs;
+import org.apache.lucene.search.Weight;
+import org.elasticsearch.action.search.SearchType;
+import org.elasticsearch.common.bytes.BytesReference;
+import org.elasticsearch.common.lucene.Lucene;
+import org.elasticsearch.indices.IndicesSegmentAggregationCache;
+import org.elasticsearch.indices.IndicesSegmentAggregationCache.SegmentResult;
+import org.elasticsearch.search.aggregations.AggregationExecutionException;
+import org.elasticsearch.search.aggregations.AggregationPhase;
+import org.elasticsearch.search.aggregations.InternalAggregations;
+import org.elasticsearch.search.internal.ContextIndexSearcher;
+import org.elasticsearch.search.internal.SearchContext;
+
+import java.io.IOException;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedList;
+
+/**
+ * Executes size=0 aggregation requests one segment at a time so that the partial aggregations of each segment can be
+ * cached in the {@link IndicesSegmentAggregationCache}. Segments that have a cached result for the request are not
+ * searched at all, the other segments are collected by their own set of aggregators whose results are added to the
+ * cache once they are built. The partial results of all segments are merged by the {@link AggregationPhase}.
+ */
+final class SegmentAggregationQueryPhase {
+
+    private SegmentAggregationQueryPhase() {}
+
+    /**
+     * Returns <code>true</code> if the query of the provided <code>searchContext</code> should be executed per segment.
+     */
+    static boolean canExecute(SearchContext searchContext, IndexSearcher searcher, IndicesSegmentAggregationCache cache) {
+        return cache != null && canCache(searchContext, searcher);
+    }
+
+    /**
+     * Returns <code>true</code> if the aggregations of the provided <code>searchContext</code> can be cached per segment.
+     * This is the case if the index settings ask for it, if the request does not disable the request cache and if the
+     * request only computes aggregations that don't need scores and whose results for each segment can be merged into the
+     * result of the whole shard.
+     */
+    static boolean canCache(SearchContext searchContext, IndexSearcher searcher) {
+        if (searcher instanceof ContextIndexSearcher == false || searchContext.indexShard() == null) {
+            return false;
+        }
+        if (searchContext.indexShard().indexSettings()
+                .getValue(IndicesSegmentAggregationCache.INDEX_CACHE_SEGMENT_AGGREGATIONS_ENABLED_SETTING) == false) {
+            return false;
+        }
+        if (searchContext.request() == null
+                || Boolean.FALSE.equals(searchContext.request().requestCache())
+                || searchContext.searchType() != SearchType.QUERY_THEN_FETCH
+                || searchContext.size() != 0
+                || searchContext.trackTotalHits() == false
+                || searchContext.aggregations() == null
+                || searchContext.aggregations().factories().supportsSegmentCaching() == false) {
+            return false;
+        }
+        if (searchContext.scrollContext() != null
+                || searchContext.getProfilers() != null
+                || searchContext.terminateAfter() != SearchContext.DEFAULT_TERMINATE_AFTER) {
+            return false;
+        }
+        for (Class<?> collectorKey : searchContext.queryCollectors().keySet()) {
+            if (collectorKey != AggregationPhase.class) {
+                // we don't know how to create and cache this collector for each segment
+                return false;
+            }
+        }
+        final Collector aggsCollector = searchContext.queryCollectors().get(AggregationPhase.class);
+        if (aggsCollector != null && aggsCollector.needsScores()) {
+            // scores depend on the statistics of the whole shard, the cached result of a segment would go stale as other
+            // segments are added or merged
+            return false;
+        }
+        // queries that depend on the time of the request or that use scripts cannot be cached
+        if (searchContext.getQueryShardContext().isCachable() == false) {
+            return false;
+        }
+        for (LeafReaderContext leaf : searcher.getIndexReader().leaves()) {
+            if (IndicesSegmentAggregationCache.canCache(leaf.reader()) == false) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Executes the provided <code>query</code> on each segment that has no cached result and populates the query result
+     * of the <code>searchContext</code>.
+     *
+     * @return whether the rescoring phase should be executed
+     */
+    static boolean execute(SearchContext searchContext, ContextIndexSearcher searcher, Query query,
+                           boolean timeoutSet, IndicesSegmentAggregationCache cache) throws IOException {
+        final BytesReference requestKey = searchContext.request().cacheKey();
+        final QuerySearchResult queryResult = searchContext.queryResult();
+        long totalHits = 0;
+        Weight weight = null;
+        try {
+            for (LeafReaderContext leaf : searcher.getIndexReader().leaves()) {
+                final SegmentResult cached = cache.get(leaf.reader(), requestKey);
+                if (cached != null) {
+                    searchContext.aggregations().addCachedAggregations(cached.getAggregations());
+                    totalHits += cached.getTotalHits();
+                    continue;
+                }
+                final Segment segment = new Segment(leaf);
+                final Collector aggsCollector = AggregationPhase.createSliceCollector(searchContext,
+                    aggregations -> segment.cache(cache, requestKey, aggregations));
+                final Collection<Collector> queryCollectors =
+                    aggsCollector == null ? Collections.emptyList() : Collections.singletonList(aggsCollector);
+                // the hit count of each segment is cached so it must be counted, even if the reader statistics could be used
+                final LinkedList<QueryCollectorContext> collectors = QueryPhase.createCollectorContexts(searchContext, searcher,
+                    queryCollectors, searchContext.getTask()::isCancelled, false);
+                final Collector collector = QueryCollectorContext.createQueryCollector(collectors);
+                if (weight == null) {
+                    weight = searcher.createNormalizedWeight(query, collector.needsScores());
+                }
+                try {
+                    searcher.search(Collections.singletonList(leaf), weight, collector);
+                } catch (QueryPhase.TimeExceededException e) {
+                    assert timeoutSet : "TimeExceededException thrown even though timeout wasn't set";
+                    // the aggregations of this segment are partial, they must not be cached
+                    segment.timedOut = true;
+                    queryResult.searchTimedOut(true);
+                }
+                final QuerySearchResult segmentResult = new QuerySearchResult();
+                for (QueryCollectorContext ctx : collectors) {
+                    ctx.postProcess(segmentResult);
+                }
+                segment.totalHits = segmentResult.topDocs().totalHits;
+                totalHits += segment.totalHits;
+                if (segment.timedOut) {
+                    break;
+                }
+            }
+        } finally {
+            searchContext.clearReleasables(SearchContext.Lifetime.COLLECTION);
+        }
+        queryResult.topDocs(new TopDocs(totalHits, Lucene.EMPTY_SCORE_DOCS, 0), null);
+        return false;
+    }
+
+    /**
+     * A segment that is collected by its own aggregators.
+     */
+    private static class Segment {
+        private final LeafReaderContext leaf;
+        private long totalHits;
+        private boolean timedOut;
+
+        Segment(LeafReaderContext leaf) {
+            this.leaf = leaf;
+        }
+
+        void cache(IndicesSegmentAggregationCache cache, BytesReference requestKey, InternalAggregations aggregations) {
+            if (timedOut) {
+                return;
+            }
+            try {
+                cache.put(leaf.reader(), requestKey, new SegmentResult(totalHits, aggregations));
+            } catch (IOException e) {
+                throw new AggregationExecutionException("Failed to cache the aggregations of segment [" + leaf.ord + "]", e);
+            }
+        }
+    }
+}
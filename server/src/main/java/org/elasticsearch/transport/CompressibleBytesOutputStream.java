@@ -19,8 +19,12 @@
 
 package org.elasticsearch.transport;
 
+import org.apache.lucene.util.ArrayUtil;
+import org.apache.lucene.util.BytesRef;
 import org.apache.lucene.util.IOUtils;
+import org.elasticsearch.common.Nullable;
 import org.elasticsearch.common.bytes.BytesReference;
+import org.elasticsearch.common.compress.Compressor;
 import org.elasticsearch.common.compress.CompressorFactory;
 import org.elasticsearch.common.io.Streams;
 import org.elasticsearch.common.io.stream.BytesStream;
@@ -36,6 +40,9 @@ import java.util.zip.DeflaterOutputStream;
  * {@link BytesStream} should not be closed yet, as we have not used the bytes. This class handles these
  * intricacies.
  *
+ * A minimum size can be given in which case the first bytes are buffered and the content is only compressed
+ * once it grows larger than the minimum size, smaller messages are written as is.
+ *
  * {@link CompressibleBytesOutputStream#materializeBytes()} should be called when all the bytes have been
  * written to this stream. If compression is enabled, the proper EOS bytes will be written at that point.
  * The underlying {@link BytesReference} will be returned.
@@ -45,17 +52,31 @@ import java.util.zip.DeflaterOutputStream;
  */
 final class CompressibleBytesOutputStream extends StreamOutput {
 
-    private final StreamOutput stream;
     private final BytesStream bytesStreamOutput;
-    private final boolean shouldCompress;
+    private final Compressor compressor;
+    private final int minCompressSize;
+    // the stream that the bytes are written to, null as long as we don't know whether the content needs compression
+    private StreamOutput stream;
+    private byte[] pending = BytesRef.EMPTY_BYTES;
+    private int pendingCount;
+    private long uncompressedBytes;
 
     CompressibleBytesOutputStream(BytesStream bytesStreamOutput, boolean shouldCompress) throws IOException {
+        this(bytesStreamOutput, shouldCompress ? CompressorFactory.COMPRESSOR : null, 0);
+    }
+
+    /**
+     * @param compressor      the compressor to use or <code>null</code> if the content must not be compressed
+     * @param minCompressSize the content is only compressed if it is larger than this number of bytes
+     */
+    CompressibleBytesOutputStream(BytesStream bytesStreamOutput, @Nullable Compressor compressor, int minCompressSize) throws IOException {
         this.bytesStreamOutput = bytesStreamOutput;
-        this.shouldCompress = shouldCompress;
-        if (shouldCompress) {
-            this.stream = CompressorFactory.COMPRESSOR.streamOutput(Streams.flushOnCloseStream(bytesStreamOutput));
-        } else {
+        this.compressor = compressor;
+        this.minCompressSize = minCompressSize;
+        if (compressor == null) {
             this.stream = bytesStreamOutput;
+        } else if (minCompressSize <= 0) {
+            this.stream = compressor.streamOutput(Streams.flushOnCloseStream(bytesStreamOutput));
         }
     }
 
@@ -66,39 +87,86 @@ final class CompressibleBytesOutputStream extends StreamOutput {
      * @throws IOException if an exception occurs when writing or flushing
      */
     BytesReference materializeBytes() throws IOException {
+        if (stream == null) {
+            // the content didn't reach the minimum size for compression
+            stream = bytesStreamOutput;
+            stream.writeBytes(pending, 0, pendingCount);
+            pending = null;
+        }
         // If we are using compression the stream needs to be closed to ensure that EOS marker bytes are written.
         // The actual ReleasableBytesStreamOutput will not be closed yet as it is wrapped in flushOnCloseStream when
         // passed to the deflater stream.
-        if (shouldCompress) {
+        if (isCompressed()) {
             stream.close();
         }
 
         return bytesStreamOutput.bytes();
     }
 
+    /**
+     * Returns <code>true</code> if the content is compressed, this is only known for sure once the bytes are materialized.
+     */
+    boolean isCompressed() {
+        return stream != null && stream != bytesStreamOutput;
+    }
+
+    /**
+     * Returns the number of bytes that were written to this stream before compression.
+     */
+    long uncompressedBytes() {
+        return uncompressedBytes;
+    }
+
     @Override
     public void writeByte(byte b) throws IOException {
+        uncompressedBytes++;
+        if (stream == null) {
+            if (pendingCount < minCompressSize) {
+                pending = ArrayUtil.grow(pending, pendingCount + 1);
+                pending[pendingCount++] = b;
+                return;
+            }
+            startCompression();
+        }
         stream.write(b);
     }
 
     @Override
     public void writeBytes(byte[] b, int offset, int length) throws IOException {
+        uncompressedBytes += length;
+        if (stream == null) {
+            if (pendingCount + length <= minCompressSize) {
+                pending = ArrayUtil.grow(pending, pendingCount + length);
+                System.arraycopy(b, offset, pending, pendingCount, length);
+                pendingCount += length;
+                return;
+            }
+            startCompression();
+        }
         stream.writeBytes(b, offset, length);
     }
 
+    private void startCompression() throws IOException {
+        assert stream == null && compressor != null;
+        stream = compressor.streamOutput(Streams.flushOnCloseStream(bytesStreamOutput));
+        stream.writeBytes(pending, 0, pendingCount);
+        pending = null;
+    }
+
     @Override
     public void flush() throws IOException {
-        stream.flush();
+        if (stream != null) {
+            stream.flush();
+        }
     }
 
     @Override
     public void close() throws IOException {
-        if (stream == bytesStreamOutput) {
-            assert shouldCompress == false : "If the streams are the same we should not be compressing";
-            IOUtils.close(stream);
-        } else {
-            assert shouldCompress : "If the streams are different we should be compressing";
+        if (isCompressed()) {
+            assert compressor != null : "If the streams are different we should be compressing";
             IOUtils.close(stream, bytesStreamOutput);
+        } else {
+            IOUtils.close(bytesStreamOutput);
         }
     }
 
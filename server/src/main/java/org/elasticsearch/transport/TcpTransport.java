@@ -54,11 +54,13 @@ import org.elasticsearch.common.metrics.MeanMetric;
 import org.elasticsearch.common.network.NetworkAddress;
 import org.elasticsearch.common.network.NetworkService;
 import org.elasticsearch.common.network.NetworkUtils;
+import org.elasticsearch.common.regex.Regex;
 import org.elasticsearch.common.settings.Setting;
 import org.elasticsearch.common.settings.Settings;
 import org.elasticsearch.common.transport.BoundTransportAddress;
 import org.elasticsearch.common.transport.PortsRange;
 import org.elasticsearch.common.transport.TransportAddress;
+import org.elasticsearch.common.unit.ByteSizeUnit;
 import org.elasticsearch.common.unit.ByteSizeValue;
 import org.elasticsearch.common.unit.TimeValue;
 import org.elasticsearch.common.util.BigArrays;
@@ -94,6 +96,7 @@ import java.util.Map;
 import java.util.Objects;
 import java.util.Optional;
 import java.util.Set;
+import java.util.TreeMap;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.CountDownLatch;
@@ -162,6 +165,13 @@ public abstract class TcpTransport extends AbstractLifecycleComponent implements
     public static final Setting<ByteSizeValue> TCP_RECEIVE_BUFFER_SIZE =
         Setting.byteSizeSetting("transport.tcp.receive_buffer_size", NetworkService.TCP_RECEIVE_BUFFER_SIZE,
             Setting.Property.NodeScope);
+    public static final Setting<String> COMPRESSION_SCHEME =
+        new Setting<>("transport.compression_scheme", "deflate", TcpTransport::parseCompressionScheme, Setting.Property.NodeScope);
+    public static final Setting<List<String>> COMPRESS_ACTIONS =
+        listSetting("transport.compress.actions", emptyList(), Function.identity(), Setting.Property.NodeScope);
+    public static final Setting<ByteSizeValue> COMPRESS_MIN_SIZE =
+        Setting.byteSizeSetting("transport.compress.min_size", new ByteSizeValue(0), new ByteSizeValue(0),
+            new ByteSizeValue(1, ByteSizeUnit.MB), Setting.Property.NodeScope);
 
 
     public static final Setting.AffixSetting<Boolean> TCP_NO_DELAY_PROFILE = affixKeySetting("transport.profiles.", "tcp_no_delay",
@@ -210,6 +220,10 @@ public abstract class TcpTransport extends AbstractLifecycleComponent implements
     // connections while no connect operations is going on... (this might help with 100% CPU when stopping the transport?)
     private final ReadWriteLock closeLock = new ReentrantReadWriteLock();
     protected final boolean compress;
+    private final Compressor compressor;
+    private final String[] compressActions;
+    private final int compressMinSize;
+    private final ConcurrentMap<String, CompressionStatsTracker> compressionStats = newConcurrentMap();
     private volatile BoundTransportAddress boundAddress;
     private final String transportName;
     protected final ConnectionProfile defaultConnectionProfile;
@@ -234,6 +248,9 @@ public abstract class TcpTransport extends AbstractLifecycleComponent implements
         this.pingSchedule = PING_SCHEDULE.get(settings);
         this.namedWriteableRegistry = namedWriteableRegistry;
         this.compress = Transport.TRANSPORT_TCP_COMPRESS.get(settings);
+        this.compressor = compressor(COMPRESSION_SCHEME.get(settings));
+        this.compressActions = COMPRESS_ACTIONS.get(settings).toArray(Strings.EMPTY_ARRAY);
+        this.compressMinSize = COMPRESS_MIN_SIZE.get(settings).bytesAsInt();
         this.networkService = networkService;
         this.transportName = transportName;
         defaultConnectionProfile = buildDefaultConnectionProfile(settings);
@@ -1076,6 +1093,45 @@ public abstract class TcpTransport extends AbstractLifecycleComponent implements
         return compress && (!(request instanceof BytesTransportRequest));
     }
 
+    private static String parseCompressionScheme(String scheme) {
+        compressor(scheme);
+        return scheme;
+    }
+
+    private static Compressor compressor(String scheme) {
+        switch (scheme) {
+            case "deflate":
+                return CompressorFactory.COMPRESSOR;
+            case "lz4":
+                return CompressorFactory.LZ4_COMPRESSOR;
+            default:
+                throw new IllegalArgumentException("unknown transport compression scheme [" + scheme + "], must be one of [deflate, lz4]");
+        }
+    }
+
+    /**
+     * Returns the compressor to use for the given message or <code>null</code> if it must not be compressed. Messages are
+     * compressed if compression is enabled for all messages, if it is requested through the options of the message or if
+     * the action matches one of the patterns of {@link #COMPRESS_ACTIONS}. Nodes before {@link Version#V_6_2_3} can't
+     * detect the LZ4 header, messages sent with their <code>version</code> always use deflate.
+     */
+    @Nullable
+    private Compressor compressorFor(String action, TransportMessage message, boolean compressOption, byte status, Version version) {
+        // only compress if the message is not bytes. Otherwise only the header part is compressed, and the "body"
+        // can't be extracted as compressed
+        if (message instanceof BytesTransportRequest) {
+            return null;
+        }
+        if (compress || compressOption || Regex.simpleMatch(compressActions, action)) {
+            // the handshake is exchanged before we know what the other node supports
+            if (TransportStatus.isHandshake(status) || version.before(Version.V_6_2_3)) {
+                return CompressorFactory.COMPRESSOR;
+            }
+            return compressor;
+        }
+        return null;
+    }
+
     private void sendRequestToChannel(final DiscoveryNode node, final TcpChannel channel, final long requestId, final String action,
                                       final TransportRequest request, TransportRequestOptions options, Version channelVersion,
                                       byte status) throws IOException,
@@ -1084,28 +1140,21 @@ public abstract class TcpTransport extends AbstractLifecycleComponent implements
             options = TransportRequestOptions.builder(options).withCompress(true).build();
         }
 
-        // only compress if asked and the request is not bytes. Otherwise only
-        // the header part is compressed, and the "body" can't be extracted as compressed
-        final boolean compressMessage = options.compress() && canCompress(request);
+        // we pick the smallest of the 2, to support both backward and forward compatibility
+        // note, this is the only place we need to do this, since from here on, we use the serialized version
+        // as the version to use also when the node receiving this request will send the response with
+        final Version version = Version.min(getCurrentVersion(), channelVersion);
+        final Compressor messageCompressor = compressorFor(action, request, options.compress(), status, version);
 
         status = TransportStatus.setRequest(status);
         ReleasableBytesStreamOutput bStream = new ReleasableBytesStreamOutput(bigArrays);
-        final CompressibleBytesOutputStream stream = new CompressibleBytesOutputStream(bStream, compressMessage);
+        final CompressibleBytesOutputStream stream = new CompressibleBytesOutputStream(bStream, messageCompressor, compressMinSize);
         boolean addedReleaseListener = false;
         try {
-            if (compressMessage) {
-                status = TransportStatus.setCompress(status);
-            }
-
-            // we pick the smallest of the 2, to support both backward and forward compatibility
-            // note, this is the only place we need to do this, since from here on, we use the serialized version
-            // as the version to use also when the node receiving this request will send the response with
-            Version version = Version.min(getCurrentVersion(), channelVersion);
-
             stream.setVersion(version);
             threadPool.getThreadContext().writeTo(stream);
             stream.writeString(action);
-            BytesReference message = buildMessage(requestId, status, node.getVersion(), request, stream);
+            BytesReference message = buildMessage(requestId, status, node.getVersion(), action, request, stream);
             final TransportRequestOptions finalOptions = options;
             // this might be called in a different thread
             SendListener onRequestSent = new SendListener(channel, stream,
@@ -1176,17 +1225,15 @@ public abstract class TcpTransport extends AbstractLifecycleComponent implements
         if (compress) {
             options = TransportResponseOptions.builder(options).withCompress(true).build();
         }
+        final Compressor messageCompressor = compressorFor(action, response, options.compress(), status, nodeVersion);
         status = TransportStatus.setResponse(status); // TODO share some code with sendRequest
         ReleasableBytesStreamOutput bStream = new ReleasableBytesStreamOutput(bigArrays);
-        CompressibleBytesOutputStream stream = new CompressibleBytesOutputStream(bStream, options.compress());
+        CompressibleBytesOutputStream stream = new CompressibleBytesOutputStream(bStream, messageCompressor, compressMinSize);
         boolean addedReleaseListener = false;
         try {
-            if (options.compress()) {
-                status = TransportStatus.setCompress(status);
-            }
             threadPool.getThreadContext().writeTo(stream);
             stream.setVersion(nodeVersion);
-            BytesReference message = buildMessage(requestId, status, nodeVersion, response, stream);
+            BytesReference message = buildMessage(requestId, status, nodeVersion, action, response, stream);
 
             final TransportResponseOptions finalOptions = options;
             // this might be called in a different thread
@@ -1224,7 +1271,7 @@ public abstract class TcpTransport extends AbstractLifecycleComponent implements
     /**
      * Serializes the given message into a bytes representation
      */
-    private BytesReference buildMessage(long requestId, byte status, Version nodeVersion, TransportMessage message,
+    private BytesReference buildMessage(long requestId, byte status, Version nodeVersion, String action, TransportMessage message,
                                         CompressibleBytesOutputStream stream) throws IOException {
         final BytesReference zeroCopyBuffer;
         if (message instanceof BytesTransportRequest) { // what a shitty optimization - we should use a direct send method instead
@@ -1242,6 +1289,12 @@ public abstract class TcpTransport extends AbstractLifecycleComponent implements
         // #validateRequest method. this might be a problem in deflate after all but it's important to write
         // the marker bytes.
         final BytesReference messageBody = stream.materializeBytes();
+        if (stream.isCompressed()) {
+            // the compression is only decided once the content is written since small messages are not compressed
+            status = TransportStatus.setCompress(status);
+            compressionStats.computeIfAbsent(action, k -> new CompressionStatsTracker())
+                .onMessage(stream.uncompressedBytes(), messageBody.length());
+        }
         final BytesReference header = buildHeader(requestId, status, stream.getVersion(), messageBody.length() + zeroCopyBuffer.length());
         return new CompositeBytesReference(header, messageBody, zeroCopyBuffer);
     }
@@ -1503,8 +1556,9 @@ public abstract class TcpTransport extends AbstractLifecycleComponent implements
                 } else {
                     getInFlightRequestBreaker().addWithoutBreaking(messageLengthBytes);
                 }
+                // payloads of the request may be slices of the network buffer that are released once the response is sent
                 transportChannel = new TcpTransportChannel(this, channel, transportName, action, requestId, version, profileName,
-                    messageLengthBytes);
+                    messageLengthBytes, stream.retainBuffers());
                 final TransportRequest request = reg.newRequest(stream);
                 request.remoteAddress(new TransportAddress(remoteAddress));
                 // in case we throw an exception, i.e. when the limit is hit, we don't want to verify
@@ -1514,7 +1568,8 @@ public abstract class TcpTransport extends AbstractLifecycleComponent implements
         } catch (Exception e) {
             // the circuit breaker tripped
             if (transportChannel == null) {
-                transportChannel = new TcpTransportChannel(this, channel, transportName, action, requestId, version, profileName, 0);
+                transportChannel = new TcpTransportChannel(this, channel, transportName, action, requestId, version, profileName, 0,
+                    () -> {});
             }
             try {
                 transportChannel.sendResponse(e);
@@ -1742,8 +1797,31 @@ public abstract class TcpTransport extends AbstractLifecycleComponent implements
 
     @Override
     public final TransportStats getStats() {
+        final Map<String, TransportStats.CompressionStats> compressionStatsByAction = new TreeMap<>();
+        for (Map.Entry<String, CompressionStatsTracker> entry : compressionStats.entrySet()) {
+            compressionStatsByAction.put(entry.getKey(), entry.getValue().stats());
+        }
         return new TransportStats(acceptedChannels.size(), readBytesMetric.count(), readBytesMetric.sum(), transmittedBytesMetric.count(),
-            transmittedBytesMetric.sum());
+            transmittedBytesMetric.sum(), compressionStatsByAction);
+    }
+
+    /**
+     * Tracks the number of compressed messages that were sent for an action and their sizes before and after compression.
+     */
+    private static final class CompressionStatsTracker {
+        private final CounterMetric count = new CounterMetric();
+        private final CounterMetric uncompressedBytes = new CounterMetric();
+        private final CounterMetric compressedBytes = new CounterMetric();
+
+        void onMessage(long uncompressed, long compressed) {
+            count.inc();
+            uncompressedBytes.inc(uncompressed);
+            compressedBytes.inc(compressed);
+        }
+
+        TransportStats.CompressionStats stats() {
+            return new TransportStats.CompressionStats(count.count(), uncompressedBytes.count(), compressedBytes.count());
+        }
     }
 
     /**
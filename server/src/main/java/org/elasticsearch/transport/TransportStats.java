@@ -19,6 +19,7 @@
 
 package org.elasticsearch.transport;
 
+import org.elasticsearch.Version;
 import org.elasticsearch.common.io.stream.StreamInput;
 import org.elasticsearch.common.io.stream.StreamOutput;
 import org.elasticsearch.common.io.stream.Writeable;
@@ -28,6 +29,8 @@ import org.elasticsearch.common.xcontent.ToXContentFragment;
 import org.elasticsearch.common.xcontent.XContentBuilder;
 
 import java.io.IOException;
+import java.util.Collections;
+import java.util.Map;
 
 public class TransportStats implements Writeable, ToXContentFragment {
 
@@ -36,13 +39,20 @@ public class TransportStats implements Writeable, ToXContentFragment {
     private final long rxSize;
     private final long txCount;
     private final long txSize;
+    private final Map<String, CompressionStats> compressionStats;
 
     public TransportStats(long serverOpen, long rxCount, long rxSize, long txCount, long txSize) {
+        this(serverOpen, rxCount, rxSize, txCount, txSize, Collections.emptyMap());
+    }
+
+    public TransportStats(long serverOpen, long rxCount, long rxSize, long txCount, long txSize,
+                          Map<String, CompressionStats> compressionStats) {
         this.serverOpen = serverOpen;
         this.rxCount = rxCount;
         this.rxSize = rxSize;
         this.txCount = txCount;
         this.txSize = txSize;
+        this.compressionStats = compressionStats;
     }
 
     public TransportStats(StreamInput in) throws IOException {
@@ -51,6 +61,11 @@ public class TransportStats implements Writeable, ToXContentFragment {
         rxSize = in.readVLong();
         txCount = in.readVLong();
         txSize = in.readVLong();
+        if (in.getVersion().onOrAfter(Version.V_6_2_3)) {
+            compressionStats = in.readMap(StreamInput::readString, CompressionStats::new);
+        } else {
+            compressionStats = Collections.emptyMap();
+        }
     }
 
     @Override
@@ -60,6 +75,9 @@ public class TransportStats implements Writeable, ToXContentFragment {
         out.writeVLong(rxSize);
         out.writeVLong(txCount);
         out.writeVLong(txSize);
+        if (out.getVersion().onOrAfter(Version.V_6_2_3)) {
+            out.writeMap(compressionStats, StreamOutput::writeString, (o, stats) -> stats.writeTo(o));
+        }
     }
 
     public long serverOpen() {
@@ -102,6 +120,13 @@ public class TransportStats implements Writeable, ToXContentFragment {
         return txSize();
     }
 
+    /**
+     * Returns the statistics of the compressed messages that were sent, by action name.
+     */
+    public Map<String, CompressionStats> getCompressionStats() {
+        return compressionStats;
+    }
+
     @Override
     public XContentBuilder toXContent(XContentBuilder builder, Params params) throws IOException {
         builder.startObject(Fields.TRANSPORT);
@@ -110,10 +135,68 @@ public class TransportStats implements Writeable, ToXContentFragment {
         builder.byteSizeField(Fields.RX_SIZE_IN_BYTES, Fields.RX_SIZE, rxSize);
         builder.field(Fields.TX_COUNT, txCount);
         builder.byteSizeField(Fields.TX_SIZE_IN_BYTES, Fields.TX_SIZE, txSize);
+        if (compressionStats.isEmpty() == false) {
+            builder.startObject(Fields.COMPRESSION);
+            for (Map.Entry<String, CompressionStats> entry : compressionStats.entrySet()) {
+                builder.startObject(entry.getKey());
+                entry.getValue().toXContent(builder, params);
+                builder.endObject();
+            }
+            builder.endObject();
+        }
         builder.endObject();
         return builder;
     }
 
+    /**
+     * The number of compressed messages that were sent for an action and their size before and after compression.
+     */
+    public static class CompressionStats implements Writeable, ToXContentFragment {
+
+        private final long count;
+        private final long uncompressedSize;
+        private final long compressedSize;
+
+        public CompressionStats(long count, long uncompressedSize, long compressedSize) {
+            this.count = count;
+            this.uncompressedSize = uncompressedSize;
+            this.compressedSize = compressedSize;
+        }
+
+        public CompressionStats(StreamInput in) throws IOException {
+            count = in.readVLong();
+            uncompressedSize = in.readVLong();
+            compressedSize = in.readVLong();
+        }
+
+        @Override
+        public void writeTo(StreamOutput out) throws IOException {
+            out.writeVLong(count);
+            out.writeVLong(uncompressedSize);
+            out.writeVLong(compressedSize);
+        }
+
+        public long getCount() {
+            return count;
+        }
+
+        public ByteSizeValue getUncompressedSize() {
+            return new ByteSizeValue(uncompressedSize);
+        }
+
+        public ByteSizeValue getCompressedSize() {
+            return new ByteSizeValue(compressedSize);
+        }
+
+        @Override
+        public XContentBuilder toXContent(XContentBuilder builder, Params params) throws IOException {
+            builder.field(Fields.COUNT, count);
+            builder.byteSizeField(Fields.UNCOMPRESSED_SIZE_IN_BYTES, Fields.UNCOMPRESSED_SIZE, uncompressedSize);
+            builder.byteSizeField(Fields.COMPRESSED_SIZE_IN_BYTES, Fields.COMPRESSED_SIZE, compressedSize);
+            return builder;
+        }
+    }
+
     static final class Fields {
         static final String TRANSPORT = "transport";
         static final String SERVER_OPEN = "server_open";
@@ -123,5 +206,11 @@ public class TransportStats implements Writeable, ToXContentFragment {
         static final String TX_COUNT = "tx_count";
         static final String TX_SIZE = "tx_size";
         static final String TX_SIZE_IN_BYTES = "tx_size_in_bytes";
+        static final String COMPRESSION = "compression";
+        static final String COUNT = "count";
+        static final String UNCOMPRESSED_SIZE = "uncompressed_size";
+        static final String UNCOMPRESSED_SIZE_IN_BYTES = "uncompressed_size_in_bytes";
+        static final String COMPRESSED_SIZE = "compressed_size";
+        static final String COMPRESSED_SIZE_IN_BYTES = "compressed_size_in_bytes";
     }
 }
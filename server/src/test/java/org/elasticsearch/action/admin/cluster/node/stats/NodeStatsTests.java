@@ -220,6 +220,16 @@ public class NodeStatsTests extends ESTestCase {
                     assertEquals(nodeStats.getTransport().getServerOpen(), deserializedNodeStats.getTransport().getServerOpen());
                     assertEquals(nodeStats.getTransport().getTxCount(), deserializedNodeStats.getTransport().getTxCount());
                     assertEquals(nodeStats.getTransport().getTxSize(), deserializedNodeStats.getTransport().getTxSize());
+                    Map<String, TransportStats.CompressionStats> compressionStats = nodeStats.getTransport().getCompressionStats();
+                    Map<String, TransportStats.CompressionStats> deserializedCompressionStats =
+                        deserializedNodeStats.getTransport().getCompressionStats();
+                    assertEquals(compressionStats.keySet(), deserializedCompressionStats.keySet());
+                    for (Map.Entry<String, TransportStats.CompressionStats> entry : compressionStats.entrySet()) {
+                        TransportStats.CompressionStats deserialized = deserializedCompressionStats.get(entry.getKey());
+                        assertEquals(entry.getValue().getCount(), deserialized.getCount());
+                        assertEquals(entry.getValue().getUncompressedSize(), deserialized.getUncompressedSize());
+                        assertEquals(entry.getValue().getCompressedSize(), deserialized.getCompressedSize());
+                    }
                 }
                 if (nodeStats.getHttp() == null) {
                     assertNull(deserializedNodeStats.getHttp());
@@ -261,6 +271,20 @@ public class NodeStatsTests extends ESTestCase {
                         assertEquals(queueStats.getTotal(), deserializedDiscoveryStats.getQueueStats().getTotal());
                         assertEquals(queueStats.getPending(), deserializedDiscoveryStats.getQueueStats().getPending());
                     }
+                    PublishClusterStateStats publishStats = discoveryStats.getPublishStats();
+                    if (publishStats == null) {
+                        assertNull(deserializedDiscoveryStats.getPublishStats());
+                    } else {
+                        PublishClusterStateStats deserializedPublishStats = deserializedDiscoveryStats.getPublishStats();
+                        assertEquals(publishStats.getPublishedClusterStateCount(),
+                            deserializedPublishStats.getPublishedClusterStateCount());
+                        assertEquals(publishStats.getDiffTimeInMillis(), deserializedPublishStats.getDiffTimeInMillis());
+                        assertEquals(publishStats.getSerializationTimeInMillis(), deserializedPublishStats.getSerializationTimeInMillis());
+                        assertEquals(publishStats.getCommitTimeInMillis(), deserializedPublishStats.getCommitTimeInMillis());
+                        assertEquals(publishStats.getCompletionTimeInMillis(), deserializedPublishStats.getCompletionTimeInMillis());
+                        assertEquals(publishStats.getSerializedIndicesCount(), deserializedPublishStats.getSerializedIndicesCount());
+                        assertEquals(publishStats.getReusedIndicesCount(), deserializedPublishStats.getReusedIndicesCount());
+                    }
                 }
                 IngestStats ingestStats = nodeStats.getIngestStats();
                 IngestStats deserializedIngestStats = deserializedNodeStats.getIngestStats();
@@ -399,8 +423,17 @@ public class NodeStatsTests extends ESTestCase {
             }
             fsInfo = new FsInfo(randomNonNegativeLong(), ioStats, paths);
         }
-        TransportStats transportStats = frequently() ? new TransportStats(randomNonNegativeLong(), randomNonNegativeLong(),
-                randomNonNegativeLong(), randomNonNegativeLong(), randomNonNegativeLong()) : null;
+        TransportStats transportStats = null;
+        if (frequently()) {
+            Map<String, TransportStats.CompressionStats> compressionStats = new HashMap<>();
+            int numActions = randomIntBetween(0, 3);
+            for (int i = 0; i < numActions; i++) {
+                compressionStats.put(randomAlphaOfLengthBetween(3, 10), new TransportStats.CompressionStats(randomNonNegativeLong(),
+                    randomNonNegativeLong(), randomNonNegativeLong()));
+            }
+            transportStats = new TransportStats(randomNonNegativeLong(), randomNonNegativeLong(), randomNonNegativeLong(),
+                randomNonNegativeLong(), randomNonNegativeLong(), compressionStats);
+        }
         HttpStats httpStats = frequently() ? new HttpStats(randomNonNegativeLong(), randomNonNegativeLong()) : null;
         AllCircuitBreakerStats allCircuitBreakerStats = null;
         if (frequently()) {
@@ -420,6 +453,13 @@ public class NodeStatsTests extends ESTestCase {
                 : null,
                 randomBoolean()
                 ? new PublishClusterStateStats(
+                    randomNonNegativeLong(),
+                    randomNonNegativeLong(),
+                    randomNonNegativeLong(),
+                    randomNonNegativeLong(),
+                    randomNonNegativeLong(),
+                    randomNonNegativeLong(),
+                    randomNonNegativeLong(),
                     randomNonNegativeLong(),
                     randomNonNegativeLong(),
                     randomNonNegativeLong())
@@ -37,23 +37,31 @@ import org.elasticsearch.action.update.UpdateRequest;
 import org.elasticsearch.action.update.UpdateResponse;
 import org.elasticsearch.client.Requests;
 import org.elasticsearch.cluster.metadata.IndexMetaData;
+import org.elasticsearch.common.compress.CompressedXContent;
 import org.elasticsearch.common.lucene.uid.Versions;
 import org.elasticsearch.common.settings.Settings;
+import org.elasticsearch.common.util.concurrent.EsRejectedExecutionException;
 import org.elasticsearch.common.xcontent.XContentType;
 import org.elasticsearch.index.VersionType;
 import org.elasticsearch.index.engine.Engine;
 import org.elasticsearch.index.engine.VersionConflictEngineException;
+import org.elasticsearch.index.mapper.MapperParsingException;
 import org.elasticsearch.index.mapper.MapperService;
 import org.elasticsearch.index.mapper.Mapping;
 import org.elasticsearch.index.shard.IndexShard;
 import org.elasticsearch.index.shard.IndexShardTestCase;
+import org.elasticsearch.index.shard.PreParsedDocument;
 import org.elasticsearch.index.shard.ShardId;
 import org.elasticsearch.index.translog.Translog;
 import org.elasticsearch.rest.RestStatus;
+import org.elasticsearch.threadpool.ThreadPool;
 
 import java.io.IOException;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.function.LongSupplier;
 
@@ -257,6 +265,117 @@ public class TransportShardBulkActionTests extends IndexShardTestCase {
         closeShards(shard);
     }
 
+    public void testPerformOnPrimaryWithPipelinedParsing() throws Exception {
+        IndexShard shard = newStartedShard(true);
+
+        BulkItemRequest[] items = new BulkItemRequest[randomIntBetween(2, 20)];
+        int malformedItem = randomBoolean() ? randomIntBetween(0, items.length - 1) : -1;
+        for (int i = 0; i < items.length; i++) {
+            IndexRequest writeRequest = new IndexRequest("index", "type", "id_" + i).create(randomBoolean());
+            if (i == malformedItem) {
+                writeRequest.source("{\"foo\": ", XContentType.JSON);
+            } else {
+                writeRequest.source(Requests.INDEX_CONTENT_TYPE, "foo", "bar-" + i);
+            }
+            items[i] = new BulkItemRequest(i, writeRequest);
+        }
+        BulkShardRequest bulkShardRequest = new BulkShardRequest(shardId, RefreshPolicy.NONE, items);
+
+        final Executor executor = randomFrom(
+            (Executor) threadPool.executor(ThreadPool.Names.GENERIC),
+            Runnable::run,
+            command -> {
+                throw new EsRejectedExecutionException("rejected");
+            });
+        PipelinedBulkParser parser = new PipelinedBulkParser(bulkShardRequest, shard, executor, randomIntBetween(1, 4), logger);
+        WritePrimaryResult<BulkShardRequest, BulkShardResponse> result = TransportShardBulkAction.performOnPrimary(
+            bulkShardRequest, shard, null, threadPool::absoluteTimeInMillis, new NoopMappingUpdatePerformer(), parser);
+
+        assertThat(result.location, notNullValue());
+        assertThat(result.finalResponseIfSuccessful.getResponses(), arrayWithSize(items.length));
+        for (int i = 0; i < items.length; i++) {
+            BulkItemResponse response = result.finalResponseIfSuccessful.getResponses()[i];
+            assertThat(response.getItemId(), equalTo(i));
+            assertThat(response.getId(), equalTo("id_" + i));
+            if (i == malformedItem) {
+                // the failure is the same as without pipelining since the document is parsed again on the executing thread
+                assertTrue(response.isFailed());
+                assertThat(response.getFailure().getCause(), instanceOf(MapperParsingException.class));
+            } else {
+                assertFalse(response.isFailed());
+                assertThat(response.getResponse().getSeqNo(), equalTo(items[i].getPrimaryResponse().getResponse().getSeqNo()));
+            }
+        }
+        assertDocCount(shard, malformedItem == -1 ? items.length : items.length - 1);
+        closeShards(shard);
+    }
+
+    public void testCancelWaitsForRunningParseTasks() throws Exception {
+        BulkItemRequest[] items = new BulkItemRequest[randomIntBetween(2, 20)];
+        for (int i = 0; i < items.length; i++) {
+            IndexRequest writeRequest = new IndexRequest("index", "type", "id_" + i).source(Requests.INDEX_CONTENT_TYPE, "foo", "bar");
+            items[i] = new BulkItemRequest(i, writeRequest);
+        }
+        BulkShardRequest bulkShardRequest = new BulkShardRequest(shardId, RefreshPolicy.NONE, items);
+
+        CountDownLatch parsing = new CountDownLatch(1);
+        CountDownLatch releaseParsing = new CountDownLatch(1);
+        AtomicInteger runningParses = new AtomicInteger();
+        PipelinedBulkParser parser = new PipelinedBulkParser(bulkShardRequest, sourceToParse -> {
+            runningParses.incrementAndGet();
+            parsing.countDown();
+            try {
+                releaseParsing.await();
+            } catch (InterruptedException e) {
+                throw new AssertionError(e);
+            }
+            runningParses.decrementAndGet();
+            return null;
+        }, threadPool.executor(ThreadPool.Names.GENERIC), randomIntBetween(1, 4), logger);
+        parser.start();
+        parsing.await();
+
+        CountDownLatch cancelled = new CountDownLatch(1);
+        Thread thread = new Thread(() -> {
+            parser.cancel();
+            cancelled.countDown();
+        });
+        thread.start();
+        // the source bytes of the request may be released once cancel returns, so it must wait for the running parse
+        assertFalse(cancelled.await(100, TimeUnit.MILLISECONDS));
+        releaseParsing.countDown();
+        thread.join();
+        assertEquals(0, runningParses.get());
+    }
+
+    public void testPreParsedDocumentIsParsedAgainAfterMappingChange() throws Exception {
+        IndexShard shard = newStartedShard(true);
+        shard.mapperService().updateMapping(indexMetaData());
+
+        // parsed while [bar] is not mapped yet, so the parsed document holds a dynamic mapping update
+        IndexRequest request = new IndexRequest("index", "type", "id").source(Requests.INDEX_CONTENT_TYPE, "bar", "1");
+        PreParsedDocument preParsedDoc = shard.preParseIndexOperationOnPrimary(TransportShardBulkAction.sourceToParse(request));
+
+        shard.mapperService().merge("type", new CompressedXContent("{\"properties\":{\"bar\":{\"type\":\"long\"}}}"),
+            MapperService.MergeReason.MAPPING_UPDATE, false);
+
+        Engine.IndexResult result = TransportShardBulkAction.executeIndexRequestOnPrimary(request, shard, preParsedDoc,
+            new MappingUpdatePerformer() {
+                @Override
+                public void updateMappings(Mapping update, ShardId shardId, String type) {
+                    fail("the document should have been parsed again with the updated mapping");
+                }
+
+                @Override
+                public void verifyMappings(Mapping update, ShardId shardId) {
+                    fail("the document should have been parsed again with the updated mapping");
+                }
+            });
+        assertFalse(result.hasFailure());
+        assertDocCount(shard, 1);
+        closeShards(shard);
+    }
+
     public void testExecuteBulkIndexRequestWithRejection() throws Exception {
         IndexMetaData metaData = indexMetaData();
         IndexShard shard = newStartedShard(true);
@@ -635,7 +754,7 @@ public class TransportShardBulkActionTests extends IndexShardTestCase {
         assertThat("mappings were \"verified\" once", verifyCalled.get(), equalTo(1));
 
         // Verify that the shard "executed" the operation twice
-        verify(shard, times(2)).applyIndexOperationOnPrimary(anyLong(), any(), any(), anyLong(), anyBoolean(), any());
+        verify(shard, times(2)).applyIndexOperationOnPrimary(anyLong(), any(), any(), any(), anyLong(), anyBoolean(), any());
 
         // Update the mapping, so the next mapping updater doesn't do anything
         final MapperService mapperService = shard.mapperService();
@@ -657,7 +776,7 @@ public class TransportShardBulkActionTests extends IndexShardTestCase {
 
         // Verify that the shard "executed" the operation only once (2 for previous invocations plus
         // 1 for this execution)
-        verify(shard, times(3)).applyIndexOperationOnPrimary(anyLong(), any(), any(), anyLong(), anyBoolean(), any());
+        verify(shard, times(3)).applyIndexOperationOnPrimary(anyLong(), any(), any(), any(), anyLong(), anyBoolean(), any());
 
         closeShards(shard);
     }
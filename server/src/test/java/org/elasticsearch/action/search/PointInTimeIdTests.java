@@ -0,0 +1,59 @@
+/*
+ * Licensed to Elasticsearch under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Elasticsearch licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.elasticsearch.action.search;
+
+import org.elasticsearch.index.Index;
+import org.elasticsearch.index.shard.ShardId;
+import org.elasticsearch.test.ESTestCase;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+public class PointInTimeIdTests extends ESTestCase {
+
+    public void testEncodeDecode() {
+        final String[] indices = generateRandomStringArray(5, 10, false, true);
+        final Map<ShardId, PointInTimeId.ReaderId> shards = new LinkedHashMap<>();
+        final int numIndices = randomIntBetween(0, 5);
+        for (int i = 0; i < numIndices; i++) {
+            final Index index = new Index(randomAlphaOfLength(10), randomAlphaOfLength(10));
+            final int numShards = randomIntBetween(1, 5);
+            for (int shard = 0; shard < numShards; shard++) {
+                shards.put(new ShardId(index, shard), new PointInTimeId.ReaderId(randomAlphaOfLength(10), randomNonNegativeLong()));
+            }
+        }
+        final PointInTimeId decoded = PointInTimeId.decode(PointInTimeId.encode(indices, shards));
+        assertArrayEquals(indices, decoded.getIndices());
+        assertEquals(shards.keySet(), decoded.getShards().keySet());
+        for (Map.Entry<ShardId, PointInTimeId.ReaderId> entry : shards.entrySet()) {
+            final PointInTimeId.ReaderId readerId = decoded.getShards().get(entry.getKey());
+            assertEquals(entry.getValue().getNodeId(), readerId.getNodeId());
+            assertEquals(entry.getValue().getId(), readerId.getId());
+        }
+    }
+
+    public void testDecodeInvalidId() {
+        IllegalArgumentException e = expectThrows(IllegalArgumentException.class, () -> PointInTimeId.decode("invalid"));
+        assertEquals("Cannot parse point in time id", e.getMessage());
+        e = expectThrows(IllegalArgumentException.class,
+            () -> PointInTimeId.decode(PointInTimeId.encode(new String[] {"index"}, new LinkedHashMap<>()) + "AAAA"));
+        assertEquals("Cannot parse point in time id", e.getMessage());
+    }
+}
@@ -27,15 +27,24 @@ import org.elasticsearch.cluster.routing.GroupShardsIterator;
 import org.elasticsearch.cluster.routing.RecoverySource;
 import org.elasticsearch.cluster.routing.ShardRouting;
 import org.elasticsearch.cluster.routing.UnassignedInfo;
+import org.elasticsearch.cluster.service.ClusterService;
 import org.elasticsearch.common.Strings;
 import org.elasticsearch.common.io.stream.StreamInput;
 import org.elasticsearch.common.io.stream.StreamOutput;
+import org.elasticsearch.common.settings.ClusterSettings;
 import org.elasticsearch.common.settings.Settings;
+import org.elasticsearch.common.unit.TimeValue;
+import org.elasticsearch.common.util.concurrent.ConcurrentCollections;
 import org.elasticsearch.index.Index;
 import org.elasticsearch.index.shard.ShardId;
+import org.elasticsearch.node.AdaptiveSelectionStats;
+import org.elasticsearch.node.ResponseCollectorService;
 import org.elasticsearch.search.SearchPhaseResult;
 import org.elasticsearch.search.internal.AliasFilter;
+import org.elasticsearch.tasks.TaskId;
 import org.elasticsearch.test.ESTestCase;
+import org.elasticsearch.threadpool.TestThreadPool;
+import org.elasticsearch.threadpool.ThreadPool;
 import org.elasticsearch.transport.Transport;
 import org.elasticsearch.transport.TransportException;
 import org.elasticsearch.transport.TransportRequest;
@@ -46,6 +55,7 @@ import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
@@ -55,6 +65,9 @@ import java.util.concurrent.Executors;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicReference;
 
+import static org.hamcrest.Matchers.lessThanOrEqualTo;
+import static org.mockito.Mockito.mock;
+
 public class SearchAsyncActionTests extends ESTestCase {
 
     public void testSkipSearchShards() throws InterruptedException {
@@ -358,6 +371,245 @@ public class SearchAsyncActionTests extends ESTestCase {
         executor.shutdown();
     }
 
+    public void testHedgedRequestWins() throws Exception {
+        runHedgedSearch(HedgeOutcome.WINS);
+    }
+
+    public void testHedgedRequestLoses() throws Exception {
+        runHedgedSearch(HedgeOutcome.LOSES);
+    }
+
+    public void testHedgedRequestFails() throws Exception {
+        runHedgedSearch(HedgeOutcome.FAILS);
+    }
+
+    private enum HedgeOutcome {
+        WINS, LOSES, FAILS
+    }
+
+    /**
+     * Runs a search where the requests to the primary node are slow to answer so that they are hedged to the replica node.
+     * Depending on <code>outcome</code> the hedged request answers first, answers once the search is done and must be
+     * discarded, or fails while the original request is still running.
+     */
+    private void runHedgedSearch(HedgeOutcome outcome) throws Exception {
+        SearchRequest request = new SearchRequest();
+        request.setMaxConcurrentShardRequests(randomIntBetween(1, 10));
+        CountDownLatch latch = new CountDownLatch(1);
+        ActionListener<SearchResponse> responseListener = new ActionListener<SearchResponse>() {
+            @Override
+            public void onResponse(SearchResponse searchResponse) {
+            }
+
+            @Override
+            public void onFailure(Exception e) {
+                logger.warn("test failed", e);
+                fail(e.getMessage());
+            }
+        };
+        DiscoveryNode primaryNode = new DiscoveryNode("node_1", buildNewFakeTransportAddress(), Version.CURRENT);
+        DiscoveryNode replicaNode = new DiscoveryNode("node_2", buildNewFakeTransportAddress(), Version.CURRENT);
+        GroupShardsIterator<SearchShardIterator> shardsIter = getShardsIter("idx",
+            new OriginalIndices(new String[]{"idx"}, IndicesOptions.strictExpandOpenAndForbidClosed()),
+            randomIntBetween(1, 10), true, primaryNode, replicaNode);
+
+        ThreadPool threadPool = new TestThreadPool(getTestName());
+        ExecutorService executor = Executors.newFixedThreadPool(randomIntBetween(1, 4));
+        ResponseCollectorService collector = new ResponseCollectorService(Settings.EMPTY, mock(ClusterService.class));
+        for (int i = 0; i < 10; i++) {
+            collector.addNodeStatistics(primaryNode.getId(), 1, TimeValue.timeValueMillis(1).nanos(), 1);
+        }
+        Settings hedgingSettings = Settings.builder()
+            .put(SearchHedgingService.HEDGING_ENABLED_SETTING.getKey(), true)
+            .put(SearchHedgingService.HEDGING_BUDGET_SETTING.getKey(), 1.0)
+            .put(SearchHedgingService.HEDGING_MIN_DELAY_SETTING.getKey(), "1ms")
+            .build();
+        Map<SearchTask, DiscoveryNode> taskToNode = new ConcurrentHashMap<>();
+        List<SearchTask> cancelledTasks = Collections.synchronizedList(new ArrayList<>());
+        AtomicInteger numUnregisteredTasks = new AtomicInteger();
+        SearchHedgingService hedgingService = new SearchHedgingService(hedgingSettings,
+            new ClusterSettings(hedgingSettings, ClusterSettings.BUILT_IN_CLUSTER_SETTINGS), threadPool, null, collector) {
+            @Override
+            void unregisterHedgeTask(SearchTask hedgeTask) {
+                numUnregisteredTasks.incrementAndGet();
+            }
+
+            @Override
+            void cancelHedgeTask(SearchTask hedgeTask) {
+                cancelledTasks.add(hedgeTask);
+            }
+        };
+        assertTrue(hedgingService.canHedge(request));
+
+        Map<Long, DiscoveryNode> contextIdToNode = new ConcurrentHashMap<>();
+        Set<Long> freedContexts = ConcurrentCollections.newConcurrentSet();
+        SearchTransportService transportService = new SearchTransportService(Settings.EMPTY, null, null) {
+            @Override
+            public void sendFreeContext(Transport.Connection connection, long contextId, OriginalIndices originalIndices) {
+                assertEquals(contextIdToNode.get(contextId), connection.getNode());
+                assertTrue(freedContexts.add(contextId));
+            }
+        };
+        Map<String, Transport.Connection> lookup = new HashMap<>();
+        lookup.put(primaryNode.getId(), new MockConnection(primaryNode));
+        lookup.put(replicaNode.getId(), new MockConnection(replicaNode));
+        Map<String, AliasFilter> aliasFilters = Collections.singletonMap("_na_", new AliasFilter(null, Strings.EMPTY_ARRAY));
+        AtomicInteger contextIdGenerator = new AtomicInteger(0);
+        AtomicInteger numSlowRequests = new AtomicInteger();
+        Map<ShardId, CountDownLatch> hedgesSent = new ConcurrentHashMap<>();
+        CountDownLatch releaseLosers = new CountDownLatch(1);
+        AtomicReference<InitialSearchPhase.SearchPhaseResults<TestSearchPhaseResult>> finalResults = new AtomicReference<>();
+        AbstractSearchAsyncAction asyncAction =
+            new AbstractSearchAsyncAction<TestSearchPhaseResult>(
+                "test",
+                logger,
+                transportService,
+                (cluster, node) -> {
+                    assert cluster == null : "cluster was not null: " + cluster;
+                    return lookup.get(node); },
+                aliasFilters,
+                Collections.emptyMap(),
+                executor,
+                request,
+                responseListener,
+                shardsIter,
+                new TransportSearchAction.SearchTimeProvider(0, 0, () -> 0),
+                0,
+                null,
+                new InitialSearchPhase.ArraySearchPhaseResults<>(shardsIter.size()),
+                request.getMaxConcurrentShardRequests(),
+                SearchResponse.Clusters.EMPTY) {
+
+                @Override
+                protected void executePhaseOnShard(SearchShardIterator shardIt, ShardRouting shard,
+                                                   SearchActionListener<TestSearchPhaseResult> listener) {
+                    throw new AssertionError("requests to the primary node are hedgeable and must be sent as the child of a task");
+                }
+
+                private void executeSlowPhaseOnShard(ShardRouting shard, SearchActionListener<TestSearchPhaseResult> listener) {
+                    TestSearchPhaseResult result = newResult(shard);
+                    numSlowRequests.incrementAndGet();
+                    CountDownLatch hedgeSent = hedgesSent.computeIfAbsent(shard.shardId(), id -> new CountDownLatch(1));
+                    new Thread(() -> {
+                        try {
+                            if (outcome == HedgeOutcome.WINS) {
+                                releaseLosers.await();
+                            } else {
+                                hedgeSent.await();
+                            }
+                        } catch (InterruptedException e) {
+                            throw new AssertionError(e);
+                        }
+                        listener.onResponse(result);
+                    }).start();
+                }
+
+                @Override
+                ShardRequestHedger<TestSearchPhaseResult> getHedger() {
+                    return new ShardRequestHedger<TestSearchPhaseResult>(hedgingService) {
+                        @Override
+                        SearchTask registerHedgeTask() {
+                            return new SearchTask(randomNonNegativeLong(), "transport", SearchHedgingService.HEDGE_TASK_ACTION_NAME,
+                                "", TaskId.EMPTY_TASK_ID, Collections.emptyMap());
+                        }
+
+                        @Override
+                        void executeHedgedPhaseOnShard(SearchShardIterator shardIt, ShardRouting shard, SearchTask hedgeTask,
+                                                       SearchActionListener<TestSearchPhaseResult> listener) {
+                            assertNotNull(hedgeTask);
+                            DiscoveryNode node = getConnection(null, shard.currentNodeId()).getNode();
+                            assertNull(taskToNode.put(hedgeTask, node));
+                            if (node.equals(primaryNode)) {
+                                executeSlowPhaseOnShard(shard, listener);
+                                return;
+                            }
+                            assertEquals(replicaNode, node);
+                            TestSearchPhaseResult result = newResult(shard);
+                            hedgesSent.computeIfAbsent(shard.shardId(), id -> new CountDownLatch(1)).countDown();
+                            if (outcome == HedgeOutcome.WINS) {
+                                listener.onResponse(result);
+                            } else if (outcome == HedgeOutcome.FAILS) {
+                                listener.onFailure(new RuntimeException("boom"));
+                            } else {
+                                new Thread(() -> {
+                                    try {
+                                        releaseLosers.await();
+                                    } catch (InterruptedException e) {
+                                        throw new AssertionError(e);
+                                    }
+                                    listener.onResponse(result);
+                                }).start();
+                            }
+                        }
+                    };
+                }
+
+                private TestSearchPhaseResult newResult(ShardRouting shard) {
+                    DiscoveryNode node = getConnection(null, shard.currentNodeId()).getNode();
+                    TestSearchPhaseResult result = new TestSearchPhaseResult(contextIdGenerator.incrementAndGet(), node);
+                    contextIdToNode.put(result.getRequestId(), node);
+                    return result;
+                }
+
+                @Override
+                protected SearchPhase getNextPhase(SearchPhaseResults<TestSearchPhaseResult> results, SearchPhaseContext context) {
+                    return new SearchPhase("test") {
+                        @Override
+                        public void run() throws IOException {
+                            finalResults.set(results);
+                            latch.countDown();
+                        }
+                    };
+                }
+            };
+        try {
+            asyncAction.start();
+            latch.await();
+            SearchResponse searchResponse = asyncAction.buildSearchResponse(null, null);
+            assertEquals(0, searchResponse.getFailedShards());
+            assertEquals(shardsIter.size(), searchResponse.getSuccessfulShards());
+            int numHedges = numSlowRequests.get();
+            boolean hedgeWins = outcome == HedgeOutcome.WINS;
+            DiscoveryNode winner = hedgeWins ? replicaNode : primaryNode;
+            long numWinnerResults = finalResults.get().getSuccessfulResults().filter(r -> r.node.equals(winner)).count();
+            if (hedgeWins) {
+                assertEquals(numWinnerResults, shardsIter.size());
+            } else {
+                assertEquals(numWinnerResults, numHedges);
+            }
+            AdaptiveSelectionStats stats = collector.getAdaptiveStats(Collections.emptyMap());
+            assertEquals(numHedges, stats.getHedgedSearches().getOrDefault(replicaNode.getId(), 0L).intValue());
+            assertEquals(hedgeWins ? numHedges : 0, stats.getHedgedSearchesWon().getOrDefault(replicaNode.getId(), 0L).intValue());
+            if (outcome == HedgeOutcome.FAILS) {
+                // the original request may answer before the failure of the hedged request is processed
+                assertThat(cancelledTasks.size(), lessThanOrEqualTo(numHedges));
+            } else {
+                assertEquals(numHedges, cancelledTasks.size());
+            }
+            // the copy that lost is cancelled, whether it is the original request or the hedged one
+            DiscoveryNode loser = hedgeWins ? primaryNode : replicaNode;
+            assertEquals(cancelledTasks.size(), new HashSet<>(cancelledTasks).size());
+            for (SearchTask task : cancelledTasks) {
+                assertEquals(loser, taskToNode.get(task));
+            }
+            assertTrue(freedContexts.isEmpty());
+
+            releaseLosers.countDown();
+            assertBusy(() -> {
+                assertEquals(outcome == HedgeOutcome.FAILS ? 0 : numHedges, freedContexts.size());
+                // both the original request and the hedged one were sent as the child of their own task
+                assertEquals(2 * numHedges, numUnregisteredTasks.get());
+            });
+            for (long contextId : freedContexts) {
+                assertEquals(hedgeWins ? primaryNode : replicaNode, contextIdToNode.get(contextId));
+            }
+        } finally {
+            releaseLosers.countDown();
+            executor.shutdown();
+            terminate(threadPool);
+        }
+    }
+
     static GroupShardsIterator<SearchShardIterator> getShardsIter(String index, OriginalIndices originalIndices, int numShards,
                                                      boolean doReplicas, DiscoveryNode primaryNode, DiscoveryNode replicaNode) {
         ArrayList<SearchShardIterator> list = new ArrayList<>();
@@ -31,9 +31,12 @@ import org.elasticsearch.search.DocValueFormat;
 import org.elasticsearch.search.SearchPhaseResult;
 import org.elasticsearch.search.SearchShardTarget;
 import org.elasticsearch.search.aggregations.AggregationBuilders;
+import org.elasticsearch.search.aggregations.BucketOrder;
 import org.elasticsearch.search.aggregations.InternalAggregation;
 import org.elasticsearch.search.aggregations.InternalAggregations;
+import org.elasticsearch.search.aggregations.bucket.terms.LongTerms;
 import org.elasticsearch.search.aggregations.metrics.max.InternalMax;
+import org.elasticsearch.search.aggregations.metrics.sum.InternalSum;
 import org.elasticsearch.search.builder.SearchSourceBuilder;
 import org.elasticsearch.search.fetch.FetchSearchResult;
 import org.elasticsearch.search.SearchHit;
@@ -58,6 +61,7 @@ import java.util.stream.Collectors;
 import java.util.stream.Stream;
 
 import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.greaterThan;
 import static org.hamcrest.Matchers.instanceOf;
 import static org.hamcrest.Matchers.lessThanOrEqualTo;
 import static org.hamcrest.Matchers.not;
@@ -315,13 +319,15 @@ public class SearchPhaseControllerTests extends ESTestCase {
         result.setShardIndex(1);
         consumer.consumeResult(result);
         int numTotalReducePhases = 1;
+        // aggs are always consumed incrementally, the top docs only if there are more shards than the buffer size
+        assertThat(consumer, instanceOf(SearchPhaseController.QueryPhaseResultConsumer.class));
         if (bufferSize == 2) {
-            assertThat(consumer, instanceOf(SearchPhaseController.QueryPhaseResultConsumer.class));
             assertEquals(1, ((SearchPhaseController.QueryPhaseResultConsumer)consumer).getNumReducePhases());
             assertEquals(2, ((SearchPhaseController.QueryPhaseResultConsumer)consumer).getNumBuffered());
             numTotalReducePhases++;
         } else {
-            assertThat(consumer, not(instanceOf(SearchPhaseController.QueryPhaseResultConsumer.class)));
+            assertEquals(0, ((SearchPhaseController.QueryPhaseResultConsumer)consumer).getNumReducePhases());
+            assertEquals(3, ((SearchPhaseController.QueryPhaseResultConsumer)consumer).getNumBuffered());
         }
 
         SearchPhaseController.ReducedQueryPhase reduce = consumer.reduce();
@@ -400,6 +406,77 @@ public class SearchPhaseControllerTests extends ESTestCase {
         assertEquals(expectedNumResults, reduce.totalHits);
     }
 
+    public void testConsumerAccumulatesBucketAggs() {
+        int expectedNumResults = randomIntBetween(50, 500);
+        int bufferSize = randomIntBetween(2, 10);
+        int numTerms = randomIntBetween(1, 20);
+        SearchRequest request = new SearchRequest();
+        request.source(new SearchSourceBuilder().aggregation(AggregationBuilders.terms("terms")).size(0));
+        request.setBatchedReduceSize(bufferSize);
+        InitialSearchPhase.ArraySearchPhaseResults<SearchPhaseResult> consumer =
+            searchPhaseController.newSearchPhaseResults(request, expectedNumResults);
+        assertThat(consumer, instanceOf(SearchPhaseController.QueryPhaseResultConsumer.class));
+        for (int i = 0; i < expectedNumResults; i++) {
+            QuerySearchResult result = new QuerySearchResult(i, new SearchShardTarget("node", new Index("a", "b"), i, null));
+            result.topDocs(new TopDocs(numTerms, new ScoreDoc[0], Float.NaN), new DocValueFormat[0]);
+            List<LongTerms.Bucket> buckets = new ArrayList<>();
+            for (int term = 0; term < numTerms; term++) {
+                InternalAggregations subAggs = new InternalAggregations(Collections.singletonList(
+                    new InternalSum("sum", term, DocValueFormat.RAW, Collections.emptyList(), Collections.emptyMap())));
+                buckets.add(new LongTerms.Bucket(term, 1, subAggs, false, 0, DocValueFormat.RAW));
+            }
+            result.aggregations(new InternalAggregations(Collections.singletonList(new LongTerms("terms", BucketOrder.key(true),
+                numTerms, 1, Collections.emptyList(), Collections.emptyMap(), DocValueFormat.RAW, numTerms, false, 0, buckets, 0))));
+            result.setShardIndex(i);
+            result.size(0);
+            consumer.consumeResult(result);
+            // the aggregations are released as soon as they are accumulated
+            expectThrows(IllegalStateException.class, result::consumeAggs);
+        }
+        SearchPhaseController.ReducedQueryPhase reduce = consumer.reduce();
+        LongTerms terms = (LongTerms) reduce.aggregations.asList().get(0);
+        assertEquals(numTerms, terms.getBuckets().size());
+        for (LongTerms.Bucket bucket : terms.getBuckets()) {
+            assertEquals(expectedNumResults, bucket.getDocCount());
+            InternalSum sum = bucket.getAggregations().get("sum");
+            assertEquals(expectedNumResults * bucket.getKeyAsNumber().doubleValue(), sum.getValue(), 0.0D);
+        }
+    }
+
+    public void testConsumerReleasesAggsWithFewerShardsThanBufferSize() {
+        int expectedNumResults = randomIntBetween(1, 100);
+        SearchRequest request = new SearchRequest();
+        request.source(new SearchSourceBuilder().aggregation(AggregationBuilders.terms("terms")).size(randomIntBetween(0, 10)));
+        if (randomBoolean()) {
+            request.setBatchedReduceSize(randomIntBetween(expectedNumResults + 1, 1000));
+        } // the default batched reduce size is larger than the number of shards
+        assertThat(request.getBatchedReduceSize(), greaterThan(expectedNumResults));
+        InitialSearchPhase.ArraySearchPhaseResults<SearchPhaseResult> consumer =
+            searchPhaseController.newSearchPhaseResults(request, expectedNumResults);
+        assertThat(consumer, instanceOf(SearchPhaseController.QueryPhaseResultConsumer.class));
+        long expectedDocCount = 0;
+        for (int i = 0; i < expectedNumResults; i++) {
+            QuerySearchResult result = new QuerySearchResult(i, new SearchShardTarget("node", new Index("a", "b"), i, null));
+            result.topDocs(new TopDocs(1, new ScoreDoc[0], Float.NaN), new DocValueFormat[0]);
+            long docCount = randomIntBetween(1, 10);
+            expectedDocCount += docCount;
+            List<LongTerms.Bucket> buckets = Collections.singletonList(
+                new LongTerms.Bucket(0, docCount, InternalAggregations.EMPTY, false, 0, DocValueFormat.RAW));
+            result.aggregations(new InternalAggregations(Collections.singletonList(new LongTerms("terms", BucketOrder.key(true),
+                1, 1, Collections.emptyList(), Collections.emptyMap(), DocValueFormat.RAW, 1, false, 0, buckets, 0))));
+            result.setShardIndex(i);
+            result.size(0);
+            consumer.consumeResult(result);
+            // the aggregations of the shard are released as soon as it responds rather than at the final reduce
+            expectThrows(IllegalStateException.class, result::consumeAggs);
+        }
+        assertEquals(0, ((SearchPhaseController.QueryPhaseResultConsumer) consumer).getNumReducePhases());
+        SearchPhaseController.ReducedQueryPhase reduce = consumer.reduce();
+        assertEquals(1, reduce.numReducePhases);
+        LongTerms terms = (LongTerms) reduce.aggregations.asList().get(0);
+        assertEquals(1, terms.getBuckets().size());
+        assertEquals(expectedDocCount, terms.getBuckets().get(0).getDocCount());
+    }
 
     public void testConsumerOnlyHits() throws InterruptedException {
         int expectedNumResults = randomIntBetween(1, 100);
@@ -454,7 +531,7 @@ public class SearchPhaseControllerTests extends ESTestCase {
             request.setBatchedReduceSize(bufferSize);
             InitialSearchPhase.ArraySearchPhaseResults<SearchPhaseResult> consumer
                 = searchPhaseController.newSearchPhaseResults(request, expectedNumResults);
-            if ((hasAggs || hasTopDocs) && expectedNumResults > bufferSize) {
+            if (hasAggs || (hasTopDocs && expectedNumResults > bufferSize)) {
                 assertThat("expectedNumResults: " + expectedNumResults + " bufferSize: " + bufferSize,
                     consumer, instanceOf(SearchPhaseController.QueryPhaseResultConsumer.class));
             } else {
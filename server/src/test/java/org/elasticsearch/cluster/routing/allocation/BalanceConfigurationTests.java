@@ -37,7 +37,11 @@ import org.elasticsearch.cluster.routing.ShardRouting;
 import org.elasticsearch.cluster.routing.ShardRoutingState;
 import org.elasticsearch.cluster.routing.allocation.allocator.BalancedShardsAllocator;
 import org.elasticsearch.cluster.routing.allocation.allocator.ShardsAllocator;
+import org.elasticsearch.cluster.routing.allocation.decider.AllocationDecider;
+import org.elasticsearch.cluster.routing.allocation.decider.AllocationDeciders;
 import org.elasticsearch.cluster.routing.allocation.decider.ClusterRebalanceAllocationDecider;
+import org.elasticsearch.cluster.routing.allocation.decider.Decision;
+import org.elasticsearch.cluster.routing.allocation.decider.SameShardAllocationDecider;
 import org.elasticsearch.common.logging.Loggers;
 import org.elasticsearch.common.settings.ClusterSettings;
 import org.elasticsearch.common.settings.Settings;
@@ -45,7 +49,10 @@ import org.elasticsearch.gateway.GatewayAllocator;
 import org.elasticsearch.test.gateway.TestGatewayAllocator;
 import org.hamcrest.Matchers;
 
+import java.util.Arrays;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
 
 import static org.elasticsearch.cluster.routing.ShardRoutingState.INITIALIZING;
 import static org.elasticsearch.cluster.routing.ShardRoutingState.STARTED;
@@ -108,6 +115,77 @@ public class BalanceConfigurationTests extends ESAllocationTestCase {
 
     }
 
+    public void testIncrementalIndexBalance() {
+        final float balanceThreshold = 1.0f;
+        Settings.Builder settings = Settings.builder();
+        settings.put(ClusterRebalanceAllocationDecider.CLUSTER_ROUTING_ALLOCATION_ALLOW_REBALANCE_SETTING.getKey(),
+            ClusterRebalanceAllocationDecider.ClusterRebalanceType.ALWAYS.toString());
+        settings.put(BalancedShardsAllocator.INDEX_BALANCE_FACTOR_SETTING.getKey(), 1.0f);
+        settings.put(BalancedShardsAllocator.SHARD_BALANCE_FACTOR_SETTING.getKey(), 0.0f);
+        settings.put(BalancedShardsAllocator.THRESHOLD_SETTING.getKey(), balanceThreshold);
+        settings.put(BalancedShardsAllocator.INCREMENTAL_BALANCE_SETTING.getKey(), true);
+
+        AllocationService strategy = createAllocationService(settings.build(), new NoopGatewayAllocator());
+
+        ClusterState clusterState = initCluster(strategy);
+        assertIndexBalance(clusterState.getRoutingTable(), clusterState.getRoutingNodes(), numberOfNodes, numberOfIndices,
+            numberOfReplicas, numberOfShards, balanceThreshold);
+
+        clusterState = addNode(clusterState, strategy);
+        assertIndexBalance(clusterState.getRoutingTable(), clusterState.getRoutingNodes(), numberOfNodes + 1, numberOfIndices,
+            numberOfReplicas, numberOfShards, balanceThreshold);
+
+        clusterState = removeNodes(clusterState, strategy);
+        assertIndexBalance(clusterState.getRoutingTable(), clusterState.getRoutingNodes(), (numberOfNodes + 1) - (numberOfNodes + 1) / 2,
+            numberOfIndices, numberOfReplicas, numberOfShards, balanceThreshold);
+    }
+
+    public void testIncrementalBalanceSkipsUnchangedIndices() {
+        Settings.Builder settings = Settings.builder();
+        settings.put(BalancedShardsAllocator.INDEX_BALANCE_FACTOR_SETTING.getKey(), 1.0f);
+        settings.put(BalancedShardsAllocator.SHARD_BALANCE_FACTOR_SETTING.getKey(), 0.0f);
+        settings.put(BalancedShardsAllocator.INCREMENTAL_BALANCE_SETTING.getKey(), true);
+        final Set<String> balancedIndices = new HashSet<>();
+        final AllocationDecider countingDecider = new AllocationDecider(Settings.EMPTY) {
+            @Override
+            public Decision canAllocate(IndexMetaData indexMetaData, RoutingNode node, RoutingAllocation allocation) {
+                // only called while balancing
+                balancedIndices.add(indexMetaData.getIndex().getName());
+                return Decision.YES;
+            }
+        };
+        final ClusterSettings clusterSettings = new ClusterSettings(settings.build(), ClusterSettings.BUILT_IN_CLUSTER_SETTINGS);
+        final AllocationDeciders deciders = new AllocationDeciders(settings.build(),
+            Arrays.asList(new SameShardAllocationDecider(settings.build(), clusterSettings), countingDecider));
+        AllocationService strategy = new AllocationService(settings.build(), deciders, new NoopGatewayAllocator(),
+            new BalancedShardsAllocator(settings.build(), clusterSettings), EmptyClusterInfoService.INSTANCE);
+
+        // starting the shards updates the in-sync allocation ids of all indices so the first reroute balances them again
+        ClusterState clusterState = strategy.reroute(initCluster(strategy), "reroute");
+        balancedIndices.clear();
+        clusterState = strategy.reroute(clusterState, "reroute");
+        assertThat(balancedIndices, Matchers.empty());
+
+        // each index holds at most one shard per node, so all of them are balanced and only the changed one is balanced again
+        balancedIndices.clear();
+        IndexMetaData changed = IndexMetaData.builder(clusterState.metaData().index("test0"))
+            .settings(Settings.builder().put(clusterState.metaData().index("test0").getSettings()).put("index.priority", 10)).build();
+        clusterState = ClusterState.builder(clusterState).metaData(MetaData.builder(clusterState.metaData()).put(changed, true)).build();
+        clusterState = strategy.reroute(clusterState, "reroute");
+        assertThat(balancedIndices, Matchers.contains("test0"));
+
+        // nothing changed since
+        balancedIndices.clear();
+        clusterState = strategy.reroute(clusterState, "reroute");
+        assertThat(balancedIndices, Matchers.empty());
+
+        // disabling the incremental mode balances all indices
+        clusterSettings.applySettings(Settings.builder().put(BalancedShardsAllocator.INCREMENTAL_BALANCE_SETTING.getKey(), false).build());
+        balancedIndices.clear();
+        strategy.reroute(clusterState, "reroute");
+        assertThat(balancedIndices.size(), Matchers.equalTo(numberOfIndices));
+    }
+
     private ClusterState initCluster(AllocationService strategy) {
         MetaData.Builder metaDataBuilder = MetaData.builder();
         RoutingTable.Builder routingTableBuilder = RoutingTable.builder();
@@ -47,6 +47,7 @@ import java.util.stream.Collectors;
 import static org.hamcrest.CoreMatchers.instanceOf;
 import static org.hamcrest.Matchers.empty;
 import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.lessThanOrEqualTo;
 
 public class CacheTests extends ESTestCase {
     private int numberOfEntries;
@@ -378,6 +379,96 @@ public class CacheTests extends ESTestCase {
     }
 
 
+    // same as testPromotion but the reads are recorded in the read buffers and promoted when the cache is refreshed
+    public void testPromotionWithBufferedAccessRecording() {
+        AtomicLong now = new AtomicLong();
+        Cache<Integer, String> cache = new Cache<Integer, String>() {
+            @Override
+            protected long now() {
+                return now.get();
+            }
+        };
+        cache.setExpireAfterAccessNanos(1);
+        cache.setBufferedAccessRecording(true);
+        assertTrue(cache.isBufferedAccessRecording());
+        now.set(0);
+        for (int i = 0; i < numberOfEntries; i++) {
+            cache.put(i, Integer.toString(i));
+        }
+        now.set(1);
+        Set<Integer> promotedKeys = new HashSet<>();
+        for (int i = 0; i < numberOfEntries; i++) {
+            if (rarely()) {
+                cache.get(i);
+                promotedKeys.add(i);
+            }
+        }
+        now.set(2);
+        cache.refresh();
+        assertEquals(promotedKeys.size(), cache.count());
+        for (int i = 0; i < numberOfEntries; i++) {
+            if (promotedKeys.contains(i)) {
+                assertNotNull(cache.get(i));
+            } else {
+                assertNull(cache.get(i));
+            }
+        }
+    }
+
+    // read some entries, then insert as many new entries as were not read and check that exactly those were evicted
+    public void testEvictionOrderWithBufferedAccessRecording() {
+        List<Integer> evictedKeys = new ArrayList<>();
+        Cache<Integer, String> cache =
+                CacheBuilder.<Integer, String>builder()
+                        .setMaximumWeight(numberOfEntries)
+                        .setBufferedAccessRecording(true)
+                        .removalListener(notification -> {
+                            assertEquals(RemovalNotification.RemovalReason.EVICTED, notification.getRemovalReason());
+                            evictedKeys.add(notification.getKey());
+                        })
+                        .build();
+        for (int i = 0; i < numberOfEntries; i++) {
+            cache.put(i, Integer.toString(i));
+        }
+        List<Integer> notReadKeys = new ArrayList<>();
+        for (int i = 0; i < numberOfEntries; i++) {
+            if (randomBoolean()) {
+                assertEquals(Integer.toString(i), cache.get(i));
+            } else {
+                notReadKeys.add(i);
+            }
+        }
+        for (int i = 0; i < notReadKeys.size(); i++) {
+            cache.put(numberOfEntries + i, Integer.toString(numberOfEntries + i));
+        }
+        assertEquals(numberOfEntries, cache.count());
+        assertEquals(notReadKeys, evictedKeys);
+    }
+
+    public void testReadBufferDrainsInOrder() {
+        Cache.ReadBuffer<Integer, String> buffer = new Cache.ReadBuffer<>();
+        List<Integer> drained = new ArrayList<>();
+        int offered = randomIntBetween(1, Cache.ReadBuffer.SIZE - 1);
+        for (int i = 0; i < offered; i++) {
+            assertFalse(buffer.offer(new Cache.Entry<>(i, Integer.toString(i), 0)));
+        }
+        buffer.drain(entry -> drained.add(entry.key));
+        assertEquals(offered, drained.size());
+        for (int i = 0; i < offered; i++) {
+            assertEquals(i, (int) drained.get(i));
+        }
+        // a full buffer drops the entries until it is drained
+        drained.clear();
+        for (int i = 0; i < Cache.ReadBuffer.SIZE - 1; i++) {
+            assertFalse(buffer.offer(new Cache.Entry<>(i, Integer.toString(i), 0)));
+        }
+        assertTrue(buffer.offer(new Cache.Entry<>(-1, "-1", 0)));
+        assertTrue(buffer.offer(new Cache.Entry<>(-2, "-2", 0)));
+        buffer.drain(entry -> drained.add(entry.key));
+        assertEquals(Cache.ReadBuffer.SIZE, drained.size());
+        assertEquals(-1, (int) drained.get(Cache.ReadBuffer.SIZE - 1));
+    }
+
     // randomly invalidate some cached entries, then check that a lookup for each of those and only those keys is null
     public void testInvalidate() {
         Cache<Integer, String> cache = CacheBuilder.<Integer, String>builder().build();
@@ -824,4 +915,62 @@ public class CacheTests extends ESTestCase {
         cache.refresh();
         assertEquals(500, cache.count());
     }
+
+    // test that the LRU list stays consistent when concurrent reads are buffered while other threads modify the cache
+    public void testTortureWithBufferedAccessRecording() throws BrokenBarrierException, InterruptedException {
+        int numberOfThreads = randomIntBetween(2, 32);
+        AtomicLong removals = new AtomicLong();
+        final Cache<Integer, String> cache =
+                CacheBuilder.<Integer, String>builder()
+                        .setMaximumWeight(1000)
+                        .weigher((k, v) -> 2)
+                        .setBufferedAccessRecording(true)
+                        .removalListener(notification -> removals.incrementAndGet())
+                        .build();
+
+        AtomicLong inserts = new AtomicLong();
+        CyclicBarrier barrier = new CyclicBarrier(1 + numberOfThreads);
+        for (int i = 0; i < numberOfThreads; i++) {
+            Thread thread = new Thread(() -> {
+                try {
+                    barrier.await();
+                    Random random = new Random(random().nextLong());
+                    for (int j = 0; j < numberOfEntries; j++) {
+                        Integer key = random.nextInt(numberOfEntries);
+                        switch (random.nextInt(4)) {
+                            case 0:
+                                cache.put(key, Integer.toString(j));
+                                inserts.incrementAndGet();
+                                break;
+                            case 1:
+                                cache.invalidate(key);
+                                break;
+                            default:
+                                cache.get(key);
+                                break;
+                        }
+                    }
+                    barrier.await();
+                } catch (BrokenBarrierException | InterruptedException e) {
+                    throw new AssertionError(e);
+                }
+            });
+            thread.start();
+        }
+
+        // wait for all threads to be ready
+        barrier.await();
+        // wait for all threads to finish
+        barrier.await();
+
+        cache.refresh();
+        assertThat(cache.count(), is(lessThanOrEqualTo(500)));
+        assertEquals(2L * cache.count(), cache.weight());
+        assertEquals(inserts.get() - removals.get(), cache.count());
+        int keys = 0;
+        for (Integer ignored : cache.keys()) {
+            keys++;
+        }
+        assertEquals(cache.count(), keys);
+    }
 }
@@ -0,0 +1,143 @@
+/*
+ * Licensed to Elasticsearch under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Elasticsearch licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.elasticsearch.common.compress;
+
+import org.apache.lucene.util.LineFileDocs;
+import org.elasticsearch.common.bytes.BytesArray;
+import org.elasticsearch.common.bytes.BytesReference;
+import org.elasticsearch.common.io.stream.BytesStreamOutput;
+import org.elasticsearch.common.io.stream.InputStreamStreamInput;
+import org.elasticsearch.common.io.stream.StreamInput;
+import org.elasticsearch.common.io.stream.StreamOutput;
+import org.elasticsearch.test.ESTestCase;
+
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+public class LZ4CompressTests extends ESTestCase {
+
+    private final Compressor compressor = new LZ4Compressor();
+
+    public void testRandom() throws IOException {
+        for (int i = 0; i < 10; i++) {
+            doTest(randomBytes(randomIntBetween(0, 300000)));
+        }
+    }
+
+    public void testLineDocs() throws IOException {
+        try (LineFileDocs lineFileDocs = new LineFileDocs(random())) {
+            ByteArrayOutputStream bos = new ByteArrayOutputStream();
+            while (bos.size() < 200000) {
+                bos.write(lineFileDocs.nextDoc().get("body").getBytes(StandardCharsets.UTF_8));
+            }
+            final byte[] bytes = bos.toByteArray();
+            final BytesReference compressed = doTest(bytes);
+            assertTrue(compressed.length() < bytes.length);
+        }
+    }
+
+    public void testCompressorFactoryDetection() throws IOException {
+        final BytesReference compressed = compress(randomBytes(randomIntBetween(0, 100)));
+        assertTrue(compressor.isCompressed(compressed));
+        assertFalse(CompressorFactory.COMPRESSOR.isCompressed(compressed));
+        assertSame(CompressorFactory.LZ4_COMPRESSOR, CompressorFactory.compressor(compressed));
+        assertFalse(compressor.isCompressed(compress(CompressorFactory.COMPRESSOR, new byte[] {1, 2, 3})));
+        assertFalse(compressor.isCompressed(new BytesArray("{\"foo\":\"bar\"}")));
+    }
+
+    public void testTruncatedStream() throws IOException {
+        final byte[] bytes = randomBytes(randomIntBetween(1, 100000));
+        final BytesReference compressed = compress(bytes);
+        final BytesReference truncated = compressed.slice(0, randomIntBetween(4, compressed.length() - 1));
+        expectThrows(EOFException.class, () -> {
+            try (StreamInput in = compressor.streamInput(new InputStreamStreamInput(truncated.streamInput()))) {
+                in.readBytes(new byte[bytes.length], 0, bytes.length);
+                in.read();
+            }
+        });
+    }
+
+    public void testInvalidBlockLength() throws IOException {
+        final int length = randomBoolean() ? randomIntBetween(Integer.MIN_VALUE, -1)
+            : randomIntBetween(LZ4Compressor.BLOCK_SIZE + 1, Integer.MAX_VALUE);
+        final BytesStreamOutput bos = new BytesStreamOutput();
+        bos.writeBytes(new byte[] {'L', 'Z', '4', '\0'});
+        bos.writeVInt(length);
+        bos.writeBytes(randomBytes(randomIntBetween(0, 100)));
+        IOException e = expectThrows(IOException.class, () -> {
+            try (StreamInput in = compressor.streamInput(bos.bytes().streamInput())) {
+                in.read();
+            }
+        });
+        assertEquals("invalid LZ4 block length [" + length + "], must be between [1] and [" + LZ4Compressor.BLOCK_SIZE + "]",
+            e.getMessage());
+    }
+
+    public void testNotCompressed() {
+        IllegalArgumentException e = expectThrows(IllegalArgumentException.class,
+            () -> compressor.streamInput(new BytesArray("DFL\0abc").streamInput()));
+        assertEquals("Input stream is not compressed with LZ4!", e.getMessage());
+    }
+
+    private BytesReference doTest(byte[] bytes) throws IOException {
+        final BytesReference compressed = compress(bytes);
+        try (StreamInput in = compressor.streamInput(compressed.streamInput())) {
+            final byte[] uncompressed = new byte[bytes.length];
+            int offset = 0;
+            while (offset < uncompressed.length) {
+                if (randomBoolean()) {
+                    uncompressed[offset++] = in.readByte();
+                } else {
+                    final int read = in.read(uncompressed, offset, randomIntBetween(1, uncompressed.length - offset));
+                    assertNotEquals(-1, read);
+                    offset += read;
+                }
+            }
+            assertEquals(-1, in.read());
+            assertArrayEquals(bytes, uncompressed);
+        }
+        return compressed;
+    }
+
+    private BytesReference compress(byte[] bytes) throws IOException {
+        return compress(compressor, bytes);
+    }
+
+    private BytesReference compress(Compressor compressor, byte[] bytes) throws IOException {
+        final BytesStreamOutput bos = new BytesStreamOutput();
+        try (StreamOutput out = compressor.streamOutput(bos)) {
+            int offset = 0;
+            while (offset < bytes.length) {
+                final int length = randomIntBetween(1, bytes.length - offset);
+                out.writeBytes(bytes, offset, length);
+                offset += length;
+            }
+        }
+        return bos.bytes();
+    }
+
+    private static byte[] randomBytes(int length) {
+        final byte[] bytes = new byte[length];
+        random().nextBytes(bytes);
+        return bytes;
+    }
+}
@@ -25,6 +25,7 @@ import org.elasticsearch.Version;
 import org.elasticsearch.common.bytes.BytesArray;
 import org.elasticsearch.common.bytes.BytesReference;
 import org.elasticsearch.common.geo.GeoPoint;
+import org.elasticsearch.common.lease.Releasable;
 import org.elasticsearch.common.lucene.BytesRefs;
 import org.elasticsearch.common.util.BigArrays;
 import org.elasticsearch.test.ESTestCase;
@@ -335,6 +336,22 @@ public class BytesStreamsTests extends ESTestCase {
         out.close();
     }
 
+    public void testReadRetainedBytesReference() throws IOException {
+        BytesStreamOutput out = new BytesStreamOutput();
+        BytesReference first = new BytesArray(randomAlphaOfLengthBetween(1, 100));
+        out.writeBytesReference(first);
+        out.writeBytesReference(BytesArray.EMPTY);
+        out.writeBytesReference(first);
+        StreamInput in = new NamedWriteableAwareStreamInput(out.bytes().streamInput(), new NamedWriteableRegistry(Collections.emptyList()));
+        assertThat(in.readRetainedBytesReference(), equalTo(first));
+        // streams that do not read from a pooled buffer always copy, so releasing is a noop
+        try (Releasable ignored = in.retainBuffers()) {
+            assertThat(in.readRetainedBytesReference(), equalTo(BytesArray.EMPTY));
+            assertThat(in.readRetainedBytesReference(), equalTo(first));
+        }
+        assertEquals(0, in.available());
+    }
+
     public void testNamedWriteable() throws IOException {
         try (BytesStreamOutput out = new BytesStreamOutput()) {
             NamedWriteableRegistry namedWriteableRegistry = new NamedWriteableRegistry(Collections.singletonList(
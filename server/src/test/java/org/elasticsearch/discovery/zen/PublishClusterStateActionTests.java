@@ -36,8 +36,10 @@ import org.elasticsearch.cluster.node.DiscoveryNode;
 import org.elasticsearch.cluster.node.DiscoveryNodes;
 import org.elasticsearch.common.Nullable;
 import org.elasticsearch.common.Randomness;
+import org.elasticsearch.common.bytes.BytesReference;
 import org.elasticsearch.common.collect.ImmutableOpenMap;
 import org.elasticsearch.common.collect.Tuple;
+import org.elasticsearch.common.compress.CompressorFactory;
 import org.elasticsearch.common.io.stream.NamedWriteableRegistry;
 import org.elasticsearch.common.io.stream.StreamOutput;
 import org.elasticsearch.common.settings.ClusterSettings;
@@ -752,6 +754,8 @@ public class PublishClusterStateActionTests extends ESTestCase {
         // Sent, unsuccessfully, as a diff and then retried as a full update
         assertPublishClusterStateStats("nodeA: after unsuccessful diff update", nodeA, 0, 0, 0);
         assertPublishClusterStateStats("nodeB: after unsuccessful diff update", nodeB, 2, 1, 1);
+        assertThat(nodeA.action.stats().getPublishedClusterStateCount(), equalTo(3L));
+        assertThat(nodeB.action.stats().getPublishedClusterStateCount(), equalTo(0L));
 
         // node A steps down from being master
         nodeA.resetMasterId();
@@ -773,6 +777,39 @@ public class PublishClusterStateActionTests extends ESTestCase {
         assertPublishClusterStateStats("nodeB: B became master", nodeB, 2, 1, 1);
     }
 
+    public void testFullClusterStateReusesSerializedIndices() throws Exception {
+        Settings noDiffPublishingSettings = Settings.builder().put(DiscoverySettings.PUBLISH_DIFF_ENABLE_SETTING.getKey(), false).build();
+        MockNode nodeA = createMockNode("nodeA", noDiffPublishingSettings, null).setAsMaster();
+        MockNode nodeB = createMockNode("nodeB", noDiffPublishingSettings, null);
+
+        // cluster state update - add nodeB and a first index
+        ClusterState previousClusterState = nodeA.clusterState;
+        DiscoveryNodes discoveryNodes = DiscoveryNodes.builder(previousClusterState.nodes()).add(nodeB.discoveryNode).build();
+        ClusterState clusterState = ClusterState.builder(previousClusterState).nodes(discoveryNodes)
+            .metaData(buildMetaDataForVersion(previousClusterState.metaData(), 1)).incrementVersion().build();
+        publishStateAndWait(nodeA.action, clusterState, previousClusterState);
+        assertProperMetaDataForVersion(nodeB.clusterState.metaData(), 1);
+        assertThat(nodeA.action.stats().getSerializedIndicesCount(), equalTo(1L));
+        assertThat(nodeA.action.stats().getReusedIndicesCount(), equalTo(0L));
+
+        // cluster state update - add a second index, the first one is unchanged
+        previousClusterState = clusterState;
+        clusterState = ClusterState.builder(clusterState).metaData(buildMetaDataForVersion(clusterState.metaData(), 2))
+            .incrementVersion().build();
+        publishStateAndWait(nodeA.action, clusterState, previousClusterState);
+        assertProperMetaDataForVersion(nodeB.clusterState.metaData(), 2);
+        assertSameState(nodeB.clusterState, clusterState);
+        assertThat(nodeA.action.stats().getSerializedIndicesCount(), equalTo(2L));
+        assertThat(nodeA.action.stats().getReusedIndicesCount(), equalTo(1L));
+
+        // the reused bytes are the same as the ones of a fresh serialization
+        BytesReference cached = nodeA.action.serializeFullClusterStateCached(clusterState, Version.CURRENT);
+        BytesReference uncached = PublishClusterStateAction.serializeFullClusterState(clusterState, Version.CURRENT);
+        assertThat(CompressorFactory.uncompress(cached), equalTo(CompressorFactory.uncompress(uncached)));
+        assertThat(PublishClusterStateAction.compressedClusterStateSize(clusterState, Version.CURRENT),
+            equalTo((long) uncached.length()));
+    }
+
     private MetaData buildMetaDataForVersion(MetaData metaData, long version) {
         ImmutableOpenMap.Builder<String, IndexMetaData> indices = ImmutableOpenMap.builder(metaData.indices());
         indices.put("test" + version, IndexMetaData.builder("test" + version)
@@ -112,6 +112,11 @@ public class SearchSlowLogTests extends ESSingleNodeTestCase {
                     return null;
                 }
 
+                @Override
+                public Boolean concurrentSegmentSearch() {
+                    return null;
+                }
+
                 @Override
                 public Scroll scroll() {
                     return null;
@@ -26,8 +26,13 @@ import org.apache.lucene.util.TestUtil;
 import org.elasticsearch.Assertions;
 import org.elasticsearch.bootstrap.JavaVersion;
 import org.elasticsearch.common.lease.Releasable;
+import org.elasticsearch.common.settings.Settings;
+import org.elasticsearch.common.util.MockBigArrays;
+import org.elasticsearch.common.util.MockPageCacheRecycler;
 import org.elasticsearch.common.util.concurrent.KeyedLock;
+import org.elasticsearch.indices.breaker.NoneCircuitBreakerService;
 import org.elasticsearch.test.ESTestCase;
+import org.junit.After;
 
 import java.io.IOException;
 import java.util.ArrayList;
@@ -38,8 +43,31 @@ import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.CountDownLatch;
 
+import static org.hamcrest.Matchers.greaterThan;
+import static org.hamcrest.Matchers.greaterThanOrEqualTo;
+import static org.hamcrest.Matchers.lessThan;
+
 public class LiveVersionMapTests extends ESTestCase {
 
+    private final List<LiveVersionMap> maps = new ArrayList<>();
+
+    @After
+    public void clearMaps() {
+        // releases the big arrays of packed maps before the test checks for leaks
+        maps.forEach(LiveVersionMap::clear);
+    }
+
+    private LiveVersionMap newLiveVersionMap() {
+        final LiveVersionMap map;
+        if (randomBoolean()) {
+            map = new LiveVersionMap();
+        } else {
+            map = new LiveVersionMap(new MockBigArrays(new MockPageCacheRecycler(Settings.EMPTY), new NoneCircuitBreakerService()));
+        }
+        maps.add(map);
+        return map;
+    }
+
     public void testRamBytesUsed() throws Exception {
         assumeTrue("Test disabled for JDK 9", JavaVersion.current().compareTo(JavaVersion.parse("9")) < 0);
         LiveVersionMap map = new LiveVersionMap();
@@ -74,6 +102,41 @@ public class LiveVersionMapTests extends ESTestCase {
         assertEquals(actualRamBytesUsed, estimatedRamBytesUsed, actualRamBytesUsed / 4);
     }
 
+    public void testPackedRamBytesUsed() throws Exception {
+        LiveVersionMap map = new LiveVersionMap(new MockBigArrays(new MockPageCacheRecycler(Settings.EMPTY),
+            new NoneCircuitBreakerService()));
+        maps.add(map);
+        final long emptyRamBytesUsed = map.ramBytesUsedForRefresh();
+        int numDocs = randomIntBetween(1000, 10000);
+        for (int i = 0; i < numDocs; ++i) {
+            BytesRef uid = uid(Integer.toString(i));
+            try (Releasable r = map.acquireLock(uid)) {
+                map.putUnderLock(uid, new VersionValue(randomLong(), randomLong(), randomLong()));
+            }
+        }
+        // keys and values are at least 3 longs per entry
+        assertThat(map.ramBytesUsedForRefresh() - emptyRamBytesUsed, greaterThanOrEqualTo(numDocs * 3L * Long.BYTES));
+        assertEquals(map.ramBytesUsedForRefresh(), map.ramBytesUsed());
+
+        map.beforeRefresh();
+        // the old map still holds its arrays until the refresh is done
+        assertThat(map.ramBytesUsed(), greaterThan(map.ramBytesUsedForRefresh()));
+        map.afterRefresh(true);
+        assertEquals(map.ramBytesUsedForRefresh(), map.ramBytesUsed());
+        assertThat(map.ramBytesUsedForRefresh(), lessThan(numDocs * 3L * Long.BYTES));
+
+        BytesRef uid = uid("0");
+        try (Releasable r = map.acquireLock(uid)) {
+            assertNull(map.getUnderLock(uid));
+            map.putUnderLock(uid, new DeleteVersionValue(1, 1, 1, 1));
+            // deletes are kept as on-heap tombstones on top of the packed entry
+            assertThat(map.ramBytesUsed(), greaterThan(map.ramBytesUsedForRefresh()));
+            map.removeTombstoneUnderLock(uid);
+            assertEquals(new DeleteVersionValue(1, 1, 1, 1), map.getUnderLock(uid));
+        }
+        assertEquals(map.ramBytesUsedForRefresh(), map.ramBytesUsed());
+    }
+
     private BytesRef uid(String string) {
         BytesRefBuilder builder = new BytesRefBuilder();
         builder.copyChars(string);
@@ -82,7 +145,7 @@ public class LiveVersionMapTests extends ESTestCase {
     }
 
     public void testBasics() throws IOException {
-        LiveVersionMap map = new LiveVersionMap();
+        LiveVersionMap map = newLiveVersionMap();
         try (Releasable r = map.acquireLock(uid("test"))) {
             map.putUnderLock(uid("test"), new VersionValue(1, 1, 1));
             assertEquals(new VersionValue(1, 1, 1), map.getUnderLock(uid("test")));
@@ -109,7 +172,7 @@ public class LiveVersionMapTests extends ESTestCase {
         }
         List<BytesRef> keyList = new ArrayList<>(keySet);
         ConcurrentHashMap<BytesRef, VersionValue> values = new ConcurrentHashMap<>();
-        LiveVersionMap map = new LiveVersionMap();
+        LiveVersionMap map = newLiveVersionMap();
         int numThreads = randomIntBetween(2, 5);
 
         Thread[] threads = new Thread[numThreads];
@@ -200,7 +263,7 @@ public class LiveVersionMapTests extends ESTestCase {
     }
 
     public void testCarryOnSafeAccess() throws IOException {
-        LiveVersionMap map = new LiveVersionMap();
+        LiveVersionMap map = newLiveVersionMap();
         assertFalse(map.isUnsafe());
         assertFalse(map.isSafeAccessRequired());
         map.enforceSafeAccess();
@@ -232,7 +295,7 @@ public class LiveVersionMapTests extends ESTestCase {
     }
 
     public void testRefreshTransition() throws IOException {
-        LiveVersionMap map = new LiveVersionMap();
+        LiveVersionMap map = newLiveVersionMap();
         try (Releasable r = map.acquireLock(uid("1"))) {
             map.maybePutUnderLock(uid("1"), new VersionValue(randomLong(), randomLong(), randomLong()));
             assertTrue(map.isUnsafe());
@@ -0,0 +1,96 @@
+/*
+ * Licensed to Elasticsearch under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Elasticsearch licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.elasticsearch.index.engine;
+
+import org.apache.lucene.util.BytesRef;
+import org.apache.lucene.util.TestUtil;
+import org.elasticsearch.common.settings.Settings;
+import org.elasticsearch.common.util.BigArrays;
+import org.elasticsearch.common.util.MockBigArrays;
+import org.elasticsearch.common.util.MockPageCacheRecycler;
+import org.elasticsearch.indices.breaker.NoneCircuitBreakerService;
+import org.elasticsearch.test.ESTestCase;
+
+import java.util.HashMap;
+import java.util.Map;
+
+public class PackedVersionTableTests extends ESTestCase {
+
+    private BigArrays bigArrays() {
+        return new MockBigArrays(new MockPageCacheRecycler(Settings.EMPTY), new NoneCircuitBreakerService());
+    }
+
+    private VersionValue randomVersionValue() {
+        if (randomBoolean()) {
+            return new DeleteVersionValue(randomLong(), randomLong(), randomLong(), randomNonNegativeLong());
+        }
+        return new VersionValue(randomLong(), randomLong(), randomLong());
+    }
+
+    public void testDuel() {
+        Map<BytesRef, VersionValue> expected = new HashMap<>();
+        try (PackedVersionTable table = new PackedVersionTable(bigArrays(), randomIntBetween(0, 100))) {
+            int numOps = randomIntBetween(1, 10000);
+            for (int i = 0; i < numOps; i++) {
+                BytesRef uid = new BytesRef(TestUtil.randomSimpleString(random(), 1, 6));
+                if (randomBoolean()) {
+                    VersionValue value = randomVersionValue();
+                    expected.put(uid, value);
+                    table.put(uid, value);
+                } else {
+                    assertEquals(expected.get(uid), table.get(uid));
+                }
+            }
+            assertEquals(expected.size(), table.size());
+            for (Map.Entry<BytesRef, VersionValue> entry : expected.entrySet()) {
+                assertEquals(entry.getValue(), table.get(entry.getKey()));
+            }
+            Map<BytesRef, VersionValue> actual = new HashMap<>();
+            table.forEach((uid, value) -> assertNull(actual.put(uid, value)));
+            assertEquals(expected, actual);
+        }
+    }
+
+    public void testRamBytesUsed() {
+        try (PackedVersionTable table = new PackedVersionTable(bigArrays(), 0)) {
+            final long emptyRamBytesUsed = table.ramBytesUsed();
+            assertTrue(emptyRamBytesUsed > 0);
+            int numDocs = randomIntBetween(1000, 5000);
+            for (int i = 0; i < numDocs; i++) {
+                table.put(new BytesRef(Integer.toString(i)), randomVersionValue());
+            }
+            assertTrue(table.ramBytesUsed() >= emptyRamBytesUsed + numDocs * 3L * Long.BYTES);
+        }
+    }
+
+    public void testClosed() {
+        PackedVersionTable table = new PackedVersionTable(bigArrays(), 0);
+        BytesRef uid = new BytesRef("1");
+        table.put(uid, new VersionValue(1, 1, 1));
+        table.close();
+        assertNull(table.get(uid));
+        assertEquals(0, table.size());
+        assertEquals(0, table.ramBytesUsed());
+        // puts racing with a refresh are dropped
+        table.put(uid, new VersionValue(2, 2, 2));
+        assertNull(table.get(uid));
+        table.close();
+    }
+}
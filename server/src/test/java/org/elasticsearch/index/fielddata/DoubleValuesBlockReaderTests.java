@@ -0,0 +1,141 @@
+/*
+ * Licensed to Elasticsearch under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Elasticsearch licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.elasticsearch.index.fielddata;
+
+import org.elasticsearch.test.ESTestCase;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+public class DoubleValuesBlockReaderTests extends ESTestCase {
+
+    public void testSingleValued() throws IOException {
+        final int maxDoc = randomIntBetween(1, 1000);
+        final double[] docValues = new double[maxDoc];
+        final boolean[] hasValue = new boolean[maxDoc];
+        for (int doc = 0; doc < maxDoc; doc++) {
+            hasValue[doc] = randomBoolean();
+            docValues[doc] = randomDouble();
+        }
+        final NumericDoubleValues singleton = new NumericDoubleValues() {
+            int doc = -1;
+
+            @Override
+            public boolean advanceExact(int target) {
+                assertTrue(target > doc);
+                doc = target;
+                return hasValue[doc];
+            }
+
+            @Override
+            public double doubleValue() {
+                return docValues[doc];
+            }
+        };
+        final DoubleValuesBlockReader reader = DoubleValuesBlockReader.of(FieldData.singleton(singleton));
+        final List<Double> expected = new ArrayList<>();
+        final List<Double> actual = new ArrayList<>();
+        for (int[] block : randomBlocks(maxDoc)) {
+            for (int doc : block) {
+                if (hasValue[doc]) {
+                    expected.add(docValues[doc]);
+                }
+            }
+            final int numValues = reader.read(block, block.length);
+            for (int i = 0; i < numValues; i++) {
+                actual.add(reader.values()[i]);
+            }
+        }
+        assertEquals(expected, actual);
+    }
+
+    public void testMultiValued() throws IOException {
+        final int maxDoc = randomIntBetween(1, 1000);
+        final double[][] docValues = new double[maxDoc][];
+        for (int doc = 0; doc < maxDoc; doc++) {
+            docValues[doc] = new double[randomIntBetween(0, 5)];
+            for (int i = 0; i < docValues[doc].length; i++) {
+                docValues[doc][i] = randomDouble();
+            }
+            Arrays.sort(docValues[doc]);
+        }
+        final SortedNumericDoubleValues values = new SortedNumericDoubleValues() {
+            int doc = -1;
+            int i;
+
+            @Override
+            public boolean advanceExact(int target) {
+                assertTrue(target > doc);
+                doc = target;
+                i = 0;
+                return docValues[doc].length > 0;
+            }
+
+            @Override
+            public double nextValue() {
+                return docValues[doc][i++];
+            }
+
+            @Override
+            public int docValueCount() {
+                return docValues[doc].length;
+            }
+        };
+        final DoubleValuesBlockReader reader = DoubleValuesBlockReader.of(values);
+        final List<Double> expected = new ArrayList<>();
+        final List<Double> actual = new ArrayList<>();
+        for (int[] block : randomBlocks(maxDoc)) {
+            for (int doc : block) {
+                for (double value : docValues[doc]) {
+                    expected.add(value);
+                }
+            }
+            final int numValues = reader.read(block, block.length);
+            for (int i = 0; i < numValues; i++) {
+                actual.add(reader.values()[i]);
+            }
+        }
+        assertEquals(expected, actual);
+    }
+
+    /**
+     * Splits a random subset of the docs in increasing order into blocks of random sizes.
+     */
+    private static List<int[]> randomBlocks(int maxDoc) {
+        final List<int[]> blocks = new ArrayList<>();
+        int[] block = new int[randomIntBetween(1, 100)];
+        int count = 0;
+        for (int doc = 0; doc < maxDoc; doc++) {
+            if (randomBoolean()) {
+                continue;
+            }
+            block[count++] = doc;
+            if (count == block.length) {
+                blocks.add(block);
+                block = new int[randomIntBetween(1, 100)];
+                count = 0;
+            }
+        }
+        blocks.add(Arrays.copyOf(block, count));
+        return blocks;
+    }
+}
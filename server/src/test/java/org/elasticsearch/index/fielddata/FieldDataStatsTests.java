@@ -31,7 +31,7 @@ public class FieldDataStatsTests extends ESTestCase {
     public void testSerialize() throws IOException {
         FieldMemoryStats map = randomBoolean() ? null : FieldMemoryStatsTests.randomFieldMemoryStats();
         FieldDataStats stats = new FieldDataStats(randomNonNegativeLong(), randomNonNegativeLong(), map == null ? null :
-            map);
+            map, randomNonNegativeLong(), randomNonNegativeLong(), randomNonNegativeLong(), randomNonNegativeLong());
         BytesStreamOutput out = new BytesStreamOutput();
         stats.writeTo(out);
         FieldDataStats read = new FieldDataStats();
@@ -41,5 +41,9 @@ public class FieldDataStatsTests extends ESTestCase {
         assertEquals(stats.evictions, read.evictions);
         assertEquals(stats.memorySize, read.memorySize);
         assertEquals(stats.getFields(), read.getFields());
+        assertEquals(stats.getGlobalOrdinalsMemorySizeInBytes(), read.getGlobalOrdinalsMemorySizeInBytes());
+        assertEquals(stats.getGlobalOrdinalsBuilds(), read.getGlobalOrdinalsBuilds());
+        assertEquals(stats.getGlobalOrdinalsIncrementalBuilds(), read.getGlobalOrdinalsIncrementalBuilds());
+        assertEquals(stats.getGlobalOrdinalsBuildTimeInMillis(), read.getGlobalOrdinalsBuildTimeInMillis());
     }
 }
@@ -0,0 +1,229 @@
+/*
+ * Licensed to Elasticsearch under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Elasticsearch licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.elasticsearch.index.fielddata.ordinals;
+
+import org.apache.lucene.document.Document;
+import org.apache.lucene.document.Field;
+import org.apache.lucene.document.SortedSetDocValuesField;
+import org.apache.lucene.document.StringField;
+import org.apache.lucene.index.DirectoryReader;
+import org.apache.lucene.index.DocValues;
+import org.apache.lucene.index.IndexWriter;
+import org.apache.lucene.index.IndexWriterConfig;
+import org.apache.lucene.index.LeafReaderContext;
+import org.apache.lucene.index.NoMergePolicy;
+import org.apache.lucene.index.OrdinalMap;
+import org.apache.lucene.index.SortedSetDocValues;
+import org.apache.lucene.index.Term;
+import org.apache.lucene.store.Directory;
+import org.apache.lucene.util.BytesRef;
+import org.apache.lucene.util.LongValues;
+import org.apache.lucene.util.packed.PackedInts;
+import org.elasticsearch.common.breaker.CircuitBreaker;
+import org.elasticsearch.common.lucene.index.ElasticsearchDirectoryReader;
+import org.elasticsearch.common.settings.ClusterSettings;
+import org.elasticsearch.common.settings.Settings;
+import org.elasticsearch.index.IndexSettings;
+import org.elasticsearch.index.fielddata.IndexFieldDataCache;
+import org.elasticsearch.index.fielddata.plain.AbstractAtomicOrdinalsFieldData;
+import org.elasticsearch.index.fielddata.plain.SortedSetDVOrdinalsIndexFieldData;
+import org.elasticsearch.index.shard.ShardId;
+import org.elasticsearch.indices.breaker.CircuitBreakerService;
+import org.elasticsearch.indices.breaker.HierarchyCircuitBreakerService;
+import org.elasticsearch.test.ESTestCase;
+import org.elasticsearch.test.IndexSettingsModule;
+
+import java.io.IOException;
+import java.util.List;
+
+public class IncrementalOrdinalMapTests extends ESTestCase {
+
+    public void testIncrementalBuildMatchesFullBuild() throws IOException {
+        try (Directory dir = newDirectory();
+             IndexWriter writer = new IndexWriter(dir, new IndexWriterConfig().setMergePolicy(NoMergePolicy.INSTANCE))) {
+            int id = 0;
+            for (int i = 0; i < 5; i++) {
+                id = addSegment(writer, id, randomIntBetween(50, 100));
+            }
+            DirectoryReader reader = DirectoryReader.open(writer);
+            IncrementalOrdinalMap map = IncrementalOrdinalMap.build(null, reader.leaves(), subs(reader.leaves()));
+            assertFalse(map.isIncremental());
+            assertMatchesFullBuild(map, reader.leaves());
+
+            // new small segments and deletes reuse the ordinals of the existing segments
+            id = addSegment(writer, id, randomIntBetween(1, 20));
+            writer.deleteDocuments(new Term("id", "0"));
+            id = addSegment(writer, id, randomIntBetween(1, 20));
+            DirectoryReader newReader = DirectoryReader.openIfChanged(reader);
+            assertNotNull(newReader);
+            reader.close();
+            reader = newReader;
+            IncrementalOrdinalMap incremental = IncrementalOrdinalMap.build(map.base(), reader.leaves(), subs(reader.leaves()));
+            assertTrue(incremental.isIncremental());
+            assertSame(map.base(), incremental.base());
+            assertMatchesFullBuild(incremental, reader.leaves());
+
+            // merging away the segments of the base requires a full build
+            writer.getConfig().setMergePolicy(newLogMergePolicy());
+            writer.forceMerge(1);
+            newReader = DirectoryReader.openIfChanged(reader);
+            assertNotNull(newReader);
+            reader.close();
+            reader = newReader;
+            IncrementalOrdinalMap rebuilt = IncrementalOrdinalMap.build(incremental.base(), reader.leaves(), subs(reader.leaves()));
+            assertFalse(rebuilt.isIncremental());
+            assertMatchesFullBuild(rebuilt, reader.leaves());
+            reader.close();
+        }
+    }
+
+    public void testLargeNewSegmentsRequireFullBuild() throws IOException {
+        try (Directory dir = newDirectory();
+             IndexWriter writer = new IndexWriter(dir, new IndexWriterConfig().setMergePolicy(NoMergePolicy.INSTANCE))) {
+            int id = addSegment(writer, 0, 10);
+            DirectoryReader reader = DirectoryReader.open(writer);
+            IncrementalOrdinalMap map = IncrementalOrdinalMap.build(null, reader.leaves(), subs(reader.leaves()));
+            addSegment(writer, id, 20);
+            DirectoryReader newReader = DirectoryReader.openIfChanged(reader);
+            reader.close();
+            IncrementalOrdinalMap rebuilt = IncrementalOrdinalMap.build(map.base(), newReader.leaves(), subs(newReader.leaves()));
+            assertFalse(rebuilt.isIncremental());
+            assertNotSame(map.base(), rebuilt.base());
+            assertMatchesFullBuild(rebuilt, newReader.leaves());
+            newReader.close();
+        }
+    }
+
+    public void testNewTermsAreInsertedBetweenTheTermsOfTheBase() throws IOException {
+        try (Directory dir = newDirectory();
+             IndexWriter writer = new IndexWriter(dir, new IndexWriterConfig().setMergePolicy(NoMergePolicy.INSTANCE))) {
+            addTerms(writer, "b", "d", "f", "b", "d", "f");
+            addTerms(writer, "d", "h", "d", "h");
+            DirectoryReader reader = DirectoryReader.open(writer);
+            IncrementalOrdinalMap map = IncrementalOrdinalMap.build(null, reader.leaves(), subs(reader.leaves()));
+            // new terms before, between and after the terms of the base, as well as terms that the base already has
+            addTerms(writer, "a", "b", "c", "h", "i");
+            addTerms(writer, "c", "e", "f");
+            DirectoryReader newReader = DirectoryReader.openIfChanged(reader);
+            assertNotNull(newReader);
+            reader.close();
+            IncrementalOrdinalMap incremental = IncrementalOrdinalMap.build(map.base(), newReader.leaves(), subs(newReader.leaves()));
+            assertTrue(incremental.isIncremental());
+            assertEquals(8, incremental.getValueCount());
+            assertMatchesFullBuild(incremental, newReader.leaves());
+            newReader.close();
+        }
+    }
+
+    public void testGlobalOrdinalsReuseTheBuildOfThePreviousReader() throws Exception {
+        IndexSettings indexSettings = IndexSettingsModule.newIndexSettings("test", Settings.builder()
+            .put(IndexSettings.INDEX_INCREMENTAL_GLOBAL_ORDINALS_SETTING.getKey(), true).build());
+        CircuitBreakerService breakerService = new HierarchyCircuitBreakerService(Settings.EMPTY,
+            new ClusterSettings(Settings.EMPTY, ClusterSettings.BUILT_IN_CLUSTER_SETTINGS));
+        CircuitBreaker breaker = breakerService.getBreaker(CircuitBreaker.FIELDDATA);
+        SortedSetDVOrdinalsIndexFieldData fieldData = new SortedSetDVOrdinalsIndexFieldData(indexSettings,
+            new IndexFieldDataCache.None(), "field", breakerService,
+            AbstractAtomicOrdinalsFieldData.DEFAULT_SCRIPT_FUNCTION);
+        try (Directory dir = newDirectory();
+             IndexWriter writer = new IndexWriter(dir, new IndexWriterConfig().setMergePolicy(NoMergePolicy.INSTANCE))) {
+            int id = addSegment(writer, 0, 100);
+            id = addSegment(writer, id, 100);
+            DirectoryReader reader = ElasticsearchDirectoryReader.wrap(DirectoryReader.open(writer), new ShardId("test", "_na_", 0));
+            GlobalOrdinalsIndexFieldData first = (GlobalOrdinalsIndexFieldData) fieldData.localGlobalDirect(reader);
+            assertFalse(first.isIncremental());
+
+            addSegment(writer, id, 10);
+            DirectoryReader newReader = DirectoryReader.openIfChanged(reader);
+            assertNotNull(newReader);
+            GlobalOrdinalsIndexFieldData second = (GlobalOrdinalsIndexFieldData) fieldData.localGlobalDirect(newReader);
+            assertTrue(second.isIncremental());
+            // the lazily built flat map resolves the same global ordinals and is accounted in the breaker
+            long used = breaker.getUsed();
+            OrdinalMap flat = second.getOrdinalMap();
+            assertEquals(used + flat.ramBytesUsed(), breaker.getUsed());
+            assertSame(flat, second.getOrdinalMap());
+            assertEquals(flat.getValueCount(), second.load(newReader.leaves().get(0)).getOrdinalsValues().getValueCount());
+            for (LeafReaderContext leaf : newReader.leaves()) {
+                SortedSetDocValues values = DocValues.getSortedSet(leaf.reader(), "field");
+                LongValues globalOrds = second.getGlobalOrds(leaf.ord);
+                for (long ord = 0; ord < values.getValueCount(); ord++) {
+                    assertEquals(flat.getGlobalOrds(leaf.ord).get(ord), globalOrds.get(ord));
+                }
+            }
+            assertEquals(flat.ramBytesUsed(), second.releaseOnDemandMemory());
+            assertEquals(0, second.releaseOnDemandMemory());
+            // keep the first build reachable so that its ordinal map can be reused
+            assertNotNull(first.getOrdinalMap());
+            assertEquals(0, first.releaseOnDemandMemory());
+            reader.close();
+            newReader.close();
+        }
+    }
+
+    private static int addSegment(IndexWriter writer, int id, int numDocs) throws IOException {
+        for (int i = 0; i < numDocs; i++) {
+            Document doc = new Document();
+            doc.add(new StringField("id", Integer.toString(id++), Field.Store.NO));
+            int numValues = randomIntBetween(0, 3);
+            for (int j = 0; j < numValues; j++) {
+                doc.add(new SortedSetDocValuesField("field", new BytesRef(randomAlphaOfLength(randomIntBetween(1, 3)))));
+            }
+            writer.addDocument(doc);
+        }
+        writer.commit();
+        return id;
+    }
+
+    private static void addTerms(IndexWriter writer, String... terms) throws IOException {
+        for (String term : terms) {
+            Document doc = new Document();
+            doc.add(new SortedSetDocValuesField("field", new BytesRef(term)));
+            writer.addDocument(doc);
+        }
+        writer.commit();
+    }
+
+    private static SortedSetDocValues[] subs(List<LeafReaderContext> leaves) throws IOException {
+        SortedSetDocValues[] subs = new SortedSetDocValues[leaves.size()];
+        for (int i = 0; i < subs.length; i++) {
+            subs[i] = DocValues.getSortedSet(leaves.get(i).reader(), "field");
+        }
+        return subs;
+    }
+
+    private static void assertMatchesFullBuild(IncrementalOrdinalMap map, List<LeafReaderContext> leaves) throws IOException {
+        SortedSetDocValues[] subs = subs(leaves);
+        OrdinalMap flat = OrdinalMap.build(null, subs, PackedInts.DEFAULT);
+        assertEquals(flat.getValueCount(), map.getValueCount());
+        for (int i = 0; i < subs.length; i++) {
+            LongValues expected = flat.getGlobalOrds(i);
+            LongValues actual = map.getGlobalOrds(i);
+            for (long ord = 0; ord < subs[i].getValueCount(); ord++) {
+                assertEquals(expected.get(ord), actual.get(ord));
+            }
+        }
+        for (long globalOrd = 0; globalOrd < map.getValueCount(); globalOrd++) {
+            int segment = map.getFirstSegmentNumber(globalOrd);
+            BytesRef term = BytesRef.deepCopyOf(subs[segment].lookupOrd(map.getFirstSegmentOrd(globalOrd)));
+            int expectedSegment = flat.getFirstSegmentNumber(globalOrd);
+            assertEquals(subs[expectedSegment].lookupOrd(flat.getFirstSegmentOrd(globalOrd)), term);
+        }
+    }
+}
@@ -1111,6 +1111,35 @@ public class IndexShardTests extends IndexShardTestCase {
         closeShards(shard);
     }
 
+    public void testGroupCommitFsync() throws Exception {
+        Settings settings = Settings.builder().put(IndexMetaData.SETTING_VERSION_CREATED, Version.CURRENT)
+            .put(IndexMetaData.SETTING_NUMBER_OF_REPLICAS, 0)
+            .put(IndexMetaData.SETTING_NUMBER_OF_SHARDS, 1)
+            .put(IndexSettings.INDEX_TRANSLOG_GROUP_COMMIT_WINDOW_SETTING.getKey(), randomIntBetween(1, 50) + "ms")
+            .put(IndexSettings.INDEX_TRANSLOG_GROUP_COMMIT_MAX_BYTES_SETTING.getKey(), randomIntBetween(100, 10000) + "b")
+            .build();
+        IndexMetaData metaData = IndexMetaData.builder("test")
+            .putMapping("test", "{ \"properties\": {}}")
+            .settings(settings)
+            .primaryTerm(0, 1).build();
+        ShardRouting shardRouting = TestShardRouting.newShardRouting(new ShardId(metaData.getIndex(), 0), "n1", true,
+            ShardRoutingState.INITIALIZING, RecoverySource.StoreRecoverySource.EMPTY_STORE_INSTANCE);
+        IndexShard shard = newShard(shardRouting, metaData);
+        recoverShardFromStore(shard);
+        int numDocs = randomIntBetween(1, 100);
+        CountDownLatch latch = new CountDownLatch(numDocs);
+        for (int i = 0; i < numDocs; i++) {
+            Translog.Location location = indexDoc(shard, "test", Integer.toString(i)).getTranslogLocation();
+            shard.sync(location, ex -> {
+                assertNull(ex);
+                latch.countDown();
+            });
+        }
+        assertTrue(latch.await(10, TimeUnit.SECONDS));
+        assertFalse(shard.getTranslog().syncNeeded());
+        closeShards(shard);
+    }
+
     public void testMinimumCompatVersion() throws IOException {
         Version versionCreated = VersionUtils.randomVersion(random());
         Settings settings = Settings.builder().put(IndexMetaData.SETTING_VERSION_CREATED, versionCreated.id)
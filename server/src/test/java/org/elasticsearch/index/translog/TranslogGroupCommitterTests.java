@@ -0,0 +1,143 @@
+/*
+ * Licensed to Elasticsearch under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Elasticsearch licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.elasticsearch.index.translog;
+
+import org.elasticsearch.common.unit.ByteSizeUnit;
+import org.elasticsearch.common.unit.ByteSizeValue;
+import org.elasticsearch.common.unit.TimeValue;
+import org.elasticsearch.test.ESTestCase;
+import org.elasticsearch.threadpool.TestThreadPool;
+import org.elasticsearch.threadpool.ThreadPool;
+import org.junit.After;
+import org.junit.Before;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.hamcrest.Matchers.greaterThanOrEqualTo;
+import static org.hamcrest.Matchers.lessThan;
+
+public class TranslogGroupCommitterTests extends ESTestCase {
+
+    private ThreadPool threadPool;
+
+    @Before
+    public void setUpThreadPool() {
+        threadPool = new TestThreadPool(getTestName());
+    }
+
+    @After
+    public void tearDownThreadPool() {
+        ThreadPool.terminate(threadPool, 10, TimeUnit.SECONDS);
+    }
+
+    public void testConcurrentSyncsShareGroups() throws Exception {
+        final List<Translog.Location> synced = new CopyOnWriteArrayList<>();
+        final TranslogGroupCommitter committer = new TranslogGroupCommitter(logger, threadPool,
+            () -> TimeValue.timeValueMillis(randomIntBetween(1, 20)), () -> new ByteSizeValue(1, ByteSizeUnit.GB), synced::add);
+        final int numThreads = randomIntBetween(2, 8);
+        final int numOpsPerThread = randomIntBetween(10, 200);
+        final CountDownLatch done = new CountDownLatch(numThreads * numOpsPerThread);
+        final AtomicReference<Exception> failure = new AtomicReference<>();
+        final Thread[] threads = new Thread[numThreads];
+        final CountDownLatch startGun = new CountDownLatch(1);
+        for (int t = 0; t < numThreads; t++) {
+            final int generation = t;
+            threads[t] = new Thread(() -> {
+                try {
+                    startGun.await();
+                } catch (InterruptedException e) {
+                    throw new AssertionError(e);
+                }
+                for (int i = 0; i < numOpsPerThread; i++) {
+                    final Translog.Location location = new Translog.Location(generation, i, 1);
+                    committer.put(location, e -> {
+                        if (e != null) {
+                            failure.set(e);
+                        } else if (synced.stream().noneMatch(l -> l.compareTo(location) >= 0)) {
+                            failure.set(new IllegalStateException("listener of " + location + " notified before it was synced"));
+                        }
+                        done.countDown();
+                    });
+                }
+            });
+            threads[t].start();
+        }
+        startGun.countDown();
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        assertTrue(done.await(10, TimeUnit.SECONDS));
+        assertNull(failure.get());
+        assertThat(synced.size(), lessThan(numThreads * numOpsPerThread));
+    }
+
+    public void testMaxBytesTriggersCommit() throws Exception {
+        final List<Translog.Location> synced = new CopyOnWriteArrayList<>();
+        final TranslogGroupCommitter committer = new TranslogGroupCommitter(logger, threadPool,
+            () -> TimeValue.timeValueHours(1), () -> new ByteSizeValue(100, ByteSizeUnit.BYTES), synced::add);
+        final CountDownLatch firstGroup = new CountDownLatch(2);
+        committer.put(new Translog.Location(0, 0, 60), e -> firstGroup.countDown());
+        committer.put(new Translog.Location(0, 60, 60), e -> firstGroup.countDown());
+        assertTrue(firstGroup.await(10, TimeUnit.SECONDS));
+        assertEquals(1, synced.size());
+        assertEquals(new Translog.Location(0, 60, 60), synced.get(0));
+
+        // this one waits for the window to elapse, it is only synced on close
+        final CountDownLatch secondGroup = new CountDownLatch(1);
+        committer.put(new Translog.Location(0, 120, 10), e -> secondGroup.countDown());
+        assertEquals(1, secondGroup.getCount());
+        committer.close();
+        assertTrue(secondGroup.await(10, TimeUnit.SECONDS));
+        assertEquals(2, synced.size());
+
+        // after close locations are synced on the calling thread
+        final CountDownLatch afterClose = new CountDownLatch(1);
+        committer.put(new Translog.Location(0, 130, 10), e -> afterClose.countDown());
+        assertEquals(0, afterClose.getCount());
+        assertThat(synced.size(), greaterThanOrEqualTo(3));
+    }
+
+    public void testFailureIsPassedToAllListeners() throws Exception {
+        final IOException failure = new IOException("boom");
+        final TranslogGroupCommitter committer = new TranslogGroupCommitter(logger, threadPool,
+            () -> TimeValue.timeValueMillis(randomIntBetween(1, 20)), () -> new ByteSizeValue(1, ByteSizeUnit.GB), location -> {
+                throw failure;
+            });
+        final int numOps = randomIntBetween(1, 10);
+        final CountDownLatch done = new CountDownLatch(numOps);
+        final List<Exception> exceptions = new CopyOnWriteArrayList<>();
+        for (int i = 0; i < numOps; i++) {
+            committer.put(new Translog.Location(0, i, 1), e -> {
+                exceptions.add(e);
+                done.countDown();
+            });
+        }
+        assertTrue(done.await(10, TimeUnit.SECONDS));
+        assertEquals(numOps, exceptions.size());
+        for (Exception e : exceptions) {
+            assertSame(failure, e);
+        }
+    }
+}
@@ -0,0 +1,199 @@
+/*
+ * Licensed to Elasticsearch under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Elasticsearch licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.elasticsearch.indices;
+
+import org.apache.lucene.document.Document;
+import org.apache.lucene.document.Field;
+import org.apache.lucene.document.StringField;
+import org.apache.lucene.index.DirectoryReader;
+import org.apache.lucene.index.IndexWriter;
+import org.apache.lucene.index.NoMergePolicy;
+import org.apache.lucene.index.Term;
+import org.apache.lucene.search.BooleanClause.Occur;
+import org.apache.lucene.search.BooleanQuery;
+import org.apache.lucene.search.IndexSearcher;
+import org.apache.lucene.search.Query;
+import org.apache.lucene.search.TermInSetQuery;
+import org.apache.lucene.search.TermQuery;
+import org.apache.lucene.store.Directory;
+import org.apache.lucene.util.BytesRef;
+import org.apache.lucene.util.IOUtils;
+import org.elasticsearch.common.settings.Settings;
+import org.elasticsearch.indices.IndicesBackgroundFrequencyCache.BackgroundFrequencies;
+import org.elasticsearch.test.ESTestCase;
+
+import static org.hamcrest.Matchers.greaterThanOrEqualTo;
+
+public class IndicesBackgroundFrequencyCacheTests extends ESTestCase {
+
+    public void testDocFreqWithoutFilter() throws Exception {
+        IndicesBackgroundFrequencyCache cache = new IndicesBackgroundFrequencyCache(Settings.EMPTY);
+        Directory dir = newDirectory();
+        IndexWriter writer = new IndexWriter(dir, newIndexWriterConfig().setMergePolicy(NoMergePolicy.INSTANCE));
+        writer.addDocument(newDoc("0", "a", "x"));
+        writer.addDocument(newDoc("1", "b", "x"));
+        writer.commit();
+        writer.addDocument(newDoc("2", "a", "y"));
+        writer.commit();
+        DirectoryReader reader = DirectoryReader.open(dir);
+        assertEquals(2, reader.leaves().size());
+
+        BackgroundFrequencies frequencies = cache.backgroundFrequencies(reader, null);
+        assertEquals(2, frequencies.docFreq(new Term("term", "a")));
+        assertEquals(1, frequencies.docFreq(new Term("term", "b")));
+        assertEquals(0, frequencies.docFreq(new Term("term", "c")));
+        assertEquals(0, frequencies.docFreq(new Term("missing", "a")));
+        assertEquals(0, cache.hitCount());
+        assertEquals(8, cache.missCount());
+        assertEquals(8, cache.count());
+
+        frequencies = cache.backgroundFrequencies(reader, null);
+        assertEquals(2, frequencies.docFreq(new Term("term", "a")));
+        assertEquals(2, cache.hitCount());
+        assertEquals(8, cache.missCount());
+
+        // deletes do not change doc freqs, so only the new segment is looked up after a refresh
+        writer.deleteDocuments(new Term("id", "0"));
+        writer.addDocument(newDoc("3", "a", "y"));
+        writer.commit();
+        DirectoryReader newReader = DirectoryReader.openIfChanged(reader);
+        assertNotNull(newReader);
+        assertEquals(3, newReader.leaves().size());
+        frequencies = cache.backgroundFrequencies(newReader, null);
+        assertEquals(3, frequencies.docFreq(new Term("term", "a")));
+        assertEquals(4, cache.hitCount());
+        assertEquals(9, cache.missCount());
+
+        IOUtils.close(reader, newReader, writer, dir, cache);
+    }
+
+    public void testDocFreqWithFilter() throws Exception {
+        IndicesBackgroundFrequencyCache cache = new IndicesBackgroundFrequencyCache(Settings.EMPTY);
+        Directory dir = newDirectory();
+        IndexWriter writer = new IndexWriter(dir, newIndexWriterConfig().setMergePolicy(NoMergePolicy.INSTANCE));
+        writer.addDocument(newDoc("0", "a", "x"));
+        writer.addDocument(newDoc("1", "a", "y"));
+        writer.addDocument(newDoc("2", "b", "x"));
+        writer.commit();
+        writer.addDocument(newDoc("3", "a", "x"));
+        writer.addDocument(newDoc("4", "b", "y"));
+        writer.commit();
+        DirectoryReader reader = DirectoryReader.open(dir);
+        Query filter = new TermQuery(new Term("filter", "x"));
+
+        BackgroundFrequencies frequencies = cache.backgroundFrequencies(reader, filter);
+        assertEquals(3, frequencies.numDocs());
+        assertEquals(2, frequencies.docFreq(new Term("term", "a")));
+        assertEquals(1, frequencies.docFreq(new Term("term", "b")));
+        assertEquals(0, cache.hitCount());
+        assertEquals(6, cache.missCount());
+
+        // the same term with another filter is a different entry
+        frequencies = cache.backgroundFrequencies(reader, new TermQuery(new Term("filter", "y")));
+        assertEquals(1, frequencies.docFreq(new Term("term", "a")));
+        assertEquals(0, cache.hitCount());
+
+        // deletes are not counted, so the segment that got a new delete is looked up again
+        writer.deleteDocuments(new Term("id", "0"));
+        writer.commit();
+        DirectoryReader newReader = DirectoryReader.openIfChanged(reader);
+        assertNotNull(newReader);
+        frequencies = cache.backgroundFrequencies(newReader, filter);
+        assertEquals(2, frequencies.numDocs());
+        assertEquals(1, frequencies.docFreq(new Term("term", "a")));
+        assertEquals(2, cache.hitCount());
+        assertEquals(10, cache.missCount());
+        IndexSearcher searcher = newSearcher(newReader);
+        Query query = new BooleanQuery.Builder()
+            .add(new TermQuery(new Term("term", "a")), Occur.FILTER)
+            .add(filter, Occur.FILTER)
+            .build();
+        assertEquals(searcher.count(query), frequencies.docFreq(new Term("term", "a")));
+        assertEquals(searcher.count(filter), frequencies.numDocs());
+
+        IOUtils.close(reader, newReader, writer, dir, cache);
+    }
+
+    public void testInvalidateOnReaderClose() throws Exception {
+        IndicesBackgroundFrequencyCache cache = new IndicesBackgroundFrequencyCache(Settings.EMPTY);
+        Directory dir = newDirectory();
+        IndexWriter writer = new IndexWriter(dir, newIndexWriterConfig().setMergePolicy(NoMergePolicy.INSTANCE));
+        writer.addDocument(newDoc("0", "a", "x"));
+        writer.addDocument(newDoc("1", "b", "x"));
+        writer.commit();
+        writer.addDocument(newDoc("2", "a", "y"));
+        writer.commit();
+        DirectoryReader reader = DirectoryReader.open(dir);
+        cache.backgroundFrequencies(reader, null).docFreq(new Term("term", "a"));
+        cache.backgroundFrequencies(reader, new TermQuery(new Term("filter", "x"))).docFreq(new Term("term", "a"));
+        assertEquals(4, cache.count());
+
+        // a delete creates a new reader for the first segment but keeps its core
+        writer.deleteDocuments(new Term("id", "0"));
+        writer.commit();
+        DirectoryReader newReader = DirectoryReader.openIfChanged(reader);
+        assertNotNull(newReader);
+        reader.close();
+        assertEquals(3, cache.count());
+
+        newReader.close();
+        assertEquals(0, cache.count());
+        IOUtils.close(writer, dir, cache);
+    }
+
+    public void testMemoryBound() throws Exception {
+        IndicesBackgroundFrequencyCache cache = new IndicesBackgroundFrequencyCache(Settings.builder()
+            .put(IndicesBackgroundFrequencyCache.INDICES_CACHE_BACKGROUND_FREQUENCIES_SIZE.getKey(), "1kb").build());
+        Directory dir = newDirectory();
+        IndexWriter writer = new IndexWriter(dir, newIndexWriterConfig());
+        writer.addDocument(newDoc("0", "a", "x"));
+        DirectoryReader reader = DirectoryReader.open(writer);
+        BackgroundFrequencies frequencies = cache.backgroundFrequencies(reader, null);
+        for (int i = 0; i < 1000; i++) {
+            assertEquals(0, frequencies.docFreq(new Term("term", "term_" + i)));
+        }
+        assertEquals(1, frequencies.docFreq(new Term("term", "a")));
+        assertTrue(cache.count() < 100);
+        IOUtils.close(reader, writer, dir, cache);
+    }
+
+    public void testWeight() {
+        BytesRef term = new BytesRef("a");
+        IndicesBackgroundFrequencyCache.Key key = new IndicesBackgroundFrequencyCache.Key(null, "term", null, term);
+        assertThat(IndicesBackgroundFrequencyCache.weigh(key),
+            greaterThanOrEqualTo(key.ramBytesUsed() + IndicesBackgroundFrequencyCache.ENTRY_OVERHEAD_RAM_BYTES_USED));
+
+        Query filter = new TermQuery(new Term("filter", "x"));
+        IndicesBackgroundFrequencyCache.Key filtered = new IndicesBackgroundFrequencyCache.Key(null, "term", filter, term);
+        assertEquals(key.ramBytesUsed() + IndicesBackgroundFrequencyCache.QUERY_DEFAULT_RAM_BYTES_USED, filtered.ramBytesUsed());
+
+        TermInSetQuery accountableFilter = new TermInSetQuery("filter", new BytesRef("x"), new BytesRef("y"));
+        filtered = new IndicesBackgroundFrequencyCache.Key(null, "term", accountableFilter, term);
+        assertEquals(key.ramBytesUsed() + accountableFilter.ramBytesUsed(), filtered.ramBytesUsed());
+    }
+
+    private static Document newDoc(String id, String term, String filter) {
+        Document doc = new Document();
+        doc.add(new StringField("id", id, Field.Store.NO));
+        doc.add(new StringField("term", term, Field.Store.NO));
+        doc.add(new StringField("filter", filter, Field.Store.NO));
+        return doc;
+    }
+}
@@ -0,0 +1,132 @@
+/*
+ * Licensed to Elasticsearch under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Elasticsearch licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.elasticsearch.indices;
+
+import org.apache.lucene.document.Document;
+import org.apache.lucene.document.Field;
+import org.apache.lucene.document.StringField;
+import org.apache.lucene.index.DirectoryReader;
+import org.apache.lucene.index.IndexWriter;
+import org.apache.lucene.index.LeafReader;
+import org.apache.lucene.index.NoMergePolicy;
+import org.apache.lucene.index.Term;
+import org.apache.lucene.store.Directory;
+import org.apache.lucene.util.IOUtils;
+import org.elasticsearch.common.bytes.BytesArray;
+import org.elasticsearch.common.bytes.BytesReference;
+import org.elasticsearch.common.io.stream.NamedWriteableRegistry;
+import org.elasticsearch.common.settings.Settings;
+import org.elasticsearch.indices.IndicesSegmentAggregationCache.SegmentResult;
+import org.elasticsearch.search.DocValueFormat;
+import org.elasticsearch.search.SearchModule;
+import org.elasticsearch.search.aggregations.InternalAggregations;
+import org.elasticsearch.search.aggregations.metrics.max.InternalMax;
+import org.elasticsearch.test.ESTestCase;
+
+import java.util.Collections;
+
+public class IndicesSegmentAggregationCacheTests extends ESTestCase {
+
+    private final NamedWriteableRegistry namedWriteableRegistry =
+        new NamedWriteableRegistry(new SearchModule(Settings.EMPTY, false, Collections.emptyList()).getNamedWriteables());
+
+    public void testPutGet() throws Exception {
+        IndicesSegmentAggregationCache cache = new IndicesSegmentAggregationCache(Settings.EMPTY, namedWriteableRegistry);
+        Directory dir = newDirectory();
+        IndexWriter writer = new IndexWriter(dir, newIndexWriterConfig().setMergePolicy(NoMergePolicy.INSTANCE));
+        writer.addDocument(newDoc("0"));
+        writer.commit();
+        writer.addDocument(newDoc("1"));
+        writer.commit();
+        DirectoryReader reader = DirectoryReader.open(dir);
+        assertEquals(2, reader.leaves().size());
+        LeafReader first = reader.leaves().get(0).reader();
+        LeafReader second = reader.leaves().get(1).reader();
+        assertTrue(IndicesSegmentAggregationCache.canCache(first));
+        BytesReference requestKey = new BytesArray("request");
+
+        assertNull(cache.get(first, requestKey));
+        cache.put(first, requestKey, new SegmentResult(3, aggregations(42)));
+        assertEquals(1, cache.count());
+
+        SegmentResult result = cache.get(first, requestKey);
+        assertNotNull(result);
+        assertEquals(3, result.getTotalHits());
+        InternalMax max = result.getAggregations().get("max");
+        assertEquals(42, max.getValue(), 0d);
+        assertNull(cache.get(second, requestKey));
+        assertNull(cache.get(first, new BytesArray("other_request")));
+        assertEquals(1, cache.hitCount());
+        assertEquals(3, cache.missCount());
+
+        // replacing an entry keeps it registered on its reader
+        cache.put(first, requestKey, new SegmentResult(5, aggregations(21)));
+        assertEquals(1, cache.count());
+        assertEquals(5, cache.get(first, requestKey).getTotalHits());
+        reader.close();
+        assertEquals(0, cache.count());
+
+        IOUtils.close(writer, dir, cache);
+    }
+
+    public void testInvalidateOnReaderClose() throws Exception {
+        IndicesSegmentAggregationCache cache = new IndicesSegmentAggregationCache(Settings.EMPTY, namedWriteableRegistry);
+        Directory dir = newDirectory();
+        IndexWriter writer = new IndexWriter(dir, newIndexWriterConfig().setMergePolicy(NoMergePolicy.INSTANCE));
+        writer.addDocument(newDoc("0"));
+        writer.addDocument(newDoc("1"));
+        writer.commit();
+        writer.addDocument(newDoc("2"));
+        writer.commit();
+        DirectoryReader reader = DirectoryReader.open(dir);
+        BytesReference requestKey = new BytesArray("request");
+        cache.put(reader.leaves().get(0).reader(), requestKey, new SegmentResult(2, aggregations(1)));
+        cache.put(reader.leaves().get(1).reader(), requestKey, new SegmentResult(1, aggregations(2)));
+        assertEquals(2, cache.count());
+
+        // a delete creates a new reader for the first segment only
+        writer.deleteDocuments(new Term("id", "0"));
+        writer.commit();
+        DirectoryReader newReader = DirectoryReader.openIfChanged(reader);
+        assertNotNull(newReader);
+        assertNull(cache.get(newReader.leaves().get(0).reader(), requestKey));
+        assertEquals(1, cache.get(newReader.leaves().get(1).reader(), requestKey).getTotalHits());
+
+        // the entry of the second segment survives since its reader is shared with the new top level reader
+        reader.close();
+        assertEquals(1, cache.count());
+        assertEquals(1, cache.get(newReader.leaves().get(1).reader(), requestKey).getTotalHits());
+
+        newReader.close();
+        assertEquals(0, cache.count());
+        IOUtils.close(writer, dir, cache);
+    }
+
+    private static InternalAggregations aggregations(double value) {
+        return new InternalAggregations(Collections.singletonList(
+            new InternalMax("max", value, DocValueFormat.RAW, Collections.emptyList(), Collections.emptyMap())));
+    }
+
+    private static Document newDoc(String id) {
+        Document doc = new Document();
+        doc.add(new StringField("id", id, Field.Store.NO));
+        return doc;
+    }
+}
@@ -32,6 +32,8 @@ import org.apache.lucene.index.Term;
 import org.apache.lucene.store.BaseDirectoryWrapper;
 import org.apache.lucene.store.Directory;
 import org.apache.lucene.store.IOContext;
+import org.apache.lucene.store.IndexOutput;
+import org.apache.lucene.util.BytesRef;
 import org.apache.lucene.util.IOUtils;
 import org.elasticsearch.ExceptionsHelper;
 import org.elasticsearch.Version;
@@ -43,7 +45,6 @@ import org.elasticsearch.common.bytes.BytesArray;
 import org.elasticsearch.common.bytes.BytesReference;
 import org.elasticsearch.common.io.FileSystemUtils;
 import org.elasticsearch.common.lease.Releasable;
-import org.elasticsearch.common.lucene.store.IndexOutputOutputStream;
 import org.elasticsearch.common.lucene.uid.Versions;
 import org.elasticsearch.common.settings.ClusterSettings;
 import org.elasticsearch.common.settings.Settings;
@@ -56,9 +57,11 @@ import org.elasticsearch.index.mapper.ParsedDocument;
 import org.elasticsearch.index.mapper.SeqNoFieldMapper;
 import org.elasticsearch.index.mapper.Uid;
 import org.elasticsearch.index.mapper.UidFieldMapper;
+import org.elasticsearch.index.seqno.GlobalCheckpointTracker;
 import org.elasticsearch.index.seqno.SeqNoStats;
 import org.elasticsearch.index.seqno.SequenceNumbers;
 import org.elasticsearch.index.shard.IndexShard;
+import org.elasticsearch.index.shard.IndexShardClosedException;
 import org.elasticsearch.index.shard.IndexShardRelocatedException;
 import org.elasticsearch.index.shard.IndexShardState;
 import org.elasticsearch.index.shard.ShardId;
@@ -78,14 +81,18 @@ import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.Comparator;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.function.Supplier;
 import java.util.stream.Collectors;
 
 import static java.util.Collections.emptyMap;
 import static java.util.Collections.emptySet;
 import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.lessThanOrEqualTo;
 import static org.mockito.Matchers.any;
 import static org.mockito.Matchers.anyBoolean;
 import static org.mockito.Matchers.anyString;
@@ -105,8 +112,39 @@ public class RecoverySourceHandlerTests extends ESTestCase {
         final RecoverySettings recoverySettings = new RecoverySettings(settings, service);
         final StartRecoveryRequest request = getStartRecoveryRequest();
         Store store = newStore(createTempDir());
-        RecoverySourceHandler handler = new RecoverySourceHandler(null, null, request,
-            recoverySettings.getChunkSize().bytesAsInt(), Settings.EMPTY);
+        Store targetStore = newStore(createTempDir());
+        final int maxConcurrentFileChunks = randomIntBetween(1, 8);
+        final AtomicInteger inFlightChunks = new AtomicInteger();
+        final List<Thread> responders = new ArrayList<>();
+        final FileChunkTarget target = new FileChunkTarget(targetStore) {
+            @Override
+            public void writeFileChunk(StoreFileMetaData md, long position, BytesReference content, boolean lastChunk,
+                                       int totalTranslogOps, ActionListener<Void> listener) {
+                assertThat(inFlightChunks.incrementAndGet(), lessThanOrEqualTo(maxConcurrentFileChunks));
+                super.writeFileChunk(md, position, content, lastChunk, totalTranslogOps, ActionListener.wrap(
+                    r -> {
+                        inFlightChunks.decrementAndGet();
+                        listener.onResponse(r);
+                    },
+                    e -> {
+                        inFlightChunks.decrementAndGet();
+                        listener.onFailure(e);
+                    }));
+            }
+
+            @Override
+            protected void respond(Runnable response) {
+                if (randomBoolean()) {
+                    response.run();
+                } else {
+                    Thread thread = new Thread(response);
+                    responders.add(thread);
+                    thread.start();
+                }
+            }
+        };
+        RecoverySourceHandler handler = new RecoverySourceHandler(newStartedShard(), target, request,
+            randomIntBetween(16, recoverySettings.getChunkSize().bytesAsInt()), maxConcurrentFileChunks, Settings.EMPTY);
         Directory dir = store.directory();
         RandomIndexWriter writer = new RandomIndexWriter(random(), dir, newIndexWriterConfig());
         int numDocs = randomIntBetween(10, 100);
@@ -124,20 +162,11 @@ public class RecoverySourceHandlerTests extends ESTestCase {
         for (StoreFileMetaData md : metadata) {
             metas.add(md);
         }
-        Store targetStore = newStore(createTempDir());
-        handler.sendFiles(store, metas.toArray(new StoreFileMetaData[0]), (md) -> {
-            try {
-                return new IndexOutputOutputStream(targetStore.createVerifyingOutput(md.name(), md, IOContext.DEFAULT)) {
-                    @Override
-                    public void close() throws IOException {
-                        super.close();
-                        targetStore.directory().sync(Collections.singleton(md.name())); // sync otherwise MDW will mess with it
-                    }
-                };
-            } catch (IOException e) {
-                throw new RuntimeException(e);
-            }
-        });
+        handler.sendFiles(store, metas.toArray(new StoreFileMetaData[0]), () -> 0);
+        for (Thread responder : responders) {
+            responder.join();
+        }
+        assertEquals(0, inFlightChunks.get());
         Store.MetadataSnapshot targetStoreMetadata = targetStore.getMetadata(null);
         Store.RecoveryDiff recoveryDiff = targetStoreMetadata.recoveryDiff(metadata);
         assertEquals(metas.size(), recoveryDiff.identical.size());
@@ -148,6 +177,12 @@ public class RecoverySourceHandlerTests extends ESTestCase {
         IOUtils.close(reader, store, targetStore);
     }
 
+    private static IndexShard newStartedShard() {
+        final IndexShard shard = mock(IndexShard.class);
+        when(shard.state()).thenReturn(IndexShardState.STARTED);
+        return shard;
+    }
+
     public StartRecoveryRequest getStartRecoveryRequest() throws IOException {
         Store.MetadataSnapshot metadataSnapshot = randomBoolean() ? Store.MetadataSnapshot.EMPTY :
             new Store.MetadataSnapshot(Collections.emptyMap(),
@@ -172,7 +207,7 @@ public class RecoverySourceHandlerTests extends ESTestCase {
         when(shard.state()).thenReturn(IndexShardState.STARTED);
         final RecoveryTargetHandler recoveryTarget = mock(RecoveryTargetHandler.class);
         final RecoverySourceHandler handler =
-            new RecoverySourceHandler(shard, recoveryTarget, request, fileChunkSizeInBytes, Settings.EMPTY);
+            new RecoverySourceHandler(shard, recoveryTarget, request, fileChunkSizeInBytes, between(1, 8), Settings.EMPTY);
         final List<Translog.Operation> operations = new ArrayList<>();
         final int initialNumberOfDocs = randomIntBetween(16, 64);
         for (int i = 0; i < initialNumberOfDocs; i++) {
@@ -278,8 +313,9 @@ public class RecoverySourceHandlerTests extends ESTestCase {
         Path tempDir = createTempDir();
         Store store = newStore(tempDir, false);
         AtomicBoolean failedEngine = new AtomicBoolean(false);
-        RecoverySourceHandler handler = new RecoverySourceHandler(null, null, request,
-            recoverySettings.getChunkSize().bytesAsInt(), Settings.EMPTY) {
+        Store targetStore = newStore(createTempDir(), false);
+        RecoverySourceHandler handler = new RecoverySourceHandler(newStartedShard(), new FileChunkTarget(targetStore), request,
+            recoverySettings.getChunkSize().bytesAsInt(), between(1, 8), Settings.EMPTY) {
             @Override
             protected void failEngine(IOException cause) {
                 assertFalse(failedEngine.get());
@@ -307,21 +343,8 @@ public class RecoverySourceHandlerTests extends ESTestCase {
         CorruptionUtils.corruptFile(random(), FileSystemUtils.files(tempDir, (p) ->
             (p.getFileName().toString().equals("write.lock") ||
                 p.getFileName().toString().startsWith("extra")) == false));
-        Store targetStore = newStore(createTempDir(), false);
         try {
-            handler.sendFiles(store, metas.toArray(new StoreFileMetaData[0]), (md) -> {
-                try {
-                    return new IndexOutputOutputStream(targetStore.createVerifyingOutput(md.name(), md, IOContext.DEFAULT)) {
-                        @Override
-                        public void close() throws IOException {
-                            super.close();
-                            store.directory().sync(Collections.singleton(md.name())); // sync otherwise MDW will mess with it
-                        }
-                    };
-                } catch (IOException e) {
-                    throw new RuntimeException(e);
-                }
-            });
+            handler.sendFiles(store, metas.toArray(new StoreFileMetaData[0]), () -> 0);
             fail("corrupted index");
         } catch (IOException ex) {
             assertNotNull(ExceptionsHelper.unwrapCorruption(ex));
@@ -339,8 +362,21 @@ public class RecoverySourceHandlerTests extends ESTestCase {
         Path tempDir = createTempDir();
         Store store = newStore(tempDir, false);
         AtomicBoolean failedEngine = new AtomicBoolean(false);
-        RecoverySourceHandler handler = new RecoverySourceHandler(null, null, request,
-            recoverySettings.getChunkSize().bytesAsInt(), Settings.EMPTY) {
+        final boolean throwCorruptedIndexException = randomBoolean();
+        Store targetStore = newStore(createTempDir(), false);
+        final FileChunkTarget target = new FileChunkTarget(targetStore) {
+            @Override
+            public void writeFileChunk(StoreFileMetaData md, long position, BytesReference content, boolean lastChunk,
+                                       int totalTranslogOps, ActionListener<Void> listener) {
+                if (throwCorruptedIndexException) {
+                    listener.onFailure(new RuntimeException(new CorruptIndexException("foo", "bar")));
+                } else {
+                    listener.onFailure(new RuntimeException("boom"));
+                }
+            }
+        };
+        RecoverySourceHandler handler = new RecoverySourceHandler(newStartedShard(), target, request,
+            recoverySettings.getChunkSize().bytesAsInt(), between(1, 8), Settings.EMPTY) {
             @Override
             protected void failEngine(IOException cause) {
                 assertFalse(failedEngine.get());
@@ -364,16 +400,8 @@ public class RecoverySourceHandlerTests extends ESTestCase {
         for (StoreFileMetaData md : metadata) {
             metas.add(md);
         }
-        final boolean throwCorruptedIndexException = randomBoolean();
-        Store targetStore = newStore(createTempDir(), false);
         try {
-            handler.sendFiles(store, metas.toArray(new StoreFileMetaData[0]), (md) -> {
-                if (throwCorruptedIndexException) {
-                    throw new RuntimeException(new CorruptIndexException("foo", "bar"));
-                } else {
-                    throw new RuntimeException("boom");
-                }
-            });
+            handler.sendFiles(store, metas.toArray(new StoreFileMetaData[0]), () -> 0);
             fail("exception index");
         } catch (RuntimeException ex) {
             assertNull(ExceptionsHelper.unwrapCorruption(ex));
@@ -389,6 +417,44 @@ public class RecoverySourceHandlerTests extends ESTestCase {
         IOUtils.close(store, targetStore);
     }
 
+    public void testSendFilesStopsWhenShardIsClosed() throws Throwable {
+        final StartRecoveryRequest request = getStartRecoveryRequest();
+        Store store = newStore(createTempDir());
+        Store targetStore = newStore(createTempDir());
+        final AtomicInteger sentChunks = new AtomicInteger();
+        final IndexShard shard = mock(IndexShard.class);
+        when(shard.state()).thenAnswer(invocation -> sentChunks.get() > 0 ? IndexShardState.CLOSED : IndexShardState.STARTED);
+        final FileChunkTarget target = new FileChunkTarget(targetStore) {
+            @Override
+            public void writeFileChunk(StoreFileMetaData md, long position, BytesReference content, boolean lastChunk,
+                                       int totalTranslogOps, ActionListener<Void> listener) {
+                sentChunks.incrementAndGet();
+                listener.onResponse(null);
+            }
+        };
+        RecoverySourceHandler handler = new RecoverySourceHandler(shard, target, request, 16, between(1, 8), Settings.EMPTY);
+        Directory dir = store.directory();
+        RandomIndexWriter writer = new RandomIndexWriter(random(), dir, newIndexWriterConfig());
+        int numDocs = randomIntBetween(10, 100);
+        for (int i = 0; i < numDocs; i++) {
+            Document document = new Document();
+            document.add(new StringField("id", Integer.toString(i), Field.Store.YES));
+            document.add(newField("field", randomUnicodeOfCodepointLengthBetween(1, 10), TextField.TYPE_STORED));
+            writer.addDocument(document);
+        }
+        writer.commit();
+        writer.close();
+
+        Store.MetadataSnapshot metadata = store.getMetadata(null);
+        List<StoreFileMetaData> metas = new ArrayList<>();
+        for (StoreFileMetaData md : metadata) {
+            metas.add(md);
+        }
+        expectThrows(IndexShardClosedException.class, () -> handler.sendFiles(store, metas.toArray(new StoreFileMetaData[0]), () -> 0));
+        assertEquals(1, sentChunks.get());
+        IOUtils.close(store, targetStore);
+    }
+
     public void testThrowExceptionOnPrimaryRelocatedBeforePhase1Started() throws IOException {
         final RecoverySettings recoverySettings = new RecoverySettings(Settings.EMPTY, service);
         final StartRecoveryRequest request = getStartRecoveryRequest();
@@ -409,6 +475,7 @@ public class RecoverySourceHandlerTests extends ESTestCase {
             mock(RecoveryTargetHandler.class),
             request,
             recoverySettings.getChunkSize().bytesAsInt(),
+            between(1, 8),
             Settings.EMPTY) {
 
 
@@ -458,5 +525,81 @@ public class RecoverySourceHandlerTests extends ESTestCase {
         return new Store(shardId,  INDEX_SETTINGS, directoryService, new DummyShardLock(shardId));
     }
 
+    /**
+     * A recovery target that only receives file chunks and writes them to the given store.
+     */
+    private static class FileChunkTarget implements RecoveryTargetHandler {
+
+        private final Store store;
+        private final Map<String, IndexOutput> outputs = new HashMap<>();
+
+        FileChunkTarget(Store store) {
+            this.store = store;
+        }
 
+        @Override
+        public void writeFileChunk(StoreFileMetaData md, long position, BytesReference content, boolean lastChunk,
+                                   int totalTranslogOps, ActionListener<Void> listener) {
+            try {
+                IndexOutput output = outputs.get(md.name());
+                if (output == null) {
+                    output = store.createVerifyingOutput(md.name(), md, IOContext.DEFAULT);
+                    outputs.put(md.name(), output);
+                }
+                assertEquals(output.getFilePointer(), position);
+                final BytesRef bytes = content.toBytesRef();
+                output.writeBytes(bytes.bytes, bytes.offset, bytes.length);
+                if (lastChunk) {
+                    outputs.remove(md.name()).close();
+                    store.directory().sync(Collections.singleton(md.name())); // sync otherwise MDW will mess with it
+                }
+            } catch (Exception e) {
+                IOUtils.closeWhileHandlingException(outputs.remove(md.name()));
+                respond(() -> listener.onFailure(e));
+                return;
+            }
+            // the content is reused by the source once the chunk is acknowledged
+            respond(() -> listener.onResponse(null));
+        }
+
+        protected void respond(Runnable response) {
+            response.run();
+        }
+
+        @Override
+        public void prepareForTranslogOperations(boolean createNewTranslog, int totalTranslogOps) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public void finalizeRecovery(long globalCheckpoint) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public void ensureClusterStateVersion(long clusterStateVersion) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public void handoffPrimaryContext(GlobalCheckpointTracker.PrimaryContext primaryContext) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public long indexTranslogOperations(List<Translog.Operation> operations, int totalTranslogOps) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public void receiveFileInfo(List<String> phase1FileNames, List<Long> phase1FileSizes, List<String> phase1ExistingFileNames,
+                                    List<Long> phase1ExistingFileSizes, int totalTranslogOps) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public void cleanFiles(int totalTranslogOps, Store.MetadataSnapshot sourceMetaData) {
+            throw new UnsupportedOperationException();
+        }
+    }
 }
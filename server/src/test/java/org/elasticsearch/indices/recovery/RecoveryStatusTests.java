@@ -19,16 +19,26 @@
 package org.elasticsearch.indices.recovery;
 
 import org.apache.lucene.codecs.CodecUtil;
+import org.apache.lucene.store.IOContext;
+import org.apache.lucene.store.IndexInput;
 import org.apache.lucene.store.IndexOutput;
+import org.apache.lucene.store.RAMDirectory;
 import org.elasticsearch.Version;
+import org.elasticsearch.action.ActionListener;
 import org.elasticsearch.cluster.node.DiscoveryNode;
+import org.elasticsearch.common.bytes.BytesArray;
 import org.elasticsearch.common.util.set.Sets;
 import org.elasticsearch.index.IndexService;
 import org.elasticsearch.index.shard.IndexShard;
+import org.elasticsearch.index.store.Store;
 import org.elasticsearch.index.store.StoreFileMetaData;
 import org.elasticsearch.test.ESSingleNodeTestCase;
 
 import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
 import java.util.Set;
 import java.util.regex.Pattern;
 
@@ -87,4 +97,54 @@ public class RecoveryStatusTests extends ESSingleNodeTestCase {
         // we must fail the recovery because marking it as done will try to move the shard to POST_RECOVERY, which will fail because it's started
         status.fail(new RecoveryFailedException(status.state(), "end of test. OK.", null), false);
     }
+
+    public void testWriteFileChunksOutOfOrder() throws IOException {
+        IndexService service = createIndex("foo");
+
+        IndexShard indexShard = service.getShardOrNull(0);
+        DiscoveryNode node = new DiscoveryNode("foo", buildNewFakeTransportAddress(), emptyMap(), emptySet(), Version.CURRENT);
+        RecoveryTarget status = new RecoveryTarget(indexShard, node, new PeerRecoveryTargetService.RecoveryListener() {
+            @Override
+            public void onRecoveryDone(RecoveryState state) {
+            }
+
+            @Override
+            public void onRecoveryFailure(RecoveryState state, RecoveryFailedException e, boolean sendShardFailure) {
+            }
+        }, version -> {});
+        final byte[] content;
+        final StoreFileMetaData md;
+        try (RAMDirectory dir = new RAMDirectory()) {
+            try (IndexOutput output = dir.createOutput("foo.bar", IOContext.DEFAULT)) {
+                final byte[] bytes = randomUnicodeOfLengthBetween(1, 1024).getBytes(StandardCharsets.UTF_8);
+                output.writeBytes(bytes, bytes.length);
+                CodecUtil.writeFooter(output);
+            }
+            try (IndexInput input = dir.openInput("foo.bar", IOContext.DEFAULT)) {
+                content = new byte[(int) input.length()];
+                input.readBytes(content, 0, content.length);
+                md = new StoreFileMetaData("foo.bar", content.length, Store.digestToString(CodecUtil.retrieveChecksum(input)),
+                    MIN_SUPPORTED_LUCENE_VERSION);
+            }
+        }
+        status.state().getIndex().addFileDetail(md.name(), md.length(), false);
+        final List<Integer> positions = new ArrayList<>();
+        final int chunkSize = randomIntBetween(1, 64);
+        for (int position = 0; position < content.length; position += chunkSize) {
+            positions.add(position);
+        }
+        Collections.shuffle(positions, random());
+        final List<Integer> written = new ArrayList<>();
+        for (int position : positions) {
+            final int length = Math.min(chunkSize, content.length - position);
+            status.writeFileChunk(md, position, new BytesArray(content, position, length), position + length == content.length, 0,
+                ActionListener.wrap(r -> written.add(position), e -> { throw new AssertionError(e); }));
+        }
+        // the chunks are written in order and each chunk is acknowledged once it is written
+        Collections.sort(positions);
+        assertEquals(positions, written);
+        assertEquals(content.length, status.state().getIndex().recoveredBytes());
+        assertNull(status.getOpenIndexOutput("foo.bar"));
+        status.fail(new RecoveryFailedException(status.state(), "end of test. OK.", null), false);
+    }
 }
@@ -72,6 +72,43 @@ public class ResponseCollectorServiceTests extends ESTestCase {
         assertThat(nodeStats.get("node1").serviceTime, equalTo(10.0));
     }
 
+    public void testResponseTimePercentile() throws Exception {
+        for (int i = 1; i < ResponseCollectorService.MIN_RESPONSE_TIME_SAMPLES; i++) {
+            collector.addNodeStatistics("node1", 1, i, 10);
+            assertThat(collector.getResponseTimePercentile("node1", 50), equalTo(-1L));
+        }
+        collector.addNodeStatistics("node1", 1, ResponseCollectorService.MIN_RESPONSE_TIME_SAMPLES, 10);
+        assertThat(collector.getResponseTimePercentile("node1", 50), equalTo(5L));
+        assertThat(collector.getResponseTimePercentile("node1", 100), equalTo(10L));
+        assertThat(collector.getResponseTimePercentile("node1", 0), equalTo(1L));
+        assertThat(collector.getResponseTimePercentile("node2", 50), equalTo(-1L));
+
+        // only the most recent response times are taken into account
+        for (int i = 0; i < ResponseCollectorService.RESPONSE_TIME_SAMPLES; i++) {
+            collector.addNodeStatistics("node1", 1, 1000 + i, 10);
+        }
+        assertThat(collector.getResponseTimePercentile("node1", 0), equalTo(1000L));
+        assertThat(collector.getResponseTimePercentile("node1", 95), equalTo(1094L));
+        expectThrows(IllegalArgumentException.class, () -> collector.getResponseTimePercentile("node1", 101));
+    }
+
+    public void testHedgedRequestStats() throws Exception {
+        collector.addHedgedRequest("node1");
+        collector.addHedgedRequest("node1");
+        collector.addHedgedRequestWon("node1");
+        collector.addHedgedRequest("node2");
+        AdaptiveSelectionStats stats = collector.getAdaptiveStats(Collections.emptyMap());
+        assertThat(stats.getHedgedSearches().get("node1"), equalTo(2L));
+        assertThat(stats.getHedgedSearchesWon().get("node1"), equalTo(1L));
+        assertThat(stats.getHedgedSearches().get("node2"), equalTo(1L));
+        assertThat(stats.getHedgedSearchesWon().get("node2"), equalTo(0L));
+
+        collector.removeNode("node1");
+        stats = collector.getAdaptiveStats(Collections.emptyMap());
+        assertFalse(stats.getHedgedSearches().containsKey("node1"));
+        assertTrue(stats.getHedgedSearches().containsKey("node2"));
+    }
+
     /*
      * Test that concurrently adding values and removing nodes does not cause exceptions
      */
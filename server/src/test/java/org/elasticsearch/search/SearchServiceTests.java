@@ -24,6 +24,12 @@ import org.apache.lucene.search.Query;
 import org.apache.lucene.store.AlreadyClosedException;
 import org.elasticsearch.action.ActionListener;
 import org.elasticsearch.action.index.IndexResponse;
+import org.elasticsearch.action.search.ClearScrollResponse;
+import org.elasticsearch.action.search.ClosePointInTimeAction;
+import org.elasticsearch.action.search.ClosePointInTimeRequest;
+import org.elasticsearch.action.search.OpenPointInTimeAction;
+import org.elasticsearch.action.search.OpenPointInTimeRequest;
+import org.elasticsearch.action.search.OpenPointInTimeResponse;
 import org.elasticsearch.action.search.SearchPhaseExecutionException;
 import org.elasticsearch.action.search.SearchResponse;
 import org.elasticsearch.action.search.SearchTask;
@@ -54,6 +60,7 @@ import org.elasticsearch.script.ScriptType;
 import org.elasticsearch.search.aggregations.bucket.global.GlobalAggregationBuilder;
 import org.elasticsearch.search.aggregations.bucket.terms.TermsAggregationBuilder;
 import org.elasticsearch.search.aggregations.support.ValueType;
+import org.elasticsearch.search.builder.PointInTimeBuilder;
 import org.elasticsearch.search.builder.SearchSourceBuilder;
 import org.elasticsearch.search.fetch.ShardFetchRequest;
 import org.elasticsearch.search.internal.AliasFilter;
@@ -78,6 +85,8 @@ import static org.elasticsearch.action.support.WriteRequest.RefreshPolicy.IMMEDI
 import static org.elasticsearch.indices.cluster.IndicesClusterStateService.AllocatedIndices.IndexRemovalReason.DELETED;
 import static org.elasticsearch.test.hamcrest.ElasticsearchAssertions.assertAcked;
 import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.CoreMatchers.instanceOf;
+import static org.hamcrest.Matchers.greaterThan;
 import static org.hamcrest.Matchers.is;
 import static org.hamcrest.Matchers.notNullValue;
 
@@ -146,6 +155,52 @@ public class SearchServiceTests extends ESSingleNodeTestCase {
         assertEquals(0, service.getActiveContexts());
     }
 
+    public void testPointInTime() {
+        createIndex("index");
+        client().prepareIndex("index", "type", "1").setSource("field", "value").setRefreshPolicy(IMMEDIATE).get();
+        SearchService service = getInstanceFromNode(SearchService.class);
+        IndicesService indicesService = getInstanceFromNode(IndicesService.class);
+        IndexShard indexShard = indicesService.indexServiceSafe(resolveIndex("index")).getShard(0);
+
+        OpenPointInTimeResponse openResponse = client().execute(OpenPointInTimeAction.INSTANCE,
+            new OpenPointInTimeRequest("index").keepAlive(TimeValue.timeValueMinutes(1))).actionGet();
+        assertEquals(1, service.getActiveReaderContexts());
+        assertEquals(1, indexShard.searchStats().getOpenReaderContexts());
+        assertThat(indexShard.searchStats().getPinnedSegmentsSizeInBytes(), greaterThan(0L));
+
+        client().prepareIndex("index", "type", "2").setSource("field", "value").setRefreshPolicy(IMMEDIATE).get();
+        SearchResponse searchResponse = client().prepareSearch()
+            .setSource(new SearchSourceBuilder().pointInTimeBuilder(new PointInTimeBuilder(openResponse.getId()))).get();
+        assertEquals(1, searchResponse.getHits().getTotalHits());
+        assertEquals(2, client().prepareSearch("index").get().getHits().getTotalHits());
+        // the search contexts of the requests are freed, only the reader context is kept
+        assertEquals(0, service.getActiveContexts());
+        assertEquals(1, service.getActiveReaderContexts());
+
+        ClearScrollResponse closeResponse = client().execute(ClosePointInTimeAction.INSTANCE,
+            new ClosePointInTimeRequest(openResponse.getId())).actionGet();
+        assertTrue(closeResponse.isSucceeded());
+        assertEquals(1, closeResponse.getNumFreed());
+        assertEquals(0, service.getActiveReaderContexts());
+        assertEquals(0, indexShard.searchStats().getOpenReaderContexts());
+        assertEquals(0, indexShard.searchStats().getPinnedSegmentsSizeInBytes());
+
+        SearchPhaseExecutionException e = expectThrows(SearchPhaseExecutionException.class, () -> client().prepareSearch()
+            .setSource(new SearchSourceBuilder().pointInTimeBuilder(new PointInTimeBuilder(openResponse.getId()))).get());
+        assertThat(e.shardFailures()[0].getCause(), instanceOf(SearchContextMissingException.class));
+    }
+
+    public void testPointInTimeIsFreedOnIndexDelete() {
+        createIndex("index");
+        client().prepareIndex("index", "type", "1").setSource("field", "value").setRefreshPolicy(IMMEDIATE).get();
+        SearchService service = getInstanceFromNode(SearchService.class);
+        client().execute(OpenPointInTimeAction.INSTANCE, new OpenPointInTimeRequest("index").keepAlive(TimeValue.timeValueMinutes(1)))
+            .actionGet();
+        assertEquals(1, service.getActiveReaderContexts());
+        assertAcked(client().admin().indices().prepareDelete("index"));
+        assertEquals(0, service.getActiveReaderContexts());
+    }
+
     public void testCloseSearchContextOnRewriteException() {
         createIndex("index");
         client().prepareIndex("index", "type", "1").setSource("field", "value").setRefreshPolicy(IMMEDIATE).get();
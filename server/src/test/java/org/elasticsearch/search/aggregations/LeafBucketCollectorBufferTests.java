@@ -0,0 +1,88 @@
+/*
+ * Licensed to Elasticsearch under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Elasticsearch licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.elasticsearch.search.aggregations;
+
+import org.elasticsearch.test.ESTestCase;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+public class LeafBucketCollectorBufferTests extends ESTestCase {
+
+    public void testBlocks() throws IOException {
+        final List<String> collected = new ArrayList<>();
+        final LeafBucketCollector in = new LeafBucketCollector() {
+            @Override
+            public void collect(int doc, long bucket) {
+                collected.add(bucket + ":" + doc);
+            }
+
+            @Override
+            public void collect(int[] docs, int count, long bucket) {
+                collected.add(bucket + ":" + Arrays.toString(Arrays.copyOf(docs, count)));
+            }
+        };
+        final LeafBucketCollectorBuffer buffer = new LeafBucketCollectorBuffer(3);
+        final LeafBucketCollector first = buffer.wrap(in);
+        first.collect(0, 0);
+        first.collect(1, 0);
+        first.collect(2, 0);
+        first.collect(3, 0);
+        assertEquals(Arrays.asList("0:[0, 1, 2]"), collected);
+        // a new bucket flushes the previous one
+        first.collect(4, 1);
+        first.collect(5, 1);
+        assertEquals(Arrays.asList("0:[0, 1, 2]", "0:3"), collected);
+        // so does the next segment
+        final LeafBucketCollector second = buffer.wrap(in);
+        assertEquals(Arrays.asList("0:[0, 1, 2]", "0:3", "1:[4, 5]"), collected);
+        second.collect(0, 1);
+        buffer.flush();
+        assertEquals(Arrays.asList("0:[0, 1, 2]", "0:3", "1:[4, 5]", "1:0"), collected);
+        buffer.flush();
+        assertEquals(4, collected.size());
+    }
+
+    public void testSameResultAsSingleDocs() throws IOException {
+        final long[] expected = new long[5];
+        final long[] actual = new long[5];
+        final LeafBucketCollectorBuffer buffer = new LeafBucketCollectorBuffer(randomIntBetween(1, 10));
+        final LeafBucketCollector in = new LeafBucketCollector() {
+            @Override
+            public void collect(int doc, long bucket) {
+                actual[(int) bucket] += doc;
+            }
+        };
+        for (int segment = 0; segment < 3; segment++) {
+            final LeafBucketCollector leaf = buffer.wrap(in);
+            int doc = 0;
+            for (int i = 0; i < 100; i++) {
+                doc += randomIntBetween(1, 10);
+                final int bucket = randomIntBetween(0, 4);
+                expected[bucket] += doc;
+                leaf.collect(doc, bucket);
+            }
+        }
+        buffer.flush();
+        assertArrayEquals(expected, actual);
+    }
+}
@@ -21,12 +21,18 @@ package org.elasticsearch.search.aggregations.bucket.composite;
 
 import org.apache.lucene.analysis.MockAnalyzer;
 import org.apache.lucene.document.Document;
+import org.apache.lucene.document.Field;
+import org.apache.lucene.document.IntPoint;
+import org.apache.lucene.document.LongPoint;
 import org.apache.lucene.document.SortedNumericDocValuesField;
 import org.apache.lucene.document.SortedSetDocValuesField;
+import org.apache.lucene.document.StringField;
 import org.apache.lucene.index.DirectoryReader;
+import org.apache.lucene.index.IndexOptions;
 import org.apache.lucene.index.IndexReader;
 import org.apache.lucene.index.IndexWriterConfig;
 import org.apache.lucene.index.RandomIndexWriter;
+import org.apache.lucene.index.Term;
 import org.apache.lucene.search.IndexSearcher;
 import org.apache.lucene.search.MatchAllDocsQuery;
 import org.apache.lucene.search.Query;
@@ -34,11 +40,13 @@ import org.apache.lucene.search.Sort;
 import org.apache.lucene.search.SortField;
 import org.apache.lucene.search.SortedNumericSortField;
 import org.apache.lucene.search.SortedSetSortField;
+import org.apache.lucene.search.TermQuery;
 import org.apache.lucene.store.Directory;
 import org.apache.lucene.util.BytesRef;
 import org.apache.lucene.util.LuceneTestCase;
 import org.apache.lucene.util.NumericUtils;
 import org.apache.lucene.util.TestUtil;
+import org.elasticsearch.common.CheckedConsumer;
 import org.elasticsearch.common.settings.Settings;
 import org.elasticsearch.index.Index;
 import org.elasticsearch.index.IndexSettings;
@@ -50,6 +58,12 @@ import org.elasticsearch.index.mapper.Mapper;
 import org.elasticsearch.index.mapper.NumberFieldMapper;
 import org.elasticsearch.search.aggregations.AggregatorTestCase;
 import org.elasticsearch.search.aggregations.bucket.histogram.DateHistogramInterval;
+import org.elasticsearch.search.aggregations.metrics.avg.Avg;
+import org.elasticsearch.search.aggregations.metrics.avg.AvgAggregationBuilder;
+import org.elasticsearch.search.aggregations.metrics.max.Max;
+import org.elasticsearch.search.aggregations.metrics.max.MaxAggregationBuilder;
+import org.elasticsearch.search.aggregations.metrics.sum.Sum;
+import org.elasticsearch.search.aggregations.metrics.sum.SumAggregationBuilder;
 import org.elasticsearch.search.aggregations.metrics.tophits.TopHits;
 import org.elasticsearch.search.aggregations.metrics.tophits.TopHitsAggregationBuilder;
 import org.elasticsearch.search.sort.SortOrder;
@@ -68,6 +82,8 @@ import java.util.Map;
 import java.util.function.Consumer;
 import java.util.function.Supplier;
 
+import static org.hamcrest.Matchers.lessThanOrEqualTo;
+
 public class CompositeAggregatorTests extends AggregatorTestCase {
     private static MappedFieldType[] FIELD_TYPES;
 
@@ -79,10 +95,12 @@ public class CompositeAggregatorTests extends AggregatorTestCase {
         FIELD_TYPES[0] = new KeywordFieldMapper.KeywordFieldType();
         FIELD_TYPES[0].setName("keyword");
         FIELD_TYPES[0].setHasDocValues(true);
+        FIELD_TYPES[0].setIndexOptions(IndexOptions.DOCS);
 
         FIELD_TYPES[1] = new NumberFieldMapper.NumberFieldType(NumberFieldMapper.NumberType.LONG);
         FIELD_TYPES[1].setName("long");
         FIELD_TYPES[1].setHasDocValues(true);
+        FIELD_TYPES[1].setIndexOptions(IndexOptions.DOCS);
 
         FIELD_TYPES[2] = new NumberFieldMapper.NumberFieldType(NumberFieldMapper.NumberType.DOUBLE);
         FIELD_TYPES[2].setName("double");
@@ -97,6 +115,7 @@ public class CompositeAggregatorTests extends AggregatorTestCase {
         FIELD_TYPES[4] = new NumberFieldMapper.NumberFieldType(NumberFieldMapper.NumberType.INTEGER);
         FIELD_TYPES[4].setName("price");
         FIELD_TYPES[4].setHasDocValues(true);
+        FIELD_TYPES[4].setIndexOptions(IndexOptions.DOCS);
     }
 
     @Override
@@ -1133,6 +1152,196 @@ public class CompositeAggregatorTests extends AggregatorTestCase {
         );
     }
 
+    public void testWithKeywordAndMetrics() throws Exception {
+        final List<Map<String, List<Object>>> dataset = new ArrayList<>();
+        final Map<String, long[]> expected = new HashMap<>();
+        final int numDocs = randomIntBetween(50, 500);
+        for (int i = 0; i < numDocs; i++) {
+            final String keyword = randomFrom("a", "b", "c", "d");
+            final long value = randomIntBetween(0, 1000);
+            dataset.add(createDocument("keyword", keyword, "long", value));
+            // sum, max, count
+            long[] stats = expected.computeIfAbsent(keyword, k -> new long[] { 0, Long.MIN_VALUE, 0 });
+            stats[0] += value;
+            stats[1] = Math.max(stats[1], value);
+            stats[2]++;
+        }
+        final Sort sort = new Sort(new SortedSetSortField("keyword", false));
+        testSearchCase(new MatchAllDocsQuery(), sort, dataset,
+            () -> {
+                TermsValuesSourceBuilder terms = new TermsValuesSourceBuilder("keyword")
+                    .field("keyword");
+                return new CompositeAggregationBuilder("name", Collections.singletonList(terms))
+                    .subAggregation(new SumAggregationBuilder("sum").field("long"))
+                    .subAggregation(new MaxAggregationBuilder("max").field("long"))
+                    .subAggregation(new AvgAggregationBuilder("avg").field("long"));
+            }, (result) -> {
+                assertEquals(expected.size(), result.getBuckets().size());
+                for (CompositeAggregation.Bucket bucket : result.getBuckets()) {
+                    long[] stats = expected.get((String) bucket.getKey().get("keyword"));
+                    assertEquals(stats[2], bucket.getDocCount());
+                    Sum sum = bucket.getAggregations().get("sum");
+                    assertEquals(stats[0], sum.getValue(), 0d);
+                    Max max = bucket.getAggregations().get("max");
+                    assertEquals(stats[1], max.getValue(), 0d);
+                    Avg avg = bucket.getAggregations().get("avg");
+                    assertEquals((double) stats[0] / stats[2], avg.getValue(), 0.0001d);
+                }
+            }
+        );
+    }
+
+    public void testSortedDocsProducer() throws IOException {
+        final List<Map<String, List<Object>>> dataset = new ArrayList<>();
+        dataset.addAll(
+            Arrays.asList(
+                createDocument("keyword", "a", "long", 1L, "double", 1.0d, "date", asLong("2017-10-20T03:08:45")),
+                createDocument("keyword", "b", "long", 2L, "double", 2.0d, "date", asLong("2017-10-21T03:08:45"))
+            )
+        );
+        withIndex(null, dataset, null, searcher -> {
+            final Query matchAll = new MatchAllDocsQuery();
+            assertSortedDocsProducer(true, searcher, matchAll, FIELD_TYPES,
+                new TermsValuesSourceBuilder("keyword").field("keyword"), new TermsValuesSourceBuilder("long").field("long"));
+            assertSortedDocsProducer(true, searcher, matchAll, FIELD_TYPES,
+                new TermsValuesSourceBuilder("long").field("long"));
+            assertSortedDocsProducer(true, searcher, matchAll, FIELD_TYPES,
+                new TermsValuesSourceBuilder("price").field("price"));
+            assertSortedDocsProducer(true, searcher, matchAll, FIELD_TYPES,
+                new DateHistogramValuesSourceBuilder("date").field("date").dateHistogramInterval(DateHistogramInterval.days(1)),
+                new TermsValuesSourceBuilder("keyword").field("keyword"));
+            // the order of the leading source is reversed
+            assertSortedDocsProducer(false, searcher, matchAll, FIELD_TYPES,
+                new TermsValuesSourceBuilder("keyword").field("keyword").order(SortOrder.DESC));
+            // the leading source uses a missing value
+            assertSortedDocsProducer(false, searcher, matchAll, FIELD_TYPES,
+                new TermsValuesSourceBuilder("keyword").field("keyword").missing("z"));
+            // the leading source is not an integral field
+            assertSortedDocsProducer(false, searcher, matchAll, FIELD_TYPES,
+                new TermsValuesSourceBuilder("double").field("double"));
+            assertSortedDocsProducer(false, searcher, matchAll, FIELD_TYPES,
+                new HistogramValuesSourceBuilder("long").field("long").interval(5));
+            // the query does not match all documents
+            assertSortedDocsProducer(false, searcher, new TermQuery(new Term("keyword", "a")), FIELD_TYPES,
+                new TermsValuesSourceBuilder("keyword").field("keyword"));
+            // the values of the field are not indexed
+            assertSortedDocsProducer(false, searcher, matchAll, docValuesOnlyFieldTypes(),
+                new TermsValuesSourceBuilder("keyword").field("keyword"));
+        });
+    }
+
+    private void assertSortedDocsProducer(boolean expected, IndexSearcher searcher, Query query, MappedFieldType[] fieldTypes,
+                                          CompositeValuesSourceBuilder<?>... sources) throws IOException {
+        CompositeAggregationBuilder builder = new CompositeAggregationBuilder("name", Arrays.asList(sources));
+        CompositeAggregator aggregator = createAggregator(query, builder, searcher, createIndexSettings(null), fieldTypes);
+        assertEquals(sources[0].name(), expected, aggregator.useSortedDocsProducer());
+    }
+
+    public void testIndexSortPrefix() throws IOException {
+        final List<Map<String, List<Object>>> dataset = new ArrayList<>();
+        dataset.addAll(
+            Arrays.asList(
+                createDocument("keyword", "a", "long", 1L, "date", asLong("2017-10-20T03:08:45")),
+                createDocument("keyword", "b", "long", 2L, "date", asLong("2017-10-21T03:08:45"))
+            )
+        );
+        final CompositeValuesSourceBuilder<?> keyword = new TermsValuesSourceBuilder("keyword").field("keyword");
+        final CompositeValuesSourceBuilder<?> keywordDesc = new TermsValuesSourceBuilder("keyword").field("keyword")
+            .order(SortOrder.DESC);
+        final CompositeValuesSourceBuilder<?> longTerms = new TermsValuesSourceBuilder("long").field("long");
+        final CompositeValuesSourceBuilder<?> dateHisto = new DateHistogramValuesSourceBuilder("date").field("date")
+            .dateHistogramInterval(DateHistogramInterval.days(1));
+
+        final Sort keywordSort = new Sort(new SortedSetSortField("keyword", false));
+        assertSortPrefixLength(1, keywordSort, dataset, keyword, longTerms);
+        assertSortPrefixLength(0, keywordSort, dataset, longTerms, keyword);
+        assertSortPrefixLength(0, keywordSort, dataset, keywordDesc, longTerms);
+
+        final Sort keywordLongSort = new Sort(new SortedSetSortField("keyword", false), new SortedNumericSortField("long",
+            SortField.Type.LONG));
+        assertSortPrefixLength(2, keywordLongSort, dataset, keyword, longTerms);
+        assertSortPrefixLength(2, keywordLongSort, dataset, keyword, longTerms, dateHisto);
+
+        final Sort dateKeywordSort = new Sort(new SortedNumericSortField("date", SortField.Type.LONG),
+            new SortedSetSortField("keyword", false));
+        // the rounded values of the date histogram are not sorted by keyword
+        assertSortPrefixLength(1, dateKeywordSort, dataset, dateHisto, keyword);
+        assertSortPrefixLength(1, dateKeywordSort, dataset, dateHisto);
+    }
+
+    private void assertSortPrefixLength(int expected, Sort sort, List<Map<String, List<Object>>> dataset,
+                                        CompositeValuesSourceBuilder<?>... sources) throws IOException {
+        withIndex(sort, dataset, null, searcher -> {
+            CompositeAggregationBuilder builder = new CompositeAggregationBuilder("name", Arrays.asList(sources));
+            CompositeAggregator aggregator = createAggregator(new MatchAllDocsQuery(), builder, searcher, createIndexSettings(sort),
+                FIELD_TYPES);
+            assertEquals(expected, aggregator.sortPrefixLength());
+        });
+    }
+
+    public void testPagingMatchesFullCollection() throws IOException {
+        final List<Map<String, List<Object>>> dataset = new ArrayList<>();
+        final int numDocs = randomIntBetween(50, 300);
+        for (int i = 0; i < numDocs; i++) {
+            final Map<String, List<Object>> document = createDocument("keyword", "v" + randomIntBetween(0, 20),
+                "date", randomLongBetween(0, 10 * 86400000L));
+            if (randomIntBetween(0, 9) > 0) {
+                document.put("long", Collections.singletonList((long) randomIntBetween(0, 10)));
+            }
+            dataset.add(document);
+        }
+        final Term deleteTerm = randomBoolean() ? new Term("keyword", "v" + randomIntBetween(0, 20)) : null;
+        final List<Supplier<List<CompositeValuesSourceBuilder<?>>>> sourcesList = Arrays.asList(
+            () -> Arrays.asList(new TermsValuesSourceBuilder("keyword").field("keyword")),
+            () -> Arrays.asList(new TermsValuesSourceBuilder("keyword").field("keyword"),
+                new TermsValuesSourceBuilder("long").field("long")),
+            () -> Arrays.asList(new TermsValuesSourceBuilder("long").field("long"),
+                new TermsValuesSourceBuilder("keyword").field("keyword")),
+            () -> Arrays.asList(new DateHistogramValuesSourceBuilder("date").field("date")
+                    .dateHistogramInterval(DateHistogramInterval.days(1)),
+                new TermsValuesSourceBuilder("keyword").field("keyword"))
+        );
+        final List<Sort> sorts = Arrays.asList(
+            null,
+            new Sort(new SortedSetSortField("keyword", false)),
+            new Sort(new SortedNumericSortField("date", SortField.Type.LONG)),
+            new Sort(new SortedSetSortField("keyword", false), new SortedNumericSortField("long", SortField.Type.LONG))
+        );
+        for (Sort sort : sorts) {
+            withIndex(sort, dataset, deleteTerm, searcher -> {
+                for (Supplier<List<CompositeValuesSourceBuilder<?>>> sources : sourcesList) {
+                    final InternalComposite full = search(searcher, new MatchAllDocsQuery(),
+                        new CompositeAggregationBuilder("name", sources.get()).size(numDocs), docValuesOnlyFieldTypes());
+                    final List<String> expected = new ArrayList<>();
+                    for (InternalComposite.InternalBucket bucket : full.getBuckets()) {
+                        expected.add(bucket.getKeyAsString() + "=" + bucket.getDocCount());
+                    }
+                    final int pageSize = randomIntBetween(1, 10);
+                    final List<String> actual = new ArrayList<>();
+                    Map<String, Object> after = null;
+                    while (true) {
+                        final CompositeAggregationBuilder builder = new CompositeAggregationBuilder("name", sources.get())
+                            .size(pageSize);
+                        if (after != null) {
+                            builder.aggregateAfter(after);
+                        }
+                        final InternalComposite page = searchWithIndexSettings(searcher, new MatchAllDocsQuery(), builder,
+                            createIndexSettings(sort));
+                        if (page.getBuckets().isEmpty()) {
+                            break;
+                        }
+                        assertThat(page.getBuckets().size(), lessThanOrEqualTo(pageSize));
+                        for (InternalComposite.InternalBucket bucket : page.getBuckets()) {
+                            actual.add(bucket.getKeyAsString() + "=" + bucket.getDocCount());
+                        }
+                        after = page.getBuckets().get(page.getBuckets().size() - 1).getKey();
+                    }
+                    assertEquals(expected, actual);
+                }
+            });
+        }
+    }
+
     private void testSearchCase(Query query, Sort sort,
                                 List<Map<String, List<Object>>> dataset,
                                 Supplier<CompositeAggregationBuilder> create,
@@ -1184,6 +1393,69 @@ public class CompositeAggregatorTests extends AggregatorTestCase {
                     composite = search(indexSearcher, query, aggregationBuilder, FIELD_TYPES);
                 }
                 verify.accept(composite);
+                if (sort == null) {
+                    // the same aggregation without the indexed values, the documents are collected in the order of the query
+                    final InternalComposite docValuesOnly;
+                    if (reduced) {
+                        docValuesOnly = searchAndReduce(indexSearcher, query, aggregationBuilder, docValuesOnlyFieldTypes());
+                    } else {
+                        docValuesOnly = search(indexSearcher, query, aggregationBuilder, docValuesOnlyFieldTypes());
+                    }
+                    verify.accept(docValuesOnly);
+                } else if (reduced == false) {
+                    // the same aggregation with the index sort visible to the aggregator
+                    verify.accept(searchWithIndexSettings(indexSearcher, query, aggregationBuilder, indexSettings));
+                }
+            }
+        }
+    }
+
+    private InternalComposite searchWithIndexSettings(IndexSearcher searcher,
+                                                      Query query,
+                                                      CompositeAggregationBuilder builder,
+                                                      IndexSettings indexSettings) throws IOException {
+        CompositeAggregator aggregator = createAggregator(query, builder, searcher, indexSettings, FIELD_TYPES);
+        aggregator.preCollection();
+        searcher.search(query, aggregator);
+        aggregator.postCollection();
+        return (InternalComposite) aggregator.buildAggregation(0L);
+    }
+
+    /**
+     * Returns a copy of the field types that does not use the indexed values.
+     */
+    private static MappedFieldType[] docValuesOnlyFieldTypes() {
+        MappedFieldType[] fieldTypes = new MappedFieldType[FIELD_TYPES.length];
+        for (int i = 0; i < FIELD_TYPES.length; i++) {
+            fieldTypes[i] = FIELD_TYPES[i].clone();
+            fieldTypes[i].setIndexOptions(IndexOptions.NONE);
+        }
+        return fieldTypes;
+    }
+
+    private void withIndex(Sort sort,
+                           List<Map<String, List<Object>>> dataset,
+                           Term deleteTerm,
+                           CheckedConsumer<IndexSearcher, IOException> consumer) throws IOException {
+        try (Directory directory = newDirectory()) {
+            IndexWriterConfig config = LuceneTestCase.newIndexWriterConfig(random(), new MockAnalyzer(random()));
+            if (sort != null) {
+                config.setIndexSort(sort);
+                config.setCodec(TestUtil.getDefaultCodec());
+            }
+            try (RandomIndexWriter indexWriter = new RandomIndexWriter(random(), directory, config)) {
+                Document document = new Document();
+                for (Map<String, List<Object>> fields : dataset) {
+                    addToDocument(document, fields);
+                    indexWriter.addDocument(document);
+                    document.clear();
+                }
+                if (deleteTerm != null) {
+                    indexWriter.deleteDocuments(deleteTerm);
+                }
+            }
+            try (IndexReader indexReader = DirectoryReader.open(directory)) {
+                consumer.accept(newSearcher(indexReader, sort == null, sort == null));
             }
         }
     }
@@ -1207,12 +1479,22 @@ public class CompositeAggregatorTests extends AggregatorTestCase {
         for (Map.Entry<String, List<Object>> entry : keys.entrySet()) {
             final String name = entry.getKey();
             for (Object value : entry.getValue()) {
+                final MappedFieldType fieldType = fieldType(name);
+                final boolean indexed = fieldType != null && fieldType.indexOptions() != IndexOptions.NONE;
                 if (value instanceof Long) {
                     doc.add(new SortedNumericDocValuesField(name, (long) value));
+                    if (indexed && NumberFieldMapper.NumberType.INTEGER.typeName().equals(fieldType.typeName())) {
+                        doc.add(new IntPoint(name, Math.toIntExact((long) value)));
+                    } else if (indexed) {
+                        doc.add(new LongPoint(name, (long) value));
+                    }
                 } else if (value instanceof Double) {
                     doc.add(new SortedNumericDocValuesField(name, NumericUtils.doubleToSortableLong((double) value)));
                 } else if (value instanceof String) {
                     doc.add(new SortedSetDocValuesField(name, new BytesRef((String) value)));
+                    if (indexed) {
+                        doc.add(new StringField(name, (String) value, Field.Store.NO));
+                    }
                 } else {
                     throw new AssertionError("invalid object: " + value.getClass().getSimpleName());
                 }
@@ -1221,6 +1503,15 @@ public class CompositeAggregatorTests extends AggregatorTestCase {
     }
 
 
+    private static MappedFieldType fieldType(String name) {
+        for (MappedFieldType fieldType : FIELD_TYPES) {
+            if (fieldType.name().equals(name)) {
+                return fieldType;
+            }
+        }
+        return null;
+    }
+
     @SuppressWarnings("unchecked")
     private static Map<String, Object> createAfterKey(Object... fields) {
         assert fields.length % 2 == 0;
@@ -24,15 +24,20 @@ import org.apache.lucene.document.LongPoint;
 import org.apache.lucene.document.SortedNumericDocValuesField;
 import org.apache.lucene.index.DirectoryReader;
 import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.index.IndexWriterConfig;
 import org.apache.lucene.index.RandomIndexWriter;
 import org.apache.lucene.search.IndexSearcher;
 import org.apache.lucene.search.MatchAllDocsQuery;
 import org.apache.lucene.search.MatchNoDocsQuery;
 import org.apache.lucene.search.Query;
+import org.apache.lucene.search.Sort;
+import org.apache.lucene.search.SortField;
+import org.apache.lucene.search.SortedNumericSortField;
 import org.apache.lucene.store.Directory;
 import org.elasticsearch.index.mapper.DateFieldMapper;
 import org.elasticsearch.search.aggregations.AggregationBuilders;
 import org.elasticsearch.search.aggregations.AggregatorTestCase;
+import org.joda.time.DateTimeZone;
 
 import java.io.IOException;
 import java.util.Arrays;
@@ -370,6 +375,63 @@ public class DateHistogramAggregatorTests extends AggregatorTestCase {
             histogram -> {}, 5));
     }
 
+    public void testIndexSortedOnField() throws IOException {
+        final int numDocs = randomIntBetween(100, 1000);
+        final long start = asLong("2017-03-20T00:00:00");
+        final long[][] docs = new long[numDocs][];
+        for (int i = 0; i < numDocs; i++) {
+            // a few days around the daylight saving time transition of the time zone
+            final long instant = start + randomLongBetween(0, 14 * 24 * 60 * 60 * 1000L);
+            docs[i] = randomBoolean() ? new long[] { instant } : new long[] { instant, instant + randomLongBetween(0, 3600 * 1000L) };
+        }
+        final DateHistogramInterval interval = randomFrom(DateHistogramInterval.MINUTE, DateHistogramInterval.HOUR,
+            DateHistogramInterval.DAY, DateHistogramInterval.WEEK, DateHistogramInterval.minutes(90), DateHistogramInterval.days(2));
+        final DateTimeZone timeZone = randomFrom(DateTimeZone.UTC, DateTimeZone.forID("Europe/Paris"));
+        final long offset = randomBoolean() ? 0 : randomLongBetween(-3600 * 1000L, 3600 * 1000L);
+        final Consumer<DateHistogramAggregationBuilder> configure = aggregation -> aggregation.field(DATE_FIELD)
+            .dateHistogramInterval(interval).timeZone(timeZone).offset(offset).minDocCount(1L);
+
+        final Histogram unsorted = searchDocs(docs, null, configure);
+        final Sort sort = new Sort(new SortedNumericSortField(DATE_FIELD, SortField.Type.LONG, randomBoolean()));
+        final Histogram sorted = searchDocs(docs, sort, configure);
+        assertEquals(unsorted.getBuckets().size(), sorted.getBuckets().size());
+        for (int i = 0; i < unsorted.getBuckets().size(); i++) {
+            assertEquals(unsorted.getBuckets().get(i).getKey(), sorted.getBuckets().get(i).getKey());
+            assertEquals(unsorted.getBuckets().get(i).getDocCount(), sorted.getBuckets().get(i).getDocCount());
+        }
+    }
+
+    private Histogram searchDocs(long[][] docs, Sort indexSort, Consumer<DateHistogramAggregationBuilder> configure) throws IOException {
+        try (Directory directory = newDirectory()) {
+            IndexWriterConfig config = newIndexWriterConfig();
+            if (indexSort != null) {
+                config.setIndexSort(indexSort);
+            }
+            try (RandomIndexWriter indexWriter = new RandomIndexWriter(random(), directory, config)) {
+                for (long[] values : docs) {
+                    if (rarely()) {
+                        indexWriter.commit();
+                    }
+                    Document document = new Document();
+                    for (long value : values) {
+                        document.add(new SortedNumericDocValuesField(DATE_FIELD, value));
+                    }
+                    indexWriter.addDocument(document);
+                }
+            }
+            try (IndexReader indexReader = DirectoryReader.open(directory)) {
+                IndexSearcher indexSearcher = newSearcher(indexReader, true, true);
+                DateHistogramAggregationBuilder aggregationBuilder = new DateHistogramAggregationBuilder("_name");
+                configure.accept(aggregationBuilder);
+                DateFieldMapper.Builder builder = new DateFieldMapper.Builder("_name");
+                DateFieldMapper.DateFieldType fieldType = builder.fieldType();
+                fieldType.setHasDocValues(true);
+                fieldType.setName(DATE_FIELD);
+                return search(indexSearcher, new MatchAllDocsQuery(), aggregationBuilder, 10000, fieldType);
+            }
+        }
+    }
+
     private void testSearchCase(Query query, List<String> dataset,
                                 Consumer<DateHistogramAggregationBuilder> configure,
                                 Consumer<Histogram> verify) throws IOException {
@@ -42,4 +42,20 @@ public class TermsAggregatorFactoryTests extends ESTestCase {
         assertThat(TermsAggregatorFactory.subAggCollectionMode(1, 100),
             equalTo(Aggregator.SubAggCollectionMode.BREADTH_FIRST));
     }
+
+    public void testDefaultExecutionMode() {
+        final long minCardinality = TermsAggregatorFactory.MAP_MIN_CARDINALITY;
+        final int ratio = TermsAggregatorFactory.MAP_CARDINALITY_RATIO;
+        assertThat(TermsAggregatorFactory.defaultExecutionMode(minCardinality, 0),
+            equalTo(TermsAggregatorFactory.ExecutionMode.MAP));
+        assertThat(TermsAggregatorFactory.defaultExecutionMode(minCardinality * ratio, minCardinality - 1),
+            equalTo(TermsAggregatorFactory.ExecutionMode.MAP));
+        assertThat(TermsAggregatorFactory.defaultExecutionMode(minCardinality * ratio, minCardinality),
+            equalTo(TermsAggregatorFactory.ExecutionMode.GLOBAL_ORDINALS));
+        // global ordinals of low cardinality fields are cheap to build, however few documents match
+        assertThat(TermsAggregatorFactory.defaultExecutionMode(minCardinality - 1, 0),
+            equalTo(TermsAggregatorFactory.ExecutionMode.GLOBAL_ORDINALS));
+        assertThat(TermsAggregatorFactory.defaultExecutionMode(-1, 0),
+            equalTo(TermsAggregatorFactory.ExecutionMode.GLOBAL_ORDINALS));
+    }
 }
@@ -18,6 +18,7 @@
  */
 package org.elasticsearch.search.aggregations.bucket.terms;
 
+import org.apache.lucene.document.BinaryDocValuesField;
 import org.apache.lucene.document.Document;
 import org.apache.lucene.document.Field;
 import org.apache.lucene.document.InetAddressPoint;
@@ -27,19 +28,25 @@ import org.apache.lucene.document.SortedNumericDocValuesField;
 import org.apache.lucene.document.SortedSetDocValuesField;
 import org.apache.lucene.document.StringField;
 import org.apache.lucene.index.DirectoryReader;
+import org.apache.lucene.index.DocValues;
 import org.apache.lucene.index.IndexReader;
 import org.apache.lucene.index.IndexableField;
 import org.apache.lucene.index.RandomIndexWriter;
+import org.apache.lucene.index.Term;
 import org.apache.lucene.search.IndexSearcher;
 import org.apache.lucene.search.MatchAllDocsQuery;
+import org.apache.lucene.search.Query;
+import org.apache.lucene.search.TermQuery;
 import org.apache.lucene.store.Directory;
 import org.apache.lucene.util.BytesRef;
 import org.apache.lucene.util.NumericUtils;
 import org.elasticsearch.common.network.InetAddresses;
 import org.elasticsearch.common.settings.Settings;
+import org.elasticsearch.common.util.BigArrays;
 import org.elasticsearch.common.util.MockBigArrays;
 import org.elasticsearch.common.util.MockPageCacheRecycler;
 import org.elasticsearch.index.IndexSettings;
+import org.elasticsearch.index.fielddata.FieldData;
 import org.elasticsearch.index.mapper.IpFieldMapper;
 import org.elasticsearch.index.mapper.KeywordFieldMapper;
 import org.elasticsearch.index.mapper.MappedFieldType;
@@ -77,6 +84,7 @@ import java.util.function.Function;
 import static org.hamcrest.Matchers.equalTo;
 import static org.hamcrest.Matchers.greaterThan;
 import static org.hamcrest.Matchers.instanceOf;
+import static org.hamcrest.Matchers.lessThanOrEqualTo;
 
 public class TermsAggregatorTests extends AggregatorTestCase {
 
@@ -136,6 +144,120 @@ public class TermsAggregatorTests extends AggregatorTestCase {
         directory.close();
     }
 
+    public void testNumericCollectModeFromSampledCardinality() throws Exception {
+        try (Directory directory = newDirectory()) {
+            final int numDocs = TermsAggregatorFactory.CARDINALITY_SAMPLE_SIZE * 2 + randomIntBetween(1, 1000);
+            try (RandomIndexWriter indexWriter = new RandomIndexWriter(random(), directory)) {
+                List<Document> documents = new ArrayList<>();
+                for (int i = 0; i < numDocs; i++) {
+                    Document document = new Document();
+                    document.add(new SortedNumericDocValuesField("low", i % 5));
+                    document.add(new SortedNumericDocValuesField("high", i));
+                    documents.add(document);
+                }
+                indexWriter.addDocuments(documents);
+            }
+            try (IndexReader indexReader = maybeWrapReaderEs(DirectoryReader.open(directory))) {
+                long low = TermsAggregatorFactory.estimateCardinality(indexReader,
+                    ctx -> DocValues.getSortedNumeric(ctx.reader(), "low"), BigArrays.NON_RECYCLING_INSTANCE);
+                assertEquals(5, low);
+                long high = TermsAggregatorFactory.estimateCardinality(indexReader,
+                    ctx -> DocValues.getSortedNumeric(ctx.reader(), "high"), BigArrays.NON_RECYCLING_INSTANCE);
+                assertThat(high, greaterThan((long) numDocs / 2));
+                assertThat(high, lessThanOrEqualTo((long) numDocs * 2));
+                long missing = TermsAggregatorFactory.estimateCardinality(indexReader,
+                    ctx -> DocValues.getSortedNumeric(ctx.reader(), "missing"), BigArrays.NON_RECYCLING_INSTANCE);
+                assertEquals(0, missing);
+
+                IndexSearcher indexSearcher = newIndexSearcher(indexReader);
+                for (String field : new String[] {"low", "high"}) {
+                    MappedFieldType fieldType = new NumberFieldMapper.NumberFieldType(NumberFieldMapper.NumberType.LONG);
+                    fieldType.setName(field);
+                    fieldType.setHasDocValues(true);
+                    TermsAggregationBuilder aggregationBuilder = new TermsAggregationBuilder("_name", ValueType.LONG)
+                        .field(field)
+                        .subAggregation(AggregationBuilders.max("max").field(field));
+                    TermsAggregator aggregator = createAggregator(aggregationBuilder, indexSearcher, fieldType);
+                    assertEquals(field.equals("low") ? Aggregator.SubAggCollectionMode.DEPTH_FIRST
+                        : Aggregator.SubAggCollectionMode.BREADTH_FIRST, aggregator.collectMode);
+                }
+            }
+        }
+    }
+
+    public void testBytesSampledCardinality() throws Exception {
+        try (Directory directory = newDirectory()) {
+            final int numDocs = TermsAggregatorFactory.CARDINALITY_SAMPLE_SIZE * 2 + randomIntBetween(1, 1000);
+            try (RandomIndexWriter indexWriter = new RandomIndexWriter(random(), directory)) {
+                List<Document> documents = new ArrayList<>();
+                for (int i = 0; i < numDocs; i++) {
+                    Document document = new Document();
+                    document.add(new BinaryDocValuesField("low", new BytesRef("term_" + (i % 5))));
+                    document.add(new BinaryDocValuesField("high", new BytesRef("term_" + i)));
+                    documents.add(document);
+                }
+                indexWriter.addDocuments(documents);
+            }
+            try (IndexReader indexReader = maybeWrapReaderEs(DirectoryReader.open(directory))) {
+                long low = TermsAggregatorFactory.estimateCardinality(indexReader,
+                    ctx -> TermsAggregatorFactory.hashedValues(FieldData.singleton(DocValues.getBinary(ctx.reader(), "low"))),
+                    BigArrays.NON_RECYCLING_INSTANCE);
+                assertEquals(5, low);
+                long high = TermsAggregatorFactory.estimateCardinality(indexReader,
+                    ctx -> TermsAggregatorFactory.hashedValues(FieldData.singleton(DocValues.getBinary(ctx.reader(), "high"))),
+                    BigArrays.NON_RECYCLING_INSTANCE);
+                assertThat(high, greaterThan((long) numDocs / 2));
+                assertThat(high, lessThanOrEqualTo((long) numDocs * 2));
+            }
+        }
+    }
+
+    public void testExecutionModeFromSampledCardinality() throws Exception {
+        try (Directory directory = newDirectory()) {
+            final int numDocs = TermsAggregatorFactory.CARDINALITY_SAMPLE_SIZE * 2 + randomIntBetween(1, 1000);
+            try (RandomIndexWriter indexWriter = new RandomIndexWriter(random(), directory)) {
+                List<Document> documents = new ArrayList<>();
+                for (int i = 0; i < numDocs; i++) {
+                    Document document = new Document();
+                    document.add(new SortedSetDocValuesField("low", new BytesRef("term_" + (i % 5))));
+                    document.add(new SortedSetDocValuesField("high", new BytesRef("term_" + i)));
+                    if (i % 1000 == 0) {
+                        document.add(new StringField("rare", "true", Field.Store.NO));
+                    }
+                    documents.add(document);
+                }
+                indexWriter.addDocuments(documents);
+            }
+            try (IndexReader indexReader = maybeWrapReaderEs(DirectoryReader.open(directory))) {
+                IndexSearcher indexSearcher = newIndexSearcher(indexReader);
+                Query rare = new TermQuery(new Term("rare", "true"));
+                // few documents match and the field has many distinct values, the global ordinals are not worth building
+                assertThat(createTermsAggregator("high", null, rare, indexSearcher), instanceOf(StringTermsAggregator.class));
+                assertThat(createTermsAggregator("high", null, new MatchAllDocsQuery(), indexSearcher),
+                    instanceOf(GlobalOrdinalsStringTermsAggregator.class));
+                assertThat(createTermsAggregator("high", null, null, indexSearcher),
+                    instanceOf(GlobalOrdinalsStringTermsAggregator.class));
+                assertThat(createTermsAggregator("low", null, rare, indexSearcher),
+                    instanceOf(GlobalOrdinalsStringTermsAggregator.class));
+                // an explicit execution hint always wins
+                assertThat(createTermsAggregator("high", "global_ordinals", rare, indexSearcher),
+                    instanceOf(GlobalOrdinalsStringTermsAggregator.class));
+                assertThat(createTermsAggregator("low", "map", null, indexSearcher), instanceOf(StringTermsAggregator.class));
+            }
+        }
+    }
+
+    private TermsAggregator createTermsAggregator(String field, String executionHint, Query query,
+                                                  IndexSearcher indexSearcher) throws IOException {
+        MappedFieldType fieldType = new KeywordFieldMapper.KeywordFieldType();
+        fieldType.setName(field);
+        fieldType.setHasDocValues(true);
+        TermsAggregationBuilder aggregationBuilder = new TermsAggregationBuilder("_name", ValueType.STRING)
+            .field(field)
+            .executionHint(executionHint);
+        return createAggregator(query, aggregationBuilder, indexSearcher, createIndexSettings(), fieldType);
+    }
+
     public void testSimple() throws Exception {
         try (Directory directory = newDirectory()) {
             try (RandomIndexWriter indexWriter = new RandomIndexWriter(random(), directory)) {
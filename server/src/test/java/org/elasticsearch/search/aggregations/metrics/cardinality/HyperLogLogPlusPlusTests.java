@@ -21,12 +21,23 @@ package org.elasticsearch.search.aggregations.metrics.cardinality;
 
 import com.carrotsearch.hppc.BitMixer;
 import com.carrotsearch.hppc.IntHashSet;
+import org.elasticsearch.Version;
+import org.elasticsearch.common.breaker.CircuitBreaker;
+import org.elasticsearch.common.io.stream.BytesStreamOutput;
+import org.elasticsearch.common.io.stream.StreamInput;
+import org.elasticsearch.common.settings.ClusterSettings;
+import org.elasticsearch.common.settings.Settings;
 import org.elasticsearch.common.util.BigArrays;
+import org.elasticsearch.indices.breaker.HierarchyCircuitBreakerService;
 import org.elasticsearch.test.ESTestCase;
+import org.elasticsearch.test.VersionUtils;
+
+import java.io.IOException;
 
 import static org.elasticsearch.search.aggregations.metrics.cardinality.HyperLogLogPlusPlus.MAX_PRECISION;
 import static org.elasticsearch.search.aggregations.metrics.cardinality.HyperLogLogPlusPlus.MIN_PRECISION;
 import static org.hamcrest.Matchers.closeTo;
+import static org.hamcrest.Matchers.lessThan;
 
 public class HyperLogLogPlusPlusTests extends ESTestCase {
     public void testEncodeDecode() {
@@ -126,4 +137,71 @@ public class HyperLogLogPlusPlusTests extends ESTestCase {
         assertEquals(18, HyperLogLogPlusPlus.precisionFromThreshold(100000));
         assertEquals(18, HyperLogLogPlusPlus.precisionFromThreshold(1000000));
     }
+
+    public void testMaxRunLens() {
+        for (int iter = 0; iter < 1000; ++iter) {
+            long a = 0;
+            long b = 0;
+            long expected = 0;
+            for (int i = 0; i < 8; ++i) {
+                final long x = randomIntBetween(0, 64 - MIN_PRECISION + 1);
+                final long y = randomBoolean() ? x : randomIntBetween(0, 64 - MIN_PRECISION + 1);
+                a |= x << (i * 8);
+                b |= y << (i * 8);
+                expected |= Math.max(x, y) << (i * 8);
+            }
+            assertEquals(expected, HyperLogLogPlusPlus.maxRunLens(a, b));
+        }
+    }
+
+    public void testSerialization() throws IOException {
+        final int p = randomIntBetween(MIN_PRECISION, MAX_PRECISION);
+        final HyperLogLogPlusPlus counts = new HyperLogLogPlusPlus(p, BigArrays.NON_RECYCLING_INSTANCE, 1);
+        final long bucket = randomInt(10);
+        final int numValues = randomIntBetween(1, randomBoolean() ? 100 : 100000);
+        for (int i = 0; i < numValues; ++i) {
+            counts.collect(bucket, BitMixer.mix64(randomInt()));
+        }
+        final HyperLogLogPlusPlus copy = new HyperLogLogPlusPlus(p, BigArrays.NON_RECYCLING_INSTANCE, 1);
+        copy.merge(0, counts, bucket);
+
+        final Version version = randomBoolean() ? Version.CURRENT
+            : VersionUtils.randomVersionBetween(random(), Version.V_6_0_0, Version.V_6_2_2);
+        final BytesStreamOutput out = new BytesStreamOutput();
+        out.setVersion(version);
+        copy.writeTo(0, out);
+        final StreamInput in = out.bytes().streamInput();
+        in.setVersion(version);
+        final HyperLogLogPlusPlus read = HyperLogLogPlusPlus.readFrom(in, BigArrays.NON_RECYCLING_INSTANCE);
+        assertEquals(-1, in.read());
+        assertTrue(copy.equals(0, read));
+        assertEquals(counts.cardinality(bucket), read.cardinality(0));
+    }
+
+    public void testSparseBucketsUseLittleMemory() {
+        final HierarchyCircuitBreakerService breakerService = new HierarchyCircuitBreakerService(Settings.EMPTY,
+            new ClusterSettings(Settings.EMPTY, ClusterSettings.BUILT_IN_CLUSTER_SETTINGS));
+        final BigArrays bigArrays = new BigArrays(null, breakerService, false).withCircuitBreaking();
+        final int p = randomIntBetween(12, MAX_PRECISION);
+        final int numBuckets = randomIntBetween(100, 1000);
+        try (HyperLogLogPlusPlus counts = new HyperLogLogPlusPlus(p, bigArrays, 1)) {
+            for (int bucket = 0; bucket < numBuckets; ++bucket) {
+                final int numValues = randomIntBetween(1, 10);
+                for (int i = 0; i < numValues; ++i) {
+                    counts.collect(bucket, BitMixer.mix64(randomInt()));
+                }
+            }
+            // dense registers would take m bytes per bucket
+            final long used = breakerService.getBreaker(CircuitBreaker.REQUEST).getUsed();
+            assertThat(used, lessThan(numBuckets * HyperLogLogPlusPlus.memoryUsage(p) / 10));
+
+            // a bucket that crosses the threshold gets its registers
+            final int numValues = randomIntBetween(1 << p, 2 << p);
+            for (int i = 0; i < numValues; ++i) {
+                counts.collect(0, BitMixer.mix64(randomInt()));
+            }
+            assertThat((double) counts.cardinality(0), closeTo(numValues, 0.1 * numValues));
+        }
+        assertEquals(0, breakerService.getBreaker(CircuitBreaker.REQUEST).getUsed());
+    }
 }
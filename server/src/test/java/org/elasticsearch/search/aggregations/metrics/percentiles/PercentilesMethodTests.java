@@ -19,6 +19,7 @@
 
 package org.elasticsearch.search.aggregations.metrics.percentiles;
 
+import org.elasticsearch.Version;
 import org.elasticsearch.common.io.stream.BytesStreamOutput;
 import org.elasticsearch.common.io.stream.StreamInput;
 import org.elasticsearch.test.ESTestCase;
@@ -33,6 +34,7 @@ public class PercentilesMethodTests extends ESTestCase {
     public void testValidOrdinals() {
         assertThat(PercentilesMethod.TDIGEST.ordinal(), equalTo(0));
         assertThat(PercentilesMethod.HDR.ordinal(), equalTo(1));
+        assertThat(PercentilesMethod.SKETCH.ordinal(), equalTo(2));
     }
 
     public void testwriteTo() throws Exception {
@@ -49,6 +51,19 @@ public class PercentilesMethodTests extends ESTestCase {
                 assertThat(in.readVInt(), equalTo(1));
             }
         }
+
+        try (BytesStreamOutput out = new BytesStreamOutput()) {
+            PercentilesMethod.SKETCH.writeTo(out);
+            try (StreamInput in = out.bytes().streamInput()) {
+                assertThat(in.readVInt(), equalTo(2));
+            }
+        }
+
+        try (BytesStreamOutput out = new BytesStreamOutput()) {
+            out.setVersion(Version.V_6_2_2);
+            IllegalArgumentException e = expectThrows(IllegalArgumentException.class, () -> PercentilesMethod.SKETCH.writeTo(out));
+            assertThat(e.getMessage(), containsString("[sketch] is not supported on nodes before version [6.2.3]"));
+        }
     }
 
     public void testReadFrom() throws Exception {
@@ -64,11 +79,17 @@ public class PercentilesMethodTests extends ESTestCase {
                 assertThat(PercentilesMethod.readFromStream(in), equalTo(PercentilesMethod.HDR));
             }
         }
+        try (BytesStreamOutput out = new BytesStreamOutput()) {
+            out.writeVInt(2);
+            try (StreamInput in = out.bytes().streamInput()) {
+                assertThat(PercentilesMethod.readFromStream(in), equalTo(PercentilesMethod.SKETCH));
+            }
+        }
     }
 
     public void testInvalidReadFrom() throws Exception {
         try (BytesStreamOutput out = new BytesStreamOutput()) {
-            out.writeVInt(randomIntBetween(2, Integer.MAX_VALUE));
+            out.writeVInt(randomIntBetween(3, Integer.MAX_VALUE));
             try (StreamInput in = out.bytes().streamInput()) {
                 PercentilesMethod.readFromStream(in);
                 fail("Expected IOException");
@@ -0,0 +1,106 @@
+/*
+ * Licensed to Elasticsearch under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Elasticsearch licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.elasticsearch.search.aggregations.metrics.percentiles.sketch;
+
+import org.elasticsearch.common.io.stream.Writeable.Reader;
+import org.elasticsearch.search.DocValueFormat;
+import org.elasticsearch.search.aggregations.metrics.percentiles.InternalPercentilesRanksTestCase;
+import org.elasticsearch.search.aggregations.metrics.percentiles.ParsedPercentiles;
+import org.elasticsearch.search.aggregations.pipeline.PipelineAggregator;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+public class InternalSketchPercentilesRanksTests extends InternalPercentilesRanksTestCase<InternalSketchPercentileRanks> {
+
+    @Override
+    protected InternalSketchPercentileRanks createTestInstance(String name, List<PipelineAggregator> aggregators,
+                                                               Map<String, Object> metadata, boolean keyed, DocValueFormat format,
+                                                               double[] percents, double[] values) {
+
+        final RelativeErrorSketch state = new RelativeErrorSketch(RelativeErrorSketch.DEFAULT_RELATIVE_ACCURACY);
+        Arrays.stream(values).forEach(state::add);
+
+        return new InternalSketchPercentileRanks(name, percents, state, keyed, format, aggregators, metadata);
+    }
+
+    @Override
+    protected void assertReduced(InternalSketchPercentileRanks reduced, List<InternalSketchPercentileRanks> inputs) {
+        // it is hard to check the values due to the inaccuracy of the algorithm
+        long totalCount = 0;
+        for (InternalSketchPercentileRanks ranks : inputs) {
+            totalCount += ranks.state.count();
+        }
+        assertEquals(totalCount, reduced.state.count());
+    }
+
+    @Override
+    protected Reader<InternalSketchPercentileRanks> instanceReader() {
+        return InternalSketchPercentileRanks::new;
+    }
+
+    @Override
+    protected Class<? extends ParsedPercentiles> implementationClass() {
+        return ParsedSketchPercentileRanks.class;
+    }
+
+    @Override
+    protected InternalSketchPercentileRanks mutateInstance(InternalSketchPercentileRanks instance) {
+        String name = instance.getName();
+        double[] percents = instance.keys;
+        RelativeErrorSketch state = instance.state;
+        boolean keyed = instance.keyed;
+        DocValueFormat formatter = instance.formatter();
+        List<PipelineAggregator> pipelineAggregators = instance.pipelineAggregators();
+        Map<String, Object> metaData = instance.getMetaData();
+        switch (between(0, 4)) {
+        case 0:
+            name += randomAlphaOfLength(5);
+            break;
+        case 1:
+            percents = Arrays.copyOf(percents, percents.length + 1);
+            percents[percents.length - 1] = randomDouble() * 100;
+            Arrays.sort(percents);
+            break;
+        case 2:
+            state = new RelativeErrorSketch(state);
+            for (int i = 0; i < between(10, 100); i++) {
+                state.add(randomDouble());
+            }
+            break;
+        case 3:
+            keyed = keyed == false;
+            break;
+        case 4:
+            if (metaData == null) {
+                metaData = new HashMap<>(1);
+            } else {
+                metaData = new HashMap<>(instance.getMetaData());
+            }
+            metaData.put(randomAlphaOfLength(15), randomInt());
+            break;
+        default:
+            throw new AssertionError("Illegal randomisation branch");
+        }
+        return new InternalSketchPercentileRanks(name, percents, state, keyed, formatter, pipelineAggregators, metaData);
+    }
+}
@@ -0,0 +1,161 @@
+/*
+ * Licensed to Elasticsearch under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Elasticsearch licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.elasticsearch.search.aggregations.metrics.percentiles.sketch;
+
+import org.elasticsearch.common.io.stream.BytesStreamOutput;
+import org.elasticsearch.common.io.stream.StreamInput;
+import org.elasticsearch.test.ESTestCase;
+
+import java.io.IOException;
+import java.util.Arrays;
+
+import static org.hamcrest.Matchers.lessThan;
+
+public class RelativeErrorSketchTests extends ESTestCase {
+
+    private static double[] randomValues() {
+        return randomValues(RelativeErrorSketch.DEFAULT_RELATIVE_ACCURACY);
+    }
+
+    /**
+     * Random values whose magnitudes fit in the buckets of a sketch with the provided relative accuracy
+     * with a very high probability, so that no bucket needs to be folded.
+     */
+    private static double[] randomValues(double relativeAccuracy) {
+        final double spread = RelativeErrorSketch.MAX_BUCKETS * Math.log((1 + relativeAccuracy) / (1 - relativeAccuracy)) / 12;
+        final double[] values = new double[randomIntBetween(1, 5000)];
+        final boolean negatives = randomBoolean();
+        for (int i = 0; i < values.length; ++i) {
+            if (rarely()) {
+                values[i] = 0;
+            } else {
+                values[i] = Math.exp(random().nextGaussian() * spread);
+                if (negatives && randomBoolean()) {
+                    values[i] = -values[i];
+                }
+            }
+        }
+        return values;
+    }
+
+    public void testEmpty() {
+        RelativeErrorSketch sketch = new RelativeErrorSketch(RelativeErrorSketch.DEFAULT_RELATIVE_ACCURACY);
+        assertEquals(0, sketch.count());
+        assertTrue(Double.isNaN(sketch.quantile(0.5)));
+        assertTrue(Double.isNaN(sketch.percentileRank(1)));
+    }
+
+    public void testInvalidRelativeAccuracy() {
+        IllegalArgumentException e = expectThrows(IllegalArgumentException.class,
+                () -> new RelativeErrorSketch(randomFrom(0d, 1d, -randomDouble())));
+        assertTrue(e.getMessage().startsWith("[relative_accuracy] must be greater than 0 and less than 1"));
+    }
+
+    public void testQuantilesWithinRelativeAccuracy() {
+        final double relativeAccuracy = randomFrom(0.001, 0.01, 0.05);
+        final double[] values = randomValues(relativeAccuracy);
+        RelativeErrorSketch sketch = new RelativeErrorSketch(relativeAccuracy);
+        for (double value : values) {
+            sketch.add(value);
+        }
+        sketch.add(Double.NaN);
+        assertEquals(values.length, sketch.count());
+
+        Arrays.sort(values);
+        assertEquals(values[0], sketch.min(), 0d);
+        assertEquals(values[values.length - 1], sketch.max(), 0d);
+        for (int i = 0; i <= 100; ++i) {
+            final double q = i / 100d;
+            final double expected = values[(int) Math.max(1, Math.ceil(q * values.length)) - 1];
+            final double actual = sketch.quantile(q);
+            assertEquals("quantile " + q, expected, actual, Math.abs(expected) * relativeAccuracy * 1.000001);
+        }
+    }
+
+    public void testPercentileRank() {
+        RelativeErrorSketch sketch = new RelativeErrorSketch(RelativeErrorSketch.DEFAULT_RELATIVE_ACCURACY);
+        for (int i = 1; i <= 100; ++i) {
+            sketch.add(i);
+            sketch.add(-i);
+        }
+        assertEquals(0, sketch.percentileRank(-101), 0d);
+        assertEquals(100, sketch.percentileRank(100), 0d);
+        assertEquals(50, sketch.percentileRank(0), 0d);
+        assertEquals(75, sketch.percentileRank(50), 1d);
+        assertEquals(25, sketch.percentileRank(-50), 1d);
+    }
+
+    public void testMergeIsEquivalentToAddingAllValues() {
+        final double[] values = randomValues();
+        RelativeErrorSketch all = new RelativeErrorSketch(RelativeErrorSketch.DEFAULT_RELATIVE_ACCURACY);
+        RelativeErrorSketch[] parts = new RelativeErrorSketch[randomIntBetween(1, 5)];
+        for (int i = 0; i < parts.length; ++i) {
+            parts[i] = new RelativeErrorSketch(RelativeErrorSketch.DEFAULT_RELATIVE_ACCURACY);
+        }
+        for (double value : values) {
+            all.add(value);
+            randomFrom(parts).add(value);
+        }
+        RelativeErrorSketch merged = new RelativeErrorSketch(RelativeErrorSketch.DEFAULT_RELATIVE_ACCURACY);
+        for (RelativeErrorSketch part : parts) {
+            merged.merge(part);
+        }
+        assertEquals(all, merged);
+        assertEquals(all.hashCode(), merged.hashCode());
+        assertEquals(all, new RelativeErrorSketch(all));
+
+        IllegalArgumentException e = expectThrows(IllegalArgumentException.class, () -> merged.merge(new RelativeErrorSketch(0.02)));
+        assertEquals("Cannot merge sketches with different relative accuracies [0.01] and [0.02]", e.getMessage());
+    }
+
+    public void testSerialization() throws IOException {
+        RelativeErrorSketch sketch = new RelativeErrorSketch(RelativeErrorSketch.DEFAULT_RELATIVE_ACCURACY);
+        final double[] values = randomValues();
+        for (double value : values) {
+            sketch.add(value);
+        }
+        try (BytesStreamOutput out = new BytesStreamOutput()) {
+            sketch.writeTo(out);
+            try (StreamInput in = out.bytes().streamInput()) {
+                RelativeErrorSketch read = RelativeErrorSketch.readFrom(in);
+                assertEquals(sketch, read);
+                assertEquals(sketch.quantile(0.5), read.quantile(0.5), 0d);
+            }
+        }
+    }
+
+    public void testFoldsLowestBuckets() {
+        RelativeErrorSketch sketch = new RelativeErrorSketch(RelativeErrorSketch.DEFAULT_RELATIVE_ACCURACY);
+        final int numHighValues = randomIntBetween(100, 1000);
+        // the low values are too far away from the high values to be kept in their own buckets
+        for (int i = 0; i < 10; ++i) {
+            sketch.add(1e-30 * (i + 1));
+        }
+        for (int i = 0; i < numHighValues; ++i) {
+            sketch.add(1e30 * (1 + randomDouble()));
+        }
+        assertEquals(10 + numHighValues, sketch.count());
+        assertEquals(1e-30, sketch.min(), 0d);
+        assertThat(sketch.ramBytesUsed(), lessThan(2L * RelativeErrorSketch.MAX_BUCKETS * Long.BYTES));
+        final double median = sketch.quantile(0.5);
+        assertTrue(median >= 1e30 * 0.99 && median <= 2e30 * 1.01);
+        assertEquals(sketch.max(), sketch.quantile(1), 0d);
+    }
+}
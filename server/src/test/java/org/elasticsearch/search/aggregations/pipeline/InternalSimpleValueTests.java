@@ -46,6 +46,11 @@ public class InternalSimpleValueTests extends InternalAggregationTestCase<Intern
                 () -> createTestInstance("name", Collections.emptyList(), null).reduce(null, null));
     }
 
+    @Override
+    public void testAccumulateRandom() {
+        // pipeline results are built on the coordinating node and are never accumulated
+    }
+
     @Override
     protected void assertReduced(InternalSimpleValue reduced, List<InternalSimpleValue> inputs) {
         // no test since reduce operation is unsupported
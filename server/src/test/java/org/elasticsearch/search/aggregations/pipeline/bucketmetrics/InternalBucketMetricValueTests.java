@@ -52,6 +52,11 @@ public class InternalBucketMetricValueTests extends InternalAggregationTestCase<
                         null));
     }
 
+    @Override
+    public void testAccumulateRandom() {
+        // pipeline results are built on the coordinating node and are never accumulated
+    }
+
     @Override
     protected void assertReduced(InternalBucketMetricValue reduced, List<InternalBucketMetricValue> inputs) {
         // no test since reduce operation is unsupported
@@ -63,6 +63,11 @@ public class InternalPercentilesBucketTests extends InternalAggregationTestCase<
                 () -> createTestInstance("name", Collections.emptyList(), null).reduce(null, null));
     }
 
+    @Override
+    public void testAccumulateRandom() {
+        // pipeline results are built on the coordinating node and are never accumulated
+    }
+
     @Override
     protected void assertReduced(InternalPercentilesBucket reduced, List<InternalPercentilesBucket> inputs) {
         // no test since reduce operation is unsupported
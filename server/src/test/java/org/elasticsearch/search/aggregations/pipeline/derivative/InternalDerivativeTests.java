@@ -48,6 +48,11 @@ public class InternalDerivativeTests extends InternalAggregationTestCase<Interna
                 () -> createTestInstance("name", Collections.emptyList(), null).reduce(null, null));
     }
 
+    @Override
+    public void testAccumulateRandom() {
+        // pipeline results are built on the coordinating node and are never accumulated
+    }
+
     @Override
     protected void assertReduced(InternalDerivative reduced, List<InternalDerivative> inputs) {
         // no test since reduce operation is unsupported
@@ -21,6 +21,7 @@ package org.elasticsearch.search.builder;
 
 import org.elasticsearch.ElasticsearchParseException;
 import org.elasticsearch.common.ParsingException;
+import org.elasticsearch.common.Strings;
 import org.elasticsearch.common.bytes.BytesReference;
 import org.elasticsearch.common.io.stream.BytesStreamOutput;
 import org.elasticsearch.common.io.stream.NamedWriteableAwareStreamInput;
@@ -319,6 +320,28 @@ public class SearchSourceBuilderTests extends AbstractSearchTestCase {
         }
     }
 
+    public void testParsePointInTime() throws IOException {
+        final String query = "{ \"query\": { \"match_all\": {}}, \"pit\": { \"id\": \"abc\", \"keep_alive\": \"1m\" }}";
+        try (XContentParser parser = createParser(JsonXContent.jsonXContent, query)) {
+            final SearchSourceBuilder builder = SearchSourceBuilder.fromXContent(parser);
+            assertEquals(new PointInTimeBuilder("abc").setKeepAlive(TimeValue.timeValueMinutes(1)), builder.pointInTimeBuilder());
+            try (BytesStreamOutput output = new BytesStreamOutput()) {
+                builder.writeTo(output);
+                try (StreamInput in = new NamedWriteableAwareStreamInput(output.bytes().streamInput(), namedWriteableRegistry)) {
+                    assertEquals(builder, new SearchSourceBuilder(in));
+                }
+            }
+            try (XContentParser reparser = createParser(JsonXContent.jsonXContent, Strings.toString(builder))) {
+                assertEquals(builder, SearchSourceBuilder.fromXContent(reparser));
+            }
+        }
+        final String missingId = "{ \"pit\": { \"keep_alive\": \"1m\" }}";
+        try (XContentParser parser = createParser(JsonXContent.jsonXContent, missingId)) {
+            final IllegalArgumentException e = expectThrows(IllegalArgumentException.class, () -> SearchSourceBuilder.fromXContent(parser));
+            assertEquals("[id] is required for a point in time", e.getMessage());
+        }
+    }
+
     public void testTimeoutWithUnits() throws IOException {
         final String timeout = randomTimeValue();
         final String query = "{ \"query\": { \"match_all\": {}}, \"timeout\": \"" + timeout + "\"}";
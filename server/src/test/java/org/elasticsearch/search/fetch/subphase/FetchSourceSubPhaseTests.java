@@ -21,8 +21,10 @@ package org.elasticsearch.search.fetch.subphase;
 
 import org.elasticsearch.common.Strings;
 import org.elasticsearch.common.bytes.BytesReference;
+import org.elasticsearch.common.settings.Settings;
 import org.elasticsearch.common.xcontent.XContentBuilder;
 import org.elasticsearch.common.xcontent.XContentFactory;
+import org.elasticsearch.index.IndexSettings;
 import org.elasticsearch.index.shard.IndexShard;
 import org.elasticsearch.index.shard.ShardId;
 import org.elasticsearch.search.fetch.FetchSubPhase;
@@ -30,9 +32,11 @@ import org.elasticsearch.search.SearchHit;
 import org.elasticsearch.search.internal.SearchContext;
 import org.elasticsearch.search.lookup.SearchLookup;
 import org.elasticsearch.test.ESTestCase;
+import org.elasticsearch.test.IndexSettingsModule;
 import org.elasticsearch.test.TestSearchContext;
 
 import java.io.IOException;
+import java.util.Arrays;
 import java.util.Collections;
 
 import static org.mockito.Mockito.mock;
@@ -95,6 +99,44 @@ public class FetchSourceSubPhaseTests extends ESTestCase {
                 "for index [index]", exception.getMessage());
     }
 
+    public void testStreamingFilteringMatchesMapFiltering() throws IOException {
+        XContentBuilder source = XContentFactory.jsonBuilder().startObject()
+            .field("field", "value")
+            .field("field2", 42)
+            .startObject("obj")
+                .field("inner", "value")
+                .field("inner2", true)
+                .startObject("nested").field("leaf", 1.5).endObject()
+            .endObject()
+            .startArray("array")
+                .startObject().field("inner", "a").field("other", "b").endObject()
+                .startObject().field("other", "c").endObject()
+                .value("d")
+            .endArray()
+            .nullField("null_field")
+            .endObject();
+        String[][] includesAndExcludes = new String[][] {
+            { "field" }, {},
+            { "obj" }, {},
+            { "obj.inner" }, {},
+            { "obj.*" }, { "obj.nested" },
+            { "field*" }, {},
+            { "*" }, { "array" },
+            {}, { "obj.nested", "field2" },
+            { "array.inner" }, {},
+            { "missing" }, {},
+            { "null_field", "obj.nested" }, {}
+        };
+        for (int i = 0; i < includesAndExcludes.length; i += 2) {
+            String[] includes = includesAndExcludes[i];
+            String[] excludes = includesAndExcludes[i + 1];
+            FetchSubPhase.HitContext mapFiltered = hitExecuteMultiple(source, true, includes, excludes, false);
+            FetchSubPhase.HitContext streamFiltered = hitExecuteMultiple(source, true, includes, excludes, true);
+            assertEquals("includes " + Arrays.toString(includes) + " excludes " + Arrays.toString(excludes),
+                mapFiltered.hit().getSourceAsMap(), streamFiltered.hit().getSourceAsMap());
+        }
+    }
+
     private FetchSubPhase.HitContext hitExecute(XContentBuilder source, boolean fetchSource, String include, String exclude) {
         return hitExecuteMultiple(source, fetchSource,
             include == null ? Strings.EMPTY_ARRAY : new String[]{include},
@@ -102,8 +144,14 @@ public class FetchSourceSubPhaseTests extends ESTestCase {
     }
 
     private FetchSubPhase.HitContext hitExecuteMultiple(XContentBuilder source, boolean fetchSource, String[] includes, String[] excludes) {
+        return hitExecuteMultiple(source, fetchSource, includes, excludes, randomBoolean());
+    }
+
+    private FetchSubPhase.HitContext hitExecuteMultiple(XContentBuilder source, boolean fetchSource, String[] includes, String[] excludes,
+                                                        boolean streamingSourceFiltering) {
         FetchSourceContext fetchSourceContext = new FetchSourceContext(fetchSource, includes, excludes);
-        SearchContext searchContext = new FetchSourceSubPhaseTestSearchContext(fetchSourceContext, source == null ? null : source.bytes());
+        SearchContext searchContext = new FetchSourceSubPhaseTestSearchContext(fetchSourceContext, source == null ? null : source.bytes(),
+            streamingSourceFiltering);
         FetchSubPhase.HitContext hitContext = new FetchSubPhase.HitContext();
         hitContext.reset(new SearchHit(1, null, null, null), null, 1, null);
         FetchSourceSubPhase phase = new FetchSourceSubPhase();
@@ -116,12 +164,14 @@ public class FetchSourceSubPhaseTests extends ESTestCase {
         final BytesReference source;
         final IndexShard indexShard;
 
-        FetchSourceSubPhaseTestSearchContext(FetchSourceContext context, BytesReference source) {
+        FetchSourceSubPhaseTestSearchContext(FetchSourceContext context, BytesReference source, boolean streamingSourceFiltering) {
             super(null);
             this.context = context;
             this.source = source;
             this.indexShard = mock(IndexShard.class);
             when(indexShard.shardId()).thenReturn(new ShardId("index", "index", 1));
+            when(indexShard.indexSettings()).thenReturn(IndexSettingsModule.newIndexSettings("index", Settings.builder()
+                .put(IndexSettings.INDEX_STREAMING_SOURCE_FILTERING_SETTING.getKey(), streamingSourceFiltering).build()));
         }
 
         @Override
@@ -0,0 +1,318 @@
+/*
+ * Licensed to Elasticsearch under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Elasticsearch licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.elasticsearch.search.query;
+
+import org.apache.lucene.document.Document;
+import org.apache.lucene.document.SortedNumericDocValuesField;
+import org.apache.lucene.document.SortedSetDocValuesField;
+import org.apache.lucene.index.DirectoryReader;
+import org.apache.lucene.index.IndexWriter;
+import org.apache.lucene.index.LeafReaderContext;
+import org.apache.lucene.index.NoMergePolicy;
+import org.apache.lucene.index.Term;
+import org.apache.lucene.search.Collector;
+import org.apache.lucene.search.IndexSearcher;
+import org.apache.lucene.search.MatchAllDocsQuery;
+import org.apache.lucene.search.Query;
+import org.apache.lucene.search.TermQuery;
+import org.apache.lucene.search.Weight;
+import org.apache.lucene.store.Directory;
+import org.apache.lucene.util.BytesRef;
+import org.elasticsearch.common.settings.Settings;
+import org.elasticsearch.common.xcontent.ToXContent;
+import org.elasticsearch.common.xcontent.XContentBuilder;
+import org.elasticsearch.common.xcontent.XContentFactory;
+import org.elasticsearch.index.IndexSettings;
+import org.elasticsearch.index.mapper.KeywordFieldMapper;
+import org.elasticsearch.index.mapper.MappedFieldType;
+import org.elasticsearch.index.mapper.MapperService;
+import org.elasticsearch.index.mapper.NumberFieldMapper;
+import org.elasticsearch.index.query.QueryShardContext;
+import org.elasticsearch.indices.breaker.CircuitBreakerService;
+import org.elasticsearch.script.MockScriptEngine;
+import org.elasticsearch.script.Script;
+import org.elasticsearch.script.ScriptEngine;
+import org.elasticsearch.script.ScriptModule;
+import org.elasticsearch.script.ScriptService;
+import org.elasticsearch.script.ScriptType;
+import org.elasticsearch.search.aggregations.AggregationBuilder;
+import org.elasticsearch.search.aggregations.AggregationBuilders;
+import org.elasticsearch.search.aggregations.AggregationPhase;
+import org.elasticsearch.search.aggregations.Aggregator;
+import org.elasticsearch.search.aggregations.Aggregator.SubAggCollectionMode;
+import org.elasticsearch.search.aggregations.AggregatorFactories;
+import org.elasticsearch.search.aggregations.AggregatorTestCase;
+import org.elasticsearch.search.aggregations.BucketOrder;
+import org.elasticsearch.search.aggregations.InternalAggregation;
+import org.elasticsearch.search.aggregations.InternalAggregations;
+import org.elasticsearch.search.aggregations.MultiBucketConsumerService.MultiBucketConsumer;
+import org.elasticsearch.search.aggregations.SearchContextAggregations;
+import org.elasticsearch.search.aggregations.bucket.terms.TermsAggregationBuilder;
+import org.elasticsearch.search.internal.ContextIndexSearcher;
+import org.elasticsearch.search.internal.SearchContext;
+import org.elasticsearch.threadpool.TestThreadPool;
+import org.elasticsearch.threadpool.ThreadPool;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+import static org.elasticsearch.test.InternalAggregationTestCase.DEFAULT_MAX_BUCKETS;
+import static org.mockito.Matchers.anyObject;
+import static org.mockito.Mockito.doCallRealMethod;
+import static org.mockito.Mockito.when;
+
+/**
+ * Checks that the terms aggregations of a shard that is searched concurrently produce the same shard result as the regular
+ * query phase, although each slice only sees some of the segments of the shard.
+ */
+public class ConcurrentAggregationQueryPhaseTests extends AggregatorTestCase {
+
+    private ThreadPool threadPool;
+
+    @Override
+    public void setUp() throws Exception {
+        super.setUp();
+        threadPool = new TestThreadPool(getTestName());
+    }
+
+    @Override
+    public void tearDown() throws Exception {
+        ThreadPool.terminate(threadPool, 10, TimeUnit.SECONDS);
+        super.tearDown();
+    }
+
+    public void testConcurrentTermsMatchTheQueryPhase() throws Exception {
+        assertConcurrentSearchMatchesTheQueryPhase(ConcurrentAggregationQueryPhaseTests::randomAggregation);
+    }
+
+    public void testLazilyCreatedSubAggregatorsOnConcurrentSlices() throws Exception {
+        // each bucket of the histogram creates its own terms aggregators while the slices are collected in parallel
+        assertConcurrentSearchMatchesTheQueryPhase(() -> AggregationBuilders.histogram("histo").field("number").interval(1)
+            .subAggregation(randomTerms("terms").subAggregation(randomTerms("sub"))));
+    }
+
+    public void testScriptsAreNotSearchedConcurrently() throws IOException {
+        MappedFieldType numberType = new NumberFieldMapper.NumberFieldType(NumberFieldMapper.NumberType.LONG);
+        numberType.setName("number");
+        numberType.setHasDocValues(true);
+        Script script = new Script(ScriptType.INLINE, MockScriptEngine.NAME, "value", Collections.emptyMap());
+        try (Directory dir = newDirectory();
+             IndexWriter writer = new IndexWriter(dir, newIndexWriterConfig());
+             DirectoryReader reader = DirectoryReader.open(writer)) {
+            IndexSearcher searcher = new IndexSearcher(reader);
+            AggregationBuilder fieldTerms = AggregationBuilders.terms("terms").field("number");
+            assertTrue(createAggregatorFactory(fieldTerms, searcher, numberType).supportsConcurrentSegmentSearch());
+            // slices would share the SourceLookup of the search context
+            AggregationBuilder scriptTerms = AggregationBuilders.terms("terms").script(script);
+            assertFalse(createAggregatorFactory(scriptTerms, searcher, numberType).supportsConcurrentSegmentSearch());
+            AggregationBuilder valueScript = AggregationBuilders.max("max").field("number").script(script);
+            assertFalse(createAggregatorFactory(valueScript, searcher, numberType).supportsConcurrentSegmentSearch());
+            AggregationBuilder nested = AggregationBuilders.histogram("histo").field("number").interval(5)
+                .subAggregation(AggregationBuilders.terms("terms").script(script));
+            assertFalse(createAggregatorFactory(nested, searcher, numberType).supportsConcurrentSegmentSearch());
+        }
+    }
+
+    @Override
+    protected SearchContext createSearchContext(IndexSearcher indexSearcher, IndexSettings indexSettings) {
+        SearchContext searchContext = super.createSearchContext(indexSearcher, indexSettings);
+        // aggregators created for new buckets register themselves from the threads of the slices
+        doCallRealMethod().when(searchContext).addReleasable(anyObject(), anyObject());
+        doCallRealMethod().when(searchContext).clearReleasables(anyObject());
+        return searchContext;
+    }
+
+    @Override
+    protected QueryShardContext queryShardContextMock(MapperService mapperService, MappedFieldType[] fieldTypes,
+                                                      CircuitBreakerService circuitBreakerService) {
+        QueryShardContext queryShardContext = super.queryShardContextMock(mapperService, fieldTypes, circuitBreakerService);
+        MockScriptEngine scriptEngine = new MockScriptEngine(MockScriptEngine.NAME, Collections.singletonMap("value", vars -> 1L));
+        Map<String, ScriptEngine> engines = Collections.singletonMap(scriptEngine.getType(), scriptEngine);
+        ScriptService scriptService = new ScriptService(Settings.EMPTY, engines, ScriptModule.CORE_CONTEXTS);
+        when(queryShardContext.getScriptService()).thenReturn(scriptService);
+        return queryShardContext;
+    }
+
+    private void assertConcurrentSearchMatchesTheQueryPhase(Supplier<AggregationBuilder> aggregations) throws Exception {
+        MappedFieldType numberType = new NumberFieldMapper.NumberFieldType(NumberFieldMapper.NumberType.LONG);
+        numberType.setName("number");
+        numberType.setHasDocValues(true);
+        MappedFieldType keywordType = new KeywordFieldMapper.KeywordFieldType();
+        keywordType.setName("keyword");
+        keywordType.setHasDocValues(true);
+        try (Directory dir = newDirectory();
+             IndexWriter writer = new IndexWriter(dir, newIndexWriterConfig().setMergePolicy(NoMergePolicy.INSTANCE))) {
+            final int numSegments = randomIntBetween(2, 8);
+            for (int i = 0; i < numSegments; i++) {
+                // each segment favors different terms so that the top terms of a slice are not the top terms of the shard
+                final int maxTerm = randomIntBetween(2, 30);
+                final int numDocs = randomIntBetween(1, 50);
+                for (int j = 0; j < numDocs; j++) {
+                    Document doc = new Document();
+                    final int numValues = randomIntBetween(0, 2);
+                    for (int k = 0; k < numValues; k++) {
+                        doc.add(new SortedNumericDocValuesField("number", randomIntBetween(0, maxTerm)));
+                        doc.add(new SortedSetDocValuesField("keyword", new BytesRef("term_" + randomIntBetween(0, maxTerm))));
+                    }
+                    writer.addDocument(doc);
+                }
+                writer.commit();
+            }
+            try (DirectoryReader reader = DirectoryReader.open(writer)) {
+                IndexSearcher searcher = new IndexSearcher(reader);
+                final int iters = randomIntBetween(5, 10);
+                for (int i = 0; i < iters; i++) {
+                    AggregationBuilder aggregation = aggregations.get();
+                    Aggregator aggregator = createAggregator(aggregation, searcher, numberType, keywordType);
+                    SearchContext context = aggregator.context();
+                    AggregatorFactories factories = AggregatorFactories.builder().addAggregator(aggregation).build(context, null);
+                    assertTrue(aggregation.toString(), factories.supportsConcurrentSegmentSearch());
+                    Query query = randomBoolean() ? new MatchAllDocsQuery()
+                        : new TermQuery(new Term("keyword", "term_" + randomIntBetween(0, 5)));
+                    String expected = reduce(searchSequentially(context, factories, query), context);
+                    final int maxSlices = randomIntBetween(2, reader.leaves().size());
+                    String actual = reduce(searchConcurrently(context, factories, query, maxSlices,
+                        threadPool.executor(ThreadPool.Names.SEARCH_CONCURRENT)), context);
+                    assertEquals(aggregation.toString(), expected, actual);
+                    context.clearReleasables(SearchContext.Lifetime.CONTEXT);
+                }
+            }
+        }
+    }
+
+    private static AggregationBuilder randomAggregation() {
+        AggregationBuilder terms = randomTerms("terms");
+        if (randomBoolean()) {
+            terms.subAggregation(randomTerms("sub"));
+        }
+        if (randomBoolean()) {
+            // terms under a multi bucket aggregation are wrapped in a single aggregator per bucket
+            return AggregationBuilders.histogram("histo").field("number").interval(randomIntBetween(5, 20)).subAggregation(terms);
+        }
+        return terms;
+    }
+
+    private static TermsAggregationBuilder randomTerms(String name) {
+        // shard_size is low enough for the buckets of each slice to be trimmed
+        TermsAggregationBuilder terms = AggregationBuilders.terms(name).field(randomFrom("number", "keyword"))
+            .size(randomIntBetween(1, 5))
+            .shardSize(randomIntBetween(1, 8))
+            .minDocCount(randomIntBetween(0, 2))
+            .shardMinDocCount(randomIntBetween(0, 3))
+            .collectMode(randomFrom(SubAggCollectionMode.values()));
+        terms.subAggregation(AggregationBuilders.max("max").field("number"));
+        switch (randomIntBetween(0, 3)) {
+            case 0:
+                terms.order(BucketOrder.count(randomBoolean()));
+                break;
+            case 1:
+                terms.order(BucketOrder.key(randomBoolean()));
+                break;
+            case 2:
+                // terms without documents have no bucket to read the metric from
+                terms.order(BucketOrder.aggregation("max", randomBoolean())).minDocCount(randomIntBetween(1, 2));
+                break;
+            default:
+                // keep the default order, by descending count
+                break;
+        }
+        return terms;
+    }
+
+    /**
+     * Runs the aggregation phase like the query phase does when the shard is searched in a single pass.
+     */
+    private static InternalAggregations searchSequentially(SearchContext context, AggregatorFactories factories,
+                                                          Query query) throws IOException {
+        Map<Class<?>, Collector> queryCollectors = new HashMap<>();
+        QuerySearchResult queryResult = prepare(context, factories, queryCollectors);
+        AggregationPhase aggregationPhase = new AggregationPhase();
+        aggregationPhase.preProcess(context);
+        context.searcher().search(query, queryCollectors.get(AggregationPhase.class));
+        aggregationPhase.execute(context);
+        return (InternalAggregations) queryResult.consumeAggs();
+    }
+
+    /**
+     * Runs the aggregation phase like {@link ConcurrentQueryPhase} does, the first slice is collected by the aggregators of
+     * the search context and the other slices by their own aggregators. All slices are collected at the same time on the
+     * provided <code>executor</code>.
+     */
+    private static InternalAggregations searchConcurrently(SearchContext context, AggregatorFactories factories, Query query,
+                                                          int maxSlices, ExecutorService executor) throws Exception {
+        Map<Class<?>, Collector> queryCollectors = new HashMap<>();
+        QuerySearchResult queryResult = prepare(context, factories, queryCollectors);
+        AggregationPhase aggregationPhase = new AggregationPhase();
+        aggregationPhase.preProcess(context);
+        ContextIndexSearcher searcher = context.searcher();
+        List<List<LeafReaderContext>> slices = ConcurrentQueryPhase.slices(searcher.getIndexReader().leaves(), maxSlices);
+        Collector[] collectors = new Collector[slices.size()];
+        collectors[0] = queryCollectors.get(AggregationPhase.class);
+        for (int i = 1; i < collectors.length; i++) {
+            collectors[i] = AggregationPhase.createSliceCollector(context);
+        }
+        Weight weight = searcher.createNormalizedWeight(query, false);
+        CountDownLatch start = new CountDownLatch(1);
+        List<Future<?>> futures = new ArrayList<>(collectors.length);
+        for (int i = 0; i < collectors.length; i++) {
+            final List<LeafReaderContext> slice = slices.get(i);
+            final Collector collector = collectors[i];
+            futures.add(executor.submit(() -> {
+                start.await();
+                searcher.search(slice, weight, collector);
+                return null;
+            }));
+        }
+        start.countDown();
+        for (Future<?> future : futures) {
+            future.get();
+        }
+        aggregationPhase.execute(context);
+        return (InternalAggregations) queryResult.consumeAggs();
+    }
+
+    private static QuerySearchResult prepare(SearchContext context, AggregatorFactories factories,
+                                             Map<Class<?>, Collector> queryCollectors) {
+        QuerySearchResult queryResult = new QuerySearchResult();
+        when(context.aggregations()).thenReturn(new SearchContextAggregations(factories, new MultiBucketConsumer(DEFAULT_MAX_BUCKETS)));
+        when(context.queryResult()).thenReturn(queryResult);
+        when(context.queryCollectors()).thenReturn(queryCollectors);
+        return queryResult;
+    }
+
+    /**
+     * Returns the response of the coordinating node for the provided shard result.
+     */
+    private static String reduce(InternalAggregations aggregations, SearchContext context) throws IOException {
+        InternalAggregation.ReduceContext reduceContext = new InternalAggregation.ReduceContext(context.bigArrays(), null, true);
+        InternalAggregations reduced = InternalAggregations.reduce(Collections.singletonList(aggregations), reduceContext);
+        XContentBuilder builder = XContentFactory.jsonBuilder().startObject();
+        reduced.toXContent(builder, ToXContent.EMPTY_PARAMS);
+        return builder.endObject().string();
+    }
+}
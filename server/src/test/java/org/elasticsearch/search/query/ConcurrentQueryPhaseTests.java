@@ -0,0 +1,229 @@
+/*
+ * Licensed to Elasticsearch under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Elasticsearch licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.elasticsearch.search.query;
+
+import org.apache.lucene.document.Document;
+import org.apache.lucene.document.Field.Store;
+import org.apache.lucene.document.NumericDocValuesField;
+import org.apache.lucene.document.StringField;
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.index.IndexWriterConfig;
+import org.apache.lucene.index.LeafReaderContext;
+import org.apache.lucene.index.NoMergePolicy;
+import org.apache.lucene.index.RandomIndexWriter;
+import org.apache.lucene.index.Term;
+import org.apache.lucene.search.FieldDoc;
+import org.apache.lucene.search.IndexSearcher;
+import org.apache.lucene.search.MatchAllDocsQuery;
+import org.apache.lucene.search.Query;
+import org.apache.lucene.search.ScoreDoc;
+import org.apache.lucene.search.Sort;
+import org.apache.lucene.search.SortField;
+import org.apache.lucene.search.TermQuery;
+import org.apache.lucene.search.TopDocs;
+import org.apache.lucene.store.Directory;
+import org.elasticsearch.Version;
+import org.elasticsearch.action.search.SearchTask;
+import org.elasticsearch.cluster.metadata.IndexMetaData;
+import org.elasticsearch.cluster.routing.RecoverySource;
+import org.elasticsearch.cluster.routing.ShardRouting;
+import org.elasticsearch.cluster.routing.ShardRoutingState;
+import org.elasticsearch.cluster.routing.TestShardRouting;
+import org.elasticsearch.common.settings.Settings;
+import org.elasticsearch.index.IndexSettings;
+import org.elasticsearch.index.engine.Engine;
+import org.elasticsearch.index.query.ParsedQuery;
+import org.elasticsearch.index.shard.IndexShard;
+import org.elasticsearch.index.shard.IndexShardTestCase;
+import org.elasticsearch.index.shard.ShardId;
+import org.elasticsearch.search.DocValueFormat;
+import org.elasticsearch.search.internal.ContextIndexSearcher;
+import org.elasticsearch.search.internal.ScrollContext;
+import org.elasticsearch.search.sort.SortAndFormats;
+import org.elasticsearch.test.TestSearchContext;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.lessThan;
+
+public class ConcurrentQueryPhaseTests extends IndexShardTestCase {
+
+    private IndexShard indexShard;
+
+    @Override
+    public void setUp() throws Exception {
+        super.setUp();
+        ShardRouting shardRouting = TestShardRouting.newShardRouting(new ShardId("index", "_na_", 0), randomAlphaOfLength(10), true,
+            ShardRoutingState.INITIALIZING, RecoverySource.StoreRecoverySource.EMPTY_STORE_INSTANCE);
+        Settings settings = Settings.builder().put(IndexMetaData.SETTING_VERSION_CREATED, Version.CURRENT)
+            .put(IndexMetaData.SETTING_NUMBER_OF_REPLICAS, 0)
+            .put(IndexMetaData.SETTING_NUMBER_OF_SHARDS, 1)
+            .put(IndexSettings.INDEX_CONCURRENT_SEGMENT_SEARCH_SETTING.getKey(), true)
+            .put(IndexSettings.INDEX_CONCURRENT_SEGMENT_SEARCH_MAX_SLICES_SETTING.getKey(), randomIntBetween(2, 5))
+            .build();
+        IndexMetaData metaData = IndexMetaData.builder(shardRouting.getIndexName())
+            .settings(settings)
+            .build();
+        indexShard = newShard(shardRouting, metaData);
+    }
+
+    @Override
+    public void tearDown() throws Exception {
+        super.tearDown();
+        closeShards(indexShard);
+    }
+
+    private static IndexReader newMultiSegmentReader(Directory dir) throws IOException {
+        IndexWriterConfig iwc = newIndexWriterConfig().setMergePolicy(NoMergePolicy.INSTANCE);
+        RandomIndexWriter w = new RandomIndexWriter(random(), dir, iwc);
+        final int numSegments = randomIntBetween(2, 10);
+        for (int i = 0; i < numSegments; i++) {
+            final int numDocs = randomIntBetween(1, 50);
+            for (int j = 0; j < numDocs; j++) {
+                Document doc = new Document();
+                if (randomBoolean()) {
+                    doc.add(new StringField("foo", "bar", Store.NO));
+                }
+                doc.add(new NumericDocValuesField("rank", randomIntBetween(0, 20)));
+                w.addDocument(doc);
+            }
+            w.flush();
+        }
+        IndexReader reader = w.getReader();
+        w.close();
+        return reader;
+    }
+
+    private TestSearchContext newContext(Query query, int size) {
+        TestSearchContext context = new TestSearchContext(null, indexShard);
+        context.parsedQuery(new ParsedQuery(query));
+        context.setSize(size);
+        context.setTask(new SearchTask(123L, "", "", "", null, Collections.emptyMap()));
+        return context;
+    }
+
+    private static ContextIndexSearcher newContextSearcher(IndexReader reader) {
+        Engine.Searcher engineSearcher = new Engine.Searcher("test", new IndexSearcher(reader));
+        return new ContextIndexSearcher(engineSearcher, IndexSearcher.getDefaultQueryCache(), IndexSearcher.getDefaultQueryCachingPolicy());
+    }
+
+    public void testSlices() throws Exception {
+        try (Directory dir = newDirectory(); IndexReader reader = newMultiSegmentReader(dir)) {
+            final List<LeafReaderContext> leaves = reader.leaves();
+            final int maxSlices = randomIntBetween(1, 12);
+            final List<List<LeafReaderContext>> slices = ConcurrentQueryPhase.slices(leaves, maxSlices);
+            assertThat(slices.size(), equalTo(Math.min(maxSlices, leaves.size())));
+            final Set<LeafReaderContext> seen = new HashSet<>();
+            for (List<LeafReaderContext> slice : slices) {
+                assertFalse(slice.isEmpty());
+                for (int i = 0; i < slice.size(); i++) {
+                    assertTrue(seen.add(slice.get(i)));
+                    if (i > 0) {
+                        assertThat(slice.get(i - 1).ord, lessThan(slice.get(i).ord));
+                    }
+                }
+            }
+            assertThat(seen.size(), equalTo(leaves.size()));
+        }
+    }
+
+    public void testCanExecute() throws Exception {
+        try (Directory dir = newDirectory(); IndexReader reader = newMultiSegmentReader(dir)) {
+            final ContextIndexSearcher searcher = newContextSearcher(reader);
+            TestSearchContext context = newContext(new MatchAllDocsQuery(), 10);
+            assertTrue(ConcurrentQueryPhase.canExecute(context, searcher));
+            assertFalse(ConcurrentQueryPhase.canExecute(context, new IndexSearcher(reader)));
+
+            context.terminateAfter(5);
+            assertFalse(ConcurrentQueryPhase.canExecute(context, searcher));
+
+            context = newContext(new MatchAllDocsQuery(), 10);
+            context.scrollContext(new ScrollContext());
+            assertFalse(ConcurrentQueryPhase.canExecute(context, searcher));
+
+            // count only requests are executed on a single thread
+            context = newContext(new MatchAllDocsQuery(), 0);
+            assertFalse(ConcurrentQueryPhase.canExecute(context, searcher));
+        }
+    }
+
+    public void testSameResultsAsSequentialSearch() throws Exception {
+        try (Directory dir = newDirectory(); IndexReader reader = newMultiSegmentReader(dir)) {
+            final Query query = randomBoolean() ? new MatchAllDocsQuery() : new TermQuery(new Term("foo", "bar"));
+            final int size = randomIntBetween(1, 50);
+            final SortAndFormats sort = randomBoolean() ? null :
+                new SortAndFormats(new Sort(new SortField("rank", SortField.Type.INT, randomBoolean())),
+                    new DocValueFormat[] { DocValueFormat.RAW });
+
+            TestSearchContext sequential = newContext(query, size);
+            sequential.sort(sort);
+            QueryPhase.execute(sequential, new IndexSearcher(reader), checkCancelled -> {});
+
+            TestSearchContext concurrent = newContext(query, size);
+            concurrent.sort(sort);
+            final ContextIndexSearcher searcher = newContextSearcher(reader);
+            assertTrue(ConcurrentQueryPhase.canExecute(concurrent, searcher));
+            QueryPhase.execute(concurrent, searcher, checkCancelled -> {});
+
+            final TopDocs expected = sequential.queryResult().topDocs();
+            final TopDocs actual = concurrent.queryResult().topDocs();
+            assertThat(actual.totalHits, equalTo(expected.totalHits));
+            assertThat(actual.scoreDocs.length, equalTo(expected.scoreDocs.length));
+            for (int i = 0; i < expected.scoreDocs.length; i++) {
+                assertThat(actual.scoreDocs[i].doc, equalTo(expected.scoreDocs[i].doc));
+                if (sort != null) {
+                    assertArrayEquals(((FieldDoc) expected.scoreDocs[i]).fields, ((FieldDoc) actual.scoreDocs[i]).fields);
+                }
+            }
+        }
+    }
+
+    public void testMergeTopDocs() {
+        final int numSlices = randomIntBetween(1, 5);
+        final TopDocs[] topDocs = new TopDocs[numSlices];
+        final List<ScoreDoc> all = new ArrayList<>();
+        int doc = 0;
+        for (int i = 0; i < numSlices; i++) {
+            final ScoreDoc[] scoreDocs = new ScoreDoc[randomIntBetween(0, 10)];
+            float maxScore = Float.NaN;
+            for (int j = 0; j < scoreDocs.length; j++) {
+                scoreDocs[j] = new ScoreDoc(doc++, randomIntBetween(0, 5));
+                maxScore = Float.isNaN(maxScore) ? scoreDocs[j].score : Math.max(maxScore, scoreDocs[j].score);
+            }
+            Collections.addAll(all, scoreDocs);
+            topDocs[i] = new TopDocs(scoreDocs.length, scoreDocs, maxScore);
+        }
+        final int numHits = randomIntBetween(1, 20);
+        final TopDocs merged = ConcurrentQueryPhase.mergeTopDocs(topDocs, numHits);
+        assertThat(merged.totalHits, equalTo((long) all.size()));
+        assertThat(merged.scoreDocs.length, equalTo(Math.min(numHits, all.size())));
+        for (int i = 1; i < merged.scoreDocs.length; i++) {
+            final ScoreDoc previous = merged.scoreDocs[i - 1];
+            final ScoreDoc current = merged.scoreDocs[i];
+            assertTrue(previous.score > current.score || (previous.score == current.score && previous.doc < current.doc));
+        }
+    }
+}
@@ -0,0 +1,311 @@
+/*
+ * Licensed to Elasticsearch under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Elasticsearch licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.elasticsearch.search.query;
+
+import org.apache.lucene.document.Document;
+import org.apache.lucene.document.SortedNumericDocValuesField;
+import org.apache.lucene.document.SortedSetDocValuesField;
+import org.apache.lucene.index.DirectoryReader;
+import org.apache.lucene.index.IndexWriter;
+import org.apache.lucene.index.LeafReaderContext;
+import org.apache.lucene.index.NoMergePolicy;
+import org.apache.lucene.index.Term;
+import org.apache.lucene.search.Collector;
+import org.apache.lucene.search.IndexSearcher;
+import org.apache.lucene.search.MatchAllDocsQuery;
+import org.apache.lucene.search.Query;
+import org.apache.lucene.search.TermQuery;
+import org.apache.lucene.search.Weight;
+import org.apache.lucene.store.Directory;
+import org.apache.lucene.util.BytesRef;
+import org.elasticsearch.Version;
+import org.elasticsearch.action.search.SearchType;
+import org.elasticsearch.cluster.metadata.IndexMetaData;
+import org.elasticsearch.common.bytes.BytesReference;
+import org.elasticsearch.common.io.stream.BytesStreamOutput;
+import org.elasticsearch.common.io.stream.NamedWriteableAwareStreamInput;
+import org.elasticsearch.common.io.stream.NamedWriteableRegistry;
+import org.elasticsearch.common.io.stream.StreamInput;
+import org.elasticsearch.common.settings.Settings;
+import org.elasticsearch.common.xcontent.ToXContent;
+import org.elasticsearch.common.xcontent.XContentBuilder;
+import org.elasticsearch.common.xcontent.XContentFactory;
+import org.elasticsearch.index.IndexSettings;
+import org.elasticsearch.index.mapper.KeywordFieldMapper;
+import org.elasticsearch.index.mapper.MappedFieldType;
+import org.elasticsearch.index.mapper.NumberFieldMapper;
+import org.elasticsearch.index.query.QueryShardContext;
+import org.elasticsearch.index.shard.IndexShard;
+import org.elasticsearch.indices.IndicesSegmentAggregationCache;
+import org.elasticsearch.search.SearchModule;
+import org.elasticsearch.search.aggregations.AggregationBuilder;
+import org.elasticsearch.search.aggregations.AggregationBuilders;
+import org.elasticsearch.search.aggregations.AggregationPhase;
+import org.elasticsearch.search.aggregations.Aggregator;
+import org.elasticsearch.search.aggregations.AggregatorFactories;
+import org.elasticsearch.search.aggregations.AggregatorTestCase;
+import org.elasticsearch.search.aggregations.InternalAggregation;
+import org.elasticsearch.search.aggregations.InternalAggregations;
+import org.elasticsearch.search.aggregations.MultiBucketConsumerService.MultiBucketConsumer;
+import org.elasticsearch.search.aggregations.SearchContextAggregations;
+import org.elasticsearch.search.aggregations.bucket.terms.TermsAggregationBuilder;
+import org.elasticsearch.search.internal.ContextIndexSearcher;
+import org.elasticsearch.search.internal.SearchContext;
+import org.elasticsearch.search.internal.ShardSearchRequest;
+import org.elasticsearch.search.sort.SortOrder;
+
+import java.io.IOException;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.elasticsearch.test.InternalAggregationTestCase.DEFAULT_MAX_BUCKETS;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * Checks that the aggregations that are cached per segment produce the same shard result as the regular query phase.
+ */
+public class SegmentAggregationQueryPhaseTests extends AggregatorTestCase {
+
+    private final NamedWriteableRegistry namedWriteableRegistry =
+        new NamedWriteableRegistry(new SearchModule(Settings.EMPTY, false, Collections.emptyList()).getNamedWriteables());
+
+    public void testPerSegmentAggregationsMatchTheQueryPhase() throws IOException {
+        MappedFieldType numberType = new NumberFieldMapper.NumberFieldType(NumberFieldMapper.NumberType.LONG);
+        numberType.setName("number");
+        numberType.setHasDocValues(true);
+        MappedFieldType keywordType = new KeywordFieldMapper.KeywordFieldType();
+        keywordType.setName("keyword");
+        keywordType.setHasDocValues(true);
+        try (Directory dir = newDirectory();
+             IndexWriter writer = new IndexWriter(dir, newIndexWriterConfig().setMergePolicy(NoMergePolicy.INSTANCE))) {
+            final int numSegments = randomIntBetween(2, 8);
+            for (int i = 0; i < numSegments; i++) {
+                final int numDocs = randomIntBetween(1, 50);
+                for (int j = 0; j < numDocs; j++) {
+                    Document doc = new Document();
+                    final int numValues = randomIntBetween(0, 2);
+                    for (int k = 0; k < numValues; k++) {
+                        doc.add(new SortedNumericDocValuesField("number", randomIntBetween(0, 50)));
+                        doc.add(new SortedSetDocValuesField("keyword", new BytesRef("term_" + randomIntBetween(0, 30))));
+                    }
+                    writer.addDocument(doc);
+                }
+                writer.commit();
+            }
+            try (DirectoryReader reader = DirectoryReader.open(writer)) {
+                // the random writer configuration may flush more segments than the commits
+                final int numLeaves = reader.leaves().size();
+                IndexSearcher searcher = new IndexSearcher(reader);
+                final int iters = randomIntBetween(5, 10);
+                for (int i = 0; i < iters; i++) {
+                    AggregationBuilder aggregation = randomAggregation();
+                    Aggregator aggregator = createAggregator(aggregation, searcher, numberType, keywordType);
+                    SearchContext context = aggregator.context();
+                    AggregatorFactories factories = AggregatorFactories.builder().addAggregator(aggregation).build(context, null);
+                    if (trimsBuckets(aggregation)) {
+                        assertFalse(aggregation.toString(), factories.supportsSegmentCaching());
+                        continue;
+                    }
+                    assertTrue(aggregation.toString(), factories.supportsSegmentCaching());
+                    Query query = randomBoolean() ? new MatchAllDocsQuery()
+                        : new TermQuery(new Term("keyword", "term_" + randomIntBetween(0, 30)));
+                    String expected = reduce(searchSequentially(context, factories, query), context);
+                    // the first request fills the cache, the second one reuses the results of some of the segments
+                    Map<Integer, BytesReference> cache = new HashMap<>();
+                    assertEquals(expected, reduce(searchPerSegment(context, factories, query, cache), context));
+                    assertEquals(numLeaves, cache.size());
+                    cache.keySet().removeIf(segment -> randomBoolean());
+                    assertEquals(expected, reduce(searchPerSegment(context, factories, query, cache), context));
+                }
+            }
+        }
+    }
+
+    public void testRequestCacheDisabledOnTheRequest() throws IOException {
+        assertCanCache(AggregationBuilders.max("agg").field("number"), null, true);
+        assertCanCache(AggregationBuilders.max("agg").field("number"), true, true);
+        assertCanCache(AggregationBuilders.max("agg").field("number"), false, false);
+    }
+
+    public void testScoreDependentAggregations() throws IOException {
+        // the scores of a segment depend on the statistics of the other segments of the shard
+        assertCanCache(AggregationBuilders.topHits("agg"), null, false);
+        assertCanCache(AggregationBuilders.histogram("agg").field("number").interval(10)
+            .subAggregation(AggregationBuilders.topHits("sub").sort("_score", SortOrder.DESC)), null, false);
+        assertCanCache(AggregationBuilders.topHits("agg").sort("number", SortOrder.ASC), null, true);
+        assertCanCache(AggregationBuilders.topHits("agg").sort("number", SortOrder.ASC).trackScores(true), null, false);
+    }
+
+    private void assertCanCache(AggregationBuilder aggregation, Boolean requestCache, boolean expected) throws IOException {
+        MappedFieldType numberType = new NumberFieldMapper.NumberFieldType(NumberFieldMapper.NumberType.LONG);
+        numberType.setName("number");
+        numberType.setHasDocValues(true);
+        try (Directory dir = newDirectory();
+             IndexWriter writer = new IndexWriter(dir, newIndexWriterConfig())) {
+            Document doc = new Document();
+            doc.add(new SortedNumericDocValuesField("number", randomIntBetween(0, 50)));
+            writer.addDocument(doc);
+            try (DirectoryReader reader = DirectoryReader.open(writer)) {
+                IndexSearcher searcher = new IndexSearcher(reader);
+                Aggregator aggregator = createAggregator(aggregation, searcher, numberType);
+                SearchContext context = aggregator.context();
+                IndexSettings indexSettings = new IndexSettings(IndexMetaData.builder("_index")
+                    .settings(Settings.builder()
+                        .put(IndexMetaData.SETTING_VERSION_CREATED, Version.CURRENT)
+                        .put(IndicesSegmentAggregationCache.INDEX_CACHE_SEGMENT_AGGREGATIONS_ENABLED_SETTING.getKey(), true))
+                    .numberOfShards(1)
+                    .numberOfReplicas(0)
+                    .build(), Settings.EMPTY);
+                IndexShard indexShard = mock(IndexShard.class);
+                when(indexShard.indexSettings()).thenReturn(indexSettings);
+                when(context.indexShard()).thenReturn(indexShard);
+                ShardSearchRequest request = mock(ShardSearchRequest.class);
+                when(request.requestCache()).thenReturn(requestCache);
+                when(context.request()).thenReturn(request);
+                when(context.searchType()).thenReturn(SearchType.QUERY_THEN_FETCH);
+                when(context.trackTotalHits()).thenReturn(true);
+                AggregatorFactories factories = AggregatorFactories.builder().addAggregator(aggregation).build(context, null);
+                prepare(context, factories, new HashMap<>());
+                new AggregationPhase().preProcess(context);
+                // the mocked context can't tell whether the request is cachable
+                QueryShardContext queryShardContext = new QueryShardContext(0, indexSettings, null, null, context.mapperService(), null,
+                    null, xContentRegistry(), writableRegistry(), null, null, System::currentTimeMillis, null);
+                when(context.getQueryShardContext()).thenReturn(queryShardContext);
+                assertEquals(aggregation.toString(), expected, SegmentAggregationQueryPhase.canCache(context, context.searcher()));
+            }
+        }
+    }
+
+    private static AggregationBuilder randomAggregation() {
+        final AggregationBuilder aggregation;
+        switch (randomIntBetween(0, 6)) {
+            case 0:
+                aggregation = AggregationBuilders.max("agg").field("number");
+                break;
+            case 1:
+                aggregation = AggregationBuilders.sum("agg").field("number");
+                break;
+            case 2:
+                aggregation = AggregationBuilders.count("agg").field("keyword");
+                break;
+            case 3:
+                aggregation = AggregationBuilders.histogram("agg").field("number").interval(randomIntBetween(1, 10))
+                    .minDocCount(randomIntBetween(0, 2));
+                break;
+            case 4:
+                aggregation = AggregationBuilders.range("agg").field("number").addUnboundedTo(10).addRange(10, 30).addUnboundedFrom(30);
+                break;
+            case 5:
+                aggregation = AggregationBuilders.cardinality("agg").field("keyword");
+                break;
+            default:
+                // shard_size is low enough for the buckets of each segment to be trimmed
+                aggregation = AggregationBuilders.terms("agg").field(randomFrom("number", "keyword")).size(randomIntBetween(1, 3))
+                    .shardSize(randomIntBetween(3, 5));
+                break;
+        }
+        if (randomBoolean()) {
+            aggregation.subAggregation(randomBoolean() ? AggregationBuilders.min("sub").field("number")
+                : AggregationBuilders.terms("sub").field("keyword").size(1).shardSize(1));
+        }
+        return aggregation;
+    }
+
+    private static boolean trimsBuckets(AggregationBuilder aggregation) {
+        if (aggregation instanceof TermsAggregationBuilder) {
+            return true;
+        }
+        for (AggregationBuilder sub : aggregation.getSubAggregations()) {
+            if (trimsBuckets(sub)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Runs the aggregation phase like the query phase does when the shard is searched in a single pass.
+     */
+    private static InternalAggregations searchSequentially(SearchContext context, AggregatorFactories factories,
+                                                          Query query) throws IOException {
+        Map<Class<?>, Collector> queryCollectors = new HashMap<>();
+        QuerySearchResult queryResult = prepare(context, factories, queryCollectors);
+        AggregationPhase aggregationPhase = new AggregationPhase();
+        aggregationPhase.preProcess(context);
+        context.searcher().search(query, queryCollectors.get(AggregationPhase.class));
+        aggregationPhase.execute(context);
+        return (InternalAggregations) queryResult.consumeAggs();
+    }
+
+    /**
+     * Runs the aggregation phase like {@link SegmentAggregationQueryPhase} does, the serialized aggregations of each segment
+     * are cached by segment ordinal.
+     */
+    private InternalAggregations searchPerSegment(SearchContext context, AggregatorFactories factories, Query query,
+                                                  Map<Integer, BytesReference> cache) throws IOException {
+        QuerySearchResult queryResult = prepare(context, factories, new HashMap<>());
+        AggregationPhase aggregationPhase = new AggregationPhase();
+        aggregationPhase.preProcess(context);
+        ContextIndexSearcher searcher = context.searcher();
+        Weight weight = searcher.createNormalizedWeight(query, false);
+        for (LeafReaderContext leaf : searcher.getIndexReader().leaves()) {
+            BytesReference cached = cache.get(leaf.ord);
+            if (cached != null) {
+                try (StreamInput in = new NamedWriteableAwareStreamInput(cached.streamInput(), namedWriteableRegistry)) {
+                    context.aggregations().addCachedAggregations(InternalAggregations.readAggregations(in));
+                }
+                continue;
+            }
+            Collector collector = AggregationPhase.createSliceCollector(context, aggregations -> {
+                try (BytesStreamOutput out = new BytesStreamOutput()) {
+                    aggregations.writeTo(out);
+                    cache.put(leaf.ord, out.bytes());
+                } catch (IOException e) {
+                    throw new AssertionError(e);
+                }
+            });
+            searcher.search(Collections.singletonList(leaf), weight, collector);
+        }
+        aggregationPhase.execute(context);
+        return (InternalAggregations) queryResult.consumeAggs();
+    }
+
+    private static QuerySearchResult prepare(SearchContext context, AggregatorFactories factories,
+                                             Map<Class<?>, Collector> queryCollectors) {
+        QuerySearchResult queryResult = new QuerySearchResult();
+        when(context.aggregations()).thenReturn(new SearchContextAggregations(factories, new MultiBucketConsumer(DEFAULT_MAX_BUCKETS)));
+        when(context.queryResult()).thenReturn(queryResult);
+        when(context.queryCollectors()).thenReturn(queryCollectors);
+        return queryResult;
+    }
+
+    /**
+     * Returns the response of the coordinating node for the provided shard result.
+     */
+    private static String reduce(InternalAggregations aggregations, SearchContext context) throws IOException {
+        InternalAggregation.ReduceContext reduceContext = new InternalAggregation.ReduceContext(context.bigArrays(), null, true);
+        InternalAggregations reduced = InternalAggregations.reduce(Collections.singletonList(aggregations), reduceContext);
+        XContentBuilder builder = XContentFactory.jsonBuilder().startObject();
+        reduced.toXContent(builder, ToXContent.EMPTY_PARAMS);
+        return builder.endObject().string();
+    }
+}
@@ -20,6 +20,7 @@
 package org.elasticsearch.transport;
 
 import org.elasticsearch.common.bytes.BytesReference;
+import org.elasticsearch.common.compress.Compressor;
 import org.elasticsearch.common.compress.CompressorFactory;
 import org.elasticsearch.common.io.stream.BytesStream;
 import org.elasticsearch.common.io.stream.BytesStreamOutput;
@@ -97,6 +98,42 @@ public class CompressibleBytesOutputStreamTests extends ESTestCase {
         stream.close();
     }
 
+    public void testStreamWithMinCompressSize() throws IOException {
+        final Compressor compressor = randomFrom(CompressorFactory.COMPRESSOR, CompressorFactory.LZ4_COMPRESSOR);
+        final int minCompressSize = randomIntBetween(1, 100);
+        BytesStream bStream = new ZeroOutOnCloseStream();
+        CompressibleBytesOutputStream stream = new CompressibleBytesOutputStream(bStream, compressor, minCompressSize);
+
+        byte[] expectedBytes = randomBytes(randomInt(200));
+        if (randomBoolean()) {
+            stream.write(expectedBytes);
+        } else {
+            for (byte b : expectedBytes) {
+                stream.writeByte(b);
+            }
+        }
+
+        BytesReference bytesRef = stream.materializeBytes();
+
+        final boolean compressed = expectedBytes.length > minCompressSize;
+        assertEquals(compressed, stream.isCompressed());
+        assertEquals(compressed, compressor.isCompressed(bytesRef));
+        assertEquals(expectedBytes.length, stream.uncompressedBytes());
+
+        StreamInput streamInput = compressed ? compressor.streamInput(bytesRef.streamInput()) : bytesRef.streamInput();
+        byte[] actualBytes = new byte[expectedBytes.length];
+        streamInput.readBytes(actualBytes, 0, expectedBytes.length);
+
+        assertEquals(-1, streamInput.read());
+        assertArrayEquals(expectedBytes, actualBytes);
+        stream.close();
+
+        // The bytes should be zeroed out on close
+        for (byte b : bytesRef.toBytesRef().bytes) {
+            assertEquals((byte) 0, b);
+        }
+    }
+
     private static byte[] randomBytes(int length) {
         byte[] bytes = new byte[length];
         for (int i = 0; i < bytes.length; ++i) {
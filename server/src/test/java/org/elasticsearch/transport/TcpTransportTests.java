@@ -23,6 +23,7 @@ import org.elasticsearch.Version;
 import org.elasticsearch.action.ActionListener;
 import org.elasticsearch.cluster.node.DiscoveryNode;
 import org.elasticsearch.common.bytes.BytesReference;
+import org.elasticsearch.common.compress.Compressor;
 import org.elasticsearch.common.compress.CompressorFactory;
 import org.elasticsearch.common.io.stream.StreamInput;
 import org.elasticsearch.common.io.stream.StreamOutput;
@@ -39,10 +40,13 @@ import org.elasticsearch.threadpool.ThreadPool;
 import java.io.IOException;
 import java.net.InetSocketAddress;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Map;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicReference;
 
 import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.greaterThan;
 
 /** Unit tests for {@link TcpTransport} */
 public class TcpTransportTests extends ESTestCase {
@@ -172,12 +176,56 @@ public class TcpTransportTests extends ESTestCase {
 
     public void testCompressRequest() throws IOException {
         final boolean compressed = randomBoolean();
+        assertSendRequest(Settings.builder().put("transport.tcp.compress", compressed).build(), "foobar", compressed,
+            CompressorFactory.COMPRESSOR);
+    }
+
+    public void testCompressRequestPerAction() throws IOException {
+        final boolean lz4 = randomBoolean();
+        final boolean belowMinSize = randomBoolean();
+        final Settings settings = Settings.builder()
+            .put("transport.compression_scheme", lz4 ? "lz4" : "deflate")
+            .putList("transport.compress.actions", "internal:recovery/*", "foo*")
+            .put("transport.compress.min_size", belowMinSize ? "1mb" : "0b")
+            .build();
+        final boolean matchingAction = randomBoolean();
+        assertSendRequest(settings, matchingAction ? "foobar" : "barfoo", matchingAction && belowMinSize == false,
+            lz4 ? CompressorFactory.LZ4_COMPRESSOR : CompressorFactory.COMPRESSOR);
+    }
+
+    public void testLZ4FallsBackToDeflateForOlderNodes() throws IOException {
+        final Settings settings = Settings.builder()
+            .put("transport.compression_scheme", "lz4")
+            .put("transport.tcp.compress", true)
+            .build();
+        // nodes before 6.2.3 can't detect the lz4 header, a mixed cluster must keep sending them deflate
+        final Version oldVersion = VersionUtils.randomVersionBetween(random(),
+            Version.CURRENT.minimumCompatibilityVersion(), VersionUtils.getPreviousVersion(Version.V_6_2_3));
+        assertSendRequest(settings, "foobar", true, CompressorFactory.COMPRESSOR, oldVersion);
+        assertSendRequest(settings, "foobar", true, CompressorFactory.LZ4_COMPRESSOR, Version.V_6_2_3);
+    }
+
+    public void testCompressionScheme() {
+        assertEquals("deflate", TcpTransport.COMPRESSION_SCHEME.get(Settings.EMPTY));
+        assertEquals("lz4", TcpTransport.COMPRESSION_SCHEME.get(Settings.builder().put("transport.compression_scheme", "lz4").build()));
+        IllegalArgumentException e = expectThrows(IllegalArgumentException.class,
+            () -> TcpTransport.COMPRESSION_SCHEME.get(Settings.builder().put("transport.compression_scheme", "zstd").build()));
+        assertEquals("unknown transport compression scheme [zstd], must be one of [deflate, lz4]", e.getMessage());
+    }
+
+    private void assertSendRequest(Settings settings, String action, boolean compressed, Compressor expectedCompressor)
+        throws IOException {
+        assertSendRequest(settings, action, compressed, expectedCompressor, Version.CURRENT);
+    }
+
+    private void assertSendRequest(Settings settings, String action, boolean compressed, Compressor expectedCompressor,
+                                   Version nodeVersion) throws IOException {
         Req request = new Req(randomRealisticUnicodeOfLengthBetween(10, 100));
         ThreadPool threadPool = new TestThreadPool(TcpTransportTests.class.getName());
         AtomicReference<BytesReference> messageCaptor = new AtomicReference<>();
         try {
             TcpTransport transport = new TcpTransport(
-                "test", Settings.builder().put("transport.tcp.compress", compressed).build(), threadPool,
+                "test", settings, threadPool,
                 new BigArrays(new PageCacheRecycler(Settings.EMPTY), null), null, null, null) {
 
                 @Override
@@ -198,13 +246,13 @@ public class TcpTransportTests extends ESTestCase {
                     for (int i = 0; i < numConnections; ++i) {
                         fakeChannels.add(new FakeChannel(messageCaptor));
                     }
-                    return new NodeChannels(node, fakeChannels, MockTcpTransport.LIGHT_PROFILE, Version.CURRENT);
+                    return new NodeChannels(node, fakeChannels, MockTcpTransport.LIGHT_PROFILE, nodeVersion);
                 }
             };
 
-            DiscoveryNode node = new DiscoveryNode("foo", buildNewFakeTransportAddress(), Version.CURRENT);
+            DiscoveryNode node = new DiscoveryNode("foo", buildNewFakeTransportAddress(), nodeVersion);
             Transport.Connection connection = transport.getConnection(node);
-            connection.sendRequest(42, "foobar", request, TransportRequestOptions.EMPTY);
+            connection.sendRequest(42, action, request, TransportRequestOptions.EMPTY);
 
             BytesReference reference = messageCaptor.get();
             assertNotNull(reference);
@@ -216,19 +264,32 @@ public class TcpTransportTests extends ESTestCase {
             assertEquals(42, requestId);
             byte status = streamIn.readByte();
             Version version = Version.fromId(streamIn.readInt());
-            assertEquals(Version.CURRENT, version);
+            assertEquals(nodeVersion, version);
             assertEquals(compressed, TransportStatus.isCompress(status));
             if (compressed) {
                 final int bytesConsumed = TcpHeader.HEADER_SIZE;
-                streamIn = CompressorFactory.compressor(reference.slice(bytesConsumed, reference.length() - bytesConsumed))
-                    .streamInput(streamIn);
-                }
+                Compressor compressor = CompressorFactory.compressor(reference.slice(bytesConsumed, reference.length() - bytesConsumed));
+                assertSame(expectedCompressor, compressor);
+                streamIn = compressor.streamInput(streamIn);
+            }
             threadPool.getThreadContext().readHeaders(streamIn);
-            assertEquals("foobar", streamIn.readString());
+            assertEquals(action, streamIn.readString());
             Req readReq = new Req("");
             readReq.readFrom(streamIn);
             assertEquals(request.value, readReq.value);
 
+            Map<String, TransportStats.CompressionStats> compressionStats = transport.getStats().getCompressionStats();
+            if (compressed) {
+                assertEquals(Collections.singleton(action), compressionStats.keySet());
+                TransportStats.CompressionStats stats = compressionStats.get(action);
+                assertEquals(1, stats.getCount());
+                assertEquals(len - TcpHeader.HEADER_SIZE + TcpHeader.MARKER_BYTES_SIZE + TcpHeader.MESSAGE_LENGTH_SIZE,
+                    stats.getCompressedSize().getBytes());
+                assertThat(stats.getUncompressedSize().getBytes(), greaterThan(0L));
+            } else {
+                assertTrue(compressionStats.isEmpty());
+            }
+
         } finally {
             ThreadPool.terminate(threadPool, 10, TimeUnit.SECONDS);
         }
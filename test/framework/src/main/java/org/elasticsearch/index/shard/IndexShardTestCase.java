@@ -475,6 +475,7 @@ public abstract class IndexShardTestCase extends ESTestCase {
             recoveryTarget,
             request,
             (int) ByteSizeUnit.MB.toBytes(1),
+            between(1, 8),
             Settings.builder().put(Node.NODE_NAME_SETTING.getKey(), pNode.getName()).build());
         final ShardRouting initializingReplicaRouting = replica.routingEntry();
         primary.updateShardState(primary.routingEntry(), primary.getPrimaryTerm(), null, currentClusterStateVersion.incrementAndGet(),
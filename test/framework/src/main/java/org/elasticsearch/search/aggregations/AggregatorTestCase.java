@@ -127,6 +127,8 @@ public abstract class AggregatorTestCase extends ESTestCase {
             new MockBigArrays(new MockPageCacheRecycler(Settings.EMPTY), circuitBreakerService)
         );
         when(searchContext.query()).thenReturn(query);
+        // mocks return 0 for boxed numbers but no minimum score is the default
+        when(searchContext.minimumScore()).thenReturn(null);
         // TODO: now just needed for top_hits, this will need to be revised for other agg unit tests:
         MapperService mapperService = mapperServiceMock();
         when(mapperService.getIndexSettings()).thenReturn(indexSettings);
@@ -38,7 +38,9 @@ import org.elasticsearch.script.ScriptService;
 import org.elasticsearch.search.DocValueFormat;
 import org.elasticsearch.search.SearchModule;
 import org.elasticsearch.search.aggregations.Aggregation;
+import org.elasticsearch.search.aggregations.AggregationsAccumulator;
 import org.elasticsearch.search.aggregations.InternalAggregation;
+import org.elasticsearch.search.aggregations.InternalAggregations;
 import org.elasticsearch.search.aggregations.MultiBucketConsumerService.MultiBucketConsumer;
 import org.elasticsearch.search.aggregations.ParsedAggregation;
 import org.elasticsearch.search.aggregations.bucket.MultiBucketsAggregation;
@@ -100,6 +102,10 @@ import org.elasticsearch.search.aggregations.metrics.percentiles.hdr.InternalHDR
 import org.elasticsearch.search.aggregations.metrics.percentiles.hdr.InternalHDRPercentiles;
 import org.elasticsearch.search.aggregations.metrics.percentiles.hdr.ParsedHDRPercentileRanks;
 import org.elasticsearch.search.aggregations.metrics.percentiles.hdr.ParsedHDRPercentiles;
+import org.elasticsearch.search.aggregations.metrics.percentiles.sketch.InternalSketchPercentileRanks;
+import org.elasticsearch.search.aggregations.metrics.percentiles.sketch.InternalSketchPercentiles;
+import org.elasticsearch.search.aggregations.metrics.percentiles.sketch.ParsedSketchPercentileRanks;
+import org.elasticsearch.search.aggregations.metrics.percentiles.sketch.ParsedSketchPercentiles;
 import org.elasticsearch.search.aggregations.metrics.percentiles.tdigest.InternalTDigestPercentileRanks;
 import org.elasticsearch.search.aggregations.metrics.percentiles.tdigest.InternalTDigestPercentiles;
 import org.elasticsearch.search.aggregations.metrics.percentiles.tdigest.ParsedTDigestPercentileRanks;
@@ -162,6 +168,8 @@ public abstract class InternalAggregationTestCase<T extends InternalAggregation>
         map.put(CardinalityAggregationBuilder.NAME, (p, c) -> ParsedCardinality.fromXContent(p, (String) c));
         map.put(InternalHDRPercentiles.NAME, (p, c) -> ParsedHDRPercentiles.fromXContent(p, (String) c));
         map.put(InternalHDRPercentileRanks.NAME, (p, c) -> ParsedHDRPercentileRanks.fromXContent(p, (String) c));
+        map.put(InternalSketchPercentiles.NAME, (p, c) -> ParsedSketchPercentiles.fromXContent(p, (String) c));
+        map.put(InternalSketchPercentileRanks.NAME, (p, c) -> ParsedSketchPercentileRanks.fromXContent(p, (String) c));
         map.put(InternalTDigestPercentiles.NAME, (p, c) -> ParsedTDigestPercentiles.fromXContent(p, (String) c));
         map.put(InternalTDigestPercentileRanks.NAME, (p, c) -> ParsedTDigestPercentileRanks.fromXContent(p, (String) c));
         map.put(PercentilesBucketPipelineAggregationBuilder.NAME, (p, c) -> ParsedPercentilesBucket.fromXContent(p, (String) c));
@@ -261,6 +269,35 @@ public abstract class InternalAggregationTestCase<T extends InternalAggregation>
         assertReduced(reduced, inputs);
     }
 
+    public void testAccumulateRandom() {
+        String name = randomAlphaOfLength(5);
+        List<T> inputs = new ArrayList<>();
+        int toAccumulateSize = between(1, 200);
+        for (int i = 0; i < toAccumulateSize; i++) {
+            inputs.add(randomBoolean() ? createUnmappedInstance(name) : createTestInstance(name));
+        }
+        ScriptService mockScriptService = mockScriptService();
+        MockBigArrays bigArrays = new MockBigArrays(new MockPageCacheRecycler(Settings.EMPTY), new NoneCircuitBreakerService());
+        AggregationsAccumulator accumulator = new AggregationsAccumulator(() -> new InternalAggregation.ReduceContext(bigArrays,
+            mockScriptService, new MultiBucketConsumer(DEFAULT_MAX_BUCKETS), false), between(2, 10));
+        for (T input : inputs) {
+            accumulator.accumulate(new InternalAggregations(Collections.singletonList(input)));
+        }
+        assertEquals(toAccumulateSize, accumulator.getNumAccumulated());
+        List<InternalAggregation> toReduce = new ArrayList<>();
+        for (Aggregation aggregation : accumulator.build()) {
+            toReduce.add((InternalAggregation) aggregation);
+        }
+        assertEquals(1, toReduce.size());
+        MultiBucketConsumer bucketConsumer = new MultiBucketConsumer(DEFAULT_MAX_BUCKETS);
+        InternalAggregation.ReduceContext context =
+            new InternalAggregation.ReduceContext(bigArrays, mockScriptService, bucketConsumer, true);
+        @SuppressWarnings("unchecked")
+        T reduced = (T) inputs.get(0).reduce(toReduce, context);
+        assertMultiBucketConsumer(reduced, bucketConsumer);
+        assertReduced(reduced, inputs);
+    }
+
     /**
      * overwrite in tests that need it
      */
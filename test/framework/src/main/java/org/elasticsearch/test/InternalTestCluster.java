@@ -374,6 +374,10 @@ public final class InternalTestCluster extends TestCluster {
         Random random = new Random(seed);
         Builder builder = Settings.builder();
         builder.put(Transport.TRANSPORT_TCP_COMPRESS.getKey(), rarely(random));
+        builder.put(TcpTransport.COMPRESSION_SCHEME.getKey(), RandomPicks.randomFrom(random, Arrays.asList("deflate", "lz4")));
+        if (rarely(random)) {
+            builder.putList(TcpTransport.COMPRESS_ACTIONS.getKey(), "internal:index/shard/recovery/*", "indices:data/write/bulk*");
+        }
         if (random.nextBoolean()) {
             builder.put("cache.recycler.page.type", RandomPicks.randomFrom(random, PageCacheRecycler.Type.values()));
         }
@@ -575,6 +575,50 @@ public abstract class AbstractSimpleTransportTestCase extends ESTestCase {
         }
     }
 
+    public void testHelloWorldCompressedPerAction() throws Exception {
+        final Settings settings = Settings.builder()
+            .put(TcpTransport.COMPRESSION_SCHEME.getKey(), randomFrom("deflate", "lz4"))
+            .putList(TcpTransport.COMPRESS_ACTIONS.getKey(), "say*")
+            .build();
+        try (MockTransportService serviceC = buildService("TS_C", version0, null, settings, true, true);
+             MockTransportService serviceD = buildService("TS_D", version0, null, settings, true, true)) {
+            serviceC.registerRequestHandler("sayHello", StringMessageRequest::new, ThreadPool.Names.GENERIC,
+                (request, channel) -> channel.sendResponse(new StringMessageResponse("hello " + request.message)));
+            serviceD.connectToNode(serviceC.getLocalNode());
+
+            TransportFuture<StringMessageResponse> res = serviceD.submitRequest(serviceC.getLocalNode(), "sayHello",
+                new StringMessageRequest("moshe"), TransportRequestOptions.EMPTY,
+                new TransportResponseHandler<StringMessageResponse>() {
+                    @Override
+                    public StringMessageResponse newInstance() {
+                        return new StringMessageResponse();
+                    }
+
+                    @Override
+                    public String executor() {
+                        return ThreadPool.Names.GENERIC;
+                    }
+
+                    @Override
+                    public void handleResponse(StringMessageResponse response) {
+                    }
+
+                    @Override
+                    public void handleException(TransportException exp) {
+                    }
+                });
+            assertThat(res.get().message, equalTo("hello moshe"));
+
+            // the request and the response are compressed since the action matches, nothing else is
+            for (MockTransportService service : Arrays.asList(serviceC, serviceD)) {
+                Map<String, TransportStats.CompressionStats> compressionStats =
+                    service.getOriginalTransport().getStats().getCompressionStats();
+                assertThat(compressionStats.keySet(), equalTo(Collections.singleton("sayHello")));
+                assertThat(compressionStats.get("sayHello").getCount(), equalTo(1L));
+            }
+        }
+    }
+
     public void testErrorMessage() {
         serviceA.registerRequestHandler("sayHelloException", StringMessageRequest::new, ThreadPool.Names.GENERIC,
             new TransportRequestHandler<StringMessageRequest>() {